@@ -406,6 +406,10 @@ public final class SLCImage {
 
     public void settAzi1(double tAzi1) {this.tAzi1 = tAzi1;}
 
+    public void setLineTimeInterval(double lineTimeInterval) {
+        this.lineTimeInterval = lineTimeInterval;
+    }
+
     public void setApproxGeoCentreOriginal(GeoPoint approxGeoCentreOriginal) {
         this.approxGeoCentreOriginal.lat = approxGeoCentreOriginal.lat;
         this.approxGeoCentreOriginal.lon = approxGeoCentreOriginal.lon;
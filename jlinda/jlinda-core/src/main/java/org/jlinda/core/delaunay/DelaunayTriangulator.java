@@ -0,0 +1,681 @@
+package org.jlinda.core.delaunay;
+
+import java.util.Arrays;
+
+/**
+ * Delaunay triangulation of points held in primitive arrays.
+ * <p>
+ * The general case is a sweep-hull triangulation: points are added in order of their distance from a seed
+ * triangle, each new point is joined to the visible part of the convex hull and the new edges are flipped until
+ * they are locally Delaunay. The hull is a linked list with an angular hash for finding the visible edge, as in
+ * Mapbox's delaunator.
+ * <p>
+ * Points sampled on a warped regular grid, such as a radar coded DEM, are triangulated without the sweep by
+ * splitting every grid cell along one of its diagonals. That is only taken when every edge of the result is
+ * locally Delaunay, in which case it is the Delaunay triangulation of the grid.
+ * <p>
+ * An instance keeps its buffers between triangulations, so one instance per thread triangulates tile after tile
+ * without allocating. Triangles are stored as triplets of point numbers in {@link #getTriangles()}.
+ */
+public final class DelaunayTriangulator {
+
+    private static final double EPSILON = Math.ulp(1.0);
+    private static final int EDGE_STACK_SIZE = 512;
+
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private int[] ids = new int[0];
+    private int numPoints;
+
+    private int[] triangles = new int[0];
+    private int[] halfEdges = new int[0];
+    private int trianglesLen;
+
+    private int[] hullPrev = new int[0];
+    private int[] hullNext = new int[0];
+    private int[] hullTri = new int[0];
+    private int[] hullHash = new int[0];
+    private int hullStart;
+    private int hashSize;
+    private double sweepX, sweepY;
+
+    private int[] sortIds = new int[0];
+    private double[] dists = new double[0];
+    private final int[] edgeStack = new int[EDGE_STACK_SIZE];
+
+    /**
+     * Collect the valid points of a grid. The point number of the post [i][j] is i * columns + j.
+     *
+     * @param xIn          x coordinates of the posts
+     * @param yIn          y coordinates of the posts
+     * @param yScale       factor applied to the y coordinates
+     * @param invalidIndex marks posts to leave out
+     * @return the number of valid points
+     */
+    public int setPoints(final double[][] xIn, final double[][] yIn, final double yScale, final double invalidIndex) {
+        final int nCols = xIn[0].length;
+        ensurePoints(xIn.length * nCols);
+        int n = 0;
+        for (int i = 0; i < xIn.length; i++) {
+            final double[] xRow = xIn[i];
+            final double[] yRow = yIn[i];
+            for (int j = 0; j < nCols; j++) {
+                if (xRow[j] == invalidIndex || yRow[j] == invalidIndex) {
+                    continue;
+                }
+                x[n] = xRow[j];
+                y[n] = yRow[j] * yScale;
+                ids[n++] = i * nCols + j;
+            }
+        }
+        numPoints = n;
+        trianglesLen = 0;
+        return n;
+    }
+
+    /**
+     * Collect the valid points of a list. The point number of xIn[i] is i.
+     *
+     * @param xIn          x coordinates
+     * @param yIn          y coordinates
+     * @param yScale       factor applied to the y coordinates
+     * @param invalidIndex marks points to leave out
+     * @return the number of valid points
+     */
+    public int setPoints(final double[] xIn, final double[] yIn, final double yScale, final double invalidIndex) {
+        ensurePoints(xIn.length);
+        int n = 0;
+        for (int i = 0; i < xIn.length; i++) {
+            if (xIn[i] == invalidIndex || yIn[i] == invalidIndex) {
+                continue;
+            }
+            x[n] = xIn[i];
+            y[n] = yIn[i] * yScale;
+            ids[n++] = i;
+        }
+        numPoints = n;
+        trianglesLen = 0;
+        return n;
+    }
+
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    /**
+     * @return x coordinates of the points
+     */
+    public double[] getX() {
+        return x;
+    }
+
+    /**
+     * @return y coordinates of the points, scaled
+     */
+    public double[] getY() {
+        return y;
+    }
+
+    /**
+     * @return the point numbers given in setPoints, by point
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    public int getNumTriangles() {
+        return trianglesLen / 3;
+    }
+
+    /**
+     * @return the points of triangle t at 3t, 3t+1 and 3t+2
+     */
+    public int[] getTriangles() {
+        return triangles;
+    }
+
+    /**
+     * Triangulate the points of a grid set by setPoints(double[][]...) by splitting its cells.
+     *
+     * @param nRows rows of the grid
+     * @param nCols columns of the grid
+     * @return false, leaving no triangles, if a post is missing, a cell is folded or not convex, or the split is
+     * not Delaunay
+     */
+    public boolean triangulateGrid(final int nRows, final int nCols) {
+        trianglesLen = 0;
+        if (nRows < 2 || nCols < 2 || numPoints != nRows * nCols) {
+            return false;
+        }
+        final int nCells = (nRows - 1) * (nCols - 1);
+        ensureTriangles(2 * nCells);
+
+        // split each cell along the diagonal which is locally Delaunay
+        // diagonal 00-11: triangles (00, 01, 11) and (00, 11, 10); diagonal 01-10: (00, 01, 10) and (01, 11, 10)
+        double orientation = 0;
+        int t = 0;
+        for (int i = 0; i < nRows - 1; i++) {
+            for (int j = 0; j < nCols - 1; j++) {
+                final int p00 = i * nCols + j;
+                final int p01 = p00 + 1;
+                final int p10 = p00 + nCols;
+                final int p11 = p10 + 1;
+
+                final double o0 = orient(p10, p00, p01);
+                final double o1 = orient(p00, p01, p11);
+                final double o2 = orient(p01, p11, p10);
+                final double o3 = orient(p11, p10, p00);
+                if (orientation == 0) {
+                    orientation = Math.signum(o0);
+                }
+                if (o0 * orientation <= 0 || o1 * orientation <= 0 || o2 * orientation <= 0 || o3 * orientation <= 0) {
+                    trianglesLen = 0;
+                    return false;
+                }
+
+                if (inCircumcircle(p00, p01, p11, p10)) {
+                    triangles[t] = p00;
+                    triangles[t + 1] = p01;
+                    triangles[t + 2] = p10;
+                    triangles[t + 3] = p01;
+                    triangles[t + 4] = p11;
+                    triangles[t + 5] = p10;
+                } else {
+                    triangles[t] = p00;
+                    triangles[t + 1] = p01;
+                    triangles[t + 2] = p11;
+                    triangles[t + 3] = p00;
+                    triangles[t + 4] = p11;
+                    triangles[t + 5] = p10;
+                }
+                t += 6;
+            }
+        }
+        trianglesLen = t;
+
+        // the cell edges shared by two cells must be locally Delaunay too
+        for (int i = 0; i < nRows - 1; i++) {
+            for (int j = 0; j < nCols - 1; j++) {
+                final int cell = i * (nCols - 1) + j;
+                final int p00 = i * nCols + j;
+                final int p01 = p00 + 1;
+                final int p10 = p00 + nCols;
+                final int p11 = p10 + 1;
+                if (i + 1 < nRows - 1) {
+                    // bottom edge of this cell against the top edge of the cell below
+                    final int below = cell + nCols - 1;
+                    if (inCircumcircle(p10, p11, opposite(cell, Edge.BOTTOM, p00, p01, p10, p11),
+                            opposite(below, Edge.TOP, p10, p11, p10 + nCols, p11 + nCols))) {
+                        trianglesLen = 0;
+                        return false;
+                    }
+                }
+                if (j + 1 < nCols - 1) {
+                    // right edge of this cell against the left edge of the next cell
+                    if (inCircumcircle(p01, p11, opposite(cell, Edge.RIGHT, p00, p01, p10, p11),
+                            opposite(cell + 1, Edge.LEFT, p01, p01 + 1, p11, p11 + 1))) {
+                        trianglesLen = 0;
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private enum Edge {TOP, BOTTOM, LEFT, RIGHT}
+
+    /**
+     * @return the corner of the cell opposite to one of its edges, in the triangle holding that edge
+     */
+    private int opposite(final int cell, final Edge edge, final int p00, final int p01, final int p10, final int p11) {
+        final boolean diagonal0011 = triangles[6 * cell + 2] == p11;
+        switch (edge) {
+            case TOP:
+                return diagonal0011 ? p11 : p10;
+            case BOTTOM:
+                return diagonal0011 ? p00 : p01;
+            case LEFT:
+                return diagonal0011 ? p11 : p01;
+            default:
+                return diagonal0011 ? p00 : p10;
+        }
+    }
+
+    /**
+     * Triangulate the points set by setPoints with the sweep-hull algorithm.
+     * Duplicated points are triangulated once, collinear points give no triangles.
+     */
+    public void triangulate() {
+        final int n = numPoints;
+        trianglesLen = 0;
+        if (n < 3) {
+            return;
+        }
+        ensureTriangles(Math.max(2 * n - 5, 0));
+        ensureHull(n);
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+            sortIds[i] = i;
+        }
+        final double centreX = (minX + maxX) / 2;
+        final double centreY = (minY + maxY) / 2;
+
+        // seed triangle: the point closest to the centre, its nearest neighbour and the point making the
+        // smallest circumcircle with them
+        int i0 = 0, i1 = 0, i2 = 0;
+        double minDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            final double d = dist(centreX, centreY, x[i], y[i]);
+            if (d < minDist) {
+                i0 = i;
+                minDist = d;
+            }
+        }
+        minDist = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (i == i0) {
+                continue;
+            }
+            final double d = dist(x[i0], y[i0], x[i], y[i]);
+            if (d < minDist && d > 0) {
+                i1 = i;
+                minDist = d;
+            }
+        }
+        double minRadius = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            if (i == i0 || i == i1) {
+                continue;
+            }
+            final double r = circumradius(x[i0], y[i0], x[i1], y[i1], x[i], y[i]);
+            if (r < minRadius) {
+                i2 = i;
+                minRadius = r;
+            }
+        }
+        if (minRadius == Double.POSITIVE_INFINITY) {
+            // all points on a line
+            return;
+        }
+        if (orient(i0, i1, i2) > 0) {
+            final int i = i1;
+            i1 = i2;
+            i2 = i;
+        }
+
+        circumcentre(x[i0], y[i0], x[i1], y[i1], x[i2], y[i2]);
+        for (int i = 0; i < n; i++) {
+            dists[i] = dist(x[i], y[i], sweepX, sweepY);
+        }
+        quicksort(sortIds, dists, 0, n - 1);
+
+        hullStart = i0;
+        hullNext[i0] = hullPrev[i2] = i1;
+        hullNext[i1] = hullPrev[i0] = i2;
+        hullNext[i2] = hullPrev[i1] = i0;
+        hullTri[i0] = 0;
+        hullTri[i1] = 1;
+        hullTri[i2] = 2;
+        Arrays.fill(hullHash, 0, hashSize, -1);
+        hullHash[hashKey(x[i0], y[i0])] = i0;
+        hullHash[hashKey(x[i1], y[i1])] = i1;
+        hullHash[hashKey(x[i2], y[i2])] = i2;
+
+        addTriangle(i0, i1, i2, -1, -1, -1);
+
+        double xp = 0, yp = 0;
+        for (int k = 0; k < n; k++) {
+            final int i = sortIds[k];
+            final double px = x[i];
+            final double py = y[i];
+
+            // skip near-duplicate points
+            if (k > 0 && Math.abs(px - xp) <= EPSILON && Math.abs(py - yp) <= EPSILON) {
+                continue;
+            }
+            xp = px;
+            yp = py;
+            if (i == i0 || i == i1 || i == i2) {
+                continue;
+            }
+
+            // find a visible edge on the convex hull using the edge hash
+            int start = 0;
+            final int key = hashKey(px, py);
+            for (int j = 0; j < hashSize; j++) {
+                start = hullHash[(key + j) % hashSize];
+                if (start != -1 && start != hullNext[start]) {
+                    break;
+                }
+            }
+            start = hullPrev[start];
+            int e = start;
+            int q;
+            while (orient(px, py, e, q = hullNext[e]) <= 0) {
+                e = q;
+                if (e == start) {
+                    e = -1;
+                    break;
+                }
+            }
+            if (e == -1) {
+                // a point on the hull or a near-duplicate
+                continue;
+            }
+
+            // add the first triangle from the point
+            int t = addTriangle(e, i, hullNext[e], -1, -1, hullTri[e]);
+            hullTri[i] = legalize(t + 2);
+            hullTri[e] = t;
+
+            // walk forward through the hull, adding more triangles and flipping
+            int next = hullNext[e];
+            while (orient(px, py, next, q = hullNext[next]) > 0) {
+                t = addTriangle(next, i, q, hullTri[i], -1, hullTri[next]);
+                hullTri[i] = legalize(t + 2);
+                hullNext[next] = next;
+                next = q;
+            }
+
+            // walk backward from the other side
+            if (e == start) {
+                while (orient(px, py, q = hullPrev[e], e) > 0) {
+                    t = addTriangle(q, i, e, -1, hullTri[e], hullTri[q]);
+                    legalize(t + 2);
+                    hullTri[q] = t;
+                    hullNext[e] = e;
+                    e = q;
+                }
+            }
+
+            hullStart = hullPrev[i] = e;
+            hullNext[e] = hullPrev[next] = i;
+            hullNext[i] = next;
+
+            hullHash[hashKey(px, py)] = i;
+            hullHash[hashKey(x[e], y[e])] = e;
+        }
+    }
+
+    private int legalize(int a) {
+        int i = 0;
+        int ar;
+
+        // recursion eliminated with a fixed-size stack
+        while (true) {
+            final int b = halfEdges[a];
+
+            /* if the pair of triangles doesn't satisfy the Delaunay condition
+             * (p1 is inside the circumcircle of [p0, pl, pr]), flip them,
+             * then do the same check/flip recursively for the new pair of triangles
+             *
+             *           pl                    pl
+             *          /||\                  /  \
+             *       al/ || \bl            al/    \a
+             *        /  ||  \              /      \
+             *       /  a||b  \    flip    /___ar___\
+             *     p0\   ||   /p1   =>   p0\---bl---/p1
+             *        \  ||  /              \      /
+             *       ar\ || /br             b\    /br
+             *          \||/                  \  /
+             *           pr                    pr
+             */
+            final int a0 = a - a % 3;
+            ar = a0 + (a + 2) % 3;
+
+            if (b == -1) {
+                // convex hull edge
+                if (i == 0) {
+                    break;
+                }
+                a = edgeStack[--i];
+                continue;
+            }
+
+            final int b0 = b - b % 3;
+            final int al = a0 + (a + 1) % 3;
+            final int bl = b0 + (b + 2) % 3;
+
+            final int p0 = triangles[ar];
+            final int pr = triangles[a];
+            final int pl = triangles[al];
+            final int p1 = triangles[bl];
+
+            if (inCircle(p0, pr, pl, p1) < 0) {
+                triangles[a] = p1;
+                triangles[b] = p0;
+
+                final int hbl = halfEdges[bl];
+
+                // edge swapped on the other side of the hull (rare); fix the half-edge reference
+                if (hbl == -1) {
+                    int e = hullStart;
+                    do {
+                        if (hullTri[e] == bl) {
+                            hullTri[e] = a;
+                            break;
+                        }
+                        e = hullPrev[e];
+                    } while (e != hullStart);
+                }
+                link(a, hbl);
+                link(b, halfEdges[ar]);
+                link(ar, bl);
+
+                final int br = b0 + (b + 1) % 3;
+                if (i < edgeStack.length) {
+                    edgeStack[i++] = br;
+                }
+            } else {
+                if (i == 0) {
+                    break;
+                }
+                a = edgeStack[--i];
+            }
+        }
+        return ar;
+    }
+
+    private void link(final int a, final int b) {
+        halfEdges[a] = b;
+        if (b != -1) {
+            halfEdges[b] = a;
+        }
+    }
+
+    private int addTriangle(final int i0, final int i1, final int i2, final int a, final int b, final int c) {
+        final int t = trianglesLen;
+        triangles[t] = i0;
+        triangles[t + 1] = i1;
+        triangles[t + 2] = i2;
+        link(t, a);
+        link(t + 1, b);
+        link(t + 2, c);
+        trianglesLen += 3;
+        return t;
+    }
+
+    private int hashKey(final double px, final double py) {
+        return (int) (Math.floor(pseudoAngle(px - sweepX, py - sweepY) * hashSize) % hashSize);
+    }
+
+    /**
+     * @return a value in [0, 1) increasing with the angle of (dx, dy)
+     */
+    private static double pseudoAngle(final double dx, final double dy) {
+        final double p = dx / (Math.abs(dx) + Math.abs(dy));
+        return (dy > 0 ? 3 - p : 1 + p) / 4;
+    }
+
+    /**
+     * @return twice the signed area of (a, b, c), positive when counter-clockwise in a y-up frame
+     */
+    private double orient(final int a, final int b, final int c) {
+        return orient(x[a], y[a], b, c);
+    }
+
+    private double orient(final double px, final double py, final int b, final int c) {
+        return (x[b] - px) * (y[c] - py) - (y[b] - py) * (x[c] - px);
+    }
+
+    /**
+     * @return positive when d is inside the circumcircle of the counter-clockwise (a, b, c), negative when outside
+     * and the opposite for a clockwise (a, b, c)
+     */
+    private double inCircle(final int a, final int b, final int c, final int d) {
+        final double dx = x[a] - x[d];
+        final double dy = y[a] - y[d];
+        final double ex = x[b] - x[d];
+        final double ey = y[b] - y[d];
+        final double fx = x[c] - x[d];
+        final double fy = y[c] - y[d];
+
+        final double ap = dx * dx + dy * dy;
+        final double bp = ex * ex + ey * ey;
+        final double cp = fx * fx + fy * fy;
+
+        return dx * (ey * cp - bp * fy) - dy * (ex * cp - bp * fx) + ap * (ex * fy - ey * fx);
+    }
+
+    /**
+     * @return true when d is strictly inside the circumcircle of (a, b, c), in either orientation
+     */
+    private boolean inCircumcircle(final int a, final int b, final int c, final int d) {
+        return inCircle(a, b, c, d) * orient(a, b, c) > 0;
+    }
+
+    private static double dist(final double ax, final double ay, final double bx, final double by) {
+        final double dx = ax - bx;
+        final double dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+
+    private static double circumradius(final double ax, final double ay, final double bx, final double by,
+                                       final double cx, final double cy) {
+        final double dx = bx - ax;
+        final double dy = by - ay;
+        final double ex = cx - ax;
+        final double ey = cy - ay;
+
+        final double bl = dx * dx + dy * dy;
+        final double cl = ex * ex + ey * ey;
+        final double d = 0.5 / (dx * ey - dy * ex);
+
+        final double x = (ey * bl - dy * cl) * d;
+        final double y = (dx * cl - ex * bl) * d;
+        final double r = x * x + y * y;
+        return Double.isNaN(r) ? Double.POSITIVE_INFINITY : r;
+    }
+
+    private void circumcentre(final double ax, final double ay, final double bx, final double by,
+                              final double cx, final double cy) {
+        final double dx = bx - ax;
+        final double dy = by - ay;
+        final double ex = cx - ax;
+        final double ey = cy - ay;
+
+        final double bl = dx * dx + dy * dy;
+        final double cl = ex * ex + ey * ey;
+        final double d = 0.5 / (dx * ey - dy * ex);
+
+        sweepX = ax + (ey * bl - dy * cl) * d;
+        sweepY = ay + (dx * cl - ex * bl) * d;
+    }
+
+    private static void quicksort(final int[] ids, final double[] dists, final int left, final int right) {
+        if (right - left <= 20) {
+            for (int i = left + 1; i <= right; i++) {
+                final int temp = ids[i];
+                final double tempDist = dists[temp];
+                int j = i - 1;
+                while (j >= left && dists[ids[j]] > tempDist) {
+                    ids[j + 1] = ids[j--];
+                }
+                ids[j + 1] = temp;
+            }
+        } else {
+            final int median = (left + right) >> 1;
+            int i = left + 1;
+            int j = right;
+            swap(ids, median, i);
+            if (dists[ids[left]] > dists[ids[right]]) {
+                swap(ids, left, right);
+            }
+            if (dists[ids[i]] > dists[ids[right]]) {
+                swap(ids, i, right);
+            }
+            if (dists[ids[left]] > dists[ids[i]]) {
+                swap(ids, left, i);
+            }
+
+            final int temp = ids[i];
+            final double tempDist = dists[temp];
+            while (true) {
+                do {
+                    i++;
+                } while (dists[ids[i]] < tempDist);
+                do {
+                    j--;
+                } while (dists[ids[j]] > tempDist);
+                if (j < i) {
+                    break;
+                }
+                swap(ids, i, j);
+            }
+            ids[left + 1] = ids[j];
+            ids[j] = temp;
+
+            if (right - i + 1 >= j - left) {
+                quicksort(ids, dists, i, right);
+                quicksort(ids, dists, left, j - 1);
+            } else {
+                quicksort(ids, dists, left, j - 1);
+                quicksort(ids, dists, i, right);
+            }
+        }
+    }
+
+    private static void swap(final int[] arr, final int i, final int j) {
+        final int tmp = arr[i];
+        arr[i] = arr[j];
+        arr[j] = tmp;
+    }
+
+    private void ensurePoints(final int n) {
+        if (x.length < n) {
+            x = new double[n];
+            y = new double[n];
+            ids = new int[n];
+        }
+    }
+
+    private void ensureTriangles(final int maxTriangles) {
+        if (triangles.length < 3 * maxTriangles) {
+            triangles = new int[3 * maxTriangles];
+            halfEdges = new int[3 * maxTriangles];
+        }
+    }
+
+    private void ensureHull(final int n) {
+        if (hullPrev.length < n) {
+            hullPrev = new int[n];
+            hullNext = new int[n];
+            hullTri = new int[n];
+            sortIds = new int[n];
+            dists = new double[n];
+        }
+        hashSize = (int) Math.ceil(Math.sqrt(n));
+        if (hullHash.length < hashSize) {
+            hullHash = new int[hashSize];
+        }
+    }
+}
@@ -10,6 +10,9 @@ import java.util.List;
 
 public class TriangleInterpolator {
 
+    private static final ThreadLocal<DelaunayTriangulator> triangulators =
+            ThreadLocal.withInitial(DelaunayTriangulator::new);
+
     public static class ZData {
         public final double[] z_1d_in;
         public final double[][] z_in;
@@ -33,20 +36,27 @@ public class TriangleInterpolator {
                                       final Window window, final double xyRatio, final int xScale,
                                       final int yScale, final double invalidIndex, final int offset) throws Exception {
 
-        final FastDelaunayTriangulator FDT = triangulate(x_in, y_in, xyRatio, invalidIndex);
-        if(FDT != null) {
-            interpolate(xyRatio, window, xScale, yScale, offset, invalidIndex, FDT, zList);
+        final DelaunayTriangulator triangulator = triangulators.get();
+        if (triangulator.setPoints(x_in, y_in, xyRatio, invalidIndex) < 3) {
+            return;
+        }
+        // a radar coded DEM without holes or layover is split cell by cell
+        if (!triangulator.triangulateGrid(x_in.length, x_in[0].length)) {
+            triangulator.triangulate();
         }
+        interpolate(xyRatio, window, xScale, yScale, offset, triangulator, zList);
     }
 
     public static void gridDataLinear(final double[] x_in, final double[] y_in, final ZData[] zList,
                                       final Window window, final double xyRatio, final int xScale,
                                       final int yScale, final double invalidIndex, final int offset) throws Exception {
 
-        final FastDelaunayTriangulator FDT = triangulate(x_in, y_in, xyRatio, invalidIndex);
-        if(FDT != null) {
-            interpolate(xyRatio, window, xScale, yScale, offset, invalidIndex, FDT, zList);
+        final DelaunayTriangulator triangulator = triangulators.get();
+        if (triangulator.setPoints(x_in, y_in, xyRatio, invalidIndex) < 3) {
+            return;
         }
+        triangulator.triangulate();
+        interpolate(xyRatio, window, xScale, yScale, offset, triangulator, zList);
     }
 
     public static FastDelaunayTriangulator triangulate(final double[][] x_in, final double[][] y_in,
@@ -231,6 +241,124 @@ public class TriangleInterpolator {
         //SystemUtils.LOG.info("Data set interpolated in " + (0.001 * (t5 - t4)) + " sec");
     }
 
+    /**
+     * Interpolate the triangles of a DelaunayTriangulator onto the tile grid.
+     * <p>
+     * Each grid line only visits the pixels between the edges of a triangle, and all ZData are interpolated in
+     * the same pass. A pixel exactly on an edge is left out, as by interpolate with a FastDelaunayTriangulator.
+     */
+    public static void interpolate(final double xyRatio, final Window tileWindow,
+                                   final double xScale, final double yScale, final double offset,
+                                   final DelaunayTriangulator triangulator, final ZData[] zList) {
+
+        final double x_min = tileWindow.linelo;
+        final double y_min = tileWindow.pixlo;
+        final int nx = (int) tileWindow.lines();
+        final int ny = (int) tileWindow.pixels();
+
+        final double[] px = triangulator.getX();
+        final double[] py = triangulator.getY();
+        final int[] ids = triangulator.getIds();
+        final int[] triangles = triangulator.getTriangles();
+        final int numTriangles = triangulator.getNumTriangles();
+
+        final int nz = zList.length;
+        final double[] za = new double[nz];
+        final double[] zb = new double[nz];
+        final double[] zc = new double[nz];
+        final double[][][] zOut = new double[nz][][];
+        for (int k = 0; k < nz; k++) {
+            zOut[k] = zList[k].z_out;
+        }
+
+        // containers for xy coordinates of Triangles: p1-p2-p3-p1
+        final double[] vx = new double[4];
+        final double[] vy = new double[4];
+        final double[] vz = new double[3];
+        final PointInTriangle pointInTriangle = new PointInTriangle();
+
+        for (int t = 0; t < numTriangles; t++) {
+            final int p0 = triangles[3 * t];
+            final int p1 = triangles[3 * t + 1];
+            final int p2 = triangles[3 * t + 2];
+
+            vx[0] = vx[3] = px[p0];
+            vy[0] = vy[3] = py[p0] / xyRatio;
+            vx[1] = px[p1];
+            vy[1] = py[p1] / xyRatio;
+            vx[2] = px[p2];
+            vy[2] = py[p2] / xyRatio;
+
+            // Compute grid indices the current triangle may cover
+            long i_min = coordToIndex(Math.min(Math.min(vx[0], vx[1]), vx[2]), x_min, xScale, offset);
+            long i_max = coordToIndex(Math.max(Math.max(vx[0], vx[1]), vx[2]), x_min, xScale, offset);
+            long j_min = coordToIndex(Math.min(Math.min(vy[0], vy[1]), vy[2]), y_min, yScale, offset);
+            long j_max = coordToIndex(Math.max(Math.max(vy[0], vy[1]), vy[2]), y_min, yScale, offset);
+
+            // skip triangle outside the region
+            if (i_max < 0 || i_min >= nx || j_max < 0 || j_min >= ny) {
+                continue;
+            }
+            i_min = Math.max(i_min, 0);
+            i_max = Math.min(i_max, nx - 1);
+            j_min = Math.max(j_min, 0);
+            j_max = Math.min(j_max, ny - 1);
+
+            // compute plane defined by the three vertices of the triangle: z = ax + by + c
+            final double xkj = vx[1] - vx[0];
+            final double ykj = vy[1] - vy[0];
+            final double xlj = vx[2] - vx[0];
+            final double ylj = vy[2] - vy[0];
+            final double f = 1.0 / (xkj * ylj - ykj * xlj);
+
+            vz[0] = ids[p0];
+            vz[1] = ids[p1];
+            vz[2] = ids[p2];
+            for (int k = 0; k < nz; k++) {
+                final ZData data = zList[k];
+                getABC(vx, vy, vz, data, f, xkj, ykj, xlj, ylj);
+                za[k] = data.a;
+                zb[k] = data.b;
+                zc[k] = data.c;
+            }
+
+            pointInTriangle.set(vx, vy);
+
+            for (int i = (int) i_min; i <= i_max; i++) {
+                final double xp = x_min + i * xScale + offset;
+
+                // pixel span of the line between the edges of the triangle
+                double yLo = Double.POSITIVE_INFINITY;
+                double yHi = Double.NEGATIVE_INFINITY;
+                for (int e = 0; e < 3; e++) {
+                    final double x0 = vx[e];
+                    final double x1 = vx[e + 1];
+                    if (x0 == x1 || (xp < x0 && xp < x1) || (xp > x0 && xp > x1)) {
+                        continue;
+                    }
+                    final double ye = vy[e] + (xp - x0) * (vy[e + 1] - vy[e]) / (x1 - x0);
+                    yLo = Math.min(yLo, ye);
+                    yHi = Math.max(yHi, ye);
+                }
+                if (yLo > yHi) {
+                    continue;
+                }
+                final int jLo = (int) Math.max(j_min, (long) Math.floor((yLo - y_min - offset) / yScale));
+                final int jHi = (int) Math.min(j_max, (long) Math.ceil((yHi - y_min - offset) / yScale));
+
+                for (int j = jLo; j <= jHi; j++) {
+                    final double yp = y_min + j * yScale + offset;
+                    if (!pointInTriangle.test(xp, yp)) {
+                        continue;
+                    }
+                    for (int k = 0; k < nz; k++) {
+                        zOut[k][i][j] = za[k] * xp + zb[k] * yp + zc[k];
+                    }
+                }
+            }
+        }
+    }
+
     private static void getABC(
             final double[] vx, final double[] vy, final double[] vz, final ZData data,
             final double f, final double  xkj, final double ykj, final double xlj, final double ylj) {
@@ -267,10 +395,17 @@ public class TriangleInterpolator {
     }
 
     private static class PointInTriangle {
-        private final double[] xt, yt;
-        private final double xtd0, xtd1, xtd2, ytd0, ytd1, ytd2;
+        private double[] xt, yt;
+        private double xtd0, xtd1, xtd2, ytd0, ytd1, ytd2;
+
+        PointInTriangle() {
+        }
 
         public PointInTriangle(double[] xt, double[] yt) {
+            set(xt, yt);
+        }
+
+        void set(double[] xt, double[] yt) {
             this.xt = xt;
             this.yt = yt;
             xtd0 = xt[2] - xt[0];
@@ -127,7 +127,24 @@ public class AzimuthFilter extends SlcDataFilter {
 
     }
 
+    /**
+     * The filter of constant dopplers for a block of nRows lines, as the diagonal of the filter of defineFilter.
+     * Only the metadata of master and slave are needed.
+     */
+    public double[] getConstFilterVector(final int nRows) {
+        this.nRows = nRows;
+        PRF = metadata.getPRF();
+        ABW = metadata.getAzimuthBandwidth();
+        deltaF = (float) (PRF / nRows);
+        freq = (float) (-PRF / 2.0);
+        return constFilterVector().toArray();
+    }
+
     private void defineConstFilter() {
+        filter = DoubleMatrix.diag(constFilterVector());
+    }
+
+    private DoubleMatrix constFilterVector() {
 
 //        logger.info("Filtering data by same fDC for each column.");
 //        double fDC_m = metadata.doppler.getF_DC_a0();      // zero doppler freq. [Hz]
@@ -153,8 +170,7 @@ public class AzimuthFilter extends SlcDataFilter {
         final double offset = 0.5;
         filterVector = columnFilterHamming(freqAxis, fDC_m, fDC_mean, ABW_new, offset);
 
-        filter = DoubleMatrix.diag(filterVector);
-
+        return filterVector;
     }
 
     private void defineVariableFilter() {
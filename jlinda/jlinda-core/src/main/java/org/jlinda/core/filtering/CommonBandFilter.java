@@ -0,0 +1,367 @@
+package org.jlinda.core.filtering;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import org.apache.commons.math3.util.FastMath;
+import org.jlinda.core.Constants;
+import org.jlinda.core.SLCImage;
+import org.jlinda.core.utils.MathUtils;
+import org.jlinda.core.utils.WeightWindows;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Common band filtering of master and slave SLC blocks held in float arrays, filtered in place.
+ * <p>
+ * The range filter is that of {@link RangeFilter}: the fringe frequency of each line is the peak of the power
+ * spectrum of the interferogram averaged over nlMean lines, and the master and slave lines are bandpass filtered
+ * for it with a Hamming reweighted window. Here the block is streamed line by line: the power spectrum of a line of
+ * the interferogram is computed when the walking mean reaches it and only nlMean + 1 of them are kept, the master
+ * and slave line are transformed, filtered and transformed back in the same step, and the window of each fringe
+ * frequency is designed once per block.
+ * <p>
+ * The azimuth filter is that of {@link AzimuthFilter} for constant dopplers: the spectrum of every column is
+ * multiplied with the filter vector, instead of the diagonal matrix of the vector.
+ * <p>
+ * FFT plans and line buffers are kept per thread, so an instance may be shared by the tiles of an operator.
+ */
+public final class CommonBandFilter {
+
+    private static final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(Workspace::new);
+
+    private double alphaHamming = 0.75;
+    private int nlMean = 15;
+    private int ovsFactor = 1;
+    private boolean doWeightCorrelFlag = false;
+
+    public void setAlphaHamming(double alphaHamming) {
+        this.alphaHamming = alphaHamming;
+    }
+
+    public void setNlMean(int nlMean) {
+        this.nlMean = nlMean;
+    }
+
+    public void setOvsFactor(int ovsFactor) {
+        this.ovsFactor = ovsFactor;
+    }
+
+    public void setDoWeightCorrelFlag(boolean doWeightCorrelFlag) {
+        this.doWeightCorrelFlag = doWeightCorrelFlag;
+    }
+
+    /**
+     * Range filter a block of master and slave lines.
+     *
+     * @param metadata     of the master, for the range sampling rate and bandwidth
+     * @param mstI         master real samples, row major
+     * @param mstQ         master imaginary samples
+     * @param slvI         slave real samples
+     * @param slvQ         slave imaginary samples
+     * @param width        pixels per line, a power of 2
+     * @param height       lines of the block
+     * @param filterMaster whether to filter the master too; its spectrum is estimated from it in any case
+     */
+    public void filterRange(final SLCImage metadata, final float[] mstI, final float[] mstQ,
+                            final float[] slvI, final float[] slvQ, final int width, final int height,
+                            final boolean filterMaster) {
+
+        if (!MathUtils.isOdd(nlMean)) {
+            throw new IllegalArgumentException("nlMean has to be odd.");
+        }
+        if (!MathUtils.isPower2(width)) {
+            throw new IllegalArgumentException("numPixels (FFT) has to be power of 2.");
+        }
+        if (!MathUtils.isPower2(ovsFactor)) {
+            throw new IllegalArgumentException("oversample factor (FFT) has to be power of 2.");
+        }
+        if (height < nlMean) {
+            // no line has a full walking mean
+            return;
+        }
+
+        final double RSR = 0.5 * metadata.getRsr2x();
+        final double RBW = metadata.getRangeBandwidth() * Constants.MEGA;
+        final boolean doHamming = (alphaHamming < 0.9999);
+
+        final int fftLength = width * ovsFactor;
+        final Workspace ws = workspace.get();
+        ws.allocate(width, fftLength, nlMean);
+
+        final double deltaF = RSR / width;
+        final double[] freqAxis = new double[width];
+        for (int i = 0; i < width; ++i) {
+            freqAxis[i] = -RSR / 2. + (i * deltaF);
+        }
+        final double[] inverseHamming = doHamming ? WeightWindows.inverseHamming(freqAxis, RBW, RSR, alphaHamming) : null;
+        final double[] weights = doWeightCorrelFlag ? correlationWeights(RSR, RBW, fftLength) : null;
+
+        final int outputLines = height - nlMean + 1;
+        final int firstLine = (nlMean - 1) / 2;
+        final double[][] power = ws.power;
+        final double[] nlMeanPower = ws.nlMeanPower;
+        final double[][] filters = ws.filters;
+        Arrays.fill(filters, 0, fftLength / 2 + 1, null);
+
+        for (int k = 0; k < nlMean; k++) {
+            computePower(ws, mstI, mstQ, slvI, slvQ, k, width, weights, power[k]);
+        }
+        Arrays.fill(nlMeanPower, 0, fftLength, 0.0);
+        for (int k = 0; k < nlMean; k++) {
+            final double[] line = power[k];
+            for (int j = 0; j < fftLength; j++) {
+                nlMeanPower[j] += line[j];
+            }
+        }
+
+        for (int k = 0; k < outputLines; k++) {
+            final int outLine = firstLine + k;
+
+            // peak of the walking mean: the first maximum, as DoubleMatrix.argmax
+            double maxValue = Double.NEGATIVE_INFINITY;
+            int shift = -1;
+            for (int j = 0; j < fftLength; j++) {
+                if (nlMeanPower[j] > maxValue) {
+                    maxValue = nlMeanPower[j];
+                    shift = j;
+                }
+            }
+
+            boolean negShift = false;
+            if (shift > (fftLength / 2)) {
+                shift = fftLength - shift;
+                negShift = true;
+            }
+
+            // RangeFilter keeps the estimated shift for lines below its SNR threshold too, so it is not computed
+            double[] filter = filters[shift];
+            if (filter == null) {
+                filter = defineFilterVector(deltaF, freqAxis, inverseHamming, shift, RSR, RBW, doHamming);
+                filters[shift] = filter;
+            }
+
+            // the master is filtered with the filter, mirrored for a negative shift, and the slave with its mirror
+            final int row = outLine * width;
+            if (filterMaster) {
+                filterLine(ws, mstI, mstQ, row, width, filter, negShift);
+            }
+            filterLine(ws, slvI, slvQ, row, width, filter, !negShift);
+
+            /// Update 'walking' mean
+            if (k != outputLines - 1) {
+                final double[] line1 = power[k % (nlMean + 1)];
+                final double[] lineN = power[(k + nlMean) % (nlMean + 1)];
+                computePower(ws, mstI, mstQ, slvI, slvQ, k + nlMean, width, weights, lineN);
+                for (int j = 0; j < fftLength; j++) {
+                    nlMeanPower[j] += lineN[j] - line1[j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Azimuth filter a block.
+     *
+     * @param filterVector the filter of the azimuth spectrum, one value per line of the block
+     * @param dataI        real samples, row major
+     * @param dataQ        imaginary samples
+     * @param width        pixels per line
+     * @param height       lines of the block
+     */
+    public void filterAzimuth(final double[] filterVector, final float[] dataI, final float[] dataQ,
+                              final int width, final int height) {
+
+        final Workspace ws = workspace.get();
+        ws.allocate(height, height, 0);
+        final DoubleFFT_1D fft = ws.getFFT(height);
+        final double[] column = ws.line;
+
+        for (int x = 0; x < width; x++) {
+            for (int y = 0, k = x; y < height; y++, k += width) {
+                column[2 * y] = dataI[k];
+                column[2 * y + 1] = dataQ[k];
+            }
+            fft.complexForward(column);
+            for (int y = 0; y < height; y++) {
+                column[2 * y] *= filterVector[y];
+                column[2 * y + 1] *= filterVector[y];
+            }
+            fft.complexInverse(column, true);
+            for (int y = 0, k = x; y < height; y++, k += width) {
+                dataI[k] = (float) column[2 * y];
+                dataQ[k] = (float) column[2 * y + 1];
+            }
+        }
+    }
+
+    private static void filterLine(final Workspace ws, final float[] dataI, final float[] dataQ, final int row,
+                                   final int width, final double[] filter, final boolean mirror) {
+        final DoubleFFT_1D fft = ws.getFFT(width);
+        final double[] line = ws.line;
+        for (int j = 0; j < width; j++) {
+            line[2 * j] = dataI[row + j];
+            line[2 * j + 1] = dataQ[row + j];
+        }
+        fft.complexForward(line);
+        for (int j = 0; j < width; j++) {
+            final double f = mirror ? filter[width - 1 - j] : filter[j];
+            line[2 * j] *= f;
+            line[2 * j + 1] *= f;
+        }
+        fft.complexInverse(line, true);
+        for (int j = 0; j < width; j++) {
+            dataI[row + j] = (float) line[2 * j];
+            dataQ[row + j] = (float) line[2 * j + 1];
+        }
+    }
+
+    /**
+     * Power spectrum of a line of the interferogram master * conj(slave), oversampled in range.
+     */
+    private void computePower(final Workspace ws, final float[] mstI, final float[] mstQ,
+                              final float[] slvI, final float[] slvQ, final int lineIndex, final int width,
+                              final double[] weights, final double[] power) {
+
+        final int fftLength = width * ovsFactor;
+        final int row = lineIndex * width;
+        final double[] ifg = ws.ifg;
+        if (ovsFactor == 1) {
+            for (int j = 0; j < width; j++) {
+                final double mRe = mstI[row + j], mIm = mstQ[row + j];
+                final double sRe = slvI[row + j], sIm = -slvQ[row + j];
+                ifg[2 * j] = mRe * sRe - mIm * sIm;
+                ifg[2 * j + 1] = mRe * sIm + mIm * sRe;
+            }
+        } else {
+            final double[] mst = oversample(ws, mstI, mstQ, row, width, ws.ovsMaster);
+            final double[] slv = oversample(ws, slvI, slvQ, row, width, ws.ovsSlave);
+            for (int j = 0; j < fftLength; j++) {
+                final double mRe = mst[2 * j], mIm = mst[2 * j + 1];
+                final double sRe = slv[2 * j], sIm = -slv[2 * j + 1];
+                ifg[2 * j] = mRe * sRe - mIm * sIm;
+                ifg[2 * j + 1] = mRe * sIm + mIm * sRe;
+            }
+        }
+        ws.getFFT(fftLength).complexForward(ifg);
+        for (int j = 0; j < fftLength; j++) {
+            power[j] = FastMath.pow(ifg[2 * j], 2) + FastMath.pow(ifg[2 * j + 1], 2);
+        }
+        if (weights != null) {
+            for (int j = 0; j < fftLength; j++) {
+                power[j] = power[j] / weights[j];
+            }
+        }
+    }
+
+    /**
+     * Oversample a line in range by zero padding its spectrum, as SarUtils.oversample.
+     */
+    private double[] oversample(final Workspace ws, final float[] dataI, final float[] dataQ, final int row,
+                                final int width, final double[] result) {
+        final int halfP = width / 2;
+        final int P2 = ovsFactor * width;
+        final double[] line = ws.line;
+        for (int j = 0; j < width; j++) {
+            line[2 * j] = dataI[row + j];
+            line[2 * j + 1] = dataQ[row + j];
+        }
+        ws.getFFT(width).complexForward(line);
+        // divide by 2 because even fftlength
+        line[2 * halfP] *= 0.5;
+        line[2 * halfP + 1] *= 0.5;
+
+        Arrays.fill(result, 0, 2 * P2, 0.0);
+        System.arraycopy(line, 0, result, 0, 2 * (halfP + 1));
+        System.arraycopy(line, 2 * halfP, result, 2 * (P2 - halfP), 2 * (width - halfP));
+        ws.getFFT(P2).complexInverse(result, true);
+        for (int j = 0; j < 2 * P2; j++) {
+            result[j] *= ovsFactor;
+        }
+        return result;
+    }
+
+    /**
+     * The filter of RangeFilter.defineFilterVector for a shift, in the order returned by the FFT.
+     */
+    private double[] defineFilterVector(final double deltaF, final double[] freqAxis, final double[] inverseHamming,
+                                        final long shift, final double RSR, final double RBW,
+                                        final boolean doHamming) {
+        final int n = freqAxis.length;
+        final double[] shifted = new double[n];
+        double[] filterVector;
+        if (doHamming) {
+            for (int i = 0; i < n; i++) {
+                shifted[i] = freqAxis[i] - 0.5 * shift * deltaF;
+            }
+            filterVector = WeightWindows.hamming(shifted, RBW - (shift * deltaF), RSR, alphaHamming);
+            for (int i = 0; i < n; i++) {
+                filterVector[i] *= inverseHamming[i];
+            }
+        } else {
+            final double bandwidth = RBW - shift * deltaF;
+            for (int i = 0; i < n; i++) {
+                shifted[i] = (freqAxis[i] - .5 * shift * deltaF) / bandwidth;
+            }
+            filterVector = WeightWindows.rect(shifted);
+        }
+
+        // ifftshift
+        final double[] result = new double[n];
+        final int start = n / 2;
+        System.arraycopy(filterVector, start, result, 0, n - start);
+        System.arraycopy(filterVector, 0, result, n - start, start);
+        return result;
+    }
+
+    /**
+     * The weights of RangeFilter.doWeightCorrel, which bias the power spectrum to higher frequencies.
+     */
+    private static double[] correlationWeights(final double RSR, final double RBW, final int fftLength) {
+        final double[] weights = new double[fftLength];
+        final int indexNoPeak = (int) ((1. - (RBW / RSR)) * fftLength);
+        for (int j = 0; j < fftLength; ++j) {
+            final long nPnts = Math.abs(fftLength - j);
+            weights[j] = (nPnts < indexNoPeak) ? FastMath.pow(fftLength, 2) : FastMath.pow(nPnts, 2);
+        }
+        return weights;
+    }
+
+    private static final class Workspace {
+
+        private final Map<Integer, DoubleFFT_1D> plans = new HashMap<>();
+        private double[] line = new double[0];
+        private double[] ifg = new double[0];
+        private double[] ovsMaster = new double[0];
+        private double[] ovsSlave = new double[0];
+        private double[][] power = new double[0][];
+        private double[] nlMeanPower = new double[0];
+        private double[][] filters = new double[0][];
+
+        private DoubleFFT_1D getFFT(final int n) {
+            return plans.computeIfAbsent(n, DoubleFFT_1D::new);
+        }
+
+        private void allocate(final int lineLength, final int fftLength, final int nlMean) {
+            if (line.length < 2 * lineLength) {
+                line = new double[2 * lineLength];
+            }
+            if (nlMean == 0) {
+                return;
+            }
+            if (ifg.length < 2 * fftLength) {
+                ifg = new double[2 * fftLength];
+                ovsMaster = new double[2 * fftLength];
+                ovsSlave = new double[2 * fftLength];
+                nlMeanPower = new double[fftLength];
+                power = new double[0][];
+            }
+            if (power.length < nlMean + 1) {
+                power = new double[nlMean + 1][nlMeanPower.length];
+            }
+            if (filters.length < fftLength / 2 + 1) {
+                filters = new double[fftLength / 2 + 1][];
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.jlinda.core.geocode;
+
+import org.jlinda.core.Window;
+
+/**
+ * Planes of values computed on a sparse, regular grid of nodes over an image and interpolated between them with
+ * the cubic convolution (Catmull-Rom) kernel.
+ * <p>
+ * The nodes are spaced a fixed number of lines and pixels apart starting at the first line and pixel of the window,
+ * and the grid is padded with a node on every side, so that each cell of the window has the 4x4 nodes the kernel
+ * needs. The interpolation goes through the node values and reproduces quadratic functions exactly. A row of
+ * pixels is interpolated separably: the node columns are first interpolated to the line, which leaves four
+ * multiply-adds per pixel.
+ * <p>
+ * An instance is immutable once constructed and may be shared between threads.
+ */
+public final class BicubicGrid {
+
+    /**
+     * The function sampled at the nodes.
+     */
+    public interface NodeFunction {
+
+        /**
+         * @param line   of the node, which may lie up to one node spacing outside the window
+         * @param pixel  of the node, which may lie up to one node spacing outside the window
+         * @param values to write a value of each plane to
+         */
+        void compute(double line, double pixel, double[] values) throws Exception;
+    }
+
+    private final long lineLo;
+    private final long pixLo;
+    private final int spacing;
+    private final int numCellLines;
+    private final int numCellPixels;
+    private final int numNodePixels;
+
+    // planes[k][r * numNodePixels + c] is the value of plane k at node (r, c); node (1, 1) is the first line and pixel
+    private final double[][] planes;
+
+    /**
+     * Sample a function on the nodes, row by row, so that successive calls of the function are for adjacent nodes.
+     *
+     * @param window    of the image
+     * @param spacing   of the nodes in lines and pixels
+     * @param numPlanes values of the function per node
+     * @param function  to sample
+     */
+    public BicubicGrid(final Window window, final int spacing, final int numPlanes, final NodeFunction function)
+            throws Exception {
+
+        if (spacing < 1) {
+            throw new IllegalArgumentException("BicubicGrid: node spacing must be positive, not " + spacing);
+        }
+        this.lineLo = window.linelo;
+        this.pixLo = window.pixlo;
+        this.spacing = spacing;
+        numCellLines = Math.max(1, (int) ((window.linehi - window.linelo + spacing - 1) / spacing));
+        numCellPixels = Math.max(1, (int) ((window.pixhi - window.pixlo + spacing - 1) / spacing));
+        numNodePixels = numCellPixels + 3;
+        final int numNodeLines = numCellLines + 3;
+
+        planes = new double[numPlanes][numNodeLines * numNodePixels];
+        final double[] values = new double[numPlanes];
+        for (int r = 0; r < numNodeLines; r++) {
+            final double line = getNodeLine(r);
+            for (int c = 0; c < numNodePixels; c++) {
+                function.compute(line, getNodePixel(c), values);
+                for (int k = 0; k < numPlanes; k++) {
+                    planes[k][r * numNodePixels + c] = values[k];
+                }
+            }
+        }
+    }
+
+    public int getSpacing() {
+        return spacing;
+    }
+
+    public int getNumCellLines() {
+        return numCellLines;
+    }
+
+    public int getNumCellPixels() {
+        return numCellPixels;
+    }
+
+    /**
+     * @return the cell of a line, the first or last cell for lines outside the window
+     */
+    public int getCellLine(final double line) {
+        return clamp((int) Math.floor((line - lineLo) / spacing), numCellLines);
+    }
+
+    /**
+     * @return the cell of a pixel, the first or last cell for pixels outside the window
+     */
+    public int getCellPixel(final double pixel) {
+        return clamp((int) Math.floor((pixel - pixLo) / spacing), numCellPixels);
+    }
+
+    public double getCellCentreLine(final int cellLine) {
+        return lineLo + (cellLine + 0.5) * spacing;
+    }
+
+    public double getCellCentrePixel(final int cellPixel) {
+        return pixLo + (cellPixel + 0.5) * spacing;
+    }
+
+    /**
+     * @return the value of a plane at the node nearest to a position
+     */
+    public double getNearestNode(final int plane, final double line, final double pixel) {
+        final int r = clamp((int) Math.round((line - lineLo) / spacing), numCellLines + 1) + 1;
+        final int c = clamp((int) Math.round((pixel - pixLo) / spacing), numCellPixels + 1) + 1;
+        return planes[plane][r * numNodePixels + c];
+    }
+
+    /**
+     * Interpolate a plane at a position.
+     */
+    public double interpolate(final int plane, final double line, final double pixel) {
+        final int i = getCellLine(line);
+        final int j = getCellPixel(pixel);
+        final double[] wl = new double[4];
+        final double[] wp = new double[4];
+        weights((line - lineLo) / spacing - i, wl);
+        weights((pixel - pixLo) / spacing - j, wp);
+
+        final double[] p = planes[plane];
+        double sum = 0;
+        for (int m = 0; m < 4; m++) {
+            final int row = (i + m) * numNodePixels + j;
+            sum += wl[m] * (wp[0] * p[row] + wp[1] * p[row + 1] + wp[2] * p[row + 2] + wp[3] * p[row + 3]);
+        }
+        return sum;
+    }
+
+    /**
+     * Interpolate a plane along a row of pixels.
+     *
+     * @param plane     to interpolate
+     * @param line      of the row
+     * @param pixel0    first pixel
+     * @param numPixels pixels of the row
+     * @param out       to write the values of the pixels to
+     */
+    public void interpolateRow(final int plane, final double line, final int pixel0, final int numPixels,
+                               final double[] out) {
+        final int i = getCellLine(line);
+        final double[] wl = new double[4];
+        weights((line - lineLo) / spacing - i, wl);
+
+        // the node columns interpolated to the line
+        final double[] p = planes[plane];
+        final double[] column = new double[numNodePixels];
+        for (int c = 0; c < numNodePixels; c++) {
+            final int index = i * numNodePixels + c;
+            column[c] = wl[0] * p[index] + wl[1] * p[index + numNodePixels]
+                    + wl[2] * p[index + 2 * numNodePixels] + wl[3] * p[index + 3 * numNodePixels];
+        }
+
+        final double[] wp = new double[4];
+        for (int x = 0; x < numPixels; x++) {
+            final int pixel = pixel0 + x;
+            final int j = getCellPixel(pixel);
+            weights((double) (pixel - pixLo) / spacing - j, wp);
+            out[x] = wp[0] * column[j] + wp[1] * column[j + 1] + wp[2] * column[j + 2] + wp[3] * column[j + 3];
+        }
+    }
+
+    private double getNodeLine(final int r) {
+        return lineLo + (double) (r - 1) * spacing;
+    }
+
+    private double getNodePixel(final int c) {
+        return pixLo + (double) (c - 1) * spacing;
+    }
+
+    private static int clamp(final int cell, final int numCells) {
+        return cell < 0 ? 0 : (cell >= numCells ? numCells - 1 : cell);
+    }
+
+    /**
+     * Catmull-Rom weights of the nodes -1, 0, 1 and 2 of a cell at the fraction t of the cell.
+     */
+    private static void weights(final double t, final double[] w) {
+        final double t2 = t * t;
+        final double t3 = t2 * t;
+        w[0] = 0.5 * (-t3 + 2 * t2 - t);
+        w[1] = 0.5 * (3 * t3 - 5 * t2 + 2);
+        w[2] = 0.5 * (-3 * t3 + 4 * t2 + t);
+        w[3] = 0.5 * (t3 - t2);
+    }
+}
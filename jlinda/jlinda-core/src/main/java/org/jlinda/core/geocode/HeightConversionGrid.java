@@ -0,0 +1,331 @@
+package org.jlinda.core.geocode;
+
+import org.esa.snap.core.util.SystemUtils;
+import org.jblas.DoubleMatrix;
+import org.jlinda.core.Orbit;
+import org.jlinda.core.Point;
+import org.jlinda.core.SLCImage;
+import org.jlinda.core.Window;
+import org.jlinda.core.utils.PolyUtils;
+
+import java.util.logging.Logger;
+
+import static org.jlinda.core.Constants.PI;
+import static org.jlinda.core.Constants.SOL;
+
+/**
+ * Converts unwrapped phase to height in the master geometry, the phase being that of the height above the
+ * ellipsoid, as for Slant2Height.
+ * <p>
+ * The exact conversion of a pixel inverts the reference phase of the orbits, that is lph2xyz on the master orbit
+ * and xyz2t on the slave orbit, for height. Instead of doing this for every pixel, or fitting one 2D polynomial
+ * through the whole scene, the grid:
+ * <ol>
+ * <li>samples the reference phase at heights between 0 and 5000 m on a sparse grid of nodes, and fits height as a
+ * polynomial of the phase at every node. The linear coefficient is the height of ambiguity over 2 pi, and the higher
+ * ones its change with height through the baseline geometry.</li>
+ * <li>interpolates the coefficients to the pixels with BicubicGrid.</li>
+ * <li>checks the interpolated conversion against the exact one at the centre and the corners of every cell of the
+ * grid, at heights between the samples, and flags the cells where they differ by more than the tolerance.</li>
+ * <li>refines the height of the pixels in the flagged cells with one Newton step on the exact reference phase. The
+ * orbit solutions of the step are seeded with those of the previous pixel of the row, or those of the nearest node,
+ * so they converge in an iteration or two.</li>
+ * </ol>
+ * Once built, an instance may be shared between threads.
+ */
+public final class HeightConversionGrid {
+
+    private static final Logger logger = SystemUtils.LOG;
+
+    private static final int MAXHEIGHT = 5000; // max height of the samples
+
+    private final SLCImage master;
+    private final Orbit masterOrbit;
+    private final SLCImage slave;
+    private final Orbit slaveOrbit;
+
+    private final int nHeights;
+    private final int degree;
+    private final double phaseFactor; // phase per second of slave range time
+
+    private Window dataWindow;
+    private int nodeSpacing = 64;
+    private double tolerance = 0.01;
+
+    private double phaseScale; // phase of MAXHEIGHT at the scene centre, which normalizes the phase of the fits
+    private BicubicGrid grid;
+    private boolean[] refine;
+    private int numRefinedCells;
+
+    /**
+     * @param nHeights    heights at which the reference phase is sampled at the nodes, at least degree + 1
+     * @param degree      of the polynomial of height in phase
+     * @param master      metadata
+     * @param masterOrbit orbit
+     * @param slave       metadata
+     * @param slaveOrbit  orbit
+     */
+    public HeightConversionGrid(int nHeights, int degree,
+                                SLCImage master, Orbit masterOrbit, SLCImage slave, Orbit slaveOrbit) {
+        if (nHeights < degree + 1) {
+            throw new IllegalArgumentException("HeightConversionGrid: " + nHeights
+                    + " height samples cannot be fitted by a polynomial of degree " + degree);
+        }
+        this.nHeights = nHeights;
+        this.degree = degree;
+        this.master = master;
+        this.masterOrbit = masterOrbit;
+        this.slave = slave;
+        this.slaveOrbit = slaveOrbit;
+        this.phaseFactor = (4. * PI * SOL) / slave.getRadarWavelength();
+    }
+
+    public void setDataWindow(Window window) {
+        this.dataWindow = window;
+    }
+
+    /**
+     * @param spacing of the nodes in lines and pixels, 64 by default
+     */
+    public void setNodeSpacing(int spacing) {
+        this.nodeSpacing = spacing;
+    }
+
+    /**
+     * @param tolerance of the interpolated height in meters above which a cell is refined, 0.01 by default
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getNumCells() {
+        return grid.getNumCellLines() * grid.getNumCellPixels();
+    }
+
+    public int getNumRefinedCells() {
+        return numRefinedCells;
+    }
+
+    /**
+     * Sample the nodes and flag the cells to refine.
+     */
+    public void build() throws Exception {
+
+        final double centreLine = 0.5 * (dataWindow.linelo + dataWindow.linehi);
+        final double centrePixel = 0.5 * (dataWindow.pixlo + dataWindow.pixhi);
+        final Point xyzCentre = masterOrbit.lph2xyz(centreLine, centrePixel, 0, master);
+        final Point timeCentre = slaveOrbit.xyz2t(xyzCentre, slave);
+
+        final ReferencePhase scale = new ReferencePhase(new double[]{MAXHEIGHT}, xyzCentre, timeCentre.y);
+        final double[] scalePhase = new double[1];
+        scale.deltaPhase(centreLine, centrePixel, scalePhase);
+        phaseScale = scalePhase[0];
+        if (!(Math.abs(phaseScale) > 0)) {
+            throw new IllegalArgumentException("HeightConversionGrid: the reference phase does not change with height");
+        }
+
+        // ______ STEP 1 : fit height in phase at the nodes ______
+        final double heightStep = (double) MAXHEIGHT / (nHeights - 1);
+        final double[] heights = new double[nHeights - 1];
+        for (int k = 0; k < heights.length; k++) {
+            heights[k] = (k + 1) * heightStep;
+        }
+        grid = new BicubicGrid(dataWindow, nodeSpacing, degree + 5, new NodeFit(heights, xyzCentre, timeCentre.y));
+
+        // ______ STEP 2 : flag the cells where the interpolation is off, halfway between the samples ______
+        final double[] testHeights = new double[nHeights - 1];
+        for (int k = 0; k < testHeights.length; k++) {
+            testHeights[k] = (k + 0.5) * heightStep;
+        }
+        final HeightCheck check = new HeightCheck(testHeights, xyzCentre, timeCentre.y);
+
+        // the corners of the last cells are taken on the border of the window
+        final int numCellLines = grid.getNumCellLines();
+        final int numCellPixels = grid.getNumCellPixels();
+        final boolean[] cornerOff = new boolean[(numCellLines + 1) * (numCellPixels + 1)];
+        for (int i = 0; i <= numCellLines; i++) {
+            final double line = Math.min(dataWindow.linelo + (long) i * nodeSpacing, dataWindow.linehi);
+            for (int j = 0; j <= numCellPixels; j++) {
+                final double pixel = Math.min(dataWindow.pixlo + (long) j * nodeSpacing, dataWindow.pixhi);
+                cornerOff[i * (numCellPixels + 1) + j] = check.isOff(line, pixel);
+            }
+        }
+
+        refine = new boolean[numCellLines * numCellPixels];
+        numRefinedCells = 0;
+        for (int i = 0; i < numCellLines; i++) {
+            final double line = Math.min(grid.getCellCentreLine(i), dataWindow.linehi);
+            final int corner = i * (numCellPixels + 1);
+            for (int j = 0; j < numCellPixels; j++) {
+                final double pixel = Math.min(grid.getCellCentrePixel(j), dataWindow.pixhi);
+                if (cornerOff[corner + j] || cornerOff[corner + j + 1] || cornerOff[corner + numCellPixels + 1 + j]
+                        || cornerOff[corner + numCellPixels + 2 + j] || check.isOff(line, pixel)) {
+                    refine[i * numCellPixels + j] = true;
+                    numRefinedCells++;
+                }
+            }
+        }
+        logger.fine("HeightConversionGrid: " + numRefinedCells + " of " + refine.length + " cells refined");
+    }
+
+    /**
+     * Convert a tile of phase to height in place.
+     *
+     * @param tileWindow of the tile
+     * @param data       the phase of the tile, a row per line; NaN is left as is
+     */
+    public void convert(final Window tileWindow, final float[] data) throws Exception {
+
+        final int width = (int) tileWindow.pixels();
+        final int pixel0 = (int) tileWindow.pixlo;
+        final int numCellPixels = grid.getNumCellPixels();
+        final double[][] rowCoeffs = new double[degree + 1][width];
+
+        int index = 0;
+        for (long line = tileWindow.linelo; line <= tileWindow.linehi; line++) {
+            for (int d = 0; d <= degree; d++) {
+                grid.interpolateRow(d, line, pixel0, width, rowCoeffs[d]);
+            }
+            final int cellLine = grid.getCellLine(line);
+            final double azTime = master.line2ta(line);
+
+            // solutions of the previous refined pixel of the row
+            Point xyzZero = null;
+            Point xyzHeight = null;
+            double slaveTime = 0;
+
+            for (int x = 0; x < width; x++, index++) {
+                final double phase = data[index];
+                if (Double.isNaN(phase)) {
+                    continue;
+                }
+
+                // height and its derivative in the normalized phase
+                final double u = phase / phaseScale;
+                double height = rowCoeffs[degree][x];
+                double slope = 0;
+                for (int d = degree - 1; d >= 0; d--) {
+                    slope = slope * u + height;
+                    height = height * u + rowCoeffs[d][x];
+                }
+
+                final int pixel = pixel0 + x;
+                if (refine[cellLine * numCellPixels + grid.getCellPixel(pixel)]) {
+                    if (xyzZero == null) {
+                        xyzZero = new Point(grid.getNearestNode(degree + 1, line, pixel),
+                                grid.getNearestNode(degree + 2, line, pixel),
+                                grid.getNearestNode(degree + 3, line, pixel));
+                        xyzHeight = xyzZero;
+                        slaveTime = grid.getNearestNode(degree + 4, line, pixel);
+                    }
+                    final double rgTime = master.pix2tr(pixel);
+                    xyzZero = masterOrbit.lph2xyz(azTime, rgTime, 0, xyzZero);
+                    final Point timeZero = slaveOrbit.xyz2t(xyzZero, slaveTime);
+                    xyzHeight = masterOrbit.lph2xyz(azTime, rgTime, height, xyzHeight);
+                    final Point timeHeight = slaveOrbit.xyz2t(xyzHeight, timeZero.y);
+                    slaveTime = timeZero.y;
+
+                    final double residual = phaseFactor * (timeHeight.x - timeZero.x) - phase;
+                    height -= residual / phaseScale * slope;
+                }
+                data[index] = (float) height;
+            }
+        }
+    }
+
+    /**
+     * The exact reference phase of a pixel at some heights with respect to that at height 0. Every orbit solution
+     * is seeded with the one of the previous call.
+     */
+    private class ReferencePhase {
+
+        final double[] heights;
+        final Point[] xyz;
+        Point xyzZero;
+        double slaveTime;
+
+        ReferencePhase(final double[] heights, final Point xyzSeed, final double slaveTimeSeed) {
+            this.heights = heights;
+            this.xyz = new Point[heights.length];
+            this.xyzZero = xyzSeed;
+            this.slaveTime = slaveTimeSeed;
+        }
+
+        void deltaPhase(final double line, final double pixel, final double[] phase) throws Exception {
+            final double azTime = master.line2ta(line);
+            final double rgTime = master.pix2tr(pixel);
+
+            xyzZero = masterOrbit.lph2xyz(azTime, rgTime, 0, xyzZero);
+            final Point timeZero = slaveOrbit.xyz2t(xyzZero, slaveTime);
+            slaveTime = timeZero.y;
+
+            for (int k = 0; k < heights.length; k++) {
+                xyz[k] = masterOrbit.lph2xyz(azTime, rgTime, heights[k], xyz[k] == null ? xyzZero : xyz[k]);
+                phase[k] = phaseFactor * (slaveOrbit.xyz2t(xyz[k], slaveTime).x - timeZero.x);
+            }
+        }
+    }
+
+    /**
+     * Compares the interpolated conversion with the exact one at some heights.
+     */
+    private final class HeightCheck extends ReferencePhase {
+
+        final double[] phase;
+        final double[] coeffs = new double[degree + 1];
+
+        HeightCheck(final double[] heights, final Point xyzSeed, final double slaveTimeSeed) {
+            super(heights, xyzSeed, slaveTimeSeed);
+            phase = new double[heights.length];
+        }
+
+        boolean isOff(final double line, final double pixel) throws Exception {
+            deltaPhase(line, pixel, phase);
+            for (int d = 0; d <= degree; d++) {
+                coeffs[d] = grid.interpolate(d, line, pixel);
+            }
+            for (int k = 0; k < heights.length; k++) {
+                final double height = PolyUtils.polyVal1D(phase[k] / phaseScale, coeffs);
+                if (Math.abs(height - heights[k]) > tolerance) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Node values: the coefficients of height in normalized phase, followed by the position at height 0 and its
+     * slave azimuth time, which seed the refinement.
+     */
+    private final class NodeFit extends ReferencePhase implements BicubicGrid.NodeFunction {
+
+        final double[] phase;
+        final DoubleMatrix u;
+        final DoubleMatrix h;
+
+        NodeFit(final double[] heights, final Point xyzSeed, final double slaveTimeSeed) {
+            super(heights, xyzSeed, slaveTimeSeed);
+            phase = new double[heights.length];
+            u = new DoubleMatrix(heights.length + 1);
+            h = new DoubleMatrix(heights.length + 1);
+            for (int k = 0; k < heights.length; k++) {
+                h.put(k + 1, heights[k]);
+            }
+        }
+
+        @Override
+        public void compute(final double line, final double pixel, final double[] values) throws Exception {
+            deltaPhase(line, pixel, phase);
+            for (int k = 0; k < phase.length; k++) {
+                u.put(k + 1, phase[k] / phaseScale);
+            }
+            final double[] coeffs = PolyUtils.polyFit(u, h, degree);
+            System.arraycopy(coeffs, 0, values, 0, degree + 1);
+            values[degree + 1] = xyzZero.x;
+            values[degree + 2] = xyzZero.y;
+            values[degree + 3] = xyzZero.z;
+            values[degree + 4] = slaveTime;
+        }
+    }
+}
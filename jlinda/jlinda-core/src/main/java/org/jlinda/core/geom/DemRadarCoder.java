@@ -0,0 +1,363 @@
+package org.jlinda.core.geom;
+
+import org.apache.commons.math3.util.FastMath;
+import org.jlinda.core.Constants;
+import org.jlinda.core.Ellipsoid;
+import org.jlinda.core.Orbit;
+import org.jlinda.core.Point;
+import org.jlinda.core.SLCImage;
+
+import java.util.Arrays;
+
+/**
+ * Radar codes the posts of a DEM tile and computes their reference phase.
+ * <p>
+ * The result is that of calling Orbit.ell2lp, Ellipsoid.ell2xyz, Orbit.xyz2t and Orbit.lp2xyz for every post, but:
+ * the ellipsoid terms are computed once per DEM row and column; the orbit polynomials are evaluated together with
+ * their derivatives in one Horner pass; and every iterative solution is seeded with the one of the previous post,
+ * which is a fraction of a line or pixel away, so that it converges in one or two iterations instead of starting
+ * from the scene centre.
+ * <p>
+ * An instance is not thread safe.
+ */
+final class DemRadarCoder {
+
+    private static final int MAXITER = 10;
+    private static final double CRITERPOS = 1e-6;
+    private static final double CRITERTIM = 1e-10;
+    private static final double SOL = Constants.SOL;
+    private static final double ELL_A2 = Constants.WGS84_A * Constants.WGS84_A;
+    private static final double ELL_B2 = Constants.WGS84_B * Constants.WGS84_B;
+
+    private static final int NUM_PLANES = 6;
+    private static final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+
+    private final SLCImage masterMeta;
+    private final SLCImage slaveMeta;
+    private final OrbitPolynomial masterOrbit;
+    private final OrbitPolynomial slaveOrbit;
+    private final double phaseFactor;
+
+    // solution of the previous post
+    private double masterTime;
+    private double slaveTime;
+    private final double[] flatEarthPoint = new double[3];
+
+    DemRadarCoder(final SLCImage masterMeta, final Orbit masterOrbit, final SLCImage slaveMeta, final Orbit slaveOrbit) {
+        this.masterMeta = masterMeta;
+        this.slaveMeta = slaveMeta;
+        this.masterOrbit = new OrbitPolynomial(masterOrbit);
+        this.slaveOrbit = new OrbitPolynomial(slaveOrbit);
+
+        final double slaveMin4piCDivLam = (-4 * Math.PI * Constants.SOL) / slaveMeta.getRadarWavelength();
+        this.phaseFactor = masterMeta.isBiStaticStack ? slaveMin4piCDivLam * 0.5 : slaveMin4piCDivLam;
+    }
+
+    /**
+     * Get the planes of a radar coded DEM tile from the buffers of the calling thread. The planes are only valid
+     * until the next call on the same thread.
+     *
+     * @param nRows the number of DEM rows
+     * @param nCols the number of DEM columns
+     * @return the six planes radarCode writes to
+     */
+    static double[][][] getBuffers(final int nRows, final int nCols) {
+        return buffers.get().get(nRows, nCols);
+    }
+
+    /**
+     * Radar code a DEM tile, writing every element of the output planes.
+     *
+     * @param dem             the DEM tile
+     * @param useInvalidIndex if true, posts without height get invalid radar coordinates instead of those of the
+     *                        ellipsoid
+     * @param radarX          the master pixel of each post
+     * @param radarY          the master line of each post
+     * @param phase           the reference phase of each post, 0 for posts without height
+     * @param elevation       the height of each post
+     * @param latitude        the latitude of each post
+     * @param longitude       the longitude of each post
+     * @param invalidIndex    the radar coordinate of posts without height when useInvalidIndex is set
+     */
+    void radarCode(final DemTile dem, final boolean useInvalidIndex,
+                   final double[][] radarX, final double[][] radarY, final double[][] phase,
+                   final double[][] elevation, final double[][] latitude, final double[][] longitude,
+                   final double invalidIndex) {
+
+        final int nRows = dem.data.length;
+        final int nCols = dem.data[0].length;
+        final double noDataValue = dem.noDataValue;
+
+        // longitudes accumulate as in the per-post loop
+        final double[] lambda = new double[nCols];
+        final double[] cosLambda = new double[nCols];
+        final double[] sinLambda = new double[nCols];
+        double lam = dem.lon0;
+        for (int j = 0; j < nCols; j++) {
+            checkRadians(lam);
+            lambda[j] = lam;
+            cosLambda[j] = FastMath.cos(lam);
+            sinLambda[j] = FastMath.sin(lam);
+            lam += dem.longitudeDelta;
+        }
+
+        masterTime = masterMeta.line2ta(0.5 * masterMeta.getApproxRadarCentreOriginal().y);
+        slaveTime = slaveMeta.line2ta(0.5 * slaveMeta.getApproxRadarCentreOriginal().y);
+        final Point xyzCentre = masterMeta.getApproxXYZCentreOriginal();
+        flatEarthPoint[0] = xyzCentre.x;
+        flatEarthPoint[1] = xyzCentre.y;
+        flatEarthPoint[2] = xyzCentre.z;
+
+        double rowMasterTime = masterTime;
+        double rowSlaveTime = slaveTime;
+        final double[] rowFlatEarthPoint = flatEarthPoint.clone();
+
+        double phi = dem.lat0;
+        for (int i = 0; i < nRows; i++) {
+            checkRadians(phi);
+
+            // ellipsoid point at zero height and longitude, to which the height and longitude are added per post
+            final Point meridianPoint = Ellipsoid.ell2xyz(phi, 0, 0);
+            final double cosPhi = FastMath.cos(phi);
+            final double sinPhi = FastMath.sin(phi);
+
+            // each row starts from the solution of the first post of the previous row
+            masterTime = rowMasterTime;
+            slaveTime = rowSlaveTime;
+            System.arraycopy(rowFlatEarthPoint, 0, flatEarthPoint, 0, 3);
+
+            final double[] heights = dem.data[i];
+            final double[] x = radarX[i];
+            final double[] y = radarY[i];
+            final double[] ph = phase[i];
+            final double[] elev = elevation[i];
+            final double[] lat = latitude[i];
+            final double[] lon = longitude[i];
+
+            for (int j = 0; j < nCols; j++) {
+                final double height = heights[j];
+                elev[j] = height;
+                lat[j] = phi;
+                lon[j] = lambda[j];
+
+                final boolean valid = height != noDataValue;
+                final double h = valid ? height : 0;
+                final double a = meridianPoint.x + h * cosPhi;
+                final double px = a * cosLambda[j];
+                final double py = a * sinLambda[j];
+                final double pz = meridianPoint.z + h * sinPhi;
+
+                masterTime = solveAzimuthTime(masterOrbit, px, py, pz, masterTime);
+                final double line = masterMeta.ta2line(masterTime);
+                final double pix = masterMeta.tr2pix(rangeTime(masterOrbit, px, py, pz, masterTime));
+
+                if (valid) {
+                    x[j] = pix;
+                    y[j] = line;
+
+                    slaveTime = solveAzimuthTime(slaveOrbit, px, py, pz, slaveTime);
+                    final double slaveRangeTime = rangeTime(slaveOrbit, px, py, pz, slaveTime);
+
+                    // do not include flat earth phase
+                    solveEllipsoidPoint(masterMeta.line2ta(line), masterMeta.pix2tr(pix), flatEarthPoint);
+                    final double flatEarthAzimuthTime = solveAzimuthTime(slaveOrbit,
+                            flatEarthPoint[0], flatEarthPoint[1], flatEarthPoint[2], slaveTime);
+                    final double flatEarthRangeTime = rangeTime(slaveOrbit,
+                            flatEarthPoint[0], flatEarthPoint[1], flatEarthPoint[2], flatEarthAzimuthTime);
+
+                    ph[j] = phaseFactor * (flatEarthRangeTime - slaveRangeTime);
+                } else {
+                    x[j] = useInvalidIndex ? invalidIndex : pix;
+                    y[j] = useInvalidIndex ? invalidIndex : line;
+                    ph[j] = 0;
+                }
+
+                if (j == 0) {
+                    rowMasterTime = masterTime;
+                    rowSlaveTime = slaveTime;
+                    System.arraycopy(flatEarthPoint, 0, rowFlatEarthPoint, 0, 3);
+                }
+            }
+            phi -= dem.latitudeDelta;
+        }
+    }
+
+    private static void checkRadians(final double angle) {
+        if (angle > Math.PI || angle < -Math.PI) {
+            throw new IllegalArgumentException("Ellipsoid.ell2xyz(): phi/lambda values has to be in radians!");
+        }
+    }
+
+    /**
+     * Solve the zero Doppler azimuth time of a point, as Orbit.xyz2t does.
+     */
+    private static double solveAzimuthTime(final OrbitPolynomial orbit, final double px, final double py,
+                                           final double pz, double azTime) {
+        final double[] s = orbit.state;
+        for (int iter = 0; iter <= MAXITER; ++iter) {
+            orbit.evaluate(azTime);
+            final double dx = px - s[0];
+            final double dy = py - s[1];
+            final double dz = pz - s[2];
+
+            final double doppler = s[3] * dx + s[4] * dy + s[5] * dz;
+            final double dopplerDt = s[6] * dx + s[7] * dy + s[8] * dz - (s[3] * s[3] + s[4] * s[4] + s[5] * s[5]);
+            final double solution = -doppler / dopplerDt;
+            azTime += solution;
+
+            if (Math.abs(solution) < CRITERTIM) {
+                break;
+            }
+        }
+        return azTime;
+    }
+
+    private static double rangeTime(final OrbitPolynomial orbit, final double px, final double py, final double pz,
+                                    final double azTime) {
+        orbit.evaluatePosition(azTime);
+        final double[] s = orbit.state;
+        final double dx = px - s[0];
+        final double dy = py - s[1];
+        final double dz = pz - s[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz) / SOL;
+    }
+
+    /**
+     * Solve the point on the ellipsoid at a master azimuth and range time, as Orbit.lp2xyz does.
+     *
+     * @param point the initial value, replaced by the solution
+     */
+    private void solveEllipsoidPoint(final double azTime, final double rgTime, final double[] point) {
+        masterOrbit.evaluate(azTime);
+        final double[] s = masterOrbit.state;
+        final double sx = s[0], sy = s[1], sz = s[2];
+        final double vx = s[3], vy = s[4], vz = s[5];
+        final double range = SOL * rgTime;
+        final double range2 = range * range;
+
+        for (int iter = 0; iter <= MAXITER; iter++) {
+            final double x = point[0], y = point[1], z = point[2];
+            final double dx = x - sx;
+            final double dy = y - sy;
+            final double dz = z - sz;
+
+            final double b0 = -(vx * dx + vy * dy + vz * dz);
+            final double b1 = -(dx * dx + dy * dy + dz * dz - range2);
+            final double b2 = -((x * x + y * y) / ELL_A2 + (z * z) / ELL_B2 - 1.0);
+
+            // LU solution of the 3x3 system as in LinearAlgebraUtils.solve33
+            final double a10 = 2 * dx, a11 = 2 * dy, a12 = 2 * dz;
+            final double a20 = 2 * x / ELL_A2, a21 = 2 * y / ELL_A2, a22 = 2 * z / ELL_B2;
+            final double l10 = a10 / vx;
+            final double l20 = a20 / vx;
+            final double u11 = a11 - l10 * vy;
+            final double l21 = (a21 - vy * l20) / u11;
+            final double u12 = a12 - l10 * vz;
+            final double u22 = a22 - l20 * vz - l21 * u12;
+
+            final double c1 = b1 - b0 * l10;
+            final double c2 = b2 - b0 * l20 - c1 * l21;
+            final double d2 = c2 / u22;
+            final double d1 = (c1 - u12 * d2) / u11;
+            final double d0 = (b0 - vy * d1 - vz * d2) / vx;
+
+            point[0] += d0;
+            point[1] += d1;
+            point[2] += d2;
+
+            if (Math.abs(d0) < CRITERPOS && Math.abs(d1) < CRITERPOS && Math.abs(d2) < CRITERPOS) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * The orbit interpolation polynomials of Orbit, in normalised time.
+     */
+    private static final class OrbitPolynomial {
+        private final double timeCentre;
+        private final double[] coeffX;
+        private final double[] coeffY;
+        private final double[] coeffZ;
+
+        // position, velocity and acceleration
+        final double[] state = new double[9];
+
+        OrbitPolynomial(final Orbit orbit) {
+            final double[] time = orbit.getTime();
+            this.timeCentre = time[time.length / 2];
+            this.coeffX = orbit.getCoeff_X();
+            this.coeffY = orbit.getCoeff_Y();
+            this.coeffZ = orbit.getCoeff_Z();
+        }
+
+        void evaluate(final double azTime) {
+            final double t = (azTime - timeCentre) / 10.0;
+            horner(coeffX, t, 0);
+            horner(coeffY, t, 1);
+            horner(coeffZ, t, 2);
+        }
+
+        void evaluatePosition(final double azTime) {
+            final double t = (azTime - timeCentre) / 10.0;
+            state[0] = position(coeffX, t);
+            state[1] = position(coeffY, t);
+            state[2] = position(coeffZ, t);
+        }
+
+        /**
+         * Evaluate a polynomial and its first two derivatives, scaled from normalised to seconds.
+         */
+        private void horner(final double[] c, final double t, final int k) {
+            final int n = c.length - 1;
+            double p = c[n];
+            double d1 = 0;
+            double d2 = 0;
+            for (int i = n - 1; i >= 0; --i) {
+                d2 = d2 * t + d1;
+                d1 = d1 * t + p;
+                p = p * t + c[i];
+            }
+            state[k] = p;
+            state[k + 3] = d1 / 10.0;
+            state[k + 6] = 2 * d2 / 100.0;
+        }
+
+        private static double position(final double[] c, final double t) {
+            double p = 0.0;
+            for (int i = c.length - 1; i >= 0; --i) {
+                p = p * t + c[i];
+            }
+            return p;
+        }
+    }
+
+    /**
+     * Per-thread rows of the radar coded planes, reused while the DEM tiles keep the same width.
+     */
+    private static final class Buffers {
+        private int nCols = -1;
+        private final double[][][] rows = new double[NUM_PLANES][0][];
+
+        double[][][] get(final int nRows, final int nCols) {
+            if (nCols != this.nCols) {
+                for (int k = 0; k < NUM_PLANES; k++) {
+                    rows[k] = new double[0][];
+                }
+                this.nCols = nCols;
+            }
+            final double[][][] planes = new double[NUM_PLANES][][];
+            for (int k = 0; k < NUM_PLANES; k++) {
+                if (rows[k].length < nRows) {
+                    final int have = rows[k].length;
+                    rows[k] = Arrays.copyOf(rows[k], nRows);
+                    for (int i = have; i < nRows; i++) {
+                        rows[k][i] = new double[nCols];
+                    }
+                }
+                planes[k] = rows[k].length == nRows ? rows[k] : Arrays.copyOf(rows[k], nRows);
+            }
+            return planes;
+        }
+    }
+}
@@ -48,7 +48,6 @@ public class TopoPhase {
     private int nCols;
 
     private double rngAzRatio = 0;
-    private boolean isBiStaticStack = false;
     private static final double invalidIndex = -9999.0;
 
     public TopoPhase(SLCImage masterMeta, Orbit masterOrbit, SLCImage slaveMeta, Orbit slaveOrbit, Window window,
@@ -62,8 +61,6 @@ public class TopoPhase {
 
         nRows = dem.data.length;
         nCols = dem.data[0].length;
-
-        isBiStaticStack = masterMeta.isBiStaticStack;
     }
 
     public void setMasterOrbit(Orbit masterOrbit) {
@@ -107,120 +104,52 @@ public class TopoPhase {
     }
 
     public void radarCode(final boolean useInvalidIndex) throws Exception {
+        radarCode(useInvalidIndex, false);
+    }
 
-        //logger.info("Converting DEM to radar system for this tile.");
-
-        demRadarCode_x = new double[nRows][nCols];
-        demRadarCode_y = new double[nRows][nCols];
-        demRadarCode_phase = new double[nRows][nCols];
-        demElevation = new double[nRows][nCols];
-        demLatitude = new double[nRows][nCols];
-        demLongitude = new double[nRows][nCols];
-
-        final int nPoints = nRows * nCols;
-        final boolean onlyTopoRefPhase = true;
-
-        //logger.info("Number of points in DEM: " + nPoints);
-
-        double masterMin4piCDivLam = (-4 * Math.PI * Constants.SOL) / masterMeta.getRadarWavelength();
-        double slaveMin4piCDivLam = (-4 * Math.PI * Constants.SOL) / slaveMeta.getRadarWavelength();
-
-        double phi, lambda, height, line, pix, ref_phase;
-
-        final double upperLeftPhi = dem.lat0;// - dem.indexPhi0DEM * dem.latitudeDelta;
-        final double upperLeftLambda = dem.lon0;// + dem.indexLambda0DEM * dem.longitudeDelta;
-
-        Point pointOnDem;
-        Point slaveTime;
-
-        phi = upperLeftPhi;
-        for (int i = 0; i < nRows; i++) {
-
-//            if ((i % 100) == 0) {
-//                logger.info("Radarcoding DEM line: " + i + " (" + Math.floor(.5 + (100. * (double) i / (double) (nRows))) + "%");
-//            }
-
-            lambda = upperLeftLambda;
-            double[] heightArray = dem.data[i];
-
-            for (int j = 0; j < nCols; j++) {
-
-                height = heightArray[j];
-                demElevation[i][j] = height;
-                demLatitude[i][j] = phi;
-                demLongitude[i][j] = lambda;
-
-                if (height != dem.noDataValue) {
-
-                    double[] phi_lam_height = {phi, lambda, height};
-                    Point sarPoint = masterOrbit.ell2lp(phi_lam_height, masterMeta);
-
-                    line = sarPoint.y;
-                    pix = sarPoint.x;
-
-                    demRadarCode_y[i][j] = line;
-                    demRadarCode_x[i][j] = pix;
-
-                    pointOnDem = Ellipsoid.ell2xyz(phi_lam_height);
-                    slaveTime = slaveOrbit.xyz2t(pointOnDem, slaveMeta);
-/*
-                if (outH2PH == true) {
-
-                    // compute h2ph factor
-                    Point masterSatPos = masterOrbit.getXYZ(masterTime.y);
-                    Point slaveSatpOS = slaveOrbit.getXYZ(slaveTime.y);
-                    double B = masterSatPos.distance(slaveSatpOS);
-                    double Bpar = Constants.SOL * (masterTime.x - masterTime.y);
-                    Point rangeDistToMaster = masterSatPos.min(pointOnDem);
-                    Point rangeDistToSlave = slaveSatpOS.min(pointOnDem);
-                    // double thetaMaster = masterSatPos.angle(rangeDistToMaster);  // look angle - not needed
-                    double thetaMaster = pointOnDem.angle(rangeDistToMaster); // incidence angle
-                    double thetaSlave = pointOnDem.angle(rangeDistToSlave); // incidence angle slave
-                    double Bperp = (thetaMaster > thetaSlave) ? // sign ok
-                            Math.sqrt(MathUtils.sqr(B) - MathUtils.sqr(Bpar))
-                            : -Math.sqrt(MathUtils.sqr(B) - MathUtils.sqr(Bpar));
-
-                    h2phArray[i][j] = Bperp / (masterTime.x * Constants.SOL * Math.sin(thetaMaster));
-                }
-*/
-                    // do not include flat earth phase
-                    if (onlyTopoRefPhase) {
-                        Point masterXYZPos = masterOrbit.lp2xyz(line, pix, masterMeta);
-                        Point flatEarthTime = slaveOrbit.xyz2t(masterXYZPos, slaveMeta);
-                        if (isBiStaticStack) {
-                            ref_phase = slaveMin4piCDivLam * (flatEarthTime.x - slaveTime.x) * 0.5;
-                        } else {
-                            ref_phase = slaveMin4piCDivLam * (flatEarthTime.x - slaveTime.x);
-                        }
-                    } else {
-                        // include flatearth, ref.pha = phi_topo+phi_flatearth
-                        ref_phase = masterMin4piCDivLam * masterMeta.pix2tr(pix) - slaveMin4piCDivLam * slaveTime.x;
-                    }
-
-                    demRadarCode_phase[i][j] = ref_phase;
-
-                } else {
+    /**
+     * Radar code the DEM tile.
+     *
+     * @param useInvalidIndex mark posts without height with invalid radar coordinates
+     * @param pooled          write into the buffers of the calling thread instead of new arrays, in which case the
+     *                        radar coded DEM is only valid until the next pooled call on the same thread
+     */
+    private void radarCode(final boolean useInvalidIndex, final boolean pooled) {
 
-                    double[] phi_lam_height = {phi, lambda, 0};
-                    Point sarPoint = masterOrbit.ell2lp(phi_lam_height, masterMeta);
+        //logger.info("Converting DEM to radar system for this tile.");
 
-                    line = sarPoint.y;
-                    pix = sarPoint.x;
+        if (pooled) {
+            final double[][][] planes = DemRadarCoder.getBuffers(nRows, nCols);
+            demRadarCode_x = planes[0];
+            demRadarCode_y = planes[1];
+            demRadarCode_phase = planes[2];
+            demElevation = planes[3];
+            demLatitude = planes[4];
+            demLongitude = planes[5];
+        } else {
+            demRadarCode_x = new double[nRows][nCols];
+            demRadarCode_y = new double[nRows][nCols];
+            demRadarCode_phase = new double[nRows][nCols];
+            demElevation = new double[nRows][nCols];
+            demLatitude = new double[nRows][nCols];
+            demLongitude = new double[nRows][nCols];
+        }
 
-                    if (useInvalidIndex) {
-                        demRadarCode_y[i][j] = invalidIndex;//line;
-                        demRadarCode_x[i][j] = invalidIndex;//pix;
-                    } else {
-                        demRadarCode_y[i][j] = line;
-                        demRadarCode_x[i][j] = pix;
-                    }
-                    demRadarCode_phase[i][j] = 0;
-                }
+        final DemRadarCoder radarCoder = new DemRadarCoder(masterMeta, masterOrbit, slaveMeta, slaveOrbit);
+        radarCoder.radarCode(dem, useInvalidIndex, demRadarCode_x, demRadarCode_y, demRadarCode_phase,
+                demElevation, demLatitude, demLongitude, invalidIndex);
+    }
 
-                lambda += dem.longitudeDelta;
-            }
-            phi -= dem.latitudeDelta;
-        }
+    /**
+     * Drop the radar coded DEM once it is gridded.
+     */
+    private void releaseRadarCode() {
+        demRadarCode_x = null;
+        demRadarCode_y = null;
+        demRadarCode_phase = null;
+        demElevation = null;
+        demLatitude = null;
+        demLongitude = null;
     }
 
 
@@ -480,10 +409,13 @@ public class TopoPhase {
 
             // We do not want to use ivalidIndex if it is outputting lat/lon because we do not want to mask out the sea
             // pixels like we do with elevation.
-            topoPhase.radarCode(!outputLatLon);
+            topoPhase.radarCode(!outputLatLon, true);
 
             topoPhase.gridData(outputDEM, outputLatLon);
 
+            // the radar coded DEM is in the buffers of this thread
+            topoPhase.releaseRadarCode();
+
             return topoPhase;
 
         } catch (Exception e) {
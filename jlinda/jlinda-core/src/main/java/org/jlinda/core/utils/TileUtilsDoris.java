@@ -71,6 +71,35 @@ public class TileUtilsDoris {
         return result;
     }
 
+    public static float[] pullFloatArray(final Tile tile) {
+
+        final int length = tile.getWidth() * tile.getHeight();
+        final float[] result = new float[length];
+
+        final ProductData samples = tile.getRawSamples();
+        for (int i = 0; i < length; i++) {
+            result[i] = samples.getElemFloatAt(i);
+        }
+
+        return result;
+    }
+
+    public static void pushFloatArray(float[] data, int dataWidth, int x0, int y0, Tile tile, Rectangle rect) {
+
+        final ProductData samples = tile.getRawSamples(); // checkout
+        final int width = (int) rect.getWidth();
+
+        for (int y = 0, rowIdx = y0; y < rect.getHeight(); y++, rowIdx++) {
+            final int stride = y * width;
+            final int dataStride = rowIdx * dataWidth + x0;
+            for (int x = 0; x < rect.getWidth(); x++) {
+                samples.setElemFloatAt(stride + x, data[dataStride + x]);
+            }
+        }
+        tile.setRawSamples(samples); // commit
+        samples.dispose();
+    }
+
     public static void pushFloatMatrix(FloatMatrix data, Tile tile, Rectangle rect) {
         ProductData samples = tile.getRawSamples(); // checkout
         final int width = tile.getWidth();
@@ -0,0 +1,252 @@
+package org.jlinda.core.delaunay;
+
+import org.jlinda.core.Window;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares DelaunayTriangulator and the interpolation of its triangles with FastDelaunayTriangulator
+ */
+public class DelaunayTriangulatorTest {
+
+    private static final double INVALID_INDEX = -9999.0;
+    private static final double XY_RATIO = 0.25;
+    private static final int N_ROWS = 120;
+    private static final int N_COLS = 100;
+    private static final Window WINDOW = new Window(0, 127, 0, 511);
+
+    @Test
+    public void testEmptyCircumcircles() {
+        final Random random = new Random(3);
+        final int n = 600;
+        final double[] x = new double[n];
+        final double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 40;
+        }
+        // duplicated points are triangulated once
+        x[n - 1] = x[0];
+        y[n - 1] = y[0];
+
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        assertEquals(n, triangulator.setPoints(x, y, 1.0, INVALID_INDEX));
+        triangulator.triangulate();
+
+        final double[] px = triangulator.getX();
+        final double[] py = triangulator.getY();
+        final int[] triangles = triangulator.getTriangles();
+        double area = 0;
+        for (int t = 0; t < triangulator.getNumTriangles(); t++) {
+            final int a = triangles[3 * t];
+            final int b = triangles[3 * t + 1];
+            final int c = triangles[3 * t + 2];
+            area += Math.abs(cross(px, py, a, b, c)) / 2;
+            for (int p = 0; p < n; p++) {
+                if (p != a && p != b && p != c) {
+                    assertFalse(inCircumcircle(px, py, a, b, c, p));
+                }
+            }
+        }
+        assertEquals(convexHullArea(x, y), area, 1e-9);
+    }
+
+    @Test
+    public void testCollinearPoints() {
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        triangulator.setPoints(new double[]{0, 1, 2, 3}, new double[]{0, 2, 4, 6}, 1.0, INVALID_INDEX);
+        triangulator.triangulate();
+        assertEquals(0, triangulator.getNumTriangles());
+    }
+
+    @Test
+    public void testGridSplitIsDelaunay() {
+        final double[][][] grid = warpedGrid(false);
+        final DelaunayTriangulator triangulator = new DelaunayTriangulator();
+        triangulator.setPoints(grid[0], grid[1], XY_RATIO, INVALID_INDEX);
+
+        triangulator.triangulate();
+        final long[] swept = sortedTriangles(triangulator);
+        assertTrue(triangulator.triangulateGrid(N_ROWS, N_COLS));
+        final long[] split = sortedTriangles(triangulator);
+
+        // the sweep also covers the concave parts of the grid boundary
+        int found = 0;
+        for (long triangle : split) {
+            if (Arrays.binarySearch(swept, triangle) >= 0) {
+                found++;
+            }
+        }
+        assertEquals(split.length, found);
+        assertEquals(2 * (N_ROWS - 1) * (N_COLS - 1), split.length);
+
+        // a missing post needs the general triangulation
+        grid[0][40][50] = INVALID_INDEX;
+        triangulator.setPoints(grid[0], grid[1], XY_RATIO, INVALID_INDEX);
+        assertFalse(triangulator.triangulateGrid(N_ROWS, N_COLS));
+    }
+
+    @Test
+    public void testAgreementWithFastDelaunayTriangulator() throws Exception {
+        for (boolean withHoles : new boolean[]{false, true}) {
+            final double[][][] grid = warpedGrid(withHoles);
+            final double[][] z0 = new double[N_ROWS][N_COLS];
+            final double[][] z1 = new double[N_ROWS][N_COLS];
+            for (int i = 0; i < N_ROWS; i++) {
+                for (int j = 0; j < N_COLS; j++) {
+                    z0[i][j] = 800 + 600 * Math.sin(0.11 * i) * Math.cos(0.07 * j);
+                    z1[i][j] = i * N_COLS + j;
+                }
+            }
+
+            final double[][][] expected = newOutput(2);
+            final FastDelaunayTriangulator fdt = TriangleInterpolator.triangulate(grid[0], grid[1], XY_RATIO, INVALID_INDEX);
+            TriangleInterpolator.interpolate(XY_RATIO, WINDOW, 1, 1, 0, INVALID_INDEX, fdt,
+                    new TriangleInterpolator.ZData[]{
+                            new TriangleInterpolator.ZData(z0, expected[0]),
+                            new TriangleInterpolator.ZData(z1, expected[1])});
+
+            final double[][][] actual = newOutput(2);
+            TriangleInterpolator.gridDataLinear(grid[0], grid[1],
+                    new TriangleInterpolator.ZData[]{
+                            new TriangleInterpolator.ZData(z0, actual[0]),
+                            new TriangleInterpolator.ZData(z1, actual[1])},
+                    WINDOW, XY_RATIO, 1, 1, INVALID_INDEX, 0);
+
+            assertSameGrid(expected, actual);
+
+            // the same points as lists
+            final double[] x1d = new double[N_ROWS * N_COLS];
+            final double[] y1d = new double[N_ROWS * N_COLS];
+            final double[] z1d = new double[N_ROWS * N_COLS];
+            for (int i = 0; i < N_ROWS; i++) {
+                for (int j = 0; j < N_COLS; j++) {
+                    x1d[i * N_COLS + j] = grid[0][i][j];
+                    y1d[i * N_COLS + j] = grid[1][i][j];
+                    z1d[i * N_COLS + j] = z0[i][j];
+                }
+            }
+            final double[][][] actual1d = newOutput(1);
+            TriangleInterpolator.gridDataLinear(x1d, y1d,
+                    new TriangleInterpolator.ZData[]{new TriangleInterpolator.ZData(z1d, actual1d[0])},
+                    WINDOW, XY_RATIO, 1, 1, INVALID_INDEX, 0);
+
+            assertSameGrid(new double[][][]{expected[0]}, actual1d);
+        }
+    }
+
+    /**
+     * Line and pixel positions of a radar coded DEM: a sheared, jittered grid around the tile, with a lake of
+     * invalid posts if asked.
+     */
+    private static double[][][] warpedGrid(final boolean withHoles) {
+        final Random random = new Random(7);
+        final double[][] line = new double[N_ROWS][N_COLS];
+        final double[][] pixel = new double[N_ROWS][N_COLS];
+        for (int i = 0; i < N_ROWS; i++) {
+            for (int j = 0; j < N_COLS; j++) {
+                line[i][j] = -20 + 1.5 * i + 0.2 * j + 0.3 * Math.sin(0.1 * j) + 0.2 * (random.nextDouble() - 0.5);
+                pixel[i][j] = -30 + 6 * j - 0.3 * i + 0.8 * (random.nextDouble() - 0.5);
+            }
+        }
+        if (withHoles) {
+            for (int i = 40; i < 50; i++) {
+                for (int j = 30; j < 45; j++) {
+                    line[i][j] = INVALID_INDEX;
+                    pixel[i][j] = INVALID_INDEX;
+                }
+            }
+        }
+        return new double[][][]{line, pixel};
+    }
+
+    private static double[][][] newOutput(final int nz) {
+        final double[][][] out = new double[nz][(int) WINDOW.lines()][(int) WINDOW.pixels()];
+        for (double[][] plane : out) {
+            for (double[] row : plane) {
+                Arrays.fill(row, INVALID_INDEX);
+            }
+        }
+        return out;
+    }
+
+    private static void assertSameGrid(final double[][][] expected, final double[][][] actual) {
+        int filled = 0;
+        for (int k = 0; k < expected.length; k++) {
+            for (int i = 0; i < expected[k].length; i++) {
+                for (int j = 0; j < expected[k][i].length; j++) {
+                    final double e = expected[k][i][j];
+                    final double a = actual[k][i][j];
+                    assertEquals(e == INVALID_INDEX, a == INVALID_INDEX);
+                    assertEquals(e, a, 1e-9 * Math.max(1, Math.abs(e)));
+                    if (e != INVALID_INDEX) {
+                        filled++;
+                    }
+                }
+            }
+        }
+        assertTrue(filled > 0);
+    }
+
+    private static long[] sortedTriangles(final DelaunayTriangulator triangulator) {
+        final int[] triangles = triangulator.getTriangles();
+        final int[] ids = triangulator.getIds();
+        final long[] keys = new long[triangulator.getNumTriangles()];
+        for (int t = 0; t < keys.length; t++) {
+            final int[] v = {ids[triangles[3 * t]], ids[triangles[3 * t + 1]], ids[triangles[3 * t + 2]]};
+            Arrays.sort(v);
+            keys[t] = ((long) v[0] << 42) | ((long) v[1] << 21) | v[2];
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static double cross(final double[] x, final double[] y, final int a, final int b, final int c) {
+        return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+    }
+
+    private static boolean inCircumcircle(final double[] x, final double[] y,
+                                          final int a, final int b, final int c, final int d) {
+        final double ax = x[a] - x[d], ay = y[a] - y[d];
+        final double bx = x[b] - x[d], by = y[b] - y[d];
+        final double cx = x[c] - x[d], cy = y[c] - y[d];
+        final double det = (ax * ax + ay * ay) * (bx * cy - cx * by)
+                - (bx * bx + by * by) * (ax * cy - cx * ay)
+                + (cx * cx + cy * cy) * (ax * by - bx * ay);
+        return det * Math.signum(cross(x, y, a, b, c)) > 1e-9;
+    }
+
+    private static double convexHullArea(final double[] x, final double[] y) {
+        final int n = x.length;
+        final Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> x[a] != x[b] ? Double.compare(x[a], x[b]) : Double.compare(y[a], y[b]));
+        final int[] hull = new int[2 * n];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            while (k >= 2 && cross(x, y, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+        for (int i = n - 2, lower = k + 1; i >= 0; i--) {
+            while (k >= lower && cross(x, y, hull[k - 2], hull[k - 1], order[i]) <= 0) {
+                k--;
+            }
+            hull[k++] = order[i];
+        }
+        double area = 0;
+        for (int i = 0; i < k - 1; i++) {
+            area += x[hull[i]] * y[hull[i + 1]] - x[hull[i + 1]] * y[hull[i]];
+        }
+        return Math.abs(area) / 2;
+    }
+}
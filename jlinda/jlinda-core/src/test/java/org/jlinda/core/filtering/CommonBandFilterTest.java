@@ -0,0 +1,162 @@
+package org.jlinda.core.filtering;
+
+import org.jblas.ComplexDoubleMatrix;
+import org.jlinda.core.SLCImage;
+import org.jlinda.core.Window;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares CommonBandFilter with the RangeFilter and AzimuthFilter it replaced in the operators, on synthetic SLC
+ * data of a master and a slave with a fringe frequency between them
+ */
+public class CommonBandFilterTest {
+
+    private static final double DELTA = 1e-4;
+
+    @Test
+    public void testRangeFilterAgreement() throws Exception {
+        final int width = 256;
+        final int height = 64;
+        final SLCImage metadata = rangeMetadata();
+
+        // {alphaHamming, nlMean, ovsFactor, doWeightCorrel}
+        final double[][] settings = {{0.75, 15, 1, 0}, {1, 15, 1, 0}, {0.5, 5, 2, 0}, {0.75, 21, 1, 1}};
+        for (double[] setting : settings) {
+            for (boolean filterMaster : new boolean[]{true, false}) {
+                final float[][] slc = syntheticPair(width, height, 17, new Random(3));
+
+                final RangeFilter rangeFilter = new RangeFilter();
+                rangeFilter.setAlphaHamming(setting[0]);
+                rangeFilter.setNlMean((int) setting[1]);
+                rangeFilter.setOvsFactor((int) setting[2]);
+                rangeFilter.setDoWeightCorrelFlag(setting[3] > 0);
+                rangeFilter.setMetadata(metadata);
+                rangeFilter.setData(toMatrix(slc[0], slc[1], width, height));
+                rangeFilter.setMetadata1(metadata);
+                rangeFilter.setData1(toMatrix(slc[2], slc[3], width, height));
+                rangeFilter.defineParameters();
+                rangeFilter.defineFilter();
+                if (filterMaster) {
+                    rangeFilter.applyFilter();
+                } else {
+                    rangeFilter.applyFilterSlave();
+                }
+
+                final CommonBandFilter commonBandFilter = new CommonBandFilter();
+                commonBandFilter.setAlphaHamming(setting[0]);
+                commonBandFilter.setNlMean((int) setting[1]);
+                commonBandFilter.setOvsFactor((int) setting[2]);
+                commonBandFilter.setDoWeightCorrelFlag(setting[3] > 0);
+                final float[] masterI = slc[0].clone();
+                final float[] masterQ = slc[1].clone();
+                commonBandFilter.filterRange(metadata, masterI, masterQ, slc[2], slc[3], width, height, filterMaster);
+
+                if (filterMaster) {
+                    assertEqualData(rangeFilter.getData(), masterI, masterQ, width);
+                } else {
+                    assertEqualData(toMatrix(slc[0], slc[1], width, height), masterI, masterQ, width);
+                }
+                assertEqualData(rangeFilter.getData1(), slc[2], slc[3], width);
+            }
+        }
+    }
+
+    @Test
+    public void testAzimuthFilterAgreement() {
+        final int width = 128;
+        final int height = 128;
+        final SLCImage metadata = new SLCImage();
+
+        for (double alphaHamming : new double[]{0.75, 0.5}) {
+            final float[][] slc = syntheticPair(width, height, 9, new Random(7));
+
+            final AzimuthFilter azimuthFilter = new AzimuthFilter();
+            azimuthFilter.setHammingAlpha(alphaHamming);
+            azimuthFilter.setMetadata(metadata);
+            azimuthFilter.setMetadata1(metadata);
+            azimuthFilter.setVariableFilter(false);
+            azimuthFilter.setTile(new Window(0, height - 1, 0, width - 1));
+            azimuthFilter.setData(toMatrix(slc[0], slc[1], width, height));
+            azimuthFilter.defineParameters();
+            azimuthFilter.defineFilter();
+            azimuthFilter.applyFilter();
+
+            final AzimuthFilter filterDesign = new AzimuthFilter();
+            filterDesign.setHammingAlpha(alphaHamming);
+            filterDesign.setMetadata(metadata);
+            filterDesign.setMetadata1(metadata);
+            final double[] filterVector = filterDesign.getConstFilterVector(height);
+
+            new CommonBandFilter().filterAzimuth(filterVector, slc[0], slc[1], width, height);
+
+            assertEqualData(azimuthFilter.getData(), slc[0], slc[1], width);
+        }
+    }
+
+    /**
+     * ERS, with the range bandwidth in MHz as it is read from the product metadata.
+     */
+    private static SLCImage rangeMetadata() {
+        final SLCImage metadata = new SLCImage();
+        metadata.setRangeBandwidth(15.55);
+        return metadata;
+    }
+
+    private static void rangeFilter(final SLCImage metadata, final float[][] slc, final int width, final int height)
+            throws Exception {
+        final RangeFilter rangeFilter = new RangeFilter();
+        rangeFilter.setMetadata(metadata);
+        rangeFilter.setData(toMatrix(slc[0], slc[1], width, height));
+        rangeFilter.setMetadata1(metadata);
+        rangeFilter.setData1(toMatrix(slc[2], slc[3], width, height));
+        rangeFilter.defineParameters();
+        rangeFilter.defineFilter();
+        rangeFilter.applyFilter();
+    }
+
+    /**
+     * Gaussian speckle of a master, and a slave of the same speckle with a fringe of the given cycles per line and
+     * independent noise.
+     */
+    private static float[][] syntheticPair(final int width, final int height, final int fringes, final Random random) {
+        final float[][] slc = new float[4][width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int i = y * width + x;
+                final double re = random.nextGaussian();
+                final double im = random.nextGaussian();
+                final double phase = 2 * Math.PI * fringes * x / width + 0.1 * y;
+                slc[0][i] = (float) re;
+                slc[1][i] = (float) im;
+                slc[2][i] = (float) (re * Math.cos(phase) - im * Math.sin(phase) + 0.3 * random.nextGaussian());
+                slc[3][i] = (float) (re * Math.sin(phase) + im * Math.cos(phase) + 0.3 * random.nextGaussian());
+            }
+        }
+        return slc;
+    }
+
+    private static ComplexDoubleMatrix toMatrix(final float[] dataI, final float[] dataQ, final int width,
+                                                final int height) {
+        final ComplexDoubleMatrix matrix = new ComplexDoubleMatrix(height, width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                matrix.put(y, x, dataI[y * width + x], dataQ[y * width + x]);
+            }
+        }
+        return matrix;
+    }
+
+    private static void assertEqualData(final ComplexDoubleMatrix expected, final float[] dataI, final float[] dataQ,
+                                        final int width) {
+        for (int y = 0; y < expected.rows; y++) {
+            for (int x = 0; x < expected.columns; x++) {
+                assertEquals(expected.get(y, x).real(), dataI[y * width + x], DELTA);
+                assertEquals(expected.get(y, x).imag(), dataQ[y * width + x], DELTA);
+            }
+        }
+    }
+}
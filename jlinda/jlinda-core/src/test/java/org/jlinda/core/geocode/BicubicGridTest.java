@@ -0,0 +1,72 @@
+package org.jlinda.core.geocode;
+
+import org.jlinda.core.Window;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that BicubicGrid goes through the nodes, reproduces quadratic functions and interpolates a row as it does
+ * single positions
+ */
+public class BicubicGridTest {
+
+    private static final Window WINDOW = new Window(100, 1099, 20, 2519);
+
+    private static double quadratic(final double line, final double pixel) {
+        return 3 + 0.2 * line - 0.05 * pixel + 1e-4 * line * line - 3e-5 * line * pixel + 2e-5 * pixel * pixel;
+    }
+
+    private static double smooth(final double line, final double pixel) {
+        return Math.sin(line / 300) * Math.cos(pixel / 500);
+    }
+
+    private static BicubicGrid grid(final int spacing) throws Exception {
+        return new BicubicGrid(WINDOW, spacing, 2, (line, pixel, values) -> {
+            values[0] = quadratic(line, pixel);
+            values[1] = smooth(line, pixel);
+        });
+    }
+
+    @Test
+    public void testCells() throws Exception {
+        final BicubicGrid grid = grid(64);
+        assertEquals(16, grid.getNumCellLines());
+        assertEquals(40, grid.getNumCellPixels());
+        assertEquals(0, grid.getCellLine(-50));
+        assertEquals(0, grid.getCellLine(163));
+        assertEquals(1, grid.getCellLine(164));
+        assertEquals(15, grid.getCellLine(5000));
+        assertEquals(39, grid.getCellPixel(2519));
+        assertEquals(196, grid.getCellCentreLine(1), 1e-12);
+    }
+
+    @Test
+    public void testNodesAndQuadratics() throws Exception {
+        final BicubicGrid grid = grid(50);
+        for (double line = 100; line <= 1099; line += 50) {
+            for (double pixel = 20; pixel <= 2519; pixel += 50) {
+                assertEquals(smooth(line, pixel), grid.interpolate(1, line, pixel), 1e-12);
+                assertEquals(smooth(line, pixel), grid.getNearestNode(1, line + 20, pixel - 20), 1e-12);
+            }
+        }
+        for (double line = 100; line <= 1099; line += 7.3) {
+            for (double pixel = 20; pixel <= 2519; pixel += 13.1) {
+                assertEquals(quadratic(line, pixel), grid.interpolate(0, line, pixel), 1e-9);
+                assertEquals(smooth(line, pixel), grid.interpolate(1, line, pixel), 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testRowInterpolation() throws Exception {
+        final BicubicGrid grid = grid(32);
+        final double[] row = new double[700];
+        for (int line : new int[]{100, 517, 1099}) {
+            grid.interpolateRow(1, line, 1850, row.length, row);
+            for (int x = 0; x < row.length; x++) {
+                assertEquals(grid.interpolate(1, line, 1850 + x), row[x], 1e-12);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.jlinda.core.geocode;
+
+import org.jlinda.core.Constants;
+import org.jlinda.core.Ellipsoid;
+import org.jlinda.core.GeoPoint;
+import org.jlinda.core.Orbit;
+import org.jlinda.core.Point;
+import org.jlinda.core.SLCImage;
+import org.jlinda.core.Window;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares HeightConversionGrid with the exact conversion of phase to height through the orbits, on a synthetic
+ * geometry with a baseline of a few hundred meters
+ */
+public class HeightConversionGridTest {
+
+    private static final Window SCENE = new Window(0, 1999, 0, 3999);
+    private static final int[][] TILES = {{0, 0, 64, 48}, {1950, 3940, 50, 60}, {900, 1700, 64, 64}};
+
+    private static SLCImage masterMeta;
+    private static Orbit masterOrbit;
+    private static SLCImage slaveMeta;
+    private static Orbit slaveOrbit;
+
+    @BeforeClass
+    public static void setUpGeometry() throws Exception {
+        final double t0 = 36000.0;
+        masterOrbit = new Orbit(circularOrbit(t0, 0.0), 3);
+        slaveOrbit = new Orbit(circularOrbit(t0 + 0.3, 300.0), 3);
+
+        // a point 3 degrees off nadir, to the right of the track
+        final Point sat = masterOrbit.getXYZ(t0);
+        final Point vel = masterOrbit.getXYZDot(t0);
+        final Point nadir = sat.normalize();
+        final Point right = vel.out(sat).normalize();
+        final double alpha = Math.toRadians(3.0);
+        final Point dir = new Point(nadir.x * Math.cos(alpha) + right.x * Math.sin(alpha),
+                nadir.y * Math.cos(alpha) + right.y * Math.sin(alpha),
+                nadir.z * Math.cos(alpha) + right.z * Math.sin(alpha));
+        final double[] centre = Ellipsoid.xyz2ell(new Point(dir.x * 6.37e6, dir.y * 6.37e6, dir.z * 6.37e6));
+
+        final double lineTimeInterval = 1 / 1679.902;
+        masterMeta = new SLCImage();
+        masterMeta.setLineTimeInterval(lineTimeInterval);
+        masterMeta.setOriginalWindow(new Window(1, 2000, 1, 4000));
+        masterMeta.setApproxGeoCentreOriginal(new GeoPoint(Math.toDegrees(centre[0]), Math.toDegrees(centre[1])));
+        final Point centreTime = masterOrbit.xyz2t(Ellipsoid.ell2xyz(centre[0], centre[1], 0), t0);
+        masterMeta.settAzi1(centreTime.y - 1000 * lineTimeInterval);
+        masterMeta.settRange1(centreTime.x - 2000 / masterMeta.getRsr2x());
+
+        slaveMeta = masterMeta.clone();
+    }
+
+    @Test
+    public void testAgreementWithExactConversion() throws Exception {
+        final HeightConversionGrid grid = buildGrid(64, 0.01);
+
+        for (int[] tile : TILES) {
+            final Window window = tileWindow(tile);
+            final float[] data = phase(window);
+            grid.convert(window, data);
+            assertHeights(window, data, 0.01);
+        }
+    }
+
+    @Test
+    public void testRefinement() throws Exception {
+        final Window window = tileWindow(TILES[2]);
+
+        // without refinement the conversion is as good as the interpolation of the nodes
+        final HeightConversionGrid interpolated = buildGrid(128, 1e6);
+        assertEquals(0, interpolated.getNumRefinedCells());
+        float[] data = phase(window);
+        interpolated.convert(window, data);
+        assertHeights(window, data, 0.5);
+
+        // every pixel refined
+        final HeightConversionGrid refined = buildGrid(128, 0);
+        assertEquals(refined.getNumCells(), refined.getNumRefinedCells());
+        data = phase(window);
+        refined.convert(window, data);
+        assertHeights(window, data, 1e-3);
+    }
+
+    @Test
+    public void testNaNIsKept() throws Exception {
+        final HeightConversionGrid grid = buildGrid(64, 0);
+        final Window window = new Window(10, 11, 20, 22);
+        final float[] data = {Float.NaN, 10, 20, 30, Float.NaN, 50};
+        grid.convert(window, data);
+        assertTrue(Float.isNaN(data[0]));
+        assertTrue(Float.isNaN(data[4]));
+        assertFalse(Float.isNaN(data[1]));
+        assertFalse(Float.isNaN(data[5]));
+    }
+
+    private static HeightConversionGrid buildGrid(final int spacing, final double tolerance) throws Exception {
+        final HeightConversionGrid grid = new HeightConversionGrid(3, 2,
+                masterMeta, masterOrbit, slaveMeta, slaveOrbit);
+        grid.setDataWindow(SCENE);
+        grid.setNodeSpacing(spacing);
+        grid.setTolerance(tolerance);
+        grid.build();
+        return grid;
+    }
+
+    private static Window tileWindow(final int[] tile) {
+        return new Window(tile[0], tile[0] + tile[2] - 1, tile[1], tile[1] + tile[3] - 1);
+    }
+
+    private static double terrain(final double line, final double pixel) {
+        return 1500 + 1400 * Math.sin(0.013 * line) * Math.cos(0.007 * pixel);
+    }
+
+    /**
+     * The phase of the terrain, with respect to that of the ellipsoid, as in Slant2Height.computeReferencePhase.
+     */
+    private static float[] phase(final Window window) throws Exception {
+        final float[] data = new float[(int) (window.lines() * window.pixels())];
+        int index = 0;
+        for (long line = window.linelo; line <= window.linehi; line++) {
+            for (long pixel = window.pixlo; pixel <= window.pixhi; pixel++) {
+                data[index++] = (float) exactPhase(line, pixel, terrain(line, pixel));
+            }
+        }
+        return data;
+    }
+
+    private static double exactPhase(final double line, final double pixel, final double height) throws Exception {
+        final Point timeZero = slaveOrbit.xyz2t(masterOrbit.lph2xyz(line, pixel, 0, masterMeta), slaveMeta);
+        final Point timeHeight = slaveOrbit.xyz2t(masterOrbit.lph2xyz(line, pixel, height, masterMeta), slaveMeta);
+        return (4 * Constants.PI * Constants.SOL) / slaveMeta.getRadarWavelength() * (timeHeight.x - timeZero.x);
+    }
+
+    private static void assertHeights(final Window window, final float[] data, final double tolerance) {
+        int index = 0;
+        for (long line = window.linelo; line <= window.linehi; line++) {
+            for (long pixel = window.pixlo; pixel <= window.pixhi; pixel++) {
+                assertEquals(terrain(line, pixel), data[index++], tolerance);
+            }
+        }
+    }
+
+    private static double[][] circularOrbit(final double t0, final double radialOffset) {
+        final double radius = 7.07e6 + radialOffset;
+        final double omega = Math.sqrt(3.986004418e14 / (radius * radius * radius));
+        final double inclination = Math.toRadians(98.0);
+        final double[][] stateVectors = new double[13][4];
+        for (int k = 0; k < stateVectors.length; k++) {
+            final double t = t0 + (k - 6) * 10.0;
+            final double u = 0.8 + omega * (t - t0);
+            stateVectors[k][0] = t;
+            stateVectors[k][1] = radius * Math.cos(u);
+            stateVectors[k][2] = radius * Math.sin(u) * Math.cos(inclination);
+            stateVectors[k][3] = radius * Math.sin(u) * Math.sin(inclination);
+        }
+        return stateVectors;
+    }
+}
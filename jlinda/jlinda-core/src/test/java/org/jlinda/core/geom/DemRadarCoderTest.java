@@ -0,0 +1,173 @@
+package org.jlinda.core.geom;
+
+import org.jlinda.core.Constants;
+import org.jlinda.core.Ellipsoid;
+import org.jlinda.core.GeoPoint;
+import org.jlinda.core.Orbit;
+import org.jlinda.core.Point;
+import org.jlinda.core.SLCImage;
+import org.jlinda.core.Window;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares DemRadarCoder with the per-post radar coding it replaced in TopoPhase, on a synthetic geometry
+ */
+public class DemRadarCoderTest {
+
+    private static final double NO_DATA = -32768;
+    private static final double INVALID_INDEX = -9999.0;
+    private static final int N_ROWS = 60;
+    private static final int N_COLS = 80;
+
+    private static SLCImage masterMeta;
+    private static Orbit masterOrbit;
+    private static SLCImage slaveMeta;
+    private static Orbit slaveOrbit;
+    private static DemTile dem;
+
+    @BeforeClass
+    public static void setUpGeometry() throws Exception {
+        final double t0 = 36000.0;
+        masterOrbit = new Orbit(circularOrbit(t0, 0.0), 3);
+        slaveOrbit = new Orbit(circularOrbit(t0 + 0.3, 250.0), 3);
+
+        // a point 3 degrees off nadir, to the right of the track
+        final Point sat = masterOrbit.getXYZ(t0);
+        final Point vel = masterOrbit.getXYZDot(t0);
+        final Point nadir = sat.normalize();
+        final Point right = vel.out(sat).normalize();
+        final double alpha = Math.toRadians(3.0);
+        final Point dir = new Point(nadir.x * Math.cos(alpha) + right.x * Math.sin(alpha),
+                nadir.y * Math.cos(alpha) + right.y * Math.sin(alpha),
+                nadir.z * Math.cos(alpha) + right.z * Math.sin(alpha));
+        final double[] centre = Ellipsoid.xyz2ell(new Point(dir.x * 6.37e6, dir.y * 6.37e6, dir.z * 6.37e6));
+
+        final double lineTimeInterval = 1 / 1679.902;
+        masterMeta = new SLCImage();
+        masterMeta.setLineTimeInterval(lineTimeInterval);
+        masterMeta.setOriginalWindow(new Window(1, 2000, 1, 4000));
+        masterMeta.setApproxGeoCentreOriginal(new GeoPoint(Math.toDegrees(centre[0]), Math.toDegrees(centre[1])));
+        final Point centreTime = masterOrbit.xyz2t(Ellipsoid.ell2xyz(centre[0], centre[1], 0), t0);
+        masterMeta.settAzi1(centreTime.y - 1000 * lineTimeInterval);
+        masterMeta.settRange1(centreTime.x - 2000 / masterMeta.getRsr2x());
+
+        slaveMeta = masterMeta.clone();
+
+        dem = new DemTile(centre[0] + 0.0004, centre[1] - 0.0006, N_ROWS, N_COLS, 1.4544410433280261e-05,
+                1.4544410433280261e-05, (long) NO_DATA);
+        final double[][] heights = new double[N_ROWS][N_COLS];
+        for (int i = 0; i < N_ROWS; i++) {
+            for (int j = 0; j < N_COLS; j++) {
+                heights[i][j] = 800 + 600 * Math.sin(0.11 * i) * Math.cos(0.07 * j);
+            }
+        }
+        // a lake of posts without height
+        for (int i = 20; i < 30; i++) {
+            for (int j = 0; j < 15; j++) {
+                heights[i][j] = NO_DATA;
+            }
+        }
+        dem.setData(heights);
+    }
+
+    @Test
+    public void testAgreementWithPerPostRadarCoding() throws Exception {
+        for (boolean useInvalidIndex : new boolean[]{true, false}) {
+            final double[][][] expected = radarCodePerPost(useInvalidIndex);
+
+            final TopoPhase topoPhase = new TopoPhase(masterMeta, masterOrbit, slaveMeta, slaveOrbit,
+                    new Window(0, 127, 0, 511), dem);
+            topoPhase.radarCode(useInvalidIndex);
+
+            for (int i = 0; i < N_ROWS; i++) {
+                assertArrayEquals(expected[0][i], topoPhase.getDemRadarCode_x()[i], 1e-6);
+                assertArrayEquals(expected[1][i], topoPhase.getDemRadarCode_y()[i], 1e-6);
+                assertArrayEquals(expected[2][i], topoPhase.getDemRadarCode_phase()[i], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testPooledBuffers() {
+        final double[][][] planes = DemRadarCoder.getBuffers(N_ROWS, N_COLS);
+        assertEquals(6, planes.length);
+        assertEquals(N_ROWS, planes[0].length);
+        assertEquals(N_COLS, planes[0][0].length);
+
+        // fewer rows of the same width share the rows of the pool
+        final double[][][] smaller = DemRadarCoder.getBuffers(N_ROWS - 5, N_COLS);
+        assertEquals(N_ROWS - 5, smaller[2].length);
+        assertEquals(planes[2][3], smaller[2][3]);
+    }
+
+    /**
+     * The per-post radar coding of TopoPhase.radarCode before DemRadarCoder.
+     *
+     * @return the pixel, line and phase planes
+     */
+    private static double[][][] radarCodePerPost(final boolean useInvalidIndex) throws Exception {
+        final double[][] demRadarCode_x = new double[N_ROWS][N_COLS];
+        final double[][] demRadarCode_y = new double[N_ROWS][N_COLS];
+        final double[][] demRadarCode_phase = new double[N_ROWS][N_COLS];
+
+        final double slaveMin4piCDivLam = (-4 * Math.PI * Constants.SOL) / slaveMeta.getRadarWavelength();
+
+        double phi = dem.lat0;
+        for (int i = 0; i < N_ROWS; i++) {
+            double lambda = dem.lon0;
+            final double[] heightArray = dem.data[i];
+            for (int j = 0; j < N_COLS; j++) {
+                final double height = heightArray[j];
+                if (height != dem.noDataValue) {
+                    final double[] phi_lam_height = {phi, lambda, height};
+                    final Point sarPoint = masterOrbit.ell2lp(phi_lam_height, masterMeta);
+                    final double line = sarPoint.y;
+                    final double pix = sarPoint.x;
+                    demRadarCode_y[i][j] = line;
+                    demRadarCode_x[i][j] = pix;
+
+                    final Point pointOnDem = Ellipsoid.ell2xyz(phi_lam_height);
+                    final Point slaveTime = slaveOrbit.xyz2t(pointOnDem, slaveMeta);
+                    final Point masterXYZPos = masterOrbit.lp2xyz(line, pix, masterMeta);
+                    final Point flatEarthTime = slaveOrbit.xyz2t(masterXYZPos, slaveMeta);
+                    demRadarCode_phase[i][j] = slaveMin4piCDivLam * (flatEarthTime.x - slaveTime.x);
+                } else {
+                    final double[] phi_lam_height = {phi, lambda, 0};
+                    final Point sarPoint = masterOrbit.ell2lp(phi_lam_height, masterMeta);
+                    demRadarCode_y[i][j] = useInvalidIndex ? INVALID_INDEX : sarPoint.y;
+                    demRadarCode_x[i][j] = useInvalidIndex ? INVALID_INDEX : sarPoint.x;
+                    demRadarCode_phase[i][j] = 0;
+                }
+                lambda += dem.longitudeDelta;
+            }
+            phi -= dem.latitudeDelta;
+        }
+        return new double[][][]{demRadarCode_x, demRadarCode_y, demRadarCode_phase};
+    }
+
+    /**
+     * State vectors of a circular orbit at 700 km, inclined by 98 degrees.
+     *
+     * @param t0             the time of the centre state vector
+     * @param radialOffset   an offset of the orbit radius, to form a baseline
+     */
+    private static double[][] circularOrbit(final double t0, final double radialOffset) {
+        final double radius = 7.07e6 + radialOffset;
+        final double omega = Math.sqrt(3.986004418e14 / (radius * radius * radius));
+        final double inclination = Math.toRadians(98.0);
+        final double[][] stateVectors = new double[13][4];
+        for (int k = 0; k < stateVectors.length; k++) {
+            final double t = t0 + (k - 6) * 10.0;
+            final double u = 0.8 + omega * (t - t0);
+            stateVectors[k][0] = t;
+            stateVectors[k][1] = radius * Math.cos(u);
+            stateVectors[k][2] = radius * Math.sin(u) * Math.cos(inclination);
+            stateVectors[k][3] = radius * Math.sin(u) * Math.sin(inclination);
+        }
+        return stateVectors;
+    }
+}
@@ -18,11 +18,10 @@ import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.gpf.InputProductValidator;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
-import org.jblas.ComplexDoubleMatrix;
 import org.jlinda.core.Orbit;
 import org.jlinda.core.SLCImage;
-import org.jlinda.core.Window;
 import org.jlinda.core.filtering.AzimuthFilter;
+import org.jlinda.core.filtering.CommonBandFilter;
 import org.jlinda.core.utils.*;
 
 import javax.media.jai.BorderExtender;
@@ -70,6 +69,8 @@ public class AzimuthFilterOp extends Operator {
     // target
     private LinkedHashMap<String, ProductContainer> targetMap = new LinkedHashMap<>();
 
+    private final CommonBandFilter commonBandFilter = new CommonBandFilter();
+
     private static final int ORBIT_DEGREE = 3; // hardcoded
     private static final boolean CREATE_VIRTUAL_BAND = true;
 
@@ -370,9 +371,8 @@ public class AzimuthFilterOp extends Operator {
             for (ProductContainer product : targetMap.values()) {
 
                 // check out from source
-                Tile tileRealMaster = getSourceTile(product.sourceMaster.realBand, rect, border);
-                Tile tileImagMaster = getSourceTile(product.sourceMaster.imagBand, rect, border);
-                final ComplexDoubleMatrix dataMaster = TileUtilsDoris.pullComplexDoubleMatrix(tileRealMaster, tileImagMaster);
+                final float[] dataI = TileUtilsDoris.pullFloatArray(getSourceTile(product.sourceMaster.realBand, rect, border));
+                final float[] dataQ = TileUtilsDoris.pullFloatArray(getSourceTile(product.sourceMaster.imagBand, rect, border));
 
                 // construct azimuthfilter
                 final AzimuthFilter azimuthMaster = new AzimuthFilter();
@@ -383,44 +383,25 @@ public class AzimuthFilterOp extends Operator {
                 azimuthMaster.setMetadata1(product.sourceSlave.metaData);
                 // TODO: variable constant hard-coded, further testing needed
                 azimuthMaster.setVariableFilter(false); // hardcoded to const filtering!
-                azimuthMaster.setTile(new Window(rect));
-
-                // set data for filtering
-                azimuthMaster.setData(dataMaster);
 
-                // define parameters and filter
-                azimuthMaster.defineParameters();
-                azimuthMaster.defineFilter();
-                azimuthMaster.applyFilter();
+                // define filter and filter data in place
+                final double[] filterVector = azimuthMaster.getConstFilterVector(rect.height);
+                commonBandFilter.filterAzimuth(filterVector, dataI, dataQ, rect.width, rect.height);
 
-                ComplexDoubleMatrix filteredData;
+                int offsetX = 0;
+                int offsetY = 0;
                 if (rectAdjusted) {
-
-                    final int offsetX = rect.width - targetRectangle.width;
-                    final int offsetY = rect.height - targetRectangle.height;
-
-                    filteredData = new ComplexDoubleMatrix(targetRectangle.height, targetRectangle.width);
-
-                    LinearAlgebraUtils.setdata(filteredData,
-                            new Window(0, (long) (targetRectangle.height - 1),
-                                    0, (long) (targetRectangle.width - 1)),
-                            azimuthMaster.getData(),
-                            new Window(offsetY, rect.height - 1, offsetX, rect.width - 1));
-
-                } else {
-                    filteredData = azimuthMaster.getData();
+                    offsetX = rect.width - targetRectangle.width;
+                    offsetY = rect.height - targetRectangle.height;
                 }
 
-                // get data from filter
-                // commit real() to target
+                // commit real to target
                 targetBand = targetProduct.getBand(product.targetBandName_I);
-                tileRealMaster = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredData.real(), tileRealMaster, targetRectangle);
+                TileUtilsDoris.pushFloatArray(dataI, rect.width, offsetX, offsetY, targetTileMap.get(targetBand), targetRectangle);
 
-                // commit imag() to target
+                // commit imag to target
                 targetBand = targetProduct.getBand(product.targetBandName_Q);
-                tileImagMaster = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredData.imag(), tileImagMaster, targetRectangle);
+                TileUtilsDoris.pushFloatArray(dataQ, rect.width, offsetX, offsetY, targetTileMap.get(targetBand), targetRectangle);
 
             }
         } catch (Throwable e) {
@@ -19,10 +19,9 @@ import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.gpf.InputProductValidator;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
-import org.jblas.ComplexDoubleMatrix;
 import org.jlinda.core.Orbit;
 import org.jlinda.core.SLCImage;
-import org.jlinda.core.filtering.RangeFilter;
+import org.jlinda.core.filtering.CommonBandFilter;
 import org.jlinda.core.utils.*;
 
 import javax.media.jai.BorderExtender;
@@ -93,6 +92,8 @@ public class RangeFilterOp extends Operator {
     // target
     private HashMap<String, ProductContainer> targetMap = new HashMap<>();
 
+    private CommonBandFilter commonBandFilter;
+
     private static final int ORBIT_DEGREE = 3; // hardcoded
     private static final boolean CREATE_VIRTUAL_BAND = true;
 
@@ -125,6 +126,13 @@ public class RangeFilterOp extends Operator {
         try {
 
             checkUserInput();
+
+            commonBandFilter = new CommonBandFilter();
+            commonBandFilter.setAlphaHamming(alphaHamming);
+            commonBandFilter.setDoWeightCorrelFlag(doWeightCorrel);
+            commonBandFilter.setOvsFactor(ovsmpFactor);
+            commonBandFilter.setNlMean(nlMean);
+
             constructSourceMetadata();
             constructTargetMetadata();
 
@@ -364,74 +372,32 @@ public class RangeFilterOp extends Operator {
             // loop over ifg(product)Container
             for (String ifgTag : targetMap.keySet()) {
 
-                final RangeFilter rangeFilter = new RangeFilter();
-
-                rangeFilter.setAlphaHamming(alphaHamming);
-                rangeFilter.setDoWeightCorrelFlag(doWeightCorrel);
-                rangeFilter.setOvsFactor(ovsmpFactor);
-                rangeFilter.setFftLength(fftLength);
-                rangeFilter.setNlMean(nlMean);
-                rangeFilter.setSNRthreshold(snrThresh);
-
                 // get ifgContainer from pool
                 final ProductContainer ifg = targetMap.get(ifgTag);
 
                 // check out from source
-                Tile tileRealMaster = getSourceTile(ifg.sourceMaster.realBand, rect, border);
-                Tile tileImagMaster = getSourceTile(ifg.sourceMaster.imagBand, rect, border);
-                final ComplexDoubleMatrix masterMatrix = TileUtilsDoris.pullComplexDoubleMatrix(tileRealMaster, tileImagMaster);
-
-                // check out from source
-                Tile tileRealSlave = getSourceTile(ifg.sourceSlave.realBand, rect, border);
-                Tile tileImagSlave = getSourceTile(ifg.sourceSlave.imagBand, rect, border);
-                final ComplexDoubleMatrix slaveMatrix = TileUtilsDoris.pullComplexDoubleMatrix(tileRealSlave, tileImagSlave);
+                final float[] masterI = TileUtilsDoris.pullFloatArray(getSourceTile(ifg.sourceMaster.realBand, rect, border));
+                final float[] masterQ = TileUtilsDoris.pullFloatArray(getSourceTile(ifg.sourceMaster.imagBand, rect, border));
+                final float[] slaveI = TileUtilsDoris.pullFloatArray(getSourceTile(ifg.sourceSlave.realBand, rect, border));
+                final float[] slaveQ = TileUtilsDoris.pullFloatArray(getSourceTile(ifg.sourceSlave.imagBand, rect, border));
 
-                rangeFilter.setMetadata(ifg.sourceMaster.metaData);
-                rangeFilter.setData(masterMatrix);
-
-                rangeFilter.setMetadata1(ifg.sourceSlave.metaData);
-                rangeFilter.setData1(slaveMatrix);
-
-                // compute
-                rangeFilter.defineParameters();
-                rangeFilter.defineFilter();
-
-                if (doFilterMaster) {
-                    rangeFilter.applyFilter();
-                } else {
-                    // apply only on slave data!
-                    rangeFilter.applyFilterSlave();
-                }
+                // compute: master and slave are filtered in place, the master only if doFilterMaster
+                commonBandFilter.filterRange(ifg.sourceMaster.metaData, masterI, masterQ, slaveI, slaveQ,
+                        rect.width, rect.height, doFilterMaster);
 
                 /// MASTER
-                ComplexDoubleMatrix filteredMaster;
-                if (doFilterMaster) {
-                    filteredMaster = rangeFilter.getData();
-                } else {
-                    filteredMaster = masterMatrix;
-                }
-
-                // commit real() to target
                 targetBand = targetProduct.getBand(ifg.masterSubProduct.targetBandName_I);
-                tileRealMaster = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredMaster.real(), tileRealMaster, targetRectangle);
+                TileUtilsDoris.pushFloatArray(masterI, rect.width, 0, 0, targetTileMap.get(targetBand), targetRectangle);
 
-                // commit imag() to target
                 targetBand = targetProduct.getBand(ifg.masterSubProduct.targetBandName_Q);
-                tileImagMaster = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredMaster.imag(), tileImagMaster, targetRectangle);
+                TileUtilsDoris.pushFloatArray(masterQ, rect.width, 0, 0, targetTileMap.get(targetBand), targetRectangle);
 
                 /// SLAVE
-                final ComplexDoubleMatrix filteredSlave = rangeFilter.getData1();
-                // commit real() to target
                 targetBand = targetProduct.getBand(ifg.slaveSubProduct.targetBandName_I);
-                tileRealSlave = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredSlave.real(), tileRealSlave, targetRectangle);
+                TileUtilsDoris.pushFloatArray(slaveI, rect.width, 0, 0, targetTileMap.get(targetBand), targetRectangle);
 
-                // commit imag() to target
                 targetBand = targetProduct.getBand(ifg.slaveSubProduct.targetBandName_Q);
-                tileImagSlave = targetTileMap.get(targetBand);
-                TileUtilsDoris.pushFloatMatrix(filteredSlave.imag(), tileImagSlave, targetRectangle);
+                TileUtilsDoris.pushFloatArray(slaveQ, rect.width, 0, 0, targetTileMap.get(targetBand), targetRectangle);
 
 //                // save imag band of computation : this is somehow too slow?
 //                targetBand = targetProduct.getBand(ifg.targetBandName_Q);
@@ -17,11 +17,10 @@ import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.datamodel.Unit;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
-import org.jblas.DoubleMatrix;
 import org.jlinda.core.Orbit;
 import org.jlinda.core.SLCImage;
 import org.jlinda.core.Window;
-import org.jlinda.core.geocode.Slant2Height;
+import org.jlinda.core.geocode.HeightConversionGrid;
 import org.jlinda.core.utils.BandUtilsDoris;
 import org.jlinda.core.utils.CplxContainer;
 import org.jlinda.core.utils.ProductContainer;
@@ -63,10 +62,11 @@ public class Slant2HeightOp extends Operator {
     private int degree1D; // only possible now.
 
     @Parameter(valueSet = {"1", "2", "3", "4", "5", "6", "7", "8"},
-            description = "Degree of the 2D polynomial to fit reference phase through.",
+            description = "Ignored: the reference phase is interpolated from a grid of nodes instead of " +
+                    "a 2D polynomial. Kept so that existing graphs still load.",
             defaultValue = "5",
             label = "Degree of 2D polynomial")
-    private int degree2D; // only possible now.
+    private int degree2D; // not used by the node grid, kept so that existing graphs still load
 
     @Parameter(valueSet = {"2", "3", "4", "5"},
             description = "Degree of orbit (polynomial) interpolator",
@@ -82,11 +82,12 @@ public class Slant2HeightOp extends Operator {
     private HashMap<String, ProductContainer> targetMap = new HashMap<>();
 
     // classes map: for multi-band support
-    private HashMap<String, Slant2Height> slant2HeightMap = new HashMap<>();
+    private HashMap<String, HeightConversionGrid> heightGridMap = new HashMap<>();
 
     // operator tags
     public static final String PRODUCT_TAG = "slant2h";
     private static final String PRODUCT_SUFFIX = "_Hgt";
+    private static final int MIN_NODE_SPACING = 16;
 
     @Override
     public void initialize() throws OperatorException {
@@ -111,17 +112,23 @@ public class Slant2HeightOp extends Operator {
 
         int sourceImageWidth = sourceProduct.getSceneRasterWidth();
         int sourceImageHeight = sourceProduct.getSceneRasterHeight();
+
+        // about nPoints nodes over the scene
+        final int nodeSpacing = Math.max(MIN_NODE_SPACING,
+                (int) Math.ceil(Math.sqrt((double) sourceImageWidth * sourceImageHeight / nPoints)));
+
         for (Integer keyMaster : masterMap.keySet()) {
             CplxContainer master = masterMap.get(keyMaster);
             for (Integer keySlave : slaveMap.keySet()) {
                 CplxContainer slave = slaveMap.get(keySlave);
 
-                Slant2Height slant2Height = new Slant2Height(nPoints, nHeights, degree1D, degree2D,
+                HeightConversionGrid heightGrid = new HeightConversionGrid(nHeights, degree1D,
                         master.metaData, master.orbit, slave.metaData, slave.orbit);
-                slant2Height.setDataWindow(new Window(0, sourceImageHeight, 0, sourceImageWidth));
-                slant2Height.schwabisch();
+                heightGrid.setDataWindow(new Window(0, sourceImageHeight - 1, 0, sourceImageWidth - 1));
+                heightGrid.setNodeSpacing(nodeSpacing);
+                heightGrid.build();
 
-                slant2HeightMap.put(slave.date, slant2Height);
+                heightGridMap.put(slave.date, heightGrid);
             }
         }
     }
@@ -263,13 +270,13 @@ public class Slant2HeightOp extends Operator {
 
                     // check out from source
                     Tile tileRealMaster = getSourceTile(product.sourceMaster.realBand, rect);
-                    final DoubleMatrix dataMaster = TileUtilsDoris.pullDoubleMatrix(tileRealMaster);// check out from source
+                    final float[] dataMaster = TileUtilsDoris.pullFloatArray(tileRealMaster);
 
                     // get class for this slave from the map
-                    Slant2Height slant2Height = slant2HeightMap.get(product.sourceSlave.date);
-                    slant2Height.applySchwabisch(tileWindow, dataMaster);
+                    HeightConversionGrid heightGrid = heightGridMap.get(product.sourceSlave.date);
+                    heightGrid.convert(tileWindow, dataMaster);
 
-                    TileUtilsDoris.pushDoubleMatrix(dataMaster, targetTile, targetTile.getRectangle());
+                    TileUtilsDoris.pushFloatArray(dataMaster, w, 0, 0, targetTile, rect);
                 }
             }
 
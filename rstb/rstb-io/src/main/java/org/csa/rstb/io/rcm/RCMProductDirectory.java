@@ -19,6 +19,7 @@ import org.apache.commons.math3.util.FastMath;
 import org.esa.s1tbx.commons.io.ImageIOFile;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.commons.io.XMLProductDirectory;
+import org.esa.s1tbx.commons.io.XMLStreamMetadata;
 import org.esa.s1tbx.commons.product.Missions;
 import org.esa.s1tbx.io.geotiffxml.GeoTiffUtils;
 import org.esa.snap.core.dataio.ProductReader;
@@ -247,16 +248,9 @@ public class RCMProductDirectory extends XMLProductDirectory {
         String[] metaFiles = productDir.list(internalPath);
         for (String file : metaFiles) {
             if (file.endsWith(".xml")) {
-                try {
-                    final File metaFile = getFile(internalPath + "/" + file);
-                    final Document xmlDoc = XMLSupport.LoadXML(metaFile.getAbsolutePath());
-                    final Element metaFileElement = xmlDoc.getRootElement();
-
-                    if (metaFileElement.getName().equals("lut")) {
-                        metaFileElement.setName(file.substring(0, file.lastIndexOf(".xml")));
-                    }
-
-                    AbstractMetadataIO.AddXMLMetadata(metaFileElement, destElem);
+                final String lutName = file.substring(0, file.lastIndexOf(".xml"));
+                try (final InputStream is = getInputStream(internalPath + "/" + file)) {
+                    XMLStreamMetadata.addXMLMetadata(is, destElem, name -> name.equals("lut") ? lutName : name);
                 } catch (IOException e) {
                     SystemUtils.LOG.severe("Unable to read metadata " + file);
                 }
@@ -16,6 +16,8 @@ import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.TileIndex;
 
 import java.awt.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
 
@@ -1391,6 +1393,7 @@ public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
 
     /**
      * Compute min/max values of the Span image.
+     * The statistics are computed once per source product and window, see {@link SpanStatistics}.
      *
      * @param op       the decomposition operator
      * @param bandList the src band list
@@ -1402,11 +1405,24 @@ public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
                                                        final PolBandUtils.PolSourceBand bandList)
             throws OperatorException {
 
+        final DecompositionBase.MinMax cached = SpanStatistics.get(op.getSourceProduct(), sourceProductType,
+                halfWindowSizeX, halfWindowSizeY, bandList);
+        if (cached != null) {
+            return cached;
+        }
+
         final DecompositionBase.MinMax minMaxValue = new DecompositionBase.MinMax();
         final Dimension tileSize = new Dimension(256, 256);
         final Rectangle[] tileRectangles = OperatorUtils.getAllTileRectangles(op.getSourceProduct(), tileSize, 25);
-        final double[][] Cr = new double[3][3];
-        final double[][] Ci = new double[3][3];
+
+        // each worker reduces its own tile into its own slot, the slots are combined once all workers are done
+        final double[] tileMin = new double[tileRectangles.length];
+        final double[] tileMax = new double[tileRectangles.length];
+        Arrays.fill(tileMin, minMaxValue.min);
+        Arrays.fill(tileMax, minMaxValue.max);
+
+        // a tile that failed would leave its slot empty, so the first failure is rethrown rather than cached
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
 
         final StatusProgressMonitor status = new StatusProgressMonitor(StatusProgressMonitor.TYPE.SUBTASK);
         status.beginTask("Computing min max span... ", tileRectangles.length);
@@ -1414,20 +1430,19 @@ public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
         try {
             final ThreadExecutor executor = new ThreadExecutor();
 
-            for (final Rectangle rectangle : tileRectangles) {
+            for (int t = 0; t < tileRectangles.length; ++t) {
+                final int tileIndex = t;
+                final Rectangle rectangle = tileRectangles[t];
 
                 final ThreadRunnable worker = new ThreadRunnable() {
 
-                    double span = 0.0;
                     final int xMax = rectangle.x + rectangle.width;
                     final int yMax = rectangle.y + rectangle.height;
-                    /*
-                    System.out.println("setSpan x0 = " + rectangle.x + ", y0 = " + rectangle.y +
-                                       ", w = " + rectangle.width + ", h = " + rectangle.height);
-                    */
 
                     final Tile[] sourceTiles = new Tile[bandList.srcBands.length];
                     final ProductData[] dataBuffers = new ProductData[bandList.srcBands.length];
+                    final double[][] Cr = new double[3][3];
+                    final double[][] Ci = new double[3][3];
 
                     @Override
                     public void process() {
@@ -1435,29 +1450,28 @@ public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
 
                             getQuadPolDataBuffer(op, bandList.srcBands, rectangle, sourceProductType, sourceTiles, dataBuffers);
 
+                            double min = tileMin[tileIndex];
+                            double max = tileMax[tileIndex];
                             for (int y = rectangle.y; y < yMax; ++y) {
 
                                 for (int x = rectangle.x; x < xMax; ++x) {
 
-                                    getMeanCovarianceMatrix(x, y, halfWindowSizeX, halfWindowSizeX,
+                                    getMeanCovarianceMatrix(x, y, halfWindowSizeX, halfWindowSizeY,
                                             sourceProductType, sourceTiles, dataBuffers, Cr, Ci);
 
-                                    span = Cr[0][0] + Cr[1][1] + Cr[2][2];
-
-                                    if (minMaxValue.min > span) {
-                                        synchronized (minMaxValue) {
-                                            minMaxValue.min = span;
-                                        }
+                                    final double span = Cr[0][0] + Cr[1][1] + Cr[2][2];
+                                    if (min > span) {
+                                        min = span;
                                     }
-                                    if (minMaxValue.max < span) {
-                                        synchronized (minMaxValue) {
-                                            minMaxValue.max = span;
-                                        }
+                                    if (max < span) {
+                                        max = span;
                                     }
                                 }
                             }
-                        } catch (Exception e) {
-                            System.out.println(e.getMessage());
+                            tileMin[tileIndex] = min;
+                            tileMax[tileIndex] = max;
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
                         }
                     }
                 };
@@ -1469,10 +1483,22 @@ public interface QuadPolProcessor extends PolarimetricProcessor, MatrixMath {
 
             executor.complete();
 
+            if (failure.get() != null) {
+                throw new OperatorException("Unable to compute the span of all tiles", failure.get());
+            }
+
+            for (int t = 0; t < tileRectangles.length; ++t) {
+                minMaxValue.min = Math.min(minMaxValue.min, tileMin[t]);
+                minMaxValue.max = Math.max(minMaxValue.max, tileMax[t]);
+            }
+
             if (minMaxValue.min < Constants.EPS) {
                 minMaxValue.min = Constants.EPS;
             }
 
+            SpanStatistics.put(op.getSourceProduct(), sourceProductType, halfWindowSizeX, halfWindowSizeY,
+                    bandList, minMaxValue);
+
         } catch (Throwable e) {
             OperatorUtils.catchOperatorException(op.getId() + " computeMinMaxSpan ", e);
         } finally {
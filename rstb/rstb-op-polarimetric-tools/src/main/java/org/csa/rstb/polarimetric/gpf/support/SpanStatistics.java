@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.polarimetric.gpf.support;
+
+import org.csa.rstb.polarimetric.gpf.decompositions.DecompositionBase;
+import org.esa.s1tbx.commons.polsar.PolBandUtils;
+import org.esa.snap.core.dataio.ProductReader;
+import org.esa.snap.core.dataio.ProductSubsetDef;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.gpf.internal.OperatorProductReader;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.awt.*;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+/**
+ * Cache of span min/max statistics so that the full scene scan is done once per source product
+ * and polarimetric window rather than once per operator instance.
+ * <p>
+ * Statistics are kept in memory for the lifetime of the source product. For products read from a file
+ * they are also persisted as a small sidecar in the SNAP cache folder, keyed by the product file, its size and
+ * modification time, the raster size and subset read from the file, the source bands and the window size.
+ */
+public final class SpanStatistics {
+
+    private static final String MIN = "span.min";
+    private static final String MAX = "span.max";
+
+    private static final Map<Product, Map<String, DecompositionBase.MinMax>> memoryCache = new WeakHashMap<>();
+
+    private SpanStatistics() {
+    }
+
+    /**
+     * Get previously computed span statistics.
+     *
+     * @param srcProduct        the source product
+     * @param sourceProductType the polarimetric matrix type of the source product
+     * @param halfWindowSizeX   half window size in x
+     * @param halfWindowSizeY   half window size in y
+     * @param bandList          the src band list
+     * @return the min max values or null if they are not available
+     */
+    public static DecompositionBase.MinMax get(final Product srcProduct, final PolBandUtils.MATRIX sourceProductType,
+                                               final int halfWindowSizeX, final int halfWindowSizeY,
+                                               final PolBandUtils.PolSourceBand bandList) {
+
+        final String key = createKey(srcProduct, sourceProductType, halfWindowSizeX, halfWindowSizeY, bandList);
+        synchronized (memoryCache) {
+            final Map<String, DecompositionBase.MinMax> productStats = memoryCache.get(srcProduct);
+            if (productStats != null && productStats.containsKey(key)) {
+                return productStats.get(key);
+            }
+        }
+
+        final File sidecar = getSidecarFile(srcProduct, key);
+        if (sidecar == null || !sidecar.exists()) {
+            return null;
+        }
+
+        try (InputStream stream = new FileInputStream(sidecar)) {
+            final Properties props = new Properties();
+            props.load(stream);
+            final DecompositionBase.MinMax minMax = new DecompositionBase.MinMax();
+            minMax.min = Double.parseDouble(props.getProperty(MIN));
+            minMax.max = Double.parseDouble(props.getProperty(MAX));
+            putInMemory(srcProduct, key, minMax);
+            return minMax;
+        } catch (Exception e) {
+            SystemUtils.LOG.warning("Unable to read span statistics " + sidecar + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store computed span statistics.
+     *
+     * @param srcProduct        the source product
+     * @param sourceProductType the polarimetric matrix type of the source product
+     * @param halfWindowSizeX   half window size in x
+     * @param halfWindowSizeY   half window size in y
+     * @param bandList          the src band list
+     * @param minMax            the min max values
+     */
+    public static void put(final Product srcProduct, final PolBandUtils.MATRIX sourceProductType,
+                           final int halfWindowSizeX, final int halfWindowSizeY,
+                           final PolBandUtils.PolSourceBand bandList, final DecompositionBase.MinMax minMax) {
+
+        final String key = createKey(srcProduct, sourceProductType, halfWindowSizeX, halfWindowSizeY, bandList);
+        putInMemory(srcProduct, key, minMax);
+
+        final File sidecar = getSidecarFile(srcProduct, key);
+        if (sidecar == null) {
+            return;
+        }
+
+        final File tmpFile = new File(sidecar.getParentFile(), sidecar.getName() + ".tmp");
+        try {
+            if (!sidecar.getParentFile().exists() && !sidecar.getParentFile().mkdirs()) {
+                return;
+            }
+            final Properties props = new Properties();
+            props.setProperty(MIN, Double.toString(minMax.min));
+            props.setProperty(MAX, Double.toString(minMax.max));
+            try (OutputStream stream = new FileOutputStream(tmpFile)) {
+                props.store(stream, key);
+            }
+            if (!tmpFile.renameTo(sidecar)) {
+                tmpFile.delete();
+            }
+        } catch (Exception e) {
+            SystemUtils.LOG.warning("Unable to write span statistics " + sidecar + ": " + e.getMessage());
+            tmpFile.delete();
+        }
+    }
+
+    private static void putInMemory(final Product srcProduct, final String key, final DecompositionBase.MinMax minMax) {
+        synchronized (memoryCache) {
+            memoryCache.computeIfAbsent(srcProduct, p -> new HashMap<>()).put(key, minMax);
+        }
+    }
+
+    private static String createKey(final Product srcProduct, final PolBandUtils.MATRIX sourceProductType,
+                                    final int halfWindowSizeX, final int halfWindowSizeY,
+                                    final PolBandUtils.PolSourceBand bandList) {
+        final StringBuilder key = new StringBuilder();
+        key.append(sourceProductType).append('_').append(halfWindowSizeX).append('x').append(halfWindowSizeY);
+        key.append("_size_").append(srcProduct.getSceneRasterWidth()).append('x').append(srcProduct.getSceneRasterHeight());
+
+        // a subset read from the same file must not share the statistics of the full scene
+        final ProductReader reader = srcProduct.getProductReader();
+        final ProductSubsetDef subsetDef = reader != null ? reader.getSubsetDef() : null;
+        if (subsetDef != null) {
+            final Rectangle region = subsetDef.getRegion();
+            if (region != null) {
+                key.append("_region_").append(region.x).append(',').append(region.y).append(',')
+                        .append(region.width).append(',').append(region.height);
+            }
+            key.append("_step_").append(subsetDef.getSubSamplingX()).append('x').append(subsetDef.getSubSamplingY());
+        }
+        for (Band band : bandList.srcBands) {
+            key.append('_').append(band.getName());
+        }
+        return key.toString();
+    }
+
+    static File getSidecarFile(final Product srcProduct, final PolBandUtils.MATRIX sourceProductType,
+                               final int halfWindowSizeX, final int halfWindowSizeY,
+                               final PolBandUtils.PolSourceBand bandList) {
+        return getSidecarFile(srcProduct, createKey(srcProduct, sourceProductType, halfWindowSizeX, halfWindowSizeY,
+                bandList));
+    }
+
+    /**
+     * The sidecar is only used for unmodified products read from a file. Operator target products may carry
+     * the file location of their source while holding different data.
+     */
+    private static File getSidecarFile(final Product srcProduct, final String key) {
+        final File file = srcProduct.getFileLocation();
+        final ProductReader reader = srcProduct.getProductReader();
+        if (file == null || !file.exists() || reader == null || reader instanceof OperatorProductReader ||
+                srcProduct.isModified()) {
+            return null;
+        }
+        final String id = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified() + '|' + key;
+        final String name = file.getName() + '_' + Integer.toHexString(id.hashCode()) + ".properties";
+        return new File(new File(SystemUtils.getCacheDir(), "polsar_span"), name);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.polarimetric.gpf;
+
+import org.csa.rstb.polarimetric.gpf.decompositions.DecompositionBase;
+import org.csa.rstb.polarimetric.gpf.support.QuadPolProcessor;
+import org.csa.rstb.polarimetric.gpf.support.SpanStatistics;
+import org.esa.s1tbx.commons.polsar.PolBandUtils;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.engine_utilities.eo.Constants;
+import org.esa.snap.engine_utilities.gpf.OperatorUtils;
+import org.esa.snap.engine_utilities.util.TestUtils;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit test for QuadPolProcessor.computeSpanMinMax and its cache.
+ */
+public class TestSpanMinMax implements QuadPolProcessor {
+
+    static {
+        TestUtils.initTestEnvironment();
+    }
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 280;
+    private static final int HALF_WINDOW_X = 2;
+    private static final int HALF_WINDOW_Y = 3;
+
+    /**
+     * The threaded scan and its cached result agree with a serial scan of the tiles
+     */
+    @Test
+    public void testSpanMinMax() {
+        final Operator op = createOperator();
+        final PolBandUtils.PolSourceBand bandList = createBandList(op.getSourceProduct());
+
+        final DecompositionBase.MinMax expected = computeSerialSpanMinMax(op, bandList);
+
+        final DecompositionBase.MinMax computed = computeSpanMinMax(op, PolBandUtils.MATRIX.C3,
+                HALF_WINDOW_X, HALF_WINDOW_Y, bandList);
+        assertEquals(expected.min, computed.min, 0.0);
+        assertEquals(expected.max, computed.max, 0.0);
+
+        final DecompositionBase.MinMax cached = SpanStatistics.get(op.getSourceProduct(), PolBandUtils.MATRIX.C3,
+                HALF_WINDOW_X, HALF_WINDOW_Y, bandList);
+        assertNotNull(cached);
+        assertEquals(expected.min, cached.min, 0.0);
+        assertEquals(expected.max, cached.max, 0.0);
+
+        final DecompositionBase.MinMax again = computeSpanMinMax(op, PolBandUtils.MATRIX.C3,
+                HALF_WINDOW_X, HALF_WINDOW_Y, bandList);
+        assertEquals(expected.min, again.min, 0.0);
+        assertEquals(expected.max, again.max, 0.0);
+    }
+
+    /**
+     * A tile that fails fails the whole scan, and nothing is cached
+     */
+    @Test
+    public void testFailedTileIsNotCached() {
+        final Operator op = createOperator();
+        final PolBandUtils.PolSourceBand bandList = createBandList(op.getSourceProduct());
+
+        final QuadPolProcessor failing = new QuadPolProcessor() {
+            @Override
+            public void getQuadPolDataBuffer(final Operator op, final Band[] srcBands, final Rectangle sourceRectangle,
+                                             final PolBandUtils.MATRIX sourceProductType,
+                                             final Tile[] sourceTiles, final ProductData[] dataBuffers) {
+                if (sourceRectangle.x > 0) {
+                    throw new IllegalStateException("tile " + sourceRectangle + " failed");
+                }
+                QuadPolProcessor.super.getQuadPolDataBuffer(op, srcBands, sourceRectangle, sourceProductType,
+                        sourceTiles, dataBuffers);
+            }
+        };
+
+        try {
+            failing.computeSpanMinMax(op, PolBandUtils.MATRIX.C3, HALF_WINDOW_X, HALF_WINDOW_Y, bandList);
+            fail("OperatorException expected");
+        } catch (OperatorException e) {
+            // expected
+        }
+
+        assertNull(SpanStatistics.get(op.getSourceProduct(), PolBandUtils.MATRIX.C3,
+                HALF_WINDOW_X, HALF_WINDOW_Y, bandList));
+    }
+
+    /**
+     * The span min/max as it was computed before the tiles were scanned in parallel
+     */
+    private DecompositionBase.MinMax computeSerialSpanMinMax(final Operator op,
+                                                             final PolBandUtils.PolSourceBand bandList) {
+        final DecompositionBase.MinMax minMax = new DecompositionBase.MinMax();
+        final Rectangle[] tileRectangles = OperatorUtils.getAllTileRectangles(op.getSourceProduct(),
+                new Dimension(256, 256), 25);
+        final Tile[] sourceTiles = new Tile[bandList.srcBands.length];
+        final ProductData[] dataBuffers = new ProductData[bandList.srcBands.length];
+        final double[][] Cr = new double[3][3];
+        final double[][] Ci = new double[3][3];
+
+        for (Rectangle rectangle : tileRectangles) {
+            getQuadPolDataBuffer(op, bandList.srcBands, rectangle, PolBandUtils.MATRIX.C3, sourceTiles, dataBuffers);
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; ++y) {
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; ++x) {
+                    getMeanCovarianceMatrix(x, y, HALF_WINDOW_X, HALF_WINDOW_Y,
+                            PolBandUtils.MATRIX.C3, sourceTiles, dataBuffers, Cr, Ci);
+                    final double span = Cr[0][0] + Cr[1][1] + Cr[2][2];
+                    minMax.min = Math.min(minMax.min, span);
+                    minMax.max = Math.max(minMax.max, span);
+                }
+            }
+        }
+        if (minMax.min < Constants.EPS) {
+            minMax.min = Constants.EPS;
+        }
+        return minMax;
+    }
+
+    private static Operator createOperator() {
+        final Operator op = new SourceOp(createC3Product());
+        op.getTargetProduct();
+        return op;
+    }
+
+    private static Product createC3Product() {
+        final Product product = new Product("span", "C3", WIDTH, HEIGHT);
+        final Random random = new Random(27);
+        for (String name : PolBandUtils.getC3BandNames()) {
+            final boolean diagonal = name.equals("C11") || name.equals("C22") || name.equals("C33");
+            final float[] data = new float[WIDTH * HEIGHT];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = diagonal ? 10 * random.nextFloat() : random.nextFloat() - 0.5f;
+            }
+            final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
+            band.setRasterData(ProductData.createInstance(data));
+        }
+        return product;
+    }
+
+    private static PolBandUtils.PolSourceBand createBandList(final Product product) {
+        return new PolBandUtils.PolSourceBand(product.getName(), product.getBands(), "");
+    }
+
+    /**
+     * Gives computeSpanMinMax an operator to get the source tiles from
+     */
+    private static final class SourceOp extends Operator {
+
+        SourceOp(final Product sourceProduct) {
+            setSourceProduct(sourceProduct);
+        }
+
+        @Override
+        public void initialize() {
+            setTargetProduct(new Product("target", "C3", WIDTH, HEIGHT));
+        }
+    }
+}
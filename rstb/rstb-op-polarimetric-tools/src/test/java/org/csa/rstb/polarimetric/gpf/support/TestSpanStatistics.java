@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.polarimetric.gpf.support;
+
+import org.csa.rstb.polarimetric.gpf.decompositions.DecompositionBase;
+import org.esa.s1tbx.commons.polsar.PolBandUtils;
+import org.esa.snap.core.dataio.ProductIO;
+import org.esa.snap.core.dataio.ProductSubsetDef;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.io.FileUtils;
+import org.esa.snap.engine_utilities.util.TestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for SpanStatistics.
+ */
+public class TestSpanStatistics {
+
+    static {
+        TestUtils.initTestEnvironment();
+    }
+
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 40;
+    private static final int HALF_WINDOW = 2;
+
+    private File tmpDir;
+    private final List<Product> products = new ArrayList<>();
+    private final List<File> sidecars = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        tmpDir = Files.createTempDirectory("span").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (Product product : products) {
+            product.dispose();
+        }
+        for (File sidecar : sidecars) {
+            sidecar.delete();
+        }
+        FileUtils.deleteTree(tmpDir);
+    }
+
+    /**
+     * A subset read from the same file gets its own sidecar instead of the statistics of the full scene
+     */
+    @Test
+    public void testSubsetGetsNewSidecarEntry() throws Exception {
+        final File file = new File(tmpDir, "span.dim");
+        ProductIO.writeProduct(createC3Product(), file, "BEAM-DIMAP", false);
+
+        final Product full = read(file, null);
+        final PolBandUtils.PolSourceBand fullBands = createBandList(full);
+        SpanStatistics.put(full, PolBandUtils.MATRIX.C3, HALF_WINDOW, HALF_WINDOW, fullBands, createMinMax(1, 5));
+
+        final File fullSidecar = getSidecarFile(full, fullBands);
+        assertNotNull(fullSidecar);
+        assertTrue(fullSidecar.exists());
+
+        final ProductSubsetDef subsetDef = new ProductSubsetDef();
+        subsetDef.setRegion(10, 5, 30, 20);
+        final Product subset = read(file, subsetDef);
+        final PolBandUtils.PolSourceBand subsetBands = createBandList(subset);
+        assertNull(SpanStatistics.get(subset, PolBandUtils.MATRIX.C3, HALF_WINDOW, HALF_WINDOW, subsetBands));
+
+        final File subsetSidecar = getSidecarFile(subset, subsetBands);
+        assertNotNull(subsetSidecar);
+        assertNotEquals(fullSidecar, subsetSidecar);
+        assertFalse(subsetSidecar.exists());
+
+        SpanStatistics.put(subset, PolBandUtils.MATRIX.C3, HALF_WINDOW, HALF_WINDOW, subsetBands, createMinMax(2, 3));
+        assertTrue(subsetSidecar.exists());
+
+        // fresh products are not in the memory cache and read the sidecars
+        final Product fullAgain = read(file, null);
+        final DecompositionBase.MinMax fullMinMax = SpanStatistics.get(fullAgain, PolBandUtils.MATRIX.C3,
+                HALF_WINDOW, HALF_WINDOW, createBandList(fullAgain));
+        assertNotNull(fullMinMax);
+        assertEquals(1, fullMinMax.min, 0.0);
+        assertEquals(5, fullMinMax.max, 0.0);
+
+        final Product subsetAgain = read(file, subsetDef);
+        final DecompositionBase.MinMax subsetMinMax = SpanStatistics.get(subsetAgain, PolBandUtils.MATRIX.C3,
+                HALF_WINDOW, HALF_WINDOW, createBandList(subsetAgain));
+        assertNotNull(subsetMinMax);
+        assertEquals(2, subsetMinMax.min, 0.0);
+        assertEquals(3, subsetMinMax.max, 0.0);
+    }
+
+    private Product read(final File file, final ProductSubsetDef subsetDef) throws Exception {
+        final Product product = ProductIO.getProductReader("BEAM-DIMAP").readProductNodes(file, subsetDef);
+        products.add(product);
+        return product;
+    }
+
+    private File getSidecarFile(final Product product, final PolBandUtils.PolSourceBand bandList) {
+        final File sidecar = SpanStatistics.getSidecarFile(product, PolBandUtils.MATRIX.C3,
+                HALF_WINDOW, HALF_WINDOW, bandList);
+        if (sidecar != null) {
+            sidecars.add(sidecar);
+        }
+        return sidecar;
+    }
+
+    private static DecompositionBase.MinMax createMinMax(final double min, final double max) {
+        final DecompositionBase.MinMax minMax = new DecompositionBase.MinMax();
+        minMax.min = min;
+        minMax.max = max;
+        return minMax;
+    }
+
+    private static Product createC3Product() {
+        final Product product = new Product("span", "C3", WIDTH, HEIGHT);
+        for (String name : PolBandUtils.getC3BandNames()) {
+            final float[] data = new float[WIDTH * HEIGHT];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = i % 7;
+            }
+            final Band band = product.addBand(name, ProductData.TYPE_FLOAT32);
+            band.setRasterData(ProductData.createInstance(data));
+        }
+        return product;
+    }
+
+    private static PolBandUtils.PolSourceBand createBandList(final Product product) {
+        return new PolBandUtils.PolSourceBand(product.getName(), product.getBands(), "");
+    }
+}
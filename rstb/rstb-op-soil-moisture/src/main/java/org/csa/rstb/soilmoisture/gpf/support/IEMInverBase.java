@@ -15,9 +15,7 @@
  */
 package org.csa.rstb.soilmoisture.gpf.support;
 
-import au.com.bytecode.opencsv.CSVReader;
 import com.bc.ceres.core.ProgressMonitor;
-import net.sf.javaml.core.kdtree.KDTree;
 import org.apache.commons.lang.StringUtils;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.gpf.Operator;
@@ -26,14 +24,12 @@ import org.esa.snap.core.gpf.annotations.OperatorMetadata;
 import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.util.*;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
-import org.esa.snap.engine_utilities.gpf.CommonReaders;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.util.Settings;
 import org.esa.snap.runtime.Config;
 
 import java.awt.*;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -140,29 +136,25 @@ public class IEMInverBase extends Operator {
     // Hybrid and Multi-angle approaches have 2 images (one AM, one PM).
     // Multi-polarization approach has 1 image (AM or PM).
     private int numberOfImages = 0;
-    // paramLUT is m rows by n columns where m is NUM_ROWS_PER_ANGLE_DEGREE and n is the
+    // The LUT holds m rows by n parameter columns where m is NUM_ROWS_PER_ANGLE_DEGREE and n is the
     // number of variable input parameters that feed the model that computes the backscatter.
     // n is 3 for Hybrid approach (the 3 parameters are rms, cl and RDC).
     // n is 2 for the remaining 2 approaches (the 2 parameters are rms and RDC).
-    // Once paramLUT is populated, its contents do not change.
-    private double[][] paramLUT = null;
-    // Used by LUT CSV file only.
-    // sigmaLUT is m rows by 2 columns where m is total number of rows in the LUT.
-    // The 2 columns are sigmaHH and sigmaVV.
-    private double[][] sigmaLUT = null;
-    // Number of columns in the LUT.
-    private int lutWidth = 0;
-    private ProductData lutData = null;
+    // It also holds the sigmaHH and sigmaVV columns of all rows.
+    // The LUT is memory mapped from its binary form and shared with other operators using the same LUT file.
+    private IEMLUT lut = null;
     // It is inefficient to build and destroy a KD tree for each pixel.
     // Also, there are multiple threads processing the pixels.
-    // Thus, all possible KD trees are built at the beginning.
+    // Thus, all possible KD trees are obtained at the beginning. They are built once per LUT and saved next to it.
     // E.g., for Hybrid or Multi-angle, if the angle range for AM image is 18 to 20 degrees and 19 to 21 degrees
     // for PM image, there are 9 combinations, thus 9 KD trees.
     // kdTreeMap will map a unique integer for each such combination to a KD tree.
     // (See method convertToKDTreeMapIntKey() in this class.)
     // For Multi-pol, it is simpler since only one image is involved. If the angle range for the AM or PM image is
     // 30 to 32 degrees, only 3 KD trees are needed.
-    private TreeMap<Integer, KDTree> kdTreeMap = null;
+    private TreeMap<Integer, LUTKDTree> kdTreeMap = null;
+    private final ThreadLocal<LUTKDTree.Workspace> kdTreeWorkspace =
+            ThreadLocal.withInitial(() -> new LUTKDTree.Workspace(Math.max(N, 1)));
     private int srcRasterWidth;
     private int srcRasterHeight;
     // length of the side of the square neighbourhood, must be odd and >= 3
@@ -492,197 +484,9 @@ public class IEMInverBase extends Operator {
 
         getLUTMetadata();
 
-        // paramLUT contains only rms, (cl if applicable) and RDC
-        paramLUT = new double[NUM_ROWS_PER_ANGLE_DEGREE][numParams];
-
-        final String filename = lutFile.getName();
-        final String fileExtension = filename.substring(filename.lastIndexOf(".") + 1);
-
-        //System.out.println(fileExtension);
-
-        if (filename.endsWith("." + MAT_FILE_EXTENSION)) {
-
-            initLUTFromMatlabFile();
-
-        } else if (filename.endsWith("." + CSV_FILE_EXTENSION)) {
-
-            initLUTFromCSVFile();
-
-        } else {
-
-            throw new OperatorException("LUT files with extension ." + fileExtension + " are not supported. Only ." + MAT_FILE_EXTENSION + " and ." + CSV_FILE_EXTENSION + " are supported (case sensitive)");
-        }
-    }
-
-    private void initLUTFromMatlabFile() {
-
-        //System.out.println("initLUTFromMatlabFile");
-
-        Product lutProd = null;
-
-        try {
-
-            lutProd = CommonReaders.readProduct(lutFile);
-
-        } catch (Throwable e) {
-
-            OperatorUtils.catchOperatorException(getId(), e);
-        }
-
-        if (lutProd == null) {
-
-            throw new OperatorException("LUT product is null");
-        }
-
-        // The LUT file should have (NUM_ROWS_PER_ANGLE_DEGREE * NUM_ANGLE_SECTIONS) rows.
-        // Each row contains the parameters and the sigma values.
-        // E.g., for Hybrid approach, each row contains rms, cl, RDC, sigmaHH, sigmaVV.
-
-        lutWidth = lutProd.getSceneRasterWidth();
-        final int lutHeight = lutProd.getSceneRasterHeight();
-
-        //System.out.println("lutWidth = " + lutWidth + " lutHeight = " + lutHeight);
-
-        if (lutWidth != (paramLUT[0].length + 2)) {
-
-            throw new OperatorException("LUT has wrong width = " + lutWidth);
-        }
-
-        if (lutHeight != (NUM_ROWS_PER_ANGLE_DEGREE * NUM_ANGLE_SECTIONS)) {
-
-            throw new OperatorException("LUT has wrong height = " + lutHeight + "; expecting it to be " + NUM_ANGLE_SECTIONS * NUM_ROWS_PER_ANGLE_DEGREE);
-        }
-
-        if (lutProd.getNumBands() != 1) {
-
-            throw new OperatorException("Too many bands in LUT product");
-        }
-
-        final Band lutBand = lutProd.getBandAt(0);
-
-        if (lutBand == null) {
-
-            throw new OperatorException("LUT band is null");
-        }
-
-        /*
-        final int datatype = lutBand.getDataType();
-        if (datatype != ProductData.TYPE_FLOAT64) {
-            System.out.println("WARNING: lutBand data type = " + datatype);
-        }  else {
-            System.out.println("lutBand is doubles");
-        }
-        */
-
-        // Populate paramLUT by reading in the first n columns of the first NUM_ROWS_PER_ANGLE_DEGREE rows of the LUT.
-        // E.g., for Hybrid approach, n = 3 and we would read in rms, cl and RDC.
-        // The contents of paramLUT will not change during the processing.
-
-        lutData = lutBand.createCompatibleProductData((int) lutBand.getNumDataElems());
-
-        if (lutData == null) {
-
-            throw new OperatorException("LUT data is null");
-        }
-
-        try {
-
-            lutBand.readRasterData(0, 0, lutWidth, lutHeight, lutData, ProgressMonitor.NULL);
-
-        } catch (Throwable e) {
-
-            OperatorUtils.catchOperatorException(getId(), e);
-        }
-
-        if (lutData.getNumElems() != (NUM_ANGLE_SECTIONS * NUM_ROWS_PER_ANGLE_DEGREE * (paramLUT[0].length + 2))) {
-
-            throw new OperatorException("Wrong number of elements in LUT " + lutData.getNumElems());
-        }
-
-        for (int i = 0; i < paramLUT.length; i++) { // loop through rows of LUT
-
-            for (int j = 0; j < paramLUT[i].length; j++) { // loop through columns of LUT
-
-                paramLUT[i][j] = lutData.getElemDoubleAt(i * lutWidth + j);
-            }
-        }
-    }
-
-    private void initLUTFromCSVFile() {
-
-        //System.out.println("initLUTFromCSVFile");
-
-        sigmaLUT = new double[NUM_ANGLE_SECTIONS * NUM_ROWS_PER_ANGLE_DEGREE][2];
-        final int numParams = paramLUT[0].length;
-
-        try {
-
-            final CSVReader cvsReader = new CSVReader(new FileReader(lutFile));
-
-            // loop through rows in first angle section
-            for (int i = 0; i < NUM_ROWS_PER_ANGLE_DEGREE; i++) {
-
-                // read one row
-                String[] row = cvsReader.readNext();
-
-                if (row == null || row.length != numParams + 2) {
-
-                    throw new OperatorException("Error reading row " + i + " (zero-based) in LUT (LUT has wrong height or width?");
-                }
-
-                // the left non-sigma columns
-                for (int j = 0; j < numParams; j++) {
-
-                    if (row[j].isEmpty()) {
-
-                        throw new OperatorException("Error reading row " + i + " (zero-based) in LUT");
-                    }
-                    paramLUT[i][j] = Double.parseDouble(row[j]);
-                }
-
-                // the two sigma columns
-                for (int j = 0; j < 2; j++) {
-
-                    if (row[numParams + j].isEmpty()) {
-
-                        throw new OperatorException("Error reading row " + i + " (zero-based) in LUT");
-                    }
-                    sigmaLUT[i][j] = Double.parseDouble(row[numParams + j]);
-                }
-            }
-
-            // loop through remaining rows
-            for (int i = NUM_ROWS_PER_ANGLE_DEGREE; i < (NUM_ANGLE_SECTIONS * NUM_ROWS_PER_ANGLE_DEGREE); i++) {
-
-                String[] row = cvsReader.readNext();
-
-                if (row == null || row.length != numParams + 2) {
-
-                    throw new OperatorException("Error reading row " + i + " (zero-based) in LUT (LUT has wrong height or width?");
-                }
-
-                for (int j = 0; j < 2; j++) {
-
-                    if (row[numParams + j].isEmpty()) {
-
-                        throw new OperatorException("Error reading row " + i + " (zero-based) in LUT");
-                    }
-                    sigmaLUT[i][j] = Double.parseDouble(row[numParams + j]);
-                }
-            }
-
-            // Have already read all the rows, so next row should be null
-            String[] row = cvsReader.readNext();
-
-            if (row != null) {
-
-                throw new OperatorException("LUT has more rows than expected (expecting only " + NUM_ANGLE_SECTIONS * NUM_ROWS_PER_ANGLE_DEGREE + " rows)");
-            }
-
-        } catch (Throwable e) {
-
-            OperatorUtils.catchOperatorException(getId(), e);
-        }
+        // The binary form of the LUT contains only rms, (cl if applicable) and RDC of the first angle section
+        // followed by the sigmaHH and sigmaVV of all rows.
+        lut = IEMLUT.getInstance(lutFile, numParams, NUM_ROWS_PER_ANGLE_DEGREE, NUM_ANGLE_SECTIONS);
     }
 
     // sigma contains the measured values to be used in the search.
@@ -744,7 +548,7 @@ public class IEMInverBase extends Operator {
             // rowIdx should never be out of range, but do a paranoid check anyways
             if (rowIdx >= 0 && rowIdx < NUM_ROWS_PER_ANGLE_DEGREE) {
 
-                if (results[i].length != paramLUT[rowIdx].length) {
+                if (results[i].length != lut.getNumParams()) {
                     throw new OperatorException("Wrong results array length");
                 }
 
@@ -752,10 +556,10 @@ public class IEMInverBase extends Operator {
                     throw new OperatorException("Wrong resultSigmas array length");
                 }
 
-                System.arraycopy(paramLUT[rowIdx], 0, results[i], 0, results[i].length);
+                lut.getParams(rowIdx, results[i]);
 
                 for (int j = 0; j < pol.length; j++) {
-                    resultSigmas[i][j] = getSigmaFromLUT(sectionIdx[j], rowIdx, pol[j]);
+                    resultSigmas[i][j] = lut.getSigma(sectionIdx[j], rowIdx, pol[j]);
                 }
             }
         }
@@ -818,12 +622,12 @@ public class IEMInverBase extends Operator {
         // rowIdx should never be out of range, but do a paranoid check anyways
         if (rowIdx >= 0 && rowIdx < NUM_ROWS_PER_ANGLE_DEGREE) {
 
-            if (results.length != paramLUT[rowIdx].length) {
+            if (results.length != lut.getNumParams()) {
 
                 throw new OperatorException("Wrong results array length");
             }
 
-            System.arraycopy(paramLUT[rowIdx], 0, results, 0, results.length);
+            lut.getParams(rowIdx, results);
             //results[0] = (double) rowIdx; // for debugging, output the row index
             //results[0] = (double) (sectionIdx[0] + startIntThetaDeg); // for debugging, output the integral theta1
             //results[1] = (double) (sectionIdx[2] + startIntThetaDeg); // for debugging, output the integral theta2
@@ -1144,7 +948,7 @@ public class IEMInverBase extends Operator {
 
                 final int secIdx = sectionIdx[j];
                 final int colIdx = sigmaColIdx[j];
-                final double diff = sigma[j] - getSigmaFromLUT(secIdx, rowIdx, colIdx);
+                final double diff = sigma[j] - lut.getSigma(secIdx, rowIdx, colIdx);
                 dis += diff * diff;
             }
 
@@ -1176,40 +980,20 @@ public class IEMInverBase extends Operator {
                     sigmaColIdx.length + " should be equal");
         }
 
-        KDTree kdTree = null;
-
-        if (kdTreeMap == null) {
-
-            kdTree = buildOneKDTRee(sectionIdx, sigmaColIdx);
-
-        } else {
-
-            final KDTreeInfo info = new KDTreeInfo(sectionIdx, sigmaColIdx);
-
-            kdTree = kdTreeMap.get(convertToKDTreeMapIntKey(info));
-        }
+        final LUTKDTree kdTree = getKDTree(sectionIdx, sigmaColIdx);
 
         if (kdTree == null) { // This should never happen
 
             return null;
         }
 
-        Object[] object = kdTree.nearest(sigma, N);
-        if (object == null || object.length == 0) { // This should never happen
+        final int[] rowIndices = new int[N];
+        final int numFound = kdTree.nearest(sigma, N, kdTreeWorkspace.get(), rowIndices);
+        if (numFound == 0) { // This should never happen
             return null;
         }
 
-        RowIndex[] result = new RowIndex[object.length];
-        for (int i = 0; i < result.length; i++) {
-            result[i] = (RowIndex) object[i];
-        }
-
-        int[] rowIndices = new int[result.length];
-        for (int i = 0; i < rowIndices.length; i++) {
-            rowIndices[i] = result[i].getIndex();
-        }
-
-        return rowIndices;
+        return numFound == N ? rowIndices : Arrays.copyOf(rowIndices, numFound);
     }
 
     private int doKDTreeSearch(final double[] sigma, final int[] sectionIdx, final int[] sigmaColIdx) {
@@ -1228,34 +1012,35 @@ public class IEMInverBase extends Operator {
                     sigmaColIdx.length + " should be equal");
         }
 
-        KDTree kdTree = null;
+        final LUTKDTree kdTree = getKDTree(sectionIdx, sigmaColIdx);
 
-        if (kdTreeMap == null) {
-
-            kdTree = buildOneKDTRee(sectionIdx, sigmaColIdx);
-
-        } else {
-
-            final KDTreeInfo info = new KDTreeInfo(sectionIdx, sigmaColIdx);
+        if (kdTree == null) { // This should never happen
 
-            kdTree = kdTreeMap.get(convertToKDTreeMapIntKey(info));
+            return -1;
         }
 
-        if (kdTree == null) { // This should never happen
+        final int[] result = new int[1];
+        if (kdTree.nearest(sigma, 1, kdTreeWorkspace.get(), result) == 0) { // This should never happen
 
             return -1;
+
+        } else {
+
+            return result[0];
         }
+    }
 
-        //RowIndex result = (RowIndex) kdTree.nearest(demoteToFloatPrecision(sigma)); // For comparing with matlab
-        RowIndex result = (RowIndex) kdTree.nearest(sigma);
+    private LUTKDTree getKDTree(final int[] sectionIdx, final int[] sigmaColIdx) {
 
-        if (result == null) { // This should never happen
+        if (kdTreeMap == null) {
 
-            return -1;
+            return lut.getKDTree(sectionIdx, sigmaColIdx);
 
         } else {
 
-            return result.getIndex();
+            final KDTreeInfo info = new KDTreeInfo(sectionIdx, sigmaColIdx);
+
+            return kdTreeMap.get(convertToKDTreeMapIntKey(info));
         }
     }
 
@@ -1270,91 +1055,10 @@ public class IEMInverBase extends Operator {
 
             //info.dumpContents();
 
-            final KDTree kdtree = buildOneKDTRee(info.getSectionIdx(), info.getSigmaColIdx());
+            final LUTKDTree kdtree = lut.getKDTree(info.getSectionIdx(), info.getSigmaColIdx());
 
             kdTreeMap.put(convertToKDTreeMapIntKey(info), kdtree);
         }
-
-        /*
-        We cannot delete the sigma LUTs here because in searchLUTForN(), we need to access the LUT to get the sigmas of
-        the N closest match from the KD tree.
-
-        // lutData or sigmaLUT can be deleted after all the KD trees are built.
-        // However, if linear search is to be used, then lutData cannot be deleted here.
-        if (lutData == null) {
-
-            sigmaLUT = null;
-
-        } else {
-
-            lutData.dispose();
-            lutData = null;
-        }
-        */
-    }
-
-    // See explanation above doLinearSearch() and doKDTreeSearch() on sectionIdx and sigmaColIdx.
-    // The sigmas comprise the key and the LUT row index (relative to a section) of the sigmas is the value stored
-    // in the KD tree for that key.
-    private KDTree buildOneKDTRee(final int[] sectionIdx, final int[] sigmaColIdx) {
-
-        if (sectionIdx.length != sigmaColIdx.length) {
-
-            throw new OperatorException("sectionIdx.length = " + sectionIdx.length + " and sigmaColIdx.length = " +
-                    sigmaColIdx.length + " should be equal");
-        }
-
-        // Tree dimension is the number of sigmas being compared.
-        // Hybrid: It is 4. SigmaHH_AM, SigmaVV_AM, SigmaHH_PM and SigmaVV_PM
-        // Multi-pol: It is 2. (SigmaHH_AM and SigmaVV_AM) or (SigmaHH_PM and SigmaVV_PM)
-        // Multi-angle: It is 2. (SigmaHH_AM and SigmaHH_PM) or (SigmaHH_AM and SigmaVV_PM) or
-        // (SigmaVV_AM and SigmaVV_PM) or (SigmaVV_AM and SigmaHH_PM)
-        final int treeDim = sectionIdx.length;
-
-        final KDTree kdtree = new KDTree(treeDim);
-        final double[] sigmas = new double[treeDim];
-        for (int i = 0; i < NUM_ROWS_PER_ANGLE_DEGREE; i++) {
-
-            for (int j = 0; j < treeDim; j++) {
-
-                sigmas[j] = getSigmaFromLUT(sectionIdx[j], i, sigmaColIdx[j]);
-            }
-
-            //kdtree.insert(demoteToFloatPrecision(sigmas), new RowIndex(i)); // For comparing with matlab
-            kdtree.insert(sigmas, new RowIndex(i));
-        }
-
-        return kdtree;
-    }
-
-    private double getSigmaFromLUT(int sectionIdx, int rowIdx, int colIdx) {
-
-        if (lutData == null) {
-
-            return getSigmaFromCSV(sectionIdx, rowIdx, colIdx);
-
-        } else {
-
-            return getSigmaFromMatlab(sectionIdx, rowIdx, colIdx);
-        }
-    }
-
-    private double getSigmaFromMatlab(int sectionIdx, int rowIdx, int colIdx) {
-
-        // See description of LUT above lutFile.
-        // sectionIdx is zero-based index of the angle section.
-        // rowIdx is zero-based index relative to the start of the angle section.
-        // colIdx can be or 0 or 1. 0 means sigmaHH and 1 means sigmaVV.
-
-        final int startRowIdx = sectionIdx * NUM_ROWS_PER_ANGLE_DEGREE;
-        final int idx = (startRowIdx + rowIdx) * lutWidth + (lutWidth - 2);
-
-        return lutData.getElemDoubleAt(idx + colIdx);
-    }
-
-    private double getSigmaFromCSV(int sectionIdx, int rowIdx, int colIdx) {
-
-        return sigmaLUT[sectionIdx * NUM_ROWS_PER_ANGLE_DEGREE + rowIdx][colIdx];
     }
 
     // This will provide a KD tree with a unique value that can be used as a key to a map.
@@ -1476,20 +1180,14 @@ public class IEMInverBase extends Operator {
 
         lutFile = new File(csvLUTFilePath);
         getLUTMetadata();
-        paramLUT = new double[NUM_ROWS_PER_ANGLE_DEGREE][numParams];
-        initLUTFromCSVFile();
-        final double[][] csvParamLUT = paramLUT.clone();
-        paramLUT = null;
+        final IEMLUT csvLUT = IEMLUT.read(lutFile, numParams, NUM_ROWS_PER_ANGLE_DEGREE, NUM_ANGLE_SECTIONS);
 
         lutFile = new File(matlabLUTFilePath);
         getLUTMetadata();
-        paramLUT = new double[NUM_ROWS_PER_ANGLE_DEGREE][numParams];
-        initLUTFromMatlabFile();
-        final double[][] matlabParamLUT = paramLUT.clone();
-        paramLUT = null;
+        final IEMLUT matlabLUT = IEMLUT.read(lutFile, numParams, NUM_ROWS_PER_ANGLE_DEGREE, NUM_ANGLE_SECTIONS);
 
-        System.out.println("csvParamLUT.length = " + csvParamLUT.length);
-        System.out.println("matlabParamLUT.length = " + matlabParamLUT.length);
+        SystemUtils.LOG.fine("csv LUT rows per angle = " + csvLUT.getRowsPerAngle() +
+                " matlab LUT rows per angle = " + matlabLUT.getRowsPerAngle());
 
         double[] maxParamDiff = new double[numParams];
         for (int j = 0; j < numParams; j++) {
@@ -1500,7 +1198,7 @@ public class IEMInverBase extends Operator {
 
             for (int j = 0; j < numParams; j++) {
 
-                final double diff = Math.abs(csvParamLUT[i][j] - matlabParamLUT[i][j]);
+                final double diff = Math.abs(csvLUT.getParam(i, j) - matlabLUT.getParam(i, j));
                 if (diff > maxParamDiff[j]) {
                     maxParamDiff[j] = diff;
                 }
@@ -1532,7 +1230,7 @@ public class IEMInverBase extends Operator {
 
                 for (int k = 0; k < 2; k++) {
 
-                    final double diff = Math.abs(getSigmaFromCSV(i, j, k) - getSigmaFromMatlab(i, j, k));
+                    final double diff = Math.abs(csvLUT.getSigma(i, j, k) - matlabLUT.getSigma(i, j, k));
                     if (diff > maxSigmaDiff[k]) {
                         maxSigmaDiff[k] = diff;
                     }
@@ -1720,19 +1418,6 @@ public class IEMInverBase extends Operator {
         }
     }
 
-    private static class RowIndex {
-
-        private final int idx;
-
-        public RowIndex(int index) {
-            this.idx = index;
-        }
-
-        public int getIndex() {
-            return this.idx;
-        }
-    }
-
     // KDTreeInfo completely defines a KDTRee.
     // Use convertToKDTreeMapIntKey() to derive a key from KDTReeInfo that can be used as a key to a map.
     protected static class KDTreeInfo {
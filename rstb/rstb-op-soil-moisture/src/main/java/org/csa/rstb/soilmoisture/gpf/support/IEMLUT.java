@@ -0,0 +1,504 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.soilmoisture.gpf.support;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.engine_utilities.gpf.CommonReaders;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An IEM LUT held in a compact binary form.
+ * <p>
+ * The first time a .mat or .csv LUT is used it is converted into a binary file in an index folder next to the LUT
+ * (or in the SNAP cache folder when the LUT folder is read only). Afterwards the binary file is memory mapped.
+ * KD trees for each combination of angle sections and polarisations are written to the same folder.
+ * The LUT and its KD trees are shared by all operator instances in the JVM.
+ * <p>
+ * See IEMInverBase for a description of the LUT layout. Only the parameter columns of the first angle section
+ * are kept since they are the same for all sections.
+ */
+public final class IEMLUT {
+
+    public static final String BIN_FILE_NAME = "lut.bin";
+    private static final String INDEX_FOLDER_SUFFIX = ".index";
+
+    private static final int MAGIC = 0x49454D4C; // IEML
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+
+    private static final Map<String, IEMLUT> sharedLUTs = new HashMap<>();
+
+    private final int numParams;
+    private final int rowsPerAngle;
+    private final int numAngleSections;
+    private final long stamp;
+
+    // rowsPerAngle x numParams
+    private final DoubleBuffer params;
+    // (numAngleSections * rowsPerAngle) x 2, sigmaHH and sigmaVV
+    private final DoubleBuffer sigmas;
+
+    private final File indexFolder;
+    private final Map<String, LUTKDTree> kdTrees = new ConcurrentHashMap<>();
+
+    private IEMLUT(final int numParams, final int rowsPerAngle, final int numAngleSections, final long stamp,
+                   final DoubleBuffer params, final DoubleBuffer sigmas, final File indexFolder) {
+        this.numParams = numParams;
+        this.rowsPerAngle = rowsPerAngle;
+        this.numAngleSections = numAngleSections;
+        this.stamp = stamp;
+        this.params = params;
+        this.sigmas = sigmas;
+        this.indexFolder = indexFolder;
+    }
+
+    /**
+     * Get the LUT for a file, loading it only if it has not been loaded by this JVM or the file has changed.
+     *
+     * @param lutFile          the .mat or .csv LUT file
+     * @param numParams        number of parameter columns
+     * @param rowsPerAngle     number of rows per angle section
+     * @param numAngleSections number of angle sections
+     * @return the LUT
+     * @throws IOException on read error
+     */
+    public static IEMLUT getInstance(final File lutFile, final int numParams, final int rowsPerAngle,
+                                     final int numAngleSections) throws IOException {
+
+        checkFileExtension(lutFile);
+        final String key = lutFile.getCanonicalPath() + '|' + numParams;
+        final long stamp = getStamp(lutFile);
+        synchronized (sharedLUTs) {
+            IEMLUT lut = sharedLUTs.get(key);
+            if (lut == null || lut.stamp != stamp || lut.rowsPerAngle != rowsPerAngle ||
+                    lut.numAngleSections != numAngleSections) {
+                lut = load(lutFile, numParams, rowsPerAngle, numAngleSections);
+                sharedLUTs.put(key, lut);
+            }
+            return lut;
+        }
+    }
+
+    private static IEMLUT load(final File lutFile, final int numParams, final int rowsPerAngle,
+                               final int numAngleSections) throws IOException {
+
+        final long stamp = getStamp(lutFile);
+        final File indexFolder = getIndexFolder(lutFile);
+        final File binFile = indexFolder != null ? new File(indexFolder, BIN_FILE_NAME) : null;
+
+        if (binFile != null && binFile.exists()) {
+            final IEMLUT lut = map(binFile, numParams, rowsPerAngle, numAngleSections, stamp, indexFolder);
+            if (lut != null) {
+                return lut;
+            }
+        }
+
+        final IEMLUT lut = read(lutFile, numParams, rowsPerAngle, numAngleSections);
+        if (binFile == null) {
+            return lut;
+        }
+
+        Path tmpFile = null;
+        try {
+            tmpFile = createTempFile(indexFolder, BIN_FILE_NAME);
+            lut.writeBinary(tmpFile.toFile());
+            moveInPlace(tmpFile, binFile);
+            final IEMLUT mapped = map(binFile, numParams, rowsPerAngle, numAngleSections, stamp, indexFolder);
+            if (mapped != null) {
+                return mapped;
+            }
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to write binary LUT " + binFile + ": " + e.getMessage());
+        } finally {
+            deleteTempFile(tmpFile);
+        }
+        return new IEMLUT(numParams, rowsPerAngle, numAngleSections, stamp, lut.params, lut.sigmas, indexFolder);
+    }
+
+    /**
+     * Read a .mat or .csv LUT file into memory without using the binary form.
+     *
+     * @param lutFile          the .mat or .csv LUT file
+     * @param numParams        number of parameter columns
+     * @param rowsPerAngle     number of rows per angle section
+     * @param numAngleSections number of angle sections
+     * @return the LUT
+     * @throws IOException on read error
+     */
+    public static IEMLUT read(final File lutFile, final int numParams, final int rowsPerAngle,
+                              final int numAngleSections) throws IOException {
+
+        checkFileExtension(lutFile);
+        if (lutFile.getName().endsWith("." + IEMInverBase.MAT_FILE_EXTENSION)) {
+            return readMatlab(lutFile, numParams, rowsPerAngle, numAngleSections);
+        } else {
+            return readCSV(lutFile, numParams, rowsPerAngle, numAngleSections);
+        }
+    }
+
+    private static void checkFileExtension(final File lutFile) {
+        final String filename = lutFile.getName();
+        if (!filename.endsWith("." + IEMInverBase.MAT_FILE_EXTENSION) &&
+                !filename.endsWith("." + IEMInverBase.CSV_FILE_EXTENSION)) {
+            final String fileExtension = filename.substring(filename.lastIndexOf(".") + 1);
+            throw new OperatorException("LUT files with extension ." + fileExtension + " are not supported. Only ." +
+                    IEMInverBase.MAT_FILE_EXTENSION + " and ." + IEMInverBase.CSV_FILE_EXTENSION +
+                    " are supported (case sensitive)");
+        }
+    }
+
+    private static IEMLUT readMatlab(final File lutFile, final int numParams, final int rowsPerAngle,
+                                     final int numAngleSections) throws IOException {
+
+        final Product lutProd = CommonReaders.readProduct(lutFile);
+        if (lutProd == null) {
+            throw new OperatorException("LUT product is null");
+        }
+
+        try {
+            // The LUT file should have (rowsPerAngle * numAngleSections) rows.
+            // Each row contains the parameters and the sigma values.
+            // E.g., for Hybrid approach, each row contains rms, cl, RDC, sigmaHH, sigmaVV.
+            final int lutWidth = lutProd.getSceneRasterWidth();
+            final int lutHeight = lutProd.getSceneRasterHeight();
+
+            if (lutWidth != numParams + 2) {
+                throw new OperatorException("LUT has wrong width = " + lutWidth);
+            }
+
+            if (lutHeight != rowsPerAngle * numAngleSections) {
+                throw new OperatorException("LUT has wrong height = " + lutHeight + "; expecting it to be " +
+                        numAngleSections * rowsPerAngle);
+            }
+
+            if (lutProd.getNumBands() != 1) {
+                throw new OperatorException("Too many bands in LUT product");
+            }
+
+            final Band lutBand = lutProd.getBandAt(0);
+            if (lutBand == null) {
+                throw new OperatorException("LUT band is null");
+            }
+
+            final ProductData lutData = lutBand.createCompatibleProductData((int) lutBand.getNumDataElems());
+            lutBand.readRasterData(0, 0, lutWidth, lutHeight, lutData, ProgressMonitor.NULL);
+
+            if (lutData.getNumElems() != numAngleSections * rowsPerAngle * lutWidth) {
+                throw new OperatorException("Wrong number of elements in LUT " + lutData.getNumElems());
+            }
+
+            final double[] params = new double[rowsPerAngle * numParams];
+            for (int i = 0; i < rowsPerAngle; i++) {
+                for (int j = 0; j < numParams; j++) {
+                    params[i * numParams + j] = lutData.getElemDoubleAt(i * lutWidth + j);
+                }
+            }
+
+            final double[] sigmas = new double[lutHeight * 2];
+            for (int i = 0; i < lutHeight; i++) {
+                sigmas[2 * i] = lutData.getElemDoubleAt(i * lutWidth + numParams);
+                sigmas[2 * i + 1] = lutData.getElemDoubleAt(i * lutWidth + numParams + 1);
+            }
+
+            return new IEMLUT(numParams, rowsPerAngle, numAngleSections, getStamp(lutFile),
+                    DoubleBuffer.wrap(params), DoubleBuffer.wrap(sigmas), null);
+        } finally {
+            lutProd.dispose();
+        }
+    }
+
+    private static IEMLUT readCSV(final File lutFile, final int numParams, final int rowsPerAngle,
+                                  final int numAngleSections) throws IOException {
+
+        final int numRows = numAngleSections * rowsPerAngle;
+        final double[] params = new double[rowsPerAngle * numParams];
+        final double[] sigmas = new double[numRows * 2];
+
+        try (CSVReader cvsReader = new CSVReader(new FileReader(lutFile))) {
+
+            for (int i = 0; i < numRows; i++) {
+
+                final String[] row = cvsReader.readNext();
+                if (row == null || row.length != numParams + 2) {
+                    throw new OperatorException("Error reading row " + i + " (zero-based) in LUT (LUT has wrong height or width?");
+                }
+
+                // the left non-sigma columns are only needed from the first angle section
+                if (i < rowsPerAngle) {
+                    for (int j = 0; j < numParams; j++) {
+                        params[i * numParams + j] = parseValue(row[j], i);
+                    }
+                }
+
+                // the two sigma columns
+                for (int j = 0; j < 2; j++) {
+                    sigmas[2 * i + j] = parseValue(row[numParams + j], i);
+                }
+            }
+
+            // Have already read all the rows, so next row should be null
+            if (cvsReader.readNext() != null) {
+                throw new OperatorException("LUT has more rows than expected (expecting only " + numRows + " rows)");
+            }
+        }
+
+        return new IEMLUT(numParams, rowsPerAngle, numAngleSections, getStamp(lutFile),
+                DoubleBuffer.wrap(params), DoubleBuffer.wrap(sigmas), null);
+    }
+
+    private static double parseValue(final String value, final int row) {
+        if (value.isEmpty()) {
+            throw new OperatorException("Error reading row " + row + " (zero-based) in LUT");
+        }
+        return Double.parseDouble(value);
+    }
+
+    private void writeBinary(final File file) throws IOException {
+        final int numParamValues = rowsPerAngle * numParams;
+        final int numSigmaValues = numAngleSections * rowsPerAngle * 2;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(stamp);
+            header.putInt(numParams).putInt(rowsPerAngle).putInt(numAngleSections);
+            header.rewind();
+            channel.write(header);
+
+            final ByteBuffer data = ByteBuffer.allocate((numParamValues + numSigmaValues) * Double.BYTES);
+            final DoubleBuffer values = data.asDoubleBuffer();
+            for (int i = 0; i < numParamValues; i++) {
+                values.put(params.get(i));
+            }
+            for (int i = 0; i < numSigmaValues; i++) {
+                values.put(sigmas.get(i));
+            }
+            channel.write(data);
+        }
+    }
+
+    private static IEMLUT map(final File binFile, final int numParams, final int rowsPerAngle,
+                              final int numAngleSections, final long stamp, final File indexFolder) {
+
+        final int numParamValues = rowsPerAngle * numParams;
+        final int numSigmaValues = numAngleSections * rowsPerAngle * 2;
+        final long expectedSize = HEADER_SIZE + (long) (numParamValues + numSigmaValues) * Double.BYTES;
+
+        try (RandomAccessFile raf = new RandomAccessFile(binFile, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() != expectedSize) {
+                return null;
+            }
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, expectedSize);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != stamp ||
+                    buffer.getInt() != numParams || buffer.getInt() != rowsPerAngle ||
+                    buffer.getInt() != numAngleSections) {
+                return null;
+            }
+
+            buffer.position(HEADER_SIZE);
+            final DoubleBuffer values = buffer.asDoubleBuffer();
+            values.limit(numParamValues);
+            final DoubleBuffer params = values.slice();
+            values.limit(numParamValues + numSigmaValues).position(numParamValues);
+            final DoubleBuffer sigmas = values.slice();
+
+            return new IEMLUT(numParams, rowsPerAngle, numAngleSections, stamp, params, sigmas, indexFolder);
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to map binary LUT " + binFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static long getStamp(final File lutFile) {
+        return lutFile.length() * 31 + lutFile.lastModified();
+    }
+
+    private static File getIndexFolder(final File lutFile) {
+        final File folder = new File(lutFile.getAbsoluteFile().getParentFile(), lutFile.getName() + INDEX_FOLDER_SUFFIX);
+        if ((folder.isDirectory() || folder.mkdirs()) && folder.canWrite()) {
+            return folder;
+        }
+
+        final String name = lutFile.getName() + '_' + Integer.toHexString(lutFile.getAbsolutePath().hashCode());
+        final File cacheFolder = new File(new File(SystemUtils.getCacheDir(), "sm_luts"), name + INDEX_FOLDER_SUFFIX);
+        if ((cacheFolder.isDirectory() || cacheFolder.mkdirs()) && cacheFolder.canWrite()) {
+            return cacheFolder;
+        }
+        return null;
+    }
+
+    public int getNumParams() {
+        return numParams;
+    }
+
+    public int getRowsPerAngle() {
+        return rowsPerAngle;
+    }
+
+    public int getNumAngleSections() {
+        return numAngleSections;
+    }
+
+    /**
+     * @param rowIdx zero-based row index relative to the start of an angle section
+     * @param colIdx zero-based parameter column
+     * @return the parameter value
+     */
+    public double getParam(final int rowIdx, final int colIdx) {
+        return params.get(rowIdx * numParams + colIdx);
+    }
+
+    /**
+     * Copy the parameters of a row.
+     *
+     * @param rowIdx zero-based row index relative to the start of an angle section
+     * @param result receives numParams values
+     */
+    public void getParams(final int rowIdx, final double[] result) {
+        final int offset = rowIdx * numParams;
+        for (int j = 0; j < numParams; j++) {
+            result[j] = params.get(offset + j);
+        }
+    }
+
+    /**
+     * @param sectionIdx zero-based index of the angle section
+     * @param rowIdx     zero-based row index relative to the start of the angle section
+     * @param colIdx     0 means sigmaHH and 1 means sigmaVV
+     * @return the sigma value
+     */
+    public double getSigma(final int sectionIdx, final int rowIdx, final int colIdx) {
+        return sigmas.get(2 * (sectionIdx * rowsPerAngle + rowIdx) + colIdx);
+    }
+
+    /**
+     * Get the KD tree over the sigmas of the given angle sections and polarisations.
+     * The tree is loaded from the index folder if it has been built before, otherwise it is built and saved.
+     *
+     * @param sectionIdx  angle section of each tree dimension
+     * @param sigmaColIdx sigma column of each tree dimension
+     * @return the tree
+     */
+    public LUTKDTree getKDTree(final int[] sectionIdx, final int[] sigmaColIdx) {
+
+        if (sectionIdx.length != sigmaColIdx.length) {
+            throw new OperatorException("sectionIdx.length = " + sectionIdx.length + " and sigmaColIdx.length = " +
+                    sigmaColIdx.length + " should be equal");
+        }
+
+        final StringBuilder keyBuilder = new StringBuilder("kdtree");
+        for (int i = 0; i < sectionIdx.length; i++) {
+            keyBuilder.append('_').append(sectionIdx[i]).append(sigmaColIdx[i] == 0 ? "HH" : "VV");
+        }
+        final String key = keyBuilder.toString();
+
+        return kdTrees.computeIfAbsent(key, k -> loadKDTree(k, sectionIdx.clone(), sigmaColIdx.clone()));
+    }
+
+    private LUTKDTree loadKDTree(final String key, final int[] sectionIdx, final int[] sigmaColIdx) {
+
+        final LUTKDTree.Points points = new LUTKDTree.Points() {
+            public int getNumPoints() {
+                return rowsPerAngle;
+            }
+
+            public int getDimension() {
+                return sectionIdx.length;
+            }
+
+            public double get(final int row, final int d) {
+                return getSigma(sectionIdx[d], row, sigmaColIdx[d]);
+            }
+        };
+
+        final File treeFile = indexFolder != null ? new File(indexFolder, key + ".bin") : null;
+        if (treeFile != null && treeFile.exists()) {
+            try {
+                final LUTKDTree tree = LUTKDTree.read(treeFile, stamp, points);
+                if (tree != null) {
+                    return tree;
+                }
+            } catch (IOException e) {
+                SystemUtils.LOG.warning("Unable to read KD tree " + treeFile + ": " + e.getMessage());
+            }
+        }
+
+        final LUTKDTree tree = LUTKDTree.build(points);
+
+        if (treeFile != null) {
+            Path tmpFile = null;
+            try {
+                tmpFile = createTempFile(indexFolder, treeFile.getName());
+                tree.write(tmpFile.toFile(), stamp);
+                moveInPlace(tmpFile, treeFile);
+            } catch (IOException e) {
+                SystemUtils.LOG.warning("Unable to write KD tree " + treeFile + ": " + e.getMessage());
+            } finally {
+                deleteTempFile(tmpFile);
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * A temporary file with a unique name in the index folder, so that processes converting the same LUT at the
+     * same time do not write into each other's file.
+     */
+    private static Path createTempFile(final File indexFolder, final String name) throws IOException {
+        return Files.createTempFile(indexFolder.toPath(), name + '.', ".tmp");
+    }
+
+    /**
+     * Readers see either the previous file or the complete new one, never a partly written file.
+     */
+    private static void moveInPlace(final Path tmpFile, final File target) throws IOException {
+        try {
+            Files.move(tmpFile, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTempFile(final Path tmpFile) {
+        if (tmpFile != null) {
+            try {
+                Files.deleteIfExists(tmpFile);
+            } catch (IOException e) {
+                SystemUtils.LOG.warning("Unable to delete " + tmpFile + ": " + e.getMessage());
+            }
+        }
+    }
+}
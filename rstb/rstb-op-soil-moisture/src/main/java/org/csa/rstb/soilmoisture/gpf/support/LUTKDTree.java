@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.soilmoisture.gpf.support;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A static KD tree over the rows of a LUT stored as primitive arrays.
+ * <p>
+ * The tree is implicit: the rows are permuted so that the node of any index range [lo, hi) is the middle
+ * element, the left subtree is [lo, mid) and the right subtree is [mid + 1, hi). The split dimension is the
+ * tree depth modulo the number of dimensions. Only the row permutation needs to be persisted, the coordinates
+ * are gathered again from the LUT when the tree is loaded.
+ */
+public final class LUTKDTree {
+
+    private static final int MAGIC = 0x4B445452; // KDTR
+    private static final int VERSION = 1;
+
+    private final int dim;
+    private final int[] rows;       // LUT row index of each node in tree order
+    private final double[] coords;  // coordinates of each node in tree order, dim values per node
+
+    /**
+     * Coordinate access to the points to be indexed.
+     */
+    public interface Points {
+        int getNumPoints();
+
+        int getDimension();
+
+        double get(int row, int d);
+    }
+
+    /**
+     * Scratch space for the k nearest neighbours of one query. Reuse one per thread.
+     */
+    public static final class Workspace {
+        private final double[] dist;
+        private final int[] row;
+        private int k;
+        private int count;
+
+        public Workspace(final int maxNeighbours) {
+            dist = new double[maxNeighbours];
+            row = new int[maxNeighbours];
+        }
+
+        private void reset(final int k) {
+            if (k > dist.length) {
+                throw new IllegalArgumentException("Workspace holds at most " + dist.length + " neighbours");
+            }
+            this.k = k;
+            count = 0;
+        }
+
+        private double worst() {
+            return count < k ? Double.POSITIVE_INFINITY : dist[count - 1];
+        }
+
+        private void offer(final double d, final int r) {
+            if (count == k && d >= dist[count - 1]) {
+                return;
+            }
+            int i = count < k ? count++ : count - 1;
+            while (i > 0 && dist[i - 1] > d) {
+                dist[i] = dist[i - 1];
+                row[i] = row[i - 1];
+                --i;
+            }
+            dist[i] = d;
+            row[i] = r;
+        }
+    }
+
+    private LUTKDTree(final int[] rows, final Points points) {
+        this.dim = points.getDimension();
+        this.rows = rows;
+        this.coords = new double[rows.length * dim];
+        for (int i = 0; i < rows.length; ++i) {
+            for (int d = 0; d < dim; ++d) {
+                coords[i * dim + d] = points.get(rows[i], d);
+            }
+        }
+    }
+
+    /**
+     * Build a tree over all points.
+     *
+     * @param points the points to index
+     * @return the tree
+     */
+    public static LUTKDTree build(final Points points) {
+
+        final int n = points.getNumPoints();
+        final int dim = points.getDimension();
+        final double[] pts = new double[n * dim];
+        final int[] order = new int[n];
+        for (int i = 0; i < n; ++i) {
+            order[i] = i;
+            for (int d = 0; d < dim; ++d) {
+                pts[i * dim + d] = points.get(i, d);
+            }
+        }
+
+        build(order, pts, dim, 0, n, 0);
+        return new LUTKDTree(order, points);
+    }
+
+    private static void build(final int[] order, final double[] pts, final int dim,
+                              final int lo, final int hi, final int depth) {
+        if (hi - lo < 2) {
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        select(order, pts, dim, depth % dim, lo, hi - 1, mid);
+        build(order, pts, dim, lo, mid, depth + 1);
+        build(order, pts, dim, mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Partially sort order[left..right] so that position k holds the element it would hold if sorted along d.
+     */
+    private static void select(final int[] order, final double[] pts, final int dim, final int d,
+                               int left, int right, final int k) {
+        while (right > left) {
+            final double pivot = pts[order[(left + right) >>> 1] * dim + d];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (pts[order[i] * dim + d] < pivot) {
+                    ++i;
+                }
+                while (pts[order[j] * dim + d] > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    final int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    ++i;
+                    --j;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    public int getDimension() {
+        return dim;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Find the k nearest rows to a query point.
+     *
+     * @param query  the query point
+     * @param k      the number of neighbours to find
+     * @param ws     scratch space of the calling thread
+     * @param result receives the row indices, nearest first
+     * @return the number of rows found
+     */
+    public int nearest(final double[] query, final int k, final Workspace ws, final int[] result) {
+        if (query.length != dim) {
+            throw new IllegalArgumentException("query has dimension " + query.length + " instead of " + dim);
+        }
+        ws.reset(k);
+        search(query, 0, rows.length, 0, ws);
+        System.arraycopy(ws.row, 0, result, 0, ws.count);
+        return ws.count;
+    }
+
+    private void search(final double[] query, final int lo, final int hi, final int depth, final Workspace ws) {
+        if (lo >= hi) {
+            return;
+        }
+        final int mid = (lo + hi) >>> 1;
+        final int base = mid * dim;
+
+        double dist = 0.0;
+        for (int d = 0; d < dim; ++d) {
+            final double diff = query[d] - coords[base + d];
+            dist += diff * diff;
+        }
+        ws.offer(dist, rows[mid]);
+
+        final double split = query[depth % dim] - coords[base + depth % dim];
+        if (split < 0) {
+            search(query, lo, mid, depth + 1, ws);
+            if (split * split < ws.worst()) {
+                search(query, mid + 1, hi, depth + 1, ws);
+            }
+        } else {
+            search(query, mid + 1, hi, depth + 1, ws);
+            if (split * split < ws.worst()) {
+                search(query, lo, mid, depth + 1, ws);
+            }
+        }
+    }
+
+    /**
+     * Write the tree structure.
+     *
+     * @param file  the output file
+     * @param stamp identifies the LUT the tree was built from
+     * @throws IOException on write error
+     */
+    public void write(final File file, final long stamp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp);
+            out.writeInt(dim);
+            out.writeInt(rows.length);
+            for (int row : rows) {
+                out.writeInt(row);
+            }
+        }
+    }
+
+    /**
+     * Read a tree previously written with {@link #write}.
+     *
+     * @param file   the input file
+     * @param stamp  identifies the expected LUT
+     * @param points the points the tree was built from
+     * @return the tree or null if the file does not belong to these points
+     * @throws IOException on read error
+     */
+    public static LUTKDTree read(final File file, final long stamp, final Points points) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stamp ||
+                    in.readInt() != points.getDimension()) {
+                return null;
+            }
+            final int n = in.readInt();
+            if (n != points.getNumPoints()) {
+                return null;
+            }
+            final int[] rows = new int[n];
+            for (int i = 0; i < n; ++i) {
+                rows[i] = in.readInt();
+                if (rows[i] < 0 || rows[i] >= n) {
+                    return null;
+                }
+            }
+            return new LUTKDTree(rows, points);
+        }
+    }
+}
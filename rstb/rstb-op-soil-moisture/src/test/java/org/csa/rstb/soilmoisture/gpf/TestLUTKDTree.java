@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.csa.rstb.soilmoisture.gpf;
+
+import org.csa.rstb.soilmoisture.gpf.support.LUTKDTree;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Unit test for the LUT KD tree.
+ */
+public class TestLUTKDTree {
+
+    private static LUTKDTree.Points createPoints(final double[][] pts) {
+        return new LUTKDTree.Points() {
+            public int getNumPoints() {
+                return pts.length;
+            }
+
+            public int getDimension() {
+                return pts[0].length;
+            }
+
+            public double get(final int row, final int d) {
+                return pts[row][d];
+            }
+        };
+    }
+
+    private static double distance(final double[] a, final double[] b) {
+        double dist = 0.0;
+        for (int d = 0; d < a.length; ++d) {
+            dist += (a[d] - b[d]) * (a[d] - b[d]);
+        }
+        return dist;
+    }
+
+    @Test
+    public void testNearestAgainstLinearSearch() {
+
+        final Random random = new Random(42);
+        final int dim = 4;
+        final double[][] pts = new double[2000][dim];
+        for (double[] p : pts) {
+            for (int d = 0; d < dim; ++d) {
+                p[d] = Math.round(random.nextGaussian() * 20.0) / 2.0; // duplicates on purpose
+            }
+        }
+
+        final LUTKDTree tree = LUTKDTree.build(createPoints(pts));
+        final LUTKDTree.Workspace ws = new LUTKDTree.Workspace(5);
+        final int[] result = new int[5];
+        final double[] query = new double[dim];
+        final double[] dist = new double[pts.length];
+
+        for (int q = 0; q < 200; ++q) {
+            for (int d = 0; d < dim; ++d) {
+                query[d] = random.nextGaussian() * 10.0;
+            }
+
+            assertEquals(5, tree.nearest(query, 5, ws, result));
+
+            for (int i = 0; i < pts.length; ++i) {
+                dist[i] = distance(query, pts[i]);
+            }
+            final double[] sorted = dist.clone();
+            Arrays.sort(sorted);
+
+            for (int i = 0; i < 5; ++i) {
+                assertEquals(sorted[i], dist[result[i]], 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testWriteRead() throws Exception {
+
+        final double[][] pts = {{1, 2}, {3, 1}, {0, 0}, {5, 5}, {2, 2}, {4, 0}};
+        final LUTKDTree.Points points = createPoints(pts);
+        final LUTKDTree tree = LUTKDTree.build(points);
+
+        final File file = File.createTempFile("kdtree", ".bin");
+        try {
+            tree.write(file, 123L);
+
+            assertNull(LUTKDTree.read(file, 124L, points));
+
+            final LUTKDTree tree2 = LUTKDTree.read(file, 123L, points);
+            assertNotNull(tree2);
+
+            final LUTKDTree.Workspace ws = new LUTKDTree.Workspace(2);
+            final int[] result1 = new int[2];
+            final int[] result2 = new int[2];
+            tree.nearest(new double[]{2.1, 1.9}, 2, ws, result1);
+            tree2.nearest(new double[]{2.1, 1.9}, 2, ws, result2);
+            assertEquals(4, result1[0]);
+            assertEquals(result1[0], result2[0]);
+            assertEquals(result1[1], result2[1]);
+        } finally {
+            file.delete();
+        }
+    }
+}
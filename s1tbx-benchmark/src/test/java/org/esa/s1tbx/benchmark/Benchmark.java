@@ -1,5 +1,6 @@
 package org.esa.s1tbx.benchmark;
 
+import org.esa.s1tbx.commons.TileProfiler;
 import org.esa.snap.core.util.StopWatch;
 import org.esa.snap.core.util.SystemUtils;
 import org.json.simple.JSONObject;
@@ -31,6 +32,7 @@ public abstract class Benchmark {
         this.execute();
         coldStartTimer.stop();
         SystemUtils.LOG.info("Cold start time " + coldStartTimer.getTimeDiffString());
+        TileProfiler.reset();
         long totalTime = 0L;
 
         for(int i = 1; i <= iterations; ++i) {
@@ -46,6 +48,7 @@ public abstract class Benchmark {
 
         String avgTime = StopWatch.getTimeString(totalTime / (long)iterations);
         SystemUtils.LOG.warning(name + " average time " + avgTime);
+        TileProfiler.writeReport(name);
 
         final JSONObject json = readJSON(resultsFile);
         json.put(name, avgTime);
@@ -0,0 +1,148 @@
+package org.esa.s1tbx.benchmark;
+
+import org.esa.s1tbx.commons.io.ZipArchive;
+import org.junit.Test;
+
+import javax.imageio.stream.FileCacheImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Reads a deflated image entry with the pure Java inflater of ZipArchive, with the native inflater of java.util.zip
+ * alone, and through the file cached stream the readers used before ZipArchive.
+ */
+public class TestBenchmark_Unzip extends BaseBenchmarks {
+
+    private final static String ENTRY_NAME = "measurement/image.tiff";
+    private final static int ENTRY_SIZE = 256 * 1024 * 1024;
+    private final static int BUFFER_SIZE = 64 * 1024;
+    private final static int NUM_REGIONS = 200;
+
+    private static File zipFile;
+
+    @Test
+    public void testSequential_javaUtilZip() throws Exception {
+        Benchmark b = new Benchmark("Unzip sequential java.util.zip") {
+            @Override
+            protected void execute() throws Exception {
+                try (ZipFile zip = new ZipFile(getZipFile());
+                     InputStream in = zip.getInputStream(zip.getEntry(ENTRY_NAME))) {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    while (in.read(buffer) >= 0) {
+                        // decode only
+                    }
+                }
+            }
+        };
+        b.run();
+    }
+
+    @Test
+    public void testSequential_fileCache() throws Exception {
+        Benchmark b = new Benchmark("Unzip sequential file cache") {
+            @Override
+            protected void execute() throws Exception {
+                try (ZipFile zip = new ZipFile(getZipFile());
+                     InputStream in = zip.getInputStream(zip.getEntry(ENTRY_NAME));
+                     ImageInputStream stream = new FileCacheImageInputStream(in, null)) {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    while (stream.read(buffer) >= 0) {
+                        // decode only
+                    }
+                }
+            }
+        };
+        b.run();
+    }
+
+    @Test
+    public void testSequential_ZipArchive() throws Exception {
+        Benchmark b = new Benchmark("Unzip sequential ZipArchive") {
+            @Override
+            protected void execute() throws Exception {
+                try (ZipArchive zip = new ZipArchive(getZipFile());
+                     ImageInputStream in = zip.createImageInputStream(ENTRY_NAME)) {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    while (in.read(buffer) >= 0) {
+                        // decode only
+                    }
+                }
+            }
+        };
+        b.run();
+    }
+
+    /**
+     * Random regions as read by tiles. After the cold start run ZipArchive seeks from the checkpoints of its index.
+     */
+    @Test
+    public void testRegions_fileCache() throws Exception {
+        Benchmark b = new Benchmark("Unzip regions file cache") {
+            @Override
+            protected void execute() throws Exception {
+                try (ZipFile zip = new ZipFile(getZipFile());
+                     InputStream in = zip.getInputStream(zip.getEntry(ENTRY_NAME));
+                     ImageInputStream stream = new FileCacheImageInputStream(in, null)) {
+                    readRegions(stream);
+                }
+            }
+        };
+        b.run();
+    }
+
+    @Test
+    public void testRegions_ZipArchive() throws Exception {
+        Benchmark b = new Benchmark("Unzip regions ZipArchive") {
+            @Override
+            protected void execute() throws Exception {
+                try (ZipArchive zip = new ZipArchive(getZipFile());
+                     ImageInputStream stream = zip.createImageInputStream(ENTRY_NAME)) {
+                    readRegions(stream);
+                }
+            }
+        };
+        b.run();
+    }
+
+    private static void readRegions(final ImageInputStream stream) throws IOException {
+        final Random random = new Random(42);
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        for (int i = 0; i < NUM_REGIONS; ++i) {
+            stream.seek((long) random.nextInt(ENTRY_SIZE - BUFFER_SIZE));
+            stream.readFully(buffer);
+        }
+    }
+
+    /**
+     * @return a zip holding one deflated entry of 16 bit samples with the low entropy of a detected SAR image
+     */
+    private static synchronized File getZipFile() throws IOException {
+        if (zipFile == null) {
+            final File file = File.createTempFile("benchmark_unzip", ".zip");
+            file.deleteOnExit();
+            final Random random = new Random(42);
+            final byte[] line = new byte[BUFFER_SIZE];
+            try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+                out.putNextEntry(new ZipEntry(ENTRY_NAME));
+                for (int written = 0; written < ENTRY_SIZE; written += line.length) {
+                    for (int i = 0; i < line.length; i += 2) {
+                        final int sample = 100 + (int) Math.abs(random.nextGaussian() * 40);
+                        line[i] = (byte) (sample >> 8);
+                        line[i + 1] = (byte) sample;
+                    }
+                    out.write(line);
+                }
+                out.closeEntry();
+            }
+            zipFile = file;
+        }
+        return zipFile;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons;
+
+import org.apache.commons.math3.util.FastMath;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Separable box decimation (multilooking) on the primitive arrays of source tiles.
+ * <p>
+ * Every source sample is read and converted exactly once: each group of nAzLooks source lines is first
+ * summed column-wise into a line accumulator and the accumulator is then summed in runs of nRgLooks samples.
+ * Both inner loops run over contiguous primitive arrays.
+ */
+public final class BoxDecimation {
+
+    public enum SampleType {
+        /** average the samples as they are */
+        LINEAR,
+        /** convert dB to linear, average, and convert back to dB */
+        DB,
+        /** average the intensity i*i + q*q of a pair of i and q bands */
+        INTENSITY
+    }
+
+    private BoxDecimation() {
+    }
+
+    /**
+     * Multilook a target rectangle from source tiles covering the corresponding source rectangle.
+     *
+     * @param srcTile1  the source tile (i band for complex data)
+     * @param srcTile2  the q band source tile for SampleType.INTENSITY, otherwise null
+     * @param trgRect   the target rectangle in target image coordinates
+     * @param nRgLooks  number of range looks
+     * @param nAzLooks  number of azimuth looks
+     * @param type      how the source samples are to be averaged
+     * @param trgValues output array of at least trgRect.width * trgRect.height values in row major order
+     */
+    public static void decimate(final Tile srcTile1, final Tile srcTile2, final Rectangle trgRect,
+                                final int nRgLooks, final int nAzLooks, final SampleType type,
+                                final double[] trgValues) {
+
+        final int x0 = trgRect.x * nRgLooks;
+        final int y0 = trgRect.y * nAzLooks;
+
+        ProductData srcData2 = null;
+        int srcOffset2 = 0, srcStride2 = 0;
+        if (srcTile2 != null) {
+            srcData2 = srcTile2.getDataBuffer();
+            srcOffset2 = getOffset(srcTile2, x0, y0);
+            srcStride2 = srcTile2.getScanlineStride();
+        }
+
+        decimate(srcTile1.getDataBuffer(), getOffset(srcTile1, x0, y0), srcTile1.getScanlineStride(),
+                srcData2, srcOffset2, srcStride2,
+                trgRect.width, trgRect.height, nRgLooks, nAzLooks, type, trgValues);
+    }
+
+    private static int getOffset(final Tile tile, final int x, final int y) {
+        return tile.getScanlineOffset() + (y - tile.getMinY()) * tile.getScanlineStride() + (x - tile.getMinX());
+    }
+
+    /**
+     * Multilook a block of source samples.
+     *
+     * @param srcData1   the source data (i band for complex data)
+     * @param srcOffset1 index of the first sample of the block in srcData1
+     * @param srcStride1 distance between lines of srcData1 in samples
+     * @param srcData2   the q band source data for SampleType.INTENSITY, otherwise null
+     * @param srcOffset2 index of the first sample of the block in srcData2
+     * @param srcStride2 distance between lines of srcData2 in samples
+     * @param trgWidth   number of output samples per line
+     * @param trgHeight  number of output lines
+     * @param nRgLooks   number of range looks
+     * @param nAzLooks   number of azimuth looks
+     * @param type       how the source samples are to be averaged
+     * @param trgValues  output array of at least trgWidth * trgHeight values in row major order
+     */
+    public static void decimate(final ProductData srcData1, final int srcOffset1, final int srcStride1,
+                                final ProductData srcData2, final int srcOffset2, final int srcStride2,
+                                final int trgWidth, final int trgHeight,
+                                final int nRgLooks, final int nAzLooks, final SampleType type,
+                                final double[] trgValues) {
+
+        if (type == SampleType.INTENSITY && srcData2 == null) {
+            throw new IllegalArgumentException("q band data is required for intensity");
+        }
+
+        final int srcWidth = trgWidth * nRgLooks;
+        final double[] line1 = new double[srcWidth];
+        final double[] line2 = type == SampleType.INTENSITY ? new double[srcWidth] : null;
+        final double[] colSum = new double[srcWidth];
+        final double numLooks = nRgLooks * nAzLooks;
+
+        int k = 0;
+        for (int ty = 0; ty < trgHeight; ++ty) {
+            Arrays.fill(colSum, 0.0);
+
+            for (int az = 0; az < nAzLooks; ++az) {
+                final int srcY = ty * nAzLooks + az;
+                getLine(srcData1, srcOffset1 + srcY * srcStride1, line1, srcWidth);
+
+                switch (type) {
+                    case DB:
+                        for (int i = 0; i < srcWidth; ++i) {
+                            colSum[i] += FastMath.pow(10, line1[i] / 10.0); // dB to linear
+                        }
+                        break;
+                    case INTENSITY:
+                        getLine(srcData2, srcOffset2 + srcY * srcStride2, line2, srcWidth);
+                        for (int i = 0; i < srcWidth; ++i) {
+                            colSum[i] += line1[i] * line1[i] + line2[i] * line2[i];
+                        }
+                        break;
+                    default:
+                        for (int i = 0; i < srcWidth; ++i) {
+                            colSum[i] += line1[i];
+                        }
+                }
+            }
+
+            for (int tx = 0; tx < trgWidth; ++tx) {
+                final int xStart = tx * nRgLooks;
+                double sum = 0.0;
+                for (int i = xStart; i < xStart + nRgLooks; ++i) {
+                    sum += colSum[i];
+                }
+                final double mean = sum / numLooks;
+                trgValues[k++] = type == SampleType.DB ? 10.0 * Math.log10(mean) : mean; // linear to dB
+            }
+        }
+    }
+
+    /**
+     * Copy n consecutive samples starting at offset into a double array, reading the primitive array directly.
+     */
+    private static void getLine(final ProductData data, final int offset, final double[] line, final int n) {
+
+        switch (data.getType()) {
+            case ProductData.TYPE_FLOAT32: {
+                final float[] elems = (float[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i];
+                }
+                break;
+            }
+            case ProductData.TYPE_FLOAT64: {
+                System.arraycopy((double[]) data.getElems(), offset, line, 0, n);
+                break;
+            }
+            case ProductData.TYPE_INT16: {
+                final short[] elems = (short[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i];
+                }
+                break;
+            }
+            case ProductData.TYPE_UINT16: {
+                final short[] elems = (short[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i] & 0xFFFF;
+                }
+                break;
+            }
+            case ProductData.TYPE_INT32: {
+                final int[] elems = (int[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i];
+                }
+                break;
+            }
+            case ProductData.TYPE_UINT32: {
+                final int[] elems = (int[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i] & 0xFFFFFFFFL;
+                }
+                break;
+            }
+            case ProductData.TYPE_INT8: {
+                final byte[] elems = (byte[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i];
+                }
+                break;
+            }
+            case ProductData.TYPE_UINT8: {
+                final byte[] elems = (byte[]) data.getElems();
+                for (int i = 0; i < n; ++i) {
+                    line[i] = elems[offset + i] & 0xFF;
+                }
+                break;
+            }
+            default:
+                for (int i = 0; i < n; ++i) {
+                    line[i] = data.getElemDoubleAt(offset + i);
+                }
+        }
+    }
+}
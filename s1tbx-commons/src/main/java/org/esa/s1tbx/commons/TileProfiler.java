@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons;
+
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.gpf.internal.OperatorContext;
+import org.esa.snap.core.gpf.internal.OperatorImage;
+import org.esa.snap.core.gpf.monitor.TileComputationEvent;
+import org.esa.snap.core.gpf.monitor.TileComputationObserver;
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.runtime.Config;
+import org.json.simple.JSONValue;
+
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in profiler of operator tile computation.
+ * <p>
+ * GPF reports every computed tile of every operator to the tile computation observer named by the system property
+ * snap.gpf.tileComputationObserver. Profiling is enabled by setting it to this class. Each tile records its wall
+ * time, size and thread. Source tiles are computed by the upstream operators on the requesting thread, so the tiles
+ * computed on a thread within the time of another tile are its source tiles. The time an operator waits for them
+ * is left out of its self time.
+ * <p>
+ * The tiles are written as a Chrome trace event file, which can be opened in chrome://tracing or Perfetto, together
+ * with a per-operator report to s1tbx.gpf.profile.dir by {@link #writeReport}, when the observer is stopped and when
+ * the JVM exits.
+ */
+public class TileProfiler extends TileComputationObserver {
+
+    public static final String OBSERVER_PROPERTY = "snap.gpf.tileComputationObserver";
+
+    private static final int MAX_EVENTS = Config.instance().preferences().getInt("s1tbx.gpf.profile.maxEvents", 1000000);
+    private static final int MAX_PENDING_EVENTS = 4096;
+
+    private static final Queue<TileEvent> events = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger numEvents = new AtomicInteger();
+    private static final Map<String, OperatorStats> operatorStats = new ConcurrentHashMap<>();
+    private static final Map<Long, String> threadNames = new ConcurrentHashMap<>();
+    // the tiles computed on a thread which are not yet known to be nested in another tile
+    private static final ThreadLocal<Deque<TileEvent>> pendingEvents = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final AtomicBoolean shutdownHookAdded = new AtomicBoolean();
+    private static volatile long startNanos = System.nanoTime();
+
+    @Override
+    public void start() {
+        if (shutdownHookAdded.compareAndSet(false, true)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writeReport("gpt");
+                } catch (IOException e) {
+                    SystemUtils.LOG.warning("Unable to write tile profile: " + e.getMessage());
+                }
+            }, "TileProfiler shutdown"));
+        }
+    }
+
+    @Override
+    public void tileComputed(final TileComputationEvent event) {
+        final OperatorImage image = event.getImage();
+        final OperatorContext context = image.getOperatorContext();
+        final Band band = image.getTargetBand();
+        record(context.getOperator().getClass().getSimpleName(), band != null ? band.getName() : null,
+               image.getTileRect(event.getTileX(), event.getTileY()), event.getStartNanos(), event.getEndNanos());
+    }
+
+    @Override
+    public void stop() {
+        try {
+            writeReport("gpf");
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to write tile profile: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record a tile computed on the current thread.
+     *
+     * @param operator  the operator
+     * @param band      the target band or null
+     * @param rectangle the target tile
+     * @param start     System.nanoTime() when the computation started
+     * @param end       System.nanoTime() when the computation ended
+     */
+    static void record(final String operator, final String band, final Rectangle rectangle,
+                       final long start, final long end) {
+        final Thread thread = Thread.currentThread();
+        final TileEvent event = new TileEvent(operator, band, rectangle, thread.getId(), start, end - start);
+        threadNames.putIfAbsent(event.threadId, thread.getName());
+
+        // a tile is reported once it is done, so the tiles computed while it waited for its sources come first
+        final Deque<TileEvent> pending = pendingEvents.get();
+        long sourceWaitNanos = 0;
+        while (!pending.isEmpty() && pending.peekLast().startTime >= start) {
+            sourceWaitNanos += pending.pollLast().duration;
+        }
+        pending.addLast(event);
+        if (pending.size() > MAX_PENDING_EVENTS) {
+            // tiles computed at the top of a thread are never nested
+            pending.pollFirst();
+        }
+
+        final OperatorStats stats = getStats(operator);
+        stats.tiles.increment();
+        stats.computeNanos.add(event.duration);
+        stats.sourceWaitNanos.add(sourceWaitNanos);
+        if (rectangle != null) {
+            stats.pixels.add((long) rectangle.width * rectangle.height);
+        }
+        stats.threads.add(event.threadId);
+        if (numEvents.incrementAndGet() <= MAX_EVENTS) {
+            events.add(event);
+        }
+    }
+
+    /**
+     * Write the trace and the report of the tiles recorded since the last report and start over.
+     *
+     * @param name a name for the files, e.g. the graph or benchmark
+     * @throws IOException on write error
+     */
+    public static synchronized void writeReport(final String name) throws IOException {
+        if (operatorStats.isEmpty()) {
+            return;
+        }
+        final File dir = new File(Config.instance().preferences().get("s1tbx.gpf.profile.dir",
+                                                                        new File(SystemUtils.getCacheDir(), "profile").getPath()));
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        final String prefix = name.replaceAll("[^A-Za-z0-9_.-]", "_") + '_' +
+                new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+
+        final File traceFile = new File(dir, prefix + "_trace.json");
+        try (Writer writer = Files.newBufferedWriter(traceFile.toPath(), StandardCharsets.UTF_8)) {
+            writeTrace(writer);
+        }
+        final String report = getReport();
+        final File reportFile = new File(dir, prefix + "_report.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(report);
+        }
+        SystemUtils.LOG.info("Tile profile written to " + traceFile + '\n' + report);
+        reset();
+    }
+
+    /**
+     * Discard the recorded tiles
+     */
+    public static synchronized void reset() {
+        events.clear();
+        numEvents.set(0);
+        operatorStats.clear();
+        threadNames.clear();
+        pendingEvents.remove();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Write the recorded tiles as Chrome trace events.
+     *
+     * @param writer the output
+     * @throws IOException on write error
+     */
+    public static void writeTrace(final Writer writer) throws IOException {
+        final long start = startNanos;
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+        boolean first = true;
+        for (Map.Entry<Long, String> entry : threadNames.entrySet()) {
+            if (!first) {
+                writer.write(",\n");
+            }
+            first = false;
+            writer.write("{\"ph\":\"M\",\"pid\":1,\"tid\":" + entry.getKey() +
+                                 ",\"name\":\"thread_name\",\"args\":{\"name\":\"" + JSONValue.escape(entry.getValue()) + "\"}}");
+        }
+        for (TileEvent event : events) {
+            if (!first) {
+                writer.write(",\n");
+            }
+            first = false;
+            final StringBuilder sb = new StringBuilder(256);
+            sb.append("{\"ph\":\"X\",\"pid\":1,\"tid\":").append(event.threadId);
+            sb.append(",\"name\":\"").append(JSONValue.escape(event.operator));
+            sb.append("\",\"cat\":\"tile\"");
+            sb.append(",\"ts\":").append((event.startTime - start) / 1000.0);
+            sb.append(",\"dur\":").append(event.duration / 1000.0);
+            sb.append(",\"args\":{");
+            if (event.band != null) {
+                sb.append("\"band\":\"").append(JSONValue.escape(event.band)).append('"');
+            }
+            if (event.rectangle != null) {
+                if (event.band != null) {
+                    sb.append(',');
+                }
+                sb.append("\"x\":").append(event.rectangle.x).append(",\"y\":").append(event.rectangle.y);
+                sb.append(",\"width\":").append(event.rectangle.width).append(",\"height\":").append(event.rectangle.height);
+            }
+            sb.append("}}");
+            writer.write(sb.toString());
+        }
+        writer.write("\n]}\n");
+    }
+
+    /**
+     * @return a table of the compute time, source wait time, pixels and threads of each operator.
+     * Self time excludes the computation of source tiles.
+     */
+    public static String getReport() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-32s %8s %12s %12s %12s %10s %8s%n",
+                                "Operator", "Tiles", "Compute ms", "Wait ms", "Self ms", "Mpixels", "Threads"));
+        for (Map.Entry<String, OperatorStats> entry : new TreeMap<>(operatorStats).entrySet()) {
+            final OperatorStats stats = entry.getValue();
+            final long compute = stats.computeNanos.sum();
+            final long wait = stats.sourceWaitNanos.sum();
+            sb.append(String.format("%-32s %8d %12.1f %12.1f %12.1f %10.2f %8d%n",
+                                    entry.getKey(), stats.tiles.sum(), compute / 1.0e6, wait / 1.0e6,
+                                    (compute - wait) / 1.0e6, stats.pixels.sum() / 1.0e6, stats.threads.size()));
+        }
+        if (numEvents.get() > MAX_EVENTS) {
+            sb.append("Trace truncated to the first ").append(MAX_EVENTS).append(" tiles\n");
+        }
+        return sb.toString();
+    }
+
+    private static OperatorStats getStats(final String operator) {
+        return operatorStats.computeIfAbsent(operator, k -> new OperatorStats());
+    }
+
+    /**
+     * A computed tile
+     */
+    private static final class TileEvent {
+        final String operator;
+        final String band;
+        final Rectangle rectangle;
+        final long threadId;
+        final long startTime;
+        final long duration;
+
+        TileEvent(final String operator, final String band, final Rectangle rectangle, final long threadId,
+                  final long startTime, final long duration) {
+            this.operator = operator;
+            this.band = band;
+            this.rectangle = rectangle;
+            this.threadId = threadId;
+            this.startTime = startTime;
+            this.duration = duration;
+        }
+    }
+
+    private static final class OperatorStats {
+        final LongAdder tiles = new LongAdder();
+        final LongAdder computeNanos = new LongAdder();
+        final LongAdder sourceWaitNanos = new LongAdder();
+        final LongAdder pixels = new LongAdder();
+        final Set<Long> threads = ConcurrentHashMap.newKeySet();
+    }
+}
@@ -26,6 +26,7 @@ import org.esa.snap.engine_utilities.gpf.InputProductValidator;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
 import org.esa.snap.engine_utilities.util.ZipUtils;
 
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -33,7 +34,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
 import java.util.List;
-import java.util.zip.ZipFile;
 
 /**
  * This class represents a product directory.
@@ -48,6 +48,7 @@ public abstract class AbstractProductDirectory {
 
     private boolean isSLC = false;
     private boolean isMapProjected;
+    private ZipArchive zipArchive = null;
 
     protected transient final Map<String, ImageIOFile> bandImageFileMap = new TreeMap<>();
     protected transient final Map<Band, ImageIOFile.BandInfo> bandMap = new HashMap<>(3);
@@ -188,6 +189,10 @@ public abstract class AbstractProductDirectory {
             final ImageIOFile img = bandImageFileMap.get(key);
             img.close();
         }
+        if (zipArchive != null) {
+            zipArchive.close();
+            zipArchive = null;
+        }
         productDir.close();
     }
 
@@ -253,11 +258,7 @@ public abstract class AbstractProductDirectory {
                 int dotIndex = path.lastIndexOf('.');
                 return dotIndex < sepIndex;
             } else {
-                final ZipFile productZip = new ZipFile(baseDir, ZipFile.OPEN_READ);
-
-                final Optional result = productZip.stream()
-                        .filter(ze -> ze.isDirectory()).filter(ze -> ze.getName().equals(path)).findFirst();
-                return result.isPresent();
+                return getZipArchive().isDirectory(path);
             }
         } else {
             return productDir.getFile(path).isDirectory();
@@ -280,6 +281,51 @@ public abstract class AbstractProductDirectory {
         return inStream;
     }
 
+    /**
+     * Open an image file of the product for random access. Entries of a zipped product are read in place
+     * rather than through a copy of the entry in memory or in the temp folder.
+     */
+    protected ImageInputStream getImageInputStream(final String path, final Dimension bandDimensions) throws IOException {
+        if (isCompressed()) {
+            final ImageInputStream stream = getZipArchive().createImageInputStream(path);
+            if (stream != null) {
+                return stream;
+            }
+        }
+        return createImageInputStream(getInputStream(path), bandDimensions);
+    }
+
+    /**
+     * @return true if an image stream opened by getImageInputStream holds any data. The cached streams used for
+     * unzipped products do not know their length, they are checked for a first byte as available() did before.
+     */
+    protected static boolean hasImageData(final ImageInputStream imgStream) throws IOException {
+        final long length = imgStream.length();
+        if (length >= 0) {
+            return length > 0;
+        }
+        imgStream.mark();
+        try {
+            return imgStream.read() != -1;
+        } finally {
+            imgStream.reset();
+        }
+    }
+
+    protected ImageInputStream createImageInputStream(final InputStream inStream, final Dimension bandDimensions) throws IOException {
+        return ImageIOFile.createImageInputStream(inStream, bandDimensions);
+    }
+
+    /**
+     * @return the zip file of a compressed product, opened once and shared by all of its images
+     */
+    protected synchronized ZipArchive getZipArchive() throws IOException {
+        if (zipArchive == null) {
+            zipArchive = new ZipArchive(baseDir);
+        }
+        return zipArchive;
+    }
+
     protected File getBaseDir() {
         return baseDir;
     }
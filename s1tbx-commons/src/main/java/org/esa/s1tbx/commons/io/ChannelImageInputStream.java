@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An ImageInputStream over a region of a file, read with positional reads of a shared channel.
+ * Used for STORED zip entries, which can be read in place without inflating or caching.
+ * <p>
+ * Closing the stream does not close the channel.
+ */
+public final class ChannelImageInputStream extends ImageInputStreamImpl {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final SharedChannel channel;
+    private final long offset;
+    private final long length;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int bufferLength;
+
+    /**
+     * @param channel the channel to read from
+     * @param offset  the start of the region in the channel
+     * @param length  the length of the region
+     */
+    ChannelImageInputStream(final SharedChannel channel, final long offset, final long length) {
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        if (streamPos < bufferStart || streamPos >= bufferStart + bufferLength) {
+            fillBuffer();
+        }
+        return buffer[(int) (streamPos++ - bufferStart)] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        final int count = (int) Math.min(len, length - streamPos);
+
+        if (streamPos >= bufferStart && streamPos < bufferStart + bufferLength) {
+            final int n = (int) Math.min(count, bufferStart + bufferLength - streamPos);
+            System.arraycopy(buffer, (int) (streamPos - bufferStart), b, off, n);
+            streamPos += n;
+            return n;
+        }
+
+        if (count >= BUFFER_SIZE) {
+            readAt(ByteBuffer.wrap(b, off, count), streamPos);
+            streamPos += count;
+            return count;
+        }
+
+        fillBuffer();
+        final int n = Math.min(count, bufferLength);
+        System.arraycopy(buffer, 0, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    private void fillBuffer() throws IOException {
+        final int len = (int) Math.min(BUFFER_SIZE, length - streamPos);
+        readAt(ByteBuffer.wrap(buffer, 0, len), streamPos);
+        bufferStart = streamPos;
+        bufferLength = len;
+    }
+
+    private void readAt(final ByteBuffer buf, final long pos) throws IOException {
+        channel.readFully(buf, offset + pos);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public boolean isCached() {
+        return false;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Checkpoints into a deflate stream for random access, in the manner of zlib's zran example.
+ * <p>
+ * A checkpoint is taken at a block boundary roughly every {@code spacing} bytes of output and holds the
+ * output position, the bit position in the compressed data and the preceding 32K of output. The windows are
+ * kept compressed. Checkpoints are added in order while the stream is decoded, so an index may cover only the
+ * start of the entry. A written index ends with a CRC of its content, so that a damaged file is rebuilt rather than
+ * used to decode from the wrong place.
+ */
+final class DeflateIndex {
+
+    private static final int MAGIC = 0x5A494458; // ZIDX
+    private static final int VERSION = 2;
+
+    private final long spacing;
+    private long[] outputPos = new long[16];
+    private long[] bitPos = new long[16];
+    private byte[][] windows = new byte[16][];
+    private int size;
+    private boolean modified;
+
+    DeflateIndex(final long spacing) {
+        this.spacing = spacing;
+        outputPos[0] = 0;
+        bitPos[0] = 0;
+        windows[0] = new byte[0];
+        size = 1;
+    }
+
+    /**
+     * @return the index of the last checkpoint at or before the output position
+     */
+    synchronized int find(final long pos) {
+        final int i = Arrays.binarySearch(outputPos, 0, size, pos);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    synchronized long getOutputPos(final int i) {
+        return outputPos[i];
+    }
+
+    synchronized long getBitPos(final int i) {
+        return bitPos[i];
+    }
+
+    synchronized byte[] getHistory(final int i) throws IOException {
+        return windows[i].length == 0 ? windows[i] : inflate(windows[i]);
+    }
+
+    /**
+     * Record the decoder state if it is at a block boundary far enough past the last checkpoint.
+     */
+    synchronized void offer(final RawInflater inflater) {
+        if (!inflater.isAtBlockBoundary() || inflater.getOutputPos() < outputPos[size - 1] + spacing) {
+            return;
+        }
+        if (size == outputPos.length) {
+            outputPos = Arrays.copyOf(outputPos, size * 2);
+            bitPos = Arrays.copyOf(bitPos, size * 2);
+            windows = Arrays.copyOf(windows, size * 2);
+        }
+        outputPos[size] = inflater.getOutputPos();
+        bitPos[size] = inflater.getBitPos();
+        windows[size] = deflate(inflater.getHistory());
+        ++size;
+        modified = true;
+    }
+
+    synchronized boolean isModified() {
+        return modified;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Write the index.
+     *
+     * @param file  the output file
+     * @param stamp identifies the zip entry the index was built from
+     * @throws IOException on write error
+     */
+    synchronized void write(final File file, final long stamp) throws IOException {
+        final CRC32 crc = new CRC32();
+        try (DataOutputStream out = new DataOutputStream(
+                new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file)), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(stamp);
+            out.writeLong(spacing);
+            out.writeInt(size);
+            for (int i = 0; i < size; ++i) {
+                out.writeLong(outputPos[i]);
+                out.writeLong(bitPos[i]);
+                out.writeInt(windows[i].length);
+                out.write(windows[i]);
+            }
+            out.writeLong(crc.getValue());
+        }
+        modified = false;
+    }
+
+    /**
+     * Read an index previously written with {@link #write}.
+     *
+     * @param file  the input file
+     * @param stamp identifies the expected zip entry
+     * @return the index or null if the file does not belong to this entry or is damaged
+     * @throws IOException on read error
+     */
+    static DeflateIndex read(final File file, final long stamp) throws IOException {
+        final long fileLength = file.length();
+        final CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(
+                new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != stamp) {
+                return null;
+            }
+            final DeflateIndex index = new DeflateIndex(in.readLong());
+            final int size = in.readInt();
+            // a checkpoint takes at least 20 bytes
+            if (size < 1 || size > fileLength / 20) {
+                return null;
+            }
+            index.outputPos = new long[size];
+            index.bitPos = new long[size];
+            index.windows = new byte[size][];
+            for (int i = 0; i < size; ++i) {
+                index.outputPos[i] = in.readLong();
+                index.bitPos[i] = in.readLong();
+                final int windowLength = in.readInt();
+                if (windowLength < 0 || windowLength > fileLength) {
+                    return null;
+                }
+                index.windows[i] = new byte[windowLength];
+                in.readFully(index.windows[i]);
+                if (i > 0 && index.outputPos[i] <= index.outputPos[i - 1]) {
+                    return null;
+                }
+            }
+            if (index.outputPos[0] != 0) {
+                return null;
+            }
+            final long expectedCrc = crc.getValue();
+            if (in.readLong() != expectedCrc) {
+                return null;
+            }
+            index.size = size;
+            return index;
+        }
+    }
+
+    private static byte[] deflate(final byte[] data) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            final byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(final byte[] data) throws IOException {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            final byte[] out = new byte[RawInflater.WINDOW_SIZE];
+            int len = 0;
+            while (!inflater.finished() && len < out.length) {
+                final int n = inflater.inflate(out, len, out.length - len);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt deflate index window");
+                }
+                len += n;
+            }
+            return len == out.length ? out : Arrays.copyOf(out, len);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt deflate index window", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -147,6 +147,11 @@ public final class EnhancedRandomAccessFile implements DataInput, DataOutput {
      */
     boolean bufferModified = false;
 
+    /**
+     * Counts the reads from the underlying eraf.
+     */
+    private IOMetrics metrics = IOMetrics.global();
+
     /**
      * make sure eraf is this long when closed
      */
@@ -196,6 +201,15 @@ public final class EnhancedRandomAccessFile implements DataInput, DataOutput {
         return this.eraf;
     }
 
+    /**
+     * Count the reads of this file in the metrics of a product.
+     *
+     * @param metrics the product metrics
+     */
+    public void setIOMetrics(final IOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * _more_
      *
@@ -479,6 +493,7 @@ public final class EnhancedRandomAccessFile implements DataInput, DataOutput {
             if (extraCopy > buffer.length) {
                 eraf.seek(filePosition);
                 extraCopy = eraf.read(b, off + copyLength, len - copyLength);
+                metrics.addRead(extraCopy);
 
                 // ...or read a new buffer full, and copy as much as possible...
             } else {
@@ -517,7 +532,9 @@ public final class EnhancedRandomAccessFile implements DataInput, DataOutput {
             throws IOException {
 
         eraf.seek(pos);
-        return eraf.read(b, offset, len);
+        final int n = eraf.read(b, offset, len);
+        metrics.addRead(n);
+        return n;
     }
 
     /**
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.runtime.Config;
+import org.json.simple.JSONObject;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I/O counters of a product reader.
+ * <p>
+ * A reader owns one instance per opened product and hands it to the files and caches it reads through. The counters
+ * are cheap enough to be always on. When the preference s1tbx.readers.metrics is set, the metrics of each product are
+ * registered as an MXBean from the first count until the product is closed, and a JSON summary is logged when it is
+ * closed. Reads which are not attributed to a product are counted by {@link #global()}.
+ */
+public final class IOMetrics implements IOMetricsMXBean {
+
+    public static final boolean ENABLED = Config.instance().preferences().getBoolean("s1tbx.readers.metrics", false);
+
+    private static final String DOMAIN = "org.esa.s1tbx";
+    private static final AtomicInteger instanceCount = new AtomicInteger();
+    private static final IOMetrics GLOBAL = new IOMetrics("global");
+
+    private final String name;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder readCalls = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final Map<String, LongAdder> bandDecodeNanos = new ConcurrentHashMap<>();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    private final LongAdder lockAcquisitions = new LongAdder();
+    private final LongAdder metadataNanos = new LongAdder();
+    private final LongAdder openNanos = new LongAdder();
+
+    private final boolean enabled;
+    private volatile boolean registered = false;
+    private boolean closed = false;
+    private ObjectName objectName = null;
+
+    public IOMetrics(final String name) {
+        this(name, ENABLED);
+    }
+
+    IOMetrics(final String name, final boolean enabled) {
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the metrics of reads which are not attributed to a product
+     */
+    public static IOMetrics global() {
+        return GLOBAL;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    public void addRead(final long numBytes) {
+        register();
+        readCalls.increment();
+        if (numBytes > 0) {
+            bytesRead.add(numBytes);
+        }
+    }
+
+    public void addDecodeTime(final String bandName, final long nanos) {
+        register();
+        decodeNanos.add(nanos);
+        if (bandName != null) {
+            bandDecodeNanos.computeIfAbsent(bandName, k -> new LongAdder()).add(nanos);
+        }
+    }
+
+    public void addCacheHit() {
+        register();
+        cacheHits.increment();
+    }
+
+    public void addCacheMiss() {
+        register();
+        cacheMisses.increment();
+    }
+
+    /**
+     * Count an acquisition of a read lock.
+     *
+     * @param nanos the time waited for the lock
+     */
+    public void addLockWait(final long nanos) {
+        register();
+        lockAcquisitions.increment();
+        lockWaitNanos.add(nanos);
+    }
+
+    public void addMetadataTime(final long nanos) {
+        register();
+        metadataNanos.add(nanos);
+    }
+
+    public void addOpenTime(final long nanos) {
+        register();
+        openNanos.add(nanos);
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getReadCalls() {
+        return readCalls.sum();
+    }
+
+    @Override
+    public long getDecodeTimeNanos() {
+        return decodeNanos.sum();
+    }
+
+    @Override
+    public Map<String, Long> getDecodeTimeNanosPerBand() {
+        final Map<String, Long> map = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : bandDecodeNanos.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().sum());
+        }
+        return map;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        final long hits = getCacheHits();
+        final long total = hits + getCacheMisses();
+        return total == 0 ? 0 : hits / (double) total;
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return lockWaitNanos.sum();
+    }
+
+    @Override
+    public long getLockAcquisitions() {
+        return lockAcquisitions.sum();
+    }
+
+    @Override
+    public long getMetadataTimeNanos() {
+        return metadataNanos.sum();
+    }
+
+    @Override
+    public long getOpenTimeNanos() {
+        return openNanos.sum();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String toJSON() {
+        final JSONObject json = new JSONObject();
+        json.put("name", name);
+        json.put("bytesRead", getBytesRead());
+        json.put("readCalls", getReadCalls());
+        json.put("decodeTimeMs", toMillis(getDecodeTimeNanos()));
+        final JSONObject bands = new JSONObject();
+        for (Map.Entry<String, Long> entry : getDecodeTimeNanosPerBand().entrySet()) {
+            bands.put(entry.getKey(), toMillis(entry.getValue()));
+        }
+        json.put("decodeTimeMsPerBand", bands);
+        json.put("cacheHits", getCacheHits());
+        json.put("cacheMisses", getCacheMisses());
+        json.put("cacheHitRate", getCacheHitRate());
+        json.put("lockWaitMs", toMillis(getLockWaitNanos()));
+        json.put("lockAcquisitions", getLockAcquisitions());
+        json.put("metadataTimeMs", toMillis(getMetadataTimeNanos()));
+        json.put("openTimeMs", toMillis(getOpenTimeNanos()));
+        return json.toJSONString();
+    }
+
+    private static double toMillis(final long nanos) {
+        return nanos / 1.0e6;
+    }
+
+    /**
+     * Register as an MXBean on the first count if metrics are enabled
+     */
+    private void register() {
+        if (enabled && !registered) {
+            doRegister();
+        }
+    }
+
+    private synchronized void doRegister() {
+        if (registered || closed) {
+            return;
+        }
+        registered = true;
+        try {
+            final ObjectName on = new ObjectName(DOMAIN + ":type=IOMetrics,name=" + ObjectName.quote(name) +
+                    ",id=" + instanceCount.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+        } catch (Exception e) {
+            SystemUtils.LOG.warning("Unable to register IOMetrics " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Unregister the MXBean and log the JSON summary if metrics are enabled
+     */
+    public synchronized void close() {
+        if (!enabled || closed) {
+            return;
+        }
+        closed = true;
+        SystemUtils.LOG.info("IOMetrics " + toJSON());
+        if (objectName != null) {
+            try {
+                final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+            } catch (Exception e) {
+                SystemUtils.LOG.warning("Unable to unregister IOMetrics " + name + ": " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * @return the name of the MXBean or null if it is not registered
+     */
+    synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+}
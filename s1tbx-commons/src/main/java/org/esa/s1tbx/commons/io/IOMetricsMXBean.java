@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link IOMetrics} of a product reader.
+ */
+public interface IOMetricsMXBean {
+
+    String getName();
+
+    long getBytesRead();
+
+    long getReadCalls();
+
+    long getDecodeTimeNanos();
+
+    Map<String, Long> getDecodeTimeNanosPerBand();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getCacheHitRate();
+
+    long getLockWaitNanos();
+
+    long getLockAcquisitions();
+
+    long getMetadataTimeNanos();
+
+    long getOpenTimeNanos();
+
+    String toJSON();
+}
@@ -53,6 +53,7 @@ public class ImageIOFile {
 
     private ImageInputStream stream = null;
     private ImageReader reader;
+    private IOMetrics metrics = IOMetrics.global();
 
     private static final boolean useFileCache = Config.instance().preferences().getBoolean("s1tbx.readers.useFileCache", false);
 
@@ -128,6 +129,19 @@ public class ImageIOFile {
         return stream;
     }
 
+    /**
+     * Count the reads of this file in the metrics of a product.
+     *
+     * @param metrics the product metrics
+     */
+    public void setIOMetrics(final IOMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public IOMetrics getIOMetrics() {
+        return metrics;
+    }
+
     public static ImageReader getIIOReader(final File inputFile) throws IOException {
         final ImageInputStream stream = ImageIO.createImageInputStream(inputFile);
         if (stream == null)
@@ -285,17 +299,21 @@ public class ImageIOFile {
         }
     }
 
-    private synchronized Raster getData(final ImageReadParam param,
-                                        final int destOffsetX, final int destOffsetY,
-                                        final int destWidth, final int destHeight) throws IOException {
-        try {
-            final RenderedImage image = reader.readAsRenderedImage(0, param);
-            return image.getData(new Rectangle(destOffsetX, destOffsetY, destWidth, destHeight));
-        } catch (Exception e) {
-            if(ZipUtils.isZip(productInputFile) && !ZipUtils.isValid(productInputFile)) {
-                throw new IOException("Zip file is corrupt "+productInputFile.getName());
+    private Raster getData(final ImageReadParam param,
+                           final int destOffsetX, final int destOffsetY,
+                           final int destWidth, final int destHeight) throws IOException {
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            metrics.addLockWait(System.nanoTime() - waitStart);
+            try {
+                final RenderedImage image = reader.readAsRenderedImage(0, param);
+                return image.getData(new Rectangle(destOffsetX, destOffsetY, destWidth, destHeight));
+            } catch (Exception e) {
+                if(ZipUtils.isZip(productInputFile) && !ZipUtils.isValid(productInputFile)) {
+                    throw new IOException("Zip file is corrupt "+productInputFile.getName());
+                }
+                throw e;
             }
-            throw e;
         }
     }
 
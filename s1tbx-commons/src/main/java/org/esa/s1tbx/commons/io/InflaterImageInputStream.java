@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * A seekable ImageInputStream over a DEFLATED zip entry.
+ * <p>
+ * A seek restarts decoding from the nearest checkpoint of the {@link DeflateIndex} before the target, so that
+ * nothing but a small window of the entry is held in memory. Checkpoints are added while decoding past the end
+ * of the index.
+ */
+final class InflaterImageInputStream extends ImageInputStreamImpl {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final RawInflater inflater;
+    private final DeflateIndex index;
+    private final long length;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int bufferLength;
+
+    InflaterImageInputStream(final SharedChannel channel, final long dataOffset, final long compressedSize,
+                             final long length, final DeflateIndex index) {
+        this.inflater = new RawInflater(channel, dataOffset, compressedSize);
+        this.index = index;
+        this.length = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        if (streamPos < bufferStart || streamPos >= bufferStart + bufferLength) {
+            fillBuffer(streamPos);
+        }
+        return buffer[(int) (streamPos++ - bufferStart)] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        if (streamPos < bufferStart || streamPos >= bufferStart + bufferLength) {
+            fillBuffer(streamPos);
+        }
+        final int n = (int) Math.min(len, bufferStart + bufferLength - streamPos);
+        System.arraycopy(buffer, (int) (streamPos - bufferStart), b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    private void fillBuffer(final long pos) throws IOException {
+        final long current = inflater.getOutputPos();
+        final int checkpoint = index.find(pos);
+        if (pos < current || index.getOutputPos(checkpoint) > current) {
+            inflater.reset(index.getBitPos(checkpoint), index.getOutputPos(checkpoint), index.getHistory(checkpoint));
+        }
+
+        // the buffer doubles as scratch space while skipping forward
+        bufferLength = 0;
+        while (inflater.getOutputPos() < pos) {
+            final int n = inflater.read(buffer, 0, (int) Math.min(BUFFER_SIZE, pos - inflater.getOutputPos()));
+            if (n < 0) {
+                throw new EOFException("Unexpected end of zip entry");
+            }
+            index.offer(inflater);
+        }
+
+        bufferStart = pos;
+        while (bufferLength == 0) {
+            final int n = inflater.read(buffer, 0, BUFFER_SIZE);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of zip entry");
+            }
+            bufferLength = n;
+            index.offer(inflater);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public boolean isCached() {
+        return false;
+    }
+}
@@ -0,0 +1,637 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Decoder for a raw deflate stream (RFC 1951) read through positional reads of a channel.
+ * <p>
+ * Unlike {@link java.util.zip.Inflater} the decoder exposes its state at block boundaries: the bit position in
+ * the compressed data and the last 32K of output are all that is needed to resume decoding from that point.
+ * This is what makes random access into a deflated zip entry possible.
+ * <p>
+ * Not thread safe.
+ */
+final class RawInflater {
+
+    static final int WINDOW_SIZE = 32768;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int MAX_MATCH = 258;
+    // matches up to this length are copied byte by byte rather than through System.arraycopy
+    private static final int SHORT_MATCH = 16;
+    // bytes of input a symbol of the fast loop may need, a length and a distance with their extra bits
+    private static final int FAST_INPUT_MARGIN = 16;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DIST_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LENGTH_CODE = new Huffman(288);
+    private static final Huffman FIXED_DIST_CODE = new Huffman(30);
+
+    static {
+        final byte[] lengths = new byte[288];
+        Arrays.fill(lengths, 0, 144, (byte) 8);
+        Arrays.fill(lengths, 144, 256, (byte) 9);
+        Arrays.fill(lengths, 256, 280, (byte) 7);
+        Arrays.fill(lengths, 280, 288, (byte) 8);
+        final byte[] distLengths = new byte[30];
+        Arrays.fill(distLengths, (byte) 5);
+        try {
+            FIXED_LENGTH_CODE.build(lengths, 0, 288);
+            FIXED_DIST_CODE.build(distLengths, 0, 30);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private enum Mode {HEADER, STORED, HUFFMAN, DONE}
+
+    private final SharedChannel channel;
+    private final long dataOffset;
+    private final long compressedSize;
+
+    private final byte[] input = new byte[65536];
+    private final ByteBuffer inputLongs = ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN);
+    private long inputStart;        // position of input[0] in the compressed data
+    private int inputLength;
+    private long inputPos;          // position of the next byte to load into the bit buffer
+    private long bitBuffer;
+    private int bitCount;
+    private int pendingSkip;        // bits to discard before the next block header
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long outputPos;
+
+    private Mode mode;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private int copyLength;
+    private int copyDistance;
+
+    private Huffman lengthCode;
+    private Huffman distCode;
+    private final Huffman dynamicLengthCode = new Huffman(288);
+    private final Huffman dynamicDistCode = new Huffman(30);
+    private final Huffman codeLengthCode = new Huffman(19);
+    private final byte[] codeLengths = new byte[288 + 30];
+
+    RawInflater(final SharedChannel channel, final long dataOffset, final long compressedSize) {
+        this.channel = channel;
+        this.dataOffset = dataOffset;
+        this.compressedSize = compressedSize;
+        reset(0, 0, new byte[0]);
+    }
+
+    /**
+     * Resume decoding at a block boundary.
+     *
+     * @param bitPos    the bit position of the block header in the compressed data
+     * @param outputPos the number of bytes decoded before the block
+     * @param history   the last bytes decoded before the block, at most 32K
+     */
+    void reset(final long bitPos, final long outputPos, final byte[] history) {
+        inputPos = bitPos >>> 3;
+        bitBuffer = 0;
+        bitCount = 0;
+        this.outputPos = outputPos;
+        for (int i = 0; i < history.length; ++i) {
+            window[(int) (outputPos - history.length + i) & WINDOW_MASK] = history[i];
+        }
+        mode = Mode.HEADER;
+        lastBlock = false;
+        copyLength = 0;
+        pendingSkip = (int) (bitPos & 7);
+    }
+
+    long getOutputPos() {
+        return outputPos;
+    }
+
+    long getBitPos() {
+        return inputPos * 8 - bitCount;
+    }
+
+    /**
+     * @return true between two blocks, where the decoder can be resumed from {@link #getBitPos()} and
+     * {@link #getHistory()}
+     */
+    boolean isAtBlockBoundary() {
+        return mode == Mode.HEADER && pendingSkip == 0;
+    }
+
+    /**
+     * @return the last bytes decoded, at most 32K
+     */
+    byte[] getHistory() {
+        final int len = (int) Math.min(outputPos, WINDOW_SIZE);
+        final byte[] history = new byte[len];
+        for (int i = 0; i < len; ++i) {
+            history[i] = window[(int) (outputPos - len + i) & WINDOW_MASK];
+        }
+        return history;
+    }
+
+    /**
+     * Decode bytes. The call returns early at the end of each block so that the caller can record checkpoints,
+     * in which case it may return 0.
+     *
+     * @return the number of bytes decoded or -1 at the end of the stream
+     */
+    int read(final byte[] b, final int off, final int len) throws IOException {
+        if (pendingSkip > 0) {
+            needBits(pendingSkip);
+            dropBits(pendingSkip);
+            pendingSkip = 0;
+        }
+        int n = 0;
+        while (n < len) {
+            if (copyLength > 0) {
+                final int count = Math.min(copyLength, len - n);
+                int from = (int) (outputPos - copyDistance);
+                for (int i = 0; i < count; ++i) {
+                    final byte v = window[from++ & WINDOW_MASK];
+                    window[(int) outputPos++ & WINDOW_MASK] = v;
+                    b[off + n++] = v;
+                }
+                copyLength -= count;
+            } else if (mode == Mode.HUFFMAN) {
+                if (len - n > MAX_MATCH && hasFastInput()) {
+                    final int count = decodeFast(b, off + n, off + len);
+                    n += count;
+                    if (mode != Mode.HUFFMAN) {
+                        return n;
+                    }
+                    if (count > 0) {
+                        continue;
+                    }
+                }
+                final int sym = decode(lengthCode);
+                if (sym < 256) {
+                    window[(int) outputPos++ & WINDOW_MASK] = (byte) sym;
+                    b[off + n++] = (byte) sym;
+                } else if (sym == 256) {
+                    mode = lastBlock ? Mode.DONE : Mode.HEADER;
+                    return n;
+                } else {
+                    final int lenSym = sym - 257;
+                    if (lenSym >= LENGTH_BASE.length) {
+                        throw new IOException("Invalid deflate length code " + sym);
+                    }
+                    copyLength = LENGTH_BASE[lenSym] + bits(LENGTH_EXTRA[lenSym]);
+                    final int distSym = decode(distCode);
+                    if (distSym >= DIST_BASE.length) {
+                        throw new IOException("Invalid deflate distance code " + distSym);
+                    }
+                    copyDistance = DIST_BASE[distSym] + bits(DIST_EXTRA[distSym]);
+                    if (copyDistance > outputPos) {
+                        throw new IOException("Invalid deflate distance " + copyDistance);
+                    }
+                }
+            } else if (mode == Mode.STORED) {
+                if (storedRemaining == 0) {
+                    mode = lastBlock ? Mode.DONE : Mode.HEADER;
+                    return n;
+                }
+                final int count = copyStored(b, off + n, Math.min(storedRemaining, len - n));
+                n += count;
+                storedRemaining -= count;
+            } else if (mode == Mode.HEADER) {
+                readBlockHeader();
+            } else {
+                return n > 0 ? n : -1;
+            }
+        }
+        return n;
+    }
+
+    private boolean hasFastInput() {
+        return inputPos >= inputStart && inputPos + FAST_INPUT_MARGIN <= inputStart + inputLength;
+    }
+
+    /**
+     * Decode Huffman symbols with the state held in locals while the input buffer and the output array have room
+     * for the longest symbol. Output goes straight to the caller's array; the window is updated once at the end.
+     * Stops at the end of the block.
+     *
+     * @return the number of bytes decoded
+     */
+    private int decodeFast(final byte[] b, final int off, final int end) throws IOException {
+        final ByteBuffer in = inputLongs;
+        final int inEnd = inputLength - FAST_INPUT_MARGIN;
+        final int outEnd = end - MAX_MATCH;
+        final Huffman lengths = lengthCode;
+        final Huffman distances = distCode;
+        final long outStart = outputPos;
+        int p = (int) (inputPos - inputStart);
+        long buf = bitBuffer;
+        int cnt = bitCount;
+        int o = off;
+
+        try {
+            while (o <= outEnd && p <= inEnd) {
+                buf |= in.getLong(p) << cnt;
+                p += (63 - cnt) >>> 3;
+                cnt |= 56;
+                final int entry = lengths.lookup(buf);
+                buf >>>= entry & 15;
+                cnt -= entry & 15;
+                final int sym = entry >>> 4;
+                if (sym < 256) {
+                    b[o++] = (byte) sym;
+                    continue;
+                }
+                if (sym == 256) {
+                    mode = lastBlock ? Mode.DONE : Mode.HEADER;
+                    break;
+                }
+
+                final int lenSym = sym - 257;
+                if (lenSym >= LENGTH_BASE.length) {
+                    throw new IOException("Invalid deflate length code " + sym);
+                }
+                final int lenExtra = LENGTH_EXTRA[lenSym];
+                final int length = LENGTH_BASE[lenSym] + (int) (buf & ((1L << lenExtra) - 1));
+                buf >>>= lenExtra;
+                cnt -= lenExtra;
+
+                final int distEntry = distances.lookup(buf);
+                buf >>>= distEntry & 15;
+                cnt -= distEntry & 15;
+                final int distSym = distEntry >>> 4;
+                if (distSym >= DIST_BASE.length) {
+                    throw new IOException("Invalid deflate distance code " + distSym);
+                }
+                buf |= in.getLong(p) << cnt;
+                p += (63 - cnt) >>> 3;
+                cnt |= 56;
+                final int distExtra = DIST_EXTRA[distSym];
+                final int dist = DIST_BASE[distSym] + (int) (buf & ((1L << distExtra) - 1));
+                buf >>>= distExtra;
+                cnt -= distExtra;
+                if (dist > outStart + (o - off)) {
+                    throw new IOException("Invalid deflate distance " + dist);
+                }
+
+                int from = o - dist;
+                int remaining = length;
+                if (from < off) {
+                    // the start of the match is in the window, which may wrap around
+                    final int start = (int) (outStart - (off - from)) & WINDOW_MASK;
+                    final int count = Math.min(Math.min(remaining, off - from), WINDOW_SIZE - start);
+                    System.arraycopy(window, start, b, o, count);
+                    o += count;
+                    from += count;
+                    remaining -= count;
+                    if (from < off && remaining > 0) {
+                        final int wrapped = Math.min(remaining, off - from);
+                        System.arraycopy(window, 0, b, o, wrapped);
+                        o += wrapped;
+                        from += wrapped;
+                        remaining -= wrapped;
+                    }
+                }
+                if (dist >= remaining && remaining > SHORT_MATCH) {
+                    System.arraycopy(b, from, b, o, remaining);
+                    o += remaining;
+                } else {
+                    while (remaining-- > 0) {
+                        b[o++] = b[from++];
+                    }
+                }
+            }
+        } finally {
+            bitBuffer = buf;
+            bitCount = cnt;
+            inputPos = inputStart + p;
+            updateWindow(b, off, o - off);
+        }
+        return o - off;
+    }
+
+    private void updateWindow(final byte[] b, final int off, final int n) {
+        final int count = Math.min(n, WINDOW_SIZE);
+        long pos = outputPos + n - count;
+        int src = off + n - count;
+        int remaining = count;
+        while (remaining > 0) {
+            final int start = (int) pos & WINDOW_MASK;
+            final int len = Math.min(remaining, WINDOW_SIZE - start);
+            System.arraycopy(b, src, window, start, len);
+            pos += len;
+            src += len;
+            remaining -= len;
+        }
+        outputPos += n;
+    }
+
+    /**
+     * Copy stored bytes, first those left in the bit buffer, then straight from the input buffer.
+     */
+    private int copyStored(final byte[] b, final int off, final int len) throws IOException {
+        int n = 0;
+        while (n < len && bitCount >= 8) {
+            b[off + n++] = (byte) bitBuffer;
+            dropBits(8);
+        }
+        if (n < len) {
+            // the bit buffer is empty, but may hold look-ahead bits beyond the stored bytes
+            bitBuffer = 0;
+            if (inputPos < inputStart || inputPos >= inputStart + inputLength) {
+                if (inputPos >= compressedSize) {
+                    throw new EOFException("Unexpected end of deflate stream");
+                }
+                fillInput();
+            }
+            final int count = (int) Math.min(len - n, inputStart + inputLength - inputPos);
+            System.arraycopy(input, (int) (inputPos - inputStart), b, off + n, count);
+            inputPos += count;
+            n += count;
+        }
+        for (int i = Math.max(0, n - WINDOW_SIZE); i < n; ++i) {
+            window[(int) (outputPos + i) & WINDOW_MASK] = b[off + i];
+        }
+        outputPos += n;
+        return n;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+        final int type = bits(2);
+        switch (type) {
+            case 0:
+                dropBits(bitCount & 7);
+                final int len = bits(16);
+                final int nlen = bits(16);
+                if (len != (~nlen & 0xFFFF)) {
+                    throw new IOException("Invalid deflate stored block length");
+                }
+                storedRemaining = len;
+                mode = Mode.STORED;
+                break;
+            case 1:
+                lengthCode = FIXED_LENGTH_CODE;
+                distCode = FIXED_DIST_CODE;
+                mode = Mode.HUFFMAN;
+                break;
+            case 2:
+                readDynamicCodes();
+                lengthCode = dynamicLengthCode;
+                distCode = dynamicDistCode;
+                mode = Mode.HUFFMAN;
+                break;
+            default:
+                throw new IOException("Invalid deflate block type");
+        }
+    }
+
+    private void readDynamicCodes() throws IOException {
+        final int nlen = bits(5) + 257;
+        final int ndist = bits(5) + 1;
+        final int ncode = bits(4) + 4;
+        if (nlen > 286 || ndist > 30) {
+            throw new IOException("Invalid deflate code counts");
+        }
+
+        Arrays.fill(codeLengths, 0, 19, (byte) 0);
+        for (int i = 0; i < ncode; ++i) {
+            codeLengths[CODE_LENGTH_ORDER[i]] = (byte) bits(3);
+        }
+        codeLengthCode.build(codeLengths, 0, 19);
+
+        int index = 0;
+        while (index < nlen + ndist) {
+            int sym = decode(codeLengthCode);
+            if (sym < 16) {
+                codeLengths[index++] = (byte) sym;
+            } else {
+                byte value = 0;
+                final int repeat;
+                if (sym == 16) {
+                    if (index == 0) {
+                        throw new IOException("Invalid deflate code length repeat");
+                    }
+                    value = codeLengths[index - 1];
+                    repeat = 3 + bits(2);
+                } else if (sym == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (index + repeat > nlen + ndist) {
+                    throw new IOException("Invalid deflate code length repeat");
+                }
+                Arrays.fill(codeLengths, index, index + repeat, value);
+                index += repeat;
+            }
+        }
+        if (codeLengths[256] == 0) {
+            throw new IOException("Missing deflate end of block code");
+        }
+        dynamicLengthCode.build(codeLengths, 0, nlen);
+        dynamicDistCode.build(codeLengths, nlen, ndist);
+    }
+
+    private int decode(final Huffman h) throws IOException {
+        needBits(Huffman.MAX_BITS);
+        final int entry = h.lookup(bitBuffer);
+        dropBits(entry & 15);
+        return entry >>> 4;
+    }
+
+    private int bits(final int n) throws IOException {
+        if (n == 0) {
+            return 0;
+        }
+        needBits(n);
+        final int value = (int) (bitBuffer & ((1L << n) - 1));
+        dropBits(n);
+        return value;
+    }
+
+    private void dropBits(final int n) {
+        bitBuffer >>>= n;
+        bitCount -= n;
+    }
+
+    private void needBits(final int n) throws IOException {
+        if (bitCount >= n) {
+            return;
+        }
+        if (inputPos >= inputStart && inputPos + 8 <= inputStart + inputLength) {
+            int p = (int) (inputPos - inputStart);
+            while (bitCount <= 56) {
+                bitBuffer |= (long) (input[p++] & 0xFF) << bitCount;
+                bitCount += 8;
+            }
+            inputPos = inputStart + p;
+            return;
+        }
+        while (bitCount < n) {
+            bitBuffer |= (long) nextByte() << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (inputPos >= compressedSize) {
+            // a Huffman lookup may look ahead past the end of the stream
+            if (inputPos >= compressedSize + 4) {
+                throw new EOFException("Unexpected end of deflate stream");
+            }
+            ++inputPos;
+            return 0;
+        }
+        if (inputPos < inputStart || inputPos >= inputStart + inputLength) {
+            fillInput();
+        }
+        return input[(int) (inputPos++ - inputStart)] & 0xFF;
+    }
+
+    private void fillInput() throws IOException {
+        final int len = (int) Math.min(input.length, compressedSize - inputPos);
+        channel.readFully(ByteBuffer.wrap(input, 0, len), dataOffset + inputPos);
+        inputStart = inputPos;
+        inputLength = len;
+    }
+
+    /**
+     * Canonical Huffman code with a two level lookup table: the root is indexed by the next ROOT_BITS bits of the
+     * input, longer codes continue in a subtable indexed by the bits that follow.
+     */
+    private static final class Huffman {
+        static final int MAX_BITS = 15;
+        static final int ROOT_BITS = 10;
+        static final int ROOT_SIZE = 1 << ROOT_BITS;
+        static final int ROOT_MASK = ROOT_SIZE - 1;
+        // a root entry pointing to a subtable holds the flag, the subtable offset and the subtable bits
+        private static final int SUBTABLE = Integer.MIN_VALUE;
+        private static final int OFFSET_MASK = 0x7FFFFFF;
+
+        private final short[] count = new short[MAX_BITS + 1];
+        private final short[] symbol;
+        private final short[] offsets = new short[MAX_BITS + 2];
+        private final byte[] subBits = new byte[ROOT_SIZE];
+        // (symbol << 4) | length, 0 for an unused code
+        private int[] table = new int[ROOT_SIZE];
+
+        Huffman(final int maxSymbols) {
+            symbol = new short[maxSymbols];
+        }
+
+        /**
+         * @param bits the next bits of the input, at least MAX_BITS of them
+         * @return (symbol << 4) | length
+         */
+        int lookup(final long bits) throws IOException {
+            int entry = table[(int) bits & ROOT_MASK];
+            if (entry < 0) {
+                entry = table[((entry >>> 4) & OFFSET_MASK) + ((int) (bits >>> ROOT_BITS) & ((1 << (entry & 15)) - 1))];
+            }
+            if (entry == 0) {
+                throw new IOException("Invalid deflate Huffman code");
+            }
+            return entry;
+        }
+
+        void build(final byte[] lengths, final int off, final int n) throws IOException {
+            Arrays.fill(count, (short) 0);
+            for (int i = 0; i < n; ++i) {
+                count[lengths[off + i]]++;
+            }
+            count[0] = 0;
+
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; ++len) {
+                left <<= 1;
+                left -= count[len];
+                if (left < 0) {
+                    throw new IOException("Over-subscribed deflate code lengths");
+                }
+            }
+
+            offsets[1] = 0;
+            for (int len = 1; len < MAX_BITS; ++len) {
+                offsets[len + 1] = (short) (offsets[len] + count[len]);
+            }
+            for (int i = 0; i < n; ++i) {
+                if (lengths[off + i] != 0) {
+                    symbol[offsets[lengths[off + i]]++] = (short) i;
+                }
+            }
+
+            // root entries, and the size of the subtable each longer code needs
+            Arrays.fill(table, 0, ROOT_SIZE, 0);
+            Arrays.fill(subBits, (byte) 0);
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= MAX_BITS; ++len) {
+                for (int i = 0; i < count[len]; ++i) {
+                    final int reversed = Integer.reverse(code + i) >>> (32 - len);
+                    if (len <= ROOT_BITS) {
+                        final int entry = (symbol[index + i] << 4) | len;
+                        for (int j = reversed; j < ROOT_SIZE; j += 1 << len) {
+                            table[j] = entry;
+                        }
+                    } else {
+                        final int root = reversed & ROOT_MASK;
+                        subBits[root] = (byte) Math.max(subBits[root], len - ROOT_BITS);
+                    }
+                }
+                code = (code + count[len]) << 1;
+                index += count[len];
+            }
+            int size = ROOT_SIZE;
+            for (int root = 0; root < ROOT_SIZE; ++root) {
+                if (subBits[root] > 0) {
+                    table[root] = SUBTABLE | (size << 4) | subBits[root];
+                    size += 1 << subBits[root];
+                }
+            }
+            if (table.length < size) {
+                table = Arrays.copyOf(table, size);
+            }
+            Arrays.fill(table, ROOT_SIZE, size, 0);
+
+            code = 0;
+            index = 0;
+            for (int len = 1; len <= MAX_BITS; ++len) {
+                for (int i = 0; len > ROOT_BITS && i < count[len]; ++i) {
+                    final int reversed = Integer.reverse(code + i) >>> (32 - len);
+                    final int root = table[reversed & ROOT_MASK];
+                    final int subtable = (root >>> 4) & OFFSET_MASK;
+                    final int entry = (symbol[index + i] << 4) | len;
+                    for (int j = reversed >>> ROOT_BITS; j < 1 << (root & 15); j += 1 << (len - ROOT_BITS)) {
+                        table[subtable + j] = entry;
+                    }
+                }
+                code = (code + count[len]) << 1;
+                index += count[len];
+            }
+        }
+    }
+}
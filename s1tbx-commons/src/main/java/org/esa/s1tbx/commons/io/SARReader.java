@@ -39,10 +39,36 @@ public abstract class SARReader extends AbstractProductReader {
 
     private static String[] elemsToKeep = {"Abstracted_Metadata", "MAIN_PROCESSING_PARAMS_ADS", "DSD", "SPH", "lutSigma"};
 
+    private final Object metricsLock = new Object();
+    private IOMetrics ioMetrics = null;
+
     protected SARReader(ProductReaderPlugIn readerPlugIn) {
         super(readerPlugIn);
     }
 
+    @Override
+    public void close() throws IOException {
+        synchronized (metricsLock) {
+            if (ioMetrics != null) {
+                ioMetrics.close();
+                ioMetrics = null;
+            }
+        }
+        super.close();
+    }
+
+    /**
+     * @return the I/O metrics of the product being read
+     */
+    public IOMetrics getIOMetrics() {
+        synchronized (metricsLock) {
+            if (ioMetrics == null) {
+                ioMetrics = new IOMetrics(getClass().getSimpleName());
+            }
+            return ioMetrics;
+        }
+    }
+
     protected abstract Product readProductNodesImpl() throws IOException;
 
     protected abstract void readBandRasterDataImpl(int sourceOffsetX,
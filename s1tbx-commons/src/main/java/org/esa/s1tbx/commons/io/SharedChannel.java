@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read only file channel shared by the streams of a zip archive.
+ * <p>
+ * A FileChannel is closed when a thread blocked in one of its reads is interrupted, which would fail the reads
+ * of every other stream. The channel is reopened instead: the read of the interrupted thread fails with
+ * {@link ClosedByInterruptException} and the reads of the other threads are retried.
+ */
+final class SharedChannel implements Closeable {
+
+    private final Path path;
+    private volatile FileChannel channel;
+    private boolean closed;
+
+    SharedChannel(final Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Read the remaining bytes of a buffer.
+     *
+     * @param buf      the buffer to fill
+     * @param position the position in the file of the next byte of the buffer
+     * @throws IOException on read error or if the file ends first
+     */
+    void readFully(final ByteBuffer buf, final long position) throws IOException {
+        final long start = position - buf.position();
+        while (buf.hasRemaining()) {
+            if (read(buf, start + buf.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path.getFileName());
+            }
+        }
+    }
+
+    private int read(final ByteBuffer buf, final long position) throws IOException {
+        while (true) {
+            final FileChannel current = channel;
+            try {
+                return current.read(buf, position);
+            } catch (ClosedByInterruptException e) {
+                reopen(current);
+                throw e;
+            } catch (ClosedChannelException e) {
+                // closed by the interrupt of another thread
+                reopen(current);
+            }
+        }
+    }
+
+    private synchronized void reopen(final FileChannel failed) throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (channel == failed) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+}
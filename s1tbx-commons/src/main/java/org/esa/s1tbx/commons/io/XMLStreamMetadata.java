@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.esa.snap.core.datamodel.MetadataAttribute;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.ProductData;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.UnaryOperator;
+
+/**
+ * Streams an XML document into metadata.
+ * <p>
+ * The result is the same tree that AbstractMetadataIO.AddXMLMetadata builds from a parsed document, but the
+ * document is never held in memory. This matters for the annotation, calibration and noise files of products
+ * with long vector lists, whose text would otherwise be held twice while the product is opened.
+ * <ul>
+ * <li>A leaf element without attributes becomes an attribute of its parent if it has text.</li>
+ * <li>Other elements become elements holding their children, then their text if they are leaves, then their
+ * XML attributes.</li>
+ * </ul>
+ * Only the parsing changes: the vector lists of calibration, noise, geolocation and orbits stay strings in the
+ * tree, which Sentinel1Utils parses as before. The tree is also what is written to and read back from DIMAP, so a
+ * typed store filled here would not be there for saved products.
+ */
+public final class XMLStreamMetadata {
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private XMLStreamMetadata() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Add the content of an XML document to metadata.
+     *
+     * @param is           the document
+     * @param metadataRoot the element receiving the root element of the document
+     * @throws IOException on read or parse error
+     */
+    public static void addXMLMetadata(final InputStream is, final MetadataElement metadataRoot) throws IOException {
+        addXMLMetadata(is, metadataRoot, UnaryOperator.identity());
+    }
+
+    /**
+     * Add the content of an XML document to metadata.
+     *
+     * @param is           the document
+     * @param metadataRoot the element receiving the root element of the document
+     * @param rootName     maps the name of the root element to the name used in the metadata
+     * @throws IOException on read or parse error
+     */
+    public static void addXMLMetadata(final InputStream is, final MetadataElement metadataRoot,
+                                      final UnaryOperator<String> rootName) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(is);
+            read(reader, metadataRoot, rootName);
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to parse XML: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private static void read(final XMLStreamReader reader, final MetadataElement metadataRoot,
+                             final UnaryOperator<String> rootName) throws XMLStreamException {
+        final Deque<Node> stack = new ArrayDeque<>();
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT: {
+                    final Node parent = stack.peek();
+                    final String name;
+                    if (parent == null) {
+                        name = rootName.apply(reader.getLocalName());
+                    } else {
+                        parent.getElement();
+                        parent.text = null;
+                        name = reader.getLocalName();
+                    }
+                    stack.push(new Node(name, reader));
+                    break;
+                }
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE: {
+                    final Node node = stack.peek();
+                    if (node != null && node.text != null) {
+                        node.text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                }
+                case XMLStreamConstants.END_ELEMENT: {
+                    final Node node = stack.pop();
+                    final Node parent = stack.peek();
+                    node.addTo(parent == null ? metadataRoot : parent.element);
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void addAttribute(final MetadataElement meta, final String name, String value) {
+        final MetadataAttribute attribute = new MetadataAttribute(name, ProductData.TYPE_ASCII, 1);
+        if (value.isEmpty()) {
+            value = " ";
+        }
+        attribute.getData().setElems(value);
+        meta.addAttribute(attribute);
+    }
+
+    private static final class Node {
+        private final String name;
+        private final String[] attribNames;
+        private final String[] attribValues;
+        private MetadataElement element = null;
+        // the text of a leaf, null once a child element is found
+        private StringBuilder text = new StringBuilder();
+
+        Node(final String name, final XMLStreamReader reader) {
+            this.name = name;
+            final int numAttribs = reader.getAttributeCount();
+            attribNames = new String[numAttribs];
+            attribValues = new String[numAttribs];
+            for (int i = 0; i < numAttribs; ++i) {
+                attribNames[i] = reader.getAttributeLocalName(i);
+                attribValues[i] = reader.getAttributeValue(i);
+            }
+        }
+
+        MetadataElement getElement() {
+            if (element == null) {
+                element = new MetadataElement(name);
+            }
+            return element;
+        }
+
+        void addTo(final MetadataElement parent) {
+            final boolean isLeaf = text != null;
+            if (isLeaf && attribNames.length == 0) {
+                if (text.length() > 0) {
+                    addAttribute(parent, name, text.toString());
+                }
+                return;
+            }
+            final MetadataElement elem = getElement();
+            if (isLeaf && text.length() > 0) {
+                addAttribute(elem, name, text.toString());
+            }
+            for (int i = 0; i < attribNames.length; ++i) {
+                addAttribute(elem, attribNames[i], attribValues[i]);
+            }
+            parent.addElement(elem);
+        }
+    }
+}
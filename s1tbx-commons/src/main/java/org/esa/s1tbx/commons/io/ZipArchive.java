@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.esa.snap.core.util.SystemUtils;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Random access to the entries of a zip file through one shared file channel, see {@link SharedChannel}.
+ * <p>
+ * STORED entries are read in place. DEFLATED entries are decoded from checkpoints which are persisted as a
+ * sidecar in the SNAP cache folder, so that only the first pass over an entry has to decode it from the start.
+ * Neither needs a copy of the entry in memory or in a temporary file.
+ */
+public final class ZipArchive implements Closeable {
+
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+
+    // a seek decodes half the spacing on average, the checkpoint windows are held deflated
+    private static final long DEFAULT_CHECKPOINT_SPACING = 1024 * 1024;
+
+    private static final int LOCAL_HEADER_SIG = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    private static final int END_SIG = 0x06054b50;
+    private static final int ZIP64_END_SIG = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private final File file;
+    private final SharedChannel channel;
+    private final long checkpointSpacing;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Set<String> directories = new HashSet<>();
+    private final Map<String, DeflateIndex> indexMap = new HashMap<>();
+
+    /**
+     * A file in the archive.
+     */
+    public static final class Entry {
+        private final String name;
+        private final int method;
+        private final int flags;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private long dataOffset = -1;
+
+        private Entry(final String name, final int method, final int flags, final long crc,
+                      final long compressedSize, final long size, final long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        private boolean isEncrypted() {
+            return (flags & 1) != 0;
+        }
+    }
+
+    public ZipArchive(final File file) throws IOException {
+        this(file, DEFAULT_CHECKPOINT_SPACING);
+    }
+
+    ZipArchive(final File file, final long checkpointSpacing) throws IOException {
+        this.file = file;
+        this.checkpointSpacing = checkpointSpacing;
+        this.channel = new SharedChannel(file.toPath());
+        try {
+            readCentralDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw new IOException("Unable to read zip file " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Entry getEntry(final String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @param path a path in the archive with or without trailing separator
+     * @return true if the path is a folder, whether or not the archive holds an entry for the folder itself
+     */
+    public boolean isDirectory(final String path) {
+        String name = path;
+        while (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return directories.contains(name);
+    }
+
+    /**
+     * Open an entry for random access.
+     *
+     * @param name the entry name
+     * @return the stream or null if the entry does not exist or cannot be read in place
+     * @throws IOException on read error
+     */
+    public ImageInputStream createImageInputStream(final String name) throws IOException {
+        final Entry entry = entries.get(name);
+        if (entry == null || entry.isDirectory() || entry.isEncrypted()) {
+            return null;
+        }
+        if (entry.method == STORED) {
+            return new ChannelImageInputStream(channel, getDataOffset(entry), entry.size);
+        } else if (entry.method == DEFLATED) {
+            return new InflaterImageInputStream(channel, getDataOffset(entry), entry.compressedSize, entry.size,
+                    getIndex(entry));
+        }
+        return null;
+    }
+
+    private synchronized long getDataOffset(final Entry entry) throws IOException {
+        if (entry.dataOffset < 0) {
+            final ByteBuffer header = read(entry.localHeaderOffset, 30);
+            if (header.getInt(0) != LOCAL_HEADER_SIG) {
+                throw new IOException("Invalid local header for " + entry.name);
+            }
+            entry.dataOffset = entry.localHeaderOffset + 30 +
+                    (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        }
+        return entry.dataOffset;
+    }
+
+    private synchronized DeflateIndex getIndex(final Entry entry) {
+        DeflateIndex index = indexMap.get(entry.name);
+        if (index == null) {
+            final File sidecar = getSidecarFile(entry);
+            if (sidecar.exists()) {
+                try {
+                    index = DeflateIndex.read(sidecar, getStamp(entry));
+                } catch (IOException e) {
+                    SystemUtils.LOG.warning("Unable to read zip index " + sidecar + ": " + e.getMessage());
+                }
+            }
+            if (index == null) {
+                index = new DeflateIndex(checkpointSpacing);
+            }
+            indexMap.put(entry.name, index);
+        }
+        return index;
+    }
+
+    private long getStamp(final Entry entry) {
+        return entry.crc << 32 ^ entry.compressedSize * 31 ^ entry.size ^ entry.localHeaderOffset * 17;
+    }
+
+    private File getSidecarFile(final Entry entry) {
+        final String id = file.getAbsolutePath() + '|' + file.length() + '|' + file.lastModified() + '|' + entry.name;
+        final String entryName = entry.name.substring(entry.name.lastIndexOf('/') + 1);
+        final String name = entryName + '_' + Integer.toHexString(id.hashCode()) + ".idx";
+        return new File(new File(SystemUtils.getCacheDir(), "zip_index"), name);
+    }
+
+    private synchronized void writeIndexes() {
+        for (Map.Entry<String, DeflateIndex> mapEntry : indexMap.entrySet()) {
+            final DeflateIndex index = mapEntry.getValue();
+            if (!index.isModified()) {
+                continue;
+            }
+            final Entry entry = entries.get(mapEntry.getKey());
+            final File sidecar = getSidecarFile(entry);
+            final File tmpFile = new File(sidecar.getParentFile(), sidecar.getName() + ".tmp");
+            try {
+                if (!sidecar.getParentFile().exists() && !sidecar.getParentFile().mkdirs()) {
+                    continue;
+                }
+                index.write(tmpFile, getStamp(entry));
+                if ((sidecar.exists() && !sidecar.delete()) || !tmpFile.renameTo(sidecar)) {
+                    tmpFile.delete();
+                }
+            } catch (IOException e) {
+                SystemUtils.LOG.warning("Unable to write zip index " + sidecar + ": " + e.getMessage());
+                tmpFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeIndexes();
+        channel.close();
+    }
+
+    private void readCentralDirectory() throws IOException {
+        final long fileSize = channel.size();
+        if (fileSize < END_SIZE) {
+            throw new IOException("Not a zip file");
+        }
+
+        // the end record is followed by a comment of at most 64K
+        final int tailSize = (int) Math.min(fileSize, END_SIZE + 0xFFFF + ZIP64_LOCATOR_SIZE);
+        final ByteBuffer tail = read(fileSize - tailSize, tailSize);
+        int endPos = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; --i) {
+            if (tail.getInt(i) == END_SIG) {
+                endPos = i;
+                break;
+            }
+        }
+        if (endPos < 0) {
+            throw new IOException("End of central directory not found");
+        }
+
+        long numEntries = tail.getShort(endPos + 10) & 0xFFFF;
+        long cdSize = tail.getInt(endPos + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(endPos + 16) & 0xFFFFFFFFL;
+
+        final int locatorPos = endPos - ZIP64_LOCATOR_SIZE;
+        if (locatorPos >= 0 && tail.getInt(locatorPos) == ZIP64_LOCATOR_SIG) {
+            final long zip64EndOffset = tail.getLong(locatorPos + 8);
+            final ByteBuffer zip64End = read(zip64EndOffset, 56);
+            if (zip64End.getInt(0) != ZIP64_END_SIG) {
+                throw new IOException("Invalid zip64 end of central directory");
+            }
+            numEntries = zip64End.getLong(32);
+            cdSize = zip64End.getLong(40);
+            cdOffset = zip64End.getLong(48);
+        }
+        if (cdSize > Integer.MAX_VALUE) {
+            throw new IOException("Central directory too large");
+        }
+
+        final ByteBuffer cd = read(cdOffset, (int) cdSize);
+        int pos = 0;
+        for (long i = 0; i < numEntries; ++i) {
+            if (cd.getInt(pos) != CENTRAL_HEADER_SIG) {
+                throw new IOException("Invalid central directory header");
+            }
+            final int flags = cd.getShort(pos + 8) & 0xFFFF;
+            final int method = cd.getShort(pos + 10) & 0xFFFF;
+            final long crc = cd.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            final int nameLen = cd.getShort(pos + 28) & 0xFFFF;
+            final int extraLen = cd.getShort(pos + 30) & 0xFFFF;
+            final int commentLen = cd.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+
+            final byte[] nameBytes = new byte[nameLen];
+            cd.position(pos + 46);
+            cd.get(nameBytes);
+            final String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // zip64 extended information holds the fields which overflowed, in this order
+            int extraPos = pos + 46 + nameLen;
+            final int extraEnd = extraPos + extraLen;
+            while (extraPos + 4 <= extraEnd) {
+                final int id = cd.getShort(extraPos) & 0xFFFF;
+                final int len = cd.getShort(extraPos + 2) & 0xFFFF;
+                if (id == 0x0001) {
+                    int p = extraPos + 4;
+                    if (size == 0xFFFFFFFFL) {
+                        size = cd.getLong(p);
+                        p += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = cd.getLong(p);
+                        p += 8;
+                    }
+                    if (localHeaderOffset == 0xFFFFFFFFL) {
+                        localHeaderOffset = cd.getLong(p);
+                    }
+                }
+                extraPos += 4 + len;
+            }
+
+            final Entry entry = new Entry(name, method, flags, crc, compressedSize, size, localHeaderOffset);
+            entries.put(name, entry);
+            addDirectories(name);
+
+            pos += 46 + nameLen + extraLen + commentLen;
+        }
+    }
+
+    private void addDirectories(final String name) {
+        int sep = name.indexOf('/');
+        while (sep > 0) {
+            directories.add(name.substring(0, sep));
+            sep = name.indexOf('/', sep + 1);
+        }
+    }
+
+    private ByteBuffer read(final long pos, final int len) throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        channel.readFully(buf, pos);
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test the trace and report of the tile profiler
+ */
+public class TestTileProfiler {
+
+    private static final long MS = 1000000L;
+
+    @Before
+    public void setUp() {
+        TileProfiler.reset();
+    }
+
+    @After
+    public void tearDown() {
+        TileProfiler.reset();
+    }
+
+    @Test
+    public void testTrace() throws Exception {
+        // a deburst tile waiting 2 ms for a split tile, which waits 1 ms for a read, then a second deburst tile
+        final long t0 = System.nanoTime();
+        TileProfiler.record("ReadOp", "i_VV", new Rectangle(0, 0, 512, 256), t0 + 2 * MS, t0 + 3 * MS);
+        TileProfiler.record("TOPSARSplitOp", "i_VV", new Rectangle(0, 0, 512, 256), t0 + MS, t0 + 3 * MS);
+        TileProfiler.record("TOPSARDeburstOp", null, new Rectangle(0, 0, 512, 512), t0, t0 + 5 * MS);
+        TileProfiler.record("TOPSARDeburstOp", null, new Rectangle(512, 0, 512, 512), t0 + 5 * MS, t0 + 6 * MS);
+
+        final StringWriter writer = new StringWriter();
+        TileProfiler.writeTrace(writer);
+        final JSONObject trace = (JSONObject) new JSONParser().parse(new StringReader(writer.toString()));
+        assertEquals("ms", trace.get("displayTimeUnit"));
+
+        final List<JSONObject> tiles = new ArrayList<>();
+        String threadName = null;
+        for (Object o : (JSONArray) trace.get("traceEvents")) {
+            final JSONObject event = (JSONObject) o;
+            assertEquals(1L, event.get("pid"));
+            assertEquals(Thread.currentThread().getId(), event.get("tid"));
+            if ("M".equals(event.get("ph"))) {
+                assertEquals("thread_name", event.get("name"));
+                threadName = (String) ((JSONObject) event.get("args")).get("name");
+            } else {
+                assertEquals("X", event.get("ph"));
+                assertEquals("tile", event.get("cat"));
+                tiles.add(event);
+            }
+        }
+        assertEquals(Thread.currentThread().getName(), threadName);
+        assertEquals(4, tiles.size());
+
+        final JSONObject split = tiles.get(1);
+        assertEquals("TOPSARSplitOp", split.get("name"));
+        assertEquals(2000.0, ((Number) split.get("dur")).doubleValue(), 1e-6);
+        final JSONObject splitArgs = (JSONObject) split.get("args");
+        assertEquals("i_VV", splitArgs.get("band"));
+        assertEquals(512L, splitArgs.get("width"));
+        assertEquals(256L, splitArgs.get("height"));
+
+        final JSONObject deburst = tiles.get(3);
+        assertEquals("TOPSARDeburstOp", deburst.get("name"));
+        final double ts = ((Number) tiles.get(2).get("ts")).doubleValue();
+        assertEquals(5000.0, ((Number) deburst.get("ts")).doubleValue() - ts, 1e-6);
+        assertEquals(1000.0, ((Number) deburst.get("dur")).doubleValue(), 1e-6);
+        final JSONObject deburstArgs = (JSONObject) deburst.get("args");
+        assertNull(deburstArgs.get("band"));
+        assertEquals(512L, deburstArgs.get("x"));
+    }
+
+    @Test
+    public void testReport() {
+        final long t0 = System.nanoTime();
+        TileProfiler.record("ReadOp", "i_VV", new Rectangle(0, 0, 1000, 1000), t0 + 2 * MS, t0 + 3 * MS);
+        TileProfiler.record("TOPSARSplitOp", "i_VV", new Rectangle(0, 0, 1000, 1000), t0 + MS, t0 + 3 * MS);
+        TileProfiler.record("TOPSARDeburstOp", null, new Rectangle(0, 0, 1000, 1000), t0, t0 + 5 * MS);
+
+        // compute, wait for the source tiles directly nested and self time
+        final String report = TileProfiler.getReport();
+        assertTrue(report, report.matches("(?s).*TOPSARDeburstOp +1 +5\\.0 +2\\.0 +3\\.0 +1\\.00 +1\\R.*"));
+        assertTrue(report, report.matches("(?s).*TOPSARSplitOp +1 +2\\.0 +1\\.0 +1\\.0 +1\\.00 +1\\R.*"));
+        assertTrue(report, report.matches("(?s).*ReadOp +1 +1\\.0 +0\\.0 +1\\.0 +1\\.00 +1\\R.*"));
+
+        TileProfiler.reset();
+        assertFalse(TileProfiler.getReport().contains("ReadOp"));
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test decoding deflate streams from checkpoints against java.util.zip.Inflater
+ */
+public class TestDeflateIndex {
+
+    private static final long SPACING = 64 * 1024;
+    private static final long STAMP = 0x1234567890L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testCompressionLevels() throws Exception {
+        final byte[] data = TestZipArchive.createData(400000, 7);
+        for (int level : new int[]{Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, Deflater.DEFAULT_COMPRESSION}) {
+            final File file = writeDeflated(data, level);
+            try (SharedChannel channel = new SharedChannel(file.toPath())) {
+                final byte[] expected = inflate(file);
+                assertArrayEquals(data, expected);
+
+                final RawInflater inflater = new RawInflater(channel, 0, file.length());
+                final byte[] decoded = new byte[data.length];
+                int len = 0;
+                int n;
+                while ((n = inflater.read(decoded, len, Math.min(10000, decoded.length - len))) > 0) {
+                    len += n;
+                }
+                assertEquals(data.length, len);
+                assertArrayEquals(expected, decoded);
+            }
+        }
+    }
+
+    @Test
+    public void testSeekFromCheckpoints() throws Exception {
+        final byte[] data = TestZipArchive.createData(3 * 1024 * 1024, 8);
+        final File file = writeDeflated(data, Deflater.DEFAULT_COMPRESSION);
+        final byte[] expected = inflate(file);
+
+        try (SharedChannel channel = new SharedChannel(file.toPath())) {
+            final DeflateIndex index = new DeflateIndex(SPACING);
+
+            // the first pass adds the checkpoints
+            try (InflaterImageInputStream stream = createStream(channel, file, data.length, index)) {
+                final byte[] all = new byte[data.length];
+                stream.readFully(all);
+                assertArrayEquals(expected, all);
+            }
+            assertTrue(index.size() > 10);
+            assertTrue(index.isModified());
+            for (int i = 1; i < index.size(); ++i) {
+                assertTrue(index.getOutputPos(i) >= index.getOutputPos(i - 1) + SPACING);
+            }
+
+            // seeks resume from the checkpoints, backwards as well as forwards
+            try (InflaterImageInputStream stream = createStream(channel, file, data.length, index)) {
+                checkSeeks(stream, expected, 9);
+            }
+
+            // a new stream seeks through a written and read back index without a first pass
+            final File sidecar = new File(tmp.getRoot(), "entry.idx");
+            index.write(sidecar, STAMP);
+            assertFalse(index.isModified());
+            final DeflateIndex readIndex = DeflateIndex.read(sidecar, STAMP);
+            assertNotNull(readIndex);
+            assertEquals(index.size(), readIndex.size());
+            for (int i = 0; i < index.size(); ++i) {
+                assertEquals(index.getOutputPos(i), readIndex.getOutputPos(i));
+                assertEquals(index.getBitPos(i), readIndex.getBitPos(i));
+                assertArrayEquals(index.getHistory(i), readIndex.getHistory(i));
+            }
+            try (InflaterImageInputStream stream = createStream(channel, file, data.length, readIndex)) {
+                checkSeeks(stream, expected, 10);
+            }
+            assertFalse(readIndex.isModified());
+        }
+    }
+
+    @Test
+    public void testStaleIndex() throws Exception {
+        final File sidecar = writeIndex();
+        assertNull(DeflateIndex.read(sidecar, STAMP + 1));
+        assertNotNull(DeflateIndex.read(sidecar, STAMP));
+    }
+
+    @Test
+    public void testCorruptIndex() throws Exception {
+        final File sidecar = writeIndex();
+        final byte[] bytes = Files.readAllBytes(sidecar.toPath());
+
+        // a damaged checkpoint
+        final byte[] damaged = bytes.clone();
+        damaged[bytes.length - 20] ^= 0x10;
+        Files.write(sidecar.toPath(), damaged);
+        assertNull(DeflateIndex.read(sidecar, STAMP));
+
+        // a huge number of checkpoints
+        final byte[] size = bytes.clone();
+        size[24] = 0x7F;
+        Files.write(sidecar.toPath(), size);
+        assertNull(DeflateIndex.read(sidecar, STAMP));
+
+        // a truncated file
+        Files.write(sidecar.toPath(), Arrays.copyOf(bytes, bytes.length - 100));
+        try {
+            assertNull(DeflateIndex.read(sidecar, STAMP));
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private File writeIndex() throws IOException {
+        final byte[] data = TestZipArchive.createData(1024 * 1024, 11);
+        final File file = writeDeflated(data, Deflater.DEFAULT_COMPRESSION);
+        final DeflateIndex index = new DeflateIndex(SPACING);
+        try (SharedChannel channel = new SharedChannel(file.toPath());
+             InflaterImageInputStream stream = createStream(channel, file, data.length, index)) {
+            stream.readFully(new byte[data.length]);
+        }
+        assertTrue(index.size() > 1);
+        final File sidecar = new File(tmp.getRoot(), "index.idx");
+        index.write(sidecar, STAMP);
+        return sidecar;
+    }
+
+    private static InflaterImageInputStream createStream(final SharedChannel channel, final File file,
+                                                         final int length, final DeflateIndex index) {
+        return new InflaterImageInputStream(channel, 0, file.length(), length, index);
+    }
+
+    private static void checkSeeks(final InflaterImageInputStream stream, final byte[] expected, final long seed)
+            throws IOException {
+        final Random random = new Random(seed);
+        for (int n = 0; n < 50; ++n) {
+            final int pos = random.nextInt(expected.length);
+            final byte[] part = new byte[Math.min(expected.length - pos, 1 + random.nextInt(100000))];
+            stream.seek(pos);
+            stream.readFully(part);
+            assertArrayEquals(Arrays.copyOfRange(expected, pos, pos + part.length), part);
+        }
+    }
+
+    /**
+     * Write a raw deflate stream, as found in a zip entry.
+     */
+    private File writeDeflated(final byte[] data, final int level) throws IOException {
+        final Deflater deflater = new Deflater(level, true);
+        final File file = tmp.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            deflater.setInput(data);
+            deflater.finish();
+            final byte[] buf = new byte[65536];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+        } finally {
+            deflater.end();
+        }
+        return file;
+    }
+
+    private static byte[] inflate(final File file) throws Exception {
+        final byte[] compressed = new byte[(int) file.length()];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.readFully(compressed);
+        }
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[65536];
+            while (!inflater.finished()) {
+                final int n = inflater.inflate(buf);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
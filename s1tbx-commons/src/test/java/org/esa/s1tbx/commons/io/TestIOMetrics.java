@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test the I/O counters of a product reader
+ */
+public class TestIOMetrics {
+
+    @Test
+    public void testCounters() {
+        final IOMetrics metrics = new IOMetrics("counters", false);
+        metrics.addRead(100);
+        metrics.addRead(-1);
+        metrics.addRead(50);
+        assertEquals(150, metrics.getBytesRead());
+        assertEquals(3, metrics.getReadCalls());
+
+        // waiting for a lock is not a read
+        metrics.addLockWait(1000);
+        metrics.addLockWait(500);
+        assertEquals(2, metrics.getLockAcquisitions());
+        assertEquals(1500, metrics.getLockWaitNanos());
+        assertEquals(3, metrics.getReadCalls());
+
+        metrics.addDecodeTime("i_VV", 10);
+        metrics.addDecodeTime("q_VV", 20);
+        metrics.addDecodeTime("i_VV", 30);
+        metrics.addDecodeTime(null, 5);
+        assertEquals(65, metrics.getDecodeTimeNanos());
+        final Map<String, Long> perBand = metrics.getDecodeTimeNanosPerBand();
+        assertEquals(2, perBand.size());
+        assertEquals(40, perBand.get("i_VV").longValue());
+        assertEquals(20, perBand.get("q_VV").longValue());
+
+        assertEquals(0, metrics.getCacheHitRate(), 0);
+        metrics.addCacheHit();
+        metrics.addCacheHit();
+        metrics.addCacheHit();
+        metrics.addCacheMiss();
+        assertEquals(0.75, metrics.getCacheHitRate(), 0);
+
+        metrics.addMetadataTime(2000000);
+        metrics.addOpenTime(3000000);
+        final String json = metrics.toJSON();
+        assertTrue(json, json.contains("\"bytesRead\":150"));
+        assertTrue(json, json.contains("\"lockAcquisitions\":2"));
+        assertTrue(json, json.contains("\"openTimeMs\":3.0"));
+    }
+
+    @Test
+    public void testRegistration() throws Exception {
+        final IOMetrics metrics = new IOMetrics("registration", true);
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        // registered on the first count
+        assertNull(metrics.getObjectName());
+        metrics.addRead(10);
+        final ObjectName objectName = metrics.getObjectName();
+        assertNotNull(objectName);
+        assertTrue(server.isRegistered(objectName));
+        assertEquals(10L, server.getAttribute(objectName, "BytesRead"));
+
+        // and not again once closed
+        metrics.close();
+        assertNull(metrics.getObjectName());
+        assertFalse(server.isRegistered(objectName));
+        metrics.addRead(10);
+        assertNull(metrics.getObjectName());
+    }
+
+    @Test
+    public void testDisabled() {
+        final IOMetrics metrics = new IOMetrics("disabled", false);
+        metrics.addRead(10);
+        assertNull(metrics.getObjectName());
+        metrics.close();
+        assertEquals(10, metrics.getBytesRead());
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.esa.s1tbx.commons.test.S1TBXTests;
+import org.esa.snap.core.datamodel.MetadataAttribute;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.dataop.downloadable.XMLSupport;
+import org.esa.snap.engine_utilities.datamodel.metadata.AbstractMetadataIO;
+import org.jdom2.Element;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * To test that XMLStreamMetadata builds the same metadata as AbstractMetadataIO.AddXMLMetadata
+ */
+public class TestXMLStreamMetadata {
+
+    private static final String S1_ANNOTATION_FILE =
+            "s1a-iw-grd-vv-20140819t224528-20140819t224546-002015-001f3b-001.xml";
+
+    private static final String S1_ANNOTATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<product>\n" +
+            "  <adsHeader>\n" +
+            "    <missionId>S1A</missionId>\n" +
+            "    <productType>GRD</productType>\n" +
+            "    <polarisation>VV</polarisation>\n" +
+            "    <startTime>2014-08-19T22:45:28.497544</startTime>\n" +
+            "    <imageNumber>001</imageNumber>\n" +
+            "  </adsHeader>\n" +
+            "  <!-- a comment -->\n" +
+            "  <generalAnnotation>\n" +
+            "    <productInformation>\n" +
+            "      <pass>Descending</pass>\n" +
+            "      <rangeSamplingRate>6.430000000000000e+07</rangeSamplingRate>\n" +
+            "      <radarFrequency>5.405000454334350e+09</radarFrequency>\n" +
+            "    </productInformation>\n" +
+            "    <orbitList count=\"2\">\n" +
+            "      <orbit>\n" +
+            "        <time>2014-08-19T22:44:28.000000</time>\n" +
+            "        <frame>Earth Fixed</frame>\n" +
+            "        <position><x>3.1e+06</x><y>-1.2e+06</y><z>6.1e+06</z></position>\n" +
+            "        <velocity><x>6.7e+03</x><y>-1.1e+03</y><z>-3.3e+03</z></velocity>\n" +
+            "      </orbit>\n" +
+            "      <orbit>\n" +
+            "        <time>2014-08-19T22:44:38.000000</time>\n" +
+            "        <frame>Earth Fixed</frame>\n" +
+            "        <position><x>3.2e+06</x><y>-1.3e+06</y><z>6.0e+06</z></position>\n" +
+            "        <velocity><x>6.6e+03</x><y>-1.2e+03</y><z>-3.4e+03</z></velocity>\n" +
+            "      </orbit>\n" +
+            "    </orbitList>\n" +
+            "    <empty/>\n" +
+            "    <emptyWithAttribute units=\"m\"/>\n" +
+            "    <blank>   </blank>\n" +
+            "    <mixed>text<child>1</child>tail</mixed>\n" +
+            "    <escaped>a &amp; b <![CDATA[<c>]]></escaped>\n" +
+            "  </generalAnnotation>\n" +
+            "  <imageAnnotation>\n" +
+            "    <imageInformation>\n" +
+            "      <slantRangeTime>5.331045296704224e-03</slantRangeTime>\n" +
+            "      <azimuthPixelSpacing units=\"m\">1.000000e+01</azimuthPixelSpacing>\n" +
+            "    </imageInformation>\n" +
+            "  </imageAnnotation>\n" +
+            "  <geolocationGrid>\n" +
+            "    <geolocationGridPointList count=\"2\">\n" +
+            "      <geolocationGridPoint>\n" +
+            "        <line>0</line><pixel>0</pixel><latitude>4.5e+01</latitude><longitude>1.0e+01</longitude>\n" +
+            "      </geolocationGridPoint>\n" +
+            "      <geolocationGridPoint>\n" +
+            "        <line>0</line><pixel>1000</pixel><latitude>4.51e+01</latitude><longitude>1.1e+01</longitude>\n" +
+            "      </geolocationGridPoint>\n" +
+            "    </geolocationGridPointList>\n" +
+            "  </geolocationGrid>\n" +
+            "</product>\n";
+
+    private static final String S1_CALIBRATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<calibration>\n" +
+            "  <adsHeader><missionId>S1A</missionId><polarisation>VV</polarisation></adsHeader>\n" +
+            "  <calibrationInformation>\n" +
+            "    <absoluteCalibrationConstant>1.000000e+00</absoluteCalibrationConstant>\n" +
+            "  </calibrationInformation>\n" +
+            "  <calibrationVectorList count=\"2\">\n" +
+            "    <calibrationVector>\n" +
+            "      <azimuthTime>2014-08-19T22:45:28.497544</azimuthTime>\n" +
+            "      <line>0</line>\n" +
+            "      <pixel count=\"4\">0 40 80 120</pixel>\n" +
+            "      <sigmaNought count=\"4\">5.1e+02 5.2e+02 5.3e+02 5.4e+02</sigmaNought>\n" +
+            "      <dn count=\"4\">5.1e+02 5.2e+02 5.3e+02 5.4e+02</dn>\n" +
+            "    </calibrationVector>\n" +
+            "    <calibrationVector>\n" +
+            "      <azimuthTime>2014-08-19T22:45:29.497544</azimuthTime>\n" +
+            "      <line>600</line>\n" +
+            "      <pixel count=\"4\">0 40 80 120</pixel>\n" +
+            "      <sigmaNought count=\"4\">6.1e+02 6.2e+02 6.3e+02 6.4e+02</sigmaNought>\n" +
+            "      <dn count=\"4\">6.1e+02 6.2e+02 6.3e+02 6.4e+02</dn>\n" +
+            "    </calibrationVector>\n" +
+            "  </calibrationVectorList>\n" +
+            "</calibration>\n";
+
+    private static final String RCM_PRODUCT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<product xmlns=\"rcmGsProductSchema\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" " +
+            "xsi:schemaLocation=\"rcmGsProductSchema schemas/rcmGsProductSchema.xsd\">\n" +
+            "  <productId>RCM1_OK21594_PK225278_4</productId>\n" +
+            "  <sourceAttributes>\n" +
+            "    <satellite>RCM-1</satellite>\n" +
+            "    <radarParameters>\n" +
+            "      <pulseLength units=\"s\">4.0e-05</pulseLength>\n" +
+            "      <pulseRepetitionFrequency beam=\"QP15\" units=\"Hz\">1.2e+03</pulseRepetitionFrequency>\n" +
+            "      <pulseRepetitionFrequency beam=\"QP16\" units=\"Hz\">1.3e+03</pulseRepetitionFrequency>\n" +
+            "    </radarParameters>\n" +
+            "  </sourceAttributes>\n" +
+            "</product>\n";
+
+    private static final String RCM_LUT = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<lut xmlns=\"rcmGsProductSchema\">\n" +
+            "  <pixelFirstLutValue>0</pixelFirstLutValue>\n" +
+            "  <stepSize>2</stepSize>\n" +
+            "  <numberOfValues>4</numberOfValues>\n" +
+            "  <offset>0.0</offset>\n" +
+            "  <gains>1.1 1.2 1.3 1.4</gains>\n" +
+            "</lut>\n";
+
+    @Test
+    public void testSentinel1() throws Exception {
+        checkSameMetadata(S1_ANNOTATION.getBytes(StandardCharsets.UTF_8), "s1a-iw-grd-vv.xml",
+                UnaryOperator.identity());
+        checkSameMetadata(S1_CALIBRATION.getBytes(StandardCharsets.UTF_8), "s1a-iw-grd-vv.xml",
+                UnaryOperator.identity());
+    }
+
+    /**
+     * A complete annotation file of an S1 GRD product, with shortened lists.
+     */
+    @Test
+    public void testSentinel1AnnotationFile() throws Exception {
+        final byte[] xml;
+        try (InputStream is = TestXMLStreamMetadata.class.getResourceAsStream(S1_ANNOTATION_FILE)) {
+            assertNotNull(S1_ANNOTATION_FILE, is);
+            xml = readAllBytes(is);
+        }
+        final MetadataElement annotation = checkSameMetadata(xml, S1_ANNOTATION_FILE, UnaryOperator.identity());
+
+        final MetadataElement product = annotation.getElement("product");
+        assertEquals("S1A", product.getElement("adsHeader").getAttributeString("missionId"));
+        final MetadataElement gridPoints = product.getElement("geolocationGrid").getElement("geolocationGridPointList");
+        assertEquals(6, gridPoints.getNumElements());
+        assertEquals("835", gridPoints.getElementAt(5).getAttributeString("line"));
+    }
+
+    @Test
+    public void testRCM() throws Exception {
+        checkSameMetadata(RCM_PRODUCT.getBytes(StandardCharsets.UTF_8), "product.xml", rcmRootName("product.xml"));
+        final MetadataElement lut = checkSameMetadata(RCM_LUT.getBytes(StandardCharsets.UTF_8),
+                "lutSigma_HH.xml", rcmRootName("lutSigma_HH.xml"));
+        assertNotNull(lut.getElement("lutSigma_HH"));
+    }
+
+    @Test
+    public void testInvalidXML() {
+        try {
+            XMLStreamMetadata.addXMLMetadata(new ByteArrayInputStream("<product><a>1</product>".getBytes(
+                    StandardCharsets.UTF_8)), new MetadataElement("root"));
+            fail("invalid XML is not reported");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compares the metadata of the annotation, calibration and noise files of an S1 product, if present.
+     */
+    @Test
+    public void testSentinel1Product() throws Exception {
+        final File annotation = new File(S1TBXTests.TEST_ROOT + "S1" + File.separator +
+                "S1A_IW_GRDH_1ADV_20140819T224528_20140819T224546_002015_001F3B_979A.SAFE", "annotation");
+        assumeTrue(annotation + " not found", annotation.exists());
+
+        checkFolder(annotation, UnaryOperator.identity());
+        checkFolder(new File(annotation, "calibration"), UnaryOperator.identity());
+    }
+
+    /**
+     * Compares the metadata files of an RCM product, if present.
+     */
+    @Test
+    public void testRCMProduct() throws Exception {
+        final File metadata = new File(S1TBXTests.TEST_ROOT +
+                "RCM/QP/RCM1_OK21594_PK225278_4_QP15_20110624_225945_HH_VV_HV_VH_GRD", "metadata");
+        assumeTrue(metadata + " not found", metadata.exists());
+
+        checkFolder(metadata, null);
+        checkFolder(new File(metadata, "calibration"), null);
+    }
+
+    private static byte[] readAllBytes(final InputStream is) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static UnaryOperator<String> rcmRootName(final String fileName) {
+        final String lutName = fileName.substring(0, fileName.lastIndexOf(".xml"));
+        return name -> name.equals("lut") ? lutName : name;
+    }
+
+    private static void checkFolder(final File folder, final UnaryOperator<String> rootName) throws IOException {
+        final File[] files = folder.listFiles((dir, name) -> name.endsWith(".xml"));
+        assertNotNull(files);
+        for (File file : files) {
+            checkSameMetadata(Files.readAllBytes(file.toPath()), file.getName(),
+                    rootName != null ? rootName : rcmRootName(file.getName()));
+        }
+    }
+
+    /**
+     * Build the metadata of a document as the readers did before, with a parsed document whose root is renamed, and
+     * with XMLStreamMetadata, and compare them.
+     *
+     * @return the metadata built by XMLStreamMetadata
+     */
+    private static MetadataElement checkSameMetadata(final byte[] xml, final String fileName,
+                                                     final UnaryOperator<String> rootName) throws IOException {
+        final MetadataElement expected = new MetadataElement(fileName);
+        try (InputStream is = new ByteArrayInputStream(xml)) {
+            final Element rootElement = XMLSupport.LoadXML(is).getRootElement();
+            rootElement.setName(rootName.apply(rootElement.getName()));
+            AbstractMetadataIO.AddXMLMetadata(rootElement, expected);
+        }
+
+        final MetadataElement actual = new MetadataElement(fileName);
+        try (InputStream is = new ByteArrayInputStream(xml)) {
+            XMLStreamMetadata.addXMLMetadata(is, actual, rootName);
+        }
+
+        checkSameElement(expected, actual, fileName);
+        return actual;
+    }
+
+    private static void checkSameElement(final MetadataElement expected, final MetadataElement actual,
+                                         final String path) {
+        assertEquals(path, expected.getName(), actual.getName());
+
+        assertEquals(path + " attributes", expected.getNumAttributes(), actual.getNumAttributes());
+        for (int i = 0; i < expected.getNumAttributes(); ++i) {
+            final MetadataAttribute expectedAttribute = expected.getAttributeAt(i);
+            final MetadataAttribute actualAttribute = actual.getAttributeAt(i);
+            final String attributePath = path + '/' + expectedAttribute.getName();
+            assertEquals(attributePath, expectedAttribute.getName(), actualAttribute.getName());
+            assertEquals(attributePath, expectedAttribute.getDataType(), actualAttribute.getDataType());
+            assertEquals(attributePath, expectedAttribute.getData().getElemString(),
+                    actualAttribute.getData().getElemString());
+        }
+
+        assertEquals(path + " elements", expected.getNumElements(), actual.getNumElements());
+        for (int i = 0; i < expected.getNumElements(); ++i) {
+            final MetadataElement expectedElement = expected.getElementAt(i);
+            checkSameElement(expectedElement, actual.getElementAt(i), path + '/' + expectedElement.getName());
+        }
+    }
+}
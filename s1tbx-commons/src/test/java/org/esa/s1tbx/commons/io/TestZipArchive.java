@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.commons.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test reading zip entries in place
+ */
+public class TestZipArchive {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testStoredAndDeflatedEntries() throws Exception {
+        final byte[] measurement = createData(300000, 1);
+        final byte[] annotation = createData(5000, 2);
+
+        final File file = tmp.newFile("product.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry("product/"));
+            out.closeEntry();
+            putStored(out, "product/measurement/image.tiff", measurement);
+            out.putNextEntry(new ZipEntry("product/annotation/image.xml"));
+            out.write(annotation);
+            out.closeEntry();
+        }
+
+        try (ZipArchive archive = new ZipArchive(file)) {
+            final ZipArchive.Entry stored = archive.getEntry("product/measurement/image.tiff");
+            assertEquals(ZipArchive.STORED, stored.getMethod());
+            assertEquals(measurement.length, stored.getSize());
+            final ZipArchive.Entry deflated = archive.getEntry("product/annotation/image.xml");
+            assertEquals(ZipArchive.DEFLATED, deflated.getMethod());
+            assertEquals(annotation.length, deflated.getSize());
+
+            assertTrue(archive.isDirectory("product"));
+            assertTrue(archive.isDirectory("product/measurement/"));
+            assertFalse(archive.isDirectory("product/measurement/image.tiff"));
+            assertNull(archive.getEntry("product/missing.xml"));
+            assertNull(archive.createImageInputStream("product/"));
+
+            checkEntry(archive, "product/measurement/image.tiff", measurement);
+            checkEntry(archive, "product/annotation/image.xml", annotation);
+        }
+    }
+
+    @Test
+    public void testZip64() throws Exception {
+        final byte[] first = createData(1000, 3);
+        final byte[] second = createData(2000, 4);
+        final File file = tmp.newFile("zip64.zip");
+        writeZip64(file, new String[]{"a/first.dat", "a/b/second.dat"}, new byte[][]{first, second});
+
+        try (ZipArchive archive = new ZipArchive(file)) {
+            assertEquals(first.length, archive.getEntry("a/first.dat").getSize());
+            assertEquals(second.length, archive.getEntry("a/b/second.dat").getCompressedSize());
+            assertTrue(archive.isDirectory("a/b"));
+            checkEntry(archive, "a/first.dat", first);
+            checkEntry(archive, "a/b/second.dat", second);
+        }
+    }
+
+    @Test
+    public void testNotAZipFile() throws Exception {
+        final File file = tmp.newFile("image.tiff");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(createData(1000, 5));
+        }
+        try {
+            new ZipArchive(file).close();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testInterruptedReader() throws Exception {
+        final byte[] data = createData(200000, 6);
+        final File file = tmp.newFile("interrupt.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            putStored(out, "image.tiff", data);
+        }
+
+        try (ZipArchive archive = new ZipArchive(file)) {
+            final ImageInputStream other = archive.createImageInputStream("image.tiff");
+
+            // an interrupted read closes the channel it is blocked in
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final Thread thread = new Thread(() -> {
+                try (ImageInputStream stream = archive.createImageInputStream("image.tiff")) {
+                    Thread.currentThread().interrupt();
+                    stream.read(new byte[100]);
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            thread.start();
+            thread.join();
+            assertTrue(failure.get() instanceof ClosedByInterruptException);
+
+            // streams of other threads keep reading
+            final byte[] read = new byte[data.length];
+            other.readFully(read);
+            assertArrayEquals(data, read);
+            other.close();
+            checkEntry(archive, "image.tiff", data);
+        }
+    }
+
+    /**
+     * Read an entry sequentially and at random positions.
+     */
+    static void checkEntry(final ZipArchive archive, final String name, final byte[] expected) throws IOException {
+        try (ImageInputStream stream = archive.createImageInputStream(name)) {
+            assertNotNull(stream);
+            assertEquals(expected.length, stream.length());
+
+            final byte[] all = new byte[expected.length];
+            stream.readFully(all);
+            assertArrayEquals(expected, all);
+            assertEquals(-1, stream.read());
+
+            final Random random = new Random(name.hashCode());
+            for (int n = 0; n < 20; ++n) {
+                final int pos = random.nextInt(expected.length);
+                final int len = Math.min(expected.length - pos, 1 + random.nextInt(70000));
+                stream.seek(pos);
+                final byte[] part = new byte[len];
+                stream.readFully(part);
+                for (int i = 0; i < len; ++i) {
+                    assertEquals(expected[pos + i], part[i]);
+                }
+                stream.seek(pos);
+                assertEquals(expected[pos] & 0xFF, stream.read());
+            }
+        }
+    }
+
+    /**
+     * Data that compresses into a mix of literals and matches.
+     */
+    static byte[] createData(final int length, final long seed) {
+        final Random random = new Random(seed);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        final String[] words = {"<noiseVector>", "azimuthTime", "2021-03-04T05:06:07.123456", "</pixel>", " ", "\n"};
+        while (out.size() < length) {
+            if (random.nextInt(4) == 0) {
+                final byte[] noise = new byte[1 + random.nextInt(40)];
+                random.nextBytes(noise);
+                out.write(noise, 0, noise.length);
+            } else {
+                final byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.UTF_8);
+                out.write(word, 0, word.length);
+            }
+        }
+        final byte[] data = out.toByteArray();
+        return data.length == length ? data : java.util.Arrays.copyOf(data, length);
+    }
+
+    private static void putStored(final ZipOutputStream out, final String name, final byte[] data)
+            throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    /**
+     * Write STORED entries whose sizes and offsets are all given in zip64 extra fields, behind a zip64 end of
+     * central directory record.
+     */
+    private static void writeZip64(final File file, final String[] names, final byte[][] contents)
+            throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        final long[] offsets = new long[names.length];
+        final long[] crcs = new long[names.length];
+        for (int i = 0; i < names.length; ++i) {
+            final byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            final CRC32 crc = new CRC32();
+            crc.update(contents[i]);
+            crcs[i] = crc.getValue();
+            offsets[i] = buf.position();
+            buf.putInt(0x04034b50).putShort((short) 45).putShort((short) 0).putShort((short) 0);
+            buf.putInt(0).putInt((int) crcs[i]).putInt(-1).putInt(-1);
+            buf.putShort((short) name.length).putShort((short) 20);
+            buf.put(name);
+            buf.putShort((short) 1).putShort((short) 16).putLong(contents[i].length).putLong(contents[i].length);
+            buf.put(contents[i]);
+        }
+
+        final long cdOffset = buf.position();
+        for (int i = 0; i < names.length; ++i) {
+            final byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            buf.putInt(0x02014b50).putShort((short) 45).putShort((short) 45);
+            buf.putShort((short) 0).putShort((short) 0).putInt(0).putInt((int) crcs[i]);
+            buf.putInt(-1).putInt(-1);
+            buf.putShort((short) name.length).putShort((short) 28).putShort((short) 0);
+            buf.putShort((short) 0).putShort((short) 0).putInt(0).putInt(-1);
+            buf.put(name);
+            buf.putShort((short) 1).putShort((short) 24);
+            buf.putLong(contents[i].length).putLong(contents[i].length).putLong(offsets[i]);
+        }
+        final long cdSize = buf.position() - cdOffset;
+
+        final long zip64EndOffset = buf.position();
+        buf.putInt(0x06064b50).putLong(44).putShort((short) 45).putShort((short) 45).putInt(0).putInt(0);
+        buf.putLong(names.length).putLong(names.length).putLong(cdSize).putLong(cdOffset);
+        buf.putInt(0x07064b50).putInt(0).putLong(zip64EndOffset).putInt(1);
+        buf.putInt(0x06054b50).putShort((short) 0).putShort((short) 0);
+        buf.putShort((short) -1).putShort((short) -1).putInt(-1).putInt(-1).putShort((short) 0);
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(buf.array(), 0, buf.position());
+        }
+    }
+}
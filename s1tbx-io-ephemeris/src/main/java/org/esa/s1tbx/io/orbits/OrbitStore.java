@@ -0,0 +1,626 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.orbits;
+
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.engine_utilities.datamodel.Orbits;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A local store of orbit files which have been read once.
+ * <p>
+ * Each store holds one kind of orbit file, e.g. Sentinel-1A precise orbits. For every ingested file it keeps the
+ * validity interval, a few header attributes and optionally the state vectors. The state vectors are appended
+ * to a binary data file as seven doubles (MJD time, position, velocity) per vector, sorted by time, and are
+ * memory-mapped on use. The entries are kept in a small index file sorted by validity start, so that the orbit
+ * file for a given time is found by binary search rather than by listing and parsing the orbit folders.
+ * <p>
+ * Stores are shared by all threads of the process and may be shared with other processes; ingestion is
+ * serialized through a file lock. Every write of the index increments a sequence number in its header, which
+ * other instances compare to decide whether to reload it.
+ * <p>
+ * The vectors of files which were replaced or deleted remain in the data file until it is compacted. An ingestion
+ * compacts it once these dead vectors take more room than those of the existing files and at least 4 MB, so the
+ * data file stays within twice the size of the live vectors, or the live vectors and 4 MB. Compaction writes a new
+ * data file, named after its generation, before the index is switched to it.
+ */
+public final class OrbitStore {
+
+    private static final int MAGIC = 0x4F525354; // ORST
+    private static final int VERSION = 2;
+    private static final int VECTOR_SIZE = 7;
+    private static final long MIN_COMPACT_BYTES = 4L * 1024 * 1024;
+
+    private static final Map<String, OrbitStore> stores = new HashMap<>();
+
+    private final File folder;
+    private final String name;
+    private final File indexFile;
+    private final File lockFile;
+
+    private List<Entry> entries = new ArrayList<>();     // sorted by validity start
+    private final Map<String, Entry> fileMap = new HashMap<>();
+    private double maxValidityLength = 0;                // of the valid entries
+    private long indexSequence = -1;
+    private long indexLength = -1;
+    private long dataGeneration = 0;
+    private FileChannel dataChannel = null;
+    private long dataChannelGeneration = -1;
+
+    /**
+     * Reads an orbit file for ingestion.
+     */
+    public interface Parser {
+        /**
+         * @param file the orbit file
+         * @return the content of the orbit file
+         * @throws Exception if the file is not a valid orbit file
+         */
+        Record parse(File file) throws Exception;
+    }
+
+    /**
+     * The content of an orbit file to be ingested.
+     */
+    public static final class Record {
+        final double validityStart;
+        final double validityStop;
+        final Orbits.OrbitVector[] vectors;
+        final Map<String, String> attributes = new LinkedHashMap<>();
+
+        /**
+         * @param validityStart MJD start of validity
+         * @param validityStop  MJD end of validity
+         * @param vectors       the state vectors in any order, or null to index only the validity of the file
+         */
+        public Record(final double validityStart, final double validityStop, final Orbits.OrbitVector[] vectors) {
+            this.validityStart = validityStart;
+            this.validityStop = validityStop;
+            this.vectors = vectors == null ? new Orbits.OrbitVector[0] : vectors.clone();
+        }
+
+        public Record setAttribute(final String key, final String value) {
+            if (value != null) {
+                attributes.put(key, value);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * An ingested orbit file.
+     */
+    public static final class Entry {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final double validityStart;
+        private final double validityStop;
+        private final long dataGeneration;
+        private final long dataOffset;
+        private final int numVectors;
+        private final Map<String, String> attributes;
+        private final OrbitStore store;
+        private DoubleBuffer data = null;
+
+        private Entry(final OrbitStore store, final String path, final long length, final long lastModified,
+                      final double validityStart, final double validityStop, final long dataGeneration,
+                      final long dataOffset, final int numVectors, final Map<String, String> attributes) {
+            this.store = store;
+            this.path = path;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.validityStart = validityStart;
+            this.validityStop = validityStop;
+            this.dataGeneration = dataGeneration;
+            this.dataOffset = dataOffset;
+            this.numVectors = numVectors;
+            this.attributes = attributes;
+        }
+
+        public File getFile() {
+            return new File(path);
+        }
+
+        public double getValidityStart() {
+            return validityStart;
+        }
+
+        public double getValidityStop() {
+            return validityStop;
+        }
+
+        public String getAttribute(final String key) {
+            return attributes.get(key);
+        }
+
+        public int getNumVectors() {
+            return numVectors;
+        }
+
+        private boolean isValid() {
+            return !Double.isNaN(validityStart);
+        }
+
+        private boolean isCurrent(final File file) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+
+        private long getDataBytes() {
+            return (long) numVectors * VECTOR_SIZE * 8;
+        }
+
+        private boolean isSameFile(final Entry other) {
+            return other.path.equals(path) && other.length == length && other.lastModified == lastModified &&
+                    other.numVectors == numVectors;
+        }
+
+        private synchronized DoubleBuffer getData() throws IOException {
+            if (data == null) {
+                data = store.map(this);
+            }
+            return data;
+        }
+
+        /**
+         * @param i the index of the state vector
+         * @return the MJD time of the state vector
+         */
+        public double getTime(final int i) throws IOException {
+            return getData().get(i * VECTOR_SIZE);
+        }
+
+        /**
+         * @param i the index of the state vector
+         * @return the state vector
+         */
+        public Orbits.OrbitVector getVector(final int i) throws IOException {
+            final DoubleBuffer buf = getData();
+            final int p = i * VECTOR_SIZE;
+            return new Orbits.OrbitVector(buf.get(p),
+                    buf.get(p + 1), buf.get(p + 2), buf.get(p + 3),
+                    buf.get(p + 4), buf.get(p + 5), buf.get(p + 6));
+        }
+
+        /**
+         * @param utc MJD time
+         * @return the index of the first state vector at or after the time, numVectors if there is none
+         */
+        public int search(final double utc) throws IOException {
+            final DoubleBuffer buf = getData();
+            int lo = 0;
+            int hi = numVectors;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (buf.get(mid * VECTOR_SIZE) < utc) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    OrbitStore(final File folder, final String name) {
+        this.folder = folder;
+        this.name = name;
+        this.indexFile = new File(folder, name + ".idx");
+        this.lockFile = new File(folder, name + ".lock");
+    }
+
+    File getDataFile(final long generation) {
+        return new File(folder, generation == 0 ? name + ".osv" : name + '.' + generation + ".osv");
+    }
+
+    /**
+     * @param name identifies the kind of orbit files, e.g. mission and orbit type
+     * @return the store shared by the process
+     */
+    public static OrbitStore getInstance(final String name) {
+        synchronized (stores) {
+            return stores.computeIfAbsent(name, n ->
+                    new OrbitStore(new File(SystemUtils.getCacheDir(), "orbit_store"), n.replaceAll("[^A-Za-z0-9_.-]", "_")));
+        }
+    }
+
+    /**
+     * Find the ingested orbit file valid at a given time. If more than one file is valid, the one with the earliest
+     * validity start is used.
+     *
+     * @param utc MJD time
+     * @return the entry or null if no ingested and still existing file is valid at that time
+     */
+    public synchronized Entry find(final double utc) {
+        refresh();
+
+        // entries are sorted by validity start, find the last entry starting at or before utc
+        int lo = 0;
+        int hi = entries.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (entries.get(mid).validityStart <= utc) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        // entries starting more than the longest validity before utc end before it
+        final double earliestStart = utc - maxValidityLength;
+        int first = lo;
+        while (first > 0 && entries.get(first - 1).validityStart >= earliestStart) {
+            --first;
+        }
+        for (int i = first; i < lo; ++i) {
+            final Entry entry = entries.get(i);
+            if (utc < entry.validityStop && entry.getFile().exists()) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Ingest the files of a folder which are not yet in the store. Files which fail to parse are remembered and
+     * not parsed again unless they change.
+     *
+     * @param folder the folder, sub folders are included
+     * @param filter selects the orbit files
+     * @param parser reads an orbit file
+     */
+    public void ingestFolder(final File folder, final FilenameFilter filter, final Parser parser) {
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                ingestFolder(file, filter, parser);
+            } else if (filter.accept(folder, file.getName()) && getEntry(file) == null) {
+                try {
+                    ingest(file, parser);
+                } catch (IOException e) {
+                    SystemUtils.LOG.warning("Unable to ingest orbit file " + file + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Ingest an orbit file unless it is already in the store.
+     *
+     * @param file   the orbit file
+     * @param parser reads the orbit file
+     * @return the entry or null if the file is not a valid orbit file
+     * @throws IOException if the store cannot be written
+     */
+    public Entry ingest(final File file, final Parser parser) throws IOException {
+        final Entry existing = getEntry(file);
+        if (existing != null) {
+            return existing.isValid() ? existing : null;
+        }
+
+        Record record;
+        try {
+            record = parser.parse(file);
+        } catch (Exception e) {
+            SystemUtils.LOG.warning("Unable to read orbit file " + file + ": " + e.getMessage());
+            record = null;
+        }
+        if (record == null) {
+            record = new Record(Double.NaN, Double.NaN, null);
+        }
+        final Entry entry = add(file, record);
+        return entry.isValid() ? entry : null;
+    }
+
+    private synchronized Entry getEntry(final File file) {
+        refresh();
+        final Entry entry = fileMap.get(file.getAbsolutePath());
+        return entry != null && entry.isCurrent(file) ? entry : null;
+    }
+
+    private synchronized Entry add(final File file, final Record record) throws IOException {
+        final File folder = indexFile.getParentFile();
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Failed to create directory '" + folder + "'.");
+        }
+
+        final Orbits.OrbitVector[] vectors = record.vectors;
+        Arrays.sort(vectors, new Orbits.OrbitComparator());
+
+        try (RandomAccessFile lockRaf = new RandomAccessFile(lockFile, "rw");
+             FileLock ignored = lockRaf.getChannel().lock()) {
+
+            refresh();
+            final Entry current = fileMap.get(file.getAbsolutePath());
+            if (current != null && current.isCurrent(file)) {
+                return current;   // ingested by another process meanwhile
+            }
+
+            final long dataOffset;
+            try (FileChannel channel = FileChannel.open(getDataFile(dataGeneration).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                dataOffset = channel.size();
+                final ByteBuffer buf = ByteBuffer.allocate(vectors.length * VECTOR_SIZE * 8);
+                for (Orbits.OrbitVector v : vectors) {
+                    buf.putDouble(v.utcMJD);
+                    buf.putDouble(v.xPos).putDouble(v.yPos).putDouble(v.zPos);
+                    buf.putDouble(v.xVel).putDouble(v.yVel).putDouble(v.zVel);
+                }
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+
+            final Entry entry = new Entry(this, file.getAbsolutePath(), file.length(), file.lastModified(),
+                    record.validityStart, record.validityStop, dataGeneration, dataOffset, vectors.length,
+                    new LinkedHashMap<>(record.attributes));
+
+            final List<Entry> newEntries = new ArrayList<>(fileMap.size() + 1);
+            for (Entry e : fileMap.values()) {
+                if (!e.path.equals(entry.path)) {
+                    newEntries.add(e);
+                }
+            }
+            newEntries.add(entry);
+            setEntries(newEntries);
+            compact();
+            writeIndex();
+            return fileMap.get(entry.path);
+        }
+    }
+
+    /**
+     * Rewrite the data file without the vectors of replaced or deleted files if they take more room than the
+     * others. Must be called holding the file lock, before the index is written.
+     */
+    private void compact() throws IOException {
+        final File dataFile = getDataFile(dataGeneration);
+        final List<Entry> live = new ArrayList<>(fileMap.size());
+        long liveBytes = 0;
+        for (Entry e : fileMap.values()) {
+            if (e.getFile().exists()) {
+                live.add(e);
+                liveBytes += e.getDataBytes();
+            }
+        }
+        final long deadBytes = dataFile.length() - liveBytes;
+        if (deadBytes <= Math.max(liveBytes, MIN_COMPACT_BYTES)) {
+            return;
+        }
+
+        final long generation = dataGeneration + 1;
+        final File newDataFile = getDataFile(generation);
+        final List<Entry> compacted = new ArrayList<>(live.size());
+        try (FileChannel in = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(newDataFile.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry e : live) {
+                final long offset = out.position();
+                final long bytes = e.getDataBytes();
+                long done = 0;
+                while (done < bytes) {
+                    done += in.transferTo(e.dataOffset + done, bytes - done, out);
+                }
+                compacted.add(new Entry(this, e.path, e.length, e.lastModified, e.validityStart, e.validityStop,
+                        generation, offset, e.numVectors, e.attributes));
+            }
+        }
+        dataGeneration = generation;
+        setEntries(compacted);
+    }
+
+    /**
+     * Delete the data files of earlier generations. Files still mapped by another process may stay behind.
+     * Entries of earlier generations which were not mapped yet are mapped from their current location instead.
+     */
+    private void deleteOldDataFiles() {
+        for (long generation = dataGeneration - 1; generation >= 0; --generation) {
+            final File oldFile = getDataFile(generation);
+            if (oldFile.exists() && !oldFile.delete()) {
+                break;
+            }
+        }
+    }
+
+    private void setEntries(final List<Entry> list) {
+        list.sort((a, b) -> {
+            if (!a.isValid() || !b.isValid()) {
+                return Boolean.compare(a.isValid(), b.isValid());
+            }
+            return Double.compare(a.validityStart, b.validityStart);
+        });
+        // rejected files are only kept to avoid parsing them again
+        final List<Entry> valid = new ArrayList<>(list.size());
+        fileMap.clear();
+        maxValidityLength = 0;
+        for (Entry e : list) {
+            fileMap.put(e.path, e);
+            if (e.isValid()) {
+                valid.add(e);
+                maxValidityLength = Math.max(maxValidityLength, e.validityStop - e.validityStart);
+            }
+        }
+        entries = valid;
+    }
+
+    /**
+     * Reload the index if another process has changed it.
+     */
+    private void refresh() {
+        final long length = indexFile.length();
+        if (length == 0) {
+            return;
+        }
+        try {
+            if (length == indexLength && readSequence() == indexSequence) {
+                return;
+            }
+            readIndex();
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to read orbit store " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    private long readSequence() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(indexFile.toPath()))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION ? in.readLong() : -1;
+        }
+    }
+
+    private void readIndex() throws IOException {
+        final byte[] bytes = Files.readAllBytes(indexFile.toPath());
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            indexLength = bytes.length;
+            indexSequence = -1;
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            final long sequence = in.readLong();
+            final long generation = in.readLong();
+            final Map<String, Entry> previous = new HashMap<>(fileMap);
+            final int count = in.readInt();
+            final List<Entry> list = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final String path = in.readUTF();
+                final long length = in.readLong();
+                final long lastModified = in.readLong();
+                final double validityStart = in.readDouble();
+                final double validityStop = in.readDouble();
+                final long dataOffset = in.readLong();
+                final int numVectors = in.readInt();
+                final int numAttributes = in.readInt();
+                final Map<String, String> attributes = new LinkedHashMap<>();
+                for (int j = 0; j < numAttributes; ++j) {
+                    attributes.put(in.readUTF(), in.readUTF());
+                }
+
+                // keep the mapping of entries which did not change
+                final Entry prev = previous.get(path);
+                if (prev != null && prev.dataGeneration == generation && prev.dataOffset == dataOffset &&
+                        prev.length == length && prev.lastModified == lastModified) {
+                    list.add(prev);
+                } else {
+                    list.add(new Entry(this, path, length, lastModified, validityStart, validityStop,
+                            generation, dataOffset, numVectors, attributes));
+                }
+            }
+            setEntries(list);
+            dataGeneration = generation;
+            indexSequence = sequence;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        final List<Entry> all = new ArrayList<>(fileMap.values());
+        final long sequence = indexSequence + 1;
+        final File tmpFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeLong(dataGeneration);
+            out.writeInt(all.size());
+            for (Entry e : all) {
+                out.writeUTF(e.path);
+                out.writeLong(e.length);
+                out.writeLong(e.lastModified);
+                out.writeDouble(e.validityStart);
+                out.writeDouble(e.validityStop);
+                out.writeLong(e.dataOffset);
+                out.writeInt(e.numVectors);
+                out.writeInt(e.attributes.size());
+                for (Map.Entry<String, String> attr : e.attributes.entrySet()) {
+                    out.writeUTF(attr.getKey());
+                    out.writeUTF(attr.getValue());
+                }
+            }
+        }
+        final long length = tmpFile.length();
+        Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        indexSequence = sequence;
+        indexLength = length;
+        deleteOldDataFiles();
+    }
+
+    /**
+     * Map the vectors of an entry. Mapped vectors stay valid when the data file is compacted. An entry found before
+     * a compaction is mapped from the compacted data file once its own data file has been deleted.
+     */
+    private synchronized DoubleBuffer map(final Entry entry) throws IOException {
+        if (entry.numVectors == 0) {
+            return DoubleBuffer.allocate(0);
+        }
+        try {
+            return map(entry.dataGeneration, entry.dataOffset, entry.numVectors);
+        } catch (NoSuchFileException e) {
+            refresh();
+            final Entry current = fileMap.get(entry.path);
+            if (current == null || current == entry || !current.isSameFile(entry)) {
+                throw new IOException("Vectors of orbit file " + entry.path + " are no longer in the store");
+            }
+            return map(current.dataGeneration, current.dataOffset, current.numVectors);
+        }
+    }
+
+    private DoubleBuffer map(final long generation, final long offset, final int numVectors) throws IOException {
+        if (dataChannel == null || dataChannelGeneration != generation) {
+            if (dataChannel != null) {
+                dataChannel.close();
+            }
+            dataChannel = null;
+            dataChannel = FileChannel.open(getDataFile(generation).toPath(), StandardOpenOption.READ);
+            dataChannelGeneration = generation;
+        }
+        return dataChannel.map(FileChannel.MapMode.READ_ONLY, offset, (long) numVectors * VECTOR_SIZE * 8)
+                .asDoubleBuffer();
+    }
+
+    /**
+     * @return the valid entries sorted by validity start
+     */
+    public synchronized List<Entry> getEntries() {
+        refresh();
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -16,8 +16,10 @@
 package org.esa.s1tbx.io.orbits.doris;
 
 import org.esa.s1tbx.io.orbits.BaseOrbitFile;
+import org.esa.s1tbx.io.orbits.OrbitStore;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.dataio.envisat.EnvisatOrbitReader;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.datamodel.Orbits;
@@ -28,7 +30,6 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.util.Calendar;
-import java.util.Date;
 
 /**
  * DORIS Orbit File
@@ -53,7 +54,7 @@ public class DorisOrbitFile extends BaseOrbitFile {
 
     public File retrieveOrbitFile(final String orbitType) throws Exception {
         dorisReader = EnvisatOrbitReader.getInstance();
-        final int absOrbit = absRoot.getAttributeInt(AbstractMetadata.ABS_ORBIT, 0);
+        final OrbitStore orbitStore = OrbitStore.getInstance(orbitType.contains(DORIS_VOR) ? "DORIS_VOR" : "DORIS_POR");
 
         // construct path to the orbit file folder
         String orbitPath = "";
@@ -76,17 +77,18 @@ public class DorisOrbitFile extends BaseOrbitFile {
         final File localPath = new File(orbitPath);
 
         // find orbit file in the folder
-        final Date startDate = sourceProduct.getStartTime().getAsDate();
-        orbitFile = FindDorisOrbitFile(dorisReader, localPath, startDate, absOrbit);
+        final double startMJD = sourceProduct.getStartTime().getMJD();
+        orbitFile = findDorisOrbitFile(orbitStore, dorisReader, localPath, startMJD);
         if (orbitFile == null) {
             getRemoteFiles(orbitType, year);
-            orbitFile = FindDorisOrbitFile(dorisReader, localPath, startDate, absOrbit);
+            orbitFile = findDorisOrbitFile(orbitStore, dorisReader, localPath, startMJD);
         }
 
         if (orbitFile == null) {
             throw new IOException("Unable to find suitable DORIS orbit file in\n" + orbitPath);
         }
 
+        dorisReader.readProduct(orbitFile);
         dorisReader.readOrbitData();
 
         return orbitFile;
@@ -123,48 +125,28 @@ public class DorisOrbitFile extends BaseOrbitFile {
     }
 
     /**
-     * Find DORIS orbit file.
+     * Find DORIS orbit file. The sensing times of the files are indexed in the orbit store so that the folder
+     * is only listed and its new files opened when no known file covers the product.
      *
+     * @param orbitStore  The orbit store.
      * @param dorisReader The ENVISAT oribit reader.
      * @param path        The path to the orbit file.
-     * @param productDate The start date of the product.
-     * @param absOrbit    The absolute orbit number.
+     * @param productMJD  The start time of the product.
      * @return The orbit file.
-     * @throws IOException
      */
-    private static File FindDorisOrbitFile(EnvisatOrbitReader dorisReader, File path, Date productDate, int absOrbit)
-            throws IOException {
-
-        final File[] list = path.listFiles();
-        if (list == null) return null;
-
-        // loop through all orbit files in the given folder
-        for (File f : list) {
-
-            if (f.isDirectory()) {
-                final File foundFile = FindDorisOrbitFile(dorisReader, f, productDate, absOrbit);
-                if (foundFile != null) {
-                    return foundFile;
-                }
-            }
-
-            try {
-                // open each orbit file
-                dorisReader.readProduct(f);
-
-                // get the start and end dates and compare them against product start date
-                final Date startDate = dorisReader.getSensingStart();
-                final Date stopDate = dorisReader.getSensingStop();
-                if (productDate.after(startDate) && productDate.before(stopDate)) {
-
-                    return f;
-                }
-            } catch (Exception e) {
-                System.out.println(e.getMessage());
-                // continue
-            }
+    private static File findDorisOrbitFile(final OrbitStore orbitStore, final EnvisatOrbitReader dorisReader,
+                                           final File path, final double productMJD) {
+
+        OrbitStore.Entry entry = orbitStore.find(productMJD);
+        if (entry == null) {
+            orbitStore.ingestFolder(path, (dir, name) -> true, file -> {
+                dorisReader.readProduct(file);
+                return new OrbitStore.Record(
+                        ProductData.UTC.create(dorisReader.getSensingStart(), 0).getMJD(),
+                        ProductData.UTC.create(dorisReader.getSensingStop(), 0).getMJD(), null);
+            });
+            entry = orbitStore.find(productMJD);
         }
-
-        return null;
+        return entry != null ? entry.getFile() : null;
     }
 }
@@ -17,6 +17,7 @@ package org.esa.s1tbx.io.orbits.prare;
 
 import com.bc.ceres.core.NullProgressMonitor;
 import org.esa.s1tbx.io.orbits.BaseOrbitFile;
+import org.esa.s1tbx.io.orbits.OrbitStore;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.dataop.downloadable.FtpDownloader;
@@ -56,6 +57,7 @@ public class PrareOrbitFile extends BaseOrbitFile {
     public File retrieveOrbitFile(final String orbitType) throws Exception {
         prareReader = PrareOrbitReader.getInstance();
         final String mission = absRoot.getAttributeString(AbstractMetadata.MISSION);
+        final OrbitStore orbitStore = OrbitStore.getInstance("PRARE_" + mission);
 
         // construct path to the orbit file folder
         final String orbitPath;
@@ -81,20 +83,20 @@ public class PrareOrbitFile extends BaseOrbitFile {
         final File localPath = new File(orbitPath + File.separator + folder);
 
         // find orbit file in the folder
-        orbitFile = FindPrareOrbitFile(prareReader, localPath, startMJD);
+        orbitFile = findPrareOrbitFile(orbitStore, prareReader, localPath, startMJD);
         if (orbitFile == null) {
             getRemoteFiles(new File(orbitPath), remoteHTTPFolder, year);
-            orbitFile = FindPrareOrbitFile(prareReader, localPath, startMJD);
+            orbitFile = findPrareOrbitFile(orbitStore, prareReader, localPath, startMJD);
 
             if (orbitFile == null) {
                 final String remotePath = remoteBaseFolder + '/' + folder;
                 getRemotePrareFiles(remotePath, localPath, getPrefix(year, month));
                 // find again in newly downloaded folder
-                orbitFile = FindPrareOrbitFile(prareReader, localPath, startMJD);
+                orbitFile = findPrareOrbitFile(orbitStore, prareReader, localPath, startMJD);
                 if (orbitFile == null) {
                     // check next month
                     getRemotePrareFiles(remotePath, localPath, getPrefix(year, month + 1));
-                    orbitFile = FindPrareOrbitFile(prareReader, localPath, startMJD);
+                    orbitFile = findPrareOrbitFile(orbitStore, prareReader, localPath, startMJD);
                 }
             }
         }
@@ -175,42 +177,27 @@ public class PrareOrbitFile extends BaseOrbitFile {
     }
 
     /**
-     * Find PRARE orbit file.
+     * Find PRARE orbit file. The sensing times of the files are indexed in the orbit store so that the folder
+     * is only listed and the headers of its new files read when no known file covers the product.
      *
+     * @param orbitStore  The orbit store.
      * @param prareReader The PRARE oribit reader.
      * @param path        The path to the orbit file.
      * @param startMJD    The start date of the product.
      * @return The orbit file.
-     * @throws IOException if can't read file
      */
-    private static File FindPrareOrbitFile(final PrareOrbitReader prareReader, final File path,
-                                           final double startMJD) throws IOException {
-
-        final File[] list = path.listFiles();
-        if (list == null) return null;
-
-        // loop through all orbit files in the given folder
-        for (File f : list) {
-
-            if (f.isDirectory()) {
-                continue;
-            }
-
-            // read header record of each orbit file
-            prareReader.readOrbitHeader(f);
-
-            // get the start and end dates and compare them against product start date
-            final float startDateInMJD = prareReader.getSensingStart(); // in days
-            final float stopDateInMJD = prareReader.getSensingStop(); // in days
-            if (startDateInMJD <= startMJD && startMJD < stopDateInMJD) {
-                try {
-                    return f;
-                } catch (Exception e) {
-                    throw new IOException("Unable to parse file: " + e.toString());
-                }
-            }
+    private static File findPrareOrbitFile(final OrbitStore orbitStore, final PrareOrbitReader prareReader,
+                                           final File path, final double startMJD) {
+
+        OrbitStore.Entry entry = orbitStore.find(startMJD);
+        if (entry == null) {
+            orbitStore.ingestFolder(path, (dir, name) -> true, file -> {
+                // read header record of each orbit file
+                prareReader.readOrbitHeader(file);
+                return new OrbitStore.Record(prareReader.getSensingStart(), prareReader.getSensingStop(), null);
+            });
+            entry = orbitStore.find(startMJD);
         }
-
-        return null;
+        return entry != null ? entry.getFile() : null;
     }
 }
@@ -16,15 +16,13 @@
 package org.esa.s1tbx.io.orbits.sentinel1;
 
 import Jama.Matrix;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.esa.s1tbx.io.orbits.BaseOrbitFile;
 import org.esa.s1tbx.io.orbits.OrbitFile;
+import org.esa.s1tbx.io.orbits.OrbitStore;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.util.StringUtils;
@@ -53,10 +51,8 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -80,11 +76,14 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
     private final static DateFormat dateFormat = ProductData.UTC.createDateFormat("yyyyMMdd-HHmmss");
     private final static DateFormat orbitDateFormat = ProductData.UTC.createDateFormat("yyyy-MM-dd HH:mm:ss");
 
-    private FixedHeader fixedHeader = null;
+    private static final String MISSION = "Mission";
+    private static final String FILE_TYPE = "File_Type";
+    private static final String VALIDITY_START = "Validity_Start";
+    private static final String VALIDITY_STOP = "Validity_Stop";
 
-    private List<Orbits.OrbitVector> osvList = new ArrayList<>();
+    private FixedHeader fixedHeader = null;
 
-    private static LoadingCache<File, List<Orbits.OrbitVector>> cache;
+    private OrbitStore.Entry orbitEntry = null;
 
     public SentinelPODOrbitFile(final MetadataElement absRoot, final int polyDegree) throws Exception {
         super(absRoot);
@@ -105,8 +104,14 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
         final int minute = calendar.get(Calendar.MINUTE);
         final int second = calendar.get(Calendar.SECOND);
         final String missionPrefix = getMissionPrefix(absRoot);
+        final OrbitStore orbitStore = getOrbitStore(missionPrefix, orbitType);
 
-        orbitFile = findOrbitFile(missionPrefix, orbitType, stateVectorTime, year, month);
+        final OrbitStore.Entry entry = orbitStore.find(stateVectorTime);
+        if (entry != null) {
+            orbitFile = entry.getFile();
+        } else {
+            orbitFile = findOrbitFile(missionPrefix, orbitType, stateVectorTime, year, month);
+        }
 
         if (orbitFile == null) {
             orbitFile = downloadFromQCRestAPI(missionPrefix, orbitType, year, month, day, hour, minute, second, stateVectorTime);
@@ -131,11 +136,15 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
         }
 
         // read content of the orbit file
-        readOrbitFile();
+        readOrbitFile(orbitStore);
 
         return orbitFile;
     }
 
+    private static OrbitStore getOrbitStore(final String missionPrefix, final String orbitType) {
+        return OrbitStore.getInstance(missionPrefix + (orbitType.startsWith(RESTITUTED) ? "_RESORB" : "_POEORB"));
+    }
+
     private static String getMissionPrefix(final MetadataElement absRoot) {
         final String mission = absRoot.getAttributeString(AbstractMetadata.MISSION);
         return "S1" + mission.substring(mission.length() - 1);
@@ -427,45 +436,26 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
         }
     }
 
-    public Orbits.OrbitVector[] getOrbitData(final double startUTC, final double endUTC) {
+    public Orbits.OrbitVector[] getOrbitData(final double startUTC, final double endUTC) throws IOException {
 
-        final Orbits.OrbitVector startOSV = new Orbits.OrbitVector(startUTC);
-        int startIdx = Collections.binarySearch(osvList, startOSV, new Orbits.OrbitComparator());
+        final int numVectors = orbitEntry.getNumVectors();
 
-        if (startIdx < 0) {
-            final int insertionPt = -(startIdx + 1);
-            if (insertionPt == osvList.size()) {
-                startIdx = insertionPt - 1;
-            } else if (insertionPt <= 0) {
-                startIdx = 0;
-            } else {
-                startIdx = insertionPt - 1;
-            }
+        // last vector at or before the start
+        int startIdx = orbitEntry.search(startUTC);
+        if (startIdx == numVectors || orbitEntry.getTime(startIdx) != startUTC) {
+            startIdx = Math.max(startIdx - 1, 0);
         }
 
-        final Orbits.OrbitVector endOSV = new Orbits.OrbitVector(endUTC);
-        int endIdx = Collections.binarySearch(osvList, endOSV, new Orbits.OrbitComparator());
-
-        if (endIdx < 0) {
-            final int insertionPt = -(endIdx + 1);
-            if (insertionPt == osvList.size()) {
-                endIdx = insertionPt - 1;
-            } else if (insertionPt == 0) {
-                endIdx = 0;
-            } else {
-                endIdx = insertionPt;
-            }
-        }
+        // first vector at or after the end
+        int endIdx = Math.min(orbitEntry.search(endUTC), numVectors - 1);
 
-        startIdx -= 3;
-        endIdx += 3;
+        startIdx = Math.max(startIdx - 3, 0);
+        endIdx = Math.min(endIdx + 3, numVectors - 1);
 
         final int numOSV = endIdx - startIdx + 1;
         final Orbits.OrbitVector[] orbitDataList = new Orbits.OrbitVector[numOSV];
-        int idx = startIdx;
         for (int i = 0; i < numOSV; i++) {
-            orbitDataList[i] = osvList.get(idx);
-            idx++;
+            orbitDataList[i] = orbitEntry.getVector(startIdx + i);
         }
 
         return orbitDataList;
@@ -478,11 +468,11 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
      * @return The orbit state vector.
      * @throws Exception The exceptions.
      */
-    public Orbits.OrbitVector getOrbitData(final double utc) {
+    public Orbits.OrbitVector getOrbitData(final double utc) throws IOException {
 
-        final int numVectors = osvList.size();
-        final double t0 = osvList.get(0).utcMJD;
-        final double tN = osvList.get(numVectors - 1).utcMJD;
+        final int numVectors = orbitEntry.getNumVectors();
+        final double t0 = orbitEntry.getTime(0);
+        final double tN = orbitEntry.getTime(numVectors - 1);
 
         final int numVecPolyFit = polyDegree + 1; //4;
         final int halfNumVecPolyFit = numVecPolyFit / 2;
@@ -512,13 +502,14 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
         double[] zVelArray = new double[numVecPolyFit];
 
         for (int i = 0; i < numVecPolyFit; i++) {
-            timeArray[i] = osvList.get(vectorIndices[i]).utcMJD - t0;
-            xPosArray[i] = osvList.get(vectorIndices[i]).xPos;
-            yPosArray[i] = osvList.get(vectorIndices[i]).yPos;
-            zPosArray[i] = osvList.get(vectorIndices[i]).zPos;
-            xVelArray[i] = osvList.get(vectorIndices[i]).xVel;
-            yVelArray[i] = osvList.get(vectorIndices[i]).yVel;
-            zVelArray[i] = osvList.get(vectorIndices[i]).zVel;
+            final Orbits.OrbitVector osv = orbitEntry.getVector(vectorIndices[i]);
+            timeArray[i] = osv.utcMJD - t0;
+            xPosArray[i] = osv.xPos;
+            yPosArray[i] = osv.yPos;
+            zPosArray[i] = osv.zPos;
+            xVelArray[i] = osv.xVel;
+            yVelArray[i] = osv.yVel;
+            zVelArray[i] = osv.zVel;
         }
 
         final Matrix A = Maths.createVandermondeMatrix(timeArray, polyDegree);
@@ -540,24 +531,37 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
                 Maths.polyVal(normalizedTime, zVelCoeff));
     }
 
-    private void readOrbitFile() throws Exception {
+    /**
+     * Get the orbit file from the orbit store, parsing it only the first time it is used.
+     */
+    private void readOrbitFile(final OrbitStore orbitStore) throws Exception {
+
+        orbitEntry = orbitStore.ingest(orbitFile, SentinelPODOrbitFile::parseOrbitFile);
+        if (orbitEntry == null || orbitEntry.getNumVectors() == 0) {
+            throw new IOException("SentinelPODOrbitFile: Unable to read orbit file " + orbitFile.getName());
+        }
 
-        List<Orbits.OrbitVector> cachedOSVList = getCache().get(orbitFile);
-        if(cachedOSVList != null && !cachedOSVList.isEmpty()) {
-            osvList = cachedOSVList;
-            return;
+        if (orbitEntry.getAttribute(VALIDITY_START) != null) {
+            fixedHeader = new FixedHeader(orbitEntry.getAttribute(MISSION), orbitEntry.getAttribute(FILE_TYPE),
+                    orbitEntry.getAttribute(VALIDITY_START), orbitEntry.getAttribute(VALIDITY_STOP));
         }
 
+        checkOrbitFileValidity();
+    }
+
+    private static OrbitStore.Record parseOrbitFile(final File orbitFile) throws Exception {
+
         final DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
         final DocumentBuilder documentBuilder = documentFactory.newDocumentBuilder();
 
         final Document doc;
         if (orbitFile.getName().toLowerCase().endsWith(".zip")) {
-            final ZipFile productZip = new ZipFile(orbitFile, ZipFile.OPEN_READ);
-            final Enumeration<? extends ZipEntry> entries = productZip.entries();
-            final ZipEntry zipEntry = entries.nextElement();
+            try (final ZipFile productZip = new ZipFile(orbitFile, ZipFile.OPEN_READ)) {
+                final Enumeration<? extends ZipEntry> entries = productZip.entries();
+                final ZipEntry zipEntry = entries.nextElement();
 
-            doc = documentBuilder.parse(productZip.getInputStream(zipEntry));
+                doc = documentBuilder.parse(productZip.getInputStream(zipEntry));
+            }
         } else {
             doc = documentBuilder.parse(orbitFile);
         }
@@ -617,24 +621,35 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
             }
         }
 
+        FixedHeader fixedHeader = null;
         if (fixedHeaderNode != null) {
 
-            readFixedHeader(fixedHeaderNode);
+            fixedHeader = readFixedHeader(fixedHeaderNode);
         }
 
         // Don't need anything from Variable_Header.
 
+        List<Orbits.OrbitVector> osvList = new ArrayList<>();
         if (listOfOSVsNode != null) {
 
             osvList = readOSVList(listOfOSVsNode);
         }
 
-        checkOrbitFileValidity();
-
-        getCache().put(orbitFile, osvList);
+        final String name = orbitFile.getName();
+        final OrbitStore.Record record;
+        if (fixedHeader != null) {
+            record = new OrbitStore.Record(toUTC(fixedHeader.validityStart).getMJD(), toUTC(fixedHeader.validityStop).getMJD(),
+                    osvList.toArray(new Orbits.OrbitVector[0]));
+            record.setAttribute(MISSION, fixedHeader.mission).setAttribute(FILE_TYPE, fixedHeader.fileType)
+                    .setAttribute(VALIDITY_START, fixedHeader.validityStart).setAttribute(VALIDITY_STOP, fixedHeader.validityStop);
+        } else {
+            record = new OrbitStore.Record(getValidityStartFromFilenameUTC(name).getMJD(), getValidityStopFromFilenameUTC(name).getMJD(),
+                    osvList.toArray(new Orbits.OrbitVector[0]));
+        }
+        return record;
     }
 
-    private void readFixedHeader(final org.w3c.dom.Node fixedHeaderNode) {
+    private static FixedHeader readFixedHeader(final org.w3c.dom.Node fixedHeaderNode) {
 
         final NodeList fixedHeaderChildNodes = fixedHeaderNode.getChildNodes();
 
@@ -680,10 +695,10 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
 
             if (mission != null && fileType != null && validityStart != null && validityStop != null) {
 
-                fixedHeader = new FixedHeader(mission, fileType, validityStart, validityStop);
-                break;
+                return new FixedHeader(mission, fileType, validityStart, validityStop);
             }
         }
+        return null;
     }
 
     private static List<Orbits.OrbitVector> readOSVList(final org.w3c.dom.Node listOfOSVsNode) throws Exception {
@@ -931,25 +946,6 @@ public class SentinelPODOrbitFile extends BaseOrbitFile implements OrbitFile {
         }
     }
 
-    private LoadingCache<File, List<Orbits.OrbitVector>> getCache() {
-        if(cache == null) {
-            cache = createCache();
-        }
-        return cache;
-    }
-
-    private static LoadingCache<File, List<Orbits.OrbitVector>> createCache() {
-        return CacheBuilder.newBuilder().maximumSize(6).initialCapacity(6)
-                .expireAfterAccess(5, TimeUnit.MINUTES)
-                .build(new CacheLoader<File, List<Orbits.OrbitVector>>() {
-                           @Override
-                           public List<Orbits.OrbitVector> load(File key) throws Exception {
-                               return new ArrayList<>();
-                           }
-                       }
-                );
-    }
-
     private static final class FixedHeader {
 
         private final String mission;
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.orbits;
+
+import org.esa.snap.engine_utilities.datamodel.Orbits;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test OrbitStore
+ */
+public class TestOrbitStore {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private int numParsed = 0;
+
+    private final OrbitStore.Parser parser = createParser(100);
+
+    // each test orbit file holds the MJD start of its validity
+    private OrbitStore.Parser createParser(final int numVectors) {
+        return file -> {
+            ++numParsed;
+            final double start = Double.parseDouble(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            final Orbits.OrbitVector[] vectors = new Orbits.OrbitVector[numVectors];
+            for (int i = 0; i < vectors.length; ++i) {
+                vectors[vectors.length - 1 - i] = new Orbits.OrbitVector(start + i * 0.0125, i, 2 * i, 3 * i, -i, -2 * i, -3 * i);
+            }
+            return new OrbitStore.Record(start - 0.1, start + 1.1, vectors).setAttribute("start", String.valueOf(start));
+        };
+    }
+
+    private File createOrbitFiles() throws Exception {
+        final File folder = tmp.newFolder("orbits");
+        final File subFolder = new File(folder, "2021");
+        assertTrue(subFolder.mkdirs());
+        for (int d = 0; d < 5; ++d) {
+            Files.write(new File(subFolder, "orbit" + d + ".txt").toPath(), String.valueOf(100 + d).getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(new File(subFolder, "bad.txt").toPath(), "bad".getBytes(StandardCharsets.UTF_8));
+        return folder;
+    }
+
+    @Test
+    public void testFind() throws Exception {
+        final File folder = createOrbitFiles();
+        final OrbitStore store = new OrbitStore(tmp.newFolder("store"), "TEST");
+        store.ingestFolder(folder, (dir, name) -> name.endsWith(".txt"), parser);
+
+        assertEquals(5, store.getEntries().size());
+        assertNull(store.find(50));
+
+        // 101.95 is covered by orbit1 and orbit2, which starts later
+        final OrbitStore.Entry entry = store.find(101.95);
+        assertNotNull(entry);
+        assertEquals("orbit1.txt", entry.getFile().getName());
+        assertEquals("101.0", entry.getAttribute("start"));
+        assertEquals(100, entry.getNumVectors());
+
+        // the first covering file is used even if the time is closer to its end
+        assertEquals("orbit1.txt", store.find(102.05).getFile().getName());
+
+        final int i = entry.search(101.5);
+        assertEquals(40, i);
+        assertEquals(101.5, entry.getTime(i), 1e-9);
+        final Orbits.OrbitVector v = entry.getVector(i);
+        assertEquals(40, v.xPos, 0);
+        assertEquals(-120, v.zVel, 0);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        final File folder = createOrbitFiles();
+        final File storeFolder = tmp.newFolder("store");
+        new OrbitStore(storeFolder, "TEST").ingestFolder(folder, (dir, name) -> true, parser);
+        assertEquals(6, numParsed);
+
+        // neither the valid nor the rejected files are parsed again
+        final OrbitStore store = new OrbitStore(storeFolder, "TEST");
+        store.ingestFolder(folder, (dir, name) -> true, parser);
+        assertEquals(6, numParsed);
+        assertEquals(5, store.getEntries().size());
+        assertEquals("orbit3.txt", store.find(103.5).getFile().getName());
+    }
+
+    @Test
+    public void testFindSkipsDeletedFiles() throws Exception {
+        final File folder = tmp.newFolder("orbits");
+        for (int d = 0; d < 200; ++d) {
+            Files.write(new File(folder, "orbit" + d + ".txt").toPath(), String.valueOf(100 + d).getBytes(StandardCharsets.UTF_8));
+        }
+        final OrbitStore store = new OrbitStore(tmp.newFolder("store"), "TEST");
+        store.ingestFolder(folder, (dir, name) -> true, parser);
+        assertEquals(200, store.getEntries().size());
+
+        for (int d = 0; d < 200; ++d) {
+            assertEquals("orbit" + d + ".txt", store.find(100.5 + d).getFile().getName());
+        }
+        assertNull(store.find(301.2));
+
+        // 150.95 is covered by orbit50 first, then by orbit51
+        assertEquals("orbit50.txt", store.find(150.95).getFile().getName());
+        assertTrue(new File(folder, "orbit50.txt").delete());
+        assertEquals("orbit51.txt", store.find(150.95).getFile().getName());
+        assertTrue(new File(folder, "orbit51.txt").delete());
+        assertNull(store.find(150.95));
+    }
+
+    @Test
+    public void testReloadAfterIngestByOtherInstance() throws Exception {
+        final File folder = createOrbitFiles();
+        final File storeFolder = tmp.newFolder("store");
+        final OrbitStore store = new OrbitStore(storeFolder, "TEST");
+        final OrbitStore other = new OrbitStore(storeFolder, "TEST");
+
+        // ingestions in quick succession, within the resolution of file modification times
+        final File subFolder = new File(folder, "2021");
+        for (int d = 0; d < 5; ++d) {
+            other.ingest(new File(subFolder, "orbit" + d + ".txt"), parser);
+            assertEquals(d + 1, store.getEntries().size());
+            assertEquals("orbit" + d + ".txt", store.find(100.5 + d).getFile().getName());
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        final File folder = tmp.newFolder("orbits");
+        final File storeFolder = tmp.newFolder("store");
+        final OrbitStore store = new OrbitStore(storeFolder, "TEST");
+        final OrbitStore.Parser largeParser = createParser(10000);
+        final long entryBytes = 10000L * 7 * 8;
+
+        final File[] files = new File[12];
+        for (int d = 0; d < files.length; ++d) {
+            files[d] = new File(folder, "orbit" + d + ".txt");
+            Files.write(files[d].toPath(), String.valueOf(100 + d).getBytes(StandardCharsets.UTF_8));
+        }
+        for (int d = 0; d < 10; ++d) {
+            store.ingest(files[d], largeParser);
+        }
+        assertEquals(10 * entryBytes, store.getDataFile(0).length());
+
+        // the vectors of deleted files stay until they outweigh the others
+        for (int d = 3; d < 10; ++d) {
+            assertTrue(files[d].delete());
+        }
+        store.ingest(files[10], largeParser);
+        assertFalse(store.getDataFile(1).exists());
+        assertTrue(files[2].delete());
+        store.ingest(files[11], largeParser);
+        assertTrue(store.getDataFile(1).exists());
+        assertFalse(store.getDataFile(0).exists());
+        assertEquals(4 * entryBytes, store.getDataFile(1).length());
+
+        final OrbitStore reloaded = new OrbitStore(storeFolder, "TEST");
+        for (OrbitStore s : new OrbitStore[]{store, reloaded}) {
+            assertEquals(4, s.getEntries().size());
+            for (int d : new int[]{0, 1, 10, 11}) {
+                final OrbitStore.Entry entry = s.find(100.5 + d);
+                assertEquals("orbit" + d + ".txt", entry.getFile().getName());
+                assertEquals(100 + d + 40 * 0.0125, entry.getTime(40), 1e-9);
+                assertEquals(9999, entry.getVector(9999).xPos, 0);
+            }
+        }
+    }
+
+    @Test
+    public void testEntryFoundBeforeCompaction() throws Exception {
+        final File folder = tmp.newFolder("orbits");
+        final OrbitStore store = new OrbitStore(tmp.newFolder("store"), "TEST");
+        final OrbitStore.Parser largeParser = createParser(10000);
+
+        final File[] files = new File[12];
+        for (int d = 0; d < files.length; ++d) {
+            files[d] = new File(folder, "orbit" + d + ".txt");
+            Files.write(files[d].toPath(), String.valueOf(100 + d).getBytes(StandardCharsets.UTF_8));
+        }
+        for (int d = 0; d < 11; ++d) {
+            store.ingest(files[d], largeParser);
+        }
+        final OrbitStore.Entry entry = store.find(100.5);
+        for (int d = 2; d < 11; ++d) {
+            assertTrue(files[d].delete());
+        }
+
+        // the data file the entry was found in is replaced before the vectors are read
+        store.ingest(files[11], largeParser);
+        assertFalse(store.getDataFile(0).exists());
+        assertEquals(100 + 40 * 0.0125, entry.getTime(40), 1e-9);
+        assertEquals(9999, entry.getVector(9999).xPos, 0);
+    }
+}
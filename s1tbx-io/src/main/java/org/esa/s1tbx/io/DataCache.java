@@ -3,6 +3,7 @@ package org.esa.s1tbx.io;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import org.esa.s1tbx.commons.io.IOMetrics;
 import org.esa.s1tbx.commons.io.ImageIOFile;
 
 import java.awt.*;
@@ -14,11 +15,17 @@ import java.util.concurrent.TimeUnit;
 public class DataCache {
 
     private final LoadingCache<DataKey, Data> cache;
+    private final IOMetrics metrics;
 
     public DataCache() {
+        this(IOMetrics.global());
+    }
+
+    public DataCache(final IOMetrics metrics) {
+        this.metrics = metrics;
         cache = CacheBuilder.newBuilder().maximumSize(500).initialCapacity(500)
                 .expireAfterAccess(10, TimeUnit.MINUTES)
-                //.recordStats()
+                .recordStats()
                 .build(new CacheLoader<DataKey, Data>() {
                            @Override
                            public Data load(DataKey key) throws Exception {
@@ -37,7 +44,13 @@ public class DataCache {
     }
 
     public Data get(DataKey key) {
-        return cache.getUnchecked(key);
+        final Data data = cache.getUnchecked(key);
+        if (data.valid) {
+            metrics.addCacheHit();
+        } else {
+            metrics.addCacheMiss();
+        }
+        return data;
     }
 
     public synchronized void put(DataKey key, Data value) {
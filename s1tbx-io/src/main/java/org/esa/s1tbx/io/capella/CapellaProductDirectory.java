@@ -34,7 +34,6 @@ import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DateFormat;
 import java.util.Map;
 
@@ -159,9 +158,9 @@ public class CapellaProductDirectory extends JSONProductDirectory {
                     imgStream = new FileImageInputStream(file);
                 } else {
                     final Dimension bandDimensions = new Dimension(width, height);
-                    final InputStream inStream = getInputStream(imgPath);
-                    if (inStream.available() > 0) {
-                        imgStream = ImageIOFile.createImageInputStream(inStream, bandDimensions);
+                    final ImageInputStream zipStream = getImageInputStream(imgPath, bandDimensions);
+                    if (hasImageData(zipStream)) {
+                        imgStream = zipStream;
                     }
                 }
                 if(imgStream != null) {
@@ -16,6 +16,7 @@
 package org.esa.s1tbx.io.capella;
 
 import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s1tbx.commons.io.IOMetrics;
 import org.esa.s1tbx.commons.io.ImageIOFile;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.io.DataCache;
@@ -44,6 +45,7 @@ public class CapellaProductReader extends SARReader {
 
     private CapellaProductDirectory dataDir;
     private final DataCache cache;
+    private final IOMetrics metrics;
 
     /**
      * Constructs a new abstract product reader.
@@ -53,7 +55,8 @@ public class CapellaProductReader extends SARReader {
      */
     public CapellaProductReader(final ProductReaderPlugIn readerPlugIn) {
         super(readerPlugIn);
-        cache = new DataCache();
+        metrics = getIOMetrics();
+        cache = new DataCache(metrics);
     }
 
 
@@ -82,17 +85,20 @@ public class CapellaProductReader extends SARReader {
             throw new IOException("InputStream not supported");
         }
 
+        final long openStart = System.nanoTime();
         final Path path = getPathFromInput(input);
         File metadataFile = CapellaProductReaderPlugIn.findMetadataFile(path);
 
         dataDir = new CapellaProductDirectory(metadataFile);
         dataDir.readProductDirectory();
         final Product product = dataDir.createProduct();
+        metrics.addMetadataTime(System.nanoTime() - openStart);
 
         addCommonSARMetadata(product);
         product.getGcpGroup();
         product.setFileLocation(metadataFile);
         product.setProductReader(this);
+        metrics.addOpenTime(System.nanoTime() - openStart);
 
         return product;
     }
@@ -110,6 +116,7 @@ public class CapellaProductReader extends SARReader {
             return;
         }
 
+        final long decodeStart = System.nanoTime();
         final int[] srcArray;
         final ImageIOFile.BandInfo bandInfo = dataDir.getBandInfo(destBand);
 
@@ -151,11 +158,22 @@ public class CapellaProductReader extends SARReader {
                 }
             }
         }
+        metrics.addDecodeTime(destBand.getName(), System.nanoTime() - decodeStart);
     }
 
-    private synchronized DataCache.Data readRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
-                                                 int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
-                                                 final Rectangle destRect) {
+    private DataCache.Data readRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
+                                    int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
+                                    final Rectangle destRect) {
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            metrics.addLockWait(System.nanoTime() - waitStart);
+            return decodeRect(datakey, bandInfo, sourceOffsetX, sourceOffsetY, sourceStepX, sourceStepY, destRect);
+        }
+    }
+
+    private DataCache.Data decodeRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
+                                      int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
+                                      final Rectangle destRect) {
         try {
             final ImageReader imageReader = bandInfo.img.getReader();
             final ImageReadParam readParam = imageReader.getDefaultReadParam();
@@ -20,6 +20,7 @@ import org.apache.commons.math3.util.FastMath;
 import org.esa.s1tbx.commons.io.AbstractProductDirectory;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.io.netcdf.NcAttributeMap;
+import org.esa.s1tbx.io.netcdf.NetCDFBlockReader;
 import org.esa.s1tbx.io.netcdf.NcRasterDim;
 import org.esa.s1tbx.io.netcdf.NcVariableMap;
 import org.esa.s1tbx.io.netcdf.NetCDFReader;
@@ -43,8 +44,6 @@ import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
 import org.jdom2.Document;
 import org.jdom2.Element;
-import ucar.ma2.Array;
-import ucar.ma2.InvalidRangeException;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 
@@ -63,6 +62,7 @@ import java.util.Map;
 public class CosmoSkymedReader extends SARReader {
 
     private NetcdfFile netcdfFile = null;
+    private NetCDFBlockReader blockReader = null;
     private Product product = null;
     private NcVariableMap variableMap = null;
     private boolean yFlipped = false;
@@ -87,6 +87,7 @@ public class CosmoSkymedReader extends SARReader {
     private void initReader() {
         product = null;
         netcdfFile = null;
+        blockReader = null;
         variableMap = null;
     }
 
@@ -124,6 +125,7 @@ public class CosmoSkymedReader extends SARReader {
             final Variable[] tiePointGridVariables = NetCDFUtils.getTiePointGridVariables(variableListMap, rasterVariables);
 
             this.netcdfFile = netcdfFile;
+            blockReader = new NetCDFBlockReader(inputPath.toFile().getAbsolutePath());
             variableMap = new NcVariableMap(rasterVariables);
             yFlipped = false;
 
@@ -170,6 +172,8 @@ public class CosmoSkymedReader extends SARReader {
             variableMap = null;
             netcdfFile.close();
             netcdfFile = null;
+            blockReader.close();
+            blockReader = null;
         }
         super.close();
     }
@@ -804,35 +808,14 @@ public class CosmoSkymedReader extends SARReader {
         final int y0 = yFlipped ? (sceneHeight - 1) - sourceOffsetY : sourceOffsetY;
 
         final Variable variable = bandMap.get(destBand);
-        final int rank = variable.getRank();
-        final int[] origin = new int[rank];
-        final int[] shape = new int[rank];
-        for (int i = 0; i < rank; i++) {
-            shape[i] = 1;
-            origin[i] = 0;
-        }
-        shape[0] = 1;
-        shape[1] = destWidth;
-        origin[1] = sourceOffsetX;
-        if (isComplex && destBand.getUnit().equals(Unit.IMAGINARY)) {
-            origin[2] = 1;
-        }
+        final int component = isComplex && destBand.getUnit().equals(Unit.IMAGINARY) ? 1 : 0;
 
-        pm.beginTask("Reading data from band " + destBand.getName(), destHeight);
+        pm.beginTask("Reading data from band " + destBand.getName(), 1);
         try {
-            for (int y = 0; y < destHeight; y++) {
-                origin[0] = yFlipped ? y0 - y : y0 + y;
-                final Array array;
-                synchronized (netcdfFile) {
-                    array = variable.read(origin, shape);
-                }
-                System.arraycopy(array.getStorage(), 0, destBuffer.getElems(), y * destWidth, destWidth);
-                pm.worked(1);
-            }
-        } catch (InvalidRangeException e) {
-            final IOException ioException = new IOException(e.getMessage());
-            ioException.initCause(e);
-            throw ioException;
+            // i and q of complex products are split from the same cached block
+            blockReader.readRect(variable, component, sourceOffsetX, y0, destWidth, destHeight, yFlipped,
+                                 destBuffer.getElems());
+            pm.worked(1);
         } finally {
             pm.done();
         }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.gamma;
+
+import org.esa.snap.core.datamodel.ProductData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes raster regions to big endian GAMMA image files.
+ * <p>
+ * Regions are encoded into a per-thread direct buffer and written with positional writes, so that tiles of the
+ * same file are written concurrently without a lock. The lines of a region are encoded in groups which fill the
+ * buffer. A group is written with one write when the region spans whole lines and with one write per line otherwise.
+ */
+public final class GammaRasterWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private GammaRasterWriter() {
+    }
+
+    /**
+     * Write a region of a band in its own data type.
+     *
+     * @param channel     the image file
+     * @param data        the samples of the region
+     * @param offsetX     the region
+     * @param offsetY     the region
+     * @param width       the region
+     * @param height      the region
+     * @param rasterWidth the width of the band
+     * @throws IOException on write error
+     */
+    public static void writeRegion(final FileChannel channel, final ProductData data,
+                                   final int offsetX, final int offsetY, final int width, final int height,
+                                   final int rasterWidth) throws IOException {
+        final Object elems = data.getElems();
+        final int elemSize = data.getElemSize();
+        final Scratch s = scratch.get();
+        final ByteBuffer buf = s.getBuffer(width * elemSize);
+        final int linesPerGroup = buf.capacity() / (width * elemSize);
+
+        for (int line = 0; line < height; line += linesPerGroup) {
+            final int numLines = Math.min(linesPerGroup, height - line);
+            buf.clear();
+            putSamples(buf, elems, line * width, numLines * width);
+            buf.flip();
+            write(channel, buf, offsetX, offsetY + line, width, numLines, rasterWidth, elemSize);
+        }
+    }
+
+    /**
+     * Write a region of a complex band as interleaved I and Q samples.
+     *
+     * @param channel     the image file
+     * @param iData       the I samples of the region
+     * @param qData       the Q samples of the region
+     * @param elemSize    4 to write FCOMPLEX, 2 to write SCOMPLEX
+     * @param offsetX     the region
+     * @param offsetY     the region
+     * @param width       the region
+     * @param height      the region
+     * @param rasterWidth the width of the band
+     * @throws IOException on write error
+     */
+    public static void writeComplexRegion(final FileChannel channel, final ProductData iData, final ProductData qData,
+                                          final int elemSize,
+                                          final int offsetX, final int offsetY, final int width, final int height,
+                                          final int rasterWidth) throws IOException {
+        final int pixelSize = 2 * elemSize;
+        final Scratch s = scratch.get();
+        final ByteBuffer buf = s.getBuffer(width * pixelSize);
+        final int linesPerGroup = buf.capacity() / (width * pixelSize);
+
+        for (int line = 0; line < height; line += linesPerGroup) {
+            final int numLines = Math.min(linesPerGroup, height - line);
+            final int n = numLines * width;
+            final int srcPos = line * width;
+            buf.clear();
+            if (elemSize >= 4) {
+                final float[] iq = s.getFloats(2 * n);
+                interleave(iData, srcPos, iq, 0, n);
+                interleave(qData, srcPos, iq, 1, n);
+                buf.asFloatBuffer().put(iq, 0, 2 * n);
+            } else {
+                final short[] iq = s.getShorts(2 * n);
+                interleave(iData, srcPos, iq, 0, n);
+                interleave(qData, srcPos, iq, 1, n);
+                buf.asShortBuffer().put(iq, 0, 2 * n);
+            }
+            buf.limit(n * pixelSize);
+            write(channel, buf, offsetX, offsetY + line, width, numLines, rasterWidth, pixelSize);
+        }
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer buf,
+                              final int offsetX, final int offsetY, final int width, final int numLines,
+                              final int rasterWidth, final int pixelSize) throws IOException {
+        if (width == rasterWidth) {
+            writeFully(channel, buf, (long) offsetY * rasterWidth * pixelSize);
+            return;
+        }
+        final int lineSize = width * pixelSize;
+        for (int i = 0; i < numLines; ++i) {
+            buf.limit((i + 1) * lineSize);
+            buf.position(i * lineSize);
+            writeFully(channel, buf, ((long) (offsetY + i) * rasterWidth + offsetX) * pixelSize);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buf, final long position)
+            throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    /**
+     * Bulk copy samples into the buffer, which converts them to its byte order.
+     */
+    private static void putSamples(final ByteBuffer buf, final Object elems, final int offset, final int length) {
+        if (elems instanceof byte[]) {
+            buf.put((byte[]) elems, offset, length);
+        } else if (elems instanceof short[]) {
+            buf.asShortBuffer().put((short[]) elems, offset, length);
+            buf.position(buf.position() + 2 * length);
+        } else if (elems instanceof int[]) {
+            buf.asIntBuffer().put((int[]) elems, offset, length);
+            buf.position(buf.position() + 4 * length);
+        } else if (elems instanceof float[]) {
+            buf.asFloatBuffer().put((float[]) elems, offset, length);
+            buf.position(buf.position() + 4 * length);
+        } else if (elems instanceof double[]) {
+            buf.asDoubleBuffer().put((double[]) elems, offset, length);
+            buf.position(buf.position() + 8 * length);
+        } else {
+            throw new IllegalArgumentException("Unsupported raster data " + elems.getClass());
+        }
+    }
+
+    /**
+     * Copy n samples to every other element of dst starting at dst[start].
+     */
+    private static void interleave(final ProductData src, final int srcPos, final float[] dst, final int start,
+                                   final int n) {
+        final Object elems = src.getElems();
+        if (elems instanceof float[]) {
+            final float[] f = (float[]) elems;
+            for (int k = 0, d = start; k < n; ++k, d += 2) {
+                dst[d] = f[srcPos + k];
+            }
+        } else if (elems instanceof short[] && !src.isUnsigned()) {
+            final short[] sh = (short[]) elems;
+            for (int k = 0, d = start; k < n; ++k, d += 2) {
+                dst[d] = sh[srcPos + k];
+            }
+        } else {
+            for (int k = 0, d = start; k < n; ++k, d += 2) {
+                dst[d] = src.getElemFloatAt(srcPos + k);
+            }
+        }
+    }
+
+    private static void interleave(final ProductData src, final int srcPos, final short[] dst, final int start,
+                                   final int n) {
+        final Object elems = src.getElems();
+        if (elems instanceof short[]) {
+            final short[] sh = (short[]) elems;
+            for (int k = 0, d = start; k < n; ++k, d += 2) {
+                dst[d] = sh[srcPos + k];
+            }
+        } else {
+            for (int k = 0, d = start; k < n; ++k, d += 2) {
+                dst[d] = (short) src.getElemFloatAt(srcPos + k);
+            }
+        }
+    }
+
+    private static final class Scratch {
+        private ByteBuffer buffer;
+        private float[] floats = new float[0];
+        private short[] shorts = new short[0];
+
+        /**
+         * @return a buffer holding at least one line
+         */
+        ByteBuffer getBuffer(final int lineSize) {
+            if (buffer == null || buffer.capacity() < lineSize) {
+                buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, lineSize)).order(ByteOrder.BIG_ENDIAN);
+            }
+            return buffer;
+        }
+
+        float[] getFloats(final int n) {
+            if (floats.length < n) {
+                floats = new float[n];
+            }
+            return floats;
+        }
+
+        short[] getShorts(final int n) {
+            if (shorts.length < n) {
+                shorts = new short[n];
+            }
+            return shorts;
+        }
+    }
+}
@@ -2,8 +2,8 @@ package org.esa.s1tbx.io.gamma.pyrate;
 
 import com.bc.ceres.core.ProgressMonitor;
 import com.bc.ceres.glevel.MultiLevelImage;
-import org.esa.s1tbx.commons.io.FileImageOutputStreamExtImpl;
 import org.esa.s1tbx.io.gamma.GammaProductWriter;
+import org.esa.s1tbx.io.gamma.GammaRasterWriter;
 import org.esa.s1tbx.io.gamma.header.GammaConstants;
 import org.esa.s1tbx.io.gamma.header.HeaderDEMWriter;
 import org.esa.s1tbx.io.gamma.pyrate.pyrateheader.*;
@@ -12,8 +12,6 @@ import org.esa.s1tbx.io.gamma.header.HeaderWriter;
 import org.esa.snap.core.dataio.AbstractProductWriter;
 import org.esa.snap.core.dataio.ProductWriterPlugIn;
 import org.esa.snap.core.datamodel.*;
-import org.esa.snap.core.gpf.Tile;
-import org.esa.snap.core.gpf.internal.TileImpl;
 import org.esa.snap.core.util.Guardian;
 import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.io.FileUtils;
@@ -21,13 +19,13 @@ import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.datamodel.Unit;
 
 
-import javax.imageio.stream.ImageOutputStream;
 import java.awt.*;
 import java.awt.image.Raster;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Map;
@@ -36,7 +34,7 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
     private File outputDir;
     private File outputFile;
     private Product srcProduct;
-    private Map<Band, ImageOutputStream> bandOutputStreams;
+    private Map<Band, FileChannel> bandOutputChannels;
     private PyRateHeaderWriter headerWriter;
     private String doubleDate = "";
     protected String baseFileName;
@@ -96,80 +94,40 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
         headerWriter.writeParFile();
     }
 
-    private ImageOutputStream createImageOutputStream(final Band band) throws IOException {
-        final ImageOutputStream out = new FileImageOutputStreamExtImpl(getValidImageFile(band));
-        out.setByteOrder(ByteOrder.BIG_ENDIAN);
-        return out;
-    }
-
     /**
      * {@inheritDoc}
      */
-    public synchronized void writeBandRasterData(Band sourceBand,
-                                                 int sourceOffsetX, int sourceOffsetY,
-                                                 int sourceWidth, int sourceHeight,
-                                                 ProductData sourceBuffer,
-                                                 ProgressMonitor pm) throws IOException {
+    public void writeBandRasterData(Band sourceBand,
+                                    int sourceOffsetX, int sourceOffsetY,
+                                    int sourceWidth, int sourceHeight,
+                                    ProductData sourceBuffer,
+                                    ProgressMonitor pm) throws IOException {
         Guardian.assertNotNull("sourceBand", sourceBand);
         Guardian.assertNotNull("sourceBuffer", sourceBuffer);
         final int sourceBandWidth = sourceBand.getRasterWidth();
         final int elemSize = headerWriter.getHighestElemSize();
 
-        if (sourceBand.getName().toLowerCase().contains("phase")){
-            if( ! sourceBand.getName().toLowerCase().contains(doubleDate)){
-                sourceBand.setName(sourceBand.getName() + "_" + doubleDate);
+        final FileChannel channel;
+        synchronized (this) {
+            // rename before the channel is opened as the band name gives the file name
+            if (sourceBand.getName().toLowerCase().contains("phase")){
+                if( ! sourceBand.getName().toLowerCase().contains(doubleDate)){
+                    sourceBand.setName(sourceBand.getName() + "_" + doubleDate);
+                }
             }
+            channel = getOrCreateChannel(sourceBand);
         }
-
-        final ImageOutputStream outputStream = getOrCreateImageOutputStream(sourceBand);
         pm.beginTask("Writing band '" + sourceBand.getName() + "'...", sourceHeight);
         try {
             if (isComplex(sourceBand)) {
-                int numInterleaved = 2;
                 final Rectangle rect = new Rectangle(sourceOffsetX, sourceOffsetY, sourceWidth, sourceHeight);
-                final Tile sourceTile = getSourceTile(getComplexSrcBand(sourceBand), rect);
-                final ProductData qSourceBuffer = sourceTile.getRawSamples();
-                int srcCnt = 0;
-
-                if (elemSize >= 4) {
-                    final float[] destBuffer = new float[sourceWidth * numInterleaved];
-                    for (long y = sourceOffsetY; y < sourceOffsetY + sourceHeight; ++y) {
-                        int dstCnt = 0;
-                        for (int x = sourceOffsetX; x < sourceOffsetX + sourceWidth; ++x) {
-
-                            destBuffer[dstCnt++] = sourceBuffer.getElemFloatAt(srcCnt);
-                            destBuffer[dstCnt++] = qSourceBuffer.getElemFloatAt(srcCnt);
-                            srcCnt++;
-                        }
-
-                        outputStream.seek(elemSize * (y * sourceBandWidth + sourceOffsetX) * numInterleaved);
-                        outputStream.writeFloats(destBuffer, 0, destBuffer.length);
-                    }
-                } else {
-                    final short[] destBuffer = new short[sourceWidth * numInterleaved];
-                    for (long y = sourceOffsetY; y < sourceOffsetY + sourceHeight; ++y) {
-                        int dstCnt = 0;
-                        for (int x = sourceOffsetX; x < sourceOffsetX + sourceWidth; ++x) {
+                final ProductData qSourceBuffer = getSourceData(getComplexSrcBand(sourceBand), rect);
 
-                            destBuffer[dstCnt++] = (short) sourceBuffer.getElemFloatAt(srcCnt);
-                            destBuffer[dstCnt++] = (short) qSourceBuffer.getElemFloatAt(srcCnt);
-                            srcCnt++;
-                        }
-
-                        outputStream.seek(elemSize * (y * sourceBandWidth + sourceOffsetX) * numInterleaved);
-                        outputStream.writeShorts(destBuffer, 0, destBuffer.length);
-                    }
-                }
-
-                //System.out.println(rect.toString());
+                GammaRasterWriter.writeComplexRegion(channel, sourceBuffer, qSourceBuffer, elemSize,
+                        sourceOffsetX, sourceOffsetY, sourceWidth, sourceHeight, sourceBandWidth);
             } else {
-                //todo
-                long outputPos = (long) sourceOffsetY * (long) sourceBandWidth + sourceOffsetX;
-                final long max = sourceHeight * sourceWidth;
-                for (int sourcePos = 0; sourcePos < max; sourcePos += sourceWidth) {
-                    sourceBuffer.writeTo(sourcePos, sourceWidth, outputStream, outputPos);
-                    outputPos += sourceBandWidth;
-                }
+                GammaRasterWriter.writeRegion(channel, sourceBuffer,
+                        sourceOffsetX, sourceOffsetY, sourceWidth, sourceHeight, sourceBandWidth);
             }
             pm.worked(1);
         } finally {
@@ -187,12 +145,13 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
         return srcProduct.getBand(name);
     }
 
-    protected static Tile getSourceTile(RasterDataNode rasterDataNode, Rectangle region) {
-        MultiLevelImage image = rasterDataNode.getSourceImage();
+    protected static ProductData getSourceData(final RasterDataNode rasterDataNode, final Rectangle region) {
+        final MultiLevelImage image = rasterDataNode.getSourceImage();
 
-        Raster awtRaster = image.getData(region); // Note: copyData is NOT faster!
+        final Raster awtRaster = image.getData(region); // Note: copyData is NOT faster!
 
-        return new TileImpl(rasterDataNode, awtRaster);
+        return ProductData.createInstance(rasterDataNode.getDataType(),
+                awtRaster.getDataElements(region.x, region.y, region.width, region.height, null));
     }
 
     /**
@@ -200,12 +159,12 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
      *
      * @throws java.io.IOException on failure
      */
-    public void flush() throws IOException {
-        if (bandOutputStreams == null) {
+    public synchronized void flush() throws IOException {
+        if (bandOutputChannels == null) {
             return;
         }
-        for (Object o : bandOutputStreams.values()) {
-            ((ImageOutputStream) o).flush();
+        for (FileChannel channel : bandOutputChannels.values()) {
+            channel.force(false);
         }
     }
 
@@ -214,15 +173,15 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
      *
      * @throws java.io.IOException on failure
      */
-    public void close() throws IOException {
-        if (bandOutputStreams == null) {
+    public synchronized void close() throws IOException {
+        if (bandOutputChannels == null) {
             return;
         }
-        for (Object o : bandOutputStreams.values()) {
-            ((ImageOutputStream) o).close();
+        for (FileChannel channel : bandOutputChannels.values()) {
+            channel.close();
         }
-        bandOutputStreams.clear();
-        bandOutputStreams = null;
+        bandOutputChannels.clear();
+        bandOutputChannels = null;
     }
 
     /**
@@ -237,26 +196,19 @@ public class PyRateGammaProductWriter  extends AbstractProductWriter {
     }
 
     /**
-     * Returns the data output stream associated with the given <code>Band</code>. If no stream exists, one is created
+     * Returns the file channel associated with the given <code>Band</code>. If no channel exists, one is created
      * and fed into the hash map
      */
-    protected ImageOutputStream getOrCreateImageOutputStream(final Band band) throws IOException {
-        ImageOutputStream outputStream = getImageOutputStream(band);
-        if (outputStream == null) {
-            outputStream = createImageOutputStream(band);
-            if (bandOutputStreams == null) {
-                bandOutputStreams = new HashMap<>();
-            }
-            bandOutputStreams.put(band, outputStream);
+    protected synchronized FileChannel getOrCreateChannel(final Band band) throws IOException {
+        if (bandOutputChannels == null) {
+            bandOutputChannels = new HashMap<>();
         }
-        return outputStream;
-    }
-
-    private ImageOutputStream getImageOutputStream(final Band band) {
-        if (bandOutputStreams != null) {
-            return bandOutputStreams.get(band);
+        FileChannel channel = bandOutputChannels.get(band);
+        if (channel == null) {
+            channel = FileChannel.open(getValidImageFile(band).toPath(), StandardOpenOption.WRITE);
+            bandOutputChannels.put(band, channel);
         }
-        return null;
+        return channel;
     }
 
     @Override
@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.netcdf;
+
+import org.esa.snap.core.util.SystemUtils;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads rectangles of raster variables through a small cache of blocks.
+ * <p>
+ * A variable is either 2D (lines, samples) or 3D with interleaved components in the last dimension, such as the
+ * i and q samples of complex products. A block is a band of full raster lines aligned to the HDF5 chunk rows
+ * of the variable. It is read with one call and its components are split once, so the i and q bands of a
+ * complex variable are served from the same read.
+ * <p>
+ * Blocks are read through a pool of file handles, so different blocks can be read concurrently while
+ * readers of a block that is being loaded wait for it. Closing the reader closes the idle handles at once and the
+ * handles of reads in flight when they are released.
+ */
+public class NetCDFBlockReader implements Closeable {
+
+    private static final String CHUNK_SIZES = "_ChunkSizes";
+    private static final int MIN_BLOCK_LINES = 64;
+    private static final long DEFAULT_CACHE_SIZE = 64L * 1024 * 1024;
+
+    private final String location;
+    private final int maxOpenFiles;
+    private final long maxCacheBytes;
+
+    // the pool of file handles, guarded by openFiles
+    private final List<NetcdfFile> openFiles = new ArrayList<>();
+    private final Deque<NetcdfFile> idleFiles = new ArrayDeque<>();
+    private final Map<Variable, Layout> layoutMap = new ConcurrentHashMap<>();
+    private final LinkedHashMap<BlockKey, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cacheBytes = 0;
+    private boolean closed = false;
+
+    public NetCDFBlockReader(final String location) {
+        this(location, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param location      the file to read
+     * @param maxOpenFiles  maximum number of file handles used for concurrent reads
+     * @param maxCacheBytes size of the block cache
+     */
+    public NetCDFBlockReader(final String location, final int maxOpenFiles, final long maxCacheBytes) {
+        this.location = location;
+        this.maxOpenFiles = maxOpenFiles;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * Read a rectangle of one component of a variable.
+     *
+     * @param variable  the variable, 2D or 3D with the components in the last dimension
+     * @param component the component to read, 0 for 2D variables
+     * @param x         the first sample
+     * @param y         the line of the first destination row
+     * @param width     number of samples per line
+     * @param height    number of lines
+     * @param flipY     if true the destination rows are read from lines y, y - 1, ...
+     * @param dest      primitive array of the type of the variable receiving width * height samples
+     * @throws IOException on read error
+     */
+    public void readRect(final Variable variable, final int component,
+                         final int x, final int y, final int width, final int height, final boolean flipY,
+                         final Object dest) throws IOException {
+
+        final Layout layout = getLayout(variable);
+        if (component < 0 || component >= layout.numComponents) {
+            throw new IOException("Invalid component " + component + " for variable " + layout.name);
+        }
+
+        Block block = null;
+        for (int r = 0; r < height; ++r) {
+            final int line = flipY ? y - r : y + r;
+            if (block == null || line < block.firstLine || line >= block.firstLine + block.numLines) {
+                block = getBlock(layout, line / layout.blockLines);
+            }
+            System.arraycopy(block.components[component], (line - block.firstLine) * layout.width + x,
+                             dest, r * width, width);
+        }
+    }
+
+    private Layout getLayout(final Variable variable) throws IOException {
+        Layout layout = layoutMap.get(variable);
+        if (layout == null) {
+            layout = new Layout(variable);
+            layoutMap.put(variable, layout);
+        }
+        return layout;
+    }
+
+    private Block getBlock(final Layout layout, final int blockIndex) throws IOException {
+
+        final BlockKey key = new BlockKey(layout.name, blockIndex);
+        FutureTask<Block> task = null;
+        CacheEntry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+            if (entry == null) {
+                task = new FutureTask<>(() -> readBlock(layout, blockIndex));
+                entry = new CacheEntry(task, layout.getBlockBytes(blockIndex));
+                cache.put(key, entry);
+                cacheBytes += entry.bytes;
+                evict(key);
+            }
+        }
+
+        if (task != null) {
+            task.run();
+        }
+
+        try {
+            return entry.future.get();
+        } catch (ExecutionException e) {
+            synchronized (cache) {
+                if (cache.get(key) == entry) {
+                    cache.remove(key);
+                    cacheBytes -= entry.bytes;
+                }
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to read " + layout.name + ": " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading " + layout.name);
+        }
+    }
+
+    /**
+     * Remove least recently used blocks until the cache fits. Must be called holding the cache lock.
+     */
+    private void evict(final BlockKey keep) {
+        final Iterator<Map.Entry<BlockKey, CacheEntry>> it = cache.entrySet().iterator();
+        while (cacheBytes > maxCacheBytes && it.hasNext()) {
+            final Map.Entry<BlockKey, CacheEntry> e = it.next();
+            if (!e.getKey().equals(keep)) {
+                cacheBytes -= e.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    private Block readBlock(final Layout layout, final int blockIndex) throws IOException {
+
+        final int firstLine = blockIndex * layout.blockLines;
+        final int numLines = Math.min(layout.blockLines, layout.height - firstLine);
+        final int[] origin = new int[layout.rank];
+        final int[] shape = new int[layout.rank];
+        origin[0] = firstLine;
+        shape[0] = numLines;
+        shape[1] = layout.width;
+        if (layout.rank == 3) {
+            shape[2] = layout.numComponents;
+        }
+
+        final Array array;
+        final NetcdfFile file = acquireFile();
+        try {
+            final Variable variable = file.findVariable(layout.name);
+            if (variable == null) {
+                throw new IOException("Variable " + layout.name + " not found in " + location);
+            }
+            array = variable.read(origin, shape);
+        } catch (InvalidRangeException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            releaseFile(file);
+        }
+
+        final Object storage = array.getStorage();
+        final Object[] components = new Object[layout.numComponents];
+        if (layout.numComponents == 1) {
+            components[0] = storage;
+        } else {
+            final int n = numLines * layout.width;
+            for (int c = 0; c < components.length; c++) {
+                components[c] = java.lang.reflect.Array.newInstance(storage.getClass().getComponentType(), n);
+                split(storage, c, layout.numComponents, components[c], n);
+            }
+        }
+        return new Block(firstLine, numLines, components);
+    }
+
+    /**
+     * Copy every numComponents-th element of src starting at component into dest.
+     */
+    private static void split(final Object src, final int component, final int numComponents,
+                              final Object dest, final int n) {
+        if (src instanceof short[]) {
+            final short[] s = (short[]) src;
+            final short[] d = (short[]) dest;
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                d[i] = s[j];
+            }
+        } else if (src instanceof float[]) {
+            final float[] s = (float[]) src;
+            final float[] d = (float[]) dest;
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                d[i] = s[j];
+            }
+        } else if (src instanceof int[]) {
+            final int[] s = (int[]) src;
+            final int[] d = (int[]) dest;
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                d[i] = s[j];
+            }
+        } else if (src instanceof byte[]) {
+            final byte[] s = (byte[]) src;
+            final byte[] d = (byte[]) dest;
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                d[i] = s[j];
+            }
+        } else if (src instanceof double[]) {
+            final double[] s = (double[]) src;
+            final double[] d = (double[]) dest;
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                d[i] = s[j];
+            }
+        } else {
+            for (int i = 0, j = component; i < n; ++i, j += numComponents) {
+                java.lang.reflect.Array.set(dest, i, java.lang.reflect.Array.get(src, j));
+            }
+        }
+    }
+
+    private NetcdfFile acquireFile() throws IOException {
+        synchronized (openFiles) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Reader for " + location + " is closed");
+                }
+                final NetcdfFile file = idleFiles.poll();
+                if (file != null) {
+                    return file;
+                }
+                if (openFiles.size() < maxOpenFiles) {
+                    final NetcdfFile newFile = NetcdfFile.open(location);
+                    openFiles.add(newFile);
+                    return newFile;
+                }
+                try {
+                    openFiles.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for " + location);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return a handle to the pool, or close it if the reader was closed while it was in use.
+     */
+    private void releaseFile(final NetcdfFile file) {
+        synchronized (openFiles) {
+            if (!closed) {
+                idleFiles.push(file);
+                openFiles.notify();
+                return;
+            }
+            openFiles.remove(file);
+        }
+        closeFile(file);
+    }
+
+    @Override
+    public void close() {
+        synchronized (cache) {
+            cache.clear();
+            cacheBytes = 0;
+        }
+        final List<NetcdfFile> toClose;
+        synchronized (openFiles) {
+            closed = true;
+            toClose = new ArrayList<>(idleFiles);
+            openFiles.removeAll(idleFiles);
+            idleFiles.clear();
+            openFiles.notifyAll();
+        }
+        for (NetcdfFile file : toClose) {
+            closeFile(file);
+        }
+    }
+
+    private void closeFile(final NetcdfFile file) {
+        try {
+            file.close();
+        } catch (IOException e) {
+            SystemUtils.LOG.warning("Unable to close " + location + ": " + e.getMessage());
+        }
+    }
+
+    private static int getChunkLines(final Variable variable) {
+        final Attribute chunkSizes = variable.findAttribute(CHUNK_SIZES);
+        if (chunkSizes != null && chunkSizes.getLength() > 0 && chunkSizes.getNumericValue(0) != null) {
+            return Math.max(1, chunkSizes.getNumericValue(0).intValue());
+        }
+        return 1;
+    }
+
+    private final static class Layout {
+        final String name;
+        final int rank;
+        final int height;
+        final int width;
+        final int numComponents;
+        final int elemSize;
+        final int blockLines;
+
+        Layout(final Variable variable) throws IOException {
+            name = variable.getFullNameEscaped();
+            rank = variable.getRank();
+            if (rank != 2 && rank != 3) {
+                throw new IOException("Unsupported rank " + rank + " of variable " + name);
+            }
+            height = variable.getDimension(0).getLength();
+            width = variable.getDimension(1).getLength();
+            numComponents = rank == 3 ? variable.getDimension(2).getLength() : 1;
+            elemSize = variable.getElementSize();
+
+            final int chunkLines = getChunkLines(variable);
+            blockLines = Math.min(height, chunkLines * ((MIN_BLOCK_LINES + chunkLines - 1) / chunkLines));
+        }
+
+        long getBlockBytes(final int blockIndex) {
+            final int numLines = Math.min(blockLines, height - blockIndex * blockLines);
+            return (long) numLines * width * numComponents * elemSize;
+        }
+    }
+
+    private final static class Block {
+        final int firstLine;
+        final int numLines;
+        final Object[] components;  // one primitive array of numLines * width samples per component
+
+        Block(final int firstLine, final int numLines, final Object[] components) {
+            this.firstLine = firstLine;
+            this.numLines = numLines;
+            this.components = components;
+        }
+    }
+
+    private final static class CacheEntry {
+        final Future<Block> future;
+        final long bytes;
+
+        CacheEntry(final Future<Block> future, final long bytes) {
+            this.future = future;
+            this.bytes = bytes;
+        }
+    }
+
+    private final static class BlockKey {
+        final String name;
+        final int index;
+
+        BlockKey(final String name, final int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof BlockKey)) return false;
+            final BlockKey other = (BlockKey) o;
+            return index == other.index && name.equals(other.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, index);
+        }
+    }
+}
@@ -30,28 +30,60 @@ import org.esa.snap.core.datamodel.TiePointGeoCoding;
 import org.esa.snap.core.datamodel.TiePointGrid;
 import org.esa.snap.core.datamodel.VirtualBand;
 import org.esa.snap.core.util.StringUtils;
+import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.io.FileUtils;
+import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
+import org.esa.snap.runtime.Config;
 import ucar.ma2.Array;
-import ucar.ma2.ArrayDouble;
 import ucar.ma2.DataType;
-import ucar.ma2.Index;
 import ucar.ma2.InvalidRangeException;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
 import ucar.nc2.Group;
 import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes products to NetCDF.
+ * <p>
+ * The NetCDF file writer is not thread safe, so all raster writes are done by a single writer thread. Compute
+ * threads copy a tile into a hyperslab buffer reused per band and queue it, and only wait when the bounded queue
+ * is full.
+ */
+public class NetCDFWriter extends AbstractProductWriter {
 
+    private static final String ORIGINAL_METADATA_PROPERTY = "s1tbx.writers.netcdf.originalMetadata";
+    private static final String MAX_METADATA_ATTRIBUTES_PROPERTY = "s1tbx.writers.netcdf.maxMetadataAttributes";
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long WAIT_SECONDS = 1;   // between checks that the writer thread is alive
 
-public class NetCDFWriter extends AbstractProductWriter {
+    private static final WriteTask END = () -> {
+    };
 
     private File outputFile = null;
     private NetcdfFileWriter netCDFWriteable = null;
 
+    private final Map<Band, Variable> bandVariables = new ConcurrentHashMap<>();
+    private final Map<Band, Queue<double[]>> bandBuffers = new ConcurrentHashMap<>();
+    private BlockingQueue<WriteTask> writeQueue;
+    private volatile Thread writerThread;
+    private volatile IOException writeError;
+
+    private int metadataAttributesLeft;
+
     /**
      * Construct a new instance of a product writer for the given product writer plug-in.
      *
@@ -77,16 +109,14 @@ public class NetCDFWriter extends AbstractProductWriter {
         return null;
     }
 
-    private static float[][] getTiePointGridData(final TiePointGrid tpg) {
-        int gridWidth = tpg.getGridWidth();
-        int gridHeight = tpg.getGridHeight();
-        final float[][] data = new float[gridHeight][gridWidth];
+    private static float[] getTiePointGridData(final TiePointGrid tpg) {
         final ProductData gridData = tpg.getGridData();
-        for (int y = 0; y < gridHeight; ++y) {
-            final int stride = y * gridWidth;
-            for (int x = 0; x < gridWidth; ++x) {
-                data[y][x] = gridData.getElemFloatAt(stride + x);
-            }
+        if (gridData.getElems() instanceof float[]) {
+            return (float[]) gridData.getElems();
+        }
+        final float[] data = new float[gridData.getNumElems()];
+        for (int i = 0; i < data.length; ++i) {
+            data[i] = gridData.getElemFloatAt(i);
         }
         return data;
     }
@@ -177,12 +207,8 @@ public class NetCDFWriter extends AbstractProductWriter {
                 netCDFWriteable.write(NetcdfConstants.LON_VAR_NAMES[0], lonNcArray);
 
                 for (TiePointGrid tpg : product.getTiePointGrids()) {
-                    final float[][] tiePointGridData = getTiePointGridData(tpg);
-                    final int[] tiePointShape = new int[tiePointGridData.length];
-                    for (int i=0; i<tiePointGridData.length; ++i) {
-                        tiePointShape[i] = tiePointGridData[i].length;
-                    }
-                    final Array tpgArray = Array.factory(DataType.FLOAT, tiePointShape, tiePointGridData);
+                    final int[] tiePointShape = new int[]{tpg.getGridHeight(), tpg.getGridWidth()};
+                    final Array tpgArray = Array.factory(DataType.FLOAT, tiePointShape, getTiePointGridData(tpg));
                     netCDFWriteable.write(tpg.getName(), tpgArray);
                 }
             } catch (InvalidRangeException rangeE) {
@@ -190,6 +216,75 @@ public class NetCDFWriter extends AbstractProductWriter {
                 throw new RuntimeException(rangeE);
             }
         }
+
+        writeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        writerThread = new Thread(this::runWriter, "NetCDF writer " + outputFile.getName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    private void runWriter() {
+        boolean interrupted = false;
+        while (true) {
+            final WriteTask task;
+            try {
+                task = writeQueue.take();
+            } catch (InterruptedException e) {
+                // keep draining, as producers and close() wait on this thread
+                interrupted = true;
+                continue;
+            }
+            if (task == END) {
+                break;
+            }
+            try {
+                task.write();
+            } catch (Throwable e) {
+                if (writeError == null) {
+                    writeError = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(final WriteTask task) throws IOException {
+        checkWriteError();
+        try {
+            put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted writing " + outputFile);
+        }
+    }
+
+    /**
+     * Queue a task for the writer thread, failing rather than blocking on a full queue if the thread has stopped.
+     */
+    private void put(final WriteTask task) throws IOException, InterruptedException {
+        final Thread thread = writerThread;
+        if (thread == null) {
+            throw new IOException(outputFile + " is closed");
+        }
+        checkWriterAlive(thread);
+        while (!writeQueue.offer(task, WAIT_SECONDS, TimeUnit.SECONDS)) {
+            checkWriterAlive(thread);
+        }
+    }
+
+    private void checkWriterAlive(final Thread thread) throws IOException {
+        if (!thread.isAlive()) {
+            checkWriteError();
+            throw new IOException("The writer thread of " + outputFile + " has stopped");
+        }
+    }
+
+    private void checkWriteError() throws IOException {
+        if (writeError != null) {
+            throw writeError;
+        }
     }
 
     /**
@@ -203,29 +298,55 @@ public class NetCDFWriter extends AbstractProductWriter {
                                     final ProductData regionData,
                                     ProgressMonitor pm) throws IOException {
 
-        final int[] origin = new int[2];
-        origin[1] = regionX;
-        origin[0] = regionY;
-        try {
+        final Variable variable = getVariable(sourceBand);
+        final int[] origin = new int[]{regionY, regionX};
+        final int numElems = regionWidth * regionHeight;
 
-            final ArrayDouble dataTemp = new ArrayDouble.D2(regionHeight, regionWidth);
-            final Index index = dataTemp.getIndex();
+        final Queue<double[]> buffers = bandBuffers.computeIfAbsent(sourceBand, b -> new ConcurrentLinkedQueue<>());
+        double[] buffer = buffers.poll();
+        if (buffer == null || buffer.length != numElems) {
+            buffer = new double[numElems];
+        }
+        copyElems(regionData, buffer);
 
-            int i = 0;
-            for (int y = 0; y < regionHeight; ++y) {
-                for (int x = 0; x < regionWidth; ++x) {
-                    index.set(y, x);
-                    dataTemp.set(index, regionData.getElemDoubleAt(i));
-                    ++i;
-                }
+        final double[] data = buffer;
+        final Array array = Array.factory(DataType.DOUBLE, new int[]{regionHeight, regionWidth}, data);
+        enqueue(() -> {
+            try {
+                netCDFWriteable.write(variable, origin, array);
+            } finally {
+                buffers.offer(data);
             }
+        });
+        pm.worked(1);
+    }
 
-            netCDFWriteable.write(sourceBand.getName(), origin, dataTemp);
-
-            pm.worked(1);
+    private Variable getVariable(final Band band) throws IOException {
+        Variable variable = bandVariables.get(band);
+        if (variable == null) {
+            final String name = StringUtils.createValidName(band.getName(), new char[]{'_'}, '_');
+            variable = netCDFWriteable.findVariable(name);
+            if (variable == null) {
+                throw new IOException("No variable for band " + band.getName());
+            }
+            bandVariables.put(band, variable);
+        }
+        return variable;
+    }
 
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
+    private static void copyElems(final ProductData regionData, final double[] dest) {
+        final Object elems = regionData.getElems();
+        if (elems instanceof double[]) {
+            System.arraycopy(elems, 0, dest, 0, dest.length);
+        } else if (elems instanceof float[]) {
+            final float[] src = (float[]) elems;
+            for (int i = 0; i < dest.length; ++i) {
+                dest[i] = src[i];
+            }
+        } else {
+            for (int i = 0; i < dest.length; ++i) {
+                dest[i] = regionData.getElemDoubleAt(i);
+            }
         }
     }
 
@@ -244,7 +365,47 @@ public class NetCDFWriter extends AbstractProductWriter {
      * @throws java.io.IOException on failure
      */
     public void close() throws IOException {
-        netCDFWriteable.close();
+        if (netCDFWriteable == null) {
+            return;
+        }
+        // the writer thread is always stopped before the file is closed, as it may still be writing to it
+        IOException error = null;
+        boolean interrupted = false;
+        final Thread thread = writerThread;
+        if (thread != null) {
+            while (true) {
+                try {
+                    put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (IOException e) {
+                    error = e;
+                    break;
+                }
+            }
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            writerThread = null;
+        }
+        try {
+            netCDFWriteable.close();
+        } finally {
+            netCDFWriteable = null;
+            bandBuffers.clear();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        checkWriteError();
+        if (error != null) {
+            throw error;
+        }
     }
 
     /**
@@ -256,7 +417,28 @@ public class NetCDFWriter extends AbstractProductWriter {
         if (netCDFWriteable == null) {
             return;
         }
-        netCDFWriteable.flush();
+        final Thread thread = writerThread;
+        if (thread == null) {
+            netCDFWriteable.flush();
+            return;
+        }
+        final CountDownLatch flushed = new CountDownLatch(1);
+        enqueue(() -> {
+            try {
+                netCDFWriteable.flush();
+            } finally {
+                flushed.countDown();
+            }
+        });
+        try {
+            while (!flushed.await(WAIT_SECONDS, TimeUnit.SECONDS)) {
+                checkWriterAlive(thread);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted flushing " + outputFile);
+        }
+        checkWriteError();
     }
 
     /**
@@ -270,47 +452,50 @@ public class NetCDFWriter extends AbstractProductWriter {
         return !(node instanceof VirtualBand) && super.shouldWrite(node);
     }
 
+    /**
+     * Copy the metadata tree into groups. The original product metadata is skipped if
+     * s1tbx.writers.netcdf.originalMetadata is false and s1tbx.writers.netcdf.maxMetadataAttributes caps the
+     * number of attributes written.
+     */
     private void addMetadata(final Product product) {
+        final boolean writeOriginalMetadata = Config.instance().preferences().getBoolean(ORIGINAL_METADATA_PROPERTY, true);
+        final int maxAttributes = Config.instance().preferences().getInt(MAX_METADATA_ATTRIBUTES_PROPERTY, 0);
+        metadataAttributesLeft = maxAttributes > 0 ? maxAttributes : Integer.MAX_VALUE;
 
         final MetadataElement rootElem = product.getMetadataRoot();
         final Group rootGroup = netCDFWriteable.getNetcdfFile().getRootGroup();
 
-        addElements(rootElem, rootGroup);
         addAttributes(rootElem, rootGroup);
+        addElements(rootElem, rootGroup, writeOriginalMetadata ? null : AbstractMetadata.ORIGINAL_PRODUCT_METADATA);
+
+        if (metadataAttributesLeft == 0) {
+            SystemUtils.LOG.warning("NetCDFWriter: metadata limited to " + maxAttributes + " attributes");
+        }
     }
 
-    private void addElements(final MetadataElement parentElem, final Group parentGroup) {
+    private void addElements(final MetadataElement parentElem, final Group parentGroup, final String skipElement) {
+        final int numElems = parentElem.getNumElements();
+        final Map<String, Integer> nameCnt = new HashMap<>();
+        for (int i = 0; i < numElems; i++) {
+            nameCnt.merge(parentElem.getElementAt(i).getName(), 1, Integer::sum);
+        }
         final Map<String, Integer> dupeCntElem = new HashMap<>();
 
-        for (int i = 0; i < parentElem.getNumElements(); i++) {
+        for (int i = 0; i < numElems && metadataAttributesLeft > 0; i++) {
             final MetadataElement subElement = parentElem.getElementAt(i);
             final String name = subElement.getName();
-            boolean lastDupe = true;
-            for (int j = i + 1; j < parentElem.getNumElements(); j++) {
-                final MetadataElement dupeElement = parentElem.getElementAt(j);
-                if (dupeElement.getName().equals(name)) {
-                    Integer cnt = dupeCntElem.get(name);
-                    if (cnt == null)
-                        dupeCntElem.put(name, 1);
-                    else {
-                        ++cnt;
-                        dupeCntElem.put(name, cnt);
-                    }
-                    lastDupe = false;
-                    break;
-                }
+            if (name.equals(skipElement)) {
+                continue;
             }
-            if (dupeCntElem.get(name) != null) {
-                int cnt = dupeCntElem.get(name);
-                if (lastDupe)
-                    ++cnt;
-                subElement.setName(subElement.getName() + "." + cnt);
+            if (nameCnt.get(name) > 1) {
+                final int cnt = dupeCntElem.merge(name, 1, Integer::sum);
+                subElement.setName(name + "." + cnt);
             }
 
             final Group newGroup = new Group(netCDFWriteable.getNetcdfFile(), parentGroup, subElement.getName());
             addAttributes(subElement, newGroup);
             // recurse
-            addElements(subElement, newGroup);
+            addElements(subElement, newGroup, null);
 
             //netCDFWriteable.addGroup(parentGroup, newGroup);
             if (parentGroup != null) {
@@ -322,43 +507,35 @@ public class NetCDFWriter extends AbstractProductWriter {
     }
 
     private void addAttributes(final MetadataElement elem, final Group newGroup) {
+        final int numAttribs = elem.getNumAttributes();
+        final Map<String, Integer> nameCnt = new HashMap<>();
+        for (int i = 0; i < numAttribs; i++) {
+            nameCnt.merge(elem.getAttributeAt(i).getName(), 1, Integer::sum);
+        }
         final Map<String, Integer> dupeCntAtrib = new HashMap<>();
 
-        for (int i = 0; i < elem.getNumAttributes(); i++) {
+        for (int i = 0; i < numAttribs && metadataAttributesLeft > 0; i++, metadataAttributesLeft--) {
             final MetadataAttribute attrib = elem.getAttributeAt(i);
             final String name = attrib.getName();
-            boolean lastDupe = true;
-            for (int j = i + 1; j < elem.getNumAttributes(); j++) {
-                final MetadataAttribute dupeAtrib = elem.getAttributeAt(j);
-                if (dupeAtrib.getName().equals(name)) {
-                    Integer cnt = dupeCntAtrib.get(name);
-                    if (cnt == null)
-                        dupeCntAtrib.put(name, 1);
-                    else {
-                        ++cnt;
-                        dupeCntAtrib.put(name, cnt);
-                    }
-                    lastDupe = false;
-                    break;
-                }
-            }
-            if (dupeCntAtrib.get(name) != null) {
-                int cnt = dupeCntAtrib.get(name);
-                if (lastDupe)
-                    ++cnt;
-                attrib.setName(attrib.getName() + "." + cnt);
+            if (nameCnt.get(name) > 1) {
+                final int cnt = dupeCntAtrib.merge(name, 1, Integer::sum);
+                attrib.setName(name + "." + cnt);
             }
 
             final int dataType = attrib.getDataType();
             if (dataType == ProductData.TYPE_FLOAT32 || dataType == ProductData.TYPE_FLOAT64) {
-                newGroup.addAttribute(new Attribute(attrib.getName(), elem.getAttributeDouble(attrib.getName(), 0)));
+                newGroup.addAttribute(new Attribute(attrib.getName(), attrib.getData().getElemDouble()));
             } else if (dataType == ProductData.TYPE_UTC || attrib.getData() instanceof ProductData.UTC) {
-                newGroup.addAttribute(new Attribute(attrib.getName(), NetcdfConstants.UTC_TYPE + elem.getAttributeString(attrib.getName(), " ")));
+                newGroup.addAttribute(new Attribute(attrib.getName(), NetcdfConstants.UTC_TYPE + attrib.getData().getElemString()));
             } else if (dataType > ProductData.TYPE_INT8 && dataType < ProductData.TYPE_FLOAT32) {
-                newGroup.addAttribute(new Attribute(attrib.getName(), elem.getAttributeInt(attrib.getName(), 0)));
+                newGroup.addAttribute(new Attribute(attrib.getName(), attrib.getData().getElemInt()));
             } else {
-                newGroup.addAttribute(new Attribute(attrib.getName(), elem.getAttributeString(attrib.getName(), " ")));
+                newGroup.addAttribute(new Attribute(attrib.getName(), attrib.getData().getElemString()));
             }
         }
     }
+
+    private interface WriteTask {
+        void write() throws IOException, InvalidRangeException;
+    }
 }
@@ -39,7 +39,6 @@ import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.text.DateFormat;
@@ -87,12 +86,8 @@ public class Risat1ProductDirectory extends PropertyMapProductDirectory {
     protected void addImageFile(final String imgPath, final MetadataElement newRoot) throws IOException {
         final String name = getBandFileNameFromImage(imgPath);
         if (((name.endsWith("tif") || name.endsWith("tiff"))) && name.contains("imagery")) {
-            final InputStream inStream = getInputStream(imgPath);
-            if (inStream.available() > 0) {
-                final ImageInputStream imgStream = ImageIOFile.createImageInputStream(inStream, getBandDimensions(newRoot, name));
-                if (imgStream == null)
-                    throw new IOException("Unable to open " + imgPath);
-
+            final ImageInputStream imgStream = getImageInputStream(imgPath, getBandDimensions(newRoot, name));
+            if (hasImageData(imgStream)) {
                 if (!isCompressed()) {
                     final ProductReader geoTiffReader = geoTiffPlugIn.createReaderInstance();
                     Product bProduct = geoTiffReader.readProductNodes(new File(getBaseDir(), imgPath), null);
@@ -439,9 +439,8 @@ public class SaocomProductDirectory extends XMLProductDirectory {
         if (!imgPath.toLowerCase().endsWith(".xml")) {
             try {
                 final Dimension bandDimensions = new Dimension(width, height);
-                final InputStream inStream = getInputStream(imgPath);
-                if (inStream.available() > 0) {
-                    final ImageInputStream imgStream = ImageIOFile.createImageInputStream(inStream, bandDimensions);
+                final ImageInputStream imgStream = getImageInputStream(imgPath, bandDimensions);
+                if (hasImageData(imgStream)) {
 
                     final ImageIOFile img = new ImageIOFile(imgPath, imgStream, GeoTiffUtils.getTiffIIOReader(imgStream),
                             1, 1, ProductData.TYPE_FLOAT64, productInputFile);
@@ -33,7 +33,6 @@ import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DateFormat;
 import java.util.Set;
 import java.util.StringTokenizer;
@@ -73,12 +72,8 @@ public class SeaSatProductDirectory extends XMLProductDirectory {
         final String name = getBandFileNameFromImage(imgPath);
         if (name.endsWith("tif")) {
             final Dimension bandDimensions = getBandDimensions(newRoot, name);
-            final InputStream inStream = getInputStream(imgPath);
-            if(inStream.available() > 0) {
-                final ImageInputStream imgStream = ImageIOFile.createImageInputStream(inStream, bandDimensions);
-                if (imgStream == null)
-                    throw new IOException("Unable to open " + imgPath);
-
+            final ImageInputStream imgStream = getImageInputStream(imgPath, bandDimensions);
+            if (hasImageData(imgStream)) {
                 final ImageIOFile img;
                 if (isSLC()) {
                     img = new ImageIOFile(name, imgStream, GeoTiffUtils.getTiffIIOReader(imgStream),
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.sentinel1;
+
+import org.esa.snap.core.datamodel.MetadataAttribute;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.SystemUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the fixed length records of a Sentinel-1 Level-0 annotation or index file.
+ * <p>
+ * The file is memory mapped and fields are decoded from their offsets in the compiled record layout, so records
+ * can be read in any order and only the ones needed are turned into metadata. The file stays open and mapped
+ * until it is closed.
+ */
+public final class Level0RecordFile implements Closeable {
+
+    private final File file;
+    private final Level0RecordLayout layout;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private final int numRecords;
+
+    Level0RecordFile(final File file, final Level0RecordLayout layout) throws IOException {
+        this.file = file;
+        this.layout = layout;
+        if (layout.getRecordLength() == 0) {
+            throw new IOException("Empty record layout for " + file.getName());
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file.getName() + " is too large");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        // According to Product Specs, binary data is stored in Big Endian format.
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        numRecords = (int) (buffer.capacity() / layout.getRecordLength());
+    }
+
+    /**
+     * Unmap and close the file. Records can no longer be read afterwards.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        final MappedByteBuffer mapped = buffer;
+        buffer = null;
+        unmap(mapped);
+        channel.close();
+    }
+
+    /**
+     * Release a mapping now rather than when it is garbage collected, through the cleaner of the buffer on Java 8
+     * and Unsafe.invokeCleaner on later versions. The mapping is left to the garbage collector if neither works.
+     */
+    private static void unmap(final MappedByteBuffer mapped) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                invokeCleaner = null;
+            }
+            if (invokeCleaner != null) {
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            } else {
+                final Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(mapped);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            }
+        } catch (Exception e) {
+            SystemUtils.LOG.fine("Unable to unmap Level-0 record file: " + e.getMessage());
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getNumRecords() {
+        return numRecords;
+    }
+
+    public String[] getFieldNames() {
+        final String[] names = new String[layout.getNumFields()];
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = layout.getName(i);
+        }
+        return names;
+    }
+
+    /**
+     * @param record the record number
+     * @param field  the field name, the first occurrence is used for repeated fields
+     * @return the value of an integer field
+     */
+    public long getLong(final int record, final String field) {
+        return layout.getLong(getBuffer(), recordOffset(record), fieldIndex(field));
+    }
+
+    /**
+     * @param record the record number
+     * @param field  the field name, the first occurrence is used for repeated fields
+     * @return the value of a field as double
+     */
+    public double getDouble(final int record, final String field) {
+        return layout.getDouble(getBuffer(), recordOffset(record), fieldIndex(field));
+    }
+
+    /**
+     * Binary search of a field which increases with the record number, such as a time.
+     *
+     * @param field the field name
+     * @param value the value to look for
+     * @return the first record whose field is not less than value, or the number of records if there is none
+     */
+    public int findRecord(final String field, final double value) {
+        final ByteBuffer buffer = getBuffer();
+        final int f = fieldIndex(field);
+        int lo = 0;
+        int hi = numRecords;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (layout.getDouble(buffer, recordOffset(mid), f) < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Decode a record into metadata.
+     *
+     * @param record the record number
+     * @param name   the name of the element
+     * @return an element with one attribute per field occurrence
+     */
+    public MetadataElement createRecordElement(final int record, final String name) {
+        final ByteBuffer buffer = getBuffer();
+        final int offset = recordOffset(record);
+        final MetadataElement elem = new MetadataElement(name);
+        final int numFields = layout.getNumFields();
+        for (int f = 0; f < numFields; ++f) {
+            final String fieldName = layout.getName(f);
+            final MetadataAttribute attr;
+            switch (layout.getKind(f)) {
+                case Level0RecordLayout.UINT16:
+                    attr = new MetadataAttribute(fieldName, ProductData.TYPE_UINT16);
+                    attr.getData().setElemInt((int) layout.getLong(buffer, offset, f));
+                    break;
+                case Level0RecordLayout.UINT32:
+                    attr = new MetadataAttribute(fieldName, ProductData.TYPE_UINT32);
+                    attr.getData().setElemUInt(layout.getLong(buffer, offset, f));
+                    break;
+                case Level0RecordLayout.UINT64:
+                    // kept as text as there is no unsigned long attribute type
+                    attr = new MetadataAttribute(fieldName, ProductData.TYPE_ASCII);
+                    attr.getData().setElems(String.valueOf(layout.getLong(buffer, offset, f)));
+                    break;
+                case Level0RecordLayout.FLOAT64:
+                    attr = new MetadataAttribute(fieldName, ProductData.TYPE_FLOAT64);
+                    attr.getData().setElemDouble(layout.getDouble(buffer, offset, f));
+                    break;
+                default:
+                    attr = new MetadataAttribute(fieldName, ProductData.TYPE_UINT8);
+                    attr.getData().setElemInt((int) layout.getLong(buffer, offset, f));
+                    break;
+            }
+            elem.addAttribute(attr);
+        }
+        return elem;
+    }
+
+    private synchronized ByteBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException(file.getName() + " is closed");
+        }
+        return buffer;
+    }
+
+    private int recordOffset(final int record) {
+        if (record < 0 || record >= numRecords) {
+            throw new IndexOutOfBoundsException("Record " + record + " of " + numRecords + " in " + file.getName());
+        }
+        return record * layout.getRecordLength();
+    }
+
+    private int fieldIndex(final String field) {
+        final int f = layout.indexOf(field);
+        if (f < 0) {
+            throw new IllegalArgumentException("Unknown field " + field + " in " + file.getName());
+        }
+        return f;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.sentinel1;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed layout of a Sentinel-1 Level-0 annotation or index record, compiled once from the XML schema.
+ * <p>
+ * Every occurrence of a schema element becomes a field with its byte offset in the record. Bit fields share
+ * the byte of the preceding bit field unless they start at bit 0.
+ */
+final class Level0RecordLayout {
+
+    static final int UINT8 = 0;
+    static final int UINT16 = 1;
+    static final int UINT32 = 2;
+    static final int UINT64 = 3;
+    static final int FLOAT64 = 4;
+    static final int BITS = 5;
+
+    private static final int[] KIND_SIZE = {1, 2, 4, 8, 8};
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private int[] kinds = new int[16];
+    private int[] offsets = new int[16];
+    private int[] startBits = new int[16];
+    private int[] numBits = new int[16];
+    private int recordLength = 0;
+
+    /**
+     * Append a field of one of the byte aligned kinds.
+     */
+    void addField(final String name, final int kind) {
+        final int i = add(name, kind, recordLength);
+        recordLength += KIND_SIZE[kind];
+        startBits[i] = 0;
+        numBits[i] = 8 * KIND_SIZE[kind];
+    }
+
+    /**
+     * Append a bit field within one byte.
+     */
+    void addBitField(final String name, final int startBit, final int bits) {
+        final boolean newByte = names.isEmpty() || startBit == 0 || kinds[names.size() - 1] != BITS;
+        if (newByte) {
+            ++recordLength;
+        }
+        final int i = add(name, BITS, recordLength - 1);
+        startBits[i] = startBit;
+        numBits[i] = bits;
+    }
+
+    private int add(final String name, final int kind, final int offset) {
+        final int i = names.size();
+        if (i == kinds.length) {
+            kinds = Arrays.copyOf(kinds, 2 * i);
+            offsets = Arrays.copyOf(offsets, 2 * i);
+            startBits = Arrays.copyOf(startBits, 2 * i);
+            numBits = Arrays.copyOf(numBits, 2 * i);
+        }
+        names.add(name);
+        fieldIndex.putIfAbsent(name, i);
+        kinds[i] = kind;
+        offsets[i] = offset;
+        return i;
+    }
+
+    int getRecordLength() {
+        return recordLength;
+    }
+
+    int getNumFields() {
+        return names.size();
+    }
+
+    String getName(final int field) {
+        return names.get(field);
+    }
+
+    int getKind(final int field) {
+        return kinds[field];
+    }
+
+    /**
+     * @return the first field with the given name or -1
+     */
+    int indexOf(final String name) {
+        final Integer i = fieldIndex.get(name);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Decode an integer field. Unsigned 64 bit values above Long.MAX_VALUE are returned negative.
+     *
+     * @param buf          big endian record data
+     * @param recordOffset the offset of the record in buf
+     * @param field        the field index
+     */
+    long getLong(final ByteBuffer buf, final int recordOffset, final int field) {
+        final int pos = recordOffset + offsets[field];
+        switch (kinds[field]) {
+            case UINT8:
+                return buf.get(pos) & 0xFF;
+            case UINT16:
+                return buf.getShort(pos) & 0xFFFF;
+            case UINT32:
+                return buf.getInt(pos) & 0xFFFFFFFFL;
+            case UINT64:
+                return buf.getLong(pos);
+            case FLOAT64:
+                return (long) buf.getDouble(pos);
+            default:
+                return extract(buf.get(pos), startBits[field], numBits[field]);
+        }
+    }
+
+    double getDouble(final ByteBuffer buf, final int recordOffset, final int field) {
+        if (kinds[field] == FLOAT64) {
+            return buf.getDouble(recordOffset + offsets[field]);
+        }
+        return getLong(buf, recordOffset, field);
+    }
+
+    private static int extract(final byte b, final int startBit, final int bits) {
+        return ((b & 0xFF) << startBit + 24) >>> (32 - bits);
+    }
+}
@@ -31,6 +31,7 @@ import org.esa.snap.engine_utilities.datamodel.Unit;
 import org.esa.snap.engine_utilities.eo.Constants;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
+import org.esa.snap.runtime.Config;
 
 import java.io.File;
 import java.io.IOException;
@@ -43,8 +44,11 @@ import java.util.Map;
  */
 public class Sentinel1Level0Directory extends XMLProductDirectory implements Sentinel1Directory {
 
+    private static final String READ_RECORDS_PROPERTY = "s1tbx.readers.sentinel1.level0.readRecords";
+
     private final transient Map<String, String> imgBandMetadataMap = new HashMap<>(4);
     private String acqMode = "";
+    private Sentinel1Level0Reader level0Reader = null;
 
     public Sentinel1Level0Directory(final File headerFile) {
         super(headerFile);
@@ -569,9 +573,28 @@ public class Sentinel1Level0Directory extends XMLProductDirectory implements Sen
 
     private void addBinaryDataToProduct(final MetadataElement root) {
 
-        final Sentinel1Level0Reader reader = new Sentinel1Level0Reader(getBaseDir(),
-                                                                       AbstractMetadata.addOriginalProductMetadata(root));
-        reader.readData();
+        level0Reader = new Sentinel1Level0Reader(getBaseDir(), AbstractMetadata.addOriginalProductMetadata(root));
+
+        // records are otherwise added to the metadata on demand through getLevel0Reader()
+        if (Config.instance().preferences().getBoolean(READ_RECORDS_PROPERTY, true)) {
+            level0Reader.readData();
+        }
+    }
+
+    /**
+     * @return the reader of the annotation and index records
+     */
+    public Sentinel1Level0Reader getLevel0Reader() {
+        return level0Reader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (level0Reader != null) {
+            level0Reader.close();
+            level0Reader = null;
+        }
     }
 
     private void addGeoCodingForLevel0Products(final Product product) {
@@ -15,31 +15,33 @@
  */
 package org.esa.s1tbx.io.sentinel1;
 
-import org.esa.s1tbx.commons.io.FileImageInputStreamExtImpl;
-import org.esa.s1tbx.io.binary.BinaryFileReader;
-import org.esa.s1tbx.io.binary.IllegalBinaryFormatException;
 import org.esa.snap.core.datamodel.MetadataAttribute;
 import org.esa.snap.core.datamodel.MetadataElement;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.util.SystemUtils;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
-import javax.imageio.stream.ImageInputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * TBD
+ * Reads the annotation and index data components of a Sentinel-1 Level-0 product.
+ * <p>
+ * The record structure in the XML schemas is compiled once into a layout of field offsets and the binary
+ * files are memory mapped. Records are turned into metadata on demand, either all with readData() or a range
+ * of records such as those of a time window.
  */
 public class Sentinel1Level0Reader {
 
@@ -122,28 +124,33 @@ public class Sentinel1Level0Reader {
     private ArrayList<DataElement> annotElemList = new ArrayList<>();
     private ArrayList<DataElement> indexElemList = new ArrayList<>();
 
-    private class DataComponent {
+    private final Level0RecordLayout annotLayout;
+    private final Level0RecordLayout indexLayout;
 
-        private final BinaryFileReader reader;
-        private final ArrayList<DataElement> elemList;
+    private static class DataComponent {
+
+        private final Level0RecordFile recordFile;
         private final MetadataElement parentMetadataElem;
-        private final long numRecords;
+        private final String recordName;
+        private final BitSet recordsRead = new BitSet();
 
-        DataComponent(final BinaryFileReader reader, final ArrayList<DataElement> elemList, final MetadataElement parentMetadataElem, final long numRecords) {
+        DataComponent(final Level0RecordFile recordFile, final MetadataElement parentMetadataElem) {
 
-            this.reader = reader;
-            this.elemList = elemList;
+            this.recordFile = recordFile;
             this.parentMetadataElem = parentMetadataElem;
-            this.numRecords = numRecords;
+            final String parentName = parentMetadataElem.getName();
+            this.recordName = parentName.substring(0, parentName.length() - 1);
         }
     }
 
-    private ArrayList<DataComponent> dataComponents = new ArrayList<>();
+    private final Map<String, DataComponent> dataComponents = new LinkedHashMap<>();
 
     public Sentinel1Level0Reader(final File baseDir, final MetadataElement originalProductMetadata) {
 
         readXMLSchema(buildSchemaFilename(baseDir, ANNOT_SCHEMA_FILENAME), ANNOT_RECORD_NAME, annotElemList);
         readXMLSchema(buildSchemaFilename(baseDir, INDEX_SCHEMA_FILENAME), INDEX_RECORD_NAME, indexElemList);
+        annotLayout = compileLayout(annotElemList);
+        indexLayout = compileLayout(indexElemList);
 
         //  Metadata > Original_Product_Metadata > XFDU > dataObjectSection >
         //       dataObject > byteStream > fileLocation
@@ -199,7 +206,7 @@ public class Sentinel1Level0Reader {
 
             if (dataFilename.contains(ANNOT_PREFIX) || dataFilename.contains(INDEX_PREFIX)) {
 
-                final long numRecs = createBinaryReader(baseDir, dataFilename, recordElem);
+                final long numRecs = openRecordFile(baseDir, dataFilename, componentElem.getName(), recordElem);
                 numRecsAttr.getData().setElemUInt(numRecs);
             }
 
@@ -209,43 +216,59 @@ public class Sentinel1Level0Reader {
 
     }
 
-    private long createBinaryReader(final File baseDir, final String binDataFilename, MetadataElement metadataElement) {
+    private long openRecordFile(final File baseDir, final String binDataFilename, final String componentName,
+                                final MetadataElement metadataElement) {
 
         final File binDataFile = new File(baseDir.getAbsolutePath() + binDataFilename);
-
-        long numRecs = 0;
+        final Level0RecordLayout layout = binDataFilename.contains(ANNOT_PREFIX) ? annotLayout : indexLayout;
 
         try {
-            ImageInputStream imageInputStream = FileImageInputStreamExtImpl.createInputStream(binDataFile);
-
-            final BinaryFileReader binaryReader = new BinaryFileReader(imageInputStream);
+            final Level0RecordFile recordFile = new Level0RecordFile(binDataFile, layout);
+            dataComponents.put(componentName, new DataComponent(recordFile, metadataElement));
+            return recordFile.getNumRecords();
 
-            // According to Product Specs, binary data is stored in Big Endian format.
-            binaryReader.setByteOrder(ByteOrder.BIG_ENDIAN);
-
-            DataComponent dataComponent = null;
+        } catch (IOException e) {
 
-            final long filesize = binDataFile.length(); // bytes
+            SystemUtils.LOG.warning("Unable to open Level-0 record file " + binDataFile + ": " + e.getMessage());
+        }
 
-            if (binDataFilename.contains(ANNOT_PREFIX)) {
+        return 0;
+    }
 
-                numRecs = filesize / getTotalNumberOfBytes(annotElemList);
-                dataComponent = new DataComponent(binaryReader, annotElemList, metadataElement, numRecs);
+    private Level0RecordLayout compileLayout(final List<DataElement> elemList) {
 
-            } else if (binDataFilename.contains(INDEX_PREFIX)) {
+        final Level0RecordLayout layout = new Level0RecordLayout();
 
-                numRecs = filesize / getTotalNumberOfBytes(indexElemList);
-                dataComponent = new DataComponent(binaryReader, indexElemList, metadataElement, numRecs);
+        for (DataElement elem : elemList) {
+            for (int j = 0; j < elem.numOccurrences; j++) {
+                switch (elem.baseType) {
+                    case BOOLEAN_TAG_NAME:
+                    case UNSIGNED_BYTE_TAG_NAME:
+                        layout.addField(elem.name, Level0RecordLayout.UINT8);
+                        break;
+                    case UNSIGNED_SHORT_TAG_NAME:
+                        layout.addField(elem.name, Level0RecordLayout.UINT16);
+                        break;
+                    case UNSIGNED_INT_TAG_NAME:
+                        layout.addField(elem.name, Level0RecordLayout.UINT32);
+                        break;
+                    case UNSIGNED_LONG_TAG_NAME:
+                        layout.addField(elem.name, Level0RecordLayout.UINT64);
+                        break;
+                    case DOUBLE_TAG_NAME:
+                        layout.addField(elem.name, Level0RecordLayout.FLOAT64);
+                        break;
+                    case BIT_BASE_TYPE:
+                        layout.addBitField(elem.name, elem.startBit, elem.numBytes);
+                        break;
+                    default:
+                        SystemUtils.LOG.warning("Unknown Level-0 record field type " + elem.baseType + " of " + elem.name);
+                        break;
+                }
             }
-
-            dataComponents.add(dataComponent);
-
-        } catch (IOException e) {
-
-            System.out.println("Sentinel1Level0Reader.createBinaryReader: IOException " + e.getMessage());
         }
 
-        return numRecs;
+        return layout;
     }
 
     private String buildSchemaFilename(final File baseDir, final String schemaName) {
@@ -585,162 +608,81 @@ public class Sentinel1Level0Reader {
         System.out.println("End of " + listName);
     }
 
-    public void readData() {
-
-        //System.out.println("Sentinel1Level0Reader.readData: called");
+    /**
+     * @return the names of the annotation and index components, such as vv_annotation
+     */
+    public String[] getComponentNames() {
 
-        for (DataComponent d : dataComponents) {
-
-            //System.out.println("Sentinel1Level0Reader.readData: read one data component");
-            readBinaryData(d);
-        }
+        return dataComponents.keySet().toArray(new String[0]);
     }
 
-    private byte readOneBinaryElement(final BinaryFileReader reader,
-                                      final DataElement elem,
-                                      final DataElement prevElem,
-                                      final byte prevByte,
-                                      MetadataElement parentMetadataElem) {
-
-        //System.out.println("Sentinel1Level0Reader.readOneBinaryElement: read " + elem.name + " " + elem.baseType);
-
-        byte lastByteRead = 0;
-
-        try {
-            switch (elem.baseType) {
-                case BOOLEAN_TAG_NAME:
-                case UNSIGNED_BYTE_TAG_NAME: {
-                    final int val = reader.readUB1();
-                    //System.out.println(elem.name + " = " + val + "; " + elem.baseType + " (unsigned byte); pos = " + reader.getCurrentPos());
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_UINT8);
-                    ProductData productData = attr.getData();
-                    productData.setElemInt(val);
-                    parentMetadataElem.addAttribute(attr);
-                }
-                break;
-                case UNSIGNED_SHORT_TAG_NAME: {
-                    final int val = reader.readUB2();
-                    //System.out.println(elem.name + " = " + val + "; " + elem.baseType + " (unsigned short); pos = " + reader.getCurrentPos());
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_UINT16);
-                    ProductData productData = attr.getData();
-                    productData.setElemInt(val);
-                    parentMetadataElem.addAttribute(attr);
-                }
-                break;
-                case UNSIGNED_INT_TAG_NAME: {
-                    final long val = getUnsignedInt(reader.readB4());
-                    //System.out.println(elem.name + " = " + val + "; " + elem.baseType + " (unsigned int); pos = " + reader.getCurrentPos());
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_UINT32);
-                    ProductData productData = attr.getData();
-                    productData.setElemUInt(val);
-                    parentMetadataElem.addAttribute(attr);
-                }
-                break;
-                case UNSIGNED_LONG_TAG_NAME: {
-                    final byte[] bytes = new byte[8];
-                    reader.read(bytes);
-                    final BigInteger val = new BigInteger(bytes);
-                    final String valStr = String.valueOf(val);
-                    //System.out.println(elem.name + " = " + val + "; " + elem.baseType + " (unsigned long);  pos = " + reader.getCurrentPos());
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_ASCII);
-                    ProductData productData = attr.getData();
-                    productData.setElems(valStr);
-                    parentMetadataElem.addAttribute(attr);
-                    // To get back the unsigned long value, one can get the String back and create a BigInteger with it.
-                    // Constructor of BigInteger takes a String.
-                }
-                break;
-                case DOUBLE_TAG_NAME: {
-                    final double val = (double) reader.readB8();
-                    //System.out.println(elem.name + " = " + val + "; " + elem.baseType + " (double); pos" + reader.getCurrentPos());
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_FLOAT64);
-                    ProductData productData = attr.getData();
-                    productData.setElemDouble(val);
-                    parentMetadataElem.addAttribute(attr);
-                }
-                break;
-                case BIT_BASE_TYPE: {
-                    if (prevElem == null || elem.startBit == 0) {
-                        final byte[] oneByte = new byte[1];
-                        reader.read(oneByte);
-                        lastByteRead = oneByte[0];
-                        //System.out.println(elem.name + " = "  + Integer.toBinaryString(getInteger(lastByteRead)) + "; " + elem.baseType + " (unsigned int); pos = " + reader.getCurrentPos());
-                    } else {
-                        lastByteRead = prevByte;
-                    }
-
-                    final byte val = extract(lastByteRead, elem.startBit, elem.numBytes);
-
-                    MetadataAttribute attr = new MetadataAttribute(elem.name, ProductData.TYPE_UINT8);
-                    ProductData productData = attr.getData();
-                    productData.setElemInt(getInteger(val));
-                    parentMetadataElem.addAttribute(attr);
-                }
-                break;
-                default: {
-                    System.out.println("Sentinel1Level0Reader.readOneBinaryElement: ERROR Unknown baseType = " + elem.baseType);
-                }
-                break;
-            }
-
-        } catch (IOException e) {
+    /**
+     * @param componentName the name of an annotation or index component
+     * @return the records of the component or null if it was not found
+     */
+    public Level0RecordFile getRecordFile(final String componentName) {
 
-            System.out.println("Sentinel1Level0Reader.readOneBinaryElement: IOException " + e.getMessage());
+        final DataComponent d = dataComponents.get(componentName);
+        return d == null ? null : d.recordFile;
+    }
 
-        } catch (IllegalBinaryFormatException e) {
+    /**
+     * Add all records of all components to the metadata.
+     */
+    public void readData() {
 
-            System.out.println("Sentinel1Level0Reader.readOneBinaryElement: IllegalBinaryFormatException " + e.getMessage());
+        for (DataComponent d : dataComponents.values()) {
+            readRecords(d, 0, d.recordFile.getNumRecords());
         }
-
-        return lastByteRead;
     }
 
-    private void readBinaryData(DataComponent dataComponent) {
-
-        final BinaryFileReader reader = dataComponent.reader;
-        final ArrayList<DataElement> elemList = dataComponent.elemList;
-        final MetadataElement parentMetadataElem = dataComponent.parentMetadataElem;
-
-        for (long i = 0; i < dataComponent.numRecords; i++) {
-
-            final String parentName = parentMetadataElem.getName();
-            final MetadataElement recMetaElem = new MetadataElement(parentName.substring(0, parentName.length() - 1) + i);
-            parentMetadataElem.addElement(recMetaElem);
-            /*
-            try {
-                System.out.println("readBinaryData: file pos = " + reader.getCurrentPos());
-            } catch (IOException e) {
-                System.out.println("readBinaryData: file pos = ERROR " + e.getMessage());
-            }
-            */
-            DataElement prevDataElem = null;
-            byte prevByte = 0;
-
-            for (DataElement elem : elemList) {
-
-                for (int j = 0; j < elem.numOccurrences; j++) {
-                    prevByte = readOneBinaryElement(reader, elem, prevDataElem, prevByte, recMetaElem);
-                    prevDataElem = elem;
-                }
-            }
+    /**
+     * Add the records of a component whose field lies within [start, end) to the metadata.
+     *
+     * @param componentName the name of an annotation or index component
+     * @param field         a field which increases with the record number, such as a time
+     * @param start         the start of the window
+     * @param end           the end of the window
+     */
+    public void readRecords(final String componentName, final String field, final double start, final double end) {
+
+        final DataComponent d = dataComponents.get(componentName);
+        if (d != null) {
+            readRecords(d, d.recordFile.findRecord(field, start), d.recordFile.findRecord(field, end));
         }
     }
 
-    private static long getUnsignedInt(final int x) {
-        return x & 0x00000000ffffffffL;
+    /**
+     * Add the records first to last - 1 of a component to the metadata.
+     *
+     * @param componentName the name of an annotation or index component
+     * @param first         the first record
+     * @param last          one past the last record
+     */
+    public void readRecords(final String componentName, final int first, final int last) {
+
+        final DataComponent d = dataComponents.get(componentName);
+        if (d != null) {
+            readRecords(d, first, last);
+        }
     }
 
-    private static int getInteger(final byte b) {
-        return b & 0xFF;
-    }
+    /**
+     * Unmap and close the record files of all components.
+     */
+    public void close() throws IOException {
 
-    private static byte extract(final byte b, final int startBit, final int numBits) {
+        for (DataComponent d : dataComponents.values()) {
+            d.recordFile.close();
+        }
+    }
 
-        // Assume int is 32-bit, byte is 8-bit
-        int result = getInteger(b) << startBit + 24;
-        result = result >>> (32 - numBits);
+    private static void readRecords(final DataComponent d, final int first, final int last) {
 
-        return (byte) result;
+        for (int i = d.recordsRead.nextClearBit(first); i < last; i = d.recordsRead.nextClearBit(i + 1)) {
+            d.parentMetadataElem.addElement(d.recordFile.createRecordElement(i, d.recordName + i));
+            d.recordsRead.set(i);
+        }
     }
 
     private static String extractPolarization(String filename) {
@@ -755,20 +697,4 @@ public class Sentinel1Level0Reader {
             return "";
         }
     }
-
-    private int getTotalNumberOfBytes(ArrayList<DataElement> elemList) {
-
-        int total = 0;
-
-        for (DataElement elem : elemList) {
-
-            if (!elem.baseType.equals(BIT_BASE_TYPE)) {
-                total += (elem.numBytes * elem.numOccurrences);
-            } else if (elem.startBit == 0) {
-                total += 1;
-            }
-        }
-
-        return total;
-    }
 }
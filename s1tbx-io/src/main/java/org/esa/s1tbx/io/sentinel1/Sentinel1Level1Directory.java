@@ -19,6 +19,7 @@ import org.esa.s1tbx.commons.io.ImageIOFile;
 import org.esa.s1tbx.commons.io.JSONProductDirectory;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.commons.io.XMLProductDirectory;
+import org.esa.s1tbx.commons.io.XMLStreamMetadata;
 import org.esa.s1tbx.io.geotiffxml.GeoTiffUtils;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.GeoCoding;
@@ -29,7 +30,6 @@ import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.datamodel.TiePointGeoCoding;
 import org.esa.snap.core.datamodel.TiePointGrid;
-import org.esa.snap.core.dataop.downloadable.XMLSupport;
 import org.esa.snap.core.util.SystemUtils;
 import org.esa.snap.core.util.io.FileUtils;
 import org.esa.snap.core.util.math.MathUtils;
@@ -39,8 +39,6 @@ import org.esa.snap.engine_utilities.datamodel.metadata.AbstractMetadataIO;
 import org.esa.snap.engine_utilities.eo.Constants;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
-import org.jdom2.Document;
-import org.jdom2.Element;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 
@@ -83,9 +81,8 @@ public class Sentinel1Level1Directory extends XMLProductDirectory implements Sen
         if ((name.endsWith("tiff"))) {
             try {
                 final Dimension bandDimensions = getBandDimensions(newRoot, imgBandMetadataMap.get(name));
-                final InputStream inStream = getInputStream(imgPath);
-                if(inStream.available() > 0) {
-                    final ImageInputStream imgStream = createImageInputStream(inStream, bandDimensions, isSLC());
+                final ImageInputStream imgStream = getImageInputStream(imgPath, bandDimensions);
+                if(hasImageData(imgStream)) {
 
                     final ImageIOFile img = new ImageIOFile(name, imgStream, GeoTiffUtils.getTiffIIOReader(imgStream),
                                 1, 1, ProductData.TYPE_INT32, productInputFile);
@@ -97,6 +94,11 @@ public class Sentinel1Level1Directory extends XMLProductDirectory implements Sen
         }
     }
 
+    @Override
+    protected ImageInputStream createImageInputStream(final InputStream inStream, final Dimension bandDimensions) throws IOException {
+        return createImageInputStream(inStream, bandDimensions, isSLC());
+    }
+
     public static ImageInputStream createImageInputStream(final InputStream inStream, final Dimension bandDimensions,
                                                           final boolean isSLC) throws IOException {
         final long maxMemory = Runtime.getRuntime().maxMemory() / 1024 / 1024;
@@ -391,14 +393,11 @@ public class Sentinel1Level1Directory extends XMLProductDirectory implements Sen
         if (filenames != null) {
             for (String metadataFile : filenames) {
 
-                final Document xmlDoc;
-                try (final InputStream is = getInputStream(annotFolder + '/' + metadataFile)) {
-                    xmlDoc = XMLSupport.LoadXML(is);
-                }
-                final Element rootElement = xmlDoc.getRootElement();
                 final MetadataElement nameElem = new MetadataElement(metadataFile);
                 annotationElement.addElement(nameElem);
-                AbstractMetadataIO.AddXMLMetadata(rootElement, nameElem);
+                try (final InputStream is = getInputStream(annotFolder + '/' + metadataFile)) {
+                    XMLStreamMetadata.addXMLMetadata(is, nameElem);
+                }
 
                 final MetadataElement prodElem = nameElem.getElement("product");
                 final MetadataElement adsHeader = prodElem.getElement("adsHeader");
@@ -544,15 +543,12 @@ public class Sentinel1Level1Directory extends XMLProductDirectory implements Sen
             for (String metadataFile : filenames) {
                 if (metadataFile.startsWith("calibration")) {
 
-                    final Document xmlDoc;
-                    try (final InputStream is = getInputStream(calibFolder + '/' + metadataFile)) {
-                        xmlDoc = XMLSupport.LoadXML(is);
-                    }
-                    final Element rootElement = xmlDoc.getRootElement();
                     final String name = metadataFile.replace("calibration-", "");
                     final MetadataElement nameElem = new MetadataElement(name);
                     calibrationElement.addElement(nameElem);
-                    AbstractMetadataIO.AddXMLMetadata(rootElement, nameElem);
+                    try (final InputStream is = getInputStream(calibFolder + '/' + metadataFile)) {
+                        XMLStreamMetadata.addXMLMetadata(is, nameElem);
+                    }
                 }
             }
         }
@@ -572,15 +568,12 @@ public class Sentinel1Level1Directory extends XMLProductDirectory implements Sen
             for (String metadataFile : filenames) {
                 if (metadataFile.startsWith("noise")) {
 
-                    final Document xmlDoc;
-                    try (final InputStream is = getInputStream(calibFolder + '/' + metadataFile)) {
-                        xmlDoc = XMLSupport.LoadXML(is);
-                    }
-                    final Element rootElement = xmlDoc.getRootElement();
                     final String name = metadataFile.replace("noise-", "");
                     final MetadataElement nameElem = new MetadataElement(name);
                     noiseElement.addElement(nameElem);
-                    AbstractMetadataIO.AddXMLMetadata(rootElement, nameElem);
+                    try (final InputStream is = getInputStream(calibFolder + '/' + metadataFile)) {
+                        XMLStreamMetadata.addXMLMetadata(is, nameElem);
+                    }
                 }
             }
         }
@@ -16,6 +16,7 @@
 package org.esa.s1tbx.io.sentinel1;
 
 import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s1tbx.commons.io.IOMetrics;
 import org.esa.s1tbx.commons.io.ImageIOFile;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.io.DataCache;
@@ -45,6 +46,7 @@ public class Sentinel1ProductReader extends SARReader {
     protected Sentinel1Directory dataDir = null;
     private final DataCache cache;
     private final boolean useCache = true;
+    private final IOMetrics metrics;
 
     /**
      * Constructs a new abstract product reader.
@@ -54,7 +56,8 @@ public class Sentinel1ProductReader extends SARReader {
      */
     public Sentinel1ProductReader(final ProductReaderPlugIn readerPlugIn) {
         super(readerPlugIn);
-        cache = useCache ? new DataCache() : null;
+        metrics = getIOMetrics();
+        cache = useCache ? new DataCache(metrics) : null;
     }
 
     /**
@@ -88,6 +91,7 @@ public class Sentinel1ProductReader extends SARReader {
     @Override
     protected Product readProductNodesImpl() throws IOException {
 
+        final long openStart = System.nanoTime();
         try {
             Path inputPath = getPathFromInput(getInput());
             if(Files.isDirectory(inputPath)) {
@@ -107,8 +111,16 @@ public class Sentinel1ProductReader extends SARReader {
             if (dataDir == null) {
                 Sentinel1ProductReaderPlugIn.validateInput(inputPath);
             }
+            final long metadataStart = System.nanoTime();
             dataDir.readProductDirectory();
             final Product product = dataDir.createProduct();
+            metrics.addMetadataTime(System.nanoTime() - metadataStart);
+            for (Band band : product.getBands()) {
+                final ImageIOFile.BandInfo bandInfo = dataDir.getBandInfo(band);
+                if (bandInfo != null && bandInfo.img != null) {
+                    bandInfo.img.setIOMetrics(metrics);
+                }
+            }
             product.setFileLocation(inputPath.toFile());
             product.setProductReader(this);
             if (dataDir instanceof Sentinel1Level2Directory) {
@@ -120,6 +132,7 @@ public class Sentinel1ProductReader extends SARReader {
             addQuicklook(product, Quicklook.DEFAULT_QUICKLOOK_NAME, getQuicklookFile());
 
             product.setModified(false);
+            metrics.addOpenTime(System.nanoTime() - openStart);
 
             return product;
         } catch (Exception e) {
@@ -152,6 +165,7 @@ public class Sentinel1ProductReader extends SARReader {
                                           int destOffsetY, int destWidth, int destHeight, ProductData destBuffer,
                                           ProgressMonitor pm) throws IOException {
 
+        final long decodeStart = System.nanoTime();
         final ImageIOFile.BandInfo bandInfo = dataDir.getBandInfo(destBand);
         if (bandInfo != null && bandInfo.img != null) {
             if (dataDir.isSLC()) {
@@ -174,6 +188,7 @@ public class Sentinel1ProductReader extends SARReader {
                                             sourceStepX, sourceStepY, destBand, destOffsetX,
                                             destOffsetY, destWidth, destHeight, destBuffer);
         }
+        metrics.addDecodeTime(destBand.getName(), System.nanoTime() - decodeStart);
     }
 
     private void readSLCRasterBand(final int sourceOffsetX, final int sourceOffsetY,
@@ -257,9 +272,19 @@ public class Sentinel1ProductReader extends SARReader {
         }
     }
 
-    private synchronized DataCache.Data readRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
-                                         int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
-                                         final Rectangle destRect) {
+    private DataCache.Data readRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
+                                    int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
+                                    final Rectangle destRect) {
+        final long waitStart = System.nanoTime();
+        synchronized (this) {
+            metrics.addLockWait(System.nanoTime() - waitStart);
+            return decodeRect(datakey, bandInfo, sourceOffsetX, sourceOffsetY, sourceStepX, sourceStepY, destRect);
+        }
+    }
+
+    private DataCache.Data decodeRect(final DataCache.DataKey datakey, final ImageIOFile.BandInfo bandInfo,
+                                      int sourceOffsetX, int sourceOffsetY, int sourceStepX, int sourceStepY,
+                                      final Rectangle destRect) {
         try {
             final ImageReader imageReader = bandInfo.img.getReader();
             final ImageReadParam readParam = imageReader.getDefaultReadParam();
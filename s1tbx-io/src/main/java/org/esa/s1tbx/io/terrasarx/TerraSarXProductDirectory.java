@@ -642,12 +642,8 @@ public class TerraSarXProductDirectory extends XMLProductDirectory {
             final String name = getBandFileNameFromImage(imgPath);
             if ((name.endsWith("tif") || name.endsWith("tiff")) && name.startsWith("image")) {
                 final Dimension bandDimensions = getBandDimensions(newRoot, name);
-                final InputStream inStream = getInputStream(imgPath);
-                if(inStream.available() > 0) {
-                    final ImageInputStream imgStream = ImageIOFile.createImageInputStream(inStream, bandDimensions);
-                    if (imgStream == null)
-                        throw new IOException("Unable to open " + imgPath);
-
+                final ImageInputStream imgStream = getImageInputStream(imgPath, bandDimensions);
+                if (hasImageData(imgStream)) {
                     final ImageIOFile img = new ImageIOFile(name, imgStream, GeoTiffUtils.getTiffIIOReader(imgStream),
                             1, 1, ProductData.TYPE_UINT16, productInputFile);
                     bandImageFileMap.put(img.getName(), img);
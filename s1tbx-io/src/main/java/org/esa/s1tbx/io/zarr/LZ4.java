@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A pure Java codec for the LZ4 block format.
+ * <p>
+ * The compressor is the greedy single-probe hash compressor of the reference implementation, which trades a few
+ * percent of ratio for speed. The output can be decoded by any LZ4 block decoder.
+ */
+final class LZ4 {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int HASH_LOG = 14;
+    private static final int SKIP_STRENGTH = 6;
+    private static final int RUN_MASK = 15;
+
+    private LZ4() {
+    }
+
+    /**
+     * @param length the length of the data to compress
+     * @return the size of a buffer large enough to hold the compressed data
+     */
+    static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compress a block.
+     *
+     * @param src    the data
+     * @param srcOff the start of the data
+     * @param srcLen the length of the data
+     * @param dst    the output, at least {@link #maxCompressedLength} bytes after dstOff
+     * @param dstOff the start of the output
+     * @return the length of the compressed data
+     */
+    static int compress(final byte[] src, final int srcOff, final int srcLen, final byte[] dst, final int dstOff) {
+        final ByteBuffer in = ByteBuffer.wrap(src).order(ByteOrder.LITTLE_ENDIAN);
+        final int srcEnd = srcOff + srcLen;
+        final int mfLimit = srcEnd - MF_LIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+
+        int anchor = srcOff;
+        int dp = dstOff;
+        if (srcLen > MF_LIMIT) {
+            // positions are stored plus one so that zero marks an empty slot
+            final int[] table = new int[1 << HASH_LOG];
+            int sp = srcOff;
+            while (sp < mfLimit) {
+                final int seq = in.getInt(sp);
+                final int h = hash(seq);
+                int ref = table[h] - 1;
+                table[h] = sp + 1;
+                if (ref < 0 || sp - ref > MAX_DISTANCE || in.getInt(ref) != seq) {
+                    sp += 1 + ((sp - anchor) >>> SKIP_STRENGTH);
+                    continue;
+                }
+
+                while (sp > anchor && ref > srcOff && src[sp - 1] == src[ref - 1]) {
+                    --sp;
+                    --ref;
+                }
+                int len = MIN_MATCH;
+                while (sp + len < matchLimit && src[sp + len] == src[ref + len]) {
+                    ++len;
+                }
+
+                dp = writeSequence(src, anchor, sp - anchor, sp - ref, len, dst, dp);
+                sp += len;
+                anchor = sp;
+                if (sp - 2 < mfLimit) {
+                    table[hash(in.getInt(sp - 2))] = sp - 2 + 1;
+                }
+            }
+        }
+        return writeLastLiterals(src, anchor, srcEnd - anchor, dst, dp) - dstOff;
+    }
+
+    /**
+     * Decompress a block.
+     *
+     * @param src    the compressed data
+     * @param srcOff the start of the compressed data
+     * @param srcLen the length of the compressed data
+     * @param dst    the output
+     * @param dstOff the start of the output
+     * @param dstLen the expected length of the decompressed data
+     * @throws IOException if the data is corrupt or does not decompress to dstLen bytes
+     */
+    static void decompress(final byte[] src, final int srcOff, final int srcLen,
+                           final byte[] dst, final int dstOff, final int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int sp = srcOff;
+        int dp = dstOff;
+        while (true) {
+            if (sp >= srcEnd) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+            final int token = src[sp++] & 0xFF;
+
+            int litLen = token >>> 4;
+            if (litLen == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Corrupt LZ4 block");
+                    }
+                    b = src[sp++] & 0xFF;
+                    litLen += b;
+                } while (b == 255);
+            }
+            if (litLen > srcEnd - sp || litLen > dstEnd - dp) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+            System.arraycopy(src, sp, dst, dp, litLen);
+            sp += litLen;
+            dp += litLen;
+            if (sp == srcEnd) {
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+            final int offset = (src[sp] & 0xFF) | (src[sp + 1] & 0xFF) << 8;
+            sp += 2;
+            if (offset == 0 || offset > dp - dstOff) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+
+            int matchLen = token & RUN_MASK;
+            if (matchLen == RUN_MASK) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Corrupt LZ4 block");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+            if (matchLen > dstEnd - dp) {
+                throw new IOException("Corrupt LZ4 block");
+            }
+
+            if (offset >= matchLen) {
+                System.arraycopy(dst, dp - offset, dst, dp, matchLen);
+                dp += matchLen;
+            } else {
+                // overlapping copy repeats the last offset bytes
+                final int end = dp + matchLen;
+                while (dp < end) {
+                    dst[dp] = dst[dp - offset];
+                    ++dp;
+                }
+            }
+        }
+        if (dp != dstEnd) {
+            throw new IOException("LZ4 block decompressed to " + (dp - dstOff) + " bytes instead of " + dstLen);
+        }
+    }
+
+    private static int hash(final int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int writeSequence(final byte[] src, final int litStart, final int litLen,
+                                     final int offset, final int matchLen, final byte[] dst, int dp) {
+        final int tokenPos = dp++;
+        int token;
+        if (litLen >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dp = writeLength(litLen - RUN_MASK, dst, dp);
+        } else {
+            token = litLen << 4;
+        }
+        System.arraycopy(src, litStart, dst, dp, litLen);
+        dp += litLen;
+
+        dst[dp++] = (byte) offset;
+        dst[dp++] = (byte) (offset >>> 8);
+
+        final int ml = matchLen - MIN_MATCH;
+        if (ml >= RUN_MASK) {
+            token |= RUN_MASK;
+            dp = writeLength(ml - RUN_MASK, dst, dp);
+        } else {
+            token |= ml;
+        }
+        dst[tokenPos] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLastLiterals(final byte[] src, final int litStart, final int litLen,
+                                         final byte[] dst, int dp) {
+        if (litLen >= RUN_MASK) {
+            dst[dp++] = (byte) (RUN_MASK << 4);
+            dp = writeLength(litLen - RUN_MASK, dst, dp);
+        } else {
+            dst[dp++] = (byte) (litLen << 4);
+        }
+        System.arraycopy(src, litStart, dst, dp, litLen);
+        return dp + litLen;
+    }
+
+    private static int writeLength(int len, final byte[] dst, int dp) {
+        while (len >= 255) {
+            dst[dp++] = (byte) 255;
+            len -= 255;
+        }
+        dst[dp++] = (byte) len;
+        return dp;
+    }
+}
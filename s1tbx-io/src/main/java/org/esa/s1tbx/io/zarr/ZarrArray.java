@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A two dimensional Zarr (v2) array in a directory store.
+ * <p>
+ * Each chunk is a file named {@code <row>.<column>} holding the little endian samples of the chunk in C order,
+ * optionally byte-shuffled and compressed. Edge chunks have the full chunk shape. The codecs are those of numcodecs:
+ * {@code lz4} prefixes the LZ4 block with its uncompressed size and {@code zlib} is a zlib stream, so the
+ * arrays can also be opened with zarr-python.
+ */
+final class ZarrArray {
+
+    static final String ZARRAY = ".zarray";
+    static final String ZATTRS = ".zattrs";
+    static final String ZGROUP = ".zgroup";
+
+    enum Compressor {NONE, LZ4, ZLIB}
+
+    private final File dir;
+    private final int width;
+    private final int height;
+    private final int chunkWidth;
+    private final int chunkHeight;
+    private final int dataType;
+    private final int elemSize;
+    private final Compressor compressor;
+    private final boolean shuffle;
+    private final double fillValue;
+
+    private ZarrArray(final File dir, final int dataType, final int width, final int height,
+                      final int chunkWidth, final int chunkHeight,
+                      final Compressor compressor, final boolean shuffle, final double fillValue) {
+        this.dir = dir;
+        this.dataType = dataType;
+        this.elemSize = ProductData.getElemSize(dataType);
+        this.width = width;
+        this.height = height;
+        this.chunkWidth = chunkWidth;
+        this.chunkHeight = chunkHeight;
+        this.compressor = compressor;
+        this.shuffle = shuffle;
+        this.fillValue = fillValue;
+    }
+
+    /**
+     * Create an array and write its {@code .zarray}.
+     */
+    static ZarrArray create(final File dir, final int dataType, final int width, final int height,
+                            final int chunkWidth, final int chunkHeight,
+                            final Compressor compressor, final double fillValue) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Unable to create folders in " + dir);
+        }
+        final boolean shuffle = compressor != Compressor.NONE && ProductData.getElemSize(dataType) > 1;
+        final ZarrArray array = new ZarrArray(dir, dataType, width, height, chunkWidth, chunkHeight,
+                compressor, shuffle, fillValue);
+        writeJSON(new File(dir, ZARRAY), array.toJSON());
+        return array;
+    }
+
+    /**
+     * Open an array from its {@code .zarray}.
+     */
+    static ZarrArray open(final File dir) throws IOException {
+        final JSONObject json = readJSON(new File(dir, ZARRAY));
+        final JSONArray shape = (JSONArray) json.get("shape");
+        final JSONArray chunks = (JSONArray) json.get("chunks");
+        if (shape == null || chunks == null || shape.size() != 2 || chunks.size() != 2) {
+            throw new IOException("Only two dimensional arrays are supported in " + dir);
+        }
+        if (!"C".equals(json.get("order"))) {
+            throw new IOException("Only C order is supported in " + dir);
+        }
+
+        Compressor compressor = Compressor.NONE;
+        final JSONObject comp = (JSONObject) json.get("compressor");
+        if (comp != null) {
+            final String id = (String) comp.get("id");
+            if ("lz4".equals(id)) {
+                compressor = Compressor.LZ4;
+            } else if ("zlib".equals(id)) {
+                compressor = Compressor.ZLIB;
+            } else {
+                throw new IOException("Unsupported compressor " + id + " in " + dir);
+            }
+        }
+
+        boolean shuffle = false;
+        final JSONArray filters = (JSONArray) json.get("filters");
+        if (filters != null) {
+            for (Object f : filters) {
+                final String id = (String) ((JSONObject) f).get("id");
+                if (!"shuffle".equals(id)) {
+                    throw new IOException("Unsupported filter " + id + " in " + dir);
+                }
+                shuffle = true;
+            }
+        }
+
+        return new ZarrArray(dir, getDataType((String) json.get("dtype")),
+                ((Number) shape.get(1)).intValue(), ((Number) shape.get(0)).intValue(),
+                ((Number) chunks.get(1)).intValue(), ((Number) chunks.get(0)).intValue(),
+                compressor, shuffle, parseNumber(json.get("fill_value")));
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject toJSON() {
+        final JSONObject json = new JSONObject();
+        json.put("zarr_format", 2);
+        json.put("shape", toJSONArray(height, width));
+        json.put("chunks", toJSONArray(chunkHeight, chunkWidth));
+        json.put("dtype", getDType(dataType));
+        json.put("order", "C");
+        json.put("fill_value", toJSONNumber(fillValue));
+
+        if (compressor == Compressor.LZ4) {
+            final JSONObject comp = new JSONObject();
+            comp.put("id", "lz4");
+            comp.put("acceleration", 1);
+            json.put("compressor", comp);
+        } else if (compressor == Compressor.ZLIB) {
+            final JSONObject comp = new JSONObject();
+            comp.put("id", "zlib");
+            comp.put("level", 1);
+            json.put("compressor", comp);
+        } else {
+            json.put("compressor", null);
+        }
+
+        if (shuffle) {
+            final JSONObject filter = new JSONObject();
+            filter.put("id", "shuffle");
+            filter.put("elementsize", elemSize);
+            final JSONArray filters = new JSONArray();
+            filters.add(filter);
+            json.put("filters", filters);
+        } else {
+            json.put("filters", null);
+        }
+        return json;
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    int getDataType() {
+        return dataType;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    int getChunkWidth() {
+        return chunkWidth;
+    }
+
+    int getChunkHeight() {
+        return chunkHeight;
+    }
+
+    double getFillValue() {
+        return fillValue;
+    }
+
+    /**
+     * @return the size in bytes of a decoded chunk
+     */
+    int getChunkSize() {
+        return chunkWidth * chunkHeight * elemSize;
+    }
+
+    private File getChunkFile(final int chunkX, final int chunkY) {
+        return new File(dir, chunkY + "." + chunkX);
+    }
+
+    /**
+     * Encode and write a chunk. The file is replaced atomically so that readers never see a partial chunk.
+     *
+     * @param raw the little endian samples of the chunk
+     */
+    void writeChunk(final int chunkX, final int chunkY, final byte[] raw) throws IOException {
+        final byte[] encoded = encode(raw);
+        final File file = getChunkFile(chunkX, chunkY);
+        final File tmpFile = new File(dir, file.getName() + '.' + Thread.currentThread().getId() + ".tmp");
+        Files.write(tmpFile.toPath(), encoded);
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read and decode a chunk.
+     *
+     * @return the little endian samples of the chunk or null if the chunk has not been written
+     */
+    byte[] readChunk(final int chunkX, final int chunkY) throws IOException {
+        final File file = getChunkFile(chunkX, chunkY);
+        if (!file.exists()) {
+            return null;
+        }
+        return decode(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * @return a chunk holding only the fill value
+     */
+    byte[] createFilledChunk() {
+        final byte[] raw = new byte[getChunkSize()];
+        if (fillValue != 0) {
+            final ProductData value = ProductData.createInstance(dataType, 1);
+            value.setElemDoubleAt(0, fillValue);
+            final ByteBuffer buf = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+            final int n = chunkWidth * chunkHeight;
+            for (int i = 0; i < n; ++i) {
+                put(buf, i, value.getElems(), 0, 1);
+            }
+        }
+        return raw;
+    }
+
+    byte[] encode(final byte[] raw) throws IOException {
+        final byte[] data = shuffle ? shuffle(raw, elemSize) : raw;
+        switch (compressor) {
+            case LZ4: {
+                final byte[] out = new byte[4 + LZ4.maxCompressedLength(data.length)];
+                ByteBuffer.wrap(out).order(ByteOrder.LITTLE_ENDIAN).putInt(0, data.length);
+                final int len = LZ4.compress(data, 0, data.length, out, 4);
+                return Arrays.copyOf(out, 4 + len);
+            }
+            case ZLIB: {
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    deflater.setInput(data);
+                    deflater.finish();
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                    final byte[] buf = new byte[65536];
+                    while (!deflater.finished()) {
+                        out.write(buf, 0, deflater.deflate(buf));
+                    }
+                    return out.toByteArray();
+                } finally {
+                    deflater.end();
+                }
+            }
+            default:
+                return data;
+        }
+    }
+
+    byte[] decode(final byte[] encoded) throws IOException {
+        final int size = getChunkSize();
+        byte[] data;
+        switch (compressor) {
+            case LZ4: {
+                if (encoded.length < 4) {
+                    throw new IOException("Corrupt chunk in " + dir);
+                }
+                final int len = ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+                if (len != size) {
+                    throw new IOException("Chunk of " + len + " bytes instead of " + size + " in " + dir);
+                }
+                data = new byte[size];
+                LZ4.decompress(encoded, 4, encoded.length - 4, data, 0, size);
+                break;
+            }
+            case ZLIB: {
+                final Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(encoded);
+                    data = new byte[size];
+                    int len = 0;
+                    while (len < size && !inflater.finished()) {
+                        final int n = inflater.inflate(data, len, size - len);
+                        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            break;
+                        }
+                        len += n;
+                    }
+                    if (len != size) {
+                        throw new IOException("Chunk of " + len + " bytes instead of " + size + " in " + dir);
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt chunk in " + dir, e);
+                } finally {
+                    inflater.end();
+                }
+                break;
+            }
+            default:
+                if (encoded.length != size) {
+                    throw new IOException("Chunk of " + encoded.length + " bytes instead of " + size + " in " + dir);
+                }
+                data = encoded;
+        }
+        return shuffle ? unshuffle(data, elemSize) : data;
+    }
+
+    /**
+     * Group the n-th bytes of all elements together, which makes the slowly varying high bytes of numeric
+     * samples much more compressible.
+     */
+    static byte[] shuffle(final byte[] src, final int elemSize) {
+        final int n = src.length / elemSize;
+        final byte[] dst = new byte[src.length];
+        for (int b = 0; b < elemSize; ++b) {
+            int s = b;
+            final int d0 = b * n;
+            for (int i = 0; i < n; ++i) {
+                dst[d0 + i] = src[s];
+                s += elemSize;
+            }
+        }
+        System.arraycopy(src, n * elemSize, dst, n * elemSize, src.length - n * elemSize);
+        return dst;
+    }
+
+    static byte[] unshuffle(final byte[] src, final int elemSize) {
+        final int n = src.length / elemSize;
+        final byte[] dst = new byte[src.length];
+        for (int b = 0; b < elemSize; ++b) {
+            int d = b;
+            final int s0 = b * n;
+            for (int i = 0; i < n; ++i) {
+                dst[d] = src[s0 + i];
+                d += elemSize;
+            }
+        }
+        System.arraycopy(src, n * elemSize, dst, n * elemSize, src.length - n * elemSize);
+        return dst;
+    }
+
+    /**
+     * Copy samples from a ProductData array into a little endian chunk.
+     *
+     * @param chunk      the chunk
+     * @param chunkIndex the first sample in the chunk
+     * @param elems      the primitive array of a ProductData
+     * @param offset     the first sample in elems
+     * @param length     the number of samples
+     */
+    static void put(final ByteBuffer chunk, final int chunkIndex, final Object elems, final int offset, final int length) {
+        if (elems instanceof byte[]) {
+            final ByteBuffer buf = chunk.duplicate();
+            buf.position(chunkIndex);
+            buf.put((byte[]) elems, offset, length);
+        } else if (elems instanceof short[]) {
+            final ShortBuffer buf = chunk.asShortBuffer();
+            buf.position(chunkIndex);
+            buf.put((short[]) elems, offset, length);
+        } else if (elems instanceof int[]) {
+            final IntBuffer buf = chunk.asIntBuffer();
+            buf.position(chunkIndex);
+            buf.put((int[]) elems, offset, length);
+        } else if (elems instanceof float[]) {
+            final FloatBuffer buf = chunk.asFloatBuffer();
+            buf.position(chunkIndex);
+            buf.put((float[]) elems, offset, length);
+        } else if (elems instanceof double[]) {
+            final DoubleBuffer buf = chunk.asDoubleBuffer();
+            buf.position(chunkIndex);
+            buf.put((double[]) elems, offset, length);
+        } else {
+            throw new IllegalArgumentException("Unsupported raster data " + elems.getClass());
+        }
+    }
+
+    /**
+     * Copy samples from a little endian chunk into a ProductData array.
+     *
+     * @param chunk      the chunk
+     * @param chunkIndex the first sample in the chunk
+     * @param elems      the primitive array of a ProductData
+     * @param offset     the first sample in elems
+     * @param length     the number of samples
+     */
+    static void get(final ByteBuffer chunk, final int chunkIndex, final Object elems, final int offset, final int length) {
+        if (elems instanceof byte[]) {
+            final ByteBuffer buf = chunk.duplicate();
+            buf.position(chunkIndex);
+            buf.get((byte[]) elems, offset, length);
+        } else if (elems instanceof short[]) {
+            final ShortBuffer buf = chunk.asShortBuffer();
+            buf.position(chunkIndex);
+            buf.get((short[]) elems, offset, length);
+        } else if (elems instanceof int[]) {
+            final IntBuffer buf = chunk.asIntBuffer();
+            buf.position(chunkIndex);
+            buf.get((int[]) elems, offset, length);
+        } else if (elems instanceof float[]) {
+            final FloatBuffer buf = chunk.asFloatBuffer();
+            buf.position(chunkIndex);
+            buf.get((float[]) elems, offset, length);
+        } else if (elems instanceof double[]) {
+            final DoubleBuffer buf = chunk.asDoubleBuffer();
+            buf.position(chunkIndex);
+            buf.get((double[]) elems, offset, length);
+        } else {
+            throw new IllegalArgumentException("Unsupported raster data " + elems.getClass());
+        }
+    }
+
+    static String getDType(final int dataType) {
+        switch (dataType) {
+            case ProductData.TYPE_INT8:
+                return "|i1";
+            case ProductData.TYPE_UINT8:
+                return "|u1";
+            case ProductData.TYPE_INT16:
+                return "<i2";
+            case ProductData.TYPE_UINT16:
+                return "<u2";
+            case ProductData.TYPE_INT32:
+                return "<i4";
+            case ProductData.TYPE_UINT32:
+                return "<u4";
+            case ProductData.TYPE_FLOAT32:
+                return "<f4";
+            case ProductData.TYPE_FLOAT64:
+                return "<f8";
+            default:
+                throw new IllegalArgumentException("Unsupported data type " + ProductData.getTypeString(dataType));
+        }
+    }
+
+    static int getDataType(final String dtype) throws IOException {
+        // only little endian or single byte types
+        if (dtype != null && dtype.length() == 3 && dtype.charAt(0) != '>') {
+            switch (dtype.substring(1)) {
+                case "i1":
+                    return ProductData.TYPE_INT8;
+                case "u1":
+                    return ProductData.TYPE_UINT8;
+                case "i2":
+                    return ProductData.TYPE_INT16;
+                case "u2":
+                    return ProductData.TYPE_UINT16;
+                case "i4":
+                    return ProductData.TYPE_INT32;
+                case "u4":
+                    return ProductData.TYPE_UINT32;
+                case "f4":
+                    return ProductData.TYPE_FLOAT32;
+                case "f8":
+                    return ProductData.TYPE_FLOAT64;
+            }
+        }
+        throw new IOException("Unsupported dtype " + dtype);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONArray toJSONArray(final int... values) {
+        final JSONArray array = new JSONArray();
+        for (int v : values) {
+            array.add(v);
+        }
+        return array;
+    }
+
+    /**
+     * JSON has no NaN or infinity, Zarr writes them as strings.
+     */
+    static Object toJSONNumber(final double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "Infinity" : "-Infinity";
+        }
+        return value;
+    }
+
+    static double parseNumber(final Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if ("NaN".equals(value)) {
+            return Double.NaN;
+        } else if ("Infinity".equals(value)) {
+            return Double.POSITIVE_INFINITY;
+        } else if ("-Infinity".equals(value)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return 0;
+    }
+
+    static void writeJSON(final File file, final JSONObject json) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            json.writeJSONString(writer);
+        }
+    }
+
+    static JSONObject readJSON(final File file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return (JSONObject) new JSONParser().parse(reader);
+        } catch (ParseException | ClassCastException e) {
+            throw new IOException("Unable to parse " + file + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+/**
+ * Names used in the attributes of a Zarr product.
+ */
+final class ZarrConstants {
+
+    static final String METADATA_FILE = "metadata.xml";
+    static final String TIE_POINT_GRID_GROUP = "tie_point_grids";
+
+    static final String PRODUCT = "product";
+    static final String NAME = "name";
+    static final String TYPE = "type";
+    static final String DESCRIPTION = "description";
+    static final String WIDTH = "width";
+    static final String HEIGHT = "height";
+    static final String START_TIME = "start_time";
+    static final String END_TIME = "end_time";
+    static final String BANDS = "bands";
+    static final String VIRTUAL_BANDS = "virtual_bands";
+    static final String TIE_POINT_GRIDS = "tie_point_grids";
+    static final String GEOCODING = "geocoding";
+
+    static final String UNIT = "unit";
+    static final String DATA_TYPE = "data_type";
+    static final String EXPRESSION = "expression";
+    static final String NO_DATA_VALUE_USED = "no_data_value_used";
+    static final String NO_DATA_VALUE = "no_data_value";
+    static final String VALID_PIXEL_EXPRESSION = "valid_pixel_expression";
+    static final String SCALING_FACTOR = "scaling_factor";
+    static final String SCALING_OFFSET = "scaling_offset";
+    static final String LOG10_SCALED = "log10_scaled";
+    static final String SPECTRAL_WAVELENGTH = "spectral_wavelength";
+    static final String SPECTRAL_BANDWIDTH = "spectral_bandwidth";
+
+    static final String OFFSET_X = "offset_x";
+    static final String OFFSET_Y = "offset_y";
+    static final String SUBSAMPLING_X = "subsampling_x";
+    static final String SUBSAMPLING_Y = "subsampling_y";
+    static final String DISCONTINUITY = "discontinuity";
+
+    static final String GEOCODING_TIE_POINT = "tie_point";
+    static final String GEOCODING_CRS = "crs";
+    static final String LAT_GRID = "latitude";
+    static final String LON_GRID = "longitude";
+    static final String WKT = "wkt";
+    static final String IMAGE_TO_MAP = "image_to_map";
+
+    private ZarrConstants() {
+    }
+}
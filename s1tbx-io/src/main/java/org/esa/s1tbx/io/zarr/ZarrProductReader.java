@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s1tbx.commons.io.SARReader;
+import org.esa.snap.core.dataio.ProductReaderPlugIn;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.TiePointGeoCoding;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
+import org.esa.snap.engine_utilities.datamodel.metadata.AbstractMetadataIO;
+import org.geotools.referencing.CRS;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader for chunked Zarr products written by the {@link ZarrProductWriter}.
+ * <p>
+ * The preferred tile size of the product is the chunk shape, so that a tile is decoded from exactly one chunk.
+ */
+public class ZarrProductReader extends SARReader {
+
+    private final Map<Band, ZarrArray> bandArrays = new HashMap<>();
+
+    public ZarrProductReader(final ProductReaderPlugIn readerPlugIn) {
+        super(readerPlugIn);
+    }
+
+    @Override
+    protected Product readProductNodesImpl() throws IOException {
+        final File dir = ZarrProductReaderPlugIn.getProductDir(getPathFromInput(getInput())).toFile();
+        final JSONObject attrs = ZarrArray.readJSON(new File(dir, ZarrArray.ZATTRS));
+        final JSONObject productAttrs = (JSONObject) attrs.get(ZarrConstants.PRODUCT);
+        if (productAttrs == null) {
+            throw new IOException(dir + " is not a Zarr product");
+        }
+
+        final Product product = new Product((String) productAttrs.get(ZarrConstants.NAME),
+                (String) productAttrs.get(ZarrConstants.TYPE),
+                getInt(productAttrs, ZarrConstants.WIDTH), getInt(productAttrs, ZarrConstants.HEIGHT));
+        product.setProductReader(this);
+        product.setFileLocation(dir);
+        product.setDescription((String) productAttrs.get(ZarrConstants.DESCRIPTION));
+        try {
+            if (productAttrs.get(ZarrConstants.START_TIME) != null) {
+                product.setStartTime(ProductData.UTC.parse((String) productAttrs.get(ZarrConstants.START_TIME)));
+            }
+            if (productAttrs.get(ZarrConstants.END_TIME) != null) {
+                product.setEndTime(ProductData.UTC.parse((String) productAttrs.get(ZarrConstants.END_TIME)));
+            }
+        } catch (ParseException e) {
+            throw new IOException("Invalid product time in " + dir, e);
+        }
+
+        addBands(product, dir, attrs);
+        addMetadata(product, dir);
+        addTiePointGrids(product, dir, attrs);
+        addGeoCoding(product, attrs);
+
+        return product;
+    }
+
+    private void addBands(final Product product, final File dir, final JSONObject attrs) throws IOException {
+        final JSONArray bands = (JSONArray) attrs.get(ZarrConstants.BANDS);
+        final JSONObject virtualBands = (JSONObject) attrs.get(ZarrConstants.VIRTUAL_BANDS);
+        if (bands == null) {
+            return;
+        }
+        for (Object name : bands) {
+            final String bandName = (String) name;
+            final JSONObject virtualAttrs = virtualBands != null ? (JSONObject) virtualBands.get(bandName) : null;
+            if (virtualAttrs != null) {
+                final VirtualBand band = new VirtualBand(bandName,
+                        ProductData.getType((String) virtualAttrs.get(ZarrConstants.DATA_TYPE)),
+                        product.getSceneRasterWidth(), product.getSceneRasterHeight(),
+                        (String) virtualAttrs.get(ZarrConstants.EXPRESSION));
+                setBandAttributes(band, virtualAttrs);
+                product.addBand(band);
+            } else {
+                final File bandDir = new File(dir, bandName);
+                final ZarrArray array = ZarrArray.open(bandDir);
+                final Band band = new Band(bandName, array.getDataType(), array.getWidth(), array.getHeight());
+                final File attrFile = new File(bandDir, ZarrArray.ZATTRS);
+                if (attrFile.exists()) {
+                    setBandAttributes(band, ZarrArray.readJSON(attrFile));
+                }
+                product.addBand(band);
+                bandArrays.put(band, array);
+
+                if (product.getPreferredTileSize() == null) {
+                    product.setPreferredTileSize(array.getChunkWidth(), array.getChunkHeight());
+                }
+            }
+        }
+    }
+
+    private static void setBandAttributes(final Band band, final JSONObject attrs) {
+        band.setUnit((String) attrs.get(ZarrConstants.UNIT));
+        band.setDescription((String) attrs.get(ZarrConstants.DESCRIPTION));
+        band.setNoDataValueUsed(Boolean.TRUE.equals(attrs.get(ZarrConstants.NO_DATA_VALUE_USED)));
+        band.setNoDataValue(ZarrArray.parseNumber(attrs.get(ZarrConstants.NO_DATA_VALUE)));
+        band.setValidPixelExpression((String) attrs.get(ZarrConstants.VALID_PIXEL_EXPRESSION));
+        band.setScalingFactor(getDouble(attrs, ZarrConstants.SCALING_FACTOR, 1.0));
+        band.setScalingOffset(getDouble(attrs, ZarrConstants.SCALING_OFFSET, 0.0));
+        band.setLog10Scaled(Boolean.TRUE.equals(attrs.get(ZarrConstants.LOG10_SCALED)));
+        band.setSpectralWavelength((float) getDouble(attrs, ZarrConstants.SPECTRAL_WAVELENGTH, 0.0));
+        band.setSpectralBandwidth((float) getDouble(attrs, ZarrConstants.SPECTRAL_BANDWIDTH, 0.0));
+    }
+
+    private static void addMetadata(final Product product, final File dir) throws IOException {
+        final MetadataElement root = product.getMetadataRoot();
+        final MetadataElement absRoot = AbstractMetadata.addAbstractedMetadataHeader(root);
+
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.PRODUCT, product.getName());
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.PRODUCT_TYPE, product.getProductType());
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.num_samples_per_line, product.getSceneRasterWidth());
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.num_output_lines, product.getSceneRasterHeight());
+
+        AbstractMetadataIO.loadExternalMetadata(product, absRoot, new File(dir, ZarrConstants.METADATA_FILE));
+    }
+
+    private static void addTiePointGrids(final Product product, final File dir, final JSONObject attrs)
+            throws IOException {
+        final JSONArray tiePointGrids = (JSONArray) attrs.get(ZarrConstants.TIE_POINT_GRIDS);
+        if (tiePointGrids == null) {
+            return;
+        }
+        final File tpgDir = new File(dir, ZarrConstants.TIE_POINT_GRID_GROUP);
+        for (Object name : tiePointGrids) {
+            final String gridName = (String) name;
+            if (product.getTiePointGrid(gridName) != null) {
+                continue;   // already restored with the metadata
+            }
+            final ZarrArray array = ZarrArray.open(new File(tpgDir, gridName));
+            final byte[] raw = array.readChunk(0, 0);
+            if (raw == null) {
+                throw new IOException("Missing tie point grid " + gridName + " in " + dir);
+            }
+            final int width = array.getWidth();
+            final int height = array.getHeight();
+            final float[] tiePoints = new float[width * height];
+            ZarrArray.get(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), 0, tiePoints, 0, tiePoints.length);
+
+            final JSONObject gridAttrs = ZarrArray.readJSON(new File(array.getDir(), ZarrArray.ZATTRS));
+            final TiePointGrid tpg = new TiePointGrid(gridName, width, height,
+                    getDouble(gridAttrs, ZarrConstants.OFFSET_X, 0.0),
+                    getDouble(gridAttrs, ZarrConstants.OFFSET_Y, 0.0),
+                    getDouble(gridAttrs, ZarrConstants.SUBSAMPLING_X, 1.0),
+                    getDouble(gridAttrs, ZarrConstants.SUBSAMPLING_Y, 1.0),
+                    tiePoints, getInt(gridAttrs, ZarrConstants.DISCONTINUITY));
+            tpg.setUnit((String) gridAttrs.get(ZarrConstants.UNIT));
+            tpg.setDescription((String) gridAttrs.get(ZarrConstants.DESCRIPTION));
+            product.addTiePointGrid(tpg);
+        }
+    }
+
+    private static void addGeoCoding(final Product product, final JSONObject attrs) throws IOException {
+        final JSONObject geoCoding = (JSONObject) attrs.get(ZarrConstants.GEOCODING);
+        if (geoCoding == null) {
+            return;
+        }
+        final Object type = geoCoding.get(ZarrConstants.TYPE);
+        if (ZarrConstants.GEOCODING_TIE_POINT.equals(type)) {
+            final TiePointGrid latGrid = product.getTiePointGrid((String) geoCoding.get(ZarrConstants.LAT_GRID));
+            final TiePointGrid lonGrid = product.getTiePointGrid((String) geoCoding.get(ZarrConstants.LON_GRID));
+            if (latGrid != null && lonGrid != null) {
+                product.setSceneGeoCoding(new TiePointGeoCoding(latGrid, lonGrid));
+            }
+        } else if (ZarrConstants.GEOCODING_CRS.equals(type)) {
+            final JSONArray imageToMap = (JSONArray) geoCoding.get(ZarrConstants.IMAGE_TO_MAP);
+            final double[] matrix = new double[6];
+            for (int i = 0; i < matrix.length; ++i) {
+                matrix[i] = ((Number) imageToMap.get(i)).doubleValue();
+            }
+            try {
+                product.setSceneGeoCoding(new CrsGeoCoding(CRS.parseWKT((String) geoCoding.get(ZarrConstants.WKT)),
+                        new Rectangle(product.getSceneRasterWidth(), product.getSceneRasterHeight()),
+                        new AffineTransform(matrix)));
+            } catch (Exception e) {
+                throw new IOException("Unable to create geocoding: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static int getInt(final JSONObject attrs, final String key) {
+        final Object value = attrs.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static double getDouble(final JSONObject attrs, final String key, final double defaultValue) {
+        final Object value = attrs.get(key);
+        return value != null ? ZarrArray.parseNumber(value) : defaultValue;
+    }
+
+    @Override
+    protected void readBandRasterDataImpl(int sourceOffsetX, int sourceOffsetY,
+                                          int sourceWidth, int sourceHeight,
+                                          int sourceStepX, int sourceStepY,
+                                          Band destBand,
+                                          int destOffsetX, int destOffsetY,
+                                          int destWidth, int destHeight,
+                                          ProductData destBuffer,
+                                          ProgressMonitor pm) throws IOException {
+        final ZarrArray array = bandArrays.get(destBand);
+        if (array == null) {
+            throw new IOException("Band " + destBand.getName() + " has no raster data");
+        }
+        final Object elems = destBuffer.getElems();
+        final int chunkWidth = array.getChunkWidth();
+        final int chunkHeight = array.getChunkHeight();
+        final int lastX = sourceOffsetX + (destWidth - 1) * sourceStepX;
+        final int lastY = sourceOffsetY + (destHeight - 1) * sourceStepY;
+
+        pm.beginTask("Reading band '" + destBand.getName() + "'...", lastY / chunkHeight - sourceOffsetY / chunkHeight + 1);
+        try {
+            for (int cy = sourceOffsetY / chunkHeight; cy <= lastY / chunkHeight; ++cy) {
+                final int chunkY0 = cy * chunkHeight;
+                // the destination rows inside this row of chunks
+                final int dyStart = ceilDiv(Math.max(0, chunkY0 - sourceOffsetY), sourceStepY);
+                final int dyEnd = Math.min(destHeight, ceilDiv(chunkY0 + chunkHeight - sourceOffsetY, sourceStepY));
+
+                for (int cx = sourceOffsetX / chunkWidth; cx <= lastX / chunkWidth; ++cx) {
+                    final int chunkX0 = cx * chunkWidth;
+                    final int dxStart = ceilDiv(Math.max(0, chunkX0 - sourceOffsetX), sourceStepX);
+                    final int dxEnd = Math.min(destWidth, ceilDiv(chunkX0 + chunkWidth - sourceOffsetX, sourceStepX));
+                    if (dyStart >= dyEnd || dxStart >= dxEnd) {
+                        continue;
+                    }
+
+                    final byte[] raw = array.readChunk(cx, cy);
+                    if (raw == null) {
+                        // never written, e.g. an empty tile
+                        final double fillValue = array.getFillValue();
+                        for (int dy = dyStart; dy < dyEnd; ++dy) {
+                            for (int dx = dxStart; dx < dxEnd; ++dx) {
+                                destBuffer.setElemDoubleAt(dy * destWidth + dx, fillValue);
+                            }
+                        }
+                        continue;
+                    }
+
+                    final ByteBuffer chunk = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+                    for (int dy = dyStart; dy < dyEnd; ++dy) {
+                        final int rowStart = (sourceOffsetY + dy * sourceStepY - chunkY0) * chunkWidth - chunkX0;
+                        if (sourceStepX == 1) {
+                            ZarrArray.get(chunk, rowStart + sourceOffsetX + dxStart,
+                                    elems, dy * destWidth + dxStart, dxEnd - dxStart);
+                        } else {
+                            for (int dx = dxStart; dx < dxEnd; ++dx) {
+                                ZarrArray.get(chunk, rowStart + sourceOffsetX + dx * sourceStepX,
+                                        elems, dy * destWidth + dx, 1);
+                            }
+                        }
+                    }
+                }
+                pm.worked(1);
+            }
+        } finally {
+            pm.done();
+        }
+    }
+
+    private static int ceilDiv(final int a, final int b) {
+        return (a + b - 1) / b;
+    }
+
+    @Override
+    public void close() throws IOException {
+        bandArrays.clear();
+        super.close();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import org.esa.snap.core.dataio.DecodeQualification;
+import org.esa.snap.core.dataio.ProductReader;
+import org.esa.snap.core.dataio.ProductReaderPlugIn;
+import org.esa.snap.core.util.io.SnapFileFilter;
+import org.esa.snap.engine_utilities.gpf.ReaderUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * The ReaderPlugIn for chunked Zarr products.
+ */
+public class ZarrProductReaderPlugIn implements ProductReaderPlugIn {
+
+    public final static String DESCRIPTION = "Zarr chunked product";
+    public final static String[] FORMATS = new String[]{"Zarr"};
+    public final static String[] EXTs = new String[]{".zarr"};
+
+    /**
+     * Checks whether the given object is an acceptable input for this product reader and if so, the method checks if it
+     * is capable of decoding the input's content.
+     *
+     * @param input any input object
+     * @return true if this product reader can decode the given input, otherwise false.
+     */
+    public DecodeQualification getDecodeQualification(final Object input) {
+        final Path path = ReaderUtils.getPathFromInput(input);
+        if (path != null) {
+            final Path dir = getProductDir(path);
+            if (dir.getFileName() != null && dir.getFileName().toString().toLowerCase().endsWith(EXTs[0]) &&
+                    Files.isRegularFile(dir.resolve(ZarrArray.ZGROUP)) &&
+                    Files.isRegularFile(dir.resolve(ZarrArray.ZATTRS))) {
+                return DecodeQualification.INTENDED;
+            }
+        }
+        return DecodeQualification.UNABLE;
+    }
+
+    /**
+     * @return the product directory given the directory or one of its metadata files
+     */
+    static Path getProductDir(final Path path) {
+        final Path name = path.getFileName();
+        if (name != null && (name.toString().equals(ZarrArray.ZGROUP) || name.toString().equals(ZarrArray.ZATTRS))) {
+            return path.toAbsolutePath().getParent();
+        }
+        return path;
+    }
+
+    /**
+     * Returns an array containing the classes that represent valid input types for this reader.
+     *
+     * @return an array containing valid input types, never <code>null</code>
+     */
+    public Class[] getInputTypes() {
+        return new Class[]{Path.class, File.class, String.class};
+    }
+
+    /**
+     * Creates an instance of the actual product reader class. This method should never return <code>null</code>.
+     *
+     * @return a new reader instance, never <code>null</code>
+     */
+    public ProductReader createReaderInstance() {
+        return new ZarrProductReader(this);
+    }
+
+    public SnapFileFilter getProductFileFilter() {
+        return new FileFilter();
+    }
+
+    /**
+     * Gets the names of the product formats handled by this product I/O plug-in.
+     *
+     * @return the names of the product formats handled by this product I/O plug-in, never <code>null</code>
+     */
+    public String[] getFormatNames() {
+        return FORMATS;
+    }
+
+    /**
+     * Gets the default file extensions associated with each of the format names returned by the <code>{@link
+     * #getFormatNames}</code> method.
+     *
+     * @return the default file extensions for this product I/O plug-in, never <code>null</code>
+     */
+    public String[] getDefaultFileExtensions() {
+        return EXTs;
+    }
+
+    /**
+     * Gets a short description of this plug-in. If the given locale is set to <code>null</code> the default locale is
+     * used.
+     *
+     * @param locale the local for the given decription string, if <code>null</code> the default locale is used
+     * @return a textual description of this product reader/writer
+     */
+    public String getDescription(final Locale locale) {
+        return DESCRIPTION;
+    }
+
+    public static class FileFilter extends SnapFileFilter {
+
+        public FileFilter() {
+            super();
+            setFormatName(FORMATS[0]);
+            setDescription(DESCRIPTION);
+            setExtensions(EXTs);
+        }
+
+        /**
+         * Accepts folders and the group file of a Zarr product folder.
+         *
+         * @param file the file to be or not be accepted.
+         * @return <code>true</code> if given file is accepted by this filter
+         */
+        public boolean accept(final File file) {
+            if (file.isDirectory()) {
+                return true;
+            }
+            final File parent = file.getParentFile();
+            return file.getName().equals(ZarrArray.ZGROUP) && parent != null &&
+                    parent.getName().toLowerCase().endsWith(EXTs[0]);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.AbstractProductWriter;
+import org.esa.snap.core.dataio.ProductWriterPlugIn;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.FilterBand;
+import org.esa.snap.core.datamodel.GeoCoding;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.ProductNode;
+import org.esa.snap.core.datamodel.TiePointGeoCoding;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.core.image.ImageManager;
+import org.esa.snap.core.util.Guardian;
+import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.core.util.io.FileUtils;
+import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
+import org.esa.snap.engine_utilities.datamodel.metadata.AbstractMetadataIO;
+import org.esa.snap.runtime.Config;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.awt.Dimension;
+import java.awt.geom.AffineTransform;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The product writer for chunked Zarr products.
+ * <p>
+ * Each band is a Zarr array whose chunks have the preferred tile size of the product, so that every GPF tile is
+ * written as one independently compressed chunk file. Tiles are written concurrently without a writer-wide lock.
+ * Writes which do not cover a whole chunk are gathered in memory until the chunk is complete.
+ * <p>
+ * The compressor is set with the {@code s1tbx.writers.zarr.compressor} property: lz4 (default), zlib or none.
+ */
+public class ZarrProductWriter extends AbstractProductWriter {
+
+    private static final String COMPRESSOR_PROPERTY = "s1tbx.writers.zarr.compressor";
+
+    private File outputDir;
+    private ZarrArray.Compressor compressor;
+    private final Map<Band, ZarrArray> bandArrays = new HashMap<>();
+    private final Map<String, PendingChunk> pendingChunks = new ConcurrentHashMap<>();
+
+    public ZarrProductWriter(final ProductWriterPlugIn writerPlugIn) {
+        super(writerPlugIn);
+    }
+
+    /**
+     * Writes the in-memory representation of a data product. This method was called by <code>writeProductNodes(product,
+     * output)</code> of the AbstractProductWriter.
+     *
+     * @throws IllegalArgumentException if <code>output</code> type is not one of the supported output sources.
+     * @throws IOException              if an I/O error occurs
+     */
+    @Override
+    protected void writeProductNodesImpl() throws IOException {
+        final File file;
+        if (getOutput() instanceof String) {
+            file = new File((String) getOutput());
+        } else {
+            file = (File) getOutput();
+        }
+        outputDir = FileUtils.ensureExtension(file, ZarrProductReaderPlugIn.EXTs[0]);
+        if (!isIncrementalMode()) {
+            deleteOutput();
+        }
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create folders in " + outputDir);
+        }
+
+        final Product product = getSourceProduct();
+        compressor = getCompressor();
+        writeGroup(outputDir);
+
+        final Dimension tileSize = ImageManager.getPreferredTileSize(product);
+        bandArrays.clear();
+        for (Band band : product.getBands()) {
+            if (!shouldWrite(band)) {
+                continue;
+            }
+            final int width = band.getRasterWidth();
+            final int height = band.getRasterHeight();
+            final ZarrArray array = ZarrArray.create(new File(outputDir, band.getName()), band.getDataType(),
+                    width, height, Math.min(tileSize.width, width), Math.min(tileSize.height, height),
+                    compressor, band.isNoDataValueUsed() ? band.getNoDataValue() : 0);
+            ZarrArray.writeJSON(new File(array.getDir(), ZarrArray.ZATTRS), getBandAttributes(band));
+            bandArrays.put(band, array);
+        }
+
+        writeTiePointGrids(product);
+        writeHeader();
+    }
+
+    private static ZarrArray.Compressor getCompressor() {
+        final String name = Config.instance().preferences().get(COMPRESSOR_PROPERTY, "lz4");
+        try {
+            return ZarrArray.Compressor.valueOf(name.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            SystemUtils.LOG.warning("Unknown Zarr compressor " + name + ", using lz4");
+            return ZarrArray.Compressor.LZ4;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeGroup(final File dir) throws IOException {
+        final JSONObject group = new JSONObject();
+        group.put("zarr_format", 2);
+        ZarrArray.writeJSON(new File(dir, ZarrArray.ZGROUP), group);
+    }
+
+    private void writeTiePointGrids(final Product product) throws IOException {
+        if (product.getNumTiePointGrids() == 0) {
+            return;
+        }
+        final File tpgDir = new File(outputDir, ZarrConstants.TIE_POINT_GRID_GROUP);
+        if (!tpgDir.exists() && !tpgDir.mkdirs()) {
+            throw new IOException("Unable to create folders in " + tpgDir);
+        }
+        writeGroup(tpgDir);
+
+        for (TiePointGrid tpg : product.getTiePointGrids()) {
+            final int width = tpg.getGridWidth();
+            final int height = tpg.getGridHeight();
+            final ZarrArray array = ZarrArray.create(new File(tpgDir, tpg.getName()), ProductData.TYPE_FLOAT32,
+                    width, height, width, height, compressor, 0);
+            final byte[] raw = new byte[array.getChunkSize()];
+            ZarrArray.put(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), 0,
+                    tpg.getTiePoints(), 0, width * height);
+            array.writeChunk(0, 0, raw);
+            ZarrArray.writeJSON(new File(array.getDir(), ZarrArray.ZATTRS), getTiePointGridAttributes(tpg));
+        }
+    }
+
+    /**
+     * Write the product attributes and the abstracted metadata.
+     */
+    @SuppressWarnings("unchecked")
+    private void writeHeader() throws IOException {
+        final Product product = getSourceProduct();
+
+        final JSONObject productAttrs = new JSONObject();
+        productAttrs.put(ZarrConstants.NAME, product.getName());
+        productAttrs.put(ZarrConstants.TYPE, product.getProductType());
+        productAttrs.put(ZarrConstants.DESCRIPTION, product.getDescription());
+        productAttrs.put(ZarrConstants.WIDTH, product.getSceneRasterWidth());
+        productAttrs.put(ZarrConstants.HEIGHT, product.getSceneRasterHeight());
+        if (product.getStartTime() != null) {
+            productAttrs.put(ZarrConstants.START_TIME, product.getStartTime().format());
+        }
+        if (product.getEndTime() != null) {
+            productAttrs.put(ZarrConstants.END_TIME, product.getEndTime().format());
+        }
+
+        final JSONArray bands = new JSONArray();
+        final JSONObject virtualBands = new JSONObject();
+        for (Band band : product.getBands()) {
+            if (band instanceof VirtualBand) {
+                final JSONObject attrs = getBandAttributes(band);
+                attrs.put(ZarrConstants.DATA_TYPE, ProductData.getTypeString(band.getDataType()));
+                attrs.put(ZarrConstants.EXPRESSION, ((VirtualBand) band).getExpression());
+                virtualBands.put(band.getName(), attrs);
+                bands.add(band.getName());
+            } else if (bandArrays.containsKey(band)) {
+                bands.add(band.getName());
+            }
+        }
+
+        final JSONArray tiePointGrids = new JSONArray();
+        for (TiePointGrid tpg : product.getTiePointGrids()) {
+            tiePointGrids.add(tpg.getName());
+        }
+
+        final JSONObject attrs = new JSONObject();
+        attrs.put(ZarrConstants.PRODUCT, productAttrs);
+        attrs.put(ZarrConstants.BANDS, bands);
+        attrs.put(ZarrConstants.VIRTUAL_BANDS, virtualBands);
+        attrs.put(ZarrConstants.TIE_POINT_GRIDS, tiePointGrids);
+        final JSONObject geoCoding = getGeoCodingAttributes(product.getSceneGeoCoding());
+        if (geoCoding != null) {
+            attrs.put(ZarrConstants.GEOCODING, geoCoding);
+        }
+        ZarrArray.writeJSON(new File(outputDir, ZarrArray.ZATTRS), attrs);
+
+        final MetadataElement absRoot = AbstractMetadata.getAbstractedMetadata(product);
+        if (absRoot != null) {
+            AbstractMetadataIO.saveExternalMetadata(product, absRoot, new File(outputDir, ZarrConstants.METADATA_FILE));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject getBandAttributes(final Band band) {
+        final JSONObject attrs = new JSONObject();
+        if (band.getUnit() != null) {
+            attrs.put(ZarrConstants.UNIT, band.getUnit());
+        }
+        if (band.getDescription() != null) {
+            attrs.put(ZarrConstants.DESCRIPTION, band.getDescription());
+        }
+        attrs.put(ZarrConstants.NO_DATA_VALUE_USED, band.isNoDataValueUsed());
+        attrs.put(ZarrConstants.NO_DATA_VALUE, ZarrArray.toJSONNumber(band.getNoDataValue()));
+        if (band.getValidPixelExpression() != null) {
+            attrs.put(ZarrConstants.VALID_PIXEL_EXPRESSION, band.getValidPixelExpression());
+        }
+        attrs.put(ZarrConstants.SCALING_FACTOR, band.getScalingFactor());
+        attrs.put(ZarrConstants.SCALING_OFFSET, band.getScalingOffset());
+        attrs.put(ZarrConstants.LOG10_SCALED, band.isLog10Scaled());
+        attrs.put(ZarrConstants.SPECTRAL_WAVELENGTH, band.getSpectralWavelength());
+        attrs.put(ZarrConstants.SPECTRAL_BANDWIDTH, band.getSpectralBandwidth());
+        return attrs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject getTiePointGridAttributes(final TiePointGrid tpg) {
+        final JSONObject attrs = new JSONObject();
+        if (tpg.getUnit() != null) {
+            attrs.put(ZarrConstants.UNIT, tpg.getUnit());
+        }
+        if (tpg.getDescription() != null) {
+            attrs.put(ZarrConstants.DESCRIPTION, tpg.getDescription());
+        }
+        attrs.put(ZarrConstants.OFFSET_X, tpg.getOffsetX());
+        attrs.put(ZarrConstants.OFFSET_Y, tpg.getOffsetY());
+        attrs.put(ZarrConstants.SUBSAMPLING_X, tpg.getSubSamplingX());
+        attrs.put(ZarrConstants.SUBSAMPLING_Y, tpg.getSubSamplingY());
+        attrs.put(ZarrConstants.DISCONTINUITY, tpg.getDiscontinuity());
+        return attrs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject getGeoCodingAttributes(final GeoCoding geoCoding) {
+        if (geoCoding instanceof TiePointGeoCoding) {
+            final TiePointGeoCoding tpGeoCoding = (TiePointGeoCoding) geoCoding;
+            final JSONObject attrs = new JSONObject();
+            attrs.put(ZarrConstants.TYPE, ZarrConstants.GEOCODING_TIE_POINT);
+            attrs.put(ZarrConstants.LAT_GRID, tpGeoCoding.getLatGrid().getName());
+            attrs.put(ZarrConstants.LON_GRID, tpGeoCoding.getLonGrid().getName());
+            return attrs;
+        } else if (geoCoding instanceof CrsGeoCoding &&
+                geoCoding.getImageToMapTransform() instanceof AffineTransform) {
+            final double[] matrix = new double[6];
+            ((AffineTransform) geoCoding.getImageToMapTransform()).getMatrix(matrix);
+            final JSONArray imageToMap = new JSONArray();
+            for (double v : matrix) {
+                imageToMap.add(v);
+            }
+            final JSONObject attrs = new JSONObject();
+            attrs.put(ZarrConstants.TYPE, ZarrConstants.GEOCODING_CRS);
+            attrs.put(ZarrConstants.WKT, geoCoding.getMapCRS().toWKT());
+            attrs.put(ZarrConstants.IMAGE_TO_MAP, imageToMap);
+            return attrs;
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void writeBandRasterData(Band sourceBand,
+                                    int sourceOffsetX, int sourceOffsetY,
+                                    int sourceWidth, int sourceHeight,
+                                    ProductData sourceBuffer,
+                                    ProgressMonitor pm) throws IOException {
+        Guardian.assertNotNull("sourceBand", sourceBand);
+        Guardian.assertNotNull("sourceBuffer", sourceBuffer);
+        final ZarrArray array = bandArrays.get(sourceBand);
+        if (array == null) {
+            throw new IOException("Band " + sourceBand.getName() + " is not written to " + outputDir);
+        }
+
+        final int chunkWidth = array.getChunkWidth();
+        final int chunkHeight = array.getChunkHeight();
+        final int firstChunkX = sourceOffsetX / chunkWidth;
+        final int lastChunkX = (sourceOffsetX + sourceWidth - 1) / chunkWidth;
+        final int firstChunkY = sourceOffsetY / chunkHeight;
+        final int lastChunkY = (sourceOffsetY + sourceHeight - 1) / chunkHeight;
+
+        pm.beginTask("Writing band '" + sourceBand.getName() + "'...", lastChunkY - firstChunkY + 1);
+        try {
+            for (int cy = firstChunkY; cy <= lastChunkY; ++cy) {
+                for (int cx = firstChunkX; cx <= lastChunkX; ++cx) {
+                    final Region region = new Region(array, cx, cy,
+                            sourceOffsetX, sourceOffsetY, sourceWidth, sourceHeight);
+                    if (region.coversChunk()) {
+                        final byte[] raw = new byte[array.getChunkSize()];
+                        region.copy(sourceBuffer.getElems(), raw);
+                        array.writeChunk(cx, cy, raw);
+                    } else {
+                        writePartialChunk(array, region, sourceBuffer.getElems());
+                    }
+                }
+                pm.worked(1);
+            }
+        } finally {
+            pm.done();
+        }
+    }
+
+    private void writePartialChunk(final ZarrArray array, final Region region, final Object elems) throws IOException {
+        final String key = array.getDir().getName() + '/' + region.chunkY + '.' + region.chunkX;
+        while (true) {
+            final PendingChunk pending = pendingChunks.computeIfAbsent(key,
+                    k -> new PendingChunk(array, region.chunkX, region.chunkY));
+            synchronized (pending) {
+                if (pending.written) {
+                    continue;   // completed by another thread meanwhile
+                }
+                if (pending.raw == null) {
+                    // continue from a chunk written before, e.g. by a flush
+                    final byte[] existing = array.readChunk(region.chunkX, region.chunkY);
+                    pending.raw = existing != null ? existing : array.createFilledChunk();
+                }
+                region.copy(elems, pending.raw);
+                region.cover(pending.covered);
+
+                if (pending.covered.cardinality() >= region.getValidChunkArea()) {
+                    array.writeChunk(region.chunkX, region.chunkY, pending.raw);
+                    pending.written = true;
+                    pendingChunks.remove(key, pending);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes all data in memory to disk. After a flush operation, the writer can be closed safely
+     *
+     * @throws IOException on failure
+     */
+    public void flush() throws IOException {
+        for (PendingChunk pending : pendingChunks.values()) {
+            synchronized (pending) {
+                if (!pending.written && pending.raw != null) {
+                    pending.array.writeChunk(pending.chunkX, pending.chunkY, pending.raw);
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes all output streams currently open.
+     *
+     * @throws IOException on failure
+     */
+    public void close() throws IOException {
+        if (outputDir == null) {
+            return;
+        }
+        flush();
+        pendingChunks.clear();
+        if (outputDir.exists()) {
+            writeHeader();
+        }
+        bandArrays.clear();
+        outputDir = null;
+    }
+
+    /**
+     * Deletes the physically representation of the product from the hard disk.
+     */
+    public void deleteOutput() throws IOException {
+        pendingChunks.clear();
+        if (outputDir != null && outputDir.exists() && !FileUtils.deleteTree(outputDir)) {
+            throw new IOException("Unable to delete " + outputDir);
+        }
+    }
+
+    @Override
+    public boolean shouldWrite(final ProductNode node) {
+        if (node instanceof VirtualBand || node instanceof FilterBand) {
+            return false;
+        }
+        return super.shouldWrite(node);
+    }
+
+    /**
+     * The part of a chunk covered by a write.
+     */
+    private static final class Region {
+        final ZarrArray array;
+        final int chunkX, chunkY;
+        final int x, y, width, height;        // in the raster
+        final int srcOffsetX, srcOffsetY, srcWidth;
+
+        Region(final ZarrArray array, final int chunkX, final int chunkY,
+               final int srcOffsetX, final int srcOffsetY, final int srcWidth, final int srcHeight) {
+            this.array = array;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+            final int chunkX0 = chunkX * array.getChunkWidth();
+            final int chunkY0 = chunkY * array.getChunkHeight();
+            this.x = Math.max(srcOffsetX, chunkX0);
+            this.y = Math.max(srcOffsetY, chunkY0);
+            this.width = Math.min(srcOffsetX + srcWidth, chunkX0 + array.getChunkWidth()) - x;
+            this.height = Math.min(srcOffsetY + srcHeight, chunkY0 + array.getChunkHeight()) - y;
+            this.srcOffsetX = srcOffsetX;
+            this.srcOffsetY = srcOffsetY;
+            this.srcWidth = srcWidth;
+        }
+
+        /**
+         * @return the area of the chunk inside the raster
+         */
+        long getValidChunkArea() {
+            final int w = Math.min(array.getChunkWidth(), array.getWidth() - chunkX * array.getChunkWidth());
+            final int h = Math.min(array.getChunkHeight(), array.getHeight() - chunkY * array.getChunkHeight());
+            return (long) w * h;
+        }
+
+        boolean coversChunk() {
+            return x == chunkX * array.getChunkWidth() && y == chunkY * array.getChunkHeight() &&
+                    (long) width * height == getValidChunkArea();
+        }
+
+        void copy(final Object elems, final byte[] raw) {
+            final ByteBuffer chunk = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+            final int chunkWidth = array.getChunkWidth();
+            final int chunkX0 = chunkX * chunkWidth;
+            final int chunkY0 = chunkY * array.getChunkHeight();
+            for (int row = y; row < y + height; ++row) {
+                ZarrArray.put(chunk, (row - chunkY0) * chunkWidth + (x - chunkX0),
+                        elems, (row - srcOffsetY) * srcWidth + (x - srcOffsetX), width);
+            }
+        }
+
+        /**
+         * Mark the samples of the region in a chunk, so that samples written more than once count once.
+         */
+        void cover(final BitSet covered) {
+            final int chunkWidth = array.getChunkWidth();
+            final int chunkX0 = chunkX * chunkWidth;
+            final int chunkY0 = chunkY * array.getChunkHeight();
+            for (int row = y; row < y + height; ++row) {
+                final int start = (row - chunkY0) * chunkWidth + (x - chunkX0);
+                covered.set(start, start + width);
+            }
+        }
+    }
+
+    /**
+     * A chunk gathered from writes which do not cover it completely.
+     */
+    private static final class PendingChunk {
+        final ZarrArray array;
+        final int chunkX, chunkY;
+        final BitSet covered = new BitSet();
+        byte[] raw;
+        boolean written;
+
+        PendingChunk(final ZarrArray array, final int chunkX, final int chunkY) {
+            this.array = array;
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+    }
+}
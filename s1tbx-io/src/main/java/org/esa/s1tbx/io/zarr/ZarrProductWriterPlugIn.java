@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import org.esa.snap.core.dataio.EncodeQualification;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.dataio.ProductWriterPlugIn;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.util.io.SnapFileFilter;
+
+import java.io.File;
+import java.util.Locale;
+
+/**
+ * The writer plug-in for chunked Zarr products.
+ */
+public class ZarrProductWriterPlugIn implements ProductWriterPlugIn {
+
+    private final SnapFileFilter fileFilter = new SnapFileFilter(getFormatNames()[0], getDefaultFileExtensions(), getDescription(null));
+
+    /**
+     * Constructs a new Zarr product writer plug-in instance.
+     */
+    public ZarrProductWriterPlugIn() {
+    }
+
+    @Override
+    public EncodeQualification getEncodeQualification(Product product) {
+        return new EncodeQualification(EncodeQualification.Preservation.PARTIAL,
+                "Only tie point and CRS geo-codings, the abstracted metadata and the band properties are preserved.");
+    }
+
+    /**
+     * Returns a string array containing the single entry.
+     */
+    public String[] getFormatNames() {
+        return ZarrProductReaderPlugIn.FORMATS;
+    }
+
+    /**
+     * Gets the default file extensions associated with each of the format names returned by the <code>{@link
+     * #getFormatNames}</code> method.
+     *
+     * @return the default file extensions for this product I/O plug-in, never <code>null</code>
+     */
+    public String[] getDefaultFileExtensions() {
+        return ZarrProductReaderPlugIn.EXTs;
+    }
+
+    /**
+     * Returns an array containing the classes that represent valid output types for this product writer.
+     *
+     * @return an array containing valid output types, never <code>null</code>
+     */
+    public Class[] getOutputTypes() {
+        return new Class[]{String.class, File.class};
+    }
+
+    /**
+     * Gets a short description of this plug-in. If the given locale is set to <code>null</code> the default locale is
+     * used.
+     *
+     * @param locale the locale name for the given decription string, if <code>null</code> the default locale is used
+     * @return a textual description of this product reader/writer
+     */
+    public String getDescription(Locale locale) {
+        return "Zarr chunked product writer";
+    }
+
+    /**
+     * Creates an instance of the actual Zarr product writer class.
+     *
+     * @return a new instance of the <code>ZarrProductWriter</code> class
+     */
+    public ProductWriter createWriterInstance() {
+        return new ZarrProductWriter(this);
+    }
+
+    public SnapFileFilter getProductFileFilter() {
+        return fileFilter;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.gamma;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test writing regions of GAMMA image files
+ */
+public class TestGammaRasterWriter {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testFloatRegions() throws Exception {
+        // lines of 4000 bytes, so that a region of 300 lines is written in more than one group
+        final int width = 1000;
+        final int height = 400;
+        final File file = tmp.newFile("image.rmli");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            // whole lines
+            GammaRasterWriter.writeRegion(channel, floats(0, 0, width, 300, width), 0, 0, width, 300, width);
+            // parts of lines
+            GammaRasterWriter.writeRegion(channel, floats(0, 300, 600, 100, width), 0, 300, 600, 100, width);
+            GammaRasterWriter.writeRegion(channel, floats(600, 300, 400, 100, width), 600, 300, 400, 100, width);
+        }
+
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(ByteOrder.BIG_ENDIAN, buf.order());
+        assertEquals((long) width * height * 4, buf.capacity());
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                assertEquals(sample(x, y, width), buf.getFloat((y * width + x) * 4), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testFComplexRegion() throws Exception {
+        final int width = 7;
+        final File file = tmp.newFile("image.rslc");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            GammaRasterWriter.writeComplexRegion(channel, floats(2, 1, 4, 3, width), negate(floats(2, 1, 4, 3, width)),
+                    4, 2, 1, 4, 3, width);
+        }
+
+        // interleaved I and Q of 4 bytes at the offsets of the region, nothing written elsewhere
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals((3 * width + 6) * 8, buf.capacity());
+        for (int y = 0; y < 4; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int pos = (y * width + x) * 8;
+                if (pos >= buf.capacity()) {
+                    break;
+                }
+                final boolean inside = x >= 2 && x < 6 && y >= 1;
+                assertEquals(inside ? sample(x, y, width) : 0, buf.getFloat(pos), 0);
+                assertEquals(inside ? -sample(x, y, width) : 0, buf.getFloat(pos + 4), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSComplexRegion() throws Exception {
+        final int width = 6;
+        final int height = 3;
+        final ProductData iData = ProductData.createInstance(ProductData.TYPE_INT16, width * height);
+        final ProductData qData = ProductData.createInstance(ProductData.TYPE_INT16, width * height);
+        for (int k = 0; k < width * height; ++k) {
+            iData.setElemIntAt(k, 1000 + k);
+            qData.setElemIntAt(k, -300 - k);
+        }
+        final File file = tmp.newFile("image.slc");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            GammaRasterWriter.writeComplexRegion(channel, iData, qData, 2, 0, 0, width, height, width);
+        }
+
+        // interleaved I and Q of 2 bytes
+        final ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(width * height * 4, buf.capacity());
+        assertEquals(0x03, buf.get(0));
+        assertEquals((byte) 0xE8, buf.get(1));
+        for (int k = 0; k < width * height; ++k) {
+            assertEquals(1000 + k, buf.getShort(k * 4));
+            assertEquals(-300 - k, buf.getShort(k * 4 + 2));
+        }
+    }
+
+    private static ProductData floats(final int offsetX, final int offsetY, final int width, final int height,
+                                      final int rasterWidth) {
+        final ProductData data = ProductData.createInstance(ProductData.TYPE_FLOAT32, width * height);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                data.setElemFloatAt(y * width + x, sample(offsetX + x, offsetY + y, rasterWidth));
+            }
+        }
+        return data;
+    }
+
+    private static ProductData negate(final ProductData data) {
+        for (int k = 0; k < data.getNumElems(); ++k) {
+            data.setElemFloatAt(k, -data.getElemFloatAt(k));
+        }
+        return data;
+    }
+
+    private static float sample(final int x, final int y, final int rasterWidth) {
+        return y * rasterWidth + x + 0.25f;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.netcdf;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test NetCDFBlockReader against reading the variables a line at a time
+ */
+public class TestNetCDFBlockReader {
+
+    private static final int HEIGHT = 150;  // three blocks of 64, 64 and 22 lines
+    private static final int WIDTH = 70;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private String location;
+    private NetcdfFile netcdfFile;
+    private Variable iq;
+    private Variable amplitude;
+
+    @Before
+    public void setUp() throws Exception {
+        final File file = tmp.newFile("blocks.nc");
+        location = file.getAbsolutePath();
+
+        final NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, location);
+        writer.addDimension(null, "lines", HEIGHT);
+        writer.addDimension(null, "samples", WIDTH);
+        writer.addDimension(null, "components", 2);
+        final Variable iqVar = writer.addVariable(null, "iq", DataType.SHORT, "lines samples components");
+        final Variable ampVar = writer.addVariable(null, "amplitude", DataType.FLOAT, "lines samples");
+        writer.create();
+
+        final short[] iqData = new short[HEIGHT * WIDTH * 2];
+        for (int i = 0; i < iqData.length; ++i) {
+            iqData[i] = (short) (i % 2 == 0 ? i / 2 : -i / 2);
+        }
+        final float[] ampData = new float[HEIGHT * WIDTH];
+        for (int i = 0; i < ampData.length; ++i) {
+            ampData[i] = i * 0.5f;
+        }
+        writer.write(iqVar, Array.factory(DataType.SHORT, new int[]{HEIGHT, WIDTH, 2}, iqData));
+        writer.write(ampVar, Array.factory(DataType.FLOAT, new int[]{HEIGHT, WIDTH}, ampData));
+        writer.close();
+
+        netcdfFile = NetcdfFile.open(location);
+        iq = netcdfFile.findVariable("iq");
+        amplitude = netcdfFile.findVariable("amplitude");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        netcdfFile.close();
+    }
+
+    @Test
+    public void testInterleavedComponents() throws Exception {
+        try (NetCDFBlockReader reader = new NetCDFBlockReader(location)) {
+            for (int component = 0; component < 2; ++component) {
+                // within a block, across blocks and the last partial block
+                checkRect(reader, iq, component, 0, 0, WIDTH, 10, false);
+                checkRect(reader, iq, component, 5, 50, 30, 40, false);
+                checkRect(reader, iq, component, 3, 60, 67, HEIGHT - 60, false);
+            }
+            checkRect(reader, amplitude, 0, 7, 0, 20, HEIGHT, false);
+        }
+    }
+
+    @Test
+    public void testFlipY() throws Exception {
+        try (NetCDFBlockReader reader = new NetCDFBlockReader(location)) {
+            checkRect(reader, iq, 1, 0, HEIGHT - 1, WIDTH, HEIGHT, true);
+            checkRect(reader, iq, 0, 10, 100, 25, 80, true);
+            checkRect(reader, amplitude, 0, 0, 70, WIDTH, 20, true);
+        }
+    }
+
+    @Test
+    public void testInvalidComponent() throws Exception {
+        try (NetCDFBlockReader reader = new NetCDFBlockReader(location)) {
+            try {
+                reader.readRect(amplitude, 1, 0, 0, 1, 1, false, new float[1]);
+                fail("IOException expected");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        // room for a single block, so blocks are evicted and loaded again while other threads read them
+        final long blockBytes = 64L * WIDTH * 2 * 2;
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (NetCDFBlockReader reader = new NetCDFBlockReader(location, 2, blockBytes)) {
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < 8; ++t) {
+                final Random random = new Random(t);
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < 50; ++n) {
+                        final int y = random.nextInt(HEIGHT);
+                        final int height = 1 + random.nextInt(HEIGHT - y);
+                        final int x = random.nextInt(WIDTH);
+                        final int width = 1 + random.nextInt(WIDTH - x);
+                        checkRect(reader, iq, random.nextInt(2), x, y, width, height, false);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCloseDuringReads() throws Exception {
+        final NetCDFBlockReader reader = new NetCDFBlockReader(location, 2, 0);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Callable<Void> readUntilClosed = () -> {
+                while (true) {
+                    try {
+                        checkRect(reader, iq, 0, 0, 0, WIDTH, HEIGHT, false);
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+            };
+            final List<Future<Void>> results = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                results.add(executor.submit(readUntilClosed));
+            }
+            Thread.sleep(100);
+            reader.close();
+
+            // every reader stops with an IOException rather than blocking or reading from a closed handle
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new AssertionError(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        try {
+            reader.readRect(amplitude, 0, 0, 0, 1, 1, false, new float[1]);
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Compare a rectangle read through the blocks with the same lines read one at a time.
+     */
+    private static void checkRect(final NetCDFBlockReader reader, final Variable variable, final int component,
+                                  final int x, final int y, final int width, final int height, final boolean flipY)
+            throws Exception {
+        final boolean complex = variable.getRank() == 3;
+        final Object dest = complex ? new short[width * height] : new float[width * height];
+        reader.readRect(variable, component, x, y, width, height, flipY, dest);
+
+        for (int r = 0; r < height; ++r) {
+            final int line = flipY ? y - r : y + r;
+            final Array array;
+            synchronized (variable) {
+                array = complex ?
+                        variable.read(new int[]{line, x, 0}, new int[]{1, width, 2}) :
+                        variable.read(new int[]{line, x}, new int[]{1, width});
+            }
+            for (int i = 0; i < width; ++i) {
+                if (complex) {
+                    assertEquals(array.getShort(2 * i + component), ((short[]) dest)[r * width + i]);
+                } else {
+                    assertEquals(array.getFloat(i), ((float[]) dest)[r * width + i], 0.0f);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.netcdf;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the writer thread of the NetCDFWriter
+ */
+public class TestNetCDFWriter {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 120;
+    private static final int TILE_WIDTH = 50;
+    private static final int TILE_HEIGHT = 20;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test(timeout = 60000)
+    public void testConcurrentWrites() throws Exception {
+        final File file = tmp.newFile("concurrent.nc");
+        final Product product = createProduct();
+        final ProductWriter writer = new NetCDFWriterPlugIn().createWriterInstance();
+        writer.writeProductNodes(product, file);
+
+        // more tiles than the queue holds, from several threads
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (Band band : product.getBands()) {
+                for (int y = 0; y < HEIGHT; y += TILE_HEIGHT) {
+                    for (int x = 0; x < WIDTH; x += TILE_WIDTH) {
+                        final int tileX = x;
+                        final int tileY = y;
+                        futures.add(executor.submit(() -> {
+                            writeTile(writer, band, tileX, tileY);
+                            return null;
+                        }));
+                    }
+                }
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        writer.flush();
+        writer.close();
+
+        checkFile(file, HEIGHT);
+    }
+
+    @Test(timeout = 60000)
+    public void testWriteErrorIsReported() throws Exception {
+        final File file = tmp.newFile("error.nc");
+        final Product product = createProduct();
+        final ProductWriter writer = new NetCDFWriterPlugIn().createWriterInstance();
+        writer.writeProductNodes(product, file);
+
+        for (Band band : product.getBands()) {
+            for (int x = 0; x < WIDTH; x += TILE_WIDTH) {
+                writeTile(writer, band, x, 0);
+            }
+        }
+        // a region outside the raster fails in the writer thread
+        final Band band = product.getBandAt(0);
+        writer.writeBandRasterData(band, 0, HEIGHT - 5, TILE_WIDTH, TILE_HEIGHT,
+                ProductData.createInstance(ProductData.TYPE_FLOAT32, TILE_WIDTH * TILE_HEIGHT), ProgressMonitor.NULL);
+
+        try {
+            writer.flush();
+            fail("the write error is not reported by flush");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            writeTile(writer, band, 0, TILE_HEIGHT);
+            fail("the write error is not reported by a later write");
+        } catch (IOException e) {
+            // expected
+        }
+        try {
+            writer.close();
+            fail("the write error is not reported by close");
+        } catch (IOException e) {
+            // expected
+        }
+        writer.close();
+
+        // the file is closed with the tiles written before the error
+        checkFile(file, TILE_HEIGHT);
+    }
+
+    @Test(timeout = 60000)
+    public void testInterruptedWriterThread() throws Exception {
+        final File file = tmp.newFile("interrupted.nc");
+        final Product product = createProduct();
+        final ProductWriter writer = new NetCDFWriterPlugIn().createWriterInstance();
+        writer.writeProductNodes(product, file);
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("NetCDF writer " + file.getName())) {
+                thread.interrupt();
+            }
+        }
+        Thread.sleep(100);
+
+        for (Band band : product.getBands()) {
+            for (int y = 0; y < HEIGHT; y += TILE_HEIGHT) {
+                for (int x = 0; x < WIDTH; x += TILE_WIDTH) {
+                    writeTile(writer, band, x, y);
+                }
+            }
+        }
+        writer.close();
+
+        checkFile(file, HEIGHT);
+    }
+
+    private static Product createProduct() {
+        final Product product = new Product("netcdf_test", "SLC", WIDTH, HEIGHT);
+        product.addBand("amplitude", ProductData.TYPE_FLOAT32);
+        product.addBand("count", ProductData.TYPE_INT16);
+        return product;
+    }
+
+    private static double value(final int bandIndex, final int x, final int y) {
+        return bandIndex == 0 ? y * 1000 + x + 0.25 : x - y;
+    }
+
+    private static void writeTile(final ProductWriter writer, final Band band, final int x0, final int y0)
+            throws IOException {
+        final int bandIndex = band.getProduct().getBandIndex(band.getName());
+        final ProductData data = ProductData.createInstance(band.getDataType(), TILE_WIDTH * TILE_HEIGHT);
+        for (int y = 0; y < TILE_HEIGHT; ++y) {
+            for (int x = 0; x < TILE_WIDTH; ++x) {
+                data.setElemDoubleAt(y * TILE_WIDTH + x, value(bandIndex, x0 + x, y0 + y));
+            }
+        }
+        writer.writeBandRasterData(band, x0, y0, TILE_WIDTH, TILE_HEIGHT, data, ProgressMonitor.NULL);
+    }
+
+    private static void checkFile(final File file, final int linesWritten) throws IOException {
+        final NetcdfFile netcdfFile = NetcdfFile.open(file.getPath());
+        try {
+            final String[] names = {"amplitude", "count"};
+            for (int b = 0; b < names.length; ++b) {
+                final Array array = netcdfFile.findVariable(names[b]).read();
+                for (int y = 0; y < linesWritten; ++y) {
+                    for (int x = 0; x < WIDTH; ++x) {
+                        assertEquals(names[b] + " at " + x + ',' + y,
+                                value(b, x, y), array.getDouble(y * WIDTH + x), 0);
+                    }
+                }
+            }
+        } finally {
+            netcdfFile.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.sentinel1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test decoding Level-0 records through a compiled layout
+ */
+public class TestLevel0RecordFile {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRecords() throws Exception {
+        final Level0RecordLayout layout = new Level0RecordLayout();
+        layout.addField("dateTime", Level0RecordLayout.FLOAT64);
+        layout.addField("deltaSize", Level0RecordLayout.UINT32);
+        layout.addBitField("flag", 0, 1);
+        layout.addBitField("count", 1, 7);
+        layout.addField("offset", Level0RecordLayout.UINT16);
+        layout.addField("size", Level0RecordLayout.UINT64);
+        assertEquals(8 + 4 + 1 + 2 + 8, layout.getRecordLength());
+
+        final int numRecords = 10;
+        final File file = tmp.newFile("s1-index.dat");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < numRecords; ++i) {
+                out.writeDouble(100.5 + i);
+                out.writeInt(0xFFFFFFF0 + i);
+                out.writeByte(0x80 | i);
+                out.writeShort(0xFF00 + i);
+                out.writeLong(i);
+            }
+            // trailing bytes of an incomplete record
+            out.writeShort(0);
+        }
+
+        final Level0RecordFile recordFile = new Level0RecordFile(file, layout);
+        assertEquals(numRecords, recordFile.getNumRecords());
+        assertEquals(105.5, recordFile.getDouble(5, "dateTime"), 0);
+        assertEquals(0xFFFFFFF3L, recordFile.getLong(3, "deltaSize"));
+        assertEquals(1, recordFile.getLong(7, "flag"));
+        assertEquals(7, recordFile.getLong(7, "count"));
+        assertEquals(0xFF09, recordFile.getLong(9, "offset"));
+        assertEquals(4, recordFile.getLong(4, "size"));
+
+        assertEquals(0, recordFile.findRecord("dateTime", 0));
+        assertEquals(3, recordFile.findRecord("dateTime", 103.0));
+        assertEquals(3, recordFile.findRecord("dateTime", 103.5));
+        assertEquals(numRecords, recordFile.findRecord("dateTime", 1000));
+
+        // records can not be read once the file is unmapped
+        recordFile.close();
+        recordFile.close();
+        try {
+            recordFile.getDouble(5, "dateTime");
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("s1-index.dat"));
+        }
+    }
+}
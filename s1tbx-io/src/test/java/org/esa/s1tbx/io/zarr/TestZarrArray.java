@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test the chunk codecs of ZarrArray
+ */
+public class TestZarrArray {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testLZ4() throws Exception {
+        final Random random = new Random(1);
+        for (int n : new int[]{0, 1, 12, 13, 100, 65536, 300000}) {
+            final byte[] noise = new byte[n];
+            random.nextBytes(noise);
+            final byte[] runs = new byte[n];
+            for (int i = 0; i < n; ++i) {
+                runs[i] = (byte) (i / 1000);
+            }
+            for (byte[] src : new byte[][]{noise, runs}) {
+                final byte[] compressed = new byte[LZ4.maxCompressedLength(n)];
+                final int len = LZ4.compress(src, 0, n, compressed, 0);
+                final byte[] dst = new byte[n];
+                LZ4.decompress(compressed, 0, len, dst, 0, n);
+                assertArrayEquals(src, dst);
+            }
+        }
+    }
+
+    @Test
+    public void testShuffle() {
+        final byte[] src = new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13};
+        final byte[] shuffled = ZarrArray.shuffle(src, 4);
+        assertArrayEquals(new byte[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12, 13}, shuffled);
+        assertArrayEquals(src, ZarrArray.unshuffle(shuffled, 4));
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        for (ZarrArray.Compressor compressor : ZarrArray.Compressor.values()) {
+            final File dir = new File(tmp.getRoot(), compressor.name());
+            ZarrArray.create(dir, ProductData.TYPE_FLOAT32, 100, 70, 64, 32, compressor, Double.NaN);
+
+            final ZarrArray array = ZarrArray.open(dir);
+            assertEquals(ProductData.TYPE_FLOAT32, array.getDataType());
+            assertEquals(100, array.getWidth());
+            assertEquals(70, array.getHeight());
+            assertEquals(64, array.getChunkWidth());
+            assertEquals(32, array.getChunkHeight());
+            assertTrue(Double.isNaN(array.getFillValue()));
+
+            final float[] samples = new float[64 * 32];
+            for (int i = 0; i < samples.length; ++i) {
+                samples[i] = (float) Math.sin(i * 0.01);
+            }
+            final byte[] raw = new byte[array.getChunkSize()];
+            ZarrArray.put(ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN), 0, samples, 0, samples.length);
+            array.writeChunk(1, 2, raw);
+
+            assertNull(array.readChunk(0, 0));
+            final float[] result = new float[samples.length];
+            ZarrArray.get(ByteBuffer.wrap(array.readChunk(1, 2)).order(ByteOrder.LITTLE_ENDIAN), 0, result, 0, result.length);
+            assertArrayEquals(samples, result, 0);
+
+            final float[] fill = new float[1];
+            ZarrArray.get(ByteBuffer.wrap(array.createFilledChunk()).order(ByteOrder.LITTLE_ENDIAN), 5, fill, 0, 1);
+            assertTrue(Float.isNaN(fill[0]));
+        }
+    }
+}
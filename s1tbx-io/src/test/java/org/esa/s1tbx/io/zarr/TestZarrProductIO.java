@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.io.zarr;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.dataio.ProductWriter;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.TiePointGeoCoding;
+import org.esa.snap.core.datamodel.TiePointGrid;
+import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * To test writing a product with the ZarrProductWriter and reading it back with the ZarrProductReader
+ */
+public class TestZarrProductIO {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+    private static final int CHUNK_WIDTH = 128;     // edge chunks of 44 samples
+    private static final int CHUNK_HEIGHT = 64;     // edge chunks of 8 lines
+    private static final float NO_DATA = -1;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final File file = new File(tmp.getRoot(), "product.zarr");
+        writeProduct(file);
+
+        final ZarrProductReader reader = (ZarrProductReader) new ZarrProductReaderPlugIn().createReaderInstance();
+        final Product product = reader.readProductNodes(file, null);
+        try {
+            assertEquals("zarr_test", product.getName());
+            assertEquals("SLC", product.getProductType());
+            assertEquals(WIDTH, product.getSceneRasterWidth());
+            assertEquals(HEIGHT, product.getSceneRasterHeight());
+            assertEquals(CHUNK_WIDTH, product.getPreferredTileSize().width);
+            assertEquals(CHUNK_HEIGHT, product.getPreferredTileSize().height);
+
+            // bands
+            final Band amplitude = product.getBand("Amplitude_VV");
+            assertEquals(ProductData.TYPE_FLOAT32, amplitude.getDataType());
+            assertEquals("amplitude", amplitude.getUnit());
+            assertTrue(amplitude.isNoDataValueUsed());
+            assertEquals(NO_DATA, amplitude.getNoDataValue(), 0);
+            assertEquals(ProductData.TYPE_INT16, product.getBand("i_VV").getDataType());
+            final Band intensity = product.getBand("Intensity_VV");
+            assertTrue(intensity instanceof VirtualBand);
+            assertEquals("Amplitude_VV * Amplitude_VV", ((VirtualBand) intensity).getExpression());
+
+            // the full rasters, including the chunk left partial and flushed on close
+            final ProductData amplitudeData = ProductData.createInstance(ProductData.TYPE_FLOAT32, WIDTH * HEIGHT);
+            reader.readBandRasterData(amplitude, 0, 0, WIDTH, HEIGHT, amplitudeData, ProgressMonitor.NULL);
+            final ProductData iData = ProductData.createInstance(ProductData.TYPE_INT16, WIDTH * HEIGHT);
+            reader.readBandRasterData(product.getBand("i_VV"), 0, 0, WIDTH, HEIGHT, iData, ProgressMonitor.NULL);
+            for (int y = 0; y < HEIGHT; ++y) {
+                for (int x = 0; x < WIDTH; ++x) {
+                    final float expected = isSkipped(x, y) ? NO_DATA : amplitude(x, y);
+                    assertEquals(expected, amplitudeData.getElemFloatAt(y * WIDTH + x), 0);
+                    assertEquals(i(x, y), iData.getElemIntAt(y * WIDTH + x));
+                }
+            }
+
+            // a subsampled read across edge chunks
+            final int stepX = 3;
+            final int stepY = 7;
+            final int destWidth = 40;
+            final int destHeight = 20;
+            final ProductData subsampled = ProductData.createInstance(ProductData.TYPE_INT16, destWidth * destHeight);
+            reader.readBandRasterDataImpl(181, 63, (destWidth - 1) * stepX + 1, (destHeight - 1) * stepY + 1,
+                    stepX, stepY, product.getBand("i_VV"), 0, 0, destWidth, destHeight, subsampled,
+                    ProgressMonitor.NULL);
+            for (int dy = 0; dy < destHeight; ++dy) {
+                for (int dx = 0; dx < destWidth; ++dx) {
+                    assertEquals(i(181 + dx * stepX, 63 + dy * stepY), subsampled.getElemIntAt(dy * destWidth + dx));
+                }
+            }
+
+            // tie point grids and geocoding
+            final TiePointGrid lat = product.getTiePointGrid("latitude");
+            assertNotNull(lat);
+            assertEquals(4, lat.getGridWidth());
+            assertEquals(3, lat.getGridHeight());
+            assertEquals(100, lat.getSubSamplingX(), 0);
+            assertEquals(0.5, lat.getOffsetX(), 0);
+            assertEquals(45.25f, lat.getTiePoints()[5], 0);
+            assertTrue(product.getSceneGeoCoding() instanceof TiePointGeoCoding);
+
+            // abstracted metadata
+            final MetadataElement absRoot = AbstractMetadata.getAbstractedMetadata(product);
+            assertEquals("SENTINEL-1A", absRoot.getAttributeString(AbstractMetadata.MISSION));
+            assertEquals(2.33, absRoot.getAttributeDouble(AbstractMetadata.range_spacing), 1e-9);
+        } finally {
+            product.dispose();
+        }
+    }
+
+    @Test
+    public void testRewrittenRegion() throws Exception {
+        final File file = new File(tmp.getRoot(), "rewritten.zarr");
+        final Product product = new Product("zarr_test", "SLC", WIDTH, HEIGHT);
+        product.setPreferredTileSize(CHUNK_WIDTH, CHUNK_HEIGHT);
+        final Band amplitude = product.addBand("Amplitude_VV", ProductData.TYPE_FLOAT32);
+        final ProductWriter writer = new ZarrProductWriterPlugIn().createWriterInstance();
+        writer.writeProductNodes(product, file);
+        final File chunkFile = new File(new File(file, amplitude.getName()), "0.0");
+
+        // the upper half of the first chunk written twice does not complete it
+        final ProductData upper = ProductData.createInstance(ProductData.TYPE_FLOAT32, CHUNK_WIDTH * 32);
+        writer.writeBandRasterData(amplitude, 0, 0, CHUNK_WIDTH, 32, upper, ProgressMonitor.NULL);
+        writer.writeBandRasterData(amplitude, 0, 0, CHUNK_WIDTH, 32, upper, ProgressMonitor.NULL);
+        assertFalse(chunkFile.exists());
+
+        final ProductData lower = ProductData.createInstance(ProductData.TYPE_FLOAT32, CHUNK_WIDTH * 32);
+        writer.writeBandRasterData(amplitude, 0, 32, CHUNK_WIDTH, 32, lower, ProgressMonitor.NULL);
+        assertTrue(chunkFile.exists());
+
+        writer.close();
+        product.dispose();
+    }
+
+    private static void writeProduct(final File file) throws Exception {
+        final Product product = new Product("zarr_test", "SLC", WIDTH, HEIGHT);
+        product.setPreferredTileSize(CHUNK_WIDTH, CHUNK_HEIGHT);
+
+        final Band amplitude = product.addBand("Amplitude_VV", ProductData.TYPE_FLOAT32);
+        amplitude.setUnit("amplitude");
+        amplitude.setNoDataValue(NO_DATA);
+        amplitude.setNoDataValueUsed(true);
+        product.addBand("i_VV", ProductData.TYPE_INT16);
+        product.addBand(new VirtualBand("Intensity_VV", ProductData.TYPE_FLOAT32, WIDTH, HEIGHT,
+                "Amplitude_VV * Amplitude_VV"));
+
+        final float[] latPoints = new float[12];
+        final float[] lonPoints = new float[12];
+        for (int k = 0; k < latPoints.length; ++k) {
+            latPoints[k] = 45 + 0.05f * k;
+            lonPoints[k] = 10 + 0.1f * k;
+        }
+        final TiePointGrid lat = new TiePointGrid("latitude", 4, 3, 0.5, 0.5, 100, 100, latPoints);
+        final TiePointGrid lon = new TiePointGrid("longitude", 4, 3, 0.5, 0.5, 100, 100, lonPoints);
+        product.addTiePointGrid(lat);
+        product.addTiePointGrid(lon);
+        product.setSceneGeoCoding(new TiePointGeoCoding(lat, lon));
+
+        final MetadataElement absRoot = AbstractMetadata.addAbstractedMetadataHeader(product.getMetadataRoot());
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.MISSION, "SENTINEL-1A");
+        AbstractMetadata.setAttribute(absRoot, AbstractMetadata.range_spacing, 2.33);
+
+        final ProductWriter writer = new ZarrProductWriterPlugIn().createWriterInstance();
+        writer.writeProductNodes(product, file);
+
+        // tiles of 100 x 50 which are not aligned to the chunks, one of them never written
+        for (int y = 0; y < HEIGHT; y += 50) {
+            for (int x = 0; x < WIDTH; x += 100) {
+                if (isSkipped(x, y)) {
+                    continue;
+                }
+                final ProductData data = ProductData.createInstance(ProductData.TYPE_FLOAT32, 100 * 50);
+                for (int r = 0; r < 50; ++r) {
+                    for (int c = 0; c < 100; ++c) {
+                        data.setElemFloatAt(r * 100 + c, amplitude(x + c, y + r));
+                    }
+                }
+                writer.writeBandRasterData(amplitude, x, y, 100, 50, data, ProgressMonitor.NULL);
+            }
+        }
+
+        // strips of full lines
+        final Band iBand = product.getBand("i_VV");
+        for (int y = 0; y < HEIGHT; y += 30) {
+            final int height = Math.min(30, HEIGHT - y);
+            final ProductData data = ProductData.createInstance(ProductData.TYPE_INT16, WIDTH * height);
+            for (int r = 0; r < height; ++r) {
+                for (int c = 0; c < WIDTH; ++c) {
+                    data.setElemIntAt(r * WIDTH + c, i(c, y + r));
+                }
+            }
+            writer.writeBandRasterData(iBand, 0, y, WIDTH, height, data, ProgressMonitor.NULL);
+        }
+
+        writer.close();
+        product.dispose();
+    }
+
+    private static boolean isSkipped(final int x, final int y) {
+        return x >= 200 && y >= 150;
+    }
+
+    private static float amplitude(final int x, final int y) {
+        return y * 1000 + x + 0.5f;
+    }
+
+    private static int i(final int x, final int y) {
+        return (short) (x * 7 - y * 13);
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Connected component labelling of a binary mask over a scene cut into a grid of tiles.
+ * <p>
+ * Each tile is labelled on its own with a two pass union-find over 8-connected neighbours, keeping only the
+ * moments of its components and the labels along its edges, so tiles may be added concurrently. Once all tiles
+ * are added, the edge labels of neighbouring tiles are joined into whole-scene components whose moments are
+ * the sums of their parts. Pixel lists are never kept: the cost is linear in the number of pixels and the memory
+ * in the number of components.
+ */
+public final class ConnectedComponents {
+
+    private static final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(Workspace::new);
+
+    private final int sceneWidth;
+    private final int sceneHeight;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int numTilesX;
+    private final int numTilesY;
+    private final TileComponents[] tiles;
+
+    private int numComponents = 0;
+    private int[] area;
+    private int[] minX;
+    private int[] maxX;
+    private int[] minY;
+    private int[] maxY;
+    private double[] sumX;
+    private double[] sumY;
+    private double[] sumValue;
+
+    /**
+     * @param sceneWidth  the width of the scene
+     * @param sceneHeight the height of the scene
+     * @param tileWidth   the width of the tiles, those of the last column may be narrower
+     * @param tileHeight  the height of the tiles, those of the last row may be shorter
+     */
+    public ConnectedComponents(final int sceneWidth, final int sceneHeight, final int tileWidth, final int tileHeight) {
+        this.sceneWidth = sceneWidth;
+        this.sceneHeight = sceneHeight;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.numTilesX = (sceneWidth + tileWidth - 1) / tileWidth;
+        this.numTilesY = (sceneHeight + tileHeight - 1) / tileHeight;
+        this.tiles = new TileComponents[numTilesX * numTilesY];
+    }
+
+    /**
+     * @return the rectangles of the tiles, indexed by tile index
+     */
+    public Rectangle[] getTileRectangles() {
+        final Rectangle[] rectangles = new Rectangle[tiles.length];
+        for (int t = 0; t < tiles.length; ++t) {
+            rectangles[t] = getTileRectangle(t);
+        }
+        return rectangles;
+    }
+
+    private Rectangle getTileRectangle(final int tileIndex) {
+        final int x0 = (tileIndex % numTilesX) * tileWidth;
+        final int y0 = (tileIndex / numTilesX) * tileHeight;
+        return new Rectangle(x0, y0, Math.min(tileWidth, sceneWidth - x0), Math.min(tileHeight, sceneHeight - y0));
+    }
+
+    /**
+     * Label the components of one tile. Different tiles may be added concurrently.
+     *
+     * @param tileIndex the tile
+     * @param mask      the mask of the tile rectangle, row by row, non zero for pixels belonging to components
+     * @param values    the intensities of the tile rectangle to sum over each component, or null
+     */
+    public void addTile(final int tileIndex, final byte[] mask, final double[] values) {
+        final Rectangle rect = getTileRectangle(tileIndex);
+        final Workspace ws = workspace.get();
+        final int count = ws.label(mask, rect.width, rect.height);
+        tiles[tileIndex] = new TileComponents(rect, count, ws.labels, values);
+    }
+
+    /**
+     * Join the components of all tiles across the tile borders. To be called once all tiles are added.
+     */
+    public void merge() {
+        final int[] offsets = new int[tiles.length];
+        int total = 0;
+        for (int t = 0; t < tiles.length; ++t) {
+            if (tiles[t] == null) {
+                throw new IllegalStateException("Tile " + t + " has not been labelled");
+            }
+            offsets[t] = total;
+            total += tiles[t].count;
+        }
+
+        final int[] parent = new int[total];
+        for (int i = 0; i < total; ++i) {
+            parent[i] = i;
+        }
+
+        // pixels on either side of a horizontal border, over the whole scene width
+        final int[] above = new int[sceneWidth];
+        final int[] below = new int[sceneWidth];
+        for (int ty = 1; ty < numTilesY; ++ty) {
+            for (int tx = 0; tx < numTilesX; ++tx) {
+                final int ta = (ty - 1) * numTilesX + tx;
+                final int tb = ty * numTilesX + tx;
+                toGlobal(tiles[ta].bottom, offsets[ta], above, tx * tileWidth);
+                toGlobal(tiles[tb].top, offsets[tb], below, tx * tileWidth);
+            }
+            joinAcross(above, below, parent);
+        }
+
+        // pixels on either side of a vertical border, over the whole scene height
+        final int[] left = new int[sceneHeight];
+        final int[] right = new int[sceneHeight];
+        for (int tx = 1; tx < numTilesX; ++tx) {
+            for (int ty = 0; ty < numTilesY; ++ty) {
+                final int tl = ty * numTilesX + tx - 1;
+                final int tr = ty * numTilesX + tx;
+                toGlobal(tiles[tl].right, offsets[tl], left, ty * tileHeight);
+                toGlobal(tiles[tr].left, offsets[tr], right, ty * tileHeight);
+            }
+            joinAcross(left, right, parent);
+        }
+
+        // roots are the smallest member, so components are numbered in the order of their first tile
+        final int[] component = new int[total];
+        int n = 0;
+        for (int i = 0; i < total; ++i) {
+            final int root = find(parent, i);
+            component[i] = root == i ? n++ : component[root];
+        }
+
+        allocate(n);
+        for (int t = 0; t < tiles.length; ++t) {
+            final TileComponents tile = tiles[t];
+            tile.component = new int[tile.count];
+            for (int l = 0; l < tile.count; ++l) {
+                final int c = component[offsets[t] + l];
+                tile.component[l] = c;
+                accumulate(tile, l, c);
+            }
+            tile.release();
+        }
+    }
+
+    private static void toGlobal(final int[] labels, final int offset, final int[] dst, final int dstPos) {
+        for (int k = 0; k < labels.length; ++k) {
+            dst[dstPos + k] = labels[k] == 0 ? -1 : offset + labels[k] - 1;
+        }
+    }
+
+    /**
+     * Join the components of two adjacent lines of pixels, each pixel touching its three neighbours across.
+     */
+    private static void joinAcross(final int[] a, final int[] b, final int[] parent) {
+        final int n = a.length;
+        for (int k = 0; k < n; ++k) {
+            if (a[k] < 0) {
+                continue;
+            }
+            if (k > 0 && b[k - 1] >= 0) {
+                union(parent, a[k], b[k - 1]);
+            }
+            if (b[k] >= 0) {
+                union(parent, a[k], b[k]);
+            }
+            if (k < n - 1 && b[k + 1] >= 0) {
+                union(parent, a[k], b[k + 1]);
+            }
+        }
+    }
+
+    private void allocate(final int n) {
+        numComponents = n;
+        area = new int[n];
+        minX = new int[n];
+        maxX = new int[n];
+        minY = new int[n];
+        maxY = new int[n];
+        sumX = new double[n];
+        sumY = new double[n];
+        sumValue = new double[n];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        Arrays.fill(maxX, Integer.MIN_VALUE);
+        Arrays.fill(maxY, Integer.MIN_VALUE);
+    }
+
+    private void accumulate(final TileComponents tile, final int l, final int c) {
+        area[c] += tile.area[l];
+        minX[c] = Math.min(minX[c], tile.minX[l]);
+        maxX[c] = Math.max(maxX[c], tile.maxX[l]);
+        minY[c] = Math.min(minY[c], tile.minY[l]);
+        maxY[c] = Math.max(maxY[c], tile.maxY[l]);
+        sumX[c] += tile.sumX[l];
+        sumY[c] += tile.sumY[l];
+        sumValue[c] += tile.sumValue[l];
+    }
+
+    /**
+     * Find the scene components of the pixels of a tile. The tile mask must be the one it was added with.
+     *
+     * @param tileIndex  the tile
+     * @param mask       the mask of the tile rectangle
+     * @param components the component of each pixel of the tile rectangle, -1 for pixels outside the mask
+     */
+    public void getTileComponents(final int tileIndex, final byte[] mask, final int[] components) {
+        final TileComponents tile = tiles[tileIndex];
+        if (tile == null || tile.component == null) {
+            throw new IllegalStateException("Components have not been merged");
+        }
+        final Workspace ws = workspace.get();
+        final int count = ws.label(mask, tile.width, tile.height);
+        if (count != tile.count) {
+            throw new IllegalArgumentException("Mask of tile " + tileIndex + " differs from the labelled one");
+        }
+        final int[] labels = ws.labels;
+        final int n = tile.width * tile.height;
+        for (int i = 0; i < n; ++i) {
+            components[i] = labels[i] == 0 ? -1 : tile.component[labels[i] - 1];
+        }
+    }
+
+    public int getNumComponents() {
+        return numComponents;
+    }
+
+    /**
+     * @param c the component
+     * @return the number of pixels
+     */
+    public int getArea(final int c) {
+        return area[c];
+    }
+
+    public int getMinX(final int c) {
+        return minX[c];
+    }
+
+    public int getMaxX(final int c) {
+        return maxX[c];
+    }
+
+    public int getMinY(final int c) {
+        return minY[c];
+    }
+
+    public int getMaxY(final int c) {
+        return maxY[c];
+    }
+
+    public double getCentroidX(final int c) {
+        return sumX[c] / area[c];
+    }
+
+    public double getCentroidY(final int c) {
+        return sumY[c] / area[c];
+    }
+
+    /**
+     * @param c the component
+     * @return the sum of the intensities of its pixels, 0 when tiles were added without intensities
+     */
+    public double getValueSum(final int c) {
+        return sumValue[c];
+    }
+
+    /**
+     * @return the area of the largest component, 0 if there are none
+     */
+    public int getMaxArea() {
+        int max = 0;
+        for (int c = 0; c < numComponents; ++c) {
+            max = Math.max(max, area[c]);
+        }
+        return max;
+    }
+
+    /**
+     * Find the root of a label, halving the path on the way.
+     */
+    private static int find(final int[] parent, int l) {
+        while (parent[l] != l) {
+            parent[l] = parent[parent[l]];
+            l = parent[l];
+        }
+        return l;
+    }
+
+    /**
+     * Join the sets of two labels under the smaller root.
+     *
+     * @return the root of the joined set
+     */
+    private static int union(final int[] parent, final int a, final int b) {
+        final int ra = find(parent, a);
+        final int rb = find(parent, b);
+        if (ra < rb) {
+            parent[rb] = ra;
+            return ra;
+        }
+        parent[ra] = rb;
+        return rb;
+    }
+
+    /**
+     * The moments and edge labels of the components of one tile.
+     */
+    private static final class TileComponents {
+        final int width;
+        final int height;
+        final int count;
+
+        int[] area;
+        int[] minX;
+        int[] maxX;
+        int[] minY;
+        int[] maxY;
+        double[] sumX;
+        double[] sumY;
+        double[] sumValue;
+
+        int[] top;
+        int[] bottom;
+        int[] left;
+        int[] right;
+
+        int[] component;
+
+        TileComponents(final Rectangle rect, final int count, final int[] labels, final double[] values) {
+            this.width = rect.width;
+            this.height = rect.height;
+            this.count = count;
+
+            area = new int[count];
+            minX = new int[count];
+            maxX = new int[count];
+            minY = new int[count];
+            maxY = new int[count];
+            sumX = new double[count];
+            sumY = new double[count];
+            sumValue = new double[count];
+            Arrays.fill(minX, Integer.MAX_VALUE);
+            Arrays.fill(minY, Integer.MAX_VALUE);
+
+            for (int y = 0; y < height; ++y) {
+                final int row = y * width;
+                final int sy = rect.y + y;
+                for (int x = 0; x < width; ++x) {
+                    final int l = labels[row + x] - 1;
+                    if (l < 0) {
+                        continue;
+                    }
+                    final int sx = rect.x + x;
+                    ++area[l];
+                    if (sx < minX[l]) {
+                        minX[l] = sx;
+                    }
+                    if (sx > maxX[l]) {
+                        maxX[l] = sx;
+                    }
+                    if (sy < minY[l]) {
+                        minY[l] = sy;
+                    }
+                    maxY[l] = sy;
+                    sumX[l] += sx;
+                    sumY[l] += sy;
+                    if (values != null) {
+                        sumValue[l] += values[row + x];
+                    }
+                }
+            }
+
+            top = new int[width];
+            bottom = new int[width];
+            System.arraycopy(labels, 0, top, 0, width);
+            System.arraycopy(labels, (height - 1) * width, bottom, 0, width);
+            left = new int[height];
+            right = new int[height];
+            for (int y = 0; y < height; ++y) {
+                left[y] = labels[y * width];
+                right[y] = labels[y * width + width - 1];
+            }
+        }
+
+        /**
+         * Drop what is no longer needed once the tile is merged.
+         */
+        void release() {
+            area = minX = maxX = minY = maxY = top = bottom = left = right = null;
+            sumX = sumY = sumValue = null;
+        }
+    }
+
+    /**
+     * Per-thread label and union-find buffers, reused from tile to tile.
+     */
+    private static final class Workspace {
+        int[] labels = new int[0];
+        int[] parent = new int[1];
+        int[] number = new int[1];
+
+        /**
+         * Label the 8-connected components of a mask.
+         *
+         * @return the number of components, labelled 1 to n in the order of their first pixel, 0 marking the
+         * pixels outside the mask
+         */
+        int label(final byte[] mask, final int w, final int h) {
+            final int n = w * h;
+            if (labels.length < n) {
+                labels = new int[n];
+            }
+            final int[] lab = labels;
+            int next = 1;
+
+            // first pass: provisional labels from the neighbours already visited, recording their equivalence
+            for (int y = 0; y < h; ++y) {
+                final int row = y * w;
+                for (int x = 0; x < w; ++x) {
+                    final int i = row + x;
+                    if (mask[i] == 0) {
+                        lab[i] = 0;
+                        continue;
+                    }
+                    int l = x > 0 ? lab[i - 1] : 0;
+                    if (y > 0) {
+                        final int up = i - w;
+                        if (x > 0) {
+                            l = join(l, lab[up - 1]);
+                        }
+                        l = join(l, lab[up]);
+                        if (x < w - 1) {
+                            l = join(l, lab[up + 1]);
+                        }
+                    }
+                    if (l == 0) {
+                        if (next == parent.length) {
+                            parent = Arrays.copyOf(parent, 2 * parent.length);
+                            number = new int[parent.length];
+                        }
+                        l = next++;
+                        parent[l] = l;
+                    }
+                    lab[i] = l;
+                }
+            }
+
+            // second pass: number the roots in order, a root being smaller than the other labels of its set
+            int count = 0;
+            for (int l = 1; l < next; ++l) {
+                final int root = find(parent, l);
+                number[l] = root == l ? ++count : number[root];
+            }
+            for (int i = 0; i < n; ++i) {
+                lab[i] = number[lab[i]];
+            }
+            return count;
+        }
+
+        private int join(final int a, final int b) {
+            if (b == 0) {
+                return a;
+            }
+            if (a == 0 || a == b) {
+                return b;
+            }
+            return union(parent, a, b);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import java.awt.Rectangle;
+
+/**
+ * CFAR detector working on summed-area tables.
+ * <p>
+ * The sums of x, x^2 and the count of valid pixels of a source tile are accumulated once into summed-area tables, so
+ * that the target window mean and the background ring statistics cost four lookups per box whatever the window
+ * sizes. The ring is the background window minus the guard window, both clipped to the source tile. The samples are
+ * shifted by their mean before accumulation to keep the variance free of cancellation. NaN samples are treated as no
+ * data. The tables are kept in a per-thread workspace which is reused between tiles.
+ */
+final class CFARDetector {
+
+    private static final double MAX_NODATA_FRACTION = 0.1;
+    private static final double MIN_TARGET_MEAN = 0.005;
+
+    private final int halfTargetWindowSize;
+    private final int halfGuardWindowSize;
+    private final int halfBackgroundWindowSize;
+
+    private final double t;
+    private final KDistributionThresholds kDistribution;
+    private final double pfa;
+
+    private final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Two-parameter CFAR detector, the threshold is the ring mean plus t ring standard deviations.
+     */
+    CFARDetector(final int halfTargetWindowSize, final int halfGuardWindowSize, final int halfBackgroundWindowSize,
+                 final double t) {
+        this(halfTargetWindowSize, halfGuardWindowSize, halfBackgroundWindowSize, t, null, 0.0);
+    }
+
+    /**
+     * K-distribution CFAR detector, the ring mean and shape are estimated from its first two moments.
+     */
+    CFARDetector(final int halfTargetWindowSize, final int halfGuardWindowSize, final int halfBackgroundWindowSize,
+                 final KDistributionThresholds kDistribution, final double pfa) {
+        this(halfTargetWindowSize, halfGuardWindowSize, halfBackgroundWindowSize, 0.0, kDistribution, pfa);
+    }
+
+    private CFARDetector(final int halfTargetWindowSize, final int halfGuardWindowSize,
+                         final int halfBackgroundWindowSize, final double t,
+                         final KDistributionThresholds kDistribution, final double pfa) {
+        this.halfTargetWindowSize = halfTargetWindowSize;
+        this.halfGuardWindowSize = halfGuardWindowSize;
+        this.halfBackgroundWindowSize = halfBackgroundWindowSize;
+        this.t = t;
+        this.kDistribution = kDistribution;
+        this.pfa = pfa;
+    }
+
+    /**
+     * Detect the target pixels against the background ring of each pixel.
+     *
+     * @param data        the source tile samples
+     * @param source      the source tile, covering the target tile
+     * @param noDataValue the no data value
+     * @param target      the target tile
+     * @param mask        the detections of the target tile (output), 1 for a target
+     */
+    void detect(final float[] data, final Rectangle source, final double noDataValue,
+                final Rectangle target, final byte[] mask) {
+        detect(data, source, noDataValue, target, true, 0.0, mask);
+    }
+
+    /**
+     * Detect the target pixels against a background threshold common to the tile.
+     */
+    void detect(final float[] data, final Rectangle source, final double noDataValue,
+                final Rectangle target, final double backgroundThreshold, final byte[] mask) {
+        detect(data, source, noDataValue, target, false, backgroundThreshold, mask);
+    }
+
+    private void detect(final float[] data, final Rectangle source, final double noDataValue,
+                        final Rectangle target, final boolean ring, final double backgroundThreshold,
+                        final byte[] mask) {
+        final Workspace ws = workspace.get();
+        ws.build(data, source.width, source.height, noDataValue);
+
+        int k = 0;
+        final int maxy = target.y + target.height;
+        final int maxx = target.x + target.width;
+        for (int ty = target.y; ty < maxy; ++ty) {
+            final int y = ty - source.y;
+            for (int tx = target.x; tx < maxx; ++tx, ++k) {
+                final int x = tx - source.x;
+                final double targetMean = computeTargetMean(ws, data, x, y, noDataValue);
+                if (Double.isNaN(targetMean)) {
+                    mask[k] = 0;
+                    continue;
+                }
+
+                double threshold = backgroundThreshold;
+                if (ring) {
+                    if (targetMean < MIN_TARGET_MEAN) {
+                        mask[k] = 0;
+                        continue;
+                    }
+                    threshold = computeBackgroundThreshold(ws, x, y);
+                }
+                mask[k] = (byte) (targetMean > threshold ? 1 : 0);
+            }
+        }
+    }
+
+    /**
+     * @return the mean of the target window centred on tile pixel (x, y), NaN if no data
+     */
+    private double computeTargetMean(final Workspace ws, final float[] data, final int x, final int y,
+                                     final double noDataValue) {
+        final float v = data[y * ws.width + x];
+        if (v == noDataValue || Float.isNaN(v)) {
+            return Double.NaN;
+        }
+        if (halfTargetWindowSize == 0) {
+            return v;
+        }
+
+        final int x0 = Math.max(x - halfTargetWindowSize, 0);
+        final int y0 = Math.max(y - halfTargetWindowSize, 0);
+        final int x1 = Math.min(x + halfTargetWindowSize, ws.width - 1);
+        final int y1 = Math.min(y + halfTargetWindowSize, ws.height - 1);
+
+        final int area = (x1 - x0 + 1) * (y1 - y0 + 1);
+        final int numPixels = ws.count(x0, y0, x1, y1);
+        if (area - numPixels > MAX_NODATA_FRACTION * area) {
+            return Double.NaN;
+        }
+        return ws.offset + ws.sum(ws.sum, x0, y0, x1, y1) / numPixels;
+    }
+
+    /**
+     * @return the detection threshold of the background ring centred on tile pixel (x, y)
+     */
+    private double computeBackgroundThreshold(final Workspace ws, final int x, final int y) {
+        final int bx0 = Math.max(x - halfBackgroundWindowSize, 0);
+        final int by0 = Math.max(y - halfBackgroundWindowSize, 0);
+        final int bx1 = Math.min(x + halfBackgroundWindowSize, ws.width - 1);
+        final int by1 = Math.min(y + halfBackgroundWindowSize, ws.height - 1);
+
+        int numValues = ws.count(bx0, by0, bx1, by1);
+        double sum = ws.sum(ws.sum, bx0, by0, bx1, by1);
+        double sumSq = ws.sum(ws.sumSq, bx0, by0, bx1, by1);
+
+        final int gx0 = Math.max(x - halfGuardWindowSize, bx0);
+        final int gy0 = Math.max(y - halfGuardWindowSize, by0);
+        final int gx1 = Math.min(x + halfGuardWindowSize, bx1);
+        final int gy1 = Math.min(y + halfGuardWindowSize, by1);
+        if (gx0 <= gx1 && gy0 <= gy1) {
+            numValues -= ws.count(gx0, gy0, gx1, gy1);
+            sum -= ws.sum(ws.sum, gx0, gy0, gx1, gy1);
+            sumSq -= ws.sum(ws.sumSq, gx0, gy0, gx1, gy1);
+        }
+        if (numValues <= 0) {
+            return Double.MAX_VALUE;
+        }
+
+        final double shiftedMean = sum / numValues;
+        final double variance = Math.max(sumSq / numValues - shiftedMean * shiftedMean, 0.0);
+        final double mean = ws.offset + shiftedMean;
+
+        if (kDistribution == null) {
+            return mean + Math.sqrt(variance) * t;
+        }
+
+        // mu = <x>, (1 + 1/nu)(1 + 1/L) = <x^2> / <x>^2
+        if (mean <= 0.0) {
+            return Double.MAX_VALUE;
+        }
+        final double meanSq = variance + mean * mean;
+        final double nu = 1.0 / ((meanSq / (mean * mean)) / (1.0 + 1.0 / kDistribution.getNumLooks()) - 1.0);
+        return kDistribution.getThreshold(mean, nu, pfa);
+    }
+
+    private static final class Workspace {
+        int width;
+        int height;
+        double offset;
+        double[] sum = new double[0];
+        double[] sumSq = new double[0];
+        int[] count = new int[0];
+
+        /**
+         * Accumulate the summed-area tables of a tile, with one leading row and column of zeros.
+         */
+        void build(final float[] data, final int w, final int h, final double noDataValue) {
+            width = w;
+            height = h;
+            final int stride = w + 1;
+            final int size = stride * (h + 1);
+            if (sum.length < size) {
+                sum = new double[size];
+                sumSq = new double[size];
+                count = new int[size];
+            }
+
+            double total = 0.0;
+            int numValid = 0;
+            for (int i = 0; i < w * h; ++i) {
+                final float v = data[i];
+                if (v != noDataValue && !Float.isNaN(v)) {
+                    total += v;
+                    ++numValid;
+                }
+            }
+            offset = numValid > 0 ? total / numValid : 0.0;
+
+            for (int x = 0; x < stride; ++x) {
+                sum[x] = 0.0;
+                sumSq[x] = 0.0;
+                count[x] = 0;
+            }
+            for (int y = 0; y < h; ++y) {
+                final int row = (y + 1) * stride;
+                sum[row] = 0.0;
+                sumSq[row] = 0.0;
+                count[row] = 0;
+
+                double rowSum = 0.0, rowSumSq = 0.0;
+                int rowCount = 0;
+                final int yw = y * w;
+                for (int x = 0; x < w; ++x) {
+                    final float v = data[yw + x];
+                    if (v != noDataValue && !Float.isNaN(v)) {
+                        final double d = v - offset;
+                        rowSum += d;
+                        rowSumSq += d * d;
+                        ++rowCount;
+                    }
+                    final int i = row + x + 1;
+                    sum[i] = sum[i - stride] + rowSum;
+                    sumSq[i] = sumSq[i - stride] + rowSumSq;
+                    count[i] = count[i - stride] + rowCount;
+                }
+            }
+        }
+
+        /**
+         * @return the sum of a table over the inclusive box
+         */
+        double sum(final double[] table, final int x0, final int y0, final int x1, final int y1) {
+            final int stride = width + 1;
+            final int top = y0 * stride, bottom = (y1 + 1) * stride;
+            return table[bottom + x1 + 1] - table[top + x1 + 1] - table[bottom + x0] + table[top + x0];
+        }
+
+        int count(final int x0, final int y0, final int x1, final int y1) {
+            final int stride = width + 1;
+            final int top = y0 * stride, bottom = (y1 + 1) * stride;
+            return count[bottom + x1 + 1] - count[top + x1 + 1] - count[bottom + x0] + count[top + x0];
+        }
+    }
+}
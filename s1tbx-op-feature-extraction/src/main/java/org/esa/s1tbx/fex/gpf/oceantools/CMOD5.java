@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * The CMOD5 geophysical model function for the C-band NRCS of the sea surface [1].
+ * <p>
+ * [1] H. Hersbach, CMOD5, "An Improved Geophysical Model Function for ERS C-Band Scatterometry", Report of
+ * the European Centre Medium-Range Weather Forecasts (ECMWF), 2003.
+ */
+final class CMOD5 {
+
+    private final static double c1 = -0.688;
+    private final static double c15 = 0.007;
+    private final static double c2 = -0.793;
+    private final static double c16 = 0.33;
+    private final static double c3 = 0.338;
+    private final static double c17 = 0.012;
+    private final static double c4 = -0.173;
+    private final static double c18 = 22.0;
+    private final static double c5 = 0.0;
+    private final static double c19 = 1.95;
+    private final static double c6 = 0.004;
+    private final static double c20 = 3.0;
+    private final static double c7 = 0.111;
+    private final static double c21 = 8.39;
+    private final static double c8 = 0.0162;
+    private final static double c22 = -3.44;
+    private final static double c9 = 6.34;
+    private final static double c23 = 1.36;
+    private final static double c10 = 2.57;
+    private final static double c24 = 5.35;
+    private final static double c11 = -2.18;
+    private final static double c25 = 1.99;
+    private final static double c12 = 0.4;
+    private final static double c26 = 0.29;
+    private final static double c13 = -0.6;
+    private final static double c27 = 3.80;
+    private final static double c14 = 0.045;
+    private final static double c28 = 1.53;
+
+    private final static double THETM = 40.0;
+    private final static double THETHR = 25.0;
+    private final static double ZPOW = 1.6;
+
+    private final static double y0 = c19;
+    private final static double n = c20;
+    private final static double a = y0 - (y0 - 1) / n;
+    private final static double b = 1 / (n * FastMath.pow(y0 - 1, n - 1));
+
+    /**
+     * Compute normalized radar cross section (NRCS) using CMOD5 model.
+     *
+     * @param v              The wind speed in m/s.
+     * @param cosFI          The cos of the angle between radar look direction and wind direction (in degree).
+     * @param incidenceAngle The incidence angle in degree.
+     * @return The NRCS.
+     */
+    static double compute(final double v, final double cosFI, final double incidenceAngle) {
+
+        final double x = (incidenceAngle - THETM) / THETHR;
+        final double xx = x * x;
+        final double a0 = c1 + c2 * x + c3 * xx + c4 * x * xx;
+        final double a1 = c5 + c6 * x;
+        final double a2 = c7 + c8 * x;
+        final double gamma = c9 + c10 * x + c11 * xx;
+        final double s0 = c12 + c13 * x;
+        final double s = a2 * v;
+        double a3 = 1.0 / (1.0 + FastMath.exp(-Math.max(s, s0)));
+        if (s < s0) {
+            a3 = a3 * FastMath.pow((s / s0), s0 * (1.0 - a3));
+        }
+
+        final double b0 = FastMath.pow(a3, gamma) * FastMath.pow(10.0, a0 + a1 * v);
+        double b1 = c15 * v * (0.5 + x - FastMath.tanh(4.0 * (x + c16 + c17 * v)));
+        b1 = (c14 * (1.0 + x) - b1) / (FastMath.exp(0.34 * (v - c18)) + 1);
+        final double v0 = c21 + c22 * x + c23 * xx;
+        final double d1 = c24 + c25 * x + c26 * xx;
+        final double d2 = c27 + c28 * x;
+        double v2 = v / v0 + 1.0;
+        if (v2 < y0) {
+            v2 = a + b * FastMath.pow(v2 - 1.0, n);
+        }
+        final double b2 = (-d1 + d2 * v2) * FastMath.exp(-v2);
+
+        return b0 * FastMath.pow(1.0 + b1 * cosFI + b2 * (2.0 * cosFI * cosFI - 1.0), ZPOW);
+    }
+
+    // wind speeds from 0.1 m/s to 20 m/s with step size 0.1
+    private final static int NUM_SPEEDS = 200;
+    private final static double SPEED_STEP = 0.1;
+
+    private CMOD5() {
+    }
+
+    /**
+     * Invert the model for the wind speed by trying all speeds.
+     *
+     * @param nrcs           The normalized radar cross section.
+     * @param cosFI          The cos of the angle between radar look direction and wind direction.
+     * @param incidenceAngle The incidence angle in degree.
+     * @return The wind speed in m/s.
+     */
+    static double invert(final double nrcs, final double cosFI, final double incidenceAngle) {
+        double errMin = Double.MAX_VALUE;
+        int errMinIndex = 0;
+        for (int i = 0; i < NUM_SPEEDS; i++) {
+            final double err = Math.abs(nrcs - compute((i + 1) * SPEED_STEP, cosFI, incidenceAngle));
+            if (err < errMin) {
+                errMin = err;
+                errMinIndex = i;
+            }
+        }
+        return (errMinIndex + 1) * SPEED_STEP;
+    }
+
+    /**
+     * The model tabulated over incidence angle, cos of the wind direction and the inversion speeds. The inversion
+     * interpolates the NRCS of all speeds bilinearly in incidence angle and direction, which replaces the model
+     * evaluations by a few multiply-adds.
+     */
+    static final class Table {
+
+        private final static double THETA_MIN = 15.0;
+        private final static double THETA_MAX = 65.0;
+        private final static double THETA_STEP = 0.5;
+        private final static double COS_STEP = 0.05;
+
+        private final static int NUM_THETA = (int) Math.round((THETA_MAX - THETA_MIN) / THETA_STEP) + 1;
+        private final static int NUM_COS = (int) Math.round(2.0 / COS_STEP) + 1;
+
+        private final static Table instance = new Table();
+
+        private final float[] nrcs = new float[NUM_THETA * NUM_COS * NUM_SPEEDS];
+
+        private Table() {
+            int k = 0;
+            for (int t = 0; t < NUM_THETA; ++t) {
+                final double theta = THETA_MIN + t * THETA_STEP;
+                for (int c = 0; c < NUM_COS; ++c) {
+                    final double cosFI = -1.0 + c * COS_STEP;
+                    for (int i = 0; i < NUM_SPEEDS; ++i) {
+                        nrcs[k++] = (float) compute((i + 1) * SPEED_STEP, cosFI, theta);
+                    }
+                }
+            }
+        }
+
+        static Table getInstance() {
+            return instance;
+        }
+
+        /**
+         * Invert the tabulated model for the wind speed, incidence angles outside the table use the model.
+         *
+         * @param nrcs           The normalized radar cross section.
+         * @param cosFI          The cos of the angle between radar look direction and wind direction.
+         * @param incidenceAngle The incidence angle in degree.
+         * @return The wind speed in m/s.
+         */
+        double invert(final double nrcs, final double cosFI, final double incidenceAngle) {
+            if (!(incidenceAngle >= THETA_MIN && incidenceAngle <= THETA_MAX)) {
+                return CMOD5.invert(nrcs, cosFI, incidenceAngle);
+            }
+
+            final double t = (incidenceAngle - THETA_MIN) / THETA_STEP;
+            final int t0 = Math.min((int) t, NUM_THETA - 2);
+            final double wt = t - t0;
+            final double c = (Math.max(-1.0, Math.min(1.0, cosFI)) + 1.0) / COS_STEP;
+            final int c0 = Math.min((int) c, NUM_COS - 2);
+            final double wc = c - c0;
+
+            final int i00 = (t0 * NUM_COS + c0) * NUM_SPEEDS;
+            final int i01 = i00 + NUM_SPEEDS;
+            final int i10 = i00 + NUM_COS * NUM_SPEEDS;
+            final int i11 = i10 + NUM_SPEEDS;
+            final double w00 = (1.0 - wt) * (1.0 - wc), w01 = (1.0 - wt) * wc;
+            final double w10 = wt * (1.0 - wc), w11 = wt * wc;
+
+            double errMin = Double.MAX_VALUE;
+            int errMinIndex = 0;
+            for (int i = 0; i < NUM_SPEEDS; i++) {
+                final double model = w00 * this.nrcs[i00 + i] + w01 * this.nrcs[i01 + i] +
+                        w10 * this.nrcs[i10 + i] + w11 * this.nrcs[i11 + i];
+                final double err = Math.abs(nrcs - model);
+                if (err < errMin) {
+                    errMin = err;
+                    errMinIndex = i;
+                }
+            }
+            return (errMinIndex + 1) * SPEED_STEP;
+        }
+    }
+}
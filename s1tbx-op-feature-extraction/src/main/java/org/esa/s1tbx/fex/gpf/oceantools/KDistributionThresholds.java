@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.apache.commons.math3.special.Gamma.logGamma;
+import static org.apache.commons.math3.special.Gamma.regularizedGammaQ;
+
+/**
+ * CFAR thresholds of the K-distribution.
+ * <p>
+ * The intensity of an L-look K-distributed clutter with mean mu and shape nu is the product of a unit mean gamma
+ * speckle of order L and a unit mean gamma texture of order nu, scaled by mu. The threshold for a probability of false
+ * alarm is therefore mu times a normalised threshold which only depends on nu and the PFA. The normalised thresholds
+ * are tabulated once per number of looks over log-spaced nu and PFA exponents, and interpolated bilinearly in log
+ * space. Shapes above the last node are interpolated in 1/nu towards the speckle only limit, which is also used for
+ * clutter less textured than the speckle (nu <= 0).
+ */
+final class KDistributionThresholds {
+
+    static final double NU_MIN = 0.1;
+    static final double NU_MAX = 100.0;
+    private static final int NU_NODES_PER_DECADE = 16;
+    static final double PFA_MIN = 1.0;
+    static final double PFA_MAX = 12.0;
+    private static final double PFA_STEP = 0.25;
+
+    private static final int NUM_QUADRATURE_PTS = 128;
+    private static final double NEGLIGIBLE = 50.0;     // tail cut-off of the gamma integrands, in nepers
+    private static final double TOLERANCE = 1.0e-8;   // on the log threshold
+    private static final int MAX_ITERATIONS = 100;
+
+    private static final Map<Integer, KDistributionThresholds> tables = new ConcurrentHashMap<>();
+
+    private final int numLooks;
+    private final int numNu;
+    private final int numPfa;
+    private final double[] logTau;      // [pfa][nu], the last column is the speckle only limit
+
+    private KDistributionThresholds(final int numLooks) {
+        this.numLooks = numLooks;
+        numNu = (int) Math.round(Math.log10(NU_MAX / NU_MIN) * NU_NODES_PER_DECADE) + 1;
+        numPfa = (int) Math.round((PFA_MAX - PFA_MIN) / PFA_STEP) + 1;
+        logTau = new double[numPfa * (numNu + 1)];
+
+        for (int n = 0; n <= numNu; ++n) {
+            final double nu = (n < numNu) ? getNu(n) : Double.POSITIVE_INFINITY;
+            double lower = 0.0;
+            for (int p = 0; p < numPfa; ++p) {
+                // thresholds increase with the PFA exponent, so the previous solution brackets from below
+                lower = solve(numLooks, nu, PFA_MIN + p * PFA_STEP, lower);
+                logTau[p * (numNu + 1) + n] = lower;
+            }
+        }
+    }
+
+    /**
+     * @param numLooks the number of looks of the intensity
+     * @return the thresholds for the number of looks, computed on first use
+     */
+    static KDistributionThresholds get(final int numLooks) {
+        return tables.computeIfAbsent(Math.max(numLooks, 1), KDistributionThresholds::new);
+    }
+
+    int getNumLooks() {
+        return numLooks;
+    }
+
+    /**
+     * Threshold of the K-distributed clutter for a probability of false alarm.
+     *
+     * @param mu  the clutter mean
+     * @param nu  the clutter shape, infinite or not positive for speckle only
+     * @param pfa the probability of false alarm as exponent x of 10^(-x), clamped to [PFA_MIN, PFA_MAX]
+     * @return the threshold
+     */
+    double getThreshold(final double mu, final double nu, final double pfa) {
+        final double p = clamp((pfa - PFA_MIN) / PFA_STEP, numPfa - 1);
+        final int p0 = Math.min((int) p, numPfa - 2);
+        final double wp = p - p0;
+
+        final double logT;
+        if (nu > 0.0 && nu < NU_MAX) {
+            final double n = clamp(Math.log10(nu / NU_MIN) * NU_NODES_PER_DECADE, numNu - 1);
+            final int n0 = Math.min((int) n, numNu - 2);
+            logT = interpolate(p0, wp, n0, n - n0);
+        } else {
+            final double w = (nu > 0.0) ? NU_MAX / nu : 0.0;
+            logT = interpolate(p0, wp, numNu - 1, 1.0 - w);
+        }
+        return mu * Math.exp(logT);
+    }
+
+    private double interpolate(final int p0, final double wp, final int n0, final double wn) {
+        final int stride = numNu + 1;
+        final int i = p0 * stride + n0;
+        final double top = logTau[i] + wn * (logTau[i + 1] - logTau[i]);
+        final double bottom = logTau[i + stride] + wn * (logTau[i + stride + 1] - logTau[i + stride]);
+        return top + wp * (bottom - top);
+    }
+
+    private static double clamp(final double v, final double max) {
+        return v < 0.0 ? 0.0 : (v > max ? max : v);
+    }
+
+    private double getNu(final int n) {
+        return NU_MIN * Math.pow(10.0, (double) n / NU_NODES_PER_DECADE);
+    }
+
+    /**
+     * Solve Q(tau) = 10^(-pfa) for the log of the normalised threshold tau, by regula falsi (Illinois).
+     *
+     * @param numLooks the number of looks
+     * @param nu       the shape, infinite for speckle only
+     * @param pfa      the probability of false alarm as exponent
+     * @param start    a log threshold to start the bracketing from
+     * @return log tau
+     */
+    static double solve(final int numLooks, final double nu, final double pfa, final double start) {
+        final double logPfa = -pfa * Math.log(10.0);
+
+        double a = start, fa = logExceedance(numLooks, nu, a) - logPfa;
+        while (fa < 0.0) {
+            a -= 1.0;
+            fa = logExceedance(numLooks, nu, a) - logPfa;
+        }
+        double b = a + 1.0, fb = logExceedance(numLooks, nu, b) - logPfa;
+        while (fb > 0.0) {
+            a = b;
+            fa = fb;
+            b += 1.0;
+            fb = logExceedance(numLooks, nu, b) - logPfa;
+        }
+
+        int side = 0;
+        for (int i = 0; i < MAX_ITERATIONS && b - a > TOLERANCE; ++i) {
+            // the log exceedance is -infinity where it underflows, fall back to bisection there
+            final double c = Double.isInfinite(fb) ? 0.5 * (a + b) : (a * fb - b * fa) / (fb - fa);
+            final double fc = logExceedance(numLooks, nu, c) - logPfa;
+            if (fc == 0.0) {
+                return c;
+            } else if (fc > 0.0) {
+                a = c;
+                fa = fc;
+                if (side == 1) {
+                    fb *= 0.5;
+                }
+                side = 1;
+            } else {
+                b = c;
+                fb = fc;
+                if (side == -1) {
+                    fa *= 0.5;
+                }
+                side = -1;
+            }
+        }
+        return 0.5 * (a + b);
+    }
+
+    /**
+     * Log of the probability that the normalised intensity exceeds exp(logTau).
+     * <p>
+     * Q(tau) is the integral over the texture z of the speckle exceedance Q_L(L tau / z) weighted by the texture
+     * density. It is evaluated in s = ln(z), where the integrand is smooth and decays on both sides, with the
+     * trapezoidal rule over the range where neither factor is negligible.
+     */
+    static double logExceedance(final int numLooks, final double nu, final double logTau) {
+        final double L = numLooks;
+        final double tau = Math.exp(logTau);
+        if (Double.isInfinite(nu)) {
+            return Math.log(regularizedGammaQ(L, L * tau));
+        }
+
+        final double sLow = Math.max(Math.log(L * tau / (L + NEGLIGIBLE + 10.0 * Math.sqrt(L))),
+                                     -Math.log(nu) - NEGLIGIBLE / nu);
+        final double sHigh = Math.log((nu + NEGLIGIBLE + 10.0 * Math.sqrt(nu)) / nu);
+        if (sLow >= sHigh) {
+            return Double.NEGATIVE_INFINITY;
+        }
+
+        final double h = (sHigh - sLow) / (NUM_QUADRATURE_PTS - 1);
+        final double c = nu * Math.log(nu) - logGamma(nu);
+        double sum = 0.0;
+        for (int i = 0; i < NUM_QUADRATURE_PTS; ++i) {
+            final double s = sLow + i * h;
+            final double z = Math.exp(s);
+            final double w = (i == 0 || i == NUM_QUADRATURE_PTS - 1) ? 0.5 : 1.0;
+            sum += w * regularizedGammaQ(L, L * tau / z) * Math.exp(c + nu * s - nu * z);
+        }
+        return Math.log(sum * h);
+    }
+}
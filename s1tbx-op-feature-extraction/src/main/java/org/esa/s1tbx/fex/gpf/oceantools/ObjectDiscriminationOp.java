@@ -16,6 +16,7 @@
 package org.esa.s1tbx.fex.gpf.oceantools;
 
 import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s1tbx.fex.gpf.ConnectedComponents;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.esa.snap.core.datamodel.Band;
@@ -26,6 +27,7 @@ import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
 import org.esa.snap.core.datamodel.VectorDataNode;
 import org.esa.snap.core.datamodel.VirtualBand;
+import org.esa.snap.core.dataop.downloadable.StatusProgressMonitor;
 import org.esa.snap.core.dataop.downloadable.XMLSupport;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
@@ -38,6 +40,8 @@ import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
 import org.esa.snap.core.util.StringUtils;
 import org.esa.snap.core.util.SystemUtils;
+import org.esa.snap.core.util.ThreadExecutor;
+import org.esa.snap.core.util.ThreadRunnable;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.TileIndex;
@@ -51,6 +55,7 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 
+import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.io.File;
 import java.io.IOException;
@@ -200,141 +205,126 @@ public class ObjectDiscriminationOp extends Operator {
     @Override
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
         try {
-            final Rectangle targetTileRectangle = targetTile.getRectangle();
-            final int tx0 = targetTileRectangle.x;
-            final int ty0 = targetTileRectangle.y;
-            final int tw = targetTileRectangle.width;
-            final int th = targetTileRectangle.height;
-            //System.out.println("tx0 = " + tx0 + ", ty0 = " + ty0 + ", tw = " + tw + ", th = " + th);
-
-            final int x0 = Math.max(tx0 - 10, 0);
-            final int y0 = Math.max(ty0 - 10, 0);
-            final int w = Math.min(tw + 20, sourceImageWidth);
-            final int h = Math.min(th + 20, sourceImageHeight);
-            final Rectangle sourceTileRectangle = new Rectangle(x0, y0, w, h);
-            //System.out.println("x0 = " + x0 + ", y0 = " + y0 + ", w = " + w + ", h = " + h);
-
             final Band sourceBand = sourceProduct.getBand(targetBand.getName());
-            final int[][] pixelsScanned = new int[h][w];
-            final List<ShipRecord> clusterList = new ArrayList<>();
 
-            final Tile bitMaskTile = getSourceTile(sourceBand, sourceTileRectangle);
-            final ProductData bitMaskData = bitMaskTile.getDataBuffer();
+            discriminateTargets(sourceBand);
+
+            targetTile.setRawSamples(getSourceTile(sourceBand, targetTile.getRectangle()).getRawSamples());
+
+        } catch (Throwable e) {
+            OperatorUtils.catchOperatorException(getId(), e);
+        }
+    }
+
+    /**
+     * Cluster the detected pixels of the whole bit mask once and keep the clusters of acceptable size. Clusters
+     * are labelled tile by tile and joined across tile borders, so that each target is measured as a whole and
+     * reported once.
+     *
+     * @param sourceBand The bit mask band.
+     */
+    private synchronized void discriminateTargets(final Band sourceBand) {
 
-            final TileIndex srcIndex = new TileIndex(bitMaskTile);    // src and trg tile are different size
+        if (bandClusterLists.containsKey(sourceBand.getName())) {
+            return;
+        }
 
-            final int maxy = ty0 + th;
-            final int maxx = tx0 + tw;
-            for (int ty = ty0; ty < maxy; ty++) {
-                srcIndex.calculateStride(ty);
-                for (int tx = tx0; tx < maxx; tx++) {
+        final Dimension tileSize = targetProduct.getPreferredTileSize();
+        final ConnectedComponents components =
+                new ConnectedComponents(sourceImageWidth, sourceImageHeight, tileSize.width, tileSize.height);
+        final Rectangle[] tileRectangles = components.getTileRectangles();
 
-                    if (pixelsScanned[ty - y0][tx - x0] == 0) {
+        final StatusProgressMonitor status = new StatusProgressMonitor(StatusProgressMonitor.TYPE.SUBTASK);
+        status.beginTask("Clustering Targets... ", tileRectangles.length);
 
-                        if (bitMaskData.getElemIntAt(srcIndex.getIndex(tx)) == 1) {
+        final ThreadExecutor executor = new ThreadExecutor();
 
-                            final List<PixelPos> clusterPixels = new ArrayList<>();
-                            clustering(tx, ty, x0, y0, w, h, bitMaskData, bitMaskTile, pixelsScanned, clusterPixels);
+        try {
+            for (int t = 0; t < tileRectangles.length; ++t) {
+                checkForCancellation();
+                final int tileIndex = t;
 
-                            final ShipRecord record = generateRecord(x0, y0, w, h, clusterPixels);
+                final ThreadRunnable worker = new ThreadRunnable() {
 
-                            final double size = Math.sqrt(record.length * record.length + record.width * record.width);
-                            if (size >= minTargetSizeInMeter && size <= maxTargetSizeInMeter) {
-                                clusterList.add(record);
-                            }
-                        }
+                    @Override
+                    public void process() {
+                        components.addTile(tileIndex, getBitMask(sourceBand, tileRectangles[tileIndex]), null);
                     }
-                }
-            }
-
-            if (!clusterList.isEmpty()) {
-                AddShipRecordsAsVectors(clusterList);
-            }
+                };
+                executor.execute(worker);
 
-            List<ShipRecord> shipRecordList = bandClusterLists.get(targetBand.getName());
-            if (shipRecordList == null) {
-                shipRecordList = new ArrayList<>();
-                bandClusterLists.put(targetBand.getName(), shipRecordList);
+                status.worked(1);
             }
-            shipRecordList.addAll(clusterList);
+            executor.complete();
 
-            targetTile.setRawSamples(getSourceTile(sourceBand, targetTileRectangle).getRawSamples());
+            components.merge();
 
-            clusteringPerformed = true;
         } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
+            OperatorUtils.catchOperatorException(getId() + " discriminateTargets ", e);
+        } finally {
+            status.done();
         }
-    }
 
-    /**
-     * Find pixels detected as target in a 3x3 window centered at a given point.
-     *
-     * @param xc            The x coordinate of the given point.
-     * @param yc            The y coordinate of the given point.
-     * @param x0            The x coordinate for the upper left corner point of the source rectangle.
-     * @param y0            The y coordinate for the upper left corner point of the source rectangle.
-     * @param w             The width of the source rectangle.
-     * @param h             The height of the source rectangle.
-     * @param bitMaskData   The bit maks band data.
-     * @param bitMaskTile   The bit mask band tile.
-     * @param pixelsScanned The binary array indicating which pixel in the tile has been scaned.
-     * @param clusterPixels The list of pixels in the cluster.
-     */
-    private static void clustering(final int xc, final int yc, final int x0, final int y0, final int w, final int h,
-                                   final ProductData bitMaskData, final Tile bitMaskTile,
-                                   final int[][] pixelsScanned, List<PixelPos> clusterPixels) {
+        final List<ShipRecord> clusterList = new ArrayList<>();
+        for (int c = 0; c < components.getNumComponents(); ++c) {
+            final ShipRecord record = generateRecord(components, c);
 
-        pixelsScanned[yc - y0][xc - x0] = 1;
-        clusterPixels.add(new PixelPos(xc, yc));
+            final double size = Math.sqrt(record.length * record.length + record.width * record.width);
+            if (size >= minTargetSizeInMeter && size <= maxTargetSizeInMeter) {
+                clusterList.add(record);
+            }
+        }
 
-        final int[] x = {xc - 1, xc, xc + 1, xc - 1, xc + 1, xc - 1, xc, xc + 1};
-        final int[] y = {yc - 1, yc - 1, yc - 1, yc, yc, yc + 1, yc + 1, yc + 1};
+        if (!clusterList.isEmpty()) {
+            AddShipRecordsAsVectors(clusterList);
+        }
 
-        for (int i = 0; i < 8; i++) {
+        bandClusterLists.put(sourceBand.getName(), clusterList);
 
-            if (x[i] >= x0 && x[i] < x0 + w && y[i] >= y0 && y[i] < y0 + h &&
-                    pixelsScanned[y[i] - y0][x[i] - x0] == 0 &&
-                    bitMaskData.getElemIntAt(bitMaskTile.getDataBufferIndex(x[i], y[i])) == 1) {
+        clusteringPerformed = true;
+    }
 
-                clustering(x[i], y[i], x0, y0, w, h, bitMaskData, bitMaskTile, pixelsScanned, clusterPixels);
+    /**
+     * Read the pixels detected as target in a rectangle.
+     *
+     * @param sourceBand The bit mask band.
+     * @param rect       The rectangle.
+     * @return The mask of the rectangle, 1 for detected pixels.
+     */
+    private byte[] getBitMask(final Band sourceBand, final Rectangle rect) {
+
+        final Tile bitMaskTile = getSourceTile(sourceBand, rect);
+        final ProductData bitMaskData = bitMaskTile.getDataBuffer();
+        final TileIndex srcIndex = new TileIndex(bitMaskTile);
+        final byte[] mask = new byte[rect.width * rect.height];
+
+        int k = 0;
+        final int maxy = rect.y + rect.height;
+        final int maxx = rect.x + rect.width;
+        for (int y = rect.y; y < maxy; y++) {
+            srcIndex.calculateStride(y);
+            for (int x = rect.x; x < maxx; x++) {
+                if (bitMaskData.getElemIntAt(srcIndex.getIndex(x)) == 1) {
+                    mask[k] = 1;
+                }
+                k++;
             }
         }
+        return mask;
     }
 
     /**
      * Generate a ship record for the detected cluster.
      *
-     * @param x0            The x coordinate for the upper left corner point of the source rectangle.
-     * @param y0            The y coordinate for the upper left corner point of the source rectangle.
-     * @param w             The width of the source rectangle.
-     * @param h             The height of the source rectangle.
-     * @param clusterPixels The list of pixels in the cluster.
+     * @param components The clusters of the bit mask.
+     * @param c          The cluster.
      * @return ShipRecord
      */
-    private ShipRecord generateRecord(final int x0, final int y0, final int w, final int h,
-                                      List<PixelPos> clusterPixels) {
-        int xMin = x0 + w - 1;
-        int xMax = x0;
-        int yMin = y0 + h - 1;
-        int yMax = y0;
-
-        for (PixelPos pixel : clusterPixels) {
-            if (pixel.x < xMin) {
-                xMin = (int) pixel.x;
-            }
-
-            if (pixel.x > xMax) {
-                xMax = (int) pixel.x;
-            }
-
-            if (pixel.y < yMin) {
-                yMin = (int) pixel.y;
-            }
-
-            if (pixel.y > yMax) {
-                yMax = (int) pixel.y;
-            }
-        }
+    private ShipRecord generateRecord(final ConnectedComponents components, final int c) {
+        final int xMin = components.getMinX(c);
+        final int xMax = components.getMaxX(c);
+        final int yMin = components.getMinY(c);
+        final int yMax = components.getMaxY(c);
 
         final double xMid = (xMin + xMax) / 2.0;
         final double yMid = (yMin + yMax) / 2.0;
@@ -16,11 +16,12 @@
 package org.esa.s1tbx.fex.gpf.oceantools;
 
 import com.bc.ceres.core.ProgressMonitor;
+import org.esa.s1tbx.fex.gpf.ConnectedComponents;
 import org.esa.snap.core.datamodel.Band;
 import org.esa.snap.core.datamodel.MetadataElement;
-import org.esa.snap.core.datamodel.PixelPos;
 import org.esa.snap.core.datamodel.Product;
 import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.dataop.downloadable.StatusProgressMonitor;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
 import org.esa.snap.core.gpf.OperatorSpi;
@@ -30,6 +31,8 @@ import org.esa.snap.core.gpf.annotations.Parameter;
 import org.esa.snap.core.gpf.annotations.SourceProduct;
 import org.esa.snap.core.gpf.annotations.TargetProduct;
 import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.ThreadExecutor;
+import org.esa.snap.core.util.ThreadRunnable;
 import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
 import org.esa.snap.engine_utilities.eo.Constants;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
@@ -37,11 +40,14 @@ import org.esa.snap.engine_utilities.gpf.TileIndex;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The oil spill clustering and discrimination operator. The pixels detected as oil spill area are first
- * clustered and then discriminated based on the size of the cluster.
+ * clustered and then discriminated based on the size of the cluster. Clusters are labelled over the whole scene,
+ * so that a cluster crossing tile borders is kept or removed as a whole.
  */
 @OperatorMetadata(alias = "Oil-Spill-Clustering",
         category = "Radar/SAR Applications/Ocean Applications/Oil Spill Detection",
@@ -63,6 +69,8 @@ public class OilSpillClusteringOp extends Operator {
     private int sourceImageHeight = 0;
     private int minClusterSizeInPixels = 0;
 
+    private final Map<String, ConnectedComponents> bandComponents = new HashMap<>();
+
     private MetadataElement absRoot = null;
 
     @Override
@@ -159,49 +167,32 @@ public class OilSpillClusteringOp extends Operator {
     public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
         try {
             final Rectangle targetTileRectangle = targetTile.getRectangle();
-            final int tx0 = targetTileRectangle.x;
-            final int ty0 = targetTileRectangle.y;
-            final int tw = targetTileRectangle.width;
-            final int th = targetTileRectangle.height;
             final ProductData trgData = targetTile.getDataBuffer();
-            //System.out.println("tx0 = " + tx0 + ", ty0 = " + ty0 + ", tw = " + tw + ", th = " + th);
-
-            final int x0 = Math.max(tx0 - minClusterSizeInPixels, 0);
-            final int y0 = Math.max(ty0 - minClusterSizeInPixels, 0);
-            final int w = Math.min(tw + 2 * minClusterSizeInPixels, sourceImageWidth);
-            final int h = Math.min(th + 2 * minClusterSizeInPixels, sourceImageHeight);
-            final Rectangle sourceTileRectangle = new Rectangle(x0, y0, w, h);
-            //System.out.println("x0 = " + x0 + ", y0 = " + y0 + ", w = " + w + ", h = " + h);
+            final TileIndex trgIndex = new TileIndex(targetTile);
 
             final Band sourceBand = sourceProduct.getBand(targetBand.getName());
-            final Tile sourceTile = getSourceTile(sourceBand, sourceTileRectangle);
-            final ProductData srcData = sourceTile.getDataBuffer();
-            final int[][] pixelsScaned = new int[h][w];
-
-            final TileIndex srcIndex = new TileIndex(sourceTile);
-
-            final int maxy = ty0 + th;
-            final int maxx = tx0 + tw;
-            for (int ty = ty0; ty < maxy; ty++) {
-
-                srcIndex.calculateStride(ty);
-                for (int tx = tx0; tx < maxx; tx++) {
-
-                    if (pixelsScaned[ty - y0][tx - x0] == 0 && srcData.getElemIntAt(srcIndex.getIndex(tx)) == 1) {
-
-                        final List<PixelPos> clusterPixels = new ArrayList<>();
-
-                        clustering(tx, ty, x0, y0, w, h, srcData, sourceTile, pixelsScaned, clusterPixels);
+            final ConnectedComponents components = getComponents(sourceBand);
+
+            final Rectangle[] tileRectangles = components.getTileRectangles();
+            for (int t = 0; t < tileRectangles.length; ++t) {
+                final Rectangle rect = tileRectangles[t];
+                final Rectangle intersection = rect.intersection(targetTileRectangle);
+                if (intersection.isEmpty()) {
+                    continue;
+                }
 
-                        if (clusterPixels.size() >= minClusterSizeInPixels) {
-                            for (PixelPos pixel : clusterPixels) {
-                                final int x = (int) pixel.x;
-                                final int y = (int) pixel.y;
-                                if (x >= tx0 && x < tx0 + tw && y >= ty0 && y < ty0 + th) {
-                                    trgData.setElemIntAt(targetTile.getDataBufferIndex(x, y), 1);
-                                }
-                            }
-                        }
+                final int[] clusters = new int[rect.width * rect.height];
+                components.getTileComponents(t, getBitMask(sourceBand, rect), clusters);
+
+                final int maxy = intersection.y + intersection.height;
+                final int maxx = intersection.x + intersection.width;
+                for (int y = intersection.y; y < maxy; y++) {
+                    trgIndex.calculateStride(y);
+                    final int row = (y - rect.y) * rect.width - rect.x;
+                    for (int x = intersection.x; x < maxx; x++) {
+                        final int c = clusters[row + x];
+                        final boolean keep = c >= 0 && components.getArea(c) >= minClusterSizeInPixels;
+                        trgData.setElemIntAt(trgIndex.getIndex(x), keep ? 1 : 0);
                     }
                 }
             }
@@ -211,58 +202,86 @@ public class OilSpillClusteringOp extends Operator {
     }
 
     /**
-     * Find pixels detected as target in a 3x3 window centered at a given point.
+     * Label the clusters of the whole bit mask once, tile by tile, so that clusters crossing tile borders are
+     * measured as a whole.
      *
-     * @param xc            The x coordinate of the given point.
-     * @param yc            The y coordinate of the given point.
-     * @param x0            The x coordinate for the upper left corner point of the source rectangle.
-     * @param y0            The y coordinate for the upper left corner point of the source rectangle.
-     * @param w             The width of the source rectangle.
-     * @param h             The height of the source rectangle.
-     * @param bitMaskData   The bit maks band data.
-     * @param bitMaskTile   The bit mask band tile.
-     * @param pixelsScaned  The binary array indicating which pixel in the tile has been scaned.
-     * @param clusterPixels The list of pixels in the cluster.
+     * @param sourceBand The bit mask band.
+     * @return The clusters of the band.
      */
-    private static void clustering(final int xc, final int yc, final int x0, final int y0, final int w, final int h,
-                                   final ProductData bitMaskData, final Tile bitMaskTile,
-                                   final int[][] pixelsScaned, final List<PixelPos> clusterPixels) {
-
-        final List<PixelPos> seeds = new ArrayList<>();
-        seeds.add(new PixelPos(xc, yc));
-        pixelsScaned[yc - y0][xc - x0] = 1;
-        clusterPixels.add(new PixelPos(xc, yc));
-
-        while (seeds.size() > 0) {
-            final List<PixelPos> newSeeds = new ArrayList<>();
-            for (PixelPos pixel : seeds) {
-                searchNeighbourhood(pixel, x0, y0, w, h, bitMaskData, bitMaskTile, pixelsScaned, clusterPixels, newSeeds);
-            }
-            seeds.clear();
-            seeds.addAll(newSeeds);
+    private synchronized ConnectedComponents getComponents(final Band sourceBand) {
+
+        final ConnectedComponents cached = bandComponents.get(sourceBand.getName());
+        if (cached != null) {
+            return cached;
         }
-    }
 
-    private static void searchNeighbourhood(final PixelPos pixel, final int x0, final int y0, final int w, final int h,
-                                            final ProductData bitMaskData, final Tile bitMaskTile,
-                                            final int[][] pixelsScaned, final List<PixelPos> clusterPixels,
-                                            final List<PixelPos> newSeeds) {
+        final Dimension tileSize = targetProduct.getPreferredTileSize();
+        final ConnectedComponents components =
+                new ConnectedComponents(sourceImageWidth, sourceImageHeight, tileSize.width, tileSize.height);
+        final Rectangle[] tileRectangles = components.getTileRectangles();
 
-        final int xc = (int) pixel.x;
-        final int yc = (int) pixel.y;
-        final int[] x = {xc - 1, xc, xc + 1, xc - 1, xc + 1, xc - 1, xc, xc + 1};
-        final int[] y = {yc - 1, yc - 1, yc - 1, yc, yc, yc + 1, yc + 1, yc + 1};
+        final StatusProgressMonitor status = new StatusProgressMonitor(StatusProgressMonitor.TYPE.SUBTASK);
+        status.beginTask("Clustering... ", tileRectangles.length);
+
+        final ThreadExecutor executor = new ThreadExecutor();
+
+        try {
+            for (int t = 0; t < tileRectangles.length; ++t) {
+                checkForCancellation();
+                final int tileIndex = t;
 
-        for (int i = 0; i < 8; i++) {
-            if (x[i] >= x0 && x[i] < x0 + w && y[i] >= y0 && y[i] < y0 + h &&
-                    pixelsScaned[y[i] - y0][x[i] - x0] == 0 &&
-                    bitMaskData.getElemIntAt(bitMaskTile.getDataBufferIndex(x[i], y[i])) == 1) {
+                final ThreadRunnable worker = new ThreadRunnable() {
 
-                pixelsScaned[y[i] - y0][x[i] - x0] = 1;
-                clusterPixels.add(new PixelPos(x[i], y[i]));
-                newSeeds.add(new PixelPos(x[i], y[i]));
+                    @Override
+                    public void process() {
+                        components.addTile(tileIndex, getBitMask(sourceBand, tileRectangles[tileIndex]), null);
+                    }
+                };
+                executor.execute(worker);
+
+                status.worked(1);
+            }
+            executor.complete();
+
+            components.merge();
+
+        } catch (Throwable e) {
+            OperatorUtils.catchOperatorException(getId() + " getComponents ", e);
+        } finally {
+            status.done();
+        }
+
+        bandComponents.put(sourceBand.getName(), components);
+        return components;
+    }
+
+    /**
+     * Read the pixels detected as oil spill in a rectangle.
+     *
+     * @param sourceBand The bit mask band.
+     * @param rect       The rectangle.
+     * @return The mask of the rectangle, 1 for detected pixels.
+     */
+    private byte[] getBitMask(final Band sourceBand, final Rectangle rect) {
+
+        final Tile bitMaskTile = getSourceTile(sourceBand, rect);
+        final ProductData bitMaskData = bitMaskTile.getDataBuffer();
+        final TileIndex srcIndex = new TileIndex(bitMaskTile);
+        final byte[] mask = new byte[rect.width * rect.height];
+
+        int k = 0;
+        final int maxy = rect.y + rect.height;
+        final int maxx = rect.x + rect.width;
+        for (int y = rect.y; y < maxy; y++) {
+            srcIndex.calculateStride(y);
+            for (int x = rect.x; x < maxx; x++) {
+                if (bitMaskData.getElemIntAt(srcIndex.getIndex(x)) == 1) {
+                    mask[k] = 1;
+                }
+                k++;
             }
         }
+        return mask;
     }
 
     /**
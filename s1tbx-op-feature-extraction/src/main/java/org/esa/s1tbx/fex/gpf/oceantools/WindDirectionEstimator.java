@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import Jama.Matrix;
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.engine_utilities.eo.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the wind direction of imagettes from the wind streaks in their spectrum [1].
+ * <p>
+ * Each thread keeps a workspace with the FFT plan and the buffers of one imagette, so that all imagettes of a tile
+ * reuse them. Only the spectral samples inside the annulus are used, so the column FFTs are only computed for the
+ * wavenumbers of the annulus, which is a small fraction of the FFT size.
+ * <p>
+ * [1] C. C. Wackerman, W. G. Pichel, P. Clemente-Colon, "Automated Estimation of Wind Vectors from SAR",
+ * 12th Conference on Interactions of the Sea and Atmosphere, 2003.
+ */
+final class WindDirectionEstimator {
+
+    private static final int DC_FILTER_SIZE = 11;
+
+    private final int windowSize;
+    private final int fftSize;
+    private final int n3;
+    private final int n15;
+
+    private final ThreadLocal<Workspace> workspace;
+
+    /**
+     * @param windowSize     the imagette size in pixels
+     * @param windowSizeInKm the imagette size in km
+     */
+    WindDirectionEstimator(final int windowSize, final double windowSizeInKm) {
+        this.windowSize = windowSize;
+
+        // the FFT size is 2/3 of the window size, four spectra with 50% overlap are computed in the window
+        int size = windowSize * 2 / 3;
+        if (size % 2 == 0) {
+            size++;
+        }
+        fftSize = size;
+
+        // the annulus is limited to wave lengths of 2.5 km to 15 km
+        final double delta_k = 1.0 / (windowSizeInKm * 1000.0 * 2.0 / 3.0);
+        final int halfFFTSize = fftSize / 2;
+        n3 = Math.min((int) (Constants.TWO_PI / (2500.0 * delta_k)), halfFFTSize);
+        final int n = (int) (Constants.TWO_PI / (15000.0 * delta_k));
+        n15 = (n >= halfFFTSize) ? 1 : n;
+
+        workspace = ThreadLocal.withInitial(Workspace::new);
+    }
+
+    /**
+     * Load an imagette into the workspace of the calling thread.
+     *
+     * @param srcData     the source samples
+     * @param offset      the index of the imagette upper left pixel in the samples
+     * @param stride      the scanline stride of the samples
+     * @param noDataValue the no data value, which marks land
+     * @return the number of land pixels in the imagette
+     */
+    int load(final ProductData srcData, final int offset, final int stride, final double noDataValue) {
+        final Workspace ws = workspace.get();
+        final double[] imagette = ws.imagette;
+        final boolean noDataIsNaN = Double.isNaN(noDataValue);
+
+        int numLandPixels = 0;
+        double sum = 0.0;
+        for (int r = 0; r < windowSize; ++r) {
+            final int srcIdx = offset + r * stride;
+            final int dstIdx = r * windowSize;
+            for (int c = 0; c < windowSize; ++c) {
+                final double v = srcData.getElemDoubleAt(srcIdx + c);
+                imagette[dstIdx + c] = v;
+                if (v == noDataValue || (noDataIsNaN && Double.isNaN(v))) {
+                    ws.land[dstIdx + c] = true;
+                    ++numLandPixels;
+                } else {
+                    ws.land[dstIdx + c] = false;
+                    sum += v;
+                }
+            }
+        }
+
+        // land pixels are replaced by the mean of the sea pixels
+        if (numLandPixels > 0 && numLandPixels < imagette.length) {
+            final double mean = sum / (imagette.length - numLandPixels);
+            for (int i = 0; i < imagette.length; ++i) {
+                if (ws.land[i]) {
+                    imagette[i] = mean;
+                }
+            }
+        }
+        return numLandPixels;
+    }
+
+    /**
+     * Estimate the wind direction of the imagette last loaded by the calling thread.
+     * <p>
+     * The imagette is flattened by dividing it by its 11x11 local mean. The power spectra of the four overlapping
+     * sub-windows are averaged inside the annulus, whose centre is zeroed, and median filtered. The wind direction is
+     * 90 degrees from the direction of the widest extent of a 2D quadratic fitted to the spectrum.
+     *
+     * @param direction the wind direction vector (dx, dy) (output)
+     * @return the ratio of the minor semi axis over the major semi axis of the fitted quadratic
+     */
+    double estimateDirection(final double[] direction) {
+        final Workspace ws = workspace.get();
+
+        removeDCComponent(ws);
+
+        final int length = 2 * n3 + 1;
+        Arrays.fill(ws.spec, 0.0);
+        final int offset = windowSize - fftSize;
+        accumulateSpectrum(ws, 0, 0);
+        accumulateSpectrum(ws, 0, offset);
+        accumulateSpectrum(ws, offset, 0);
+        accumulateSpectrum(ws, offset, offset);
+
+        for (int y = 0; y < length; ++y) {
+            final boolean yInside = Math.abs(y - n3) <= n15;
+            for (int x = 0; x < length; ++x) {
+                final int k = y * length + x;
+                ws.spec[k] = (yInside && Math.abs(x - n3) <= n15) ? 0.0 : ws.spec[k] / 4.0;
+            }
+        }
+
+        final double peakValue = medianFilter(ws.spec, ws.filtered, ws.neighbours, length);
+
+        return getDirection(ws.filtered, peakValue, n3, direction);
+    }
+
+    private void removeDCComponent(final Workspace ws) {
+        final double[] imagette = ws.imagette;
+        final double[] colSum = ws.colSum;
+        final int half = DC_FILTER_SIZE / 2;
+
+        for (int r = 0; r < windowSize; ++r) {
+            final int rMin = Math.max(r - half, 0);
+            final int rMax = Math.min(r + half, windowSize - 1);
+            if (r == 0) {
+                Arrays.fill(colSum, 0.0);
+                for (int rr = rMin; rr <= rMax; ++rr) {
+                    addRow(imagette, rr, colSum, 1.0);
+                }
+            } else {
+                if (r + half < windowSize) {
+                    addRow(imagette, r + half, colSum, 1.0);
+                }
+                if (r - half - 1 >= 0) {
+                    addRow(imagette, r - half - 1, colSum, -1.0);
+                }
+            }
+            final int numRows = rMax - rMin + 1;
+
+            double sum = 0.0;
+            for (int c = 0; c <= Math.min(half, windowSize - 1); ++c) {
+                sum += colSum[c];
+            }
+            final int offset = r * windowSize;
+            for (int c = 0; c < windowSize; ++c) {
+                if (c > 0) {
+                    if (c + half < windowSize) {
+                        sum += colSum[c + half];
+                    }
+                    if (c - half - 1 >= 0) {
+                        sum -= colSum[c - half - 1];
+                    }
+                }
+                final int numCols = Math.min(c + half, windowSize - 1) - Math.max(c - half, 0) + 1;
+                ws.flattened[offset + c] = imagette[offset + c] / (sum / (numRows * numCols));
+            }
+        }
+    }
+
+    private void addRow(final double[] image, final int r, final double[] colSum, final double sign) {
+        final int offset = r * windowSize;
+        for (int c = 0; c < windowSize; ++c) {
+            colSum[c] += sign * image[offset + c];
+        }
+    }
+
+    /**
+     * Add the power spectrum of the sub-window at (x0, y0) to the spectrum of the annulus, in fftshift order.
+     */
+    private void accumulateSpectrum(final Workspace ws, final int x0, final int y0) {
+        final double[] rows = ws.rows;
+        final double[] column = ws.column;
+        final int rowLength = 2 * fftSize;
+
+        // 1-D FFT of each row
+        for (int r = 0; r < fftSize; ++r) {
+            final int src = (y0 + r) * windowSize + x0;
+            final int dst = r * rowLength;
+            for (int c = 0; c < fftSize; ++c) {
+                rows[dst + 2 * c] = ws.flattened[src + c];
+                rows[dst + 2 * c + 1] = 0.0;
+            }
+            ws.fft.complexForward(rows, dst);
+        }
+
+        // 1-D FFT of the columns of the annulus wavenumbers
+        final int length = 2 * n3 + 1;
+        for (int x = 0; x < length; ++x) {
+            final int c = Math.floorMod(x - n3, fftSize);
+            for (int r = 0; r < fftSize; ++r) {
+                column[2 * r] = rows[r * rowLength + 2 * c];
+                column[2 * r + 1] = rows[r * rowLength + 2 * c + 1];
+            }
+            ws.fft.complexForward(column);
+
+            for (int y = 0; y < length; ++y) {
+                final int r = Math.floorMod(y - n3, fftSize);
+                final double re = column[2 * r];
+                final double im = column[2 * r + 1];
+                ws.spec[y * length + x] += re * re + im * im;
+            }
+        }
+    }
+
+    /**
+     * 3x3 median filter with the border samples replicated.
+     *
+     * @return the peak of the filtered samples
+     */
+    static double medianFilter(final double[] src, final double[] dst, final double[] neighbours, final int length) {
+        double peakValue = 0.0;
+        for (int y = 0; y < length; ++y) {
+            for (int x = 0; x < length; ++x) {
+                int k = 0;
+                for (int dy = -1; dy <= 1; ++dy) {
+                    final int yy = Math.min(Math.max(y + dy, 0), length - 1);
+                    for (int dx = -1; dx <= 1; ++dx) {
+                        final int xx = Math.min(Math.max(x + dx, 0), length - 1);
+                        neighbours[k++] = src[yy * length + xx];
+                    }
+                }
+                final double median = select(neighbours, 4);
+                dst[y * length + x] = median;
+                if (peakValue < median) {
+                    peakValue = median;
+                }
+            }
+        }
+        return peakValue;
+    }
+
+    /**
+     * @return the k-th smallest of the 9 values, which are reordered
+     */
+    private static double select(final double[] v, final int k) {
+        for (int i = 0; i <= k; ++i) {
+            int min = i;
+            for (int j = i + 1; j < 9; ++j) {
+                if (v[j] < v[min]) {
+                    min = j;
+                }
+            }
+            final double tmp = v[i];
+            v[i] = v[min];
+            v[min] = tmp;
+        }
+        return v[k];
+    }
+
+    /**
+     * Compute wind direction by performing 2D polynomial fitting to the spectral samples.
+     *
+     * @param array     Array holding the spectrum samples.
+     * @param peakValue The peak spectrum sample.
+     * @param n3        Spectrum size is 2*n3+1.
+     * @param direction Wind direction (dx, dy).
+     * @return The ratio of the minor semi axes over the major semi axes of the 2D polynomial.
+     */
+    static double getDirection(final double[] array, final double peakValue,
+                               final int n3, final double[] direction) {
+
+        double m00 = 0.0, m01 = 0.0, m02 = 0.0;
+        double m10 = 0.0, m11 = 0.0, m12 = 0.0;
+        double m20 = 0.0, m21 = 0.0, m22 = 0.0;
+        double s0 = 0.0, s1 = 0.0, s2 = 0.0;
+
+        final int length = 2 * n3 + 1;
+        for (int y = 0; y < length; y++) {
+            final int yy = y - n3;
+            for (int x = 0; x < length; x++) {
+                final int xx = x - n3;
+                final double v = array[y * length + x] - peakValue;
+                m00 += xx * xx * xx * xx;
+                m01 += xx * xx * yy * yy;
+                m02 += xx * xx * xx * yy;
+                m11 += yy * yy * yy * yy;
+                m12 += xx * yy * yy * yy;
+                s0 += xx * xx * v;
+                s1 += yy * yy * v;
+                s2 += xx * yy * v;
+            }
+        }
+
+        m10 = m01;
+        m20 = m02;
+        m21 = m12;
+        m22 = m01;
+
+        final Matrix M = new Matrix(3, 3);
+        M.set(0, 0, m00);
+        M.set(0, 1, m01);
+        M.set(0, 2, m02);
+        M.set(1, 0, m10);
+        M.set(1, 1, m11);
+        M.set(1, 2, m12);
+        M.set(2, 0, m20);
+        M.set(2, 1, m21);
+        M.set(2, 2, m22);
+
+        final Matrix s = new Matrix(3, 1);
+        s.set(0, 0, s0);
+        s.set(1, 0, s1);
+        s.set(2, 0, s2);
+
+        final Matrix c = M.solve(s);
+        final double c0 = c.get(0, 0); // c0*x^2 + c1*y^2 + c2*x*y
+        final double c1 = c.get(1, 0);
+        final double c2 = -c.get(2, 0); // flip y axis pointing up
+
+        double d = Math.sqrt((c0 - c1) * (c0 - c1) + c2 * c2);
+        double d2 = 2.0 * d;
+        double tmp = Math.abs(c0 - c1);
+        double cos_theta_2 = (d + tmp) / d2;
+        double sin_theta_2 = (d - tmp) / d2;
+        double sin_cos = c2 * tmp / ((c0 - c1) * d2);
+        double a = (c0 * (d + tmp) + c1 * (d - tmp) + c2 * c2 * tmp / (c0 - c1)) / d2;
+        double b = (c0 * (d - tmp) + c1 * (d + tmp) - c2 * c2 * tmp / (c0 - c1)) / d2;
+
+        if (cos_theta_2 == 0.0) {
+            if (Math.abs(a) > Math.abs(b)) {
+                direction[0] = 1.0;
+                direction[1] = 0.0;
+            } else {
+                direction[0] = 0.0;
+                direction[1] = 1.0;
+            }
+        } else if (sin_theta_2 == 0.0) {
+            if (Math.abs(a) > Math.abs(b)) {
+                direction[0] = 0.0;
+                direction[1] = 1.0;
+            } else {
+                direction[0] = 1.0;
+                direction[1] = 0.0;
+            }
+        } else {
+            double k = (sin_cos / Math.abs(sin_cos)) * Math.sqrt(sin_theta_2 / cos_theta_2);
+            if (k > 0) {
+                if (Math.abs(a) > Math.abs(b)) {
+                    direction[0] = -k / Math.sqrt(1 + k * k);
+                    direction[1] = 1 / Math.sqrt(1 + k * k);
+                } else {
+                    direction[0] = 1 / Math.sqrt(1 + k * k);
+                    direction[1] = k / Math.sqrt(1 + k * k);
+                }
+            } else { // k < 0
+                if (Math.abs(a) > Math.abs(b)) {
+                    direction[0] = -k / Math.sqrt(1 + k * k);
+                    direction[1] = 1 / Math.sqrt(1 + k * k);
+                } else {
+                    direction[0] = -1 / Math.sqrt(1 + k * k);
+                    direction[1] = -k / Math.sqrt(1 + k * k);
+                }
+            }
+        }
+
+        // wind direction is 90 degree from this direction
+        tmp = direction[0];
+        direction[0] = -direction[1];
+        direction[1] = tmp;
+
+        return Math.min(Math.abs(a), Math.abs(b)) / Math.max(Math.abs(a), Math.abs(b));
+    }
+
+    private final class Workspace {
+        final double[] imagette = new double[windowSize * windowSize];
+        final boolean[] land = new boolean[windowSize * windowSize];
+        final double[] flattened = new double[windowSize * windowSize];
+        final double[] colSum = new double[windowSize];
+        final DoubleFFT_1D fft = new DoubleFFT_1D(fftSize);
+        final double[] rows = new double[2 * fftSize * fftSize];
+        final double[] column = new double[2 * fftSize];
+        final double[] spec = new double[(2 * n3 + 1) * (2 * n3 + 1)];
+        final double[] filtered = new double[(2 * n3 + 1) * (2 * n3 + 1)];
+        final double[] neighbours = new double[9];
+    }
+}
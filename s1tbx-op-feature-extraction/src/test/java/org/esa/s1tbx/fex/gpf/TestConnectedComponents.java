@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the tiled labelling of ConnectedComponents with a flood fill of the whole scene
+ */
+public class TestConnectedComponents {
+
+    private static final int WIDTH = 203;
+    private static final int HEIGHT = 157;
+
+    @Test
+    public void testAgainstFloodFill() {
+        final Random random = new Random(3);
+        for (double density : new double[]{0.2, 0.45, 0.6}) {
+            final byte[] mask = new byte[WIDTH * HEIGHT];
+            final double[] values = new double[WIDTH * HEIGHT];
+            for (int i = 0; i < mask.length; ++i) {
+                mask[i] = (byte) (random.nextDouble() < density ? 1 : 0);
+                values[i] = random.nextDouble();
+            }
+            final int[] expected = new int[mask.length];
+            final int numExpected = floodFill(mask, expected);
+
+            for (int[] tileSize : new int[][]{{WIDTH, HEIGHT}, {64, 64}, {17, 50}, {1, 7}, {50, 1}}) {
+                final ConnectedComponents components = label(mask, values, tileSize[0], tileSize[1]);
+                assertEquals(numExpected, components.getNumComponents());
+                checkComponents(components, mask, values, expected, numExpected);
+            }
+        }
+    }
+
+    @Test
+    public void testDiagonalAcrossTileCorner() {
+        final byte[] mask = new byte[WIDTH * HEIGHT];
+        mask[9 * WIDTH + 9] = 1;
+        mask[10 * WIDTH + 10] = 1;
+        mask[10 * WIDTH + 11] = 1;
+        mask[9 * WIDTH + 12] = 1;
+
+        final ConnectedComponents components = label(mask, null, 10, 10);
+        assertEquals(1, components.getNumComponents());
+        assertEquals(4, components.getArea(0));
+        assertEquals(9, components.getMinX(0));
+        assertEquals(12, components.getMaxX(0));
+        assertEquals(9, components.getMinY(0));
+        assertEquals(10, components.getMaxY(0));
+        assertEquals(0.0, components.getValueSum(0), 0.0);
+    }
+
+    private static ConnectedComponents label(final byte[] mask, final double[] values,
+                                             final int tileWidth, final int tileHeight) {
+        final ConnectedComponents components = new ConnectedComponents(WIDTH, HEIGHT, tileWidth, tileHeight);
+        final Rectangle[] rects = components.getTileRectangles();
+        // add the tiles out of order, as concurrent workers would
+        for (int t = rects.length - 1; t >= 0; --t) {
+            components.addTile(t, crop(mask, rects[t]), values == null ? null : crop(values, rects[t]));
+        }
+        components.merge();
+        return components;
+    }
+
+    private static void checkComponents(final ConnectedComponents components, final byte[] mask,
+                                        final double[] values, final int[] expected, final int numExpected) {
+        // the pixels of each expected component must all be in a single component and vice versa
+        final int[] map = new int[numExpected];
+        Arrays.fill(map, -1);
+        final int[] area = new int[numExpected];
+        final double[] sumX = new double[numExpected];
+        final double[] sumValue = new double[numExpected];
+        final int[] minX = new int[numExpected];
+        final int[] maxY = new int[numExpected];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(maxY, Integer.MIN_VALUE);
+
+        final Rectangle[] rects = components.getTileRectangles();
+        for (int t = 0; t < rects.length; ++t) {
+            final Rectangle r = rects[t];
+            final int[] labels = new int[r.width * r.height];
+            components.getTileComponents(t, crop(mask, r), labels);
+            for (int y = 0; y < r.height; ++y) {
+                for (int x = 0; x < r.width; ++x) {
+                    final int i = (r.y + y) * WIDTH + r.x + x;
+                    final int c = labels[y * r.width + x];
+                    final int e = expected[i];
+                    if (e < 0) {
+                        assertEquals(-1, c);
+                        continue;
+                    }
+                    if (map[e] < 0) {
+                        map[e] = c;
+                    }
+                    assertEquals(map[e], c);
+                    ++area[e];
+                    sumX[e] += r.x + x;
+                    sumValue[e] += values[i];
+                    minX[e] = Math.min(minX[e], r.x + x);
+                    maxY[e] = Math.max(maxY[e], r.y + y);
+                }
+            }
+        }
+
+        final boolean[] used = new boolean[numExpected];
+        for (int e = 0; e < numExpected; ++e) {
+            final int c = map[e];
+            assertFalse(used[c]);
+            used[c] = true;
+            assertEquals(area[e], components.getArea(c));
+            assertEquals(minX[e], components.getMinX(c));
+            assertEquals(maxY[e], components.getMaxY(c));
+            assertEquals(sumX[e] / area[e], components.getCentroidX(c), 1e-9);
+            assertEquals(sumValue[e], components.getValueSum(c), 1e-9);
+        }
+    }
+
+    /**
+     * Breadth first flood fill of 8-connected pixels over the whole scene.
+     */
+    private static int floodFill(final byte[] mask, final int[] labels) {
+        Arrays.fill(labels, -1);
+        final ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int n = 0;
+        for (int seed = 0; seed < mask.length; ++seed) {
+            if (mask[seed] == 0 || labels[seed] >= 0) {
+                continue;
+            }
+            labels[seed] = n;
+            queue.add(seed);
+            while (!queue.isEmpty()) {
+                final int p = queue.poll();
+                final int px = p % WIDTH;
+                final int py = p / WIDTH;
+                for (int y = Math.max(py - 1, 0); y <= Math.min(py + 1, HEIGHT - 1); ++y) {
+                    for (int x = Math.max(px - 1, 0); x <= Math.min(px + 1, WIDTH - 1); ++x) {
+                        final int q = y * WIDTH + x;
+                        if (mask[q] != 0 && labels[q] < 0) {
+                            labels[q] = n;
+                            queue.add(q);
+                        }
+                    }
+                }
+            }
+            ++n;
+        }
+        return n;
+    }
+
+    private static byte[] crop(final byte[] scene, final Rectangle r) {
+        final byte[] tile = new byte[r.width * r.height];
+        for (int y = 0; y < r.height; ++y) {
+            System.arraycopy(scene, (r.y + y) * WIDTH + r.x, tile, y * r.width, r.width);
+        }
+        return tile;
+    }
+
+    private static double[] crop(final double[] scene, final Rectangle r) {
+        final double[] tile = new double[r.width * r.height];
+        for (int y = 0; y < r.height; ++y) {
+            System.arraycopy(scene, (r.y + y) * WIDTH + r.x, tile, y * r.width, r.width);
+        }
+        return tile;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.MetadataElement;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.OperatorSpi;
+import org.esa.snap.engine_utilities.datamodel.AbstractMetadata;
+import org.esa.snap.engine_utilities.datamodel.Unit;
+import org.esa.snap.engine_utilities.util.TestUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Unit test for AdaptiveThresholdingOp with the two-parameter and the K-distribution detector
+ */
+public class TestAdaptiveThresholdingOp {
+
+    static {
+        TestUtils.initTestEnvironment();
+    }
+
+    private final static OperatorSpi spi = new AdaptiveThresholdingOp.Spi();
+
+    private static final int SIZE = 200;
+    private static final float CLUTTER_MEAN = 0.05f;
+
+    @Test
+    public void testTwoParameterDetector() throws Exception {
+        final int[] mask = detect(null);
+
+        // the threshold is about six times the clutter mean, both targets are found
+        assertEquals(1, getMask(mask, 60, 100));
+        assertEquals(1, getMask(mask, 140, 100));
+        assertEquals(0, getMask(mask, 100, 30));
+    }
+
+    @Test
+    public void testKDistributionDetector() throws Exception {
+        final int[] mask = detect(true);
+
+        // single look clutter has a longer tail, the threshold is at least fifteen times the clutter mean
+        assertEquals(1, getMask(mask, 60, 100));
+        assertEquals(0, getMask(mask, 140, 100));
+        assertEquals(0, getMask(mask, 100, 30));
+    }
+
+    private static int getMask(final int[] mask, final int x, final int y) {
+        return mask[y * SIZE + x];
+    }
+
+    private static int[] detect(final Boolean useKDistribution) throws Exception {
+        final AdaptiveThresholdingOp op = (AdaptiveThresholdingOp) spi.createOperator();
+        assertNotNull(op);
+        op.setSourceProduct(createTestProduct());
+        if (useKDistribution != null) {
+            op.setParameter("useKDistribution", useKDistribution);
+        }
+
+        // get targetProduct: execute initialize()
+        final Product targetProduct = op.getTargetProduct();
+        final Band maskBand = targetProduct.getBand("Sigma0_VV" + AdaptiveThresholdingOp.SHIPMASK_NAME);
+        assertNotNull(maskBand);
+
+        // readPixels: execute computeTiles()
+        final int[] mask = new int[SIZE * SIZE];
+        maskBand.readPixels(0, 0, SIZE, SIZE, mask, ProgressMonitor.NULL);
+        return mask;
+    }
+
+    /**
+     * Creates a calibrated single look scene of exponential clutter with a bright target at (60, 100) and a
+     * target ten times the clutter mean at (140, 100), further apart than the background window.
+     */
+    private static Product createTestProduct() {
+        final Product testProduct = TestUtils.createProduct("GRD", SIZE, SIZE);
+
+        final Random random = new Random(11);
+        final float[] values = new float[SIZE * SIZE];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = (float) (-CLUTTER_MEAN * Math.log(1.0 - random.nextDouble()));
+        }
+        addTarget(values, 60, 100, 100 * CLUTTER_MEAN);
+        addTarget(values, 140, 100, 10 * CLUTTER_MEAN);
+
+        final Band band = testProduct.addBand("Sigma0_VV", ProductData.TYPE_FLOAT32);
+        band.setUnit(Unit.INTENSITY);
+        band.setData(ProductData.createInstance(values));
+
+        // 10 m pixels, so the target, guard and background windows are 6, 51 and 81 pixels
+        final MetadataElement abs = AbstractMetadata.getAbstractedMetadata(testProduct);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.MISSION, "ENVISAT");
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.SAMPLE_TYPE, "DETECTED");
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.abs_calibration_flag, 1);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.srgr_flag, 1);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.range_spacing, 10.0);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.azimuth_spacing, 10.0);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.range_looks, 1);
+        AbstractMetadata.setAttribute(abs, AbstractMetadata.azimuth_looks, 1);
+
+        return testProduct;
+    }
+
+    private static void addTarget(final float[] values, final int cx, final int cy, final float value) {
+        for (int y = cy - 4; y <= cy + 4; ++y) {
+            for (int x = cx - 4; x <= cx + 4; ++x) {
+                values[y * SIZE + x] = value;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares CFARDetector with the per-pixel window loops it replaced, and checks the K-distribution thresholds
+ */
+public class TestCFARDetector {
+
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 260;
+    private static final int HALF_TARGET = 1;
+    private static final int HALF_GUARD = 12;
+    private static final int HALF_BACKGROUND = 20;
+    private static final double T = 5.0;
+    private static final double NO_DATA = 0.0;
+
+    private final float[] scene = new float[WIDTH * HEIGHT];
+
+    public TestCFARDetector() {
+        final Random random = new Random(3);
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                if (x + y < 60) {
+                    continue; // no-data corner
+                }
+                // exponential speckle on a slow intensity ramp
+                final double mean = 0.02 + 0.0002 * x;
+                scene[y * WIDTH + x] = (float) (-mean * Math.log(1.0 - random.nextDouble()));
+            }
+        }
+        for (int i = 0; i < 40; ++i) {
+            final int x = 30 + random.nextInt(WIDTH - 60);
+            final int y = 30 + random.nextInt(HEIGHT - 60);
+            for (int dy = 0; dy < 3; ++dy) {
+                for (int dx = 0; dx < 3; ++dx) {
+                    scene[(y + dy) * WIDTH + x + dx] = (float) (0.5 + random.nextDouble());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAgreementWithWindowLoops() {
+        final CFARDetector detector = new CFARDetector(HALF_TARGET, HALF_GUARD, HALF_BACKGROUND, T);
+        int numDetections = 0;
+        for (int ty = 0; ty < HEIGHT; ty += 100) {
+            for (int tx = 0; tx < WIDTH; tx += 128) {
+                final Rectangle target = new Rectangle(tx, ty, Math.min(128, WIDTH - tx), Math.min(100, HEIGHT - ty));
+                final Rectangle source = getSourceRectangle(target);
+                final float[] data = crop(source);
+
+                final byte[] expected = detectReference(data, source, target);
+                final byte[] actual = new byte[target.width * target.height];
+                detector.detect(data, source, NO_DATA, target, actual);
+                assertArrayEquals(expected, actual);
+
+                for (byte b : actual) {
+                    numDetections += b;
+                }
+            }
+        }
+        assertTrue(numDetections > 0);
+    }
+
+    @Test
+    public void testSpeckleLimit() {
+        // single look speckle is exponential, exceeded by mu * pfa * ln(10) with probability 10^-pfa
+        final KDistributionThresholds thresholds = KDistributionThresholds.get(1);
+        for (double pfa : new double[]{2.0, 6.5, 9.0}) {
+            final double expected = 2.0 * pfa * Math.log(10.0);
+            assertEquals(expected, thresholds.getThreshold(2.0, Double.POSITIVE_INFINITY, pfa), 1.0e-6 * expected);
+            assertEquals(expected, thresholds.getThreshold(2.0, -3.0, pfa), 1.0e-6 * expected);
+        }
+    }
+
+    @Test
+    public void testInterpolatedThresholds() {
+        final KDistributionThresholds thresholds = KDistributionThresholds.get(4);
+        double previous = Double.MAX_VALUE;
+        for (double nu : new double[]{0.3, 1.7, 3.7, 12.0, 55.0}) {
+            final double expected = Math.exp(KDistributionThresholds.solve(4, nu, 5.1, 0.0));
+            final double actual = thresholds.getThreshold(1.0, nu, 5.1);
+            assertEquals(expected, actual, 0.01 * expected);
+
+            // heavier textures have longer tails
+            assertTrue(actual < previous);
+            previous = actual;
+        }
+    }
+
+    private static Rectangle getSourceRectangle(final Rectangle target) {
+        final int x0 = Math.max(target.x - HALF_BACKGROUND, 0);
+        final int y0 = Math.max(target.y - HALF_BACKGROUND, 0);
+        final int x1 = Math.min(target.x + target.width - 1 + HALF_BACKGROUND, WIDTH - 1);
+        final int y1 = Math.min(target.y + target.height - 1 + HALF_BACKGROUND, HEIGHT - 1);
+        return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+    }
+
+    private float[] crop(final Rectangle r) {
+        final float[] data = new float[r.width * r.height];
+        for (int y = 0; y < r.height; ++y) {
+            System.arraycopy(scene, (r.y + y) * WIDTH + r.x, data, y * r.width, r.width);
+        }
+        return data;
+    }
+
+    // the per-pixel implementation of AdaptiveThresholdingOp
+
+    private static byte[] detectReference(final float[] data, final Rectangle source, final Rectangle target) {
+        final byte[] mask = new byte[target.width * target.height];
+        int k = 0;
+        for (int ty = target.y; ty < target.y + target.height; ty++) {
+            for (int tx = target.x; tx < target.x + target.width; tx++, k++) {
+                final double targetMean = computeTargetMean(tx, ty, data, source.x, source.y, source.width, source.height);
+                if (NO_DATA == targetMean || targetMean < 0.005) {
+                    continue;
+                }
+                final double backgroundThreshold = computeBackgroundThreshold(tx, ty, data, source.x, source.y,
+                                                                              source.width, source.height);
+                mask[k] = (byte) (targetMean > backgroundThreshold ? 1 : 0);
+            }
+        }
+        return mask;
+    }
+
+    private static double computeTargetMean(final int tx, final int ty, final float[] data,
+                                            final int xx0, final int yy0, final int width, final int height) {
+        final double v = data[((ty - yy0) * width) + (tx - xx0)];
+        if (NO_DATA == v) {
+            return NO_DATA;
+        }
+        final int x0 = Math.max((tx - xx0) - HALF_TARGET, 0);
+        final int y0 = Math.max((ty - yy0) - HALF_TARGET, 0);
+        final int w = Math.min((tx - xx0) + HALF_TARGET, width - 1) - x0 + 1;
+        final int h = Math.min((ty - yy0) + HALF_TARGET, height - 1) - y0 + 1;
+
+        double mean = 0.0;
+        int numPixels = 0;
+        int nodataCnt = 0;
+        for (int y = y0; y < y0 + h; y++) {
+            for (int x = x0; x < x0 + w; x++) {
+                final double val = data[y * width + x];
+                if (NO_DATA == val) {
+                    nodataCnt++;
+                } else {
+                    mean += val;
+                    ++numPixels;
+                }
+            }
+        }
+        if (nodataCnt > (0.1 * w * h)) {
+            return NO_DATA;
+        }
+        return mean / numPixels;
+    }
+
+    private static double computeBackgroundThreshold(final int tx, final int ty, final float[] data,
+                                                     final int xx0, final int yy0, final int width, final int height) {
+        final int x0 = Math.max((tx - xx0) - HALF_BACKGROUND, 0);
+        final int y0 = Math.max((ty - yy0) - HALF_BACKGROUND, 0);
+        final int w = Math.min((tx - xx0) + HALF_BACKGROUND, width - 1) - x0 + 1;
+        final int h = Math.min((ty - yy0) + HALF_BACKGROUND, height - 1) - y0 + 1;
+
+        double sum = 0.0;
+        final double[] dataArray = new double[w * h];
+        int numValues = 0;
+        for (int y = y0; y < y0 + h; y++) {
+            final int yy = y - (ty - yy0);
+            for (int x = x0; x < x0 + w; x++) {
+                final int xx = x - (tx - xx0);
+                if (Math.abs(yy) > HALF_GUARD || Math.abs(xx) > HALF_GUARD) {
+                    final double val = data[y * width + x];
+                    if (NO_DATA != val) {
+                        sum += val;
+                        dataArray[numValues++] = val;
+                    }
+                }
+            }
+        }
+        final double mean = sum / numValues;
+
+        double std = 0.0;
+        for (int i = 0; i < numValues; ++i) {
+            final double tmp = dataArray[i] - mean;
+            std += tmp * tmp;
+        }
+        return mean + Math.sqrt(std / numValues) * T;
+    }
+}
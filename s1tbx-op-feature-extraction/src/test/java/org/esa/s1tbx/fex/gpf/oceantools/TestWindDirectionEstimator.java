@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.fex.gpf.oceantools;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares WindDirectionEstimator with the per-imagette spectral analysis it replaced on a synthetic swell and
+ * wind streak image, and checks the tabulated CMOD5 inversion
+ */
+public class TestWindDirectionEstimator {
+
+    private static final int WINDOW_SIZE = 96;
+    private static final double WINDOW_SIZE_IN_KM = 9.6;
+    private static final int NUM_FRAMES = 6;
+    private static final int WIDTH = WINDOW_SIZE * NUM_FRAMES;
+
+    /**
+     * @param angle the streak direction in degrees from the x axis
+     */
+    private static float[] createScene(final double angle, final long seed) {
+        final Random random = new Random(seed);
+        final double cos = Math.cos(Math.toRadians(angle));
+        final double sin = Math.sin(Math.toRadians(angle));
+        final float[] scene = new float[WIDTH * WIDTH];
+        for (int y = 0; y < WIDTH; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                // streaks 1.6 km apart on a 5 km swell along the wind, with 4-look speckle
+                final double across = -sin * x + cos * y;
+                final double along = cos * x + sin * y;
+                final double mean = 0.05 * (1.0 + 0.8 * Math.cos(2.0 * Math.PI * across / 16.0)) *
+                        (1.0 + 0.1 * Math.cos(2.0 * Math.PI * along / 50.0));
+                double speckle = 0.0;
+                for (int look = 0; look < 4; ++look) {
+                    speckle -= Math.log(1.0 - random.nextDouble());
+                }
+                scene[y * WIDTH + x] = (float) (mean * speckle / 4.0);
+            }
+        }
+        // a strip of land
+        for (int y = 0; y < WIDTH; ++y) {
+            for (int x = 0; x < 20; ++x) {
+                scene[y * WIDTH + x] = 0.0f;
+            }
+        }
+        return scene;
+    }
+
+    @Test
+    public void testAgreementWithImagetteAnalysis() {
+        final WindDirectionEstimator estimator = new WindDirectionEstimator(WINDOW_SIZE, WINDOW_SIZE_IN_KM);
+        final float[] scene = createScene(30.0, 1);
+        final ProductData data = ProductData.createInstance(scene);
+        final double[] direction = new double[2];
+        final double[] expectedDirection = new double[2];
+        for (int fy = 0; fy < NUM_FRAMES; ++fy) {
+            for (int fx = 0; fx < NUM_FRAMES; ++fx) {
+                final int offset = fy * WINDOW_SIZE * WIDTH + fx * WINDOW_SIZE;
+                final int numLandPixels = estimator.load(data, offset, WIDTH, 0.0);
+                final double ratio = estimator.estimateDirection(direction);
+
+                final double[][] imagette = getImagette(scene, offset, 0.0);
+                assertEquals(fx == 0 ? 20 * WINDOW_SIZE : 0, numLandPixels);
+                final double expectedRatio = estimateDirectionReference(imagette, expectedDirection);
+                assertEquals(expectedRatio, ratio, 1.0e-9);
+                assertEquals(expectedDirection[0], direction[0], 1.0e-9);
+                assertEquals(expectedDirection[1], direction[1], 1.0e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testTabulatedCMOD5() {
+        final Random random = new Random(5);
+        final CMOD5.Table table = CMOD5.Table.getInstance();
+        for (int i = 0; i < 1000; ++i) {
+            final double theta = 20.0 + 40.0 * random.nextDouble();
+            final double cosFI = 2.0 * random.nextDouble() - 1.0;
+            final double speed = 1.0 + 18.0 * random.nextDouble();
+            final double nrcs = CMOD5.compute(speed, cosFI, theta);
+            assertEquals(CMOD5.invert(nrcs, cosFI, theta), table.invert(nrcs, cosFI, theta), 0.2);
+        }
+    }
+
+    // the per-imagette implementation of WindFieldEstimationOp
+
+    private static double[][] getImagette(final float[] scene, final int offset, final double noDataValue) {
+        final double[][] imagette = new double[WINDOW_SIZE][WINDOW_SIZE];
+        double mean = 0.0;
+        int numSea = 0;
+        for (int r = 0; r < WINDOW_SIZE; r++) {
+            for (int c = 0; c < WINDOW_SIZE; c++) {
+                final double v = scene[offset + r * WIDTH + c];
+                imagette[r][c] = v;
+                if (v != noDataValue) {
+                    mean += v;
+                    ++numSea;
+                }
+            }
+        }
+        mean /= numSea;
+        for (int r = 0; r < WINDOW_SIZE; r++) {
+            for (int c = 0; c < WINDOW_SIZE; c++) {
+                if (imagette[r][c] == noDataValue) {
+                    imagette[r][c] = mean;
+                }
+            }
+        }
+        return imagette;
+    }
+
+    private static double estimateDirectionReference(final double[][] imagette, final double[] direction) {
+        final double[][] dcRemovedImage = new double[WINDOW_SIZE][WINDOW_SIZE];
+        for (int r = 0; r < WINDOW_SIZE; r++) {
+            final int rMin = Math.max(r - 5, 0);
+            final int rMax = Math.min(r + 5, WINDOW_SIZE - 1);
+            for (int c = 0; c < WINDOW_SIZE; c++) {
+                final int cMin = Math.max(c - 5, 0);
+                final int cMax = Math.min(c + 5, WINDOW_SIZE - 1);
+                double mean = 0.0;
+                for (int rr = rMin; rr <= rMax; rr++) {
+                    for (int cc = cMin; cc <= cMax; cc++) {
+                        mean += imagette[rr][cc];
+                    }
+                }
+                dcRemovedImage[r][c] = imagette[r][c] / (mean / ((rMax - rMin + 1) * (cMax - cMin + 1)));
+            }
+        }
+
+        int fftSize = WINDOW_SIZE * 2 / 3;
+        if (fftSize % 2 == 0) {
+            fftSize++;
+        }
+        final int o = WINDOW_SIZE - fftSize;
+        final double[][] F1 = perform2DFFT(dcRemovedImage, 0, 0, fftSize);
+        final double[][] F2 = perform2DFFT(dcRemovedImage, 0, o, fftSize);
+        final double[][] F3 = perform2DFFT(dcRemovedImage, o, 0, fftSize);
+        final double[][] F4 = perform2DFFT(dcRemovedImage, o, o, fftSize);
+
+        final double delta_k = 1.0 / (WINDOW_SIZE_IN_KM * 1000.0 * 2.0 / 3.0);
+        final int halfFFTSize = fftSize / 2;
+        final int n3 = Math.min((int) (2.0 * Math.PI / (2500.0 * delta_k)), halfFFTSize);
+        int n15 = (int) (2.0 * Math.PI / (15000.0 * delta_k));
+        if (n15 >= halfFFTSize) {
+            n15 = 1;
+        }
+
+        final int length = 2 * n3 + 1;
+        final double[] array = new double[length * length];
+        int k = 0;
+        for (int r = halfFFTSize - n3; r < halfFFTSize + n3 + 1; r++) {
+            for (int c = halfFFTSize - n3; c < halfFFTSize + n3 + 1; c++) {
+                if (r >= halfFFTSize - n15 && r <= halfFFTSize + n15 && c >= halfFFTSize - n15 && c <= halfFFTSize + n15) {
+                    array[k++] = 0.0;
+                } else {
+                    array[k++] = (F1[r][c] + F2[r][c] + F3[r][c] + F4[r][c]) / 4.0;
+                }
+            }
+        }
+
+        final double[] filtered = new double[length * length];
+        final double peakValue = WindDirectionEstimator.medianFilter(array, filtered, new double[9], length);
+        return WindDirectionEstimator.getDirection(filtered, peakValue, n3, direction);
+    }
+
+    private static double[][] perform2DFFT(final double[][] src, final int x0, final int y0, final int n) {
+        final DoubleFFT_1D fft = new DoubleFFT_1D(n);
+        final double[][] re = new double[n][n];
+        final double[][] im = new double[n][n];
+        final double[] array = new double[2 * n];
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                array[2 * c] = src[y0 + r][x0 + c];
+                array[2 * c + 1] = 0.0;
+            }
+            fft.complexForward(array);
+            for (int c = 0; c < n; c++) {
+                re[r][c] = array[2 * c];
+                im[r][c] = array[2 * c + 1];
+            }
+        }
+        for (int c = 0; c < n; c++) {
+            for (int r = 0; r < n; r++) {
+                array[2 * r] = re[r][c];
+                array[2 * r + 1] = im[r][c];
+            }
+            fft.complexForward(array);
+            for (int r = 0; r < n; r++) {
+                re[r][c] = array[2 * r];
+                im[r][c] = array[2 * r + 1];
+            }
+        }
+
+        // power spectrum with fftshift
+        final double[][] spec = new double[n][n];
+        final int half = n / 2;
+        for (int r = 0; r < n; r++) {
+            final int rr = r <= half ? r + half : r - half - 1;
+            for (int c = 0; c < n; c++) {
+                final int cc = c <= half ? c + half : c - half - 1;
+                spec[rr][cc] = re[r][c] * re[r][c] + im[r][c] * im[r][c];
+            }
+        }
+        return spec;
+    }
+}
@@ -163,7 +163,7 @@ public class CoherenceOp extends Operator {
     private MetadataElement mstRoot = null;
     private MetadataElement slvRoot = null;
     private org.jlinda.core.Point[] mstSceneCentreXYZ = null;
-    private HashMap<String, DoubleMatrix> flatEarthPolyMap = new HashMap<>();
+    private HashMap<String, FlatEarthPhase> flatEarthPolyMap = new HashMap<>();
     private int sourceImageWidth;
     private int sourceImageHeight;
 
@@ -503,6 +503,9 @@ public class CoherenceOp extends Operator {
 
     private void constructFlatEarthPolynomialsForTOPSARProduct() throws Exception {
 
+        // the master side of the fit is shared by the slaves of a master
+        final Map<String, FlatEarthPhase.ReferencePoints> masterPoints = new HashMap<>();
+
         for (String key : targetMap.keySet()) {
 
             final ProductContainer container = targetMap.get(key);
@@ -517,9 +520,15 @@ public class CoherenceOp extends Operator {
 
                     final String polynomialName = slave.name + '_' + s + '_' + b;
 
-                    flatEarthPolyMap.put(polynomialName, InterferogramOp.estimateFlatEarthPolynomial(
-                            master, slave, s + 1, b, mstSceneCentreXYZ, orbitDegree, srpPolynomialDegree,
-                            srpNumberPoints, subSwath, su));
+                    FlatEarthPhase.ReferencePoints points = masterPoints.get(master.name + '_' + s + '_' + b);
+                    if (points == null) {
+                        points = InterferogramOp.getReferencePoints(master, s + 1, b, mstSceneCentreXYZ,
+                                orbitDegree, srpPolynomialDegree, srpNumberPoints, subSwath, su);
+                        masterPoints.put(master.name + '_' + s + '_' + b, points);
+                    }
+
+                    flatEarthPolyMap.put(polynomialName, new FlatEarthPhase(InterferogramOp.estimateFlatEarthPolynomial(
+                            points, slave, b, mstSceneCentreXYZ, orbitDegree)));
                 }
             }
         }
@@ -527,15 +536,25 @@ public class CoherenceOp extends Operator {
 
     private void constructFlatEarthPolynomials() throws Exception {
 
+        // the master side of the fit is shared by the slaves of a master
+        final Map<String, FlatEarthPhase.ReferencePoints> masterPoints = new HashMap<>();
+        final boolean isBiStaticStack = StackUtils.isBiStaticStack(sourceProduct);
+
         for (String key : targetMap.keySet()) {
 
             final ProductContainer container = targetMap.get(key);
             final CplxContainer master = container.sourceMaster;
             final CplxContainer slave = container.sourceSlave;
 
-            flatEarthPolyMap.put(slave.name, InterferogramOp.estimateFlatEarthPolynomial(
-                        master.metaData, master.orbit, slave.metaData, slave.orbit, sourceImageWidth,
-                        sourceImageHeight, srpPolynomialDegree, srpNumberPoints, sourceProduct));
+            FlatEarthPhase.ReferencePoints points = masterPoints.get(master.name);
+            if (points == null) {
+                points = InterferogramOp.getReferencePoints(master.metaData, master.orbit, sourceImageWidth,
+                        sourceImageHeight, srpPolynomialDegree, srpNumberPoints);
+                masterPoints.put(master.name, points);
+            }
+
+            flatEarthPolyMap.put(slave.name, new FlatEarthPhase(InterferogramOp.estimateFlatEarthPolynomial(
+                    points, slave.metaData, slave.orbit, isBiStaticStack)));
         }
     }
 
@@ -795,16 +814,8 @@ public class CoherenceOp extends Operator {
                                                final int minLine, final int maxLine,
                                                final String polynomialName) {
 
-        DoubleMatrix rangeAxisNormalized = DoubleMatrix.linspace(xMin, xMax, xSize);
-        rangeAxisNormalized = InterferogramOp.normalizeDoubleMatrix(rangeAxisNormalized, minPixel, maxPixel);
-
-        DoubleMatrix azimuthAxisNormalized = DoubleMatrix.linspace(yMin, yMax, ySize);
-        azimuthAxisNormalized = InterferogramOp.normalizeDoubleMatrix(azimuthAxisNormalized, minLine, maxLine);
-
-        final DoubleMatrix polyCoeffs = flatEarthPolyMap.get(polynomialName);
-
-        return PolyUtils.polyval(azimuthAxisNormalized, rangeAxisNormalized,
-                polyCoeffs, PolyUtils.degreeFromCoefficients(polyCoeffs.length));
+        return flatEarthPolyMap.get(polynomialName).compute(
+                xMin, xSize, yMin, ySize, minPixel, maxPixel, minLine, maxLine);
     }
 
     private void saveTopoPhase(final int x0, final int xN, final int y0, final int yN, final double[][] topoPhase,
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import org.apache.commons.math3.util.FastMath;
+import org.jblas.DoubleMatrix;
+import org.jblas.Solve;
+import org.jlinda.core.Point;
+import org.jlinda.core.Window;
+import org.jlinda.core.utils.MathUtils;
+import org.jlinda.core.utils.PolyUtils;
+
+import java.util.Arrays;
+
+/**
+ * Flat earth phase polynomial of one interferogram, or of one burst of a TOPS interferogram.
+ * <p>
+ * The coefficients, ordered A00 A10 A01 A20 A11 A02 ... for powers of the normalized line and pixel, are kept as a
+ * table by power of the line. A tile is evaluated separably: for each pixel column the coefficients of the line
+ * powers are summed over the pixel powers, and the column is then evaluated with Horner's rule, which takes one
+ * multiply-add per degree and pixel.
+ */
+final class FlatEarthPhase {
+
+    private final int degree;
+    // linePowers[m][k] is the coefficient of line^m * pixel^k
+    private final double[][] linePowers;
+
+    FlatEarthPhase(final DoubleMatrix coefficients) {
+        this(coefficients.toArray());
+    }
+
+    FlatEarthPhase(final double[] coefficients) {
+        degree = PolyUtils.degreeFromCoefficients(coefficients.length);
+        linePowers = new double[degree + 1][];
+        for (int m = 0; m <= degree; m++) {
+            linePowers[m] = new double[degree - m + 1];
+            for (int k = 0; k <= degree - m; k++) {
+                final int d = m + k;
+                linePowers[m][k] = coefficients[d * (d + 1) / 2 + k];
+            }
+        }
+    }
+
+    int getDegree() {
+        return degree;
+    }
+
+    /**
+     * Evaluate the polynomial on a tile.
+     *
+     * @param xMin     first pixel of the tile
+     * @param xSize    pixels of the tile
+     * @param yMin     first line of the tile
+     * @param ySize    lines of the tile
+     * @param minPixel pixel normalization range
+     * @param maxPixel pixel normalization range
+     * @param minLine  line normalization range
+     * @param maxLine  line normalization range
+     * @return the phase with a row per line
+     */
+    DoubleMatrix compute(final int xMin, final int xSize, final int yMin, final int ySize,
+                         final int minPixel, final int maxPixel, final int minLine, final int maxLine) {
+        final DoubleMatrix phase = new DoubleMatrix(ySize, xSize);
+        compute(xMin, xSize, yMin, ySize, minPixel, maxPixel, minLine, maxLine, phase.data);
+        return phase;
+    }
+
+    /**
+     * Evaluate the polynomial on a tile into a column major array, as the data of a DoubleMatrix with a row per line.
+     */
+    void compute(final int xMin, final int xSize, final int yMin, final int ySize,
+                 final int minPixel, final int maxPixel, final int minLine, final int maxLine,
+                 final double[] phase) {
+
+        final double pixelCentre = 0.5 * (minPixel + maxPixel);
+        final double pixelScale = 0.25 * (maxPixel - minPixel);
+        final double lineCentre = 0.5 * (minLine + maxLine);
+        final double lineScale = 0.25 * (maxLine - minLine);
+
+        final double[] lines = new double[ySize];
+        for (int i = 0; i < ySize; i++) {
+            lines[i] = (yMin + i - lineCentre) / lineScale;
+        }
+        final double[] columnCoeffs = new double[degree + 1];
+        final double[] column = new double[ySize];
+
+        for (int j = 0; j < xSize; j++) {
+            final double pixel = (xMin + j - pixelCentre) / pixelScale;
+            for (int m = 0; m <= degree; m++) {
+                final double[] c = linePowers[m];
+                double sum = c[c.length - 1];
+                for (int k = c.length - 2; k >= 0; k--) {
+                    sum = sum * pixel + c[k];
+                }
+                columnCoeffs[m] = sum;
+            }
+
+            // Horner's rule a step at a time over the whole column, so that the lines do not wait on each other
+            Arrays.fill(column, 0, ySize, columnCoeffs[degree]);
+            for (int m = degree - 1; m >= 0; m--) {
+                final double c = columnCoeffs[m];
+                for (int i = 0; i < ySize; i++) {
+                    column[i] = column[i] * lines[i] + c;
+                }
+            }
+            System.arraycopy(column, 0, phase, j * ySize, ySize);
+        }
+    }
+
+    /**
+     * The master side of a flat earth polynomial fit: the estimation points distributed over an image or burst,
+     * their master positions and master range phase, and the normal matrix of the fit. None of it depends on the
+     * slave, so one instance serves the polynomials of all slaves of a master image or burst.
+     */
+    static final class ReferencePoints {
+
+        final int numPoints;
+        final double[] line;
+        final double[] pixel;
+        final Point[] xyzMaster;
+        final double[] masterTimeRange;
+        final double[] masterPhase;
+
+        private final DoubleMatrix Atranspose;
+        private final DoubleMatrix N;
+
+        /**
+         * @param numPoints estimation points
+         * @param degree    of the polynomial
+         * @param window    of the image or burst, which also normalizes the positions
+         */
+        ReferencePoints(final int numPoints, final int degree, final Window window) {
+            this.numPoints = numPoints;
+            line = new double[numPoints];
+            pixel = new double[numPoints];
+            xyzMaster = new Point[numPoints];
+            masterTimeRange = new double[numPoints];
+            masterPhase = new double[numPoints];
+
+            final int[][] position = MathUtils.distributePoints(numPoints, window);
+            final DoubleMatrix A = new DoubleMatrix(numPoints, PolyUtils.numberOfCoefficients(degree));
+            for (int i = 0; i < numPoints; ++i) {
+                line[i] = position[i][0];
+                pixel[i] = position[i][1];
+
+                // ______Order unknowns: A00 A10 A01 A20 A11 A02 A30 A21 A12 A03 for degree=3______
+                final double posL = PolyUtils.normalize2(line[i], window.linelo, window.linehi);
+                final double posP = PolyUtils.normalize2(pixel[i], window.pixlo, window.pixhi);
+
+                int index = 0;
+                for (int j = 0; j <= degree; j++) {
+                    for (int k = 0; k <= j; k++) {
+                        A.put(i, index, (FastMath.pow(posL, (double) (j - k)) * FastMath.pow(posP, (double) k)));
+                        index++;
+                    }
+                }
+            }
+            Atranspose = A.transpose();
+            N = Atranspose.mmul(A);
+        }
+
+        /**
+         * Fit the polynomial of a slave.
+         *
+         * @param slaveMinPi4divLam -4 pi c / lambda of the slave
+         * @param slaveTimeRange    the slave range time of each point
+         * @return the coefficients
+         */
+        DoubleMatrix fit(final double slaveMinPi4divLam, final double[] slaveTimeRange) {
+            final DoubleMatrix y = new DoubleMatrix(numPoints);
+            for (int i = 0; i < numPoints; ++i) {
+                y.put(i, masterPhase[i] - (slaveMinPi4divLam * slaveTimeRange[i]));
+            }
+            return Solve.solve(N, Atranspose.mmul(y));
+        }
+    }
+}
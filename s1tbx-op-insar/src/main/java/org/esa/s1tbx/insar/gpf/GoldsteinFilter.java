@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import org.apache.commons.math3.util.FastMath;
+import org.esa.snap.core.datamodel.ProductData;
+
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Goldstein phase filter on a patch grid aligned to the scene.
+ * <p>
+ * Patches of FFTSize x FFTSize pixels start at every multiple of FFTSize / 4 in the scene, so the result of a pixel
+ * does not depend on the tiling. The FFT plan and all patch buffers live in a per-thread workspace. Patches which
+ * straddle the border of a tile are also needed by the neighbouring tiles and are kept in a bounded cache.
+ * <p>
+ * The filtered patches are accumulated in the same order and with the same arithmetic as the original
+ * GoldsteinFilterOp, so for tiles starting on the patch grid the output is identical.
+ */
+final class GoldsteinFilter {
+
+    private final int fftSize;
+    private final int stepSize;
+    private final int halfWindowSize;
+    private final double alpha;
+    private final int sceneWidth;
+    private final int sceneHeight;
+    private final double[] weights;
+    private final ThreadLocal<Workspace> workspace;
+    private final PatchCache cache;
+
+    GoldsteinFilter(final int fftSize, final int windowSize, final double alpha,
+                    final int sceneWidth, final int sceneHeight) {
+        this.fftSize = fftSize;
+        this.stepSize = fftSize / 4;
+        this.halfWindowSize = windowSize / 2;
+        this.alpha = alpha;
+        this.sceneWidth = sceneWidth;
+        this.sceneHeight = sceneHeight;
+
+        final int halfFFTSize = fftSize / 2;
+        weights = new double[fftSize];
+        for (int i = 0; i < fftSize; ++i) {
+            weights[i] = (1 - Math.abs(i - halfFFTSize + 0.5) / halfFFTSize);
+        }
+        workspace = ThreadLocal.withInitial(() -> new Workspace(fftSize));
+
+        final long patchBytes = 2L * fftSize * fftSize * 8 + (long) fftSize * fftSize;
+        cache = new PatchCache((int) FastMath.max(16, Runtime.getRuntime().maxMemory() / 32 / patchBytes));
+    }
+
+    /**
+     * @param targetRectangle the target tile
+     * @return the target tile and the source region read by the patches overlapping it
+     */
+    Rectangle getSourceRectangle(final Rectangle targetRectangle) {
+        final int px0 = firstPatch(targetRectangle.x);
+        final int py0 = firstPatch(targetRectangle.y);
+        final int pxMax = lastPatch(targetRectangle.x + targetRectangle.width - 1, sceneWidth);
+        final int pyMax = lastPatch(targetRectangle.y + targetRectangle.height - 1, sceneHeight);
+        if (pxMax < px0 || pyMax < py0) {
+            return new Rectangle(targetRectangle);
+        }
+        return targetRectangle.union(new Rectangle(px0, py0, pxMax - px0 + fftSize, pyMax - py0 + fftSize));
+    }
+
+    /**
+     * @return the first patch on the grid which overlaps a tile starting at pos
+     */
+    private int firstPatch(final int pos) {
+        final int first = pos - fftSize + 1;
+        return first <= 0 ? 0 : (first + stepSize - 1) / stepSize * stepSize;
+    }
+
+    /**
+     * @return the last patch on the grid which overlaps a tile ending at pos and fits into the scene
+     */
+    private int lastPatch(final int pos, final int sceneSize) {
+        return FastMath.min(pos / stepSize, (sceneSize - fftSize) / stepSize) * stepSize;
+    }
+
+    /**
+     * Filter a tile.
+     *
+     * @param band            identifies the band for the cache of border patches
+     * @param iData           I samples of the source region
+     * @param qData           Q samples of the source region
+     * @param sourceTile      the source samples: offset, stride, minX and minY of the data buffers
+     * @param noDataValue     the no-data value
+     * @param targetRectangle the target tile
+     * @param iFiltered       receives the filtered I samples of the target tile
+     * @param qFiltered       receives the filtered Q samples of the target tile
+     */
+    void filter(final Object band, final ProductData iData, final ProductData qData, final SourceLayout sourceTile,
+                final double noDataValue, final Rectangle targetRectangle,
+                final float[] iFiltered, final float[] qFiltered) {
+
+        final int x0 = targetRectangle.x;
+        final int y0 = targetRectangle.y;
+        final int w = targetRectangle.width;
+        final int h = targetRectangle.height;
+        final int px0 = firstPatch(x0);
+        final int py0 = firstPatch(y0);
+        final int pxMax = lastPatch(x0 + w - 1, sceneWidth);
+        final int pyMax = lastPatch(y0 + h - 1, sceneHeight);
+        final Workspace ws = workspace.get();
+
+        for (int y = py0; y <= pyMax; y += stepSize) {
+            for (int x = px0; x <= pxMax; x += stepSize) {
+                final boolean border = x < x0 || y < y0 || x + fftSize > x0 + w || y + fftSize > y0 + h;
+                Patch patch = border ? cache.get(new PatchKey(band, x, y)) : null;
+                if (patch == null) {
+                    if (!ws.load(iData, qData, sourceTile, x, y, noDataValue)) {
+                        patch = Patch.EMPTY;
+                    } else {
+                        ws.filter(alpha, halfWindowSize, noDataValue);
+                        patch = border ? ws.copyPatch() : ws.patch;
+                    }
+                    if (border) {
+                        cache.put(new PatchKey(band, x, y), patch);
+                    }
+                }
+                if (patch != Patch.EMPTY) {
+                    accumulate(x0, y0, w, h, x, y, patch, iFiltered, qFiltered);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a filtered patch with triangular weights
+     */
+    private void accumulate(final int x0, final int y0, final int w, final int h, final int x, final int y,
+                            final Patch patch, final float[] iFiltered, final float[] qFiltered) {
+        final double[] I = patch.I;
+        final double[] Q = patch.Q;
+        final boolean[] mask = patch.mask;
+        final int xSt = FastMath.max(x, x0);
+        final int ySt = FastMath.max(y, y0);
+        final int xEd = FastMath.min(x + fftSize, x0 + w);
+        final int yEd = FastMath.min(y + fftSize, y0 + h);
+        for (int yy = ySt; yy < yEd; yy++) {
+            final int yi = yy - y;
+            final int yw = (yy - y0) * w;
+            final int pi = yi * fftSize - x;
+            final double weightY = weights[yi];
+            for (int xx = xSt; xx < xEd; xx++) {
+                final int p = pi + xx;
+                if (!mask[p]) {
+                    continue;
+                }
+                final double weight = weights[xx - x] * weightY;
+                final int k = yw + (xx - x0);
+                iFiltered[k] += I[p] * weight;
+                qFiltered[k] += Q[p] * weight;
+            }
+        }
+    }
+
+    /**
+     * Layout of the source data buffers
+     */
+    static final class SourceLayout {
+        final int offset;
+        final int stride;
+        final int minX;
+        final int minY;
+
+        SourceLayout(final int offset, final int stride, final int minX, final int minY) {
+            this.offset = offset;
+            this.stride = stride;
+            this.minX = minX;
+            this.minY = minY;
+        }
+    }
+
+    /**
+     * A filtered patch
+     */
+    private static final class Patch {
+        static final Patch EMPTY = new Patch(new double[0], new double[0], new boolean[0]);
+
+        final double[] I;
+        final double[] Q;
+        final boolean[] mask;
+
+        Patch(final double[] I, final double[] Q, final boolean[] mask) {
+            this.I = I;
+            this.Q = Q;
+            this.mask = mask;
+        }
+    }
+
+    private static final class PatchKey {
+        private final Object band;
+        private final int x;
+        private final int y;
+
+        PatchKey(final Object band, final int x, final int y) {
+            this.band = band;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof PatchKey)) {
+                return false;
+            }
+            final PatchKey key = (PatchKey) obj;
+            return x == key.x && y == key.y && band == key.band;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(band) * 31 + x) * 31 + y;
+        }
+    }
+
+    /**
+     * Least recently used border patches
+     */
+    private static final class PatchCache {
+        private final Map<PatchKey, Patch> map;
+
+        PatchCache(final int maxPatches) {
+            map = new LinkedHashMap<PatchKey, Patch>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<PatchKey, Patch> eldest) {
+                    return size() > maxPatches;
+                }
+            };
+        }
+
+        synchronized Patch get(final PatchKey key) {
+            return map.get(key);
+        }
+
+        synchronized void put(final PatchKey key, final Patch patch) {
+            map.put(key, patch);
+        }
+    }
+
+    /**
+     * Per-thread FFT plan and patch buffers
+     */
+    private static final class Workspace {
+        private final int n;
+        private final DoubleFFT_1D fft;
+        private final Patch patch;
+        private final double[] spec;
+        private final double[] pwrSpec;
+        private final double[] fltSpec;
+        private final double[] colArray;
+
+        Workspace(final int n) {
+            this.n = n;
+            fft = new DoubleFFT_1D(n);
+            patch = new Patch(new double[n * n], new double[n * n], new boolean[n * n]);
+            spec = new double[2 * n * n];
+            pwrSpec = new double[n * n];
+            fltSpec = new double[n * n];
+            colArray = new double[2 * n];
+        }
+
+        /**
+         * Read a patch into the spectrum buffer as interleaved Q, I rows.
+         *
+         * @return false if all samples are no-data
+         */
+        boolean load(final ProductData iData, final ProductData qData, final SourceLayout src,
+                     final int x, final int y, final double noDataValue) {
+            final boolean[] mask = patch.mask;
+            boolean valid = false;
+            for (int r = 0; r < n; r++) {
+                final int srcRow = src.offset + (y + r - src.minY) * src.stride + x - src.minX;
+                int k = 2 * r * n;
+                for (int c = 0; c < n; c++) {
+                    final double i = iData.getElemDoubleAt(srcRow + c);
+                    spec[k++] = qData.getElemDoubleAt(srcRow + c);
+                    spec[k++] = i;
+                    mask[r * n + c] = i != noDataValue;
+                    valid |= i != noDataValue;
+                }
+            }
+            return valid;
+        }
+
+        void filter(final double alpha, final int halfWindowSize, final double noDataValue) {
+            forward2DFFT();
+            getPowerSpectrum();
+            getFilteredPowerSpectrum(alpha, halfWindowSize, noDataValue);
+            inverse2DFFT();
+        }
+
+        Patch copyPatch() {
+            return new Patch(patch.I.clone(), patch.Q.clone(), patch.mask.clone());
+        }
+
+        private void forward2DFFT() {
+            for (int r = 0; r < n; r++) {
+                fft.complexForward(spec, 2 * r * n);
+            }
+            for (int c = 0; c < n; c++) {
+                int k = 0;
+                for (int r = 0; r < n; r++) {
+                    final int p = 2 * (r * n + c);
+                    colArray[k++] = spec[p];
+                    colArray[k++] = spec[p + 1];
+                }
+                fft.complexForward(colArray);
+                for (int r = 0; r < n; r++) {
+                    final int p = 2 * (r * n + c);
+                    spec[p] = colArray[r + r];
+                    spec[p + 1] = colArray[r + r + 1];
+                }
+            }
+        }
+
+        private void getPowerSpectrum() {
+            for (int p = 0; p < n * n; p++) {
+                final double specQ = spec[2 * p];
+                final double specI = spec[2 * p + 1];
+                pwrSpec[p] = Math.sqrt(specI * specI + specQ * specQ);
+            }
+        }
+
+        private void getFilteredPowerSpectrum(final double alpha, final int halfWindowSize, final double noDataValue) {
+            for (int r = 0; r < n; r++) {
+                final int jMin = Math.max(0, r - halfWindowSize);
+                final int jMax = Math.min(n - 1, r + halfWindowSize);
+                for (int c = 0; c < n; c++) {
+                    double sum = 0;
+                    int k = 0;
+                    final int iMin = Math.max(0, c - halfWindowSize);
+                    final int iMax = Math.min(n - 1, c + halfWindowSize);
+                    for (int j = jMin; j <= jMax; j++) {
+                        final int row = j * n;
+                        for (int i = iMin; i <= iMax; i++) {
+                            if (pwrSpec[row + i] != noDataValue) {
+                                sum += pwrSpec[row + i];
+                                k++;
+                            }
+                        }
+                    }
+                    if (k != 0) {
+                        fltSpec[r * n + c] = FastMath.pow(sum / k, alpha);
+                    } else {
+                        fltSpec[r * n + c] = 0;
+                    }
+                }
+            }
+        }
+
+        private void inverse2DFFT() {
+            for (int c = 0; c < n; c++) {
+                int k = 0;
+                for (int r = 0; r < n; r++) {
+                    final int p = r * n + c;
+                    colArray[k++] = spec[2 * p] * fltSpec[p];
+                    colArray[k++] = spec[2 * p + 1] * fltSpec[p];
+                }
+                fft.complexInverse(colArray, false);
+                for (int r = 0; r < n; r++) {
+                    final int p = 2 * (r * n + c);
+                    spec[p] = colArray[r + r];
+                    spec[p + 1] = colArray[r + r + 1];
+                }
+            }
+            final double[] I = patch.I;
+            final double[] Q = patch.Q;
+            for (int r = 0; r < n; r++) {
+                final int offset = 2 * r * n;
+                fft.complexInverse(spec, offset, false);
+                for (int c = 0; c < n; c++) {
+                    Q[r * n + c] = spec[offset + c + c];
+                    I[r * n + c] = spec[offset + c + c + 1];
+                }
+            }
+        }
+    }
+}
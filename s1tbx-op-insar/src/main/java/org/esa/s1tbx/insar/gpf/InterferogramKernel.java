@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import org.apache.commons.math3.util.FastMath;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.gpf.Tile;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Interferogram and coherence of a tile in a single pass over the master and slave samples.
+ * <p>
+ * The I/Q samples of the tile, extended by the coherence window, are read once into float arrays of a per-thread
+ * workspace together with the phase to remove from the slave, the sum of the flat earth and topographic phases.
+ * Each line of the extended tile is then streamed once: the slave is rotated by the phase, the interferogram
+ * master * conj(slave) is written for the lines and pixels of the target tile, and the interferogram and the
+ * powers of master and slave are added to running column sums over the last lines of the coherence window.
+ * The coherence of a target line is read from the column sums as soon as its window is complete.
+ * <p>
+ * The window and the estimator are those of SarUtils.coherence2: the coherence of a pixel is
+ * |sum(m * conj(s))| / sqrt(sum(|m|^2) * sum(|s|^2)) over cohWinAz lines and cohWinRg pixels around it,
+ * and 0 where either power is 0.
+ */
+final class InterferogramKernel {
+
+    private final int winAz;
+    private final int winRg;
+    private final boolean includeCoherence;
+    private final ThreadLocal<Workspace> workspace;
+
+    /**
+     * @param cohWinAz         coherence window lines
+     * @param cohWinRg         coherence window pixels
+     * @param includeCoherence whether to estimate the coherence; the window is not used otherwise
+     */
+    InterferogramKernel(final int cohWinAz, final int cohWinRg, final boolean includeCoherence) {
+        this.winAz = includeCoherence ? cohWinAz : 1;
+        this.winRg = includeCoherence ? cohWinRg : 1;
+        this.includeCoherence = includeCoherence;
+        workspace = ThreadLocal.withInitial(Workspace::new);
+    }
+
+    /**
+     * @param targetRectangle the target tile
+     * @return the source region of the tile: the target tile extended by the coherence window
+     */
+    Rectangle getSourceRectangle(final Rectangle targetRectangle) {
+        return new Rectangle(targetRectangle.x - (winRg - 1) / 2, targetRectangle.y - (winAz - 1) / 2,
+                targetRectangle.width + winRg - 1, targetRectangle.height + winAz - 1);
+    }
+
+    /**
+     * @param targetRectangle the target tile
+     * @return the workspace of the calling thread, sized for the tile and without a phase
+     */
+    Workspace getWorkspace(final Rectangle targetRectangle) {
+        final Workspace ws = workspace.get();
+        ws.allocate(targetRectangle.width + winRg - 1, targetRectangle.height + winAz - 1,
+                targetRectangle.width, targetRectangle.height, includeCoherence ? winAz : 0);
+        return ws;
+    }
+
+    /**
+     * Compute the interferogram and, if included, the coherence of the target tile from the samples and the
+     * phase of the workspace.
+     */
+    void compute(final Workspace ws) {
+
+        final int w = ws.width;
+        final int h = ws.height;
+        final int tw = ws.targetWidth;
+        final int offsetX = (winRg - 1) / 2;
+        final int offsetY = (winAz - 1) / 2;
+        final float[] mstI = ws.mstI, mstQ = ws.mstQ, slvI = ws.slvI, slvQ = ws.slvQ;
+        final double[] phase = ws.hasPhase ? ws.phase : null;
+
+        final double[] ifgRe = ws.ifgRe, ifgIm = ws.ifgIm, mstPower = ws.mstPower, slvPower = ws.slvPower;
+        final double[] sumRe = ws.sumRe, sumIm = ws.sumIm, sumMst = ws.sumMst, sumSlv = ws.sumSlv;
+        if (includeCoherence) {
+            Arrays.fill(sumRe, 0, w, 0.0);
+            Arrays.fill(sumIm, 0, w, 0.0);
+            Arrays.fill(sumMst, 0, w, 0.0);
+            Arrays.fill(sumSlv, 0, w, 0.0);
+        }
+
+        for (int y = 0; y < h; y++) {
+            // the line leaving the window, whose products are overwritten by the new line
+            final int ring = includeCoherence ? (y % winAz) * w : 0;
+            final boolean full = includeCoherence && y >= winAz;
+
+            final int row = y * w;
+            for (int x = 0; x < w; x++) {
+                final int k = row + x;
+                final double mRe = mstI[k];
+                final double mIm = mstQ[k];
+                double sRe = slvI[k];
+                double sIm = slvQ[k];
+                if (phase != null) {
+                    final double c = FastMath.cos(phase[k]);
+                    final double s = FastMath.sin(phase[k]);
+                    final double re = sRe * c - sIm * s;
+                    sIm = sRe * s + sIm * c;
+                    sRe = re;
+                }
+                // master * conj(slave)
+                final double re = mRe * sRe + mIm * sIm;
+                final double im = mIm * sRe - mRe * sIm;
+
+                final int r = ring + x;
+                if (includeCoherence) {
+                    final double mPow = mRe * mRe + mIm * mIm;
+                    final double sPow = sRe * sRe + sIm * sIm;
+                    if (full) {
+                        sumRe[x] += re - ifgRe[r];
+                        sumIm[x] += im - ifgIm[r];
+                        sumMst[x] += mPow - mstPower[r];
+                        sumSlv[x] += sPow - slvPower[r];
+                    } else {
+                        sumRe[x] += re;
+                        sumIm[x] += im;
+                        sumMst[x] += mPow;
+                        sumSlv[x] += sPow;
+                    }
+                    mstPower[r] = mPow;
+                    slvPower[r] = sPow;
+                }
+                ifgRe[r] = re;
+                ifgIm[r] = im;
+            }
+
+            final int ty = y - offsetY;
+            if (ty >= 0 && ty < ws.targetHeight) {
+                final int src = ring + offsetX;
+                final int dst = ty * tw;
+                for (int x = 0; x < tw; x++) {
+                    ws.ifgI[dst + x] = (float) ifgRe[src + x];
+                    ws.ifgQ[dst + x] = (float) ifgIm[src + x];
+                }
+            }
+
+            if (includeCoherence && y >= winAz - 1) {
+                final int dst = (y - winAz + 1) * tw;
+                for (int x = 0; x < tw; x++) {
+                    double re = 0, im = 0, mPow = 0, sPow = 0;
+                    for (int l = x; l < x + winRg; l++) {
+                        re += sumRe[l];
+                        im += sumIm[l];
+                        mPow += sumMst[l];
+                        sPow += sumSlv[l];
+                    }
+                    final double product = mPow * sPow;
+                    ws.coherence[dst + x] = (float) (product > 0.0 ? Math.sqrt(re * re + im * im) / Math.sqrt(product) : 0.0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Samples, phase and results of a tile. The arrays are reused by the tiles of a thread.
+     */
+    static final class Workspace {
+
+        // source region, row major
+        int width;
+        int height;
+        float[] mstI = new float[0];
+        float[] mstQ = new float[0];
+        float[] slvI = new float[0];
+        float[] slvQ = new float[0];
+        double[] phase = new double[0];
+        private boolean hasPhase;
+
+        // target tile, row major
+        int targetWidth;
+        int targetHeight;
+        float[] ifgI = new float[0];
+        float[] ifgQ = new float[0];
+        float[] coherence = new float[0];
+
+        // products of the lines in the coherence window, and their sums per pixel
+        private double[] ifgRe = new double[0];
+        private double[] ifgIm = new double[0];
+        private double[] mstPower = new double[0];
+        private double[] slvPower = new double[0];
+        private double[] sumRe = new double[0];
+        private double[] sumIm = new double[0];
+        private double[] sumMst = new double[0];
+        private double[] sumSlv = new double[0];
+
+        private void allocate(final int width, final int height, final int targetWidth, final int targetHeight,
+                              final int windowLines) {
+            this.width = width;
+            this.height = height;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            hasPhase = false;
+
+            final int size = width * height;
+            if (mstI.length < size) {
+                mstI = new float[size];
+                mstQ = new float[size];
+                slvI = new float[size];
+                slvQ = new float[size];
+                phase = new double[size];
+            }
+            final int targetSize = targetWidth * targetHeight;
+            if (ifgI.length < targetSize) {
+                ifgI = new float[targetSize];
+                ifgQ = new float[targetSize];
+                coherence = new float[targetSize];
+            }
+            final int lineSize = width * Math.max(1, windowLines);
+            if (ifgRe.length < lineSize) {
+                ifgRe = new double[lineSize];
+                ifgIm = new double[lineSize];
+                mstPower = new double[lineSize];
+                slvPower = new double[lineSize];
+            }
+            if (sumRe.length < width) {
+                sumRe = new double[width];
+                sumIm = new double[width];
+                sumMst = new double[width];
+                sumSlv = new double[width];
+            }
+        }
+
+        /**
+         * Read the master samples of the source region.
+         */
+        void readMaster(final Tile realTile, final Tile imagTile) {
+            read(realTile, mstI);
+            read(imagTile, mstQ);
+        }
+
+        /**
+         * Read the slave samples of the source region.
+         */
+        void readSlave(final Tile realTile, final Tile imagTile) {
+            read(realTile, slvI);
+            read(imagTile, slvQ);
+        }
+
+        private void read(final Tile tile, final float[] samples) {
+            final ProductData data = tile.getRawSamples();
+            final int size = width * height;
+            for (int i = 0; i < size; i++) {
+                samples[i] = data.getElemFloatAt(i);
+            }
+        }
+
+        /**
+         * Remove the phase of the previous slave.
+         */
+        void clearPhase() {
+            hasPhase = false;
+        }
+
+        /**
+         * Add a phase to remove from the slave.
+         *
+         * @param columns the phase of the source region in column major order, as the data of a DoubleMatrix
+         */
+        void addPhase(final double[] columns) {
+            for (int x = 0; x < width; x++) {
+                final int col = x * height;
+                for (int y = 0; y < height; y++) {
+                    final int k = y * width + x;
+                    phase[k] = hasPhase ? phase[k] + columns[col + y] : columns[col + y];
+                }
+            }
+            hasPhase = true;
+        }
+
+        /**
+         * Add a phase to remove from the slave.
+         *
+         * @param lines the phase of the source region by line and pixel
+         */
+        void addPhase(final double[][] lines) {
+            for (int y = 0; y < height; y++) {
+                final double[] line = lines[y];
+                final int row = y * width;
+                if (hasPhase) {
+                    for (int x = 0; x < width; x++) {
+                        phase[row + x] += line[x];
+                    }
+                } else {
+                    System.arraycopy(line, 0, phase, row, width);
+                }
+            }
+            hasPhase = true;
+        }
+    }
+}
@@ -16,7 +16,6 @@
 package org.esa.s1tbx.insar.gpf;
 
 import com.bc.ceres.core.ProgressMonitor;
-import org.apache.commons.math3.util.FastMath;
 import org.esa.s1tbx.commons.Sentinel1Utils;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.dataop.dem.ElevationModel;
@@ -141,7 +140,8 @@ public class InterferogramOp extends Operator {
     private boolean outputLatLon = false;
 
     // flat_earth_polynomial container
-    private Map<String, DoubleMatrix> flatEarthPolyMap = new HashMap<>();
+    private Map<String, FlatEarthPhase> flatEarthPolyMap = new HashMap<>();
+    private InterferogramKernel interferogramKernel = null;
     private boolean flatEarthEstimated = false;
 
     // source
@@ -208,6 +208,8 @@ public class InterferogramOp extends Operator {
 
             checkUserInput();
 
+            interferogramKernel = new InterferogramKernel(cohWinAz, cohWinRg, includeCoherence);
+
             constructSourceMetadata();
             constructTargetMetadata();
 
@@ -332,13 +334,16 @@ public class InterferogramOp extends Operator {
 
             CplxContainer master = masterMap.get(keyMaster);
 
+            final FlatEarthPhase.ReferencePoints points = getReferencePoints(master.metaData, master.orbit,
+                    sourceImageWidth, sourceImageHeight, srpPolynomialDegree, srpNumberPoints);
+            final boolean isBiStaticStack = StackUtils.isBiStaticStack(sourceProduct);
+
             for (String keySlave : slaveMap.keySet()) {
 
                 CplxContainer slave = slaveMap.get(keySlave);
 
-                flatEarthPolyMap.put(slave.name, estimateFlatEarthPolynomial(
-                        master.metaData, master.orbit, slave.metaData, slave.orbit, sourceImageWidth,
-                        sourceImageHeight, srpPolynomialDegree, srpNumberPoints, sourceProduct));
+                flatEarthPolyMap.put(slave.name, new FlatEarthPhase(estimateFlatEarthPolynomial(
+                        points, slave.metaData, slave.orbit, isBiStaticStack)));
             }
         }
     }
@@ -349,21 +354,23 @@ public class InterferogramOp extends Operator {
 
             CplxContainer master = masterMap.get(keyMaster);
 
-            for (String keySlave : slaveMap.keySet()) {
+            for (int s = 0; s < numSubSwaths; s++) {
 
-                CplxContainer slave = slaveMap.get(keySlave);
+                final int numBursts = subSwath[s].numOfBursts;
+
+                for (int b = 0; b < numBursts; b++) {
 
-                for (int s = 0; s < numSubSwaths; s++) {
+                    final FlatEarthPhase.ReferencePoints points = getReferencePoints(master, s + 1, b,
+                            mstSceneCentreXYZ, orbitDegree, srpPolynomialDegree, srpNumberPoints, subSwath, su);
 
-                    final int numBursts = subSwath[s].numOfBursts;
+                    for (String keySlave : slaveMap.keySet()) {
 
-                    for (int b = 0; b < numBursts; b++) {
+                        CplxContainer slave = slaveMap.get(keySlave);
 
                         final String polynomialName = slave.name + '_' + s + '_' + b;
 
-                        flatEarthPolyMap.put(polynomialName, estimateFlatEarthPolynomial(
-                                master, slave, s + 1, b, mstSceneCentreXYZ, orbitDegree, srpPolynomialDegree,
-                                srpNumberPoints, subSwath, su));
+                        flatEarthPolyMap.put(polynomialName, new FlatEarthPhase(estimateFlatEarthPolynomial(
+                                points, slave, b, mstSceneCentreXYZ, orbitDegree)));
                     }
                 }
             }
@@ -584,67 +591,59 @@ public class InterferogramOp extends Operator {
             final int srpPolynomialDegree, final int srpNumberPoints, final Product sourceProduct)
             throws Exception {
 
-        long minLine = 0;
-        long maxLine = sourceImageHeight;
-        long minPixel = 0;
-        long maxPixel = sourceImageWidth;
+        final FlatEarthPhase.ReferencePoints points = getReferencePoints(masterMetadata, masterOrbit,
+                sourceImageWidth, sourceImageHeight, srpPolynomialDegree, srpNumberPoints);
 
-        int numberOfCoefficients = PolyUtils.numberOfCoefficients(srpPolynomialDegree);
+        return estimateFlatEarthPolynomial(points, slaveMetadata, slaveOrbit, StackUtils.isBiStaticStack(sourceProduct));
+    }
 
-        int[][] position = MathUtils.distributePoints(srpNumberPoints, new Window(minLine, maxLine, minPixel, maxPixel));
+    /**
+     * Compute the master side of the flat earth polynomials of an image, shared by all its slaves.
+     */
+    static FlatEarthPhase.ReferencePoints getReferencePoints(
+            final SLCImage masterMetadata, final Orbit masterOrbit, final int sourceImageWidth,
+            final int sourceImageHeight, final int srpPolynomialDegree, final int srpNumberPoints) throws Exception {
 
-        // setup observation and design matrix
-        DoubleMatrix y = new DoubleMatrix(srpNumberPoints);
-        DoubleMatrix A = new DoubleMatrix(srpNumberPoints, numberOfCoefficients);
+        final FlatEarthPhase.ReferencePoints points = new FlatEarthPhase.ReferencePoints(
+                srpNumberPoints, srpPolynomialDegree, new Window(0, sourceImageHeight, 0, sourceImageWidth));
 
-        double masterMinPi4divLam = (-4 * Math.PI * org.jlinda.core.Constants.SOL) / masterMetadata.getRadarWavelength();
-        double slaveMinPi4divLam = (-4 * Math.PI * org.jlinda.core.Constants.SOL) / slaveMetadata.getRadarWavelength();
-        final boolean isBiStaticStack = StackUtils.isBiStaticStack(sourceProduct);
+        final double masterMinPi4divLam = (-4 * Math.PI * org.jlinda.core.Constants.SOL) / masterMetadata.getRadarWavelength();
 
-        // Loop through vector or distributedPoints()
         for (int i = 0; i < srpNumberPoints; ++i) {
 
-            double line = position[i][0];
-            double pixel = position[i][1];
+            final double line = points.line[i];
+            final double pixel = points.pixel[i];
 
             // compute azimuth/range time for this pixel
-            final double masterTimeRange = masterMetadata.pix2tr(pixel + 1);
+            points.masterTimeRange[i] = masterMetadata.pix2tr(pixel + 1);
+            points.masterPhase[i] = masterMinPi4divLam * points.masterTimeRange[i];
 
             // compute xyz of this point : sourceMaster
-            org.jlinda.core.Point xyzMaster = masterOrbit.lp2xyz(line + 1, pixel + 1, masterMetadata);
-            org.jlinda.core.Point slaveTimeVector = slaveOrbit.xyz2t(xyzMaster, slaveMetadata);
+            points.xyzMaster[i] = masterOrbit.lp2xyz(line + 1, pixel + 1, masterMetadata);
+        }
+        return points;
+    }
 
-            double slaveTimeRange;
-            if (isBiStaticStack) {
-                slaveTimeRange = 0.5 * (slaveTimeVector.x + masterTimeRange);
-            } else {
-                slaveTimeRange = slaveTimeVector.x;
-            }
+    static DoubleMatrix estimateFlatEarthPolynomial(
+            final FlatEarthPhase.ReferencePoints points, final SLCImage slaveMetadata, final Orbit slaveOrbit,
+            final boolean isBiStaticStack) throws Exception {
 
-            // observation vector
-            y.put(i, (masterMinPi4divLam * masterTimeRange) - (slaveMinPi4divLam * slaveTimeRange));
+        final double slaveMinPi4divLam = (-4 * Math.PI * org.jlinda.core.Constants.SOL) / slaveMetadata.getRadarWavelength();
 
-            // set up a system of equations
-            // ______Order unknowns: A00 A10 A01 A20 A11 A02 A30 A21 A12 A03 for degree=3______
-            double posL = PolyUtils.normalize2(line, minLine, maxLine);
-            double posP = PolyUtils.normalize2(pixel, minPixel, maxPixel);
+        final double[] slaveTimeRange = new double[points.numPoints];
+        for (int i = 0; i < points.numPoints; ++i) {
 
-            int index = 0;
+            final org.jlinda.core.Point slaveTimeVector = slaveOrbit.xyz2t(points.xyzMaster[i], slaveMetadata);
 
-            for (int j = 0; j <= srpPolynomialDegree; j++) {
-                for (int k = 0; k <= j; k++) {
-                    A.put(i, index, (FastMath.pow(posL, (double) (j - k)) * FastMath.pow(posP, (double) k)));
-                    index++;
-                }
+            if (isBiStaticStack) {
+                slaveTimeRange[i] = 0.5 * (slaveTimeVector.x + points.masterTimeRange[i]);
+            } else {
+                slaveTimeRange[i] = slaveTimeVector.x;
             }
         }
 
         // Fit polynomial through computed vector of phases
-        DoubleMatrix Atranspose = A.transpose();
-        DoubleMatrix N = Atranspose.mmul(A);
-        DoubleMatrix rhs = Atranspose.mmul(y);
-
-        return Solve.solve(N, rhs);
+        return points.fit(slaveMinPi4divLam, slaveTimeRange);
     }
 
     /**
@@ -656,32 +655,35 @@ public class InterferogramOp extends Operator {
             final int srpNumberPoints, final Sentinel1Utils.SubSwathInfo[] subSwath, final Sentinel1Utils su)
             throws Exception {
 
-        final double[][] masterOSV = getAdjacentOrbitStateVectors(master, mstSceneCentreXYZ[burstIndex]);
-        final double[][] slaveOSV = getAdjacentOrbitStateVectors(slave, mstSceneCentreXYZ[burstIndex]);
-        final Orbit masterOrbit = new Orbit(masterOSV, orbitDegree);
-        final Orbit slaveOrbit = new Orbit(slaveOSV, orbitDegree);
+        final FlatEarthPhase.ReferencePoints points = getReferencePoints(master, subSwathIndex, burstIndex,
+                mstSceneCentreXYZ, orbitDegree, srpPolynomialDegree, srpNumberPoints, subSwath, su);
 
-        long minLine = 0;
-        long maxLine = subSwath[subSwathIndex - 1].linesPerBurst - 1;
-        long minPixel = 0;
-        long maxPixel = subSwath[subSwathIndex - 1].samplesPerBurst - 1;
+        return estimateFlatEarthPolynomial(points, slave, burstIndex, mstSceneCentreXYZ, orbitDegree);
+    }
 
-        int numberOfCoefficients = PolyUtils.numberOfCoefficients(srpPolynomialDegree);
+    /**
+     * Compute the master side of the flat earth polynomials of a burst, shared by all slaves.
+     */
+    static FlatEarthPhase.ReferencePoints getReferencePoints(
+            final CplxContainer master, final int subSwathIndex, final int burstIndex,
+            final Point[] mstSceneCentreXYZ, final int orbitDegree, final int srpPolynomialDegree,
+            final int srpNumberPoints, final Sentinel1Utils.SubSwathInfo[] subSwath, final Sentinel1Utils su)
+            throws Exception {
 
-        int[][] position = MathUtils.distributePoints(srpNumberPoints, new Window(minLine, maxLine, minPixel, maxPixel));
+        final double[][] masterOSV = getAdjacentOrbitStateVectors(master, mstSceneCentreXYZ[burstIndex]);
+        final Orbit masterOrbit = new Orbit(masterOSV, orbitDegree);
 
-        // setup observation and design matrix
-        DoubleMatrix y = new DoubleMatrix(srpNumberPoints);
-        DoubleMatrix A = new DoubleMatrix(srpNumberPoints, numberOfCoefficients);
+        final long maxLine = subSwath[subSwathIndex - 1].linesPerBurst - 1;
+        final long maxPixel = subSwath[subSwathIndex - 1].samplesPerBurst - 1;
+        final FlatEarthPhase.ReferencePoints points = new FlatEarthPhase.ReferencePoints(
+                srpNumberPoints, srpPolynomialDegree, new Window(0, maxLine, 0, maxPixel));
 
-        double masterMinPi4divLam = (-4 * Constants.PI * Constants.lightSpeed) / master.metaData.getRadarWavelength();
-        double slaveMinPi4divLam = (-4 * Constants.PI * Constants.lightSpeed) / slave.metaData.getRadarWavelength();
+        final double masterMinPi4divLam = (-4 * Constants.PI * Constants.lightSpeed) / master.metaData.getRadarWavelength();
 
-        // Loop through vector or distributedPoints()
         for (int i = 0; i < srpNumberPoints; ++i) {
 
-            double line = position[i][0];
-            double pixel = position[i][1];
+            final double line = points.line[i];
+            final double pixel = points.pixel[i];
 
             // compute azimuth/range time for this pixel
             final double mstRgTime = subSwath[subSwathIndex - 1].slrTimeToFirstPixel +
@@ -689,38 +691,32 @@ public class InterferogramOp extends Operator {
 
             final double mstAzTime = line2AzimuthTime(line, subSwathIndex, burstIndex, subSwath);
 
-            // compute xyz of this point : sourceMaster
-            Point xyzMaster = masterOrbit.lph2xyz(
-                    mstAzTime, mstRgTime, 0.0, mstSceneCentreXYZ[burstIndex]);
-
-            Point slaveTimeVector = slaveOrbit.xyz2t(xyzMaster, slave.metaData.getSceneCentreAzimuthTime());
+            points.masterTimeRange[i] = mstRgTime;
+            points.masterPhase[i] = masterMinPi4divLam * mstRgTime;
 
-            final double slaveTimeRange = slaveTimeVector.x;
+            // compute xyz of this point : sourceMaster
+            points.xyzMaster[i] = masterOrbit.lph2xyz(mstAzTime, mstRgTime, 0.0, mstSceneCentreXYZ[burstIndex]);
+        }
+        return points;
+    }
 
-            // observation vector
-            y.put(i, (masterMinPi4divLam * mstRgTime) - (slaveMinPi4divLam * slaveTimeRange));
+    static DoubleMatrix estimateFlatEarthPolynomial(
+            final FlatEarthPhase.ReferencePoints points, final CplxContainer slave, final int burstIndex,
+            final Point[] mstSceneCentreXYZ, final int orbitDegree) throws Exception {
 
-            // set up a system of equations
-            // ______Order unknowns: A00 A10 A01 A20 A11 A02 A30 A21 A12 A03 for degree=3______
-            double posL = PolyUtils.normalize2(line, minLine, maxLine);
-            double posP = PolyUtils.normalize2(pixel, minPixel, maxPixel);
+        final double[][] slaveOSV = getAdjacentOrbitStateVectors(slave, mstSceneCentreXYZ[burstIndex]);
+        final Orbit slaveOrbit = new Orbit(slaveOSV, orbitDegree);
 
-            int index = 0;
+        final double slaveMinPi4divLam = (-4 * Constants.PI * Constants.lightSpeed) / slave.metaData.getRadarWavelength();
+        final double sceneCentreAzimuthTime = slave.metaData.getSceneCentreAzimuthTime();
 
-            for (int j = 0; j <= srpPolynomialDegree; j++) {
-                for (int k = 0; k <= j; k++) {
-                    A.put(i, index, (FastMath.pow(posL, (double) (j - k)) * FastMath.pow(posP, (double) k)));
-                    index++;
-                }
-            }
+        final double[] slaveTimeRange = new double[points.numPoints];
+        for (int i = 0; i < points.numPoints; ++i) {
+            slaveTimeRange[i] = slaveOrbit.xyz2t(points.xyzMaster[i], sceneCentreAzimuthTime).x;
         }
 
         // Fit polynomial through computed vector of phases
-        DoubleMatrix Atranspose = A.transpose();
-        DoubleMatrix N = Atranspose.mmul(A);
-        DoubleMatrix rhs = Atranspose.mmul(y);
-
-        return Solve.solve(N, rhs);
+        return points.fit(slaveMinPi4divLam, slaveTimeRange);
     }
 
     private static double[][] getAdjacentOrbitStateVectors(
@@ -876,11 +872,16 @@ public class InterferogramOp extends Operator {
             final int yN = y0 + targetRectangle.height - 1;
             final int x0 = targetRectangle.x;
             final int xN = targetRectangle.x + targetRectangle.width - 1;
-            final Window tileWindow = new Window(y0, yN, x0, xN);
+
+            final Rectangle sourceRectangle = interferogramKernel.getSourceRectangle(targetRectangle);
+            final int sx0 = sourceRectangle.x;
+            final int sy0 = sourceRectangle.y;
+            final Window sourceWindow = new Window(sy0, sy0 + sourceRectangle.height - 1,
+                    sx0, sx0 + sourceRectangle.width - 1);
 
             DemTile demTile = null;
             if (subtractTopographicPhase) {
-                demTile = TopoPhase.getDEMTile(tileWindow, targetMap, dem, demNoDataValue,
+                demTile = TopoPhase.getDEMTile(sourceWindow, targetMap, dem, demNoDataValue,
                         demSamplingLat, demSamplingLon, tileExtensionPercent);
 
                 if (demTile.getData().length < 3 || demTile.getData()[0].length < 3) {
@@ -889,122 +890,59 @@ public class InterferogramOp extends Operator {
                 }
             }
 
-            // parameters for coherence calculation
-            final int cohx0 = targetRectangle.x - (cohWinRg - 1) / 2;
-            final int cohy0 = targetRectangle.y - (cohWinAz - 1) / 2;
-            final int cohw = targetRectangle.width + cohWinRg - 1;
-            final int cohh = targetRectangle.height + cohWinAz - 1;
-            final Rectangle rect = new Rectangle(cohx0, cohy0, cohw, cohh);
-
-            final Window cohTileWindow = new Window(
-                    cohy0, cohy0 + cohh - 1, cohx0, cohx0 + cohw - 1);
-
-            DemTile cohDemTile = null;
-            if (subtractTopographicPhase) {
-                cohDemTile = TopoPhase.getDEMTile(cohTileWindow, targetMap, dem, demNoDataValue,
-                        demSamplingLat, demSamplingLon, tileExtensionPercent);
-            }
+            final InterferogramKernel.Workspace ws = interferogramKernel.getWorkspace(targetRectangle);
 
             for (String ifgKey : targetMap.keySet()) {
 
                 final ProductContainer product = targetMap.get(ifgKey);
 
-                final Tile mstTileReal = getSourceTile(product.sourceMaster.realBand, targetRectangle, border);
-                final Tile mstTileImag = getSourceTile(product.sourceMaster.imagBand, targetRectangle, border);
-                final ComplexDoubleMatrix dataMaster = TileUtilsDoris.pullComplexDoubleMatrix(mstTileReal, mstTileImag);
-
-                final Tile slvTileReal = getSourceTile(product.sourceSlave.realBand, targetRectangle, border);
-                final Tile slvTileImag = getSourceTile(product.sourceSlave.imagBand, targetRectangle, border);
-                final ComplexDoubleMatrix dataSlave = TileUtilsDoris.pullComplexDoubleMatrix(slvTileReal, slvTileImag);
+                ws.readMaster(getSourceTile(product.sourceMaster.realBand, sourceRectangle, border),
+                        getSourceTile(product.sourceMaster.imagBand, sourceRectangle, border));
+                ws.readSlave(getSourceTile(product.sourceSlave.realBand, sourceRectangle, border),
+                        getSourceTile(product.sourceSlave.imagBand, sourceRectangle, border));
 
+                ws.clearPhase();
                 if (subtractFlatEarthPhase) {
                     final DoubleMatrix flatEarthPhase = computeFlatEarthPhase(
-                            x0, xN, dataMaster.columns, y0, yN, dataMaster.rows,
+                            sx0, sx0 + ws.width - 1, ws.width, sy0, sy0 + ws.height - 1, ws.height,
                             0, sourceImageWidth - 1, 0, sourceImageHeight - 1, product.sourceSlave.name);
 
-                    final ComplexDoubleMatrix complexReferencePhase = new ComplexDoubleMatrix(
-                            MatrixFunctions.cos(flatEarthPhase), MatrixFunctions.sin(flatEarthPhase));
-
-                    dataSlave.muli(complexReferencePhase);
+                    ws.addPhase(flatEarthPhase.data);
 
                     if (OUTPUT_PHASE) {
-                        saveFlatEarthPhase(x0, xN, y0, yN, flatEarthPhase, product, targetTileMap);
+                        saveFlatEarthPhase(x0, xN, y0, yN, sx0, sy0, flatEarthPhase, product, targetTileMap);
                     }
                 }
 
                 if (subtractTopographicPhase) {
                     final TopoPhase topoPhase = TopoPhase.computeTopoPhase(
-                            product, tileWindow, demTile, outputElevation, false);
-
-                    final ComplexDoubleMatrix ComplexTopoPhase = new ComplexDoubleMatrix(
-                            MatrixFunctions.cos(new DoubleMatrix(topoPhase.demPhase)),
-                            MatrixFunctions.sin(new DoubleMatrix(topoPhase.demPhase)));
+                            product, sourceWindow, demTile, outputElevation, false);
 
-                    dataSlave.muli(ComplexTopoPhase);
+                    ws.addPhase(topoPhase.demPhase);
 
                     if (OUTPUT_PHASE) {
-                        saveTopoPhase(x0, xN, y0, yN, topoPhase.demPhase, product, targetTileMap);
+                        saveTopoPhase(x0, xN, y0, yN, sx0, sy0, topoPhase.demPhase, product, targetTileMap);
                     }
 
                     if (outputElevation) {
-                        saveElevation(x0, xN, y0, yN, topoPhase.elevation, product, targetTileMap);
+                        saveElevation(x0, xN, y0, yN, sx0, sy0, topoPhase.elevation, product, targetTileMap);
                     }
 
                     if (outputLatLon) {
                         final TopoPhase topoPhase1 = TopoPhase.computeTopoPhase(
-                                product, tileWindow, demTile, false, true);
+                                product, sourceWindow, demTile, false, true);
 
-                        saveLatLon(x0, xN, y0, yN, topoPhase1.latitude, topoPhase1.longitude, product, targetTileMap);
+                        saveLatLon(x0, xN, y0, yN, sx0, sy0, topoPhase1.latitude, topoPhase1.longitude,
+                                product, targetTileMap);
                     }
                 }
 
-                dataMaster.muli(dataSlave.conji());
+                interferogramKernel.compute(ws);
 
-                saveInterferogram(dataMaster, product, targetTileMap, targetRectangle);
+                saveInterferogram(ws, sourceRectangle, product, targetTileMap, targetRectangle);
 
-                // coherence calculation
                 if (includeCoherence) {
-                    final Tile mstTileReal2 = getSourceTile(product.sourceMaster.realBand, rect, border);
-                    final Tile mstTileImag2 = getSourceTile(product.sourceMaster.imagBand, rect, border);
-                    final Tile slvTileReal2 = getSourceTile(product.sourceSlave.realBand, rect, border);
-                    final Tile slvTileImag2 = getSourceTile(product.sourceSlave.imagBand, rect, border);
-                    final ComplexDoubleMatrix dataMaster2 =
-                            TileUtilsDoris.pullComplexDoubleMatrix(mstTileReal2, mstTileImag2);
-
-                    final ComplexDoubleMatrix dataSlave2 =
-                            TileUtilsDoris.pullComplexDoubleMatrix(slvTileReal2, slvTileImag2);
-
-                    if (subtractFlatEarthPhase) {
-                        final DoubleMatrix flatEarthPhase = computeFlatEarthPhase(
-                                cohx0, cohx0 + cohw - 1, cohw, cohy0, cohy0 + cohh - 1, cohh,
-                                0, sourceImageWidth - 1, 0, sourceImageHeight - 1, product.sourceSlave.name);
-
-                        final ComplexDoubleMatrix complexReferencePhase = new ComplexDoubleMatrix(
-                                MatrixFunctions.cos(flatEarthPhase), MatrixFunctions.sin(flatEarthPhase));
-
-                        dataSlave2.muli(complexReferencePhase);
-                    }
-
-                    if (subtractTopographicPhase) {
-                        final TopoPhase topoPhase = TopoPhase.computeTopoPhase(
-                                product, cohTileWindow, cohDemTile, false);
-
-                        final ComplexDoubleMatrix ComplexTopoPhase = new ComplexDoubleMatrix(
-                                MatrixFunctions.cos(new DoubleMatrix(topoPhase.demPhase)),
-                                MatrixFunctions.sin(new DoubleMatrix(topoPhase.demPhase)));
-
-                        dataSlave2.muli(ComplexTopoPhase);
-                    }
-
-                    for (int i = 0; i < dataMaster2.length; i++) {
-                        double tmp = norm(dataMaster2.get(i));
-                        dataMaster2.put(i, dataMaster2.get(i).mul(dataSlave2.get(i).conj()));
-                        dataSlave2.put(i, new ComplexDouble(norm(dataSlave2.get(i)), tmp));
-                    }
-
-                    DoubleMatrix cohMatrix = SarUtils.coherence2(dataMaster2, dataSlave2, cohWinAz, cohWinRg);
-
-                    saveCoherence(cohMatrix, product, targetTileMap, targetRectangle);
+                    saveCoherence(ws, sourceRectangle, product, targetTileMap, targetRectangle);
                 }
             }
         } catch (Throwable e) {
@@ -1019,19 +957,12 @@ public class InterferogramOp extends Operator {
                                                final int minPixel, final int maxPixel,
                                                final int minLine, final int maxLine,
                                                final String polynomialName) {
-        DoubleMatrix rangeAxisNormalized = DoubleMatrix.linspace(xMin, xMax, xSize);
-        rangeAxisNormalized = normalizeDoubleMatrix(rangeAxisNormalized, minPixel, maxPixel);
-
-        DoubleMatrix azimuthAxisNormalized = DoubleMatrix.linspace(yMin, yMax, ySize);
-        azimuthAxisNormalized = normalizeDoubleMatrix(azimuthAxisNormalized, minLine, maxLine);
-
-        final DoubleMatrix polyCoeffs = flatEarthPolyMap.get(polynomialName);
-
-        return PolyUtils.polyval(azimuthAxisNormalized, rangeAxisNormalized,
-                polyCoeffs, PolyUtils.degreeFromCoefficients(polyCoeffs.length));
+        return flatEarthPolyMap.get(polynomialName).compute(
+                xMin, xSize, yMin, ySize, minPixel, maxPixel, minLine, maxLine);
     }
 
-    private void saveElevation(final int x0, final int xN, final int y0, final int yN, final double[][] elevation,
+    private void saveElevation(final int x0, final int xN, final int y0, final int yN,
+                               final int arrayX0, final int arrayY0, final double[][] elevation,
                                final ProductContainer product, final Map<Band, Tile> targetTileMap) {
         if (product.getBandName(ELEVATION) == null) {
             return;
@@ -1042,17 +973,17 @@ public class InterferogramOp extends Operator {
         final TileIndex tgtIndex = new TileIndex(elevationTile);
         for (int y = y0; y <= yN; y++) {
             tgtIndex.calculateStride(y);
-            final int yy = y - y0;
+            final int yy = y - arrayY0;
             for (int x = x0; x <= xN; x++) {
                 final int tgtIdx = tgtIndex.getIndex(x);
-                final int xx = x - x0;
+                final int xx = x - arrayX0;
                 elevationData.setElemFloatAt(tgtIdx, (float)elevation[yy][xx]);
             }
         }
     }
 
     private void saveLatLon(final int x0, final int xN, final int y0, final int yN,
-                            final double[][] latitude, final double[][] longitude,
+                            final int arrayX0, final int arrayY0, final double[][] latitude, final double[][] longitude,
                             final ProductContainer product, final Map<Band, Tile> targetTileMap) {
 
         if (product.getBandName(LATITUDE) == null || product.getBandName(LONGITUDE) == null) {
@@ -1070,10 +1001,10 @@ public class InterferogramOp extends Operator {
 
         for (int y = y0; y <= yN; y++) {
             tgtIndex.calculateStride(y);
-            final int yy = y - y0;
+            final int yy = y - arrayY0;
             for (int x = x0; x <= xN; x++) {
                 final int tgtIdx = tgtIndex.getIndex(x);
-                final int xx = x - x0;
+                final int xx = x - arrayX0;
 
                 latData.setElemFloatAt(tgtIdx, (float) (latitude[yy][xx] * 180.0/Math.PI));
                 lonData.setElemFloatAt(tgtIdx, (float) (longitude[yy][xx] * 180.0/Math.PI));
@@ -1081,7 +1012,8 @@ public class InterferogramOp extends Operator {
         }
     }
 
-    private void saveTopoPhase(final int x0, final int xN, final int y0, final int yN, final double[][] topoPhase,
+    private void saveTopoPhase(final int x0, final int xN, final int y0, final int yN,
+                               final int arrayX0, final int arrayY0, final double[][] topoPhase,
                                final ProductContainer product, final Map<Band, Tile> targetTileMap) {
 
         final Band topoPhaseBand = targetProduct.getBand(product.getBandName(TOPO_PHASE));
@@ -1091,16 +1023,17 @@ public class InterferogramOp extends Operator {
 
         for (int y = y0; y <= yN; y++) {
             tgtIndex.calculateStride(y);
-            final int yy = y - y0;
+            final int yy = y - arrayY0;
             for (int x = x0; x <= xN; x++) {
                 final int tgtIdx = tgtIndex.getIndex(x);
-                final int xx = x - x0;
+                final int xx = x - arrayX0;
                 topoPhaseData.setElemFloatAt(tgtIdx, (float)topoPhase[yy][xx]);
             }
         }
     }
 
-    private void saveFlatEarthPhase(final int x0, final int xN, final int y0, final int yN, final DoubleMatrix refPhase,
+    private void saveFlatEarthPhase(final int x0, final int xN, final int y0, final int yN,
+                                    final int arrayX0, final int arrayY0, final DoubleMatrix refPhase,
                                     final ProductContainer product, final Map<Band, Tile> targetTileMap) {
 
         final Band flatEarthPhaseBand = targetProduct.getBand(product.getBandName(FLAT_EARTH_PHASE));
@@ -1110,10 +1043,10 @@ public class InterferogramOp extends Operator {
         final TileIndex tgtIndex = new TileIndex(flatEarthPhaseTile);
         for (int y = y0; y <= yN; y++) {
             tgtIndex.calculateStride(y);
-            final int yy = y - y0;
+            final int yy = y - arrayY0;
             for (int x = x0; x <= xN; x++) {
                 final int tgtIdx = tgtIndex.getIndex(x);
-                final int xx = x - x0;
+                final int xx = x - arrayX0;
                 flatEarthPhaseData.setElemFloatAt(tgtIdx, (float)refPhase.get(yy, xx));
             }
         }
@@ -1141,8 +1074,9 @@ public class InterferogramOp extends Operator {
 //        }
 //    }
 
-    private void saveInterferogram(final ComplexDoubleMatrix dataMaster, final ProductContainer product,
-                                   final Map<Band, Tile> targetTileMap, final Rectangle targetRectangle) {
+    private void saveInterferogram(final InterferogramKernel.Workspace ws, final Rectangle sourceRectangle,
+                                   final ProductContainer product, final Map<Band, Tile> targetTileMap,
+                                   final Rectangle targetRectangle) {
 
         final int x0 = targetRectangle.x;
         final int y0 = targetRectangle.y;
@@ -1156,18 +1090,10 @@ public class InterferogramOp extends Operator {
 
         final ProductData samplesReal = tileOutReal.getDataBuffer();
         final ProductData samplesImag = tileOutImag.getDataBuffer();
-        final DoubleMatrix dataReal = dataMaster.real();
-        final DoubleMatrix dataImag = dataMaster.imag();
+        final float[] dataReal = ws.ifgI;
+        final float[] dataImag = ws.ifgQ;
         final TileIndex tgtIndex = new TileIndex(tileOutReal);
 
-        final Tile mstRealTile = getSourceTile(product.sourceMaster.realBand, targetRectangle);
-        final ProductData mstRealData = mstRealTile.getDataBuffer();
-        final TileIndex srcIndexMst = new TileIndex(mstRealTile);
-
-        final Tile slvRealTile = getSourceTile(product.sourceSlave.realBand, targetRectangle);
-        final ProductData slvRealData = slvRealTile.getDataBuffer();
-        final TileIndex srcIndexSlv = new TileIndex(slvRealTile);
-
         final boolean mstNoDataValueUsed = product.sourceMaster.realBand.isNoDataValueUsed();
         final boolean slvNoDataValueUsed = product.sourceSlave.realBand.isNoDataValueUsed();
 
@@ -1183,22 +1109,20 @@ public class InterferogramOp extends Operator {
 
             for (int y = y0; y < maxY; y++) {
                 tgtIndex.calculateStride(y);
-                srcIndexMst.calculateStride(y);
-                srcIndexSlv.calculateStride(y);
-                final int yy = y - y0;
+                final int stride = (y - y0) * targetRectangle.width;
+                final int srcStride = (y - sourceRectangle.y) * ws.width - sourceRectangle.x;
                 for (int x = x0; x < maxX; x++) {
                     final int tgtIdx = tgtIndex.getIndex(x);
-                    final int xx = x - x0;
-                    final int srcIdxMst = srcIndexMst.getIndex(x);
-                    final int srcIdxSlv = srcIndexSlv.getIndex(x);
+                    final int idx = stride + x - x0;
+                    final int srcIdx = srcStride + x;
 
-                    if (mstNoDataValueUsed && mstRealData.getElemDoubleAt(srcIdxMst) == mstNoDataValue ||
-                            slvNoDataValueUsed && slvRealData.getElemDoubleAt(srcIdxSlv) == slvNoDataValue) {
+                    if (mstNoDataValueUsed && ws.mstI[srcIdx] == mstNoDataValue ||
+                            slvNoDataValueUsed && ws.slvI[srcIdx] == slvNoDataValue) {
                         samplesReal.setElemFloatAt(tgtIdx, (float) mstNoDataValue);
                         samplesImag.setElemFloatAt(tgtIdx, (float) mstNoDataValue);
                     } else {
-                        samplesReal.setElemFloatAt(tgtIdx, (float) dataReal.get(yy, xx));
-                        samplesImag.setElemFloatAt(tgtIdx, (float) dataImag.get(yy, xx));
+                        samplesReal.setElemFloatAt(tgtIdx, dataReal[idx]);
+                        samplesImag.setElemFloatAt(tgtIdx, dataImag[idx]);
                     }
                 }
             }
@@ -1207,19 +1131,20 @@ public class InterferogramOp extends Operator {
 
             for (int y = y0; y < maxY; y++) {
                 tgtIndex.calculateStride(y);
-                final int yy = y - y0;
+                final int stride = (y - y0) * targetRectangle.width;
                 for (int x = x0; x < maxX; x++) {
                     final int tgtIdx = tgtIndex.getIndex(x);
-                    final int xx = x - x0;
-                    samplesReal.setElemFloatAt(tgtIdx, (float) dataReal.get(yy, xx));
-                    samplesImag.setElemFloatAt(tgtIdx, (float) dataImag.get(yy, xx));
+                    final int idx = stride + x - x0;
+                    samplesReal.setElemFloatAt(tgtIdx, dataReal[idx]);
+                    samplesImag.setElemFloatAt(tgtIdx, dataImag[idx]);
                 }
             }
         }
     }
 
-    private void saveCoherence(final DoubleMatrix cohMatrix, final ProductContainer product,
-                               final Map<Band, Tile> targetTileMap, final Rectangle targetRectangle) {
+    private void saveCoherence(final InterferogramKernel.Workspace ws, final Rectangle sourceRectangle,
+                               final ProductContainer product, final Map<Band, Tile> targetTileMap,
+                               final Rectangle targetRectangle) {
 
         final int x0 = targetRectangle.x;
         final int y0 = targetRectangle.y;
@@ -1231,33 +1156,25 @@ public class InterferogramOp extends Operator {
         final ProductData coherenceData = coherenceTile.getDataBuffer();
 
         final double srcNoDataValue = product.sourceMaster.realBand.getNoDataValue();
-        final Tile slvTileReal = getSourceTile(product.sourceSlave.realBand, targetRectangle);
-        final ProductData srcSlvData = slvTileReal.getDataBuffer();
-        final TileIndex srcSlvIndex = new TileIndex(slvTileReal);
+        final float[] cohMatrix = ws.coherence;
 
         final TileIndex tgtIndex = new TileIndex(coherenceTile);
         for (int y = y0; y < maxY; y++) {
             tgtIndex.calculateStride(y);
-            srcSlvIndex.calculateStride(y);
-            final int yy = y - y0;
+            final int stride = (y - y0) * targetRectangle.width;
+            final int srcStride = (y - sourceRectangle.y) * ws.width - sourceRectangle.x;
             for (int x = x0; x < maxX; x++) {
                 final int tgtIdx = tgtIndex.getIndex(x);
-                final int xx = x - x0;
 
-                if (srcSlvData.getElemDoubleAt(srcSlvIndex.getIndex(x)) == srcNoDataValue) {
+                if (ws.slvI[srcStride + x] == srcNoDataValue) {
                     coherenceData.setElemFloatAt(tgtIdx, (float) srcNoDataValue);
                 } else {
-                    final double coh = cohMatrix.get(yy, xx);
-                    coherenceData.setElemFloatAt(tgtIdx, (float) coh);
+                    coherenceData.setElemFloatAt(tgtIdx, cohMatrix[stride + x - x0]);
                 }
             }
         }
     }
 
-    private static double norm(final ComplexDouble number) {
-        return number.real() * number.real() + number.imag() * number.imag();
-    }
-
     private void computeTileStackForTOPSARProduct(
             final Map<Band, Tile> targetTileMap, final Rectangle targetRectangle, final ProgressMonitor pm)
             throws OperatorException {
@@ -1309,14 +1226,18 @@ public class InterferogramOp extends Operator {
             final int x0 = targetRectangle.x;
             final int xN = x0 + targetRectangle.width - 1;
 
-            final Window tileWindow = new Window(y0 - firstLineIdx, yN - firstLineIdx, x0, xN);
+            final Rectangle sourceRectangle = interferogramKernel.getSourceRectangle(targetRectangle);
+            final int sx0 = sourceRectangle.x;
+            final int sy0 = sourceRectangle.y;
+            final Window sourceWindow = new Window(sy0 - firstLineIdx, sy0 + sourceRectangle.height - 1 - firstLineIdx,
+                    sx0, sx0 + sourceRectangle.width - 1);
             final SLCImage mstMeta = targetMap.values().iterator().next().sourceMaster.metaData.clone();
             updateMstMetaData(burstIndex, mstMeta);
             final Orbit mstOrbit = targetMap.values().iterator().next().sourceMaster.orbit;
 
             DemTile demTile = null;
             if (subtractTopographicPhase) {
-                demTile = TopoPhase.getDEMTile(tileWindow, mstMeta, mstOrbit, dem,
+                demTile = TopoPhase.getDEMTile(sourceWindow, mstMeta, mstOrbit, dem,
                         demNoDataValue, demSamplingLat, demSamplingLon, tileExtensionPercent);
 
                 if (demTile == null) {
@@ -1329,26 +1250,13 @@ public class InterferogramOp extends Operator {
                 }
             }
 
-            final int cohx0 = targetRectangle.x - (cohWinRg - 1) / 2;
-            final int cohy0 = targetRectangle.y - (cohWinAz - 1) / 2;
-            final int cohw = targetRectangle.width + cohWinRg - 1;
-            final int cohh = targetRectangle.height + cohWinAz - 1;
-            final Rectangle rect = new Rectangle(cohx0, cohy0, cohw, cohh);
-
-            final Window cohTileWindow = new Window(
-                    cohy0 - firstLineIdx, cohy0 + cohh - 1 - firstLineIdx, cohx0, cohx0 + cohw - 1);
-
-            DemTile cohDemTile = null;
-            if (subtractTopographicPhase) {
-                cohDemTile = TopoPhase.getDEMTile(cohTileWindow, mstMeta, mstOrbit, dem,
-                        demNoDataValue, demSamplingLat, demSamplingLon, tileExtensionPercent);
-            }
-
             final int minLine = 0;
             final int maxLine = subSwath[subSwathIndex - 1].linesPerBurst - 1;
             final int minPixel = 0;
             final int maxPixel = subSwath[subSwathIndex - 1].samplesPerBurst - 1;
 
+            final InterferogramKernel.Workspace ws = interferogramKernel.getWorkspace(targetRectangle);
+
             for (String ifgKey : targetMap.keySet()) {
 
                 final ProductContainer product = targetMap.get(ifgKey);
@@ -1356,105 +1264,55 @@ public class InterferogramOp extends Operator {
                 updateSlvMetaData(product, burstIndex, slvMeta);
                 final Orbit slvOrbit = product.sourceSlave.orbit;
 
-                /// check out results from master ///
-                final Tile mstTileReal = getSourceTile(product.sourceMaster.realBand, targetRectangle, border);
-                final Tile mstTileImag = getSourceTile(product.sourceMaster.imagBand, targetRectangle, border);
-                final ComplexDoubleMatrix dataMaster = TileUtilsDoris.pullComplexDoubleMatrix(mstTileReal, mstTileImag);
-
-                /// check out results from slave ///
-                final Tile slvTileReal = getSourceTile(product.sourceSlave.realBand, targetRectangle, border);
-                final Tile slvTileImag = getSourceTile(product.sourceSlave.imagBand, targetRectangle, border);
-                final ComplexDoubleMatrix dataSlave = TileUtilsDoris.pullComplexDoubleMatrix(slvTileReal, slvTileImag);
+                ws.readMaster(getSourceTile(product.sourceMaster.realBand, sourceRectangle, border),
+                        getSourceTile(product.sourceMaster.imagBand, sourceRectangle, border));
+                ws.readSlave(getSourceTile(product.sourceSlave.realBand, sourceRectangle, border),
+                        getSourceTile(product.sourceSlave.imagBand, sourceRectangle, border));
 
+                ws.clearPhase();
                 final String polynomialName = product.sourceSlave.name + '_' + (subSwathIndex - 1) + '_' + burstIndex;
                 if (subtractFlatEarthPhase) {
                     final DoubleMatrix flatEarthPhase = computeFlatEarthPhase(
-                            x0, xN, dataMaster.columns, y0 - firstLineIdx, yN - firstLineIdx, dataMaster.rows,
+                            sx0, sx0 + ws.width - 1, ws.width,
+                            sy0 - firstLineIdx, sy0 + ws.height - 1 - firstLineIdx, ws.height,
                             minPixel, maxPixel, minLine, maxLine, polynomialName);
 
-                    final ComplexDoubleMatrix complexReferencePhase = new ComplexDoubleMatrix(
-                            MatrixFunctions.cos(flatEarthPhase), MatrixFunctions.sin(flatEarthPhase));
-
-                    dataSlave.muli(complexReferencePhase);
+                    ws.addPhase(flatEarthPhase.data);
 
                     if (OUTPUT_PHASE) {
-                        saveFlatEarthPhase(x0, xN, y0, yN, flatEarthPhase, product, targetTileMap);
+                        saveFlatEarthPhase(x0, xN, y0, yN, sx0, sy0, flatEarthPhase, product, targetTileMap);
                     }
                 }
 
                 if (subtractTopographicPhase) {
                     TopoPhase topoPhase = TopoPhase.computeTopoPhase(
-                            mstMeta, mstOrbit, slvMeta, slvOrbit, tileWindow, demTile, outputElevation, false);
-
-                    final ComplexDoubleMatrix ComplexTopoPhase = new ComplexDoubleMatrix(
-                            MatrixFunctions.cos(new DoubleMatrix(topoPhase.demPhase)),
-                            MatrixFunctions.sin(new DoubleMatrix(topoPhase.demPhase)));
+                            mstMeta, mstOrbit, slvMeta, slvOrbit, sourceWindow, demTile, outputElevation, false);
 
-                    dataSlave.muli(ComplexTopoPhase);
+                    ws.addPhase(topoPhase.demPhase);
 
                     if (OUTPUT_PHASE) {
-                        saveTopoPhase(x0, xN, y0, yN, topoPhase.demPhase, product, targetTileMap);
+                        saveTopoPhase(x0, xN, y0, yN, sx0, sy0, topoPhase.demPhase, product, targetTileMap);
                     }
 
                     if (outputElevation) {
-                        saveElevation(x0, xN, y0, yN, topoPhase.elevation, product, targetTileMap);
+                        saveElevation(x0, xN, y0, yN, sx0, sy0, topoPhase.elevation, product, targetTileMap);
                     }
 
                     if (outputLatLon) {
                         TopoPhase topoPhase1 = TopoPhase.computeTopoPhase(
-                                mstMeta, mstOrbit, slvMeta, slvOrbit, tileWindow, demTile, false, true);
+                                mstMeta, mstOrbit, slvMeta, slvOrbit, sourceWindow, demTile, false, true);
 
-                        saveLatLon(x0, xN, y0, yN, topoPhase1.latitude, topoPhase1.longitude, product, targetTileMap);
+                        saveLatLon(x0, xN, y0, yN, sx0, sy0, topoPhase1.latitude, topoPhase1.longitude,
+                                product, targetTileMap);
                     }
                 }
 
-                dataMaster.muli(dataSlave.conji());
+                interferogramKernel.compute(ws);
 
-                saveInterferogram(dataMaster, product, targetTileMap, targetRectangle);
+                saveInterferogram(ws, sourceRectangle, product, targetTileMap, targetRectangle);
 
-                // coherence calculation
                 if (includeCoherence) {
-                    final Tile mstTileReal2 = getSourceTile(product.sourceMaster.realBand, rect, border);
-                    final Tile mstTileImag2 = getSourceTile(product.sourceMaster.imagBand, rect, border);
-                    final Tile slvTileReal2 = getSourceTile(product.sourceSlave.realBand, rect, border);
-                    final Tile slvTileImag2 = getSourceTile(product.sourceSlave.imagBand, rect, border);
-                    final ComplexDoubleMatrix dataMaster2 =
-                            TileUtilsDoris.pullComplexDoubleMatrix(mstTileReal2, mstTileImag2);
-
-                    final ComplexDoubleMatrix dataSlave2 =
-                            TileUtilsDoris.pullComplexDoubleMatrix(slvTileReal2, slvTileImag2);
-
-                    if (subtractFlatEarthPhase) {
-                        final DoubleMatrix flatEarthPhase = computeFlatEarthPhase(
-                                cohx0, cohx0 + cohw - 1, cohw, cohy0 - firstLineIdx, cohy0 + cohh - 1 - firstLineIdx, cohh,
-                                minPixel, maxPixel, minLine, maxLine, polynomialName);
-
-                        final ComplexDoubleMatrix complexReferencePhase = new ComplexDoubleMatrix(
-                                MatrixFunctions.cos(flatEarthPhase), MatrixFunctions.sin(flatEarthPhase));
-
-                        dataSlave2.muli(complexReferencePhase);
-                    }
-
-                    if (subtractTopographicPhase) {
-                        TopoPhase topoPhase = TopoPhase.computeTopoPhase(
-                                mstMeta, mstOrbit, slvMeta, slvOrbit, cohTileWindow, cohDemTile, false);
-
-                        final ComplexDoubleMatrix ComplexTopoPhase = new ComplexDoubleMatrix(
-                                MatrixFunctions.cos(new DoubleMatrix(topoPhase.demPhase)),
-                                MatrixFunctions.sin(new DoubleMatrix(topoPhase.demPhase)));
-
-                        dataSlave2.muli(ComplexTopoPhase);
-                    }
-
-                    for (int i = 0; i < dataMaster2.length; i++) {
-                        double tmp = norm(dataMaster2.get(i));
-                        dataMaster2.put(i, dataMaster2.get(i).mul(dataSlave2.get(i).conj()));
-                        dataSlave2.put(i, new ComplexDouble(norm(dataSlave2.get(i)), tmp));
-                    }
-
-                    DoubleMatrix cohMatrix = SarUtils.coherence2(dataMaster2, dataSlave2, cohWinAz, cohWinRg);
-
-                    saveCoherence(cohMatrix, product, targetTileMap, targetRectangle);
+                    saveCoherence(ws, sourceRectangle, product, targetTileMap, targetRectangle);
                 }
             }
 
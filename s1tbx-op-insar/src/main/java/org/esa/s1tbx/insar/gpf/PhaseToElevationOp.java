@@ -46,6 +46,8 @@ import org.esa.snap.engine_utilities.util.Maths;
 import org.jlinda.core.Baseline;
 import org.jlinda.core.Orbit;
 import org.jlinda.core.SLCImage;
+import org.jlinda.core.Window;
+import org.jlinda.core.geocode.BicubicGrid;
 
 import java.awt.*;
 import java.io.File;
@@ -100,13 +102,22 @@ public final class PhaseToElevationOp extends Operator {
 
     private double demNoDataValue = 0; // no data value for DEM
     private double[] lookAngles = null;
+    private double satelliteHeight = 0.0;
+    private double earthRadius = 0.0;
     private double firstLineUTC = 0.0; // in days
     private OrbitStateVector[] orbitStateVectors = null;
 
     private final Baseline baseline = new Baseline();
 
+    // phase to height sensitivity interpolated from a sparse grid, and the cells of the grid where it is computed
+    // per pixel instead
+    private BicubicGrid alphaGrid = null;
+    private boolean[] refineAlpha = null;
+
     private Band unwrappedPhaseBand;
     private static final String PRODUCT_SUFFIX = "_Hgt";
+    private static final int ALPHA_NODE_SPACING = 32;
+    private static final double ALPHA_TOLERANCE = 2e-6; // relative, 0.01 m at 5000 m from the reference height
 
     /**
      * Initializes this operator and sets the one and only target product.
@@ -306,22 +317,21 @@ public final class PhaseToElevationOp extends Operator {
             final int h = targetRectangle.height;
             // System.out.println("x0 = " + x0 + ", y0 = " + y0 + ", w = " + w + ", h = " + h);
 
-            final int xc = sourceImageWidth / 2;
-            double phase, slantRange, incidenceAngle, bn, bp, alpha, height, flatAngle;
+            final double[] alphaRow = new double[w];
+            double phase, alpha, height;
             for (int y = y0; y < y0 + h; y++) {
                 srcIndex.calculateStride(y);
                 trgIndex.calculateStride(y);
+                alphaGrid.interpolateRow(0, y, x0, w, alphaRow);
+                final int cellRow = alphaGrid.getCellLine(y) * alphaGrid.getNumCellPixels();
                 for (int x = x0; x < x0 + w; x++) {
 
                     phase = sourceData.getElemDoubleAt(srcIndex.getIndex(x));
-                    slantRange = slantRangeTimeTPG.getPixelDouble(x, y) / Constants.oneBillion * Constants.halfLightSpeed;
-                    incidenceAngle = incidenceAngleTPG.getPixelDouble(x, y) * MathUtils.DTOR;
-                    bn = baseline.getBperp(y, x);
-                    bp = baseline.getBpar(y, x);
-                    flatAngle = lookAngles[x] - lookAngles[xc];
-                    alpha = -slantRange * FastMath.sin(incidenceAngle) /
-                            (2 * waveNumber * (bp * FastMath.sin(flatAngle) + bn * FastMath.cos(flatAngle)));
-//                  alpha = -slantRange*FastMath.sin(incidenceAngle)/(2*waveNumber*bn);
+                    if (refineAlpha[cellRow + alphaGrid.getCellPixel(x)]) {
+                        alpha = computeAlpha(x, y);
+                    } else {
+                        alpha = alphaRow[x - x0];
+                    }
                     height = refHeight + alpha * (phase - refPhase);
                     targetData.setElemDoubleAt(trgIndex.getIndex(x), height);
                 }
@@ -426,20 +436,12 @@ public final class PhaseToElevationOp extends Operator {
         }
 
         // Compute reference (elevation, phase) using least square method
-        final int xc = sourceImageWidth / 2;
-        double phase, slantRange, incidenceAngle, bn, bp, alpha, flatAngle;
+        double phase, alpha;
         double a = 0.0, b = 0.0, c = 0.0, d = 0.0, e = 0.0, f = 0.0;
         for (int i = 0; i < numSeeds; i++) {
             SeedRecord seed = finalSeedList[i];
             phase = phaseList[i];
-            slantRange = slantRangeTimeTPG.getPixelDouble(seed.x, seed.y) / Constants.oneBillion * Constants.halfLightSpeed;
-            incidenceAngle = incidenceAngleTPG.getPixelDouble(seed.x, seed.y) * MathUtils.DTOR;
-            bn = baseline.getBperp(seed.y, seed.x);
-            bp = baseline.getBpar(seed.y, seed.x);
-            flatAngle = lookAngles[seed.x] - lookAngles[xc];
-            alpha = -slantRange * FastMath.sin(incidenceAngle) /
-                    (2 * waveNumber * (bp * FastMath.sin(flatAngle) + bn * FastMath.cos(flatAngle)));
-//            alpha = -slantRange*Math.sin(incidenceAngle)/(2*waveNumber*bn);
+            alpha = computeAlpha(seed.x, seed.y);
             a += -alpha * alpha;
             b += alpha;
             e += alpha * (seed.height - alpha * phase);
@@ -451,24 +453,90 @@ public final class PhaseToElevationOp extends Operator {
         refHeight = (a * f - c * e) / (a * d - c * b);
         refPhase = (e * d - b * f) / (a * d - c * b);
 
+        computeAlphaGrid();
+
         refHeightPhaseComputed = true;
     }
 
+    /**
+     * Phase to height sensitivity of a pixel.
+     */
+    private double computeAlpha(final int x, final int y) throws Exception {
+
+        final double slantRange = slantRangeTimeTPG.getPixelDouble(x, y) / Constants.oneBillion * Constants.halfLightSpeed;
+        final double incidenceAngle = incidenceAngleTPG.getPixelDouble(x, y) * MathUtils.DTOR;
+        final double bn = baseline.getBperp(y, x);
+        final double bp = baseline.getBpar(y, x);
+        // the outer nodes of the grid lie outside the image, where the look angle is extrapolated with the slant
+        // range as the other terms are
+        final double lookAngle = x >= 0 && x < sourceImageWidth ? lookAngles[x] : computeLookAngle(x);
+        final double flatAngle = lookAngle - lookAngles[sourceImageWidth / 2];
+        return -slantRange * FastMath.sin(incidenceAngle) /
+                (2 * waveNumber * (bp * FastMath.sin(flatAngle) + bn * FastMath.cos(flatAngle)));
+//      return -slantRange*FastMath.sin(incidenceAngle)/(2*waveNumber*bn);
+    }
+
+    /**
+     * Sample the sensitivity on a sparse grid to interpolate it bicubically, and flag the cells of the grid where the
+     * interpolation at the centre or a corner is off by more than the tolerance, so that their pixels compute it
+     * exactly. The corners of the last cells are taken on the image border.
+     */
+    private void computeAlphaGrid() throws Exception {
+
+        final Window window = new Window(0, sourceImageHeight - 1, 0, sourceImageWidth - 1);
+        alphaGrid = new BicubicGrid(window, ALPHA_NODE_SPACING, 1,
+                (line, pixel, values) -> values[0] = computeAlpha((int) pixel, (int) line));
+
+        final int numCellLines = alphaGrid.getNumCellLines();
+        final int numCellPixels = alphaGrid.getNumCellPixels();
+        final boolean[] cornerOff = new boolean[(numCellLines + 1) * (numCellPixels + 1)];
+        for (int i = 0; i <= numCellLines; i++) {
+            final int y = Math.min(i * ALPHA_NODE_SPACING, sourceImageHeight - 1);
+            for (int j = 0; j <= numCellPixels; j++) {
+                final int x = Math.min(j * ALPHA_NODE_SPACING, sourceImageWidth - 1);
+                cornerOff[i * (numCellPixels + 1) + j] = isAlphaOff(x, y);
+            }
+        }
+
+        refineAlpha = new boolean[numCellLines * numCellPixels];
+        for (int i = 0; i < numCellLines; i++) {
+            final int y = Math.min((int) alphaGrid.getCellCentreLine(i), sourceImageHeight - 1);
+            final int corner = i * (numCellPixels + 1);
+            for (int j = 0; j < numCellPixels; j++) {
+                final int x = Math.min((int) alphaGrid.getCellCentrePixel(j), sourceImageWidth - 1);
+                refineAlpha[i * numCellPixels + j] = cornerOff[corner + j] || cornerOff[corner + j + 1] ||
+                        cornerOff[corner + numCellPixels + 1 + j] || cornerOff[corner + numCellPixels + 2 + j] ||
+                        isAlphaOff(x, y);
+            }
+        }
+    }
+
+    private boolean isAlphaOff(final int x, final int y) throws Exception {
+        final double alpha = computeAlpha(x, y);
+        return Math.abs(alphaGrid.interpolate(0, y, x) - alpha) > ALPHA_TOLERANCE * Math.abs(alpha);
+    }
+
     private synchronized void computeLookAngles() {
 
         double[] senPos = new double[3];
         getSensorPosition(firstLineUTC, senPos);
 
-        final double ht = Math.sqrt(senPos[0] * senPos[0] + senPos[1] * senPos[1] + senPos[2] * senPos[2]); // satelliteHeight
-        final double er = computeEarthRadius(senPos[2], ht);  // earthRadius
+        satelliteHeight = Math.sqrt(senPos[0] * senPos[0] + senPos[1] * senPos[1] + senPos[2] * senPos[2]);
+        earthRadius = computeEarthRadius(senPos[2], satelliteHeight);
 
         lookAngles = new double[sourceImageWidth];
         for (int x = 0; x < sourceImageWidth; x++) {
-            final double sr = slantRangeTimeTPG.getPixelDouble(x, 0) / Constants.oneBillion * Constants.halfLightSpeed;
-            lookAngles[x] = FastMath.acos((sr * sr + ht * ht - er * er) / (2.0 * sr * ht));
+            lookAngles[x] = computeLookAngle(x);
         }
     }
 
+    private double computeLookAngle(final int x) {
+        final double sr = slantRangeTimeTPG.getPixelDouble(x, 0) / Constants.oneBillion * Constants.halfLightSpeed;
+        final double ht = satelliteHeight;
+        final double er = earthRadius;
+        return FastMath.acos((sr * sr + ht * ht - er * er) / (2.0 * sr * ht));
+    }
+
     private void getSensorPosition(final double time, double[] senPos) {
 
         final int numVectors = orbitStateVectors.length;
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import org.jblas.DoubleMatrix;
+import org.jlinda.core.utils.PolyUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares FlatEarthPhase with the evaluation of the flat earth polynomial by PolyUtils.polyval it replaced
+ */
+public class TestFlatEarthPhase {
+
+    private static final int SCENE_WIDTH = 25000;
+    private static final int SCENE_HEIGHT = 1500;
+
+    @Test
+    public void testAgreementWithPolyval() {
+        final Random random = new Random(11);
+        for (int degree = 1; degree <= 8; degree++) {
+            final double[] coefficients = flatEarthCoefficients(degree, random);
+            final FlatEarthPhase flatEarthPhase = new FlatEarthPhase(coefficients);
+            assertEquals(degree, flatEarthPhase.getDegree());
+
+            for (int[] tile : new int[][]{{0, 0, 512, 512}, {24700, 1300, 300, 200}, {3011, 777, 1, 57}}) {
+                final DoubleMatrix expected = polyval(coefficients, tile[0], tile[2], tile[1], tile[3]);
+                final DoubleMatrix actual = flatEarthPhase.compute(tile[0], tile[2], tile[1], tile[3],
+                        0, SCENE_WIDTH - 1, 0, SCENE_HEIGHT - 1);
+
+                assertEquals(expected.rows, actual.rows);
+                assertEquals(expected.columns, actual.columns);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected.get(i), actual.get(i), 1e-6);
+                }
+            }
+        }
+    }
+
+    /**
+     * The evaluation of InterferogramOp.computeFlatEarthPhase before FlatEarthPhase.
+     */
+    private static DoubleMatrix polyval(final double[] coefficients, final int xMin, final int xSize,
+                                        final int yMin, final int ySize) {
+        DoubleMatrix rangeAxisNormalized = DoubleMatrix.linspace(xMin, xMin + xSize - 1, xSize);
+        rangeAxisNormalized = InterferogramOp.normalizeDoubleMatrix(rangeAxisNormalized, 0, SCENE_WIDTH - 1);
+
+        DoubleMatrix azimuthAxisNormalized = DoubleMatrix.linspace(yMin, yMin + ySize - 1, ySize);
+        azimuthAxisNormalized = InterferogramOp.normalizeDoubleMatrix(azimuthAxisNormalized, 0, SCENE_HEIGHT - 1);
+
+        final DoubleMatrix polyCoeffs = new DoubleMatrix(coefficients);
+        return PolyUtils.polyval(azimuthAxisNormalized, rangeAxisNormalized,
+                polyCoeffs, PolyUtils.degreeFromCoefficients(polyCoeffs.length));
+    }
+
+    /**
+     * Coefficients of the size fitted to a flat earth phase of some 10^4 radians over the normalized [-2, 2] range.
+     */
+    private static double[] flatEarthCoefficients(final int degree, final Random random) {
+        final double[] coefficients = new double[PolyUtils.numberOfCoefficients(degree)];
+        int index = 0;
+        for (int d = 0; d <= degree; d++) {
+            for (int k = 0; k <= d; k++) {
+                coefficients[index++] = 2e4 * Math.pow(0.2, d) * (random.nextDouble() - 0.5);
+            }
+        }
+        return coefficients;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import edu.emory.mathcs.jtransforms.fft.DoubleFFT_1D;
+import org.apache.commons.math3.util.FastMath;
+import org.esa.snap.core.datamodel.ProductData;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares GoldsteinFilter with the per-tile implementation it replaced on a synthetic fringe pattern
+ */
+public class TestGoldsteinFilter {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 336;
+    private static final int FFT_SIZE = 64;
+    private static final int WINDOW_SIZE = 3;
+    private static final double ALPHA = 0.8;
+
+    private final float[] iData = new float[WIDTH * HEIGHT];
+    private final float[] qData = new float[WIDTH * HEIGHT];
+
+    public TestGoldsteinFilter() {
+        final Random random = new Random(7);
+        for (int y = 0; y < HEIGHT; ++y) {
+            for (int x = 0; x < WIDTH; ++x) {
+                final int k = y * WIDTH + x;
+                if (x < 40 && y < 30) {
+                    continue; // no-data corner
+                }
+                final double phase = 0.002 * (x - 120) * (x - 120) + 0.05 * y + random.nextGaussian() * 0.8;
+                final double amplitude = 100 + 20 * random.nextGaussian();
+                iData[k] = (float) (amplitude * Math.cos(phase));
+                qData[k] = (float) (amplitude * Math.sin(phase));
+            }
+        }
+    }
+
+    @Test
+    public void testAgreementWithTileFilter() {
+        final GoldsteinFilter filter = new GoldsteinFilter(FFT_SIZE, WINDOW_SIZE, ALPHA, WIDTH, HEIGHT);
+        for (Rectangle tile : getTiles(128, 112)) {
+            final float[][] expected = filterTileReference(tile);
+            final float[][] actual = filterTile(filter, tile);
+            assertBitEqual(expected[0], actual[0]);
+            assertBitEqual(expected[1], actual[1]);
+        }
+    }
+
+    @Test
+    public void testIndependentOfTiling() {
+        final float[][] reference = filterScene(new GoldsteinFilter(FFT_SIZE, WINDOW_SIZE, ALPHA, WIDTH, HEIGHT), 128, 112);
+        final float[][] other = filterScene(new GoldsteinFilter(FFT_SIZE, WINDOW_SIZE, ALPHA, WIDTH, HEIGHT), 100, 90);
+        assertBitEqual(reference[0], other[0]);
+        assertBitEqual(reference[1], other[1]);
+    }
+
+    private static Rectangle[] getTiles(final int tileWidth, final int tileHeight) {
+        final int nx = (WIDTH + tileWidth - 1) / tileWidth;
+        final int ny = (HEIGHT + tileHeight - 1) / tileHeight;
+        final Rectangle[] tiles = new Rectangle[nx * ny];
+        int i = 0;
+        for (int y = 0; y < HEIGHT; y += tileHeight) {
+            for (int x = 0; x < WIDTH; x += tileWidth) {
+                tiles[i++] = new Rectangle(x, y, Math.min(tileWidth, WIDTH - x), Math.min(tileHeight, HEIGHT - y));
+            }
+        }
+        return tiles;
+    }
+
+    private float[][] filterScene(final GoldsteinFilter filter, final int tileWidth, final int tileHeight) {
+        final float[][] scene = new float[2][WIDTH * HEIGHT];
+        for (Rectangle tile : getTiles(tileWidth, tileHeight)) {
+            final float[][] result = filterTile(filter, tile);
+            for (int y = 0; y < tile.height; ++y) {
+                System.arraycopy(result[0], y * tile.width, scene[0], (tile.y + y) * WIDTH + tile.x, tile.width);
+                System.arraycopy(result[1], y * tile.width, scene[1], (tile.y + y) * WIDTH + tile.x, tile.width);
+            }
+        }
+        return scene;
+    }
+
+    private float[][] filterTile(final GoldsteinFilter filter, final Rectangle tile) {
+        final float[][] result = new float[2][tile.width * tile.height];
+        filter.filter(this, ProductData.createInstance(iData), ProductData.createInstance(qData),
+                      new GoldsteinFilter.SourceLayout(0, WIDTH, 0, 0), 0.0, tile, result[0], result[1]);
+        return result;
+    }
+
+    private static void assertBitEqual(final float[] expected, final float[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals("sample " + i, Float.floatToIntBits(expected[i]), Float.floatToIntBits(actual[i]));
+        }
+    }
+
+    /**
+     * The per-tile filtering of GoldsteinFilterOp before the scene-aligned patch grid
+     */
+    private float[][] filterTileReference(final Rectangle tile) {
+        final double noDataValue = 0.0;
+        final int halfFFTSize = FFT_SIZE / 2;
+        final int halfWindowSize = WINDOW_SIZE / 2;
+        final int x0 = tile.x;
+        final int y0 = tile.y;
+        final int w = tile.width;
+        final int h = tile.height;
+
+        final int FFTSize3_4 = FFT_SIZE * 3 / 4;
+        final int sx0 = FastMath.max(x0 - FFTSize3_4, 0);
+        final int sy0 = FastMath.max(y0 - FFTSize3_4, 0);
+        final int sw = FastMath.min(x0 + w - 1 + FFTSize3_4, WIDTH - 1) - sx0 + 1;
+        final int sh = FastMath.min(y0 + h - 1 + FFTSize3_4, HEIGHT - 1) - sy0 + 1;
+
+        final boolean[][] mask = new boolean[FFT_SIZE][FFT_SIZE];
+        final double[][] I = new double[FFT_SIZE][FFT_SIZE];
+        final double[][] Q = new double[FFT_SIZE][FFT_SIZE];
+        final double[][] specI = new double[FFT_SIZE][FFT_SIZE];
+        final double[][] specQ = new double[FFT_SIZE][FFT_SIZE];
+        final double[][] pwrSpec = new double[FFT_SIZE][FFT_SIZE];
+        final double[][] fltSpec = new double[FFT_SIZE][FFT_SIZE];
+
+        final float[] iBandFiltered = new float[w * h];
+        final float[] qBandFiltered = new float[w * h];
+
+        final int stepSize = FFT_SIZE / 4;
+        final int syMax = FastMath.min(sy0 + sh - FFT_SIZE, HEIGHT - FFT_SIZE);
+        final int sxMax = FastMath.min(sx0 + sw - FFT_SIZE, WIDTH - FFT_SIZE);
+        for (int y = sy0; y <= syMax; y += stepSize) {
+            for (int x = sx0; x <= sxMax; x += stepSize) {
+
+                boolean allNoData = true;
+                for (int yy = 0; yy < FFT_SIZE; yy++) {
+                    for (int xx = 0; xx < FFT_SIZE; xx++) {
+                        final int index = (y + yy) * WIDTH + x + xx;
+                        I[yy][xx] = iData[index];
+                        Q[yy][xx] = qData[index];
+                        mask[yy][xx] = I[yy][xx] != noDataValue;
+                        allNoData &= !mask[yy][xx];
+                    }
+                }
+                if (allNoData) {
+                    continue;
+                }
+
+                // forward 2D FFT
+                final DoubleFFT_1D fft = new DoubleFFT_1D(FFT_SIZE);
+                final double[][] complexDataI = new double[FFT_SIZE][FFT_SIZE];
+                final double[][] complexDataQ = new double[FFT_SIZE][FFT_SIZE];
+                final double[] array = new double[2 * FFT_SIZE];
+                for (int r = 0; r < FFT_SIZE; r++) {
+                    int k = 0;
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        array[k++] = Q[r][c];
+                        array[k++] = I[r][c];
+                    }
+                    fft.complexForward(array);
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        complexDataQ[r][c] = array[c + c];
+                        complexDataI[r][c] = array[c + c + 1];
+                    }
+                }
+                for (int c = 0; c < FFT_SIZE; c++) {
+                    int k = 0;
+                    for (int r = 0; r < FFT_SIZE; r++) {
+                        array[k++] = complexDataQ[r][c];
+                        array[k++] = complexDataI[r][c];
+                    }
+                    fft.complexForward(array);
+                    for (int r = 0; r < FFT_SIZE; r++) {
+                        specQ[r][c] = array[r + r];
+                        specI[r][c] = array[r + r + 1];
+                    }
+                }
+
+                for (int r = 0; r < FFT_SIZE; r++) {
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        pwrSpec[r][c] = Math.sqrt(specI[r][c] * specI[r][c] + specQ[r][c] * specQ[r][c]);
+                    }
+                }
+
+                for (int r = 0; r < FFT_SIZE; r++) {
+                    final int jMin = Math.max(0, r - halfWindowSize);
+                    final int jMax = Math.min(FFT_SIZE - 1, r + halfWindowSize);
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        double sum = 0;
+                        int k = 0;
+                        final int iMin = Math.max(0, c - halfWindowSize);
+                        final int iMax = Math.min(FFT_SIZE - 1, c + halfWindowSize);
+                        for (int j = jMin; j <= jMax; j++) {
+                            for (int i = iMin; i <= iMax; i++) {
+                                if (pwrSpec[j][i] != noDataValue) {
+                                    sum += pwrSpec[j][i];
+                                    k++;
+                                }
+                            }
+                        }
+                        fltSpec[r][c] = k != 0 ? FastMath.pow(sum / k, ALPHA) : 0;
+                    }
+                }
+
+                // inverse 2D FFT
+                for (int c = 0; c < FFT_SIZE; c++) {
+                    int k = 0;
+                    for (int r = 0; r < FFT_SIZE; r++) {
+                        array[k++] = specQ[r][c] * fltSpec[r][c];
+                        array[k++] = specI[r][c] * fltSpec[r][c];
+                    }
+                    fft.complexInverse(array, false);
+                    for (int r = 0; r < FFT_SIZE; r++) {
+                        complexDataQ[r][c] = array[r + r];
+                        complexDataI[r][c] = array[r + r + 1];
+                    }
+                }
+                for (int r = 0; r < FFT_SIZE; r++) {
+                    int k = 0;
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        array[k++] = complexDataQ[r][c];
+                        array[k++] = complexDataI[r][c];
+                    }
+                    fft.complexInverse(array, false);
+                    for (int c = 0; c < FFT_SIZE; c++) {
+                        Q[r][c] = array[c + c];
+                        I[r][c] = array[c + c + 1];
+                    }
+                }
+
+                final int xSt = FastMath.max(x, x0);
+                final int ySt = FastMath.max(y, y0);
+                final int xEd = FastMath.min(x + FFT_SIZE, x0 + w);
+                final int yEd = FastMath.min(y + FFT_SIZE, y0 + h);
+                for (int yy = ySt; yy < yEd; yy++) {
+                    final int yi = yy - y;
+                    final int yw = (yy - y0) * w;
+                    final double weightY = (1 - Math.abs(yy - y - halfFFTSize + 0.5) / halfFFTSize);
+                    for (int xx = xSt; xx < xEd; xx++) {
+                        if (!mask[yi][xx - x]) {
+                            continue;
+                        }
+                        final double weight = (1 - Math.abs(xx - x - halfFFTSize + 0.5) / halfFFTSize) * weightY;
+                        final int k = yw + (xx - x0);
+                        iBandFiltered[k] += I[yi][xx - x] * weight;
+                        qBandFiltered[k] += Q[yi][xx - x] * weight;
+                    }
+                }
+            }
+        }
+        return new float[][]{iBandFiltered, qBandFiltered};
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.insar.gpf;
+
+import org.jblas.ComplexDouble;
+import org.jblas.ComplexDoubleMatrix;
+import org.jblas.DoubleMatrix;
+import org.jblas.MatrixFunctions;
+import org.jlinda.core.utils.SarUtils;
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares InterferogramKernel with the jblas interferogram and coherence of InterferogramOp it replaced
+ */
+public class TestInterferogramKernel {
+
+    private static final int COH_WIN_AZ = 10;
+    private static final int COH_WIN_RG = 4;
+
+    @Test
+    public void testAgreementWithCoherence() {
+        final InterferogramKernel kernel = new InterferogramKernel(COH_WIN_AZ, COH_WIN_RG, true);
+        for (Rectangle targetRectangle : new Rectangle[]{
+                new Rectangle(1000, 300, 128, 96), new Rectangle(0, 0, 1, 1), new Rectangle(77, 12, 33, 1)}) {
+
+            final Rectangle sourceRectangle = kernel.getSourceRectangle(targetRectangle);
+            assertEquals(targetRectangle.width + COH_WIN_RG - 1, sourceRectangle.width);
+            assertEquals(targetRectangle.height + COH_WIN_AZ - 1, sourceRectangle.height);
+
+            final Scene scene = new Scene(sourceRectangle.width, sourceRectangle.height, new Random(3));
+            final InterferogramKernel.Workspace ws = kernel.getWorkspace(targetRectangle);
+            scene.load(ws);
+            kernel.compute(ws);
+
+            final ComplexDoubleMatrix[] expected = scene.interferogramAndCoherence();
+            final int offsetX = (COH_WIN_RG - 1) / 2;
+            final int offsetY = (COH_WIN_AZ - 1) / 2;
+            for (int y = 0; y < targetRectangle.height; y++) {
+                for (int x = 0; x < targetRectangle.width; x++) {
+                    final int k = y * targetRectangle.width + x;
+                    final ComplexDouble ifg = expected[0].get(y + offsetY, x + offsetX);
+                    assertEquals(ifg.real(), ws.ifgI[k], 1e-6 * ifg.abs());
+                    assertEquals(ifg.imag(), ws.ifgQ[k], 1e-6 * ifg.abs());
+                    assertEquals(expected[1].get(y, x).real(), ws.coherence[k], 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAgreementWithoutCoherence() {
+        final InterferogramKernel kernel = new InterferogramKernel(COH_WIN_AZ, COH_WIN_RG, false);
+        final Rectangle targetRectangle = new Rectangle(500, 40, 64, 48);
+        assertEquals(targetRectangle, kernel.getSourceRectangle(targetRectangle));
+
+        final Scene scene = new Scene(targetRectangle.width, targetRectangle.height, new Random(7));
+        final InterferogramKernel.Workspace ws = kernel.getWorkspace(targetRectangle);
+        scene.load(ws);
+        kernel.compute(ws);
+
+        final ComplexDoubleMatrix expected = scene.interferogram();
+        for (int i = 0; i < targetRectangle.height; i++) {
+            for (int j = 0; j < targetRectangle.width; j++) {
+                final int k = i * targetRectangle.width + j;
+                final ComplexDouble ifg = expected.get(i, j);
+                assertEquals(ifg.real(), ws.ifgI[k], 1e-6 * ifg.abs());
+                assertEquals(ifg.imag(), ws.ifgQ[k], 1e-6 * ifg.abs());
+            }
+        }
+    }
+
+    /**
+     * Master and slave samples of a source region and the flat earth and topographic phases to remove.
+     */
+    private static final class Scene {
+
+        final int width;
+        final int height;
+        final float[][] samples = new float[4][];
+        final DoubleMatrix flatEarthPhase;
+        final double[][] topoPhase;
+
+        Scene(final int width, final int height, final Random random) {
+            this.width = width;
+            this.height = height;
+            for (int b = 0; b < samples.length; b++) {
+                samples[b] = new float[width * height];
+                for (int k = 0; k < samples[b].length; k++) {
+                    samples[b][k] = (float) Math.rint(500 * random.nextGaussian());
+                }
+            }
+            // a zero filled border, as read outside of the image
+            for (int b = 0; b < samples.length; b++) {
+                for (int x = 0; x < width; x++) {
+                    samples[b][x] = 0;
+                }
+            }
+            flatEarthPhase = new DoubleMatrix(height, width);
+            topoPhase = new double[height][width];
+            for (int i = 0; i < height; i++) {
+                for (int j = 0; j < width; j++) {
+                    flatEarthPhase.put(i, j, 3e3 + 0.7 * j - 0.2 * i + 1e-4 * i * j);
+                    topoPhase[i][j] = Math.sin(0.05 * i) * Math.cos(0.03 * j);
+                }
+            }
+        }
+
+        void load(final InterferogramKernel.Workspace ws) {
+            assertEquals(width, ws.width);
+            assertEquals(height, ws.height);
+            System.arraycopy(samples[0], 0, ws.mstI, 0, samples[0].length);
+            System.arraycopy(samples[1], 0, ws.mstQ, 0, samples[1].length);
+            System.arraycopy(samples[2], 0, ws.slvI, 0, samples[2].length);
+            System.arraycopy(samples[3], 0, ws.slvQ, 0, samples[3].length);
+            ws.clearPhase();
+            ws.addPhase(flatEarthPhase.data);
+            ws.addPhase(topoPhase);
+        }
+
+        private ComplexDoubleMatrix pull(final float[] real, final float[] imag) {
+            final ComplexDoubleMatrix result = new ComplexDoubleMatrix(height, width);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    result.put(y, x, new ComplexDouble(real[y * width + x], imag[y * width + x]));
+                }
+            }
+            return result;
+        }
+
+        private ComplexDoubleMatrix correctedSlave() {
+            final ComplexDoubleMatrix dataSlave = pull(samples[2], samples[3]);
+            dataSlave.muli(new ComplexDoubleMatrix(
+                    MatrixFunctions.cos(flatEarthPhase), MatrixFunctions.sin(flatEarthPhase)));
+            dataSlave.muli(new ComplexDoubleMatrix(
+                    MatrixFunctions.cos(new DoubleMatrix(topoPhase)), MatrixFunctions.sin(new DoubleMatrix(topoPhase))));
+            return dataSlave;
+        }
+
+        /**
+         * The interferogram of InterferogramOp before InterferogramKernel.
+         */
+        ComplexDoubleMatrix interferogram() {
+            final ComplexDoubleMatrix dataMaster = pull(samples[0], samples[1]);
+            return dataMaster.muli(correctedSlave().conji());
+        }
+
+        /**
+         * The interferogram and coherence of InterferogramOp before InterferogramKernel.
+         *
+         * @return the interferogram of the source region and the coherence of the target tile
+         */
+        ComplexDoubleMatrix[] interferogramAndCoherence() {
+            final ComplexDoubleMatrix dataMaster2 = pull(samples[0], samples[1]);
+            final ComplexDoubleMatrix dataSlave2 = correctedSlave();
+            for (int i = 0; i < dataMaster2.length; i++) {
+                final ComplexDouble m = dataMaster2.get(i);
+                final ComplexDouble s = dataSlave2.get(i);
+                final double tmp = m.real() * m.real() + m.imag() * m.imag();
+                dataMaster2.put(i, m.mul(s.conj()));
+                dataSlave2.put(i, new ComplexDouble(s.real() * s.real() + s.imag() * s.imag(), tmp));
+            }
+            final DoubleMatrix cohMatrix = SarUtils.coherence2(dataMaster2, dataSlave2, COH_WIN_AZ, COH_WIN_RG);
+            return new ComplexDoubleMatrix[]{dataMaster2, new ComplexDoubleMatrix(cohMatrix)};
+        }
+    }
+}
@@ -17,6 +17,7 @@ package org.esa.s1tbx.sar.gpf;
 
 import com.bc.ceres.core.ProgressMonitor;
 import org.apache.commons.math3.util.FastMath;
+import org.esa.s1tbx.commons.BoxDecimation;
 import org.esa.snap.core.datamodel.*;
 import org.esa.snap.core.gpf.Operator;
 import org.esa.snap.core.gpf.OperatorException;
@@ -206,7 +207,6 @@ public final class MultilookOp extends Operator {
             final boolean isdB = bandUnit == Unit.UnitType.INTENSITY_DB || bandUnit == Unit.UnitType.AMPLITUDE_DB;
             final boolean isComplex = outputIntensity && (bandUnit == Unit.UnitType.REAL || bandUnit == Unit.UnitType.IMAGINARY);
 
-            double meanValue;
             final int maxy = ty0 + th;
             final int maxx = tx0 + tw;
             if (nRgLooks == 1 && nAzLooks == 1) {
@@ -230,12 +230,25 @@ public final class MultilookOp extends Operator {
                     }
                 }
             } else {
+                final BoxDecimation.SampleType sampleType;
+                if (isdB) {
+                    sampleType = BoxDecimation.SampleType.DB;
+                } else if (isComplex && !isPolsar) {
+                    sampleType = BoxDecimation.SampleType.INTENSITY;
+                } else {
+                    sampleType = BoxDecimation.SampleType.LINEAR;
+                }
+
+                final Tile qRaster = sampleType == BoxDecimation.SampleType.INTENSITY ? sourceRaster2 : null;
+                final double[] meanValues = new double[tw * th];
+                BoxDecimation.decimate(sourceRaster1, qRaster, targetTileRectangle, nRgLooks, nAzLooks,
+                        sampleType, meanValues);
+
+                int k = 0;
                 for (int ty = ty0; ty < maxy; ty++) {
                     trgIndex.calculateStride(ty);
                     for (int tx = tx0; tx < maxx; tx++) {
-                        meanValue = getMeanValue(
-                                tx, ty, srcData1, srcData2, srcIndex, nRgLooks, nAzLooks, isdB, isComplex, isPolsar);
-                        trgData.setElemDoubleAt(trgIndex.getIndex(tx), meanValue);
+                        trgData.setElemDoubleAt(trgIndex.getIndex(tx), meanValues[k++]);
                     }
                 }
             }
@@ -391,64 +404,6 @@ public final class MultilookOp extends Operator {
         }
     }
 
-    /**
-     * Compute the mean value of pixels of the source image in the sliding window.
-     *
-     * @param tx       The x coordinate of a pixel in the current target tile.
-     * @param ty       The y coordinate of a pixel in the current target tile.
-     * @param srcData1 The product data for i band in case of complex product.
-     * @param srcData2 The product data for q band in case of complex product.
-     * @param nRgLooks number of range looks
-     * @param nAzLooks number of azimuth looks
-     * @return The mean value.
-     */
-    private static double getMeanValue(final int tx, final int ty,
-                                       final ProductData srcData1, final ProductData srcData2,
-                                       final TileIndex srcIndex,
-                                       final int nRgLooks, final int nAzLooks,
-                                       final boolean isdB, final boolean isComplex, final boolean isPolsar) {
-
-        final int xStart = tx * nRgLooks;
-        final int yStart = ty * nAzLooks;
-        final int xEnd = xStart + nRgLooks;
-        final int yEnd = yStart + nAzLooks;
-
-        double meanValue = 0.0;
-        int offset;
-        if (isdB) {
-            for (int y = yStart; y < yEnd; y++) {
-                offset = srcIndex.calculateStride(y);
-                for (int x = xStart; x < xEnd; x++) {
-                    meanValue += FastMath.pow(10, srcData1.getElemDoubleAt(x - offset) / 10.0); // dB to linear
-                }
-            }
-
-            meanValue /= (nRgLooks * nAzLooks);
-            return 10.0 * Math.log10(meanValue); // linear to dB
-        } else if (isComplex && !isPolsar) { // COMPLEX
-            double i, q;
-            int index;
-            for (int y = yStart; y < yEnd; y++) {
-                offset = srcIndex.calculateStride(y);
-                for (int x = xStart; x < xEnd; x++) {
-                    index = x - offset;
-                    i = srcData1.getElemDoubleAt(index);
-                    q = srcData2.getElemDoubleAt(index);
-                    meanValue += i * i + q * q;
-                }
-            }
-        } else {
-            for (int y = yStart; y < yEnd; y++) {
-                offset = srcIndex.calculateStride(y);
-                for (int x = xStart; x < xEnd; x++) {
-                    meanValue += srcData1.getElemDoubleAt(x - offset);
-                }
-            }
-        }
-
-        return meanValue / (nRgLooks * nAzLooks);
-    }
-
     /**
      * Compute number of azimuth looks and the mean ground pixel spacings for given number of range looks.
      *
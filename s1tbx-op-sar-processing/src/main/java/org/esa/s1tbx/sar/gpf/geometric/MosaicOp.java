@@ -92,7 +92,7 @@ public class MosaicOp extends Operator {
     private int feather = 0;
     @Parameter(defaultValue = "5000", description = "Maximum number of iterations", label = "Maximum Iterations")
     private int maxIterations = 5000;
-    @Parameter(defaultValue = "1e-4", description = "Convergence threshold for Relaxed Gauss-Seidel method",
+    @Parameter(defaultValue = "1e-4", description = "Convergence threshold for the gradient domain solver",
             label = "Convergence Threshold")
     private double convergenceThreshold = 1e-4;
 
@@ -422,174 +422,248 @@ public class MosaicOp extends Operator {
                 return;
             }
 
-            final GeoPos geoPos = new GeoPos();
-            final PixelPos pixelPos = new PixelPos();
-            final int minX = targetRectangle.x;
-            final int minY = targetRectangle.y;
-            final int maxX = targetRectangle.x + targetRectangle.width - 1;
-            final int maxY = targetRectangle.y + targetRectangle.height - 1;
+            // source pixel positions of the target tile, computed once and shared by all bands
+            final List<TileMapping> tileMappings = computeTileMappings(validProducts, targetRectangle);
 
-            final TileGeoreferencing tileGeoRef = new TileGeoreferencing(targetProduct, minX, minY, maxX - minX + 1, maxY - minY + 1);
+            final Resampling resampling = ResamplingFactory.createResampling(resamplingMethod);
+            if(resampling == null) {
+                throw new OperatorException("Resampling method "+ resamplingMethod + " is invalid");
+            }
 
-            final List<PixelPos[]> srcPixelCoords = new ArrayList<>(validProducts.size());
-            final int numPixelPos = targetRectangle.width * targetRectangle.height;
-            for (Product validProduct : validProducts) {
-                srcPixelCoords.add(new PixelPos[numPixelPos]);
+            if (gradientDomainMosaic) {
+                performGradientDomainMosaic(targetTiles, targetRectangle, tileMappings, resampling, pm);
+                return;
             }
 
-            int coordIndex = 0;
-            int prodIndex;
-            for (int y = minY; y <= maxY; ++y) {
-                for (int x = minX; x <= maxX; ++x) {
-                    tileGeoRef.getGeoPos(x, y, geoPos);
+            collocateSourceBands(targetTiles, targetRectangle, tileMappings, resampling, pm);
 
-                    prodIndex = 0;
-                    for (final Product srcProduct : validProducts) {
-                        srcProduct.getSceneGeoCoding().getPixelPos(geoPos, pixelPos);
+        } catch (Throwable e) {
+            OperatorUtils.catchOperatorException(getId(), e);
+        } finally {
+            pm.done();
+        }
+    }
 
-                        if (pixelPos.x >= feather && pixelPos.y >= feather &&
-                                pixelPos.x < srcProduct.getSceneRasterWidth() - feather &&
-                                pixelPos.y < srcProduct.getSceneRasterHeight() - feather) {
+    private List<TileMapping> computeTileMappings(final List<Product> validProducts, final Rectangle targetRectangle) {
 
-                            srcPixelCoords.get(prodIndex)[coordIndex] = new PixelPos(pixelPos.x, pixelPos.y);
-                        } else {
-                            srcPixelCoords.get(prodIndex)[coordIndex] = null;
-                        }
-                        ++prodIndex;
+        final GeoPos geoPos = new GeoPos();
+        final PixelPos pixelPos = new PixelPos();
+        final int minX = targetRectangle.x;
+        final int minY = targetRectangle.y;
+        final int maxX = targetRectangle.x + targetRectangle.width - 1;
+        final int maxY = targetRectangle.y + targetRectangle.height - 1;
+
+        final TileGeoreferencing tileGeoRef = new TileGeoreferencing(targetProduct, minX, minY, maxX - minX + 1, maxY - minY + 1);
+
+        final int numPixelPos = targetRectangle.width * targetRectangle.height;
+        final List<TileMapping> tileMappings = new ArrayList<>(validProducts.size());
+        for (Product validProduct : validProducts) {
+            tileMappings.add(new TileMapping(validProduct, numPixelPos));
+        }
+
+        int coordIndex = 0;
+        for (int y = minY; y <= maxY; ++y) {
+            for (int x = minX; x <= maxX; ++x) {
+                tileGeoRef.getGeoPos(x, y, geoPos);
+
+                for (final TileMapping mapping : tileMappings) {
+                    mapping.srcProduct.getSceneGeoCoding().getPixelPos(geoPos, pixelPos);
+
+                    if (pixelPos.x >= feather && pixelPos.y >= feather &&
+                            pixelPos.x < mapping.srcRasterWidth - feather &&
+                            pixelPos.y < mapping.srcRasterHeight - feather) {
+
+                        mapping.srcX[coordIndex] = pixelPos.x;
+                        mapping.srcY[coordIndex] = pixelPos.y;
                     }
-                    ++coordIndex;
                 }
+                ++coordIndex;
             }
+        }
+        return tileMappings;
+    }
 
-            final Resampling resampling = ResamplingFactory.createResampling(resamplingMethod);
-            if(resampling == null) {
-                throw new OperatorException("Resampling method "+ resamplingMethod + " is invalid");
+    /**
+     * Gets the source data of the bands of one source product for a target tile.
+     *
+     * @return the source data per target band, null for bands the product does not provide.
+     */
+    private SourceData[] getSourceData(final TileMapping mapping, final Band[] targetBands,
+                                       final Rectangle sourceRectangle, final ProgressMonitor pm) {
+
+        final SourceData[] sourceData = new SourceData[targetBands.length];
+        for (int b = 0; b < targetBands.length; b++) {
+            final Band srcBand = mapping.srcProduct.getBand(targetBands[b].getName());
+            if (srcBand == null) {
+                continue;
             }
 
-            if (gradientDomainMosaic) {
-                performGradientDomainMosaic(targetTiles, targetRectangle, srcPixelCoords, validProducts, resampling, pm);
-                return;
+            double min = 0, max = 0, mean = 0, std = 0;
+            if (normalizeByMean) {                  // get stat values
+                try {
+                    final Stx stats = srcBand.getStx(true, pm);
+                    mean = stats.getMean();
+                    min = stats.getMinimum();
+                    max = stats.getMaximum();
+                    std = stats.getStandardDeviation();
+                } catch (Throwable e) {
+                    //OperatorUtils.catchOperatorException(getId(), e);
+                    normalizeByMean = false; // temporary disable
+                }
             }
 
-            final List<SourceData> validSourceData = new ArrayList<>(validProducts.size());
-            for (final Map.Entry<Band, Tile> bandTileEntry : targetTiles.entrySet()) {
-                final String trgBandName = bandTileEntry.getKey().getName();
-                validSourceData.clear();
+            try {
+                final Tile srcTile = getSourceTile(srcBand, sourceRectangle);
+                if (srcTile != null) {
+                    sourceData[b] = new SourceData(srcTile, min, max, mean, std);
+                }
+            } catch (Exception e) {
+                SystemUtils.LOG.severe("Mosaic getSourceTile failed "+e.getMessage());
+                //continue
+            }
+        }
+        return sourceData;
+    }
 
-                prodIndex = 0;
-                for (final Product srcProduct : validProducts) {
-                    final Band srcBand = srcProduct.getBand(trgBandName);
-                    if (srcBand == null) {
-                        continue;
+    /**
+     * Resamples the bands of one source product at all pixels of the target tile. The resampling index of a
+     * target pixel is computed once and used for all bands.
+     *
+     * @param mapping     source pixel positions of the target tile
+     * @param sourceData  source data per target band, null entries are skipped
+     * @param resampling  the resampling method
+     * @param limitWidth  width passed to the resampling index computation
+     * @param limitHeight height passed to the resampling index computation
+     * @param samples     receives the samples per target band, NaN where the product does not cover the pixel
+     */
+    private static void resampleSourceData(final TileMapping mapping, final SourceData[] sourceData,
+                                           final Resampling resampling, final int limitWidth, final int limitHeight,
+                                           final double[][] samples) throws Exception {
+
+        final Resampling.Index resamplingIndex = resampling.createIndex();
+        final int numPixels = mapping.srcX.length;
+        for (int index = 0; index < numPixels; ++index) {
+            if (!mapping.isCovered(index)) {
+                for (int b = 0; b < sourceData.length; b++) {
+                    if (sourceData[b] != null) {
+                        samples[b][index] = Double.NaN;
                     }
+                }
+                continue;
+            }
 
-                    final PixelPos[] pixPos = srcPixelCoords.get(prodIndex);
-
-                    final Rectangle sourceRectangle = getBoundingBox(
-                            pixPos, feather, feather,
-                            srcProduct.getSceneRasterWidth() - feather,
-                            srcProduct.getSceneRasterHeight() - feather, 4);
-
-                    if (sourceRectangle != null) {
-                        double min = 0, max = 0, mean = 0, std = 0;
-                        if (normalizeByMean) {                  // get stat values
-                            try {
-                                final Stx stats = srcBand.getStx(true, ProgressMonitor.NULL);
-                                mean = stats.getMean();
-                                min = stats.getMinimum();
-                                max = stats.getMaximum();
-                                std = stats.getStandardDeviation();
-                            } catch (Throwable e) {
-                                //OperatorUtils.catchOperatorException(getId(), e);
-                                normalizeByMean = false; // temporary disable
-                            }
-                        }
+            resampling.computeIndex(mapping.srcX[index], mapping.srcY[index], limitWidth, limitHeight, resamplingIndex);
 
-                        try {
-                            final Tile srcTile = getSourceTile(srcBand, sourceRectangle);
-                            if (srcTile != null) {
-                                validSourceData.add(new SourceData(srcTile, pixPos, resampling, min, max, mean, std));
-                            }
-                        } catch (Exception e) {
-                            SystemUtils.LOG.severe("Mosaic getSourceTile failed "+e.getMessage());
-                            //continue
-                        }
-                    }
-                    ++prodIndex;
+            for (int b = 0; b < sourceData.length; b++) {
+                if (sourceData[b] != null) {
+                    samples[b][index] = resampling.resample(sourceData[b].resamplingRaster, resamplingIndex);
                 }
+            }
+        }
+    }
 
-                if (!validSourceData.isEmpty()) {
-                    collocateSourceBand(validSourceData, resampling, bandTileEntry.getValue());
-                }
+    private static Band[] getTargetBands(final Map<Band, Tile> targetTiles, final boolean skipGradientBands) {
+        final List<Band> targetBands = new ArrayList<>(targetTiles.size());
+        for (Band targetBand : targetTiles.keySet()) {
+            if (skipGradientBands && targetBand.getName().contains("_gradient")) {
+                continue;
             }
-        } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
-        } finally {
-            pm.done();
+            targetBands.add(targetBand);
         }
+        return targetBands.toArray(new Band[0]);
     }
 
-    private void collocateSourceBand(final List<SourceData> validSourceData, final Resampling resampling,
-                                     final Tile targetTile) throws OperatorException {
+    private void collocateSourceBands(final Map<Band, Tile> targetTiles, final Rectangle targetRectangle,
+                                      final List<TileMapping> tileMappings, final Resampling resampling,
+                                      final ProgressMonitor pm) throws OperatorException {
         try {
-            final Rectangle targetRectangle = targetTile.getRectangle();
-            final ProductData trgBuffer = targetTile.getDataBuffer();
+            final Band[] targetBands = getTargetBands(targetTiles, false);
+            final int numBands = targetBands.length;
+            final int numPixels = targetRectangle.width * targetRectangle.height;
+
+            // per band: last valid sample, and the distance weighted sum of all valid samples
+            final double[][] lastSample = new double[numBands][];
+            final double[][] weightedSum = new double[numBands][];
+            final int[][] totalWeight = new int[numBands][];
+            final int[][] numSamples = new int[numBands][];
+            final double[][] samples = new double[numBands][];
+
+            for (final TileMapping mapping : tileMappings) {
+                final Rectangle sourceRectangle = mapping.getBoundingBox(
+                        feather, feather,
+                        mapping.srcRasterWidth - feather,
+                        mapping.srcRasterHeight - feather, 4);
+                if (sourceRectangle == null) {
+                    continue;
+                }
 
-            double sample;
-            final int maxY = targetRectangle.y + targetRectangle.height;
-            final int maxX = targetRectangle.x + targetRectangle.width;
-            final TileIndex trgIndex = new TileIndex(targetTile);
-            final double[] sampleList = new double[validSourceData.size()];
-            final int[] sampleDistanceList = new int[validSourceData.size()];
-
-            for (int y = targetRectangle.y, index = 0; y < maxY; ++y) {
-                trgIndex.calculateStride(y);
-                for (int x = targetRectangle.x; x < maxX; ++x, ++index) {
-
-                    double targetVal = 0;
-                    int numSamples = 0;
-                    for (final SourceData srcDat : validSourceData) {
-                        final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
-                        if (sourcePixelPos == null) {
-                            continue;
+                final SourceData[] sourceData = getSourceData(mapping, targetBands, sourceRectangle, pm);
+                for (int b = 0; b < numBands; b++) {
+                    if (sourceData[b] != null && samples[b] == null) {
+                        samples[b] = new double[numPixels];
+                        lastSample[b] = new double[numPixels];
+                        if (average) {
+                            weightedSum[b] = new double[numPixels];
+                            totalWeight[b] = new int[numPixels];
+                            numSamples[b] = new int[numPixels];
                         }
+                    }
+                }
 
-                        resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
-                                srcDat.srcRasterWidth - feather, srcDat.srcRasterHeight - feather, srcDat.resamplingIndex);
-
-                        sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+                resampleSourceData(mapping, sourceData, resampling,
+                                   mapping.srcRasterWidth - feather, mapping.srcRasterHeight - feather, samples);
 
-                        if (!Double.isNaN(sample) && sample != srcDat.nodataValue && !MathUtils.equalValues(sample, 0.0F, 1e-4F)) {
+                for (int b = 0; b < numBands; b++) {
+                    final SourceData srcDat = sourceData[b];
+                    if (srcDat == null) {
+                        continue;
+                    }
+                    final double[] bandSamples = samples[b];
+                    for (int index = 0; index < numPixels; ++index) {
+                        double sample = bandSamples[index];
+                        if (!isValidSample(sample, srcDat.nodataValue)) {
+                            continue;
+                        }
 
-                            if (normalizeByMean) {
-                                sample -= srcDat.srcMean;
-                                sample /= srcDat.srcStd;
-                            }
-                            targetVal = sample;
-
-                            if (average) {
-                                sampleList[numSamples] = sample;
-                                sampleDistanceList[numSamples] = (int) (Math.min(sourcePixelPos.x + 1,
-                                        srcDat.srcRasterWidth - sourcePixelPos.x) *
-                                        Math.min(sourcePixelPos.y + 1,
-                                                srcDat.srcRasterHeight - sourcePixelPos.y));
-                                numSamples++;
-                            }
+                        if (normalizeByMean) {
+                            sample -= srcDat.srcMean;
+                            sample /= srcDat.srcStd;
+                        }
+                        lastSample[b][index] = sample;
+
+                        if (average) {
+                            final double srcX = mapping.srcX[index];
+                            final double srcY = mapping.srcY[index];
+                            final int sampleDistance = (int) (Math.min(srcX + 1, mapping.srcRasterWidth - srcX) *
+                                    Math.min(srcY + 1, mapping.srcRasterHeight - srcY));
+                            weightedSum[b][index] += sample * sampleDistance;
+                            totalWeight[b][index] += sampleDistance;
+                            numSamples[b][index]++;
                         }
                     }
+                }
+            }
+
+            final int maxY = targetRectangle.y + targetRectangle.height;
+            final int maxX = targetRectangle.x + targetRectangle.width;
+            for (int b = 0; b < numBands; b++) {
+                if (samples[b] == null) {
+                    continue;
+                }
+                final Tile targetTile = targetTiles.get(targetBands[b]);
+                final ProductData trgBuffer = targetTile.getDataBuffer();
+                final TileIndex trgIndex = new TileIndex(targetTile);
 
-                    if (targetVal != 0) {
-                        if (average && numSamples > 1) {
-                            double sum = 0;
-                            int totalWeight = 0;
-                            for (int i = 0; i < numSamples; i++) {
-                                sum += sampleList[i] * sampleDistanceList[i];
-                                totalWeight += sampleDistanceList[i];
+                for (int y = targetRectangle.y, index = 0; y < maxY; ++y) {
+                    trgIndex.calculateStride(y);
+                    for (int x = targetRectangle.x; x < maxX; ++x, ++index) {
+                        double targetVal = lastSample[b][index];
+                        if (targetVal != 0) {
+                            if (average && numSamples[b][index] > 1) {
+                                targetVal = weightedSum[b][index] / totalWeight[b][index];
                             }
-                            targetVal = sum / totalWeight;
+                            trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), targetVal);
                         }
-
-                        trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), targetVal);
                     }
                 }
             }
@@ -600,8 +674,8 @@ public class MosaicOp extends Operator {
     }
 
     private void performGradientDomainMosaic(final Map<Band, Tile> targetTiles, final Rectangle targetRectangle,
-                                             final List<PixelPos[]> srcPixelCoords, final List<Product> validProducts,
-                                             final Resampling resampling, ProgressMonitor pm)
+                                             final List<TileMapping> tileMappings, final Resampling resampling,
+                                             ProgressMonitor pm)
             throws OperatorException {
 
         try {
@@ -610,48 +684,73 @@ public class MosaicOp extends Operator {
             final int minY = targetRectangle.y;
             final int maxX = targetRectangle.x + targetRectangle.width - 1;
             final int maxY = targetRectangle.y + targetRectangle.height - 1;
+            final int width = targetRectangle.width;
+            final int height = targetRectangle.height;
+            final int numPixels = width * height;
 
-            double[][] mosaicedTile = new double[targetRectangle.height][targetRectangle.width];
-            double[][] gradientTile = new double[targetRectangle.height][targetRectangle.width];
-            byte[][] mask = new byte[targetRectangle.height][targetRectangle.width];
-            // -1: no data, 0: used by existing product, 1: used by new product, 2: need mosaic
-
-            final List<SourceData> validSourceData = new ArrayList<>(validProducts.size());
+            final Band[] targetBands = getTargetBands(targetTiles, true);
+            final int numBands = targetBands.length;
 
-            // loop through all target bands
-            for (final Map.Entry<Band, Tile> bandTileEntry : targetTiles.entrySet()) {
-                final String trgBandName = bandTileEntry.getKey().getName();
-                if (trgBandName.contains("_gradient")) {
+            final double[][] mosaicedTile = new double[numBands][];
+            final double[][] gradientTile = new double[numBands][];
+            final byte[][] mask = new byte[numBands][];
+            // -1: no data, 0: used by existing product, 1: used by new product, 2: need mosaic
+            final double[][] samples = new double[numBands][];
+            final PoissonSolver solver = new PoissonSolver(width, height);
+
+            // for each target band, find all related source bands and use them in mosaic
+            // for now we assume that source products have been sorted according to time with the oldest first
+            for (final TileMapping mapping : tileMappings) {
+                final Rectangle sourceRectangle = mapping.getBoundingBox(
+                        0, 0, mapping.srcRasterWidth, mapping.srcRasterHeight, feather);
+                if (sourceRectangle == null) {
                     continue;
                 }
-                final Tile trgTile = bandTileEntry.getValue();
-                final ProductData trgBuffer = trgTile.getDataBuffer();
 
-                // for each target band, get source data for all related source bands
-                getValidSourceData(validProducts, trgBandName, srcPixelCoords, resampling, validSourceData, pm);
+                final SourceData[] sourceData = getSourceData(mapping, targetBands, sourceRectangle, pm);
+                for (int b = 0; b < numBands; b++) {
+                    if (sourceData[b] != null && samples[b] == null) {
+                        samples[b] = new double[numPixels];
+                    }
+                }
 
-                // for each target band, find all related source bands and use them in mosaic
-                // for now we assume that source products have been sorted according to time with the oldest first
-                for (int i = 0; i < validSourceData.size(); i++) {
-                    if (i == 0) {
-                        readFirstProduct(minX, maxX, minY, maxY, validSourceData.get(i), resampling,
-                                mosaicedTile, mask);
+                resampleSourceData(mapping, sourceData, resampling,
+                                   mapping.srcRasterWidth, mapping.srcRasterHeight, samples);
+
+                for (int b = 0; b < numBands; b++) {
+                    if (sourceData[b] == null) {
+                        continue;
+                    }
+                    if (mosaicedTile[b] == null) {
+                        mosaicedTile[b] = new double[numPixels];
+                        gradientTile[b] = new double[numPixels];
+                        mask[b] = new byte[numPixels];
+                        readFirstProduct(samples[b], sourceData[b], mosaicedTile[b], mask[b]);
                     } else {
-                        readNextProduct(minX, maxX, minY, maxY, validSourceData.get(i), resampling,
-                                mosaicedTile, mask, gradientTile);
+                        readNextProduct(width, height, samples[b], sourceData[b],
+                                        mosaicedTile[b], mask[b], gradientTile[b]);
 
-                        performMosaic(mask, gradientTile, mosaicedTile);
+                        solver.solve(mask[b], gradientTile[b], mosaicedTile[b], maxIterations, convergenceThreshold);
 
-                        cleanUpMask(mask);
+                        cleanUpMask(mask[b]);
                     }
                 }
+            }
+
+            for (int b = 0; b < numBands; b++) {
+                if (mosaicedTile[b] == null) {
+                    continue;
+                }
+                final String trgBandName = targetBands[b].getName();
+                final Tile trgTile = targetTiles.get(targetBands[b]);
+                final ProductData trgBuffer = trgTile.getDataBuffer();
 
                 // save mosaiced image
                 final TileIndex trgIndex = new TileIndex(trgTile);
-                for (int y = minY; y <= maxY; y++) {
+                for (int y = minY, index = 0; y <= maxY; y++) {
                     trgIndex.calculateStride(y);
-                    for (int x = minX; x <= maxX; x++) {
-                        trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), mosaicedTile[y - minY][x - minX]);
+                    for (int x = minX; x <= maxX; x++, index++) {
+                        trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), mosaicedTile[b][index]);
                     }
                 }
 
@@ -659,10 +758,10 @@ public class MosaicOp extends Operator {
                 if (outputGradientBand) {
                     final Band gradientBand = targetProduct.getBand(trgBandName + "_gradient");
                     final ProductData gradientBuffer = targetTiles.get(gradientBand).getDataBuffer();
-                    for (int y = minY; y <= maxY; y++) {
+                    for (int y = minY, index = 0; y <= maxY; y++) {
                         trgIndex.calculateStride(y);
-                        for (int x = minX; x <= maxX; x++) {
-                            gradientBuffer.setElemDoubleAt(trgIndex.getIndex(x), gradientTile[y - minY][x - minX]);
+                        for (int x = minX; x <= maxX; x++, index++) {
+                            gradientBuffer.setElemDoubleAt(trgIndex.getIndex(x), gradientTile[b][index]);
                         }
                     }
                 }
@@ -673,228 +772,110 @@ public class MosaicOp extends Operator {
         }
     }
 
-    private void getValidSourceData(final List<Product> validProducts, final String trgBandName,
-                                    final List<PixelPos[]> srcPixelCoords, final Resampling resampling,
-                                    List<SourceData> validSourceData, ProgressMonitor pm) {
-
-        try {
-            validSourceData.clear();
-            int prodIndex = 0;
-            for (final Product srcProduct : validProducts) {
-                final Band srcBand = srcProduct.getBand(trgBandName);
-                if (srcBand == null) {
-                    continue;
-                }
+    private void readFirstProduct(final double[] samples, final SourceData srcDat,
+                                  final double[] mosaicedTile, final byte[] mask) {
 
-                final PixelPos[] pixPos = srcPixelCoords.get(prodIndex);
-                final Rectangle sourceRectangle = getBoundingBox(
-                        pixPos, 0, 0, srcProduct.getSceneRasterWidth(), srcProduct.getSceneRasterHeight(), feather);
-
-                if (sourceRectangle != null) {
-                    double mean = 0, min = 0, max = 0, std = 0;
-                    if (normalizeByMean) {
-                        try {
-                            final Stx stats = srcBand.getStx(true, pm);
-                            mean = stats.getMean();
-                            min = stats.getMinimum();
-                            max = stats.getMaximum();
-                            std = stats.getStandardDeviation();
-                        } catch (Throwable e) {
-                            //OperatorUtils.catchOperatorException(getId(), e);
-                            normalizeByMean = false;
-                        }
-                    }
+        for (int index = 0; index < samples.length; ++index) {
+            double sample = samples[index];
 
-                    try {
-                        final Tile srcTile = getSourceTile(srcBand, sourceRectangle);
-                        if (srcTile != null) {
-                            validSourceData.add(new SourceData(srcTile, pixPos, resampling, min, max, mean, std));
-                        }
-                    } catch (Exception e) {
-                        SystemUtils.LOG.severe("Mosaic getSourceTile failed "+e.getMessage());
-                        //continue
-                    }
+            if (isValidSample(sample, srcDat.nodataValue)) {
+                if (normalizeByMean) {
+                    sample -= srcDat.srcMean;
+                    sample /= srcDat.srcStd;
                 }
-                ++prodIndex;
+                mosaicedTile[index] = sample;
+                mask[index] = 0;
+            } else {
+                mosaicedTile[index] = srcDat.nodataValue;
+                mask[index] = -1;
             }
-
-        } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
         }
     }
 
-    private void readFirstProduct(final int minX, final int maxX, final int minY, final int maxY,
-                                  final SourceData srcDat, final Resampling resampling,
-                                  double[][] mosaicedTile, byte[][] mask)
-            throws OperatorException {
-
-        try {
-            double sample;
-            int yy, xx;
-            for (int y = minY, index = 0; y <= maxY; ++y) {
-                yy = y - minY;
-                for (int x = minX; x <= maxX; ++x, ++index) {
-                    xx = x - minX;
-
-                    final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
-                    if (sourcePixelPos == null) {
-                        mosaicedTile[yy][xx] = srcDat.nodataValue;
-                        mask[yy][xx] = -1;
-                        continue;
-                    }
+    private void readNextProduct(final int targetTileWidth, final int targetTileHeight,
+                                 final double[] samples, final SourceData srcDat,
+                                 final double[] mosaicedTile, final byte[] mask, final double[] gradientTile) {
 
-                    resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
-                            srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
+        final double[] adjacentPixels = new double[4];
 
-                    sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+        for (int yy = 0, index = 0; yy < targetTileHeight; ++yy) {
+            for (int xx = 0; xx < targetTileWidth; ++xx, ++index) {
 
-                    if (isValidSample(sample, srcDat.nodataValue)) {
-                        if (normalizeByMean) {
-                            sample -= srcDat.srcMean;
-                            sample /= srcDat.srcStd;
-                        }
-                        mosaicedTile[yy][xx] = sample;
-                        mask[yy][xx] = 0;
-                    } else {
-                        mosaicedTile[yy][xx] = srcDat.nodataValue;
-                        mask[yy][xx] = -1;
-                    }
+                double sample = samples[index];
+                if (!isValidSample(sample, srcDat.nodataValue)) {
+                    continue;
                 }
-            }
-
-        } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
-        }
-    }
 
+                if (normalizeByMean) {
+                    sample -= srcDat.srcMean;
+                    sample /= srcDat.srcStd;
+                }
 
-    private void readNextProduct(final int minX, final int maxX, final int minY, final int maxY,
-                                 final SourceData srcDat, final Resampling resampling,
-                                 double[][] mosaicedTile, byte[][] mask, double[][] gradientTile)
-            throws OperatorException {
-
-        try {
-            final int targetTileWidth = mosaicedTile[0].length;
-            final int targetTileHeight = mosaicedTile.length;
-            double[] adjacentPixels = new double[4];
-
-            double sample;
-            int yy, xx;
-            for (int y = minY, index = 0; y <= maxY; ++y) {
-                yy = y - minY;
-                for (int x = minX; x <= maxX; ++x, ++index) {
-                    xx = x - minX;
-
-                    final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
-                    if (sourcePixelPos == null) {
-                        continue;
-                    }
-
-                    resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
-                            srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
-
-                    sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+                if (mask[index] == -1) {
+                    mosaicedTile[index] = sample;
+                    mask[index] = 1;
+                } else if (mask[index] == 0 && isInnerPoint(index, targetTileWidth, targetTileHeight, samples, srcDat,
+                        adjacentPixels)) {
 
-                    if (isValidSample(sample, srcDat.nodataValue)) {
-                        if (normalizeByMean) {
-                            sample -= srcDat.srcMean;
-                            sample /= srcDat.srcStd;
-                        }
-
-                        if (mask[yy][xx] == -1) {
-                            mosaicedTile[yy][xx] = sample;
-                            mask[yy][xx] = 1;
-                        } else if (mask[yy][xx] == 0 && isInnerPoint(index, targetTileWidth, targetTileHeight, srcDat,
-                                resampling, adjacentPixels)) {
-
-                            if (isInnerPoint(xx, yy, mask)) {
-                                mask[yy][xx] = 2;
-                                mosaicedTile[yy][xx] = sample;
-                                //gradientTile[yy][xx] = computeGradient(xx, yy, mosaicedTile, sample, adjacentPixels);
-                                gradientTile[yy][xx] = adjacentPixels[0] + adjacentPixels[1] + adjacentPixels[2] + adjacentPixels[3] - 4 * sample;
-                            } else {
-                                mosaicedTile[yy][xx] = sample;
-                            }
-                        }
+                    if (isInnerPoint(xx, yy, targetTileWidth, targetTileHeight, mask)) {
+                        mask[index] = 2;
+                        mosaicedTile[index] = sample;
+                        gradientTile[index] = adjacentPixels[0] + adjacentPixels[1] + adjacentPixels[2] + adjacentPixels[3] - 4 * sample;
+                    } else {
+                        mosaicedTile[index] = sample;
                     }
                 }
             }
-
-        } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
         }
     }
 
     private boolean isInnerPoint(final int index, final int targetTileWidth, final int targetTileHeight,
-                                 final SourceData srcDat, final Resampling resampling, double[] adjacentPixels) {
-
-        try {
-            final int indexUp = index - targetTileWidth;
-            final int indexDown = index + targetTileWidth;
-            final int indexLeft = index - 1;
-            final int indexRight = index + 1;
-
-            if (indexUp >= 0 && indexDown < targetTileWidth * targetTileHeight &&
-                    index % targetTileWidth != 0 && (index + 1) % targetTileWidth != 0 &&
-                    srcDat.srcPixPos[indexUp] != null && srcDat.srcPixPos[indexDown] != null &&
-                    srcDat.srcPixPos[indexLeft] != null && srcDat.srcPixPos[indexRight] != null) {
+                                 final double[] samples, final SourceData srcDat, final double[] adjacentPixels) {
 
-                resampling.computeIndex(srcDat.srcPixPos[indexUp].x, srcDat.srcPixPos[indexUp].y,
-                        srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
+        final int indexUp = index - targetTileWidth;
+        final int indexDown = index + targetTileWidth;
+        final int indexLeft = index - 1;
+        final int indexRight = index + 1;
 
-                final double s1 = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+        if (indexUp >= 0 && indexDown < targetTileWidth * targetTileHeight &&
+                index % targetTileWidth != 0 && (index + 1) % targetTileWidth != 0) {
 
-                resampling.computeIndex(srcDat.srcPixPos[indexDown].x, srcDat.srcPixPos[indexDown].y,
-                        srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
+            final double s1 = samples[indexUp];
+            final double s2 = samples[indexDown];
+            final double s3 = samples[indexLeft];
+            final double s4 = samples[indexRight];
 
-                final double s2 = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+            if (isValidSample((float) s1, srcDat.nodataValue) && isValidSample((float) s2, srcDat.nodataValue) &&
+                    isValidSample((float) s3, srcDat.nodataValue) && isValidSample((float) s4, srcDat.nodataValue)) {
 
-                resampling.computeIndex(srcDat.srcPixPos[indexLeft].x, srcDat.srcPixPos[indexLeft].y,
-                        srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
-
-                final double s3 = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
-
-                resampling.computeIndex(srcDat.srcPixPos[indexRight].x, srcDat.srcPixPos[indexRight].y,
-                        srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
-
-                final double s4 = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
-
-                if (isValidSample((float) s1, srcDat.nodataValue) && isValidSample((float) s2, srcDat.nodataValue) &&
-                        isValidSample((float) s3, srcDat.nodataValue) && isValidSample((float) s4, srcDat.nodataValue)) {
-
-                    if (normalizeByMean) {
-                        adjacentPixels[0] = (s1 - srcDat.srcMean) / srcDat.srcStd;
-                        adjacentPixels[1] = (s2 - srcDat.srcMean) / srcDat.srcStd;
-                        adjacentPixels[2] = (s3 - srcDat.srcMean) / srcDat.srcStd;
-                        adjacentPixels[3] = (s4 - srcDat.srcMean) / srcDat.srcStd;
-                    } else {
-                        adjacentPixels[0] = s1;
-                        adjacentPixels[1] = s2;
-                        adjacentPixels[2] = s3;
-                        adjacentPixels[3] = s4;
-                    }
-                    return true;
+                if (normalizeByMean) {
+                    adjacentPixels[0] = (s1 - srcDat.srcMean) / srcDat.srcStd;
+                    adjacentPixels[1] = (s2 - srcDat.srcMean) / srcDat.srcStd;
+                    adjacentPixels[2] = (s3 - srcDat.srcMean) / srcDat.srcStd;
+                    adjacentPixels[3] = (s4 - srcDat.srcMean) / srcDat.srcStd;
                 } else {
-                    return false;
+                    adjacentPixels[0] = s1;
+                    adjacentPixels[1] = s2;
+                    adjacentPixels[2] = s3;
+                    adjacentPixels[3] = s4;
                 }
+                return true;
             }
-
-            return false;
-        } catch (Throwable e) {
-            OperatorUtils.catchOperatorException(getId(), e);
         }
         return false;
     }
 
-    private static boolean isInnerPoint(final int xx, final int yy, final byte[][] mask) {
+    private static boolean isInnerPoint(final int xx, final int yy, final int width, final int height,
+                                        final byte[] mask) {
 
-        if (xx == 0 || yy == 0 || xx == mask[0].length - 1 || yy == mask.length - 1) {
+        if (xx == 0 || yy == 0 || xx == width - 1 || yy == height - 1) {
             return false;
         } else {
-            return (mask[yy - 1][xx] == 0 || mask[yy - 1][xx] == 2) &&
-                    (mask[yy + 1][xx] == 0 || mask[yy + 1][xx] == 2) &&
-                    (mask[yy][xx - 1] == 0 || mask[yy][xx - 1] == 2) &&
-                    (mask[yy][xx + 1] == 0 || mask[yy][xx + 1] == 2);
+            final int index = yy * width + xx;
+            return (mask[index - width] == 0 || mask[index - width] == 2) &&
+                    (mask[index + width] == 0 || mask[index + width] == 2) &&
+                    (mask[index - 1] == 0 || mask[index - 1] == 2) &&
+                    (mask[index + 1] == 0 || mask[index + 1] == 2);
         }
     }
 
@@ -902,66 +883,11 @@ public class MosaicOp extends Operator {
         return (!Double.isNaN(sample) && sample != noDataValue && !MathUtils.equalValues(sample, 0.0F, 1e-4F));
     }
 
-    private double computeGradient(final int xx, final int yy, final double[][] mosaicedTile,
-                                   final double s0, final double[] adjacentPixels) {
-
-        double g2 = adjacentPixels[0] + adjacentPixels[1] + adjacentPixels[2] + adjacentPixels[3] - 4 * s0;
-
-        /*
-        double g1 = mosaicedTile[yy-1][xx] + mosaicedTile[yy+1][xx] + mosaicedTile[yy][xx-1] +
-                    mosaicedTile[yy][xx+1] - 4*mosaicedTile[yy][xx];
-
-        if (Math.abs(g1) > Math.abs(g2)) {
-            return g1;
-        } else {
-            return g2;
-        }
-        */
-        return g2;
-    }
-
-    private void performMosaic(final byte[][] mask, final double[][] gradientTile, double[][] mosaicedTile) {
-
-        final double w = 1.5;
-        final int rows = mask.length;
-        final int cols = mask[0].length;
-
-        double sigma, update, error = 0.0;
-        int it;
-        for (it = 0; it < maxIterations; it++) {
-            error = 0.0;
-            for (int r = 0; r < rows; r++) {
-                for (int c = 0; c < cols; c++) {
-                    if (mask[r][c] == 2) {
-
-                        sigma = gradientTile[r][c] - mosaicedTile[r - 1][c] - mosaicedTile[r + 1][c] -
-                                mosaicedTile[r][c - 1] - mosaicedTile[r][c + 1];
+    private static void cleanUpMask(final byte[] mask) {
 
-                        update = (1 - w) * mosaicedTile[r][c] - w * sigma / 4.0;
-                        error = Math.max(error, Math.abs(mosaicedTile[r][c] - update));
-                        mosaicedTile[r][c] = update;
-                    }
-                }
-            }
-
-            if (error < convergenceThreshold) {
-                break;
-            }
-        }
-
-        //if(error != 0)
-        //    System.out.println("it = " + it + ", error = " + error);
-    }
-
-    private static void cleanUpMask(byte[][] mask) {
-
-        final int rows = mask.length;
-        final int cols = mask[0].length;
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                if (mask[r][c] > 0) {
-                    mask[r][c] = 0;
-                }
+        for (int i = 0; i < mask.length; i++) {
+            if (mask[i] > 0) {
+                mask[i] = 0;
             }
         }
     }
@@ -1028,31 +954,77 @@ public class MosaicOp extends Operator {
     }
 
 
+    /**
+     * Source pixel positions of the pixels of a target tile for one source product.
+     */
+    private static class TileMapping {
+        final Product srcProduct;
+        final int srcRasterWidth;
+        final int srcRasterHeight;
+        final double[] srcX;
+        final double[] srcY;    // NaN where the product does not cover the target pixel
+
+        TileMapping(final Product srcProduct, final int numPixels) {
+            this.srcProduct = srcProduct;
+            this.srcRasterWidth = srcProduct.getSceneRasterWidth();
+            this.srcRasterHeight = srcProduct.getSceneRasterHeight();
+            this.srcX = new double[numPixels];
+            this.srcY = new double[numPixels];
+            Arrays.fill(srcX, Double.NaN);
+            Arrays.fill(srcY, Double.NaN);
+        }
+
+        boolean isCovered(final int index) {
+            return !Double.isNaN(srcX[index]);
+        }
+
+        Rectangle getBoundingBox(final int minOffsetX, final int minOffsetY,
+                                 final int maxWidth, final int maxHeight, final int margin) {
+            int minX = Integer.MAX_VALUE;
+            int maxX = -Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxY = -Integer.MAX_VALUE;
+
+            for (int i = 0; i < srcX.length; i++) {
+                if (isCovered(i)) {
+                    final int x = (int) Math.floor(srcX[i]);
+                    final int y = (int) Math.floor(srcY[i]);
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+            if (minX > maxX || minY > maxY) {
+                return null;
+            }
+
+            minX = Math.max(minX - margin, minOffsetX);
+            maxX = Math.min(maxX + margin, maxWidth - 1);
+            minY = Math.max(minY - margin, minOffsetY);
+            maxY = Math.min(maxY + margin, maxHeight - 1);
+
+            if (minX > maxX || minY > maxY) {
+                return null;
+            }
+            return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+    }
+
     private static class SourceData {
         final Tile srcTile;
         final ResamplingRaster resamplingRaster;
-        final Resampling.Index resamplingIndex;
         final double nodataValue;
-        final PixelPos[] srcPixPos;
-        final int srcRasterHeight;
-        final int srcRasterWidth;
         final double srcMean;
         final double srcMax;
         final double srcMin;
         final double srcStd;
 
         public SourceData(final Tile tile,
-                          final PixelPos[] pixPos, final Resampling resampling,
                           final double min, final double max, final double mean, final double std) {
             srcTile = tile;
             resamplingRaster = new ResamplingRaster(srcTile);
-            resamplingIndex = resampling.createIndex();
             nodataValue = tile.getRasterDataNode().getNoDataValue();
-            srcPixPos = pixPos;
-
-            final Product srcProduct = tile.getRasterDataNode().getProduct();
-            srcRasterHeight = srcProduct.getSceneRasterHeight();
-            srcRasterWidth = srcProduct.getSceneRasterWidth();
             srcMin = min;
             srcMax = max;
             srcMean = mean;
@@ -1060,6 +1032,105 @@ public class MosaicOp extends Operator {
         }
     }
 
+    /**
+     * Solves the discrete Poisson equation for the pixels of a tile with mask value 2 using conjugate gradients.
+     * All other pixels are fixed and act as boundary values. The unknown pixels are never on the tile border.
+     * Work arrays are reused between calls.
+     */
+    private static class PoissonSolver {
+        private final int width;
+        private final double[] direction;   // search direction on the tile grid, zero outside the unknowns
+        private int[] unknowns = new int[0];
+        private double[] residual = new double[0];
+        private double[] product = new double[0];
+
+        PoissonSolver(final int width, final int height) {
+            this.width = width;
+            this.direction = new double[width * height];
+        }
+
+        /**
+         * @param mask          2 marks the unknown pixels
+         * @param gradientTile  the laplacian to be reproduced at the unknown pixels
+         * @param mosaicedTile  initial values, receives the solution
+         * @param maxIterations maximum number of iterations
+         * @param threshold     convergence threshold for the largest Jacobi update
+         */
+        void solve(final byte[] mask, final double[] gradientTile, final double[] mosaicedTile,
+                   final int maxIterations, final double threshold) {
+
+            int n = 0;
+            for (byte m : mask) {
+                if (m == 2) {
+                    n++;
+                }
+            }
+            if (n == 0) {
+                return;
+            }
+            if (unknowns.length < n) {
+                unknowns = new int[n];
+                residual = new double[n];
+                product = new double[n];
+            }
+            n = 0;
+            for (int i = 0; i < mask.length; i++) {
+                if (mask[i] == 2) {
+                    unknowns[n++] = i;
+                }
+            }
+
+            // residual of 4 * x - (sum of the neighbours) = -gradient
+            double rr = 0.0, maxResidual = 0.0;
+            for (int k = 0; k < n; k++) {
+                final int i = unknowns[k];
+                final double r = mosaicedTile[i - width] + mosaicedTile[i + width] + mosaicedTile[i - 1] +
+                        mosaicedTile[i + 1] - 4.0 * mosaicedTile[i] - gradientTile[i];
+                residual[k] = r;
+                direction[i] = r;
+                rr += r * r;
+                maxResidual = Math.max(maxResidual, Math.abs(r));
+            }
+
+            for (int it = 0; it < maxIterations && maxResidual / 4.0 >= threshold; it++) {
+                double pAp = 0.0;
+                for (int k = 0; k < n; k++) {
+                    final int i = unknowns[k];
+                    final double ap = 4.0 * direction[i] - direction[i - width] - direction[i + width] -
+                            direction[i - 1] - direction[i + 1];
+                    product[k] = ap;
+                    pAp += direction[i] * ap;
+                }
+                if (pAp <= 0.0) {
+                    break;
+                }
+
+                final double alpha = rr / pAp;
+                double rrNew = 0.0;
+                maxResidual = 0.0;
+                for (int k = 0; k < n; k++) {
+                    final int i = unknowns[k];
+                    mosaicedTile[i] += alpha * direction[i];
+                    final double r = residual[k] - alpha * product[k];
+                    residual[k] = r;
+                    rrNew += r * r;
+                    maxResidual = Math.max(maxResidual, Math.abs(r));
+                }
+
+                final double beta = rrNew / rr;
+                rr = rrNew;
+                for (int k = 0; k < n; k++) {
+                    final int i = unknowns[k];
+                    direction[i] = residual[k] + beta * direction[i];
+                }
+            }
+
+            for (int k = 0; k < n; k++) {
+                direction[unknowns[k]] = 0.0;
+            }
+        }
+    }
+
     /**
      * Operator SPI.
      */
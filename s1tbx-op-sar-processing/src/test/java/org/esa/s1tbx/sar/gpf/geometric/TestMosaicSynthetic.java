@@ -0,0 +1,650 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.sar.gpf.geometric;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.snap.core.datamodel.Band;
+import org.esa.snap.core.datamodel.CrsGeoCoding;
+import org.esa.snap.core.datamodel.GeoPos;
+import org.esa.snap.core.datamodel.PixelPos;
+import org.esa.snap.core.datamodel.Product;
+import org.esa.snap.core.datamodel.ProductData;
+import org.esa.snap.core.datamodel.RasterDataNode;
+import org.esa.snap.core.datamodel.Stx;
+import org.esa.snap.core.dataop.resamp.Resampling;
+import org.esa.snap.core.dataop.resamp.ResamplingFactory;
+import org.esa.snap.core.gpf.Operator;
+import org.esa.snap.core.gpf.OperatorException;
+import org.esa.snap.core.gpf.OperatorSpi;
+import org.esa.snap.core.gpf.Tile;
+import org.esa.snap.core.util.ProductUtils;
+import org.esa.snap.core.util.math.MathUtils;
+import org.esa.snap.engine_utilities.eo.Constants;
+import org.esa.snap.engine_utilities.gpf.TileGeoreferencing;
+import org.esa.snap.engine_utilities.gpf.TileIndex;
+import org.esa.snap.engine_utilities.util.TestUtils;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the output of MosaicOp on two small overlapping products with the mosaic computed the way it was done
+ * before the source mapping and the source tiles were shared across bands.
+ */
+public class TestMosaicSynthetic {
+
+    static {
+        TestUtils.initTestEnvironment();
+    }
+
+    private final static OperatorSpi spi = new MosaicOp.Spi();
+
+    private static final String BAND_NAME = "Amplitude";
+    private static final int SRC_WIDTH = 40;
+    private static final int SRC_HEIGHT = 30;
+    private static final int OFFSET_X = 15;
+    private static final int OFFSET_Y = 10;
+    private static final double PIXEL_SPACING = 0.001; // degrees
+    private static final double LON0 = 10.0;
+    private static final double LAT0 = 50.0;
+
+    @Test
+    public void testAverageBilinear() throws Exception {
+        compareWithBefore(ResamplingFactory.BILINEAR_INTERPOLATION_NAME, true, true, false, 1e-4);
+    }
+
+    @Test
+    public void testLastNearestNeighbour() throws Exception {
+        compareWithBefore(ResamplingFactory.NEAREST_NEIGHBOUR_NAME, false, false, false, 1e-4);
+    }
+
+    /**
+     * The conjugate gradient solver replaced the relaxation loop, so both are run to a tight threshold
+     */
+    @Test
+    public void testGradientDomain() throws Exception {
+        compareWithBefore(ResamplingFactory.BILINEAR_INTERPOLATION_NAME, true, false, true, 1e-3);
+    }
+
+    private static void compareWithBefore(final String resamplingMethod, final boolean average,
+                                          final boolean normalizeByMean, final boolean gradientDomainMosaic,
+                                          final double tolerance) throws Exception {
+        final Product product1 = createProduct("first", 0, 0, 100);
+        final Product product2 = createProduct("second", OFFSET_X, OFFSET_Y, 130);
+
+        final MosaicOp op = (MosaicOp) spi.createOperator();
+        op.setSourceProducts(product1, product2);
+        op.setParameter("resamplingMethod", resamplingMethod);
+        op.setParameter("average", average);
+        op.setParameter("normalizeByMean", normalizeByMean);
+        op.setParameter("gradientDomainMosaic", gradientDomainMosaic);
+        op.setParameter("pixelSize", PIXEL_SPACING * Constants.semiMajorAxis / Constants.RTOD);
+        op.setParameter("sceneWidth", SRC_WIDTH + OFFSET_X + 2);
+        op.setParameter("sceneHeight", SRC_HEIGHT + OFFSET_Y + 2);
+        op.setParameter("convergenceThreshold", 1e-9);
+        op.setParameter("maxIterations", 100000);
+        final Product targetProduct = op.getTargetProduct();
+        final float[] mosaic = getPixels(targetProduct);
+
+        // the operator keeps its source products in a hash set, so the order in which they are
+        // mosaicked is not known
+        final MosaicBeforeOp before12 = new MosaicBeforeOp(new Product[]{product1, product2}, targetProduct,
+                resamplingMethod, average, normalizeByMean, gradientDomainMosaic);
+        final MosaicBeforeOp before21 = new MosaicBeforeOp(new Product[]{product2, product1}, targetProduct,
+                resamplingMethod, average, normalizeByMean, gradientDomainMosaic);
+        final double diff12 = getMaxDiff(mosaic, getPixels(before12.getTargetProduct()));
+        final double diff21 = getMaxDiff(mosaic, getPixels(before21.getTargetProduct()));
+
+        assertTrue("max difference " + Math.min(diff12, diff21), Math.min(diff12, diff21) <= tolerance);
+    }
+
+    private static Product createProduct(final String name, final int offsetX, final int offsetY,
+                                         final double level) throws Exception {
+        final Product product = new Product(name, "synthetic", SRC_WIDTH, SRC_HEIGHT);
+        product.setSceneGeoCoding(new CrsGeoCoding(DefaultGeographicCRS.WGS84, SRC_WIDTH, SRC_HEIGHT,
+                LON0 + offsetX * PIXEL_SPACING, LAT0 - offsetY * PIXEL_SPACING, PIXEL_SPACING, PIXEL_SPACING));
+
+        final float[] data = new float[SRC_WIDTH * SRC_HEIGHT];
+        for (int y = 0; y < SRC_HEIGHT; ++y) {
+            for (int x = 0; x < SRC_WIDTH; ++x) {
+                data[y * SRC_WIDTH + x] = (float) (level + 10 * Math.sin((x + offsetX) / 5.0) +
+                        5 * Math.cos((y + offsetY) / 7.0));
+            }
+        }
+        final Band band = product.addBand(BAND_NAME, ProductData.TYPE_FLOAT32);
+        band.setRasterData(ProductData.createInstance(data));
+        return product;
+    }
+
+    private static float[] getPixels(final Product product) {
+        final Band band = product.getBand(BAND_NAME);
+        final int width = band.getRasterWidth();
+        final int height = band.getRasterHeight();
+        final Raster raster = band.getSourceImage().getData(new Rectangle(0, 0, width, height));
+        return raster.getSamples(0, 0, width, height, 0, new float[width * height]);
+    }
+
+    private static double getMaxDiff(final float[] values, final float[] expected) {
+        double maxDiff = 0;
+        for (int i = 0; i < values.length; i++) {
+            maxDiff = Math.max(maxDiff, Math.abs(values[i] - expected[i]));
+        }
+        return maxDiff;
+    }
+
+    /**
+     * The mosaic computation of MosaicOp before the source mapping and the source tiles were shared across bands:
+     * every band resamples every source product at every target pixel, and the gradient domain mosaic is solved
+     * by over-relaxed Gauss-Seidel iterations.
+     */
+    private static class MosaicBeforeOp extends Operator {
+
+        private final Product[] sourceProducts;
+        private final Product template;
+        private final String resamplingMethod;
+        private final boolean average;
+        private final boolean normalizeByMean;
+        private final boolean gradientDomainMosaic;
+        private final int feather = 0;
+        private final int maxIterations = 100000;
+        private final double convergenceThreshold = 1e-9;
+        private Product targetProduct;
+
+        MosaicBeforeOp(final Product[] sourceProducts, final Product template, final String resamplingMethod,
+                       final boolean average, final boolean normalizeByMean, final boolean gradientDomainMosaic) {
+            this.sourceProducts = sourceProducts;
+            this.template = template;
+            this.resamplingMethod = resamplingMethod;
+            this.average = average;
+            this.normalizeByMean = normalizeByMean;
+            this.gradientDomainMosaic = gradientDomainMosaic;
+            setSourceProducts(sourceProducts);
+        }
+
+        @Override
+        public void initialize() throws OperatorException {
+            targetProduct = new Product("before", "mosaic", template.getSceneRasterWidth(),
+                    template.getSceneRasterHeight());
+            ProductUtils.copyGeoCoding(template, targetProduct);
+            final Band srcBand = sourceProducts[0].getBand(BAND_NAME);
+            final Band targetBand = targetProduct.addBand(BAND_NAME, ProductData.TYPE_FLOAT32);
+            targetBand.setNoDataValue(srcBand.getNoDataValue());
+            targetBand.setNoDataValueUsed(true);
+            setTargetProduct(targetProduct);
+        }
+
+        @Override
+        public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle targetRectangle, ProgressMonitor pm)
+                throws OperatorException {
+
+            final GeoPos geoPos = new GeoPos();
+            final PixelPos pixelPos = new PixelPos();
+            final int minX = targetRectangle.x;
+            final int minY = targetRectangle.y;
+            final int maxX = targetRectangle.x + targetRectangle.width - 1;
+            final int maxY = targetRectangle.y + targetRectangle.height - 1;
+
+            final TileGeoreferencing tileGeoRef = new TileGeoreferencing(targetProduct, minX, minY,
+                    maxX - minX + 1, maxY - minY + 1);
+
+            final List<PixelPos[]> srcPixelCoords = new ArrayList<>(sourceProducts.length);
+            final int numPixelPos = targetRectangle.width * targetRectangle.height;
+            for (Product srcProduct : sourceProducts) {
+                srcPixelCoords.add(new PixelPos[numPixelPos]);
+            }
+
+            int coordIndex = 0;
+            for (int y = minY; y <= maxY; ++y) {
+                for (int x = minX; x <= maxX; ++x) {
+                    tileGeoRef.getGeoPos(x, y, geoPos);
+
+                    for (int p = 0; p < sourceProducts.length; ++p) {
+                        final Product srcProduct = sourceProducts[p];
+                        srcProduct.getSceneGeoCoding().getPixelPos(geoPos, pixelPos);
+
+                        if (pixelPos.x >= feather && pixelPos.y >= feather &&
+                                pixelPos.x < srcProduct.getSceneRasterWidth() - feather &&
+                                pixelPos.y < srcProduct.getSceneRasterHeight() - feather) {
+                            srcPixelCoords.get(p)[coordIndex] = new PixelPos(pixelPos.x, pixelPos.y);
+                        }
+                    }
+                    ++coordIndex;
+                }
+            }
+
+            final Resampling resampling = ResamplingFactory.createResampling(resamplingMethod);
+            for (final Map.Entry<Band, Tile> bandTileEntry : targetTiles.entrySet()) {
+                final String trgBandName = bandTileEntry.getKey().getName();
+                final List<SourceData> validSourceData = getValidSourceData(trgBandName, srcPixelCoords,
+                        resampling);
+                if (gradientDomainMosaic) {
+                    performGradientDomainMosaic(bandTileEntry.getValue(), validSourceData, resampling);
+                } else if (!validSourceData.isEmpty()) {
+                    collocateSourceBand(validSourceData, resampling, bandTileEntry.getValue());
+                }
+            }
+        }
+
+        private List<SourceData> getValidSourceData(final String trgBandName, final List<PixelPos[]> srcPixelCoords,
+                                                    final Resampling resampling) {
+            final List<SourceData> validSourceData = new ArrayList<>(sourceProducts.length);
+            for (int p = 0; p < sourceProducts.length; ++p) {
+                final Product srcProduct = sourceProducts[p];
+                final Band srcBand = srcProduct.getBand(trgBandName);
+                final PixelPos[] pixPos = srcPixelCoords.get(p);
+                final Rectangle sourceRectangle = gradientDomainMosaic ?
+                        getBoundingBox(pixPos, 0, 0, srcProduct.getSceneRasterWidth(),
+                                srcProduct.getSceneRasterHeight(), feather) :
+                        getBoundingBox(pixPos, feather, feather, srcProduct.getSceneRasterWidth() - feather,
+                                srcProduct.getSceneRasterHeight() - feather, 4);
+                if (sourceRectangle == null) {
+                    continue;
+                }
+
+                double mean = 0, std = 0;
+                if (normalizeByMean) {
+                    final Stx stats = srcBand.getStx(true, ProgressMonitor.NULL);
+                    mean = stats.getMean();
+                    std = stats.getStandardDeviation();
+                }
+                validSourceData.add(new SourceData(getSourceTile(srcBand, sourceRectangle), pixPos, resampling,
+                        mean, std));
+            }
+            return validSourceData;
+        }
+
+        private void collocateSourceBand(final List<SourceData> validSourceData, final Resampling resampling,
+                                         final Tile targetTile) {
+            final Rectangle targetRectangle = targetTile.getRectangle();
+            final ProductData trgBuffer = targetTile.getDataBuffer();
+
+            final int maxY = targetRectangle.y + targetRectangle.height;
+            final int maxX = targetRectangle.x + targetRectangle.width;
+            final TileIndex trgIndex = new TileIndex(targetTile);
+            final double[] sampleList = new double[validSourceData.size()];
+            final int[] sampleDistanceList = new int[validSourceData.size()];
+
+            try {
+                for (int y = targetRectangle.y, index = 0; y < maxY; ++y) {
+                    trgIndex.calculateStride(y);
+                    for (int x = targetRectangle.x; x < maxX; ++x, ++index) {
+
+                        double targetVal = 0;
+                        int numSamples = 0;
+                        for (final SourceData srcDat : validSourceData) {
+                            final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
+                            if (sourcePixelPos == null) {
+                                continue;
+                            }
+
+                            resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
+                                    srcDat.srcRasterWidth - feather, srcDat.srcRasterHeight - feather,
+                                    srcDat.resamplingIndex);
+                            double sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+
+                            if (isValidSample(sample, srcDat.nodataValue)) {
+                                if (normalizeByMean) {
+                                    sample -= srcDat.srcMean;
+                                    sample /= srcDat.srcStd;
+                                }
+                                targetVal = sample;
+
+                                if (average) {
+                                    sampleList[numSamples] = sample;
+                                    sampleDistanceList[numSamples] = (int) (Math.min(sourcePixelPos.x + 1,
+                                            srcDat.srcRasterWidth - sourcePixelPos.x) *
+                                            Math.min(sourcePixelPos.y + 1,
+                                                    srcDat.srcRasterHeight - sourcePixelPos.y));
+                                    numSamples++;
+                                }
+                            }
+                        }
+
+                        if (targetVal != 0) {
+                            if (average && numSamples > 1) {
+                                double sum = 0;
+                                int totalWeight = 0;
+                                for (int i = 0; i < numSamples; i++) {
+                                    sum += sampleList[i] * sampleDistanceList[i];
+                                    totalWeight += sampleDistanceList[i];
+                                }
+                                targetVal = sum / totalWeight;
+                            }
+                            trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), targetVal);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                throw new OperatorException(e);
+            }
+        }
+
+        private void performGradientDomainMosaic(final Tile trgTile, final List<SourceData> validSourceData,
+                                                 final Resampling resampling) {
+            final Rectangle targetRectangle = trgTile.getRectangle();
+            final int minX = targetRectangle.x;
+            final int minY = targetRectangle.y;
+            final int maxX = targetRectangle.x + targetRectangle.width - 1;
+            final int maxY = targetRectangle.y + targetRectangle.height - 1;
+
+            final double[][] mosaicedTile = new double[targetRectangle.height][targetRectangle.width];
+            final double[][] gradientTile = new double[targetRectangle.height][targetRectangle.width];
+            final byte[][] mask = new byte[targetRectangle.height][targetRectangle.width];
+
+            try {
+                for (int i = 0; i < validSourceData.size(); i++) {
+                    if (i == 0) {
+                        readFirstProduct(minX, maxX, minY, maxY, validSourceData.get(i), resampling,
+                                mosaicedTile, mask);
+                    } else {
+                        readNextProduct(minX, maxX, minY, maxY, validSourceData.get(i), resampling,
+                                mosaicedTile, mask, gradientTile);
+                        performMosaic(mask, gradientTile, mosaicedTile);
+                        cleanUpMask(mask);
+                    }
+                }
+            } catch (Exception e) {
+                throw new OperatorException(e);
+            }
+
+            final ProductData trgBuffer = trgTile.getDataBuffer();
+            final TileIndex trgIndex = new TileIndex(trgTile);
+            for (int y = minY; y <= maxY; y++) {
+                trgIndex.calculateStride(y);
+                for (int x = minX; x <= maxX; x++) {
+                    trgBuffer.setElemDoubleAt(trgIndex.getIndex(x), mosaicedTile[y - minY][x - minX]);
+                }
+            }
+        }
+
+        private void readFirstProduct(final int minX, final int maxX, final int minY, final int maxY,
+                                      final SourceData srcDat, final Resampling resampling,
+                                      final double[][] mosaicedTile, final byte[][] mask) throws Exception {
+            for (int y = minY, index = 0; y <= maxY; ++y) {
+                final int yy = y - minY;
+                for (int x = minX; x <= maxX; ++x, ++index) {
+                    final int xx = x - minX;
+
+                    final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
+                    if (sourcePixelPos == null) {
+                        mosaicedTile[yy][xx] = srcDat.nodataValue;
+                        mask[yy][xx] = -1;
+                        continue;
+                    }
+
+                    resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
+                            srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
+                    double sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+
+                    if (isValidSample(sample, srcDat.nodataValue)) {
+                        if (normalizeByMean) {
+                            sample -= srcDat.srcMean;
+                            sample /= srcDat.srcStd;
+                        }
+                        mosaicedTile[yy][xx] = sample;
+                        mask[yy][xx] = 0;
+                    } else {
+                        mosaicedTile[yy][xx] = srcDat.nodataValue;
+                        mask[yy][xx] = -1;
+                    }
+                }
+            }
+        }
+
+        private void readNextProduct(final int minX, final int maxX, final int minY, final int maxY,
+                                     final SourceData srcDat, final Resampling resampling,
+                                     final double[][] mosaicedTile, final byte[][] mask,
+                                     final double[][] gradientTile) throws Exception {
+            final int targetTileWidth = mosaicedTile[0].length;
+            final int targetTileHeight = mosaicedTile.length;
+            final double[] adjacentPixels = new double[4];
+
+            for (int y = minY, index = 0; y <= maxY; ++y) {
+                final int yy = y - minY;
+                for (int x = minX; x <= maxX; ++x, ++index) {
+                    final int xx = x - minX;
+
+                    final PixelPos sourcePixelPos = srcDat.srcPixPos[index];
+                    if (sourcePixelPos == null) {
+                        continue;
+                    }
+
+                    resampling.computeIndex(sourcePixelPos.x, sourcePixelPos.y,
+                            srcDat.srcRasterWidth, srcDat.srcRasterHeight, srcDat.resamplingIndex);
+                    double sample = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+
+                    if (isValidSample(sample, srcDat.nodataValue)) {
+                        if (normalizeByMean) {
+                            sample -= srcDat.srcMean;
+                            sample /= srcDat.srcStd;
+                        }
+
+                        if (mask[yy][xx] == -1) {
+                            mosaicedTile[yy][xx] = sample;
+                            mask[yy][xx] = 1;
+                        } else if (mask[yy][xx] == 0 && isInnerPoint(index, targetTileWidth, targetTileHeight,
+                                srcDat, resampling, adjacentPixels)) {
+                            mosaicedTile[yy][xx] = sample;
+                            if (isInnerPoint(xx, yy, mask)) {
+                                mask[yy][xx] = 2;
+                                gradientTile[yy][xx] = adjacentPixels[0] + adjacentPixels[1] + adjacentPixels[2] +
+                                        adjacentPixels[3] - 4 * sample;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean isInnerPoint(final int index, final int targetTileWidth, final int targetTileHeight,
+                                     final SourceData srcDat, final Resampling resampling,
+                                     final double[] adjacentPixels) throws Exception {
+            final int[] neighbours = {index - targetTileWidth, index + targetTileWidth, index - 1, index + 1};
+            if (neighbours[0] < 0 || neighbours[1] >= targetTileWidth * targetTileHeight ||
+                    index % targetTileWidth == 0 || (index + 1) % targetTileWidth == 0) {
+                return false;
+            }
+
+            final double[] s = new double[4];
+            for (int i = 0; i < 4; i++) {
+                final PixelPos pos = srcDat.srcPixPos[neighbours[i]];
+                if (pos == null) {
+                    return false;
+                }
+                resampling.computeIndex(pos.x, pos.y, srcDat.srcRasterWidth, srcDat.srcRasterHeight,
+                        srcDat.resamplingIndex);
+                s[i] = resampling.resample(srcDat.resamplingRaster, srcDat.resamplingIndex);
+            }
+            for (int i = 0; i < 4; i++) {
+                if (!isValidSample((float) s[i], srcDat.nodataValue)) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < 4; i++) {
+                adjacentPixels[i] = normalizeByMean ? (s[i] - srcDat.srcMean) / srcDat.srcStd : s[i];
+            }
+            return true;
+        }
+
+        private static boolean isInnerPoint(final int xx, final int yy, final byte[][] mask) {
+            if (xx == 0 || yy == 0 || xx == mask[0].length - 1 || yy == mask.length - 1) {
+                return false;
+            }
+            return (mask[yy - 1][xx] == 0 || mask[yy - 1][xx] == 2) &&
+                    (mask[yy + 1][xx] == 0 || mask[yy + 1][xx] == 2) &&
+                    (mask[yy][xx - 1] == 0 || mask[yy][xx - 1] == 2) &&
+                    (mask[yy][xx + 1] == 0 || mask[yy][xx + 1] == 2);
+        }
+
+        private void performMosaic(final byte[][] mask, final double[][] gradientTile,
+                                   final double[][] mosaicedTile) {
+            final double w = 1.5;
+            final int rows = mask.length;
+            final int cols = mask[0].length;
+
+            for (int it = 0; it < maxIterations; it++) {
+                double error = 0.0;
+                for (int r = 0; r < rows; r++) {
+                    for (int c = 0; c < cols; c++) {
+                        if (mask[r][c] == 2) {
+                            final double sigma = gradientTile[r][c] - mosaicedTile[r - 1][c] -
+                                    mosaicedTile[r + 1][c] - mosaicedTile[r][c - 1] - mosaicedTile[r][c + 1];
+                            final double update = (1 - w) * mosaicedTile[r][c] - w * sigma / 4.0;
+                            error = Math.max(error, Math.abs(mosaicedTile[r][c] - update));
+                            mosaicedTile[r][c] = update;
+                        }
+                    }
+                }
+                if (error < convergenceThreshold) {
+                    break;
+                }
+            }
+        }
+
+        private static void cleanUpMask(final byte[][] mask) {
+            for (byte[] row : mask) {
+                for (int c = 0; c < row.length; c++) {
+                    if (row[c] > 0) {
+                        row[c] = 0;
+                    }
+                }
+            }
+        }
+
+        private static boolean isValidSample(final double sample, final double noDataValue) {
+            return (!Double.isNaN(sample) && sample != noDataValue && !MathUtils.equalValues(sample, 0.0F, 1e-4F));
+        }
+
+        private static Rectangle getBoundingBox(final PixelPos[] pixelPositions,
+                                                final int minOffsetX, final int minOffsetY,
+                                                final int maxWidth, final int maxHeight, final int margin) {
+            int minX = Integer.MAX_VALUE;
+            int maxX = -Integer.MAX_VALUE;
+            int minY = Integer.MAX_VALUE;
+            int maxY = -Integer.MAX_VALUE;
+            for (final PixelPos pixelsPos : pixelPositions) {
+                if (pixelsPos != null) {
+                    final int x = (int) Math.floor(pixelsPos.getX());
+                    final int y = (int) Math.floor(pixelsPos.getY());
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                }
+            }
+            if (minX > maxX || minY > maxY) {
+                return null;
+            }
+
+            minX = Math.max(minX - margin, minOffsetX);
+            maxX = Math.min(maxX + margin, maxWidth - 1);
+            minY = Math.max(minY - margin, minOffsetY);
+            maxY = Math.min(maxY + margin, maxHeight - 1);
+            if (minX > maxX || minY > maxY) {
+                return null;
+            }
+            return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        }
+    }
+
+    private static class SourceData {
+        final ResamplingRaster resamplingRaster;
+        final Resampling.Index resamplingIndex;
+        final double nodataValue;
+        final PixelPos[] srcPixPos;
+        final int srcRasterHeight;
+        final int srcRasterWidth;
+        final double srcMean;
+        final double srcStd;
+
+        SourceData(final Tile tile, final PixelPos[] pixPos, final Resampling resampling,
+                   final double mean, final double std) {
+            resamplingRaster = new ResamplingRaster(tile);
+            resamplingIndex = resampling.createIndex();
+            nodataValue = tile.getRasterDataNode().getNoDataValue();
+            srcPixPos = pixPos;
+            final Product srcProduct = tile.getRasterDataNode().getProduct();
+            srcRasterHeight = srcProduct.getSceneRasterHeight();
+            srcRasterWidth = srcProduct.getSceneRasterWidth();
+            srcMean = mean;
+            srcStd = std;
+        }
+    }
+
+    private static class ResamplingRaster implements Resampling.Raster {
+
+        private final Tile tile;
+        private final boolean usesNoData;
+        private final boolean scalingApplied;
+        private final double noDataValue;
+        private final double geophysicalNoDataValue;
+        private final ProductData dataBuffer;
+        private final int minX, minY, maxX, maxY;
+
+        ResamplingRaster(final Tile tile) {
+            this.tile = tile;
+            this.minX = tile.getMinX();
+            this.minY = tile.getMinY();
+            this.maxX = tile.getMaxX();
+            this.maxY = tile.getMaxY();
+            this.dataBuffer = tile.getDataBuffer();
+            final RasterDataNode rasterDataNode = tile.getRasterDataNode();
+            this.usesNoData = rasterDataNode.isNoDataValueUsed();
+            this.noDataValue = rasterDataNode.getNoDataValue();
+            this.geophysicalNoDataValue = rasterDataNode.getGeophysicalNoDataValue();
+            this.scalingApplied = rasterDataNode.isScalingApplied();
+        }
+
+        public final int getWidth() {
+            return tile.getWidth();
+        }
+
+        public final int getHeight() {
+            return tile.getHeight();
+        }
+
+        public boolean getSamples(final int[] x, final int[] y, final double[][] samples) {
+            boolean allValid = true;
+            for (int i = 0; i < y.length; i++) {
+                for (int j = 0; j < x.length; j++) {
+                    if (x[j] < minX || y[i] < minY || x[j] > maxX || y[i] > maxY) {
+                        allValid = false;
+                    }
+                    try {
+                        samples[i][j] = dataBuffer.getElemDoubleAt(tile.getDataBufferIndex(x[j], y[i]));
+                    } catch (Exception e) {
+                        samples[i][j] = Float.NaN;
+                        allValid = false;
+                    }
+                    if (usesNoData) {
+                        if (scalingApplied && geophysicalNoDataValue == samples[i][j] || noDataValue == samples[i][j]) {
+                            samples[i][j] = Float.NaN;
+                            allValid = false;
+                        }
+                    }
+                }
+            }
+            return allValid;
+        }
+    }
+}
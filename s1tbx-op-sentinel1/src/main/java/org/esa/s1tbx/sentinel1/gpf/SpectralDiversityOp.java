@@ -271,6 +271,7 @@ public class SpectralDiversityOp extends Operator {
     private Map<String, AzRgOffsets> targetOffsetMap = new HashMap<>();  // range and azimuth offsets for the target bands
 
     private static final int cohWin = 5; // window size for coherence calculation
+    private static final long maxOverlapCacheBytes = 256L * 1024 * 1024; // bound for the overlap blocks of a stack
     private static final int maxRangeShift = 1;
 
     private boolean outputESDEstimationToFile = true;
@@ -291,6 +292,16 @@ public class SpectralDiversityOp extends Operator {
     public SpectralDiversityOp() {
     }
 
+    /**
+     * Used by unit tests of the ESD estimation, which needs no source product.
+     *
+     * @param azimuthTimeInterval the azimuth time interval of the sub-swath
+     */
+    SpectralDiversityOp(final double azimuthTimeInterval) {
+        this.azimuthTimeInterval = azimuthTimeInterval;
+        this.weightFunction = WeightFunction.fromString(weightFunc);
+    }
+
     /**
      * Initializes this operator and sets the one and only target product.
      * <p>The target product can be either defined by a field of type {@link Product} annotated with the
@@ -1046,10 +1057,22 @@ public class SpectralDiversityOp extends Operator {
                     List<CplxContainer> complexImages = this.complexImages.get(imagesKey);
                     SystemUtils.LOG.fine("Estimating azimuth offset for: " + imagesKey);
 
+                    // images taking part in the network
+                    final boolean[] isImageUsed = new boolean[complexImages.size()];
+                    for (int[] arc : arcs) {
+                        isImageUsed[arc[0]] = true;
+                        isImageUsed[arc[1]] = true;
+                    }
+                    int numUsedImages = 0;
+                    for (boolean used : isImageUsed) {
+                        if (used) {
+                            numUsedImages++;
+                        }
+                    }
+
                     // estimate shift for each overlap
                     status.beginTask("Azimuth shift: ESD for overlap blocks (" + imagesKey + ")...", numOverlaps * numBlocksPerOverlap);
                     for (int i = 0; i < numOverlaps; i++) {
-                        final ThreadExecutor executor = new ThreadExecutor();
                         SystemUtils.LOG.info("Estimating azimuth offset for blocks in overlap: " +
                                                      (i + 1) + "/" + numOverlaps);
                         final Rectangle overlapInBurstOneRectangle = new Rectangle();
@@ -1068,36 +1091,73 @@ public class SpectralDiversityOp extends Operator {
                         final double[] spectralSeparation = computeSpectralSeparation(i);
                         final double searchBoundary = getSearchSpaceBoundary(spectralSeparation);
 
-                        // estimate shift for each block stack
-                        for (int j = 0; j < numBlocksPerOverlap; j++) {
-                            final int x0 = x0BurstOne + j * w;
-                            final int blockIndex = j;
-                            final Rectangle blockRectangle1 = new Rectangle(x0, y0BurstOne, w, h);
-                            final Rectangle blockRectangle2 = new Rectangle(x0, y0BurstTwo, w, h);
-
-                            // apply ESD for pairs in this block stack
-                            final ThreadRunnable worker = new ThreadRunnable() {
-                                @Override
-                                public void process() {
-                                    ShiftData[] azimuthShiftsPerBlock = applyESDToBlockStack(
-                                            swath,
-                                            polarization,
-                                            overlapIndex,
-                                            blockIndex,
-                                            blockRectangle1,
-                                            blockRectangle2,
-                                            spectralSeparation,
-                                            searchBoundary,
-                                            usePeriodogram);
-                                    synchronized (shiftAllBlocks) {
-                                        shiftAllBlocks[overlapIndex][blockIndex] = azimuthShiftsPerBlock;
+                        // the overlap is processed in groups of blocks so that the blocks of all images fit the cache
+                        final long blockBytes = 16L * w * h; // i and q of both bursts as float
+                        final int blocksPerGroup = (int) Math.max(1, Math.min(numBlocksPerOverlap,
+                                maxOverlapCacheBytes / Math.max(1, blockBytes * numUsedImages)));
+
+                        for (int g = 0; g < numBlocksPerOverlap; g += blocksPerGroup) {
+                            checkForCancellation();
+                            final int firstBlock = g;
+                            final int numGroupBlocks = Math.min(blocksPerGroup, numBlocksPerOverlap - g);
+                            final OverlapBlock[][] blockCache = new OverlapBlock[numGroupBlocks][complexImages.size()];
+
+                            // read each block of each image once
+                            ThreadExecutor executor = new ThreadExecutor();
+                            for (int b = 0; b < numGroupBlocks; b++) {
+                                final int cacheIndex = b;
+                                final int x0 = x0BurstOne + (firstBlock + b) * w;
+                                for (int k = 0; k < isImageUsed.length; k++) {
+                                    if (!isImageUsed[k]) {
+                                        continue;
                                     }
+                                    final int imageIndex = k;
+                                    final ThreadRunnable reader = new ThreadRunnable() {
+                                        @Override
+                                        public void process() {
+                                            final CplxContainer image = complexImages.get(imageIndex);
+                                            blockCache[cacheIndex][imageIndex] = readOverlapBlock(
+                                                    image.realBand, image.imagBand,
+                                                    new Rectangle(x0, y0BurstOne, w, h),
+                                                    new Rectangle(x0, y0BurstTwo, w, h));
+                                        }
+                                    };
+                                    executor.execute(reader);
+                                }
+                            }
+                            executor.complete();
+
+                            // apply ESD to each pair of each block, every worker fills its own result
+                            executor = new ThreadExecutor();
+                            for (int b = 0; b < numGroupBlocks; b++) {
+                                final int cacheIndex = b;
+                                final int blockIndex = firstBlock + b;
+
+                                // Chop spectralSeparation to fit the block
+                                final double[] blockSpectralSeparation = chopSpectralSeparation(blockIndex, w, h,
+                                                                                                spectralSeparation);
+
+                                for (int a = 0; a < arcs.length; a++) {
+                                    final int arcIndex = a;
+                                    final ThreadRunnable worker = new ThreadRunnable() {
+                                        @Override
+                                        public void process() {
+                                            shiftAllBlocks[overlapIndex][blockIndex][arcIndex] = applyESDToBlockPair(
+                                                    blockCache[cacheIndex][arcs[arcIndex][0]],
+                                                    blockCache[cacheIndex][arcs[arcIndex][1]],
+                                                    overlapIndex,
+                                                    blockIndex,
+                                                    blockSpectralSeparation,
+                                                    searchBoundary,
+                                                    usePeriodogram);
+                                        }
+                                    };
+                                    executor.execute(worker);
                                 }
-                            };
-                            executor.execute(worker);
-                            status.worked(1);
+                            }
+                            executor.complete();
+                            status.worked(numGroupBlocks);
                         }
-                        executor.complete();
                     }
                     status.done();
 
@@ -1267,93 +1327,73 @@ public class SpectralDiversityOp extends Operator {
     }
 
     /**
-     * Estimate azimuth offset of a block in the second image with respect to the same block in the first one using the
-     * ESD approach. This method is applied to all the pairs of images (blocks) according to the arcs in the integration
-     * network.
+     * Reads the samples of a block of a burst overlap.
      *
-     * @param swath              swath name.
-     * @param polarization       polarization name.
-     * @param overlapIndex       index of this overlap.
-     * @param blockIndex         index of this block in the overlap.
-     * @param blockRectangle1    rectangle for this block in the first burst.
-     * @param blockRectangle2    rectangle for this block in the second burst.
-     * @param spectralSeparation spectral separation.
-     * @param searchBoundary     boundaries of the search space for the azimuth shift estimation.
-     * @param usePeriodogram     flag to indicate the ESD estimation method: Periodogram (true) | Average (false).
-     * @return an array of ShiftData objects describing the offsets for all the image (block) pairs
+     * @param bandI           band with the real part of the image.
+     * @param bandQ           band with the imaginary part of the image.
+     * @param blockRectangle1 rectangle for this block in the first burst.
+     * @param blockRectangle2 rectangle for this block in the second burst.
+     * @return the block samples.
      */
-    private ShiftData[] applyESDToBlockStack(String swath, String polarization, int overlapIndex, int blockIndex, Rectangle blockRectangle1, Rectangle blockRectangle2, double[] spectralSeparation, double searchBoundary, boolean usePeriodogram) {
-        ShiftData[] azimuthShifts = new ShiftData[arcs.length];
-        final int w = blockRectangle1.width;
-        final int h = blockRectangle1.height;
+    private OverlapBlock readOverlapBlock(final Band bandI, final Band bandQ,
+                                          final Rectangle blockRectangle1, final Rectangle blockRectangle2) {
+        return new OverlapBlock(blockRectangle1.width, blockRectangle1.height,
+                                getSourceData(bandI, blockRectangle1), getSourceData(bandQ, blockRectangle1),
+                                getSourceData(bandI, blockRectangle2), getSourceData(bandQ, blockRectangle2));
+    }
 
+    /**
+     * Estimate azimuth offset of a block in the second image with respect to the same block in the first one using the
+     * ESD approach.
+     *
+     * @param image1                  block of the first image.
+     * @param image2                  block of the second image.
+     * @param overlapIndex            index of this overlap.
+     * @param blockIndex              index of this block in the overlap.
+     * @param blockSpectralSeparation spectral separation for the block.
+     * @param searchBoundary          boundaries of the search space for the azimuth shift estimation.
+     * @param usePeriodogram          flag to indicate the ESD estimation method: Periodogram (true) | Average (false).
+     * @return the offset for the pair of blocks
+     */
+    ShiftData applyESDToBlockPair(final OverlapBlock image1, final OverlapBlock image2,
+                                  final int overlapIndex, final int blockIndex,
+                                  final double[] blockSpectralSeparation, final double searchBoundary,
+                                  final boolean usePeriodogram) {
         try {
-            for (int i = 0; i < arcs.length; i++) {  // for each pair
-                final int arcIndex = i;
-
-                checkForCancellation();
-
-                // get images and bands for this arc
-                String imagesKey = polarization.toUpperCase() + "_" + swath.toUpperCase();
-                List<CplxContainer> complexImages = this.complexImages.get(imagesKey);
-                CplxContainer image1 = complexImages.get(arcs[i][0]);
-                CplxContainer image2 = complexImages.get(arcs[i][1]);
-
-                final Band mBandI = image1.realBand;
-                final Band mBandQ = image1.imagBand;
-                final Band sBandI = image2.realBand;
-                final Band sBandQ = image2.imagBand;
-
-                try {
-
-                    // Chop spectralSeparation to fit the block
-                    double[] blockSpectralSeparation = chopSpectralSeparation(blockIndex,
-                                                                              w, h,
-                                                                              spectralSeparation);
-
-                    // Transform 2D coherence to 1D coherence only for the block
-                    final double[] blockCoherence = ravel(computeCoherence(blockRectangle1,
-                                                                           mBandI, mBandQ, sBandI, sBandQ,
-                                                                           cohWin));
-
-                    // Transform coherence into weights
-                    final double[] blockWeight = getBlockWeight(blockCoherence, weightFunction);
-                    double avgBlockWeight = getAverageBlockWeight(blockWeight);
-
-                    // Calculate ESD phase
-                    final double[] esdPhase = estimateESDPhase(mBandI, mBandQ, sBandI, sBandQ,
-                                                               blockRectangle2, blockRectangle1);
-
-                    // Estimate the shift
-                    double azShift;
-                    if (usePeriodogram) {
-                        // Apply the azimuth shift retrieval estimator
-                        azShift = estimateAzimuthShiftWithPeriodogram(esdPhase,
-                                                                      blockWeight,
-                                                                      blockSpectralSeparation,
-                                                                      searchBoundary);
-                    } else {
-                        // Apply an estimator based on the average esd
-                        azShift = estimateAzimuthShiftWithAverage(esdPhase,
-                                                                  blockWeight,
-                                                                  blockSpectralSeparation);
-                    }
-
-                    // Save shift to azShiftArray
-                    ShiftData shiftData =
-                            new ShiftData(overlapIndex, blockIndex, azShift, avgBlockWeight, searchBoundary);
-                    azimuthShifts[arcIndex] = shiftData;
-
-                } catch (Throwable e) {
-                    OperatorUtils.catchOperatorException("estimateOffset", e);
-                }
+            checkForCancellation();
+
+            // Coherence of the block in the first burst
+            final double[] blockCoherence = computeCoherence(image1.i1, image1.q1, image2.i1, image2.q1,
+                                                             image1.width, image1.height, cohWin);
+
+            // Transform coherence into weights
+            final double[] blockWeight = getBlockWeight(blockCoherence, weightFunction);
+            final double avgBlockWeight = getAverageBlockWeight(blockWeight);
+
+            // Calculate ESD phase
+            final double[] esdPhase = estimateESDPhase(image1, image2);
+
+            // Estimate the shift
+            double azShift;
+            if (usePeriodogram) {
+                // Apply the azimuth shift retrieval estimator
+                azShift = estimateAzimuthShiftWithPeriodogram(esdPhase,
+                                                              blockWeight,
+                                                              blockSpectralSeparation,
+                                                              searchBoundary);
+            } else {
+                // Apply an estimator based on the average esd
+                azShift = estimateAzimuthShiftWithAverage(esdPhase,
+                                                          blockWeight,
+                                                          blockSpectralSeparation);
             }
 
+            return new ShiftData(overlapIndex, blockIndex, azShift, avgBlockWeight, searchBoundary);
+
         } catch (Throwable e) {
-            OperatorUtils.catchOperatorException("estimateAzimuthOffset (applyESDToBlockStack)", e);
+            OperatorUtils.catchOperatorException("estimateAzimuthOffset (applyESDToBlockPair)", e);
         }
-
-        return azimuthShifts;
+        return null;
     }
 
     /**
@@ -1419,9 +1459,7 @@ public class SpectralDiversityOp extends Operator {
         final String imagePairTag = getImagePairTag(image1, image2);
 
         try {
-            final List<Double> azOffsetArray = new ArrayList<>(numBursts);
-            final List<Double> rgOffsetArray = new ArrayList<>(numBursts);
-            final List<Integer> burstIndexArray = new ArrayList<>(numBursts);
+            final double[][] burstOffsets = new double[numBursts][];
 
             final ThreadExecutor executor = new ThreadExecutor();
             for (int i = 0; i < numBursts; i++) {
@@ -1437,11 +1475,7 @@ public class SpectralDiversityOp extends Operator {
                             estimateAzRgOffsets(image1.realBand, image1.imagBand, image2.realBand, image2.imagBand,
                                                 burstIndex, offset);
 
-                            synchronized (azOffsetArray) {
-                                azOffsetArray.add(offset[0]);
-                                rgOffsetArray.add(offset[1]);
-                                burstIndexArray.add(burstIndex);
-                            }
+                            burstOffsets[burstIndex] = offset;
                         } catch (Throwable e) {
                             OperatorUtils.catchOperatorException("estimateOffset", e);
                         }
@@ -1451,6 +1485,17 @@ public class SpectralDiversityOp extends Operator {
             }
             executor.complete();
 
+            final List<Double> azOffsetArray = new ArrayList<>(numBursts);
+            final List<Double> rgOffsetArray = new ArrayList<>(numBursts);
+            final List<Integer> burstIndexArray = new ArrayList<>(numBursts);
+            for (int i = 0; i < numBursts; i++) {
+                if (burstOffsets[i] != null) {
+                    azOffsetArray.add(burstOffsets[i][0]);
+                    rgOffsetArray.add(burstOffsets[i][1]);
+                    burstIndexArray.add(i);
+                }
+            }
+
             double sumRgOffset = 0.0;
             int count = 0;
             for (int i = 0; i < azOffsetArray.size(); i++) {
@@ -1543,20 +1588,6 @@ public class SpectralDiversityOp extends Operator {
         return choppedSpectralSeparation;
     }
 
-    private static double[] ravel(double[][] matrix) {
-        int height = matrix.length;
-        int width = matrix[0].length;
-        final double[] vector = new double[height * width];
-
-        for (int i = 0; i < vector.length; i++) {
-            final int r = i / width;
-            final int c = i - r * width;
-            vector[i] = matrix[r][c];
-        }
-
-        return vector;
-    }
-
     private static double[] getBlockCoherence(final int blockIndex, final int blockWidth, final int blockHeight,
                                               final double[][] coherence) {
 
@@ -1859,43 +1890,32 @@ public class SpectralDiversityOp extends Operator {
      * \phi_\textup{ESD} = \arg{\left \{ (m_i \cdot s^*_i) (m_{i+1} \cdot s^*_{i+1})^* \right \}}
      * </code>
      *
-     * @param mBandI            The band with the real part of the master image.
-     * @param mBandQ            The band with the imaginary part of the master image.
-     * @param sBandI            The band with the real part of the slave image.
-     * @param sBandQ            The band with the imaginary part of the slave image.
-     * @param backwardRectangle First burst rectangle.
-     * @param forwardRectangle  Second burst rectangle.
+     * The product of the two interferograms is accumulated per sample in a single pass over the cached blocks.
+     *
+     * @param master The block of the master image.
+     * @param slave  The block of the slave image.
      * @return ESD phase.
      */
-    private double[] estimateESDPhase(final Band mBandI, final Band mBandQ, final Band sBandI, final Band sBandQ,
-                                      final Rectangle backwardRectangle, final Rectangle forwardRectangle) {
-
-        final double[] mIBackArray = getSourceData(mBandI, backwardRectangle);
-        final double[] mQBackArray = getSourceData(mBandQ, backwardRectangle);
-        final double[] sIBackArray = getSourceData(sBandI, backwardRectangle);
-        final double[] sQBackArray = getSourceData(sBandQ, backwardRectangle);
-
-        final double[] mIForArray = getSourceData(mBandI, forwardRectangle);
-        final double[] mQForArray = getSourceData(mBandQ, forwardRectangle);
-        final double[] sIForArray = getSourceData(sBandI, forwardRectangle);
-        final double[] sQForArray = getSourceData(sBandQ, forwardRectangle);
-
-        final int arrayLength = mIBackArray.length;
-        final double[] backIntReal = new double[arrayLength];
-        final double[] backIntImag = new double[arrayLength];
-        complexArrayMultiplication(mIBackArray, mQBackArray, sIBackArray, sQBackArray, backIntReal, backIntImag);
-
-        final double[] forIntReal = new double[arrayLength];
-        final double[] forIntImag = new double[arrayLength];
-        complexArrayMultiplication(mIForArray, mQForArray, sIForArray, sQForArray, forIntReal, forIntImag);
-
-        final double[] diffIntReal = new double[arrayLength];
-        final double[] diffIntImag = new double[arrayLength];
-        complexArrayMultiplication(forIntReal, forIntImag, backIntReal, backIntImag, diffIntReal, diffIntImag);
+    private static double[] estimateESDPhase(final OverlapBlock master, final OverlapBlock slave) {
 
+        final int arrayLength = master.i1.length;
         final double[] phase = new double[arrayLength];
         for (int i = 0; i < arrayLength; i++) {
-            phase[i] = Math.atan2(diffIntImag[i], diffIntReal[i]);
+            // interferogram of the second burst, used as the backward look
+            final double mIBack = master.i2[i], mQBack = master.q2[i];
+            final double sIBack = slave.i2[i], sQBack = slave.q2[i];
+            final double backIntReal = mIBack * sIBack + mQBack * sQBack;
+            final double backIntImag = mQBack * sIBack - mIBack * sQBack;
+
+            // interferogram of the first burst, used as the forward look
+            final double mIFor = master.i1[i], mQFor = master.q1[i];
+            final double sIFor = slave.i1[i], sQFor = slave.q1[i];
+            final double forIntReal = mIFor * sIFor + mQFor * sQFor;
+            final double forIntImag = mQFor * sIFor - mIFor * sQFor;
+
+            final double diffIntReal = forIntReal * backIntReal + forIntImag * backIntImag;
+            final double diffIntImag = forIntImag * backIntReal - forIntReal * backIntImag;
+            phase[i] = Math.atan2(diffIntImag, diffIntReal);
         }
 
         return phase;
@@ -2099,47 +2119,25 @@ public class SpectralDiversityOp extends Operator {
         return azShift;
     }
 
-    private double[] getSourceData(final Band srcBand, final Rectangle rectangle) {
+    private float[] getSourceData(final Band srcBand, final Rectangle rectangle) {
 
-        final int dataType = srcBand.getDataType();
         final Tile srcTile = getSourceTile(srcBand, rectangle);
-
-        double[] dataArray;
-        if (dataType == ProductData.TYPE_INT16) {
-            final short[] dataArrayShort = (short[]) srcTile.getDataBuffer().getElems();
-            dataArray = new double[dataArrayShort.length];
-            for (int i = 0; i < dataArrayShort.length; i++) {
-                dataArray[i] = (double) dataArrayShort[i];
-            }
-        } else if (dataType == ProductData.TYPE_FLOAT32) {
-            final float[] dataArrayFloat = (float[]) srcTile.getDataBuffer().getElems();
-            dataArray = new double[dataArrayFloat.length];
-            for (int i = 0; i < dataArrayFloat.length; i++) {
-                dataArray[i] = (double) dataArrayFloat[i];
+        final ProductData srcData = srcTile.getDataBuffer();
+        final TileIndex srcIndex = new TileIndex(srcTile);
+        final int xMax = rectangle.x + rectangle.width;
+        final int yMax = rectangle.y + rectangle.height;
+
+        final float[] dataArray = new float[rectangle.width * rectangle.height];
+        int k = 0;
+        for (int y = rectangle.y; y < yMax; ++y) {
+            srcIndex.calculateStride(y);
+            for (int x = rectangle.x; x < xMax; ++x) {
+                dataArray[k++] = srcData.getElemFloatAt(srcIndex.getIndex(x));
             }
-        } else {
-            dataArray = (double[]) srcTile.getDataBuffer().getElems();
         }
-
         return dataArray;
     }
 
-    private static void complexArrayMultiplication(final double[] realArray1, final double[] imagArray1,
-                                                   final double[] realArray2, final double[] imagArray2,
-                                                   final double[] realOutput, final double[] imagOutput) {
-
-        final int arrayLength = realArray1.length;
-        if (imagArray1.length != arrayLength || realArray2.length != arrayLength || imagArray2.length != arrayLength ||
-                realOutput.length != arrayLength || imagOutput.length != arrayLength) {
-            throw new OperatorException("Arrays of the same length are expected.");
-        }
-
-        for (int i = 0; i < arrayLength; i++) {
-            realOutput[i] = realArray1[i] * realArray2[i] + imagArray1[i] * imagArray2[i];
-            imagOutput[i] = imagArray1[i] * realArray2[i] - realArray1[i] * imagArray2[i];
-        }
-    }
-
     private Band getBand(final String suffix, final String prefix, final String swathIndexStr, final String polarization) {
 
         final String[] bandNames = sourceProduct.getBandNames();
@@ -2188,82 +2186,75 @@ public class SpectralDiversityOp extends Operator {
         }
     }
 
-    private double[][] computeCoherence(final Rectangle rectangle, final Band mBandI, final Band mBandQ,
-                                        final Band sBandI, final Band sBandQ, final int cohWin) {
+    /**
+     * Computes the coherence of a block with a box window that is clipped at the block borders.
+     * The window sums are separable and are computed with running sums along the lines followed by
+     * a sum over the lines of the window.
+     *
+     * @return the coherence in row major order
+     */
+    private static double[] computeCoherence(final float[] mI, final float[] mQ, final float[] sI, final float[] sQ,
+                                             final int w, final int h, final int cohWin) {
 
-        final int x0 = rectangle.x;
-        final int y0 = rectangle.y;
-        final int w = rectangle.width;
-        final int h = rectangle.height;
-        final int xMax = x0 + w;
-        final int yMax = y0 + h;
         final int halfWindowSize = cohWin / 2;
-        final double[][] coherence = new double[h][w];
-
-        final Tile mstTileI = getSourceTile(mBandI, rectangle);
-        final Tile mstTileQ = getSourceTile(mBandQ, rectangle);
-        final ProductData mstDataBufferI = mstTileI.getDataBuffer();
-        final ProductData mstDataBufferQ = mstTileQ.getDataBuffer();
-
-        final Tile slvTileI = getSourceTile(sBandI, rectangle);
-        final Tile slvTileQ = getSourceTile(sBandQ, rectangle);
-        final ProductData slvDataBufferI = slvTileI.getDataBuffer();
-        final ProductData slvDataBufferQ = slvTileQ.getDataBuffer();
-
-        final TileIndex srcIndex = new TileIndex(mstTileI);
-
-        final double[][] cohReal = new double[h][w];
-        final double[][] cohImag = new double[h][w];
-        final double[][] mstPower = new double[h][w];
-        final double[][] slvPower = new double[h][w];
-        for (int y = y0; y < yMax; ++y) {
-            srcIndex.calculateStride(y);
-            final int yy = y - y0;
-            for (int x = x0; x < xMax; ++x) {
-                final int srcIdx = srcIndex.getIndex(x);
-                final int xx = x - x0;
-
-                final float mI = mstDataBufferI.getElemFloatAt(srcIdx);
-                final float mQ = mstDataBufferQ.getElemFloatAt(srcIdx);
-                final float sI = slvDataBufferI.getElemFloatAt(srcIdx);
-                final float sQ = slvDataBufferQ.getElemFloatAt(srcIdx);
-
-                cohReal[yy][xx] = mI * sI + mQ * sQ;
-                cohImag[yy][xx] = mQ * sI - mI * sQ;
-                mstPower[yy][xx] = mI * mI + mQ * mQ;
-                slvPower[yy][xx] = sI * sI + sQ * sQ;
+        final int n = w * h;
+        final double[] coherence = new double[n];
+
+        // window sums along each line
+        final double[] cohRealRow = new double[n];
+        final double[] cohImagRow = new double[n];
+        final double[] mstPowerRow = new double[n];
+        final double[] slvPowerRow = new double[n];
+        final double[] cumReal = new double[w + 1];
+        final double[] cumImag = new double[w + 1];
+        final double[] cumMst = new double[w + 1];
+        final double[] cumSlv = new double[w + 1];
+        for (int yy = 0; yy < h; ++yy) {
+            final int lineOffset = yy * w;
+            for (int xx = 0; xx < w; ++xx) {
+                final int idx = lineOffset + xx;
+                final double mi = mI[idx], mq = mQ[idx], si = sI[idx], sq = sQ[idx];
+                cumReal[xx + 1] = cumReal[xx] + mi * si + mq * sq;
+                cumImag[xx + 1] = cumImag[xx] + mq * si - mi * sq;
+                cumMst[xx + 1] = cumMst[xx] + mi * mi + mq * mq;
+                cumSlv[xx + 1] = cumSlv[xx] + si * si + sq * sq;
+            }
+            for (int xx = 0; xx < w; ++xx) {
+                final int colSt = Math.max(xx - halfWindowSize, 0);
+                final int colEd = Math.min(xx + halfWindowSize, w - 1) + 1;
+                final int idx = lineOffset + xx;
+                cohRealRow[idx] = cumReal[colEd] - cumReal[colSt];
+                cohImagRow[idx] = cumImag[colEd] - cumImag[colSt];
+                mstPowerRow[idx] = cumMst[colEd] - cumMst[colSt];
+                slvPowerRow[idx] = cumSlv[colEd] - cumSlv[colSt];
             }
         }
 
-        for (int y = y0; y < yMax; ++y) {
-            final int yy = y - y0;
-            for (int x = x0; x < xMax; ++x) {
-                final int xx = x - x0;
-
-                final int rowSt = Math.max(yy - halfWindowSize, 0);
-                final int rowEd = Math.min(yy + halfWindowSize, h - 1);
+        // sum the line sums over the lines of the window
+        for (int yy = 0; yy < h; ++yy) {
+            final int rowSt = Math.max(yy - halfWindowSize, 0);
+            final int rowEd = Math.min(yy + halfWindowSize, h - 1);
+            for (int xx = 0; xx < w; ++xx) {
                 final int colSt = Math.max(xx - halfWindowSize, 0);
                 final int colEd = Math.min(xx + halfWindowSize, w - 1);
 
-                double cohRealSum = 0.0f, cohImagSum = 0.0f, mstPowerSum = 0.0f, slvPowerSum = 0.0f;
-                int count = 0;
+                double cohRealSum = 0.0, cohImagSum = 0.0, mstPowerSum = 0.0, slvPowerSum = 0.0;
                 for (int r = rowSt; r <= rowEd; r++) {
-                    for (int c = colSt; c <= colEd; c++) {
-                        cohRealSum += cohReal[r][c];
-                        cohImagSum += cohImag[r][c];
-                        mstPowerSum += mstPower[r][c];
-                        slvPowerSum += slvPower[r][c];
-                        count++;
-                    }
+                    final int idx = r * w + xx;
+                    cohRealSum += cohRealRow[idx];
+                    cohImagSum += cohImagRow[idx];
+                    mstPowerSum += mstPowerRow[idx];
+                    slvPowerSum += slvPowerRow[idx];
                 }
+                final int count = (rowEd - rowSt + 1) * (colEd - colSt + 1);
 
                 if (count > 0 && mstPowerSum != 0.0 && slvPowerSum != 0.0) {
                     final double cohRealMean = cohRealSum / (double) count;
                     final double cohImagMean = cohImagSum / (double) count;
                     final double mstPowerMean = mstPowerSum / (double) count;
                     final double slvPowerMean = slvPowerSum / (double) count;
-                    coherence[yy][xx] = Math.sqrt((cohRealMean * cohRealMean + cohImagMean * cohImagMean) /
-                                                          (mstPowerMean * slvPowerMean));
+                    coherence[yy * w + xx] = Math.sqrt((cohRealMean * cohRealMean + cohImagMean * cohImagMean) /
+                                                               (mstPowerMean * slvPowerMean));
                 }
             }
         }
@@ -2455,11 +2446,31 @@ public class SpectralDiversityOp extends Operator {
         }
     }
 
+    /**
+     * Samples of one block of a burst overlap of one image, in the first and in the second burst.
+     */
+    static class OverlapBlock {
+        final int width;
+        final int height;
+        final float[] i1, q1;
+        final float[] i2, q2;
+
+        OverlapBlock(final int width, final int height,
+                     final float[] i1, final float[] q1, final float[] i2, final float[] q2) {
+            this.width = width;
+            this.height = height;
+            this.i1 = i1;
+            this.q1 = q1;
+            this.i2 = i2;
+            this.q2 = q2;
+        }
+    }
+
     /**
      * Class for handling azimuth and range shift data.
      * For range, only <code>shift</code> and <code>weight</code> attributes are meaningful.
      */
-    private static class ShiftData {
+    static class ShiftData {
         int overlapIndex;
         int blockIndex;
         double shift;
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2021 by SkyWatch Space Applications Inc. http://www.skywatch.com
+ *
+ * This program is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 3 of the License, or (at your option)
+ * any later version.
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for
+ * more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, see http://www.gnu.org/licenses/
+ */
+package org.esa.s1tbx.sentinel1.gpf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the ESD azimuth shift of a pair of overlap blocks with the shift computed as it was done before the
+ * blocks were cached, when the coherence was summed over the full window of float products and the ESD phase was
+ * formed from temporary interferogram arrays.
+ */
+public class TestSpectralDiversityESD {
+
+    private static final double AZIMUTH_TIME_INTERVAL = 2.055556e-3;
+    private static final double SPECTRAL_SEPARATION = 4700.0;
+    private static final double COHERENCE_THRESHOLD = 0.3;
+    private static final int COH_WIN = 5;
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 40;
+
+    // azimuth shift in lines; the coherence differs in the last float bits, the shift by about 1e-11
+    private static final double SHIFT_TOLERANCE = 1e-9;
+
+    @Test
+    public void testAverageEstimator() {
+        compareShifts(false);
+    }
+
+    @Test
+    public void testPeriodogramEstimator() {
+        compareShifts(true);
+    }
+
+    private static void compareShifts(final boolean usePeriodogram) {
+        final SpectralDiversityOp op = new SpectralDiversityOp(AZIMUTH_TIME_INTERVAL);
+        final double[] spectralSeparation = new double[WIDTH * HEIGHT];
+        Arrays.fill(spectralSeparation, SPECTRAL_SEPARATION);
+        final double searchBoundary = 0.5 / (AZIMUTH_TIME_INTERVAL * SPECTRAL_SEPARATION);
+
+        final Random random = new Random(29);
+        for (int i = 0; i < 20; ++i) {
+            final double shift = (random.nextDouble() - 0.5) * 0.02;
+            final SpectralDiversityOp.OverlapBlock[] blocks = createBlockPair(random, shift);
+            final SpectralDiversityOp.OverlapBlock master = blocks[0];
+            final SpectralDiversityOp.OverlapBlock slave = blocks[1];
+
+            final double[] coherence = computeCoherenceBefore(master.i1, master.q1, slave.i1, slave.q1);
+            final double[] weight = new double[coherence.length];
+            for (int k = 0; k < coherence.length; ++k) {
+                weight[k] = SpectralDiversityOp.WeightFunction.inverseQuadratic.getWeight(coherence[k],
+                        COHERENCE_THRESHOLD);
+            }
+            final double[] esdPhase = estimateESDPhaseBefore(master, slave);
+
+            final double expected = usePeriodogram ?
+                    op.estimateAzimuthShiftWithPeriodogram(esdPhase, weight, spectralSeparation, searchBoundary) :
+                    op.estimateAzimuthShiftWithAverage(esdPhase, weight, spectralSeparation);
+
+            final SpectralDiversityOp.ShiftData shiftData = op.applyESDToBlockPair(master, slave, 0, i,
+                    spectralSeparation, searchBoundary, usePeriodogram);
+
+            assertEquals(expected, shiftData.shift, SHIFT_TOLERANCE);
+        }
+    }
+
+    /**
+     * Correlated master and slave blocks whose ESD phase corresponds to the given azimuth shift
+     */
+    private static SpectralDiversityOp.OverlapBlock[] createBlockPair(final Random random, final double shift) {
+        final double esdPhase = 2 * Math.PI * SPECTRAL_SEPARATION * shift * AZIMUTH_TIME_INTERVAL;
+        final int n = WIDTH * HEIGHT;
+        final float[][] mst = new float[4][n];
+        final float[][] slv = new float[4][n];
+        for (int i = 0; i < n; ++i) {
+            for (int burst = 0; burst < 2; ++burst) {
+                final double re = 50 * random.nextGaussian();
+                final double im = 50 * random.nextGaussian();
+                final double phase = (burst == 0 ? 0.4 + esdPhase : 0.4) + 0.2 * random.nextGaussian();
+                final double cos = Math.cos(phase);
+                final double sin = Math.sin(phase);
+                mst[2 * burst][i] = (float) re;
+                mst[2 * burst + 1][i] = (float) im;
+                slv[2 * burst][i] = (float) (re * cos - im * sin + 20 * random.nextGaussian());
+                slv[2 * burst + 1][i] = (float) (re * sin + im * cos + 20 * random.nextGaussian());
+            }
+        }
+        return new SpectralDiversityOp.OverlapBlock[]{
+                new SpectralDiversityOp.OverlapBlock(WIDTH, HEIGHT, mst[0], mst[1], mst[2], mst[3]),
+                new SpectralDiversityOp.OverlapBlock(WIDTH, HEIGHT, slv[0], slv[1], slv[2], slv[3])};
+    }
+
+    private static double[] computeCoherenceBefore(final float[] mI, final float[] mQ,
+                                                   final float[] sI, final float[] sQ) {
+        final int halfWindowSize = COH_WIN / 2;
+        final double[][] cohReal = new double[HEIGHT][WIDTH];
+        final double[][] cohImag = new double[HEIGHT][WIDTH];
+        final double[][] mstPower = new double[HEIGHT][WIDTH];
+        final double[][] slvPower = new double[HEIGHT][WIDTH];
+        for (int yy = 0; yy < HEIGHT; ++yy) {
+            for (int xx = 0; xx < WIDTH; ++xx) {
+                final int idx = yy * WIDTH + xx;
+                cohReal[yy][xx] = mI[idx] * sI[idx] + mQ[idx] * sQ[idx];
+                cohImag[yy][xx] = mQ[idx] * sI[idx] - mI[idx] * sQ[idx];
+                mstPower[yy][xx] = mI[idx] * mI[idx] + mQ[idx] * mQ[idx];
+                slvPower[yy][xx] = sI[idx] * sI[idx] + sQ[idx] * sQ[idx];
+            }
+        }
+
+        final double[] coherence = new double[WIDTH * HEIGHT];
+        for (int yy = 0; yy < HEIGHT; ++yy) {
+            for (int xx = 0; xx < WIDTH; ++xx) {
+                final int rowSt = Math.max(yy - halfWindowSize, 0);
+                final int rowEd = Math.min(yy + halfWindowSize, HEIGHT - 1);
+                final int colSt = Math.max(xx - halfWindowSize, 0);
+                final int colEd = Math.min(xx + halfWindowSize, WIDTH - 1);
+
+                double cohRealSum = 0.0, cohImagSum = 0.0, mstPowerSum = 0.0, slvPowerSum = 0.0;
+                int count = 0;
+                for (int r = rowSt; r <= rowEd; r++) {
+                    for (int c = colSt; c <= colEd; c++) {
+                        cohRealSum += cohReal[r][c];
+                        cohImagSum += cohImag[r][c];
+                        mstPowerSum += mstPower[r][c];
+                        slvPowerSum += slvPower[r][c];
+                        count++;
+                    }
+                }
+
+                if (count > 0 && mstPowerSum != 0.0 && slvPowerSum != 0.0) {
+                    final double cohRealMean = cohRealSum / (double) count;
+                    final double cohImagMean = cohImagSum / (double) count;
+                    final double mstPowerMean = mstPowerSum / (double) count;
+                    final double slvPowerMean = slvPowerSum / (double) count;
+                    coherence[yy * WIDTH + xx] = Math.sqrt((cohRealMean * cohRealMean + cohImagMean * cohImagMean) /
+                            (mstPowerMean * slvPowerMean));
+                }
+            }
+        }
+        return coherence;
+    }
+
+    private static double[] estimateESDPhaseBefore(final SpectralDiversityOp.OverlapBlock master,
+                                                   final SpectralDiversityOp.OverlapBlock slave) {
+        final int n = master.i1.length;
+        final double[] backIntReal = new double[n];
+        final double[] backIntImag = new double[n];
+        multiply(toDouble(master.i2), toDouble(master.q2), toDouble(slave.i2), toDouble(slave.q2),
+                backIntReal, backIntImag);
+
+        final double[] forIntReal = new double[n];
+        final double[] forIntImag = new double[n];
+        multiply(toDouble(master.i1), toDouble(master.q1), toDouble(slave.i1), toDouble(slave.q1),
+                forIntReal, forIntImag);
+
+        final double[] diffIntReal = new double[n];
+        final double[] diffIntImag = new double[n];
+        multiply(forIntReal, forIntImag, backIntReal, backIntImag, diffIntReal, diffIntImag);
+
+        final double[] phase = new double[n];
+        for (int i = 0; i < n; i++) {
+            phase[i] = Math.atan2(diffIntImag[i], diffIntReal[i]);
+        }
+        return phase;
+    }
+
+    // multiplies the first array by the conjugate of the second
+    private static void multiply(final double[] real1, final double[] imag1, final double[] real2,
+                                 final double[] imag2, final double[] realOut, final double[] imagOut) {
+        for (int i = 0; i < real1.length; i++) {
+            realOut[i] = real1[i] * real2[i] + imag1[i] * imag2[i];
+            imagOut[i] = imag1[i] * real2[i] - real1[i] * imag2[i];
+        }
+    }
+
+    private static double[] toDouble(final float[] array) {
+        final double[] result = new double[array.length];
+        for (int i = 0; i < array.length; i++) {
+            result[i] = array[i];
+        }
+        return result;
+    }
+}
@@ -4,6 +4,7 @@ import com.bc.ceres.core.ProgressMonitor;
 import com.iceye.esa.snap.dataio.util.IceyeXConstants;
 import org.esa.s1tbx.commons.io.SARReader;
 import org.esa.s1tbx.commons.product.Missions;
+import org.esa.s1tbx.io.netcdf.NetCDFBlockReader;
 import org.esa.s1tbx.io.netcdf.NetCDFReader;
 import org.esa.s1tbx.io.netcdf.NetCDFUtils;
 import org.esa.s1tbx.io.netcdf.NetcdfConstants;
@@ -16,7 +17,6 @@ import org.esa.snap.engine_utilities.datamodel.Unit;
 import org.esa.snap.engine_utilities.eo.Constants;
 import org.esa.snap.engine_utilities.gpf.OperatorUtils;
 import org.esa.snap.engine_utilities.gpf.ReaderUtils;
-import ucar.ma2.Array;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Variable;
 
@@ -37,6 +37,7 @@ public class IceyeSLCProductReader extends SARReader {
     private final Map<Band, Variable> bandMap = new HashMap<>(10);
     private final DateFormat standardDateFormat = ProductData.UTC.createDateFormat("yyyy-MM-dd'T'HH:mm:ss");
     private NetcdfFile netcdfFile = null;
+    private NetCDFBlockReader blockReader = null;
     private Product product = null;
     private boolean isComplex = false;
 
@@ -165,6 +166,7 @@ public class IceyeSLCProductReader extends SARReader {
     private void initReader() {
         product = null;
         netcdfFile = null;
+        blockReader = null;
     }
 
     /**
@@ -193,6 +195,7 @@ public class IceyeSLCProductReader extends SARReader {
                         "be interpreted as remote sensing bands.");  /*I18N*/
             }
             this.netcdfFile = tempNetcdfFile;
+            blockReader = new NetCDFBlockReader(inputFile.getPath());
 
             final String productType = this.netcdfFile.getRootGroup().findVariable(IceyeXConstants.PRODUCT_TYPE).readScalarString();
             final int rasterWidth = this.netcdfFile.getRootGroup().findVariable(IceyeXConstants.NUM_SAMPLES_PER_LINE).readScalarInt();
@@ -235,6 +238,8 @@ public class IceyeSLCProductReader extends SARReader {
             product = null;
             netcdfFile.close();
             netcdfFile = null;
+            blockReader.close();
+            blockReader = null;
         }
         super.close();
     }
@@ -643,19 +648,11 @@ public class IceyeSLCProductReader extends SARReader {
         destHeight = Math.min(destHeight, sceneHeight - sourceOffsetY);
         sourceWidth = Math.min(sourceWidth, sceneWidth - sourceOffsetX);
         destWidth = Math.min(destWidth, sceneWidth - destOffsetX);
-        final int[] origin = {sourceOffsetY, sourceOffsetX};
-        final int[] shape = {1, sourceWidth};
-        pm.beginTask("Reading util from band " + destBand.getName(), destHeight);
+        pm.beginTask("Reading util from band " + destBand.getName(), 1);
         try {
-            for (int y = 0; y < destHeight; y++) {
-                origin[0] = sourceOffsetY + y;
-                final Array array;
-                synchronized (netcdfFile) {
-                    array = variable.read(origin, shape);
-                }
-                System.arraycopy(array.getStorage(), 0, destBuffer.getElems(), y * destWidth, destWidth);
-                pm.worked(1);
-            }
+            blockReader.readRect(variable, 0, sourceOffsetX, sourceOffsetY, destWidth, destHeight, false,
+                                 destBuffer.getElems());
+            pm.worked(1);
         } catch (Exception e) {
             final IOException ioException = new IOException(e);
             ioException.initCause(e);